@@ -22,6 +22,10 @@
 import org.phenotips.configuration.spi.RecordConfigurationModule;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.localization.LocalizationContext;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.ModelContext;
+import org.xwiki.model.reference.EntityReference;
 
 import java.util.List;
 
@@ -32,7 +36,11 @@
 import org.slf4j.Logger;
 
 /**
- * Default implementation for the {@link RecordConfigurationManager} component.
+ * Default implementation for the {@link RecordConfigurationManager} component. The processed configurations are
+ * cached as {@link ImmutableRecordConfiguration read-only snapshots}, keyed by the wiki, the current locale, since the
+ * section and field names are translated, the record type, and the {@link RecordConfigurationModule#getCacheKey(String)
+ * keys} returned by the modules, so that serving the configuration only requires computing the key and a map lookup.
+ * If any of the modules doesn't support caching, the configuration is processed again for each request, as before.
  *
  * @version $Id$
  * @since 1.0M9
@@ -51,11 +59,46 @@ public class DefaultRecordConfigurationManager implements RecordConfigurationMan
     @Inject
     private Provider<List<RecordConfigurationModule>> modules;
 
+    @Inject
+    private RecordConfigurationCache cache;
+
+    @Inject
+    private ModelContext modelContext;
+
+    @Inject
+    private LocalizationContext localizationContext;
+
     @Override
     public RecordConfiguration getConfiguration(String recordType)
+    {
+        // Obtained before anything is computed, so that results based on outdated data aren't cached
+        RecordConfigurationCache.Generation generation = this.cache.getGeneration();
+        String wiki = getCurrentWiki();
+        List<RecordConfigurationModule> activeModules = generation.getModules(wiki);
+        if (activeModules == null) {
+            activeModules = this.modules.get();
+            generation.putModules(wiki, activeModules);
+        }
+
+        String key = getCacheKey(wiki, recordType, activeModules);
+        if (key == null) {
+            return process(recordType, activeModules);
+        }
+        RecordConfiguration config = generation.getConfiguration(key);
+        if (config == null) {
+            config = process(recordType, activeModules);
+            if (config != null) {
+                config = new ImmutableRecordConfiguration(config);
+                generation.putConfiguration(key, config);
+            }
+        }
+        return config;
+    }
+
+    private RecordConfiguration process(String recordType, List<RecordConfigurationModule> activeModules)
     {
         RecordConfiguration config = new DefaultRecordConfiguration();
-        for (RecordConfigurationModule service : this.modules.get()) {
+        for (RecordConfigurationModule service : activeModules) {
             try {
                 if (service.supportsRecordType(recordType)) {
                     config = service.process(config);
@@ -67,6 +110,43 @@ public RecordConfiguration getConfiguration(String recordType)
         return config;
     }
 
+    /**
+     * Combines the current locale and the keys returned by all the modules supporting the requested record type.
+     *
+     * @param wiki the current wiki
+     * @param recordType the requested record type
+     * @param activeModules the sorted list of modules
+     * @return the combined key, or {@code null} if any of the modules doesn't allow caching
+     */
+    private String getCacheKey(String wiki, String recordType, List<RecordConfigurationModule> activeModules)
+    {
+        StringBuilder key = new StringBuilder().append(wiki).append('|').append(recordType);
+        // The names of the sections and fields are rendered in the current language
+        key.append('|').append(this.localizationContext.getCurrentLocale());
+        for (RecordConfigurationModule service : activeModules) {
+            try {
+                if (service.supportsRecordType(recordType)) {
+                    String moduleKey = service.getCacheKey(recordType);
+                    if (moduleKey == null) {
+                        return null;
+                    }
+                    key.append('|').append(moduleKey);
+                }
+            } catch (Exception ex) {
+                this.logger.debug("Failed to compute the record configuration key: {}", ex.getMessage());
+                return null;
+            }
+        }
+        return key.toString();
+    }
+
+    private String getCurrentWiki()
+    {
+        EntityReference current = this.modelContext.getCurrentEntityReference();
+        EntityReference wiki = current == null ? null : current.extractReference(EntityType.WIKI);
+        return wiki == null ? "" : wiki.getName();
+    }
+
     @Override
     public RecordConfiguration getActiveConfiguration()
     {
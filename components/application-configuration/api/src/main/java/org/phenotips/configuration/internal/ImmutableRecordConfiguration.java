@@ -0,0 +1,341 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.configuration.internal;
+
+import org.phenotips.configuration.RecordConfiguration;
+import org.phenotips.configuration.RecordElement;
+import org.phenotips.configuration.RecordSection;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.uiextension.UIExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Read-only copy of a processed {@link RecordConfiguration}, safe to be shared between requests. All the section,
+ * element and field lists are computed once, when the copy is made, and all the setters throw an
+ * {@link UnsupportedOperationException}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class ImmutableRecordConfiguration implements RecordConfiguration
+{
+    private static final String READ_ONLY_MESSAGE = "Cached record configurations cannot be modified";
+
+    private final List<RecordSection> allSections;
+
+    private final List<RecordSection> enabledSections;
+
+    private final List<String> enabledFieldNames;
+
+    private final List<String> enabledNonIdentifiableFieldNames;
+
+    private final List<String> allFieldNames;
+
+    private final DocumentReference phenotypeMapping;
+
+    private final String isoDateFormat;
+
+    private final String dateOfBirthFormat;
+
+    /**
+     * Copies the current state of a record configuration.
+     *
+     * @param config the configuration to copy
+     */
+    @SuppressWarnings("deprecation")
+    public ImmutableRecordConfiguration(RecordConfiguration config)
+    {
+        List<RecordSection> all = new ArrayList<>();
+        List<RecordSection> enabled = new ArrayList<>();
+        List<String> enabledFields = new ArrayList<>();
+        List<String> nonIdentifiableFields = new ArrayList<>();
+        List<String> allFields = new ArrayList<>();
+        for (RecordSection section : config.getAllSections()) {
+            ImmutableRecordSection copy = new ImmutableRecordSection(section);
+            all.add(copy);
+            for (RecordElement element : copy.getAllElements()) {
+                allFields.addAll(element.getDisplayedFields());
+            }
+            if (copy.isEnabled()) {
+                enabled.add(copy);
+                for (RecordElement element : copy.getEnabledElements()) {
+                    enabledFields.addAll(element.getDisplayedFields());
+                    if (!element.containsPrivateIdentifiableInformation()) {
+                        nonIdentifiableFields.addAll(element.getDisplayedFields());
+                    }
+                }
+            }
+        }
+        this.allSections = Collections.unmodifiableList(all);
+        this.enabledSections = Collections.unmodifiableList(enabled);
+        this.enabledFieldNames = Collections.unmodifiableList(enabledFields);
+        this.enabledNonIdentifiableFieldNames = Collections.unmodifiableList(nonIdentifiableFields);
+        this.allFieldNames = Collections.unmodifiableList(allFields);
+        this.phenotypeMapping = config.getPhenotypeMapping();
+        this.isoDateFormat = config.getISODateFormat();
+        this.dateOfBirthFormat = config.getDateOfBirthFormat();
+    }
+
+    @Override
+    public List<RecordSection> getEnabledSections()
+    {
+        return this.enabledSections;
+    }
+
+    @Override
+    public List<RecordSection> getAllSections()
+    {
+        return this.allSections;
+    }
+
+    @Override
+    public void setSections(List<RecordSection> sections)
+    {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public List<String> getEnabledFieldNames()
+    {
+        return this.enabledFieldNames;
+    }
+
+    @Override
+    public List<String> getEnabledNonIdentifiableFieldNames()
+    {
+        return this.enabledNonIdentifiableFieldNames;
+    }
+
+    @Override
+    public List<String> getAllFieldNames()
+    {
+        return this.allFieldNames;
+    }
+
+    @Override
+    public DocumentReference getPhenotypeMapping()
+    {
+        return this.phenotypeMapping;
+    }
+
+    @Override
+    public void setPhenotypeMapping(DocumentReference mapping)
+    {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public String getISODateFormat()
+    {
+        return this.isoDateFormat;
+    }
+
+    @Override
+    public String getDateOfBirthFormat()
+    {
+        return this.dateOfBirthFormat;
+    }
+
+    @Override
+    public void setDateOfBirthFormat(String format)
+    {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return StringUtils.join(this.enabledSections, ", ");
+    }
+
+    private static final class ImmutableRecordSection implements RecordSection
+    {
+        private final UIExtension extension;
+
+        private final String name;
+
+        private final boolean enabled;
+
+        private final boolean expandedByDefault;
+
+        private final List<RecordElement> allElements;
+
+        private final List<RecordElement> enabledElements;
+
+        ImmutableRecordSection(RecordSection section)
+        {
+            this.extension = section.getExtension();
+            this.name = section.getName();
+            this.enabled = section.isEnabled();
+            this.expandedByDefault = section.isExpandedByDefault();
+            List<RecordElement> all = new ArrayList<>();
+            List<RecordElement> enabledOnly = new ArrayList<>();
+            for (RecordElement element : section.getAllElements()) {
+                ImmutableRecordElement copy = new ImmutableRecordElement(element, this);
+                all.add(copy);
+                if (copy.isEnabled()) {
+                    enabledOnly.add(copy);
+                }
+            }
+            this.allElements = Collections.unmodifiableList(all);
+            this.enabledElements = Collections.unmodifiableList(enabledOnly);
+        }
+
+        @Override
+        public UIExtension getExtension()
+        {
+            return this.extension;
+        }
+
+        @Override
+        public String getName()
+        {
+            return this.name;
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return this.enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled)
+        {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public boolean isExpandedByDefault()
+        {
+            return this.expandedByDefault;
+        }
+
+        @Override
+        public void setExpandedByDefault(boolean expanded)
+        {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public List<RecordElement> getAllElements()
+        {
+            return this.allElements;
+        }
+
+        @Override
+        public List<RecordElement> getEnabledElements()
+        {
+            return this.enabledElements;
+        }
+
+        @Override
+        public void setElements(List<RecordElement> elements)
+        {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.name + " [" + StringUtils.join(this.enabledElements, ", ") + ']';
+        }
+    }
+
+    private static final class ImmutableRecordElement implements RecordElement
+    {
+        private final UIExtension extension;
+
+        private final String name;
+
+        private final boolean enabled;
+
+        private final boolean identifiable;
+
+        private final List<String> displayedFields;
+
+        private final RecordSection section;
+
+        @SuppressWarnings("deprecation")
+        ImmutableRecordElement(RecordElement element, RecordSection section)
+        {
+            this.extension = element.getExtension();
+            this.name = element.getName();
+            this.enabled = element.isEnabled();
+            this.identifiable = element.containsPrivateIdentifiableInformation();
+            List<String> fields = element.getDisplayedFields();
+            this.displayedFields = fields == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(fields));
+            this.section = section;
+        }
+
+        @Override
+        public UIExtension getExtension()
+        {
+            return this.extension;
+        }
+
+        @Override
+        public String getName()
+        {
+            return this.name;
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return this.enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled)
+        {
+            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+        }
+
+        @Override
+        public boolean containsPrivateIdentifiableInformation()
+        {
+            return this.identifiable;
+        }
+
+        @Override
+        public List<String> getDisplayedFields()
+        {
+            return this.displayedFields;
+        }
+
+        @Override
+        public RecordSection getContainingSection()
+        {
+            return this.section;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.name;
+        }
+    }
+}
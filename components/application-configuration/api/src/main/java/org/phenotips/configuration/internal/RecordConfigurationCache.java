@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.configuration.internal;
+
+import org.phenotips.configuration.RecordConfiguration;
+import org.phenotips.configuration.spi.RecordConfigurationModule;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+/**
+ * Holds the processed record configurations and the sorted lists of configuration modules, so that they don't have to
+ * be recomputed for every request. Everything is discarded at once when {@link #invalidate() invalidated}; since
+ * lookups and additions go through a {@link Generation} obtained before computing a new entry, a value computed from
+ * data that changed in the meantime is stored in a discarded generation and never served.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component(roles = { RecordConfigurationCache.class })
+@Singleton
+public class RecordConfigurationCache
+{
+    /** The maximum number of configurations to keep in one generation; the cache is reset when exceeded. */
+    private static final int MAX_CONFIGURATIONS = 1000;
+
+    private volatile Generation current = new Generation();
+
+    /**
+     * Returns the currently valid cache contents.
+     *
+     * @return the current generation, never {@code null}
+     */
+    public Generation getGeneration()
+    {
+        return this.current;
+    }
+
+    /** Discards all the cached modules and configurations. */
+    public void invalidate()
+    {
+        this.current = new Generation();
+    }
+
+    /**
+     * The cache contents valid since the last invalidation.
+     */
+    public static final class Generation
+    {
+        private final ConcurrentMap<String, List<RecordConfigurationModule>> modules = new ConcurrentHashMap<>();
+
+        private final ConcurrentMap<String, RecordConfiguration> configurations = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the sorted configuration modules cached for a wiki.
+         *
+         * @param wiki the identifier of the wiki
+         * @return the cached modules, or {@code null} if they haven't been cached yet
+         */
+        public List<RecordConfigurationModule> getModules(String wiki)
+        {
+            return this.modules.get(wiki);
+        }
+
+        /**
+         * Caches the sorted configuration modules of a wiki.
+         *
+         * @param wiki the identifier of the wiki
+         * @param moduleList the modules to cache
+         */
+        public void putModules(String wiki, List<RecordConfigurationModule> moduleList)
+        {
+            this.modules.put(wiki, moduleList);
+        }
+
+        /**
+         * Returns a cached configuration.
+         *
+         * @param key the key identifying the configuration, as computed from the record type and the module keys
+         * @return the cached configuration, or {@code null} if it hasn't been cached yet
+         */
+        public RecordConfiguration getConfiguration(String key)
+        {
+            return this.configurations.get(key);
+        }
+
+        /**
+         * Caches a configuration.
+         *
+         * @param key the key identifying the configuration, as computed from the record type and the module keys
+         * @param configuration the configuration to cache, must not be {@code null}
+         */
+        public void putConfiguration(String key, RecordConfiguration configuration)
+        {
+            if (this.configurations.size() >= MAX_CONFIGURATIONS) {
+                // Keys include per-record states, so only reset if something unexpected fills up the cache
+                this.configurations.clear();
+            }
+            this.configurations.put(key, configuration);
+        }
+    }
+}
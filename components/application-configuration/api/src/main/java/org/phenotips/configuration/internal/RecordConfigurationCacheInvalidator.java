@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.configuration.internal;
+
+import org.phenotips.Constants;
+import org.phenotips.configuration.RecordConfiguration;
+import org.phenotips.configuration.spi.RecordConfigurationModule;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.uiextension.UIExtension;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Clears the {@link RecordConfigurationCache cached record configurations} when something they depend on changes: UI
+ * extensions or configuration modules are registered or unregistered, or a document holding the global configuration
+ * or a study configuration is created, modified or deleted.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("record-configuration-cache-invalidator")
+@Singleton
+public class RecordConfigurationCacheInvalidator extends AbstractEventListener
+{
+    /** The XClass used for storing study configurations. */
+    private static final EntityReference STUDY_CLASS =
+        new EntityReference("StudyClass", EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    @Inject
+    private RecordConfigurationCache cache;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public RecordConfigurationCacheInvalidator()
+    {
+        super("record-configuration-cache-invalidator",
+            new ComponentDescriptorAddedEvent(UIExtension.class),
+            new ComponentDescriptorRemovedEvent(UIExtension.class),
+            new ComponentDescriptorAddedEvent(RecordConfigurationModule.class),
+            new ComponentDescriptorRemovedEvent(RecordConfigurationModule.class),
+            new DocumentCreatedEvent(),
+            new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof ComponentDescriptorEvent || isConfigurationDocument((XWikiDocument) source)) {
+            this.cache.invalidate();
+        }
+    }
+
+    private boolean isConfigurationDocument(XWikiDocument doc)
+    {
+        return hasConfiguration(doc) || (doc != null && hasConfiguration(doc.getOriginalDocument()));
+    }
+
+    private boolean hasConfiguration(XWikiDocument doc)
+    {
+        return doc != null && (doc.getXObject(RecordConfiguration.GLOBAL_PREFERENCES_CLASS) != null
+            || doc.getXObject(STUDY_CLASS) != null);
+    }
+}
@@ -62,4 +62,22 @@
      * @return true iff this module supports the specified record type, false otherwise
      */
     boolean supportsRecordType(String recordType);
+
+    /**
+     * Identifies the request dependent state that the changes made by this module depend on, for example the study
+     * bound to the current record. Processed configurations are cached for each combination of keys returned by the
+     * modules supporting a record type, so a module must return different keys whenever it would alter the
+     * configuration differently. Changes to UI extensions, to study and global configuration documents, and to the
+     * registered modules clear the cache, so they don't have to be reflected in the key.
+     *
+     * @param recordType the type of record whose configuration is requested
+     * @return a key identifying the current state, an empty string if this module always alters the configuration in
+     *         the same way, or {@code null} if configurations processed by this module must not be cached, which is
+     *         the default
+     * @since 1.5M1
+     */
+    default String getCacheKey(String recordType)
+    {
+        return null;
+    }
 }
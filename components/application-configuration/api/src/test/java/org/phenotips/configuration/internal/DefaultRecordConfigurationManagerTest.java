@@ -19,10 +19,15 @@
 
 import org.phenotips.configuration.RecordConfiguration;
 import org.phenotips.configuration.RecordConfigurationManager;
+import org.phenotips.configuration.RecordSection;
 import org.phenotips.configuration.spi.RecordConfigurationModule;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.localization.LocalizationContext;
+import org.xwiki.model.ModelContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.lang.reflect.Type;
@@ -30,6 +35,7 @@
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 
 import javax.inject.Provider;
 
@@ -42,8 +48,11 @@
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -85,6 +94,7 @@ public void setup() throws Exception
             RecordConfigurationModule.class);
         Type providerType = new DefaultParameterizedType(null, Provider.class, listType);
         this.mocker.registerComponent(providerType, this.modules);
+        this.mocker.registerComponent(RecordConfigurationCache.class, new RecordConfigurationCache());
         when(this.moduleOne.supportsRecordType(PATIENT_LABEL)).thenReturn(true);
         when(this.moduleTwo.supportsRecordType(PATIENT_LABEL)).thenReturn(true);
         when(this.moduleThree.supportsRecordType(PATIENT_LABEL)).thenReturn(true);
@@ -167,4 +177,135 @@ public void getActiveConfigurationReturnsPatientRecordConfiguration() throws Exc
         when(this.moduleOne.process(any(RecordConfiguration.class))).thenReturn(this.config);
         Assert.assertSame(this.config, this.mocker.getComponentUnderTest().getActiveConfiguration());
     }
+
+    @Test
+    public void cacheableConfigurationsAreProcessedOnce() throws Exception
+    {
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleTwo.getCacheKey(PATIENT_LABEL)).thenReturn("study");
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(invocation -> {
+            RecordConfiguration result = (RecordConfiguration) invocation.getArguments()[0];
+            result.setDateOfBirthFormat("MM/yyyy");
+            return result;
+        });
+        when(this.moduleTwo.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+
+        RecordConfiguration first = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        RecordConfiguration second = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+
+        Assert.assertSame(first, second);
+        Assert.assertTrue(first instanceof ImmutableRecordConfiguration);
+        Assert.assertEquals("MM/yyyy", first.getDateOfBirthFormat());
+        verify(this.modules, times(1)).get();
+        verify(this.moduleOne, times(1)).process(any(RecordConfiguration.class));
+        verify(this.moduleTwo, times(1)).process(any(RecordConfiguration.class));
+    }
+
+    @Test
+    public void differentModuleKeysUseDifferentConfigurations() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("Studies.Ataxia");
+        RecordConfiguration ataxia = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("Studies.Cancer");
+        RecordConfiguration cancer = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("Studies.Ataxia");
+
+        Assert.assertNotSame(ataxia, cancer);
+        Assert.assertSame(ataxia, this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL));
+        verify(this.moduleOne, times(2)).process(any(RecordConfiguration.class));
+    }
+
+    @Test
+    public void configurationsAreCachedPerWiki() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+        ModelContext modelContext = this.mocker.getInstance(ModelContext.class);
+
+        when(modelContext.getCurrentEntityReference()).thenReturn(new WikiReference("main"));
+        RecordConfiguration main = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        when(modelContext.getCurrentEntityReference())
+            .thenReturn(new DocumentReference("other", "data", "P0000001"));
+        RecordConfiguration other = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+
+        Assert.assertNotSame(main, other);
+        verify(this.modules, times(2)).get();
+    }
+
+    @Test
+    public void configurationsAreCachedPerLocale() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+        LocalizationContext localizationContext = this.mocker.getInstance(LocalizationContext.class);
+
+        when(localizationContext.getCurrentLocale()).thenReturn(Locale.ENGLISH);
+        RecordConfiguration english = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        when(localizationContext.getCurrentLocale()).thenReturn(Locale.FRENCH);
+        RecordConfiguration french = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        when(localizationContext.getCurrentLocale()).thenReturn(Locale.ENGLISH);
+
+        Assert.assertNotSame(english, french);
+        Assert.assertSame(english, this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL));
+        verify(this.moduleOne, times(2)).process(any(RecordConfiguration.class));
+    }
+
+    @Test
+    public void invalidationDiscardsCachedConfigurations() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+
+        RecordConfiguration first = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        this.mocker.<RecordConfigurationCache>getInstance(RecordConfigurationCache.class).invalidate();
+        RecordConfiguration second = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+
+        Assert.assertNotSame(first, second);
+        verify(this.modules, times(2)).get();
+        verify(this.moduleOne, times(2)).process(any(RecordConfiguration.class));
+    }
+
+    @Test
+    public void configurationsAreNotCachedIfAModuleDoesNotSupportIt() throws Exception
+    {
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleTwo.getCacheKey(PATIENT_LABEL)).thenReturn(null);
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+        when(this.moduleTwo.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+
+        RecordConfiguration first = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+        RecordConfiguration second = this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL);
+
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(first instanceof DefaultRecordConfiguration);
+        verify(this.moduleOne, times(2)).process(any(RecordConfiguration.class));
+        // The module list is still reused
+        verify(this.modules, times(1)).get();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedConfigurationsCannotBeModified() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.getCacheKey(PATIENT_LABEL)).thenReturn("");
+        when(this.moduleOne.process(any(RecordConfiguration.class))).thenAnswer(returnsFirstArg());
+
+        this.mocker.getComponentUnderTest().getConfiguration(PATIENT_LABEL)
+            .setSections(Collections.<RecordSection>emptyList());
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.configuration.internal;
+
+import org.phenotips.Constants;
+import org.phenotips.configuration.RecordConfiguration;
+import org.phenotips.configuration.spi.RecordConfigurationModule;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.uiextension.UIExtension;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link RecordConfigurationCacheInvalidator}.
+ *
+ * @version $Id$
+ */
+public class RecordConfigurationCacheInvalidatorTest
+{
+    private static final EntityReference STUDY_CLASS =
+        new EntityReference("StudyClass", EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    @Rule
+    public MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<>(RecordConfigurationCacheInvalidator.class);
+
+    private RecordConfigurationCache cache = new RecordConfigurationCache();
+
+    private RecordConfigurationCache.Generation initial;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.mocker.registerComponent(RecordConfigurationCache.class, this.cache);
+        this.initial = this.cache.getGeneration();
+    }
+
+    @Test
+    public void listensToComponentAndDocumentEvents() throws Exception
+    {
+        Assert.assertEquals("record-configuration-cache-invalidator", this.mocker.getComponentUnderTest().getName());
+        Assert.assertEquals(7, this.mocker.getComponentUnderTest().getEvents().size());
+    }
+
+    @Test
+    public void uiExtensionChangesInvalidateCache() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new ComponentDescriptorAddedEvent(UIExtension.class), null, null);
+        Assert.assertNotSame(this.initial, this.cache.getGeneration());
+    }
+
+    @Test
+    public void moduleChangesInvalidateCache() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(
+            new ComponentDescriptorRemovedEvent(RecordConfigurationModule.class), null, null);
+        Assert.assertNotSame(this.initial, this.cache.getGeneration());
+    }
+
+    @Test
+    public void globalConfigurationChangesInvalidateCache() throws Exception
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        when(doc.getXObject(RecordConfiguration.GLOBAL_PREFERENCES_CLASS)).thenReturn(mock(BaseObject.class));
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), doc, null);
+        Assert.assertNotSame(this.initial, this.cache.getGeneration());
+    }
+
+    @Test
+    public void deletedStudiesInvalidateCache() throws Exception
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        XWikiDocument original = mock(XWikiDocument.class);
+        when(doc.getOriginalDocument()).thenReturn(original);
+        when(original.getXObject(STUDY_CLASS)).thenReturn(mock(BaseObject.class));
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), doc, null);
+        Assert.assertNotSame(this.initial, this.cache.getGeneration());
+    }
+
+    @Test
+    public void otherDocumentsDoNotInvalidateCache() throws Exception
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        when(doc.getOriginalDocument()).thenReturn(mock(XWikiDocument.class));
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), doc, null);
+        Assert.assertSame(this.initial, this.cache.getGeneration());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.export;
+
+import org.phenotips.benchmarks.patient.SyntheticPatients;
+import org.phenotips.data.Patient;
+import org.phenotips.export.internal.SpreadsheetExporter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the Excel export of {@link SyntheticPatients synthetic patients}, with the identifiers, names,
+ * indication for referral and phenotypes of the patients.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpreadsheetExportBenchmark
+{
+    private static final String[] FIELDS = { "doc.name", "first_name", "last_name", "indication_for_referral",
+        "phenotype" };
+
+    /** The number of exported patients. */
+    @Param({ "10", "500" })
+    private int patientCount;
+
+    private List<Patient> patients;
+
+    /**
+     * Creates the patients.
+     *
+     * @throws Exception if setting up the patient data controllers fails
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        SyntheticPatients generator = new SyntheticPatients();
+        this.patients = new ArrayList<>(this.patientCount);
+        for (int i = 1; i <= this.patientCount; ++i) {
+            this.patients.add(generator.createPatient(i, i % (SyntheticPatients.MAX_FEATURES + 1)));
+        }
+    }
+
+    /**
+     * Exports all the patients.
+     *
+     * @return the size of the generated spreadsheet
+     * @throws Exception if the export fails
+     */
+    @Benchmark
+    public int export() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SpreadsheetExporter().export(FIELDS, this.patients, out);
+        return out.size();
+    }
+}
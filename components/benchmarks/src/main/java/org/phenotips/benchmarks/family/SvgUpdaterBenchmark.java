@@ -0,0 +1,98 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.family;
+
+import org.phenotips.studies.family.internal.SvgUpdater;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the {@link SvgUpdater} transformations applied to stored pedigree images, on generated pedigrees of
+ * increasing sizes.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SvgUpdaterBenchmark
+{
+    private static final String SVG_START =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"800\" height=\"600\">";
+
+    @Param({ "10", "100", "1000" })
+    private int pedigreeSize;
+
+    private String svg;
+
+    private String patientId;
+
+    /** Generates a pedigree image with {@link #pedigreeSize} linked individuals. */
+    @Setup
+    public void generatePedigree()
+    {
+        StringBuilder result = new StringBuilder(SVG_START);
+        for (int i = 1; i <= this.pedigreeSize; ++i) {
+            result.append("<rect class=\"node-shape-").append(i).append("\" stroke-width=\"1\"></rect>");
+            result.append("<text x=\"10\" y=\"102\" pedigreeNodeID=\"").append(i).append("\">Name</text>");
+            result.append(String.format("<a xlink:href=\"/bin/data/P%07d\" pedigreeNodeID=\"%d\">", i, i));
+            result.append(String.format("<text y=\"3\">P%07d</text></a>", i));
+            result.append("<text x=\"10\" y=\"124\" pedigreeNodeID=\"").append(i).append("\">Age</text>");
+        }
+        this.svg = result.append("</svg>").toString();
+        this.patientId = String.format("P%07d", this.pedigreeSize / 2 + 1);
+    }
+
+    /**
+     * Styling and resizing, as done when displaying the pedigree of a patient.
+     *
+     * @return the styled image
+     */
+    @Benchmark
+    public String styledSvg()
+    {
+        return SvgUpdater.getStyledSvg(this.svg, this.patientId, 400, 300);
+    }
+
+    /**
+     * Removing a patient from the pedigree image.
+     *
+     * @return the updated image
+     */
+    @Benchmark
+    public String removeLink()
+    {
+        return SvgUpdater.removeLink(this.svg, this.patientId);
+    }
+}
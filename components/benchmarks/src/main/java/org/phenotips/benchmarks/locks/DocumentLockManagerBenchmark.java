@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.locks;
+
+import org.phenotips.locks.DocumentLockManager;
+import org.phenotips.locks.internal.TimeoutDocumentLockManager;
+import org.phenotips.metrics.internal.DefaultMetricsRegistry;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock and unlock throughput of the {@link TimeoutDocumentLockManager}, with several threads competing for a varying
+ * number of documents. A single document is the worst case, a large number of documents is the common case where
+ * requests rarely wait for each other.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DocumentLockManagerBenchmark
+{
+    /** The number of distinct documents being locked. */
+    @Param({ "1", "16", "10000" })
+    private int documents;
+
+    private DocumentLockManager lockManager;
+
+    private DocumentReference[] references;
+
+    /** Sets up the lock manager and the documents to lock. */
+    @Setup
+    public void setUp()
+    {
+        TimeoutDocumentLockManager manager = new TimeoutDocumentLockManager();
+        ReflectionUtils.setFieldValue(manager, "logger", LoggerFactory.getLogger(TimeoutDocumentLockManager.class));
+        ReflectionUtils.setFieldValue(manager, "metrics", new DefaultMetricsRegistry());
+        this.lockManager = manager;
+
+        this.references = new DocumentReference[this.documents];
+        for (int i = 0; i < this.documents; ++i) {
+            this.references[i] = new DocumentReference("xwiki", "data", String.format("P%07d", i + 1));
+        }
+    }
+
+    /**
+     * Locks and immediately unlocks a random document.
+     *
+     * @return the locked document
+     */
+    @Benchmark
+    @Threads(4)
+    public DocumentReference lockAndUnlock()
+    {
+        DocumentReference document = this.references[ThreadLocalRandom.current().nextInt(this.documents)];
+        this.lockManager.lock(document);
+        try {
+            return document;
+        } finally {
+            this.lockManager.unlock(document);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.patient;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.IndexedPatientData;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientData;
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Serves the phenotypes of the synthetic patients from memory, since the real controller needs a wiki for resolving
+ * the stored terms. The JSON serialization is the same as the one of the real controller.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class InMemoryFeaturesController implements PatientDataController<Feature>
+{
+    private static final String NAME = "features";
+
+    private final Map<DocumentReference, List<Feature>> features = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the phenotypes of a patient.
+     *
+     * @param patient the reference to the patient document
+     * @param patientFeatures the phenotypes to return for this patient
+     */
+    void setFeatures(DocumentReference patient, List<Feature> patientFeatures)
+    {
+        this.features.put(patient, patientFeatures);
+    }
+
+    @Override
+    public PatientData<Feature> load(Patient patient)
+    {
+        List<Feature> patientFeatures = this.features.get(patient.getDocumentReference());
+        return patientFeatures == null ? null : new IndexedPatientData<>(NAME, patientFeatures);
+    }
+
+    @Override
+    public void save(Patient patient)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeJSON(Patient patient, JSONObject json)
+    {
+        writeJSON(patient, json, null);
+    }
+
+    @Override
+    public void writeJSON(Patient patient, JSONObject json, Collection<String> selectedFieldNames)
+    {
+        if (selectedFieldNames != null && !selectedFieldNames.contains(NAME)) {
+            return;
+        }
+        PatientData<Feature> data = patient.getData(NAME);
+        if (data == null) {
+            return;
+        }
+        JSONArray result = new JSONArray();
+        for (Feature feature : data) {
+            result.put(feature.toJSON());
+        }
+        json.put(NAME, result);
+    }
+
+    @Override
+    public PatientData<Feature> readJSON(JSONObject json)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+}
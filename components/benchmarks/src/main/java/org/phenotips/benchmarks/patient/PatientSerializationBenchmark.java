@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.patient;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.internal.PhenoTipsPatient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Benchmarks for {@link PhenoTipsPatient#toJSON()} on {@link SyntheticPatients synthetic patients}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatientSerializationBenchmark
+{
+    /** The number of phenotypes of the patient. */
+    @Param({ "0", "16" })
+    private int features;
+
+    private XWikiDocument document;
+
+    private Patient patient;
+
+    private final JsonFactory factory = new JsonFactory();
+
+    /**
+     * Creates the patient.
+     *
+     * @throws Exception if setting up the patient data controllers fails
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        SyntheticPatients patients = new SyntheticPatients();
+        this.document = patients.createDocument(1, this.features);
+        this.patient = new PhenoTipsPatient(this.document);
+        // Make sure all the data is loaded before measuring
+        this.patient.toJSON();
+    }
+
+    /**
+     * Serializes an already loaded patient.
+     *
+     * @return the serialized patient
+     */
+    @Benchmark
+    public JSONObject toJSON()
+    {
+        return this.patient.toJSON();
+    }
+
+    /**
+     * Loads the patient from its document and serializes it, as done when a patient is requested through the REST API.
+     *
+     * @return the serialized patient
+     */
+    @Benchmark
+    public JSONObject loadAndToJSON()
+    {
+        return new PhenoTipsPatient(this.document).toJSON();
+    }
+
+    /**
+     * Streams an already loaded patient, as done by the bulk fetch REST resource and the JSON export.
+     *
+     * @param blackhole consumes the written bytes
+     * @throws IOException never, the output discards everything
+     */
+    @Benchmark
+    public void writeJSON(Blackhole blackhole) throws IOException
+    {
+        OutputStream out = new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+                blackhole.consume(len);
+            }
+        };
+        try (JsonGenerator generator = this.factory.createGenerator(out)) {
+            generator.writeStartObject();
+            this.patient.writeJSON(generator, null);
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.patient;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientDataController;
+import org.phenotips.data.internal.PhenoTipsFeature;
+import org.phenotips.data.internal.PhenoTipsPatient;
+import org.phenotips.data.internal.controller.FamilyHistoryController;
+import org.phenotips.data.internal.controller.PatientNameController;
+import org.phenotips.data.internal.controller.TextNotesController;
+import org.phenotips.metrics.MetricsRegistry;
+import org.phenotips.metrics.internal.DefaultMetricsRegistry;
+import org.phenotips.translation.TranslationManager;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Generates patient records without a wiki. The patient documents are stubs holding a real patient object, and the
+ * data is read by the real patient data controllers for names, notes and family history; phenotypes are served from
+ * memory. The controllers, along with a translation manager returning the translation keys, are registered in a
+ * component manager that replaces the one used by the {@link ComponentManagerRegistry}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class SyntheticPatients
+{
+    /** The number of distinct phenotypes that can be assigned to a patient. */
+    public static final int MAX_FEATURES = 16;
+
+    private static final String[][] PHENOTYPES = { { "HP:0000252", "Microcephaly" },
+        { "HP:0001250", "Seizure" }, { "HP:0001249", "Intellectual disability" },
+        { "HP:0001263", "Global developmental delay" }, { "HP:0001631", "Atrial septal defect" },
+        { "HP:0001629", "Ventricular septal defect" }, { "HP:0002650", "Scoliosis" },
+        { "HP:0001161", "Hand polydactyly" }, { "HP:0004322", "Short stature" }, { "HP:0001252", "Hypotonia" },
+        { "HP:0000365", "Hearing impairment" }, { "HP:0000505", "Visual impairment" },
+        { "HP:0000479", "Abnormality of the retina" }, { "HP:0000077", "Abnormality of the kidney" },
+        { "HP:0000256", "Macrocephaly" }, { "HP:0000098", "Tall stature" } };
+
+    private static final String[] NOTES = { "indication_for_referral", "family_history", "prenatal_development",
+        "medical_history", "diagnosis_notes", "genetic_notes" };
+
+    private static final DocumentReference REPORTER = new DocumentReference("xwiki", "XWiki", "Admin");
+
+    private final InMemoryFeaturesController features = new InMemoryFeaturesController();
+
+    /**
+     * Registers the components needed for loading and serializing patients.
+     *
+     * @throws Exception if registering the components fails
+     */
+    public SyntheticPatients() throws Exception
+    {
+        MockitoComponentManager componentManager = new MockitoComponentManager();
+        TranslationManager translations = (key, parameters) -> key;
+        componentManager.registerComponent(TranslationManager.class, translations);
+        componentManager.registerComponent(MetricsRegistry.class, new DefaultMetricsRegistry());
+        componentManager.registerComponent(PatientDataController.class, "patient-name",
+            withLogger(new PatientNameController()));
+        componentManager.registerComponent(PatientDataController.class, "notes",
+            withLogger(new TextNotesController()));
+        componentManager.registerComponent(PatientDataController.class, "familyHistory",
+            withLogger(new FamilyHistoryController()));
+        componentManager.registerComponent(PatientDataController.class, "features", this.features);
+
+        Provider<ComponentManager> provider = () -> componentManager;
+        FieldUtils.writeStaticField(ComponentManagerRegistry.class, "cmProvider", provider, true);
+    }
+
+    /**
+     * Creates the document of a patient.
+     *
+     * @param index the number of the patient, used for generating its identifier and its data
+     * @param featureCount the number of phenotypes to add to the patient, at most {@value #MAX_FEATURES}
+     * @return the patient document
+     */
+    public XWikiDocument createDocument(int index, int featureCount)
+    {
+        DocumentReference reference = new DocumentReference("xwiki", "data", String.format("P%07d", index));
+
+        BaseObject data = new BaseObject();
+        data.setStringValue("first_name", "First" + index);
+        data.setStringValue("last_name", "Last" + index);
+        for (String note : NOTES) {
+            data.setLargeStringValue(note, "Synthetic " + note.replace('_', ' ') + " of patient " + index + '.');
+        }
+        data.setIntValue("consanguinity", index % 2);
+        data.setIntValue("miscarriages", 0);
+        data.setIntValue("affectedRelatives", 1);
+
+        // The stubs don't record invocations, so that they don't grow while benchmarking
+        XWikiDocument doc = mock(XWikiDocument.class, withSettings().stubOnly());
+        when(doc.getDocumentReference()).thenReturn(reference);
+        when(doc.getCreatorReference()).thenReturn(REPORTER);
+        when(doc.getXObject(Patient.CLASS_REFERENCE)).thenReturn(data);
+
+        List<Feature> patientFeatures = new ArrayList<>(featureCount);
+        for (int i = 0; i < Math.min(featureCount, MAX_FEATURES); ++i) {
+            String[] phenotype = PHENOTYPES[(index + i) % MAX_FEATURES];
+            JSONObject feature = new JSONObject();
+            feature.put("id", phenotype[0]);
+            feature.put("label", phenotype[1]);
+            feature.put("type", "phenotype");
+            feature.put("observed", i % 4 == 3 ? "no" : "yes");
+            patientFeatures.add(new PhenoTipsFeature(feature));
+        }
+        this.features.setFeatures(reference, patientFeatures);
+
+        return doc;
+    }
+
+    /**
+     * Creates a patient.
+     *
+     * @param index the number of the patient, used for generating its identifier and its data
+     * @param featureCount the number of phenotypes to add to the patient, at most {@value #MAX_FEATURES}
+     * @return the patient
+     */
+    public Patient createPatient(int index, int featureCount)
+    {
+        return new PhenoTipsPatient(createDocument(index, featureCount));
+    }
+
+    private static <T> T withLogger(T controller)
+    {
+        ReflectionUtils.setFieldValue(controller, "logger", LoggerFactory.getLogger(controller.getClass()));
+        return controller;
+    }
+}
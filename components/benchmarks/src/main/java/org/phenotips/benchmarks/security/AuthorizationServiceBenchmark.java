@@ -0,0 +1,140 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.security;
+
+import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.security.authorization.internal.AuthorizationModuleListProvider;
+import org.phenotips.security.authorization.internal.DefaultAuthorizationService;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentManager;
+import org.xwiki.users.User;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmarks for {@link DefaultAuthorizationService#hasAccess(User, Right, EntityReference)}, with the modules looked
+ * up and ordered through the component manager, like in a running instance. All but the lowest priority module
+ * abstain, which is the worst case, and the most common one for records that are neither owned by nor shared with the
+ * user.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AuthorizationServiceBenchmark
+{
+    /** The number of registered authorization modules, a standard instance has about ten. */
+    @Param({ "10", "30" })
+    private int modules;
+
+    private AuthorizationService service;
+
+    private User user;
+
+    private DocumentReference record;
+
+    /**
+     * Registers the authorization modules and sets up the authorization service.
+     *
+     * @throws Exception if registering the components fails
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        MockitoComponentManager componentManager = new MockitoComponentManager();
+        for (int i = 0; i < this.modules; ++i) {
+            componentManager.registerComponent(AuthorizationModule.class, "module" + i,
+                new FixedDecisionAuthorizationModule(i + 1, null));
+        }
+        componentManager.registerComponent(AuthorizationModule.class, "deny",
+            new FixedDecisionAuthorizationModule(0, Boolean.FALSE));
+
+        AuthorizationModuleListProvider provider = new AuthorizationModuleListProvider();
+        ReflectionUtils.setFieldValue(provider, "componentManager", componentManager);
+        DefaultAuthorizationService authorizationService = new DefaultAuthorizationService();
+        ReflectionUtils.setFieldValue(authorizationService, "logger",
+            LoggerFactory.getLogger(DefaultAuthorizationService.class));
+        ReflectionUtils.setFieldValue(authorizationService, "modules", provider);
+        this.service = authorizationService;
+
+        this.user = mock(User.class);
+        this.record = new DocumentReference("xwiki", "data", "P0000001");
+    }
+
+    /**
+     * Checks view access on a patient record.
+     *
+     * @return the access decision
+     */
+    @Benchmark
+    public boolean hasAccess()
+    {
+        return this.service.hasAccess(this.user, Right.VIEW, this.record);
+    }
+
+    /** An authorization module which always takes the same decision. */
+    private static final class FixedDecisionAuthorizationModule implements AuthorizationModule
+    {
+        private final int priority;
+
+        private final Boolean decision;
+
+        FixedDecisionAuthorizationModule(int priority, Boolean decision)
+        {
+            this.priority = priority;
+            this.decision = decision;
+        }
+
+        @Override
+        public int getPriority()
+        {
+            return this.priority;
+        }
+
+        @Override
+        public Boolean hasAccess(User user, Right access, EntityReference entity)
+        {
+            return this.decision;
+        }
+    }
+}
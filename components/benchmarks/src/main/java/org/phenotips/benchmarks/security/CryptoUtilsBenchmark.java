@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.security;
+
+import org.phenotips.security.encryption.SystemPasswordConfiguration;
+import org.phenotips.security.encryption.internal.DefaultCryptoUtils;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jasypt.util.text.StrongTextEncryptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Decryption throughput of encrypted patient properties, compared with the {@link StrongTextEncryptor} used before
+ * 1.5M1. The setup also checks that values encrypted by either implementation can be read by the other one, and fails
+ * the run if they can't.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CryptoUtilsBenchmark
+{
+    private static final String PASSWORD = "benchmark system password";
+
+    private static final int VALUES = 1000;
+
+    /** The size of the decryption cache, {@code 0} measures the raw decryption throughput. */
+    @Param({ "0", "10000" })
+    private int decryptionCacheSize;
+
+    private DefaultCryptoUtils crypto;
+
+    private StrongTextEncryptor previousEncryptor;
+
+    private List<String> encrypted;
+
+    /**
+     * Sets up both encryptors and encrypts the values to decrypt, checking that they are compatible.
+     *
+     * @throws Exception if the encryption component cannot be initialized
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        ConfigurationSource configuration = mock(ConfigurationSource.class);
+        when(configuration.getProperty("crypto.encryption.decryptionCacheSize", Integer.class))
+            .thenReturn(this.decryptionCacheSize);
+        SystemPasswordConfiguration password = () -> PASSWORD;
+        this.crypto = new DefaultCryptoUtils();
+        ReflectionUtils.setFieldValue(this.crypto, "passwordConfig", password);
+        ReflectionUtils.setFieldValue(this.crypto, "configuration", configuration);
+        this.crypto.initialize();
+
+        this.previousEncryptor = new StrongTextEncryptor();
+        this.previousEncryptor.setPassword(PASSWORD);
+
+        this.encrypted = new ArrayList<>(VALUES);
+        for (int i = 0; i < VALUES; ++i) {
+            String value = "Patient " + i;
+            String previouslyEncrypted = this.previousEncryptor.encrypt(value);
+            if (!value.equals(this.crypto.decryptWithSystemKey(previouslyEncrypted))
+                || !value.equals(this.previousEncryptor.decrypt(this.crypto.encryptWithSystemKey(value)))) {
+                throw new IllegalStateException("Encrypted values are not compatible with the previous encryptor");
+            }
+            this.encrypted.add(previouslyEncrypted);
+        }
+    }
+
+    /** Wipes the cached values. */
+    @TearDown
+    public void tearDown()
+    {
+        this.crypto.dispose();
+    }
+
+    /**
+     * Decrypts random values, as done when loading patient records concurrently.
+     *
+     * @return the decrypted value
+     */
+    @Benchmark
+    @Threads(4)
+    public String decrypt()
+    {
+        return this.crypto.decryptWithSystemKey(randomValue());
+    }
+
+    /**
+     * Decrypts random values with the previous encryptor, as a baseline.
+     *
+     * @return the decrypted value
+     */
+    @Benchmark
+    @Threads(4)
+    public String decryptWithPreviousEncryptor()
+    {
+        return this.previousEncryptor.decrypt(randomValue());
+    }
+
+    /**
+     * Decrypts all the values at once, as done when listing patients.
+     *
+     * @return the decrypted values
+     */
+    @Benchmark
+    public List<String> decryptAll()
+    {
+        return this.crypto.decryptAllWithSystemKey(this.encrypted);
+    }
+
+    private String randomValue()
+    {
+        return this.encrypted.get(ThreadLocalRandom.current().nextInt(VALUES));
+    }
+}
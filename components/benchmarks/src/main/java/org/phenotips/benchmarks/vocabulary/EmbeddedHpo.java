@@ -0,0 +1,168 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.vocabulary;
+
+import org.phenotips.metrics.internal.DefaultMetricsRegistry;
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.internal.DefaultVocabularyReindexManager;
+import org.phenotips.vocabulary.internal.solr.HumanPhenotypeOntology;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HPO vocabulary, backed by an embedded Solr core created in a temporary directory and loaded with a trimmed copy
+ * of the ontology. The real {@link HumanPhenotypeOntology} implementation is used both for indexing and for querying;
+ * this class takes the place of the resource manager, serving the same core for indexing and for searching.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class EmbeddedHpo implements SolrVocabularyResourceManager, Closeable
+{
+    private static final String CORE = "hpo";
+
+    private static final String SOURCE = "/hpo-trimmed.obo";
+
+    private static final List<String> CONFIG_FILES = Arrays.asList("schema.xml", "solrconfig.xml",
+        "solrcore.properties", "protwords.txt", "stopwords.txt", "synonyms.txt", "managed-schema.xml");
+
+    private final Path solrHome;
+
+    private final CoreContainer container;
+
+    private final SolrClient client;
+
+    private final Cache<VocabularyTerm> cache;
+
+    private final HumanPhenotypeOntology vocabulary;
+
+    /**
+     * Creates and indexes the Solr core.
+     *
+     * @param cacheTerms whether terms should be cached, as they are in a running instance, or always fetched from Solr
+     * @throws IOException if the Solr core cannot be created
+     */
+    public EmbeddedHpo(boolean cacheTerms) throws IOException
+    {
+        this.solrHome = Files.createTempDirectory("phenotips-benchmarks-solr");
+        Files.write(this.solrHome.resolve("solr.xml"), "<solr></solr>".getBytes(StandardCharsets.UTF_8));
+        Path configuration = Files.createDirectories(this.solrHome.resolve(CORE).resolve("conf"));
+        for (String file : CONFIG_FILES) {
+            try (InputStream in = HumanPhenotypeOntology.class.getResourceAsStream('/' + CORE + "/conf/" + file)) {
+                if (in != null) {
+                    Files.copy(in, configuration.resolve(file));
+                }
+            }
+        }
+        this.container = new CoreContainer(this.solrHome.toString());
+        this.container.load();
+        this.container.create(CORE, Collections.<String, String>emptyMap());
+        this.client = new EmbeddedSolrServer(this.container, CORE);
+        this.cache = new InMemoryTermCache(cacheTerms);
+
+        this.vocabulary = new HumanPhenotypeOntology();
+        Provider<List<VocabularyExtension>> extensions = Collections::emptyList;
+        ReflectionUtils.setFieldValue(this.vocabulary, "logger", LoggerFactory.getLogger(HumanPhenotypeOntology.class));
+        ReflectionUtils.setFieldValue(this.vocabulary, "externalServicesAccess", this);
+        ReflectionUtils.setFieldValue(this.vocabulary, "extensions", extensions);
+        ReflectionUtils.setFieldValue(this.vocabulary, "metrics", new DefaultMetricsRegistry());
+        // Only used for reporting progress, which is ignored outside reindex jobs
+        ReflectionUtils.setFieldValue(this.vocabulary, "reindexManager", new DefaultVocabularyReindexManager());
+        int status = this.vocabulary.reindex(EmbeddedHpo.class.getResource(SOURCE).toString());
+        if (status != 0) {
+            close();
+            throw new IOException("Failed to index " + SOURCE + ", status " + status);
+        }
+    }
+
+    /**
+     * The vocabulary backed by the embedded core.
+     *
+     * @return the HPO vocabulary
+     */
+    public Vocabulary getVocabulary()
+    {
+        return this.vocabulary;
+    }
+
+    @Override
+    public Cache<VocabularyTerm> getTermCache(Vocabulary vocabulary)
+    {
+        return this.cache;
+    }
+
+    @Override
+    public SolrClient getSolrConnection(Vocabulary vocabulary)
+    {
+        return this.client;
+    }
+
+    @Override
+    public void createReplacementCore(Vocabulary vocabulary)
+    {
+        // The fixture is indexed directly in the live core
+    }
+
+    @Override
+    public void replaceCore(Vocabulary vocabulary)
+    {
+        // The fixture is indexed directly in the live core
+    }
+
+    @Override
+    public SolrClient getReplacementSolrConnection(Vocabulary vocabulary)
+    {
+        return this.client;
+    }
+
+    @Override
+    public void discardReplacementCore(Vocabulary vocabulary)
+    {
+        // The fixture is indexed directly in the live core
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.cache.dispose();
+        this.container.shutdown();
+        FileUtils.deleteDirectory(this.solrHome.toFile());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.vocabulary;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unbounded term cache used instead of the XWiki cache infrastructure, which isn't available in benchmarks. When
+ * disabled, nothing is ever cached, so that every lookup goes to the Solr index.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class InMemoryTermCache implements Cache<VocabularyTerm>
+{
+    private final Map<String, VocabularyTerm> terms = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    /**
+     * Simple constructor.
+     *
+     * @param enabled whether terms should be cached or not
+     */
+    InMemoryTermCache(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void set(String key, VocabularyTerm value)
+    {
+        if (this.enabled) {
+            this.terms.put(key, value);
+        }
+    }
+
+    @Override
+    public VocabularyTerm get(String key)
+    {
+        return this.terms.get(key);
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        this.terms.remove(key);
+    }
+
+    @Override
+    public void removeAll()
+    {
+        this.terms.clear();
+    }
+
+    @Override
+    public void addCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        // Events are not supported
+    }
+
+    @Override
+    public void removeCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        // Events are not supported
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.terms.clear();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.benchmarks.vocabulary;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the distance between HPO terms, computed by
+ * {@link org.phenotips.vocabulary.internal.solr.AbstractSolrVocabularyTerm#getDistanceTo(VocabularyTerm)}, for all
+ * the pairs among a set of phenotypes from different branches of the {@link EmbeddedHpo trimmed HPO}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TermDistanceBenchmark
+{
+    private static final String[] PHENOTYPES = { "HP:0000252", "HP:0000256", "HP:0000271", "HP:0000479",
+        "HP:0000505", "HP:0000365", "HP:0001250", "HP:0001249", "HP:0001263", "HP:0001631", "HP:0001629",
+        "HP:0002650", "HP:0001161", "HP:0004322", "HP:0000098", "HP:0000077", "HP:0001252" };
+
+    /** Whether terms are cached, or fetched from the Solr index every time they are needed. */
+    @Param({ "true", "false" })
+    private boolean termCache;
+
+    private EmbeddedHpo hpo;
+
+    private VocabularyTerm[] terms;
+
+    /**
+     * Indexes the vocabulary and resolves the terms used in the benchmarks.
+     *
+     * @throws IOException if creating the Solr core fails
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        this.hpo = new EmbeddedHpo(this.termCache);
+        Vocabulary vocabulary = this.hpo.getVocabulary();
+        this.terms = new VocabularyTerm[PHENOTYPES.length];
+        for (int i = 0; i < PHENOTYPES.length; ++i) {
+            this.terms[i] = vocabulary.getTerm(PHENOTYPES[i]);
+            if (this.terms[i] == null) {
+                throw new IllegalStateException("Missing term from the HPO fixture: " + PHENOTYPES[i]);
+            }
+        }
+    }
+
+    /**
+     * Deletes the Solr core.
+     *
+     * @throws IOException if cleaning up fails
+     */
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        this.hpo.close();
+    }
+
+    /**
+     * Computes the distance between all pairs of already resolved terms.
+     *
+     * @return the sum of the distances
+     */
+    @Benchmark
+    public long termDistances()
+    {
+        long result = 0;
+        for (int i = 0; i < this.terms.length; ++i) {
+            for (int j = i + 1; j < this.terms.length; ++j) {
+                result += this.terms[i].getDistanceTo(this.terms[j]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the distance between all pairs of terms identified by their IDs, as done by the vocabulary services.
+     *
+     * @return the sum of the distances
+     */
+    @Benchmark
+    public long idDistances()
+    {
+        Vocabulary vocabulary = this.hpo.getVocabulary();
+        long result = 0;
+        for (int i = 0; i < PHENOTYPES.length; ++i) {
+            for (int j = i + 1; j < PHENOTYPES.length; ++j) {
+                result += vocabulary.getDistance(PHENOTYPES[i], PHENOTYPES[j]);
+            }
+        }
+        return result;
+    }
+}
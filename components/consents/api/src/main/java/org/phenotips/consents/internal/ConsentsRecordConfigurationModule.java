@@ -21,6 +21,8 @@
 import org.phenotips.configuration.RecordElement;
 import org.phenotips.configuration.RecordSection;
 import org.phenotips.configuration.spi.RecordConfigurationModule;
+import org.phenotips.consents.Consent;
+import org.phenotips.consents.ConsentManager;
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
 
@@ -29,6 +31,7 @@
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -36,6 +39,7 @@
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * Implementation of {@link RecordConfiguration} that disables all elements that require a consent which hasn't been
@@ -62,6 +66,9 @@ public class ConsentsRecordConfigurationModule implements RecordConfigurationMod
     @Inject
     private ConsentAuthorizer consentAuthorizer;
 
+    @Inject
+    private ConsentManager consentManager;
+
     @Override
     public RecordConfiguration process(RecordConfiguration config)
     {
@@ -114,6 +121,37 @@ private void disableNonConsentedElements(@Nonnull final List<RecordElement> enab
         }
     }
 
+    @Override
+    public String getCacheKey(String recordType)
+    {
+        if (this.dab.getCurrentDocumentReference() == null) {
+            return "";
+        }
+
+        final Patient patient = this.patients.get(this.dab.getCurrentDocumentReference());
+        if (patient == null) {
+            return "";
+        }
+
+        // The filtered form only depends on which consents are missing, and on the fields they affect
+        final Set<Consent> missingConsents = this.consentManager.getMissingConsentsForPatient(patient);
+        if (missingConsents == null) {
+            return null;
+        }
+        final StringBuilder key = new StringBuilder("consents");
+        for (final Consent consent : missingConsents) {
+            key.append(':').append(consent.getId());
+            if (consent.isRequired()) {
+                key.append("!required");
+            } else if (consent.affectsAllFields()) {
+                key.append("!all");
+            } else if (consent.affectsSomeFields()) {
+                key.append('[').append(StringUtils.join(consent.getFields(), ',')).append(']');
+            }
+        }
+        return key.toString();
+    }
+
     @Override
     public int getPriority()
     {
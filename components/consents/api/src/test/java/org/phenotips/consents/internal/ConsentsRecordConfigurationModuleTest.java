@@ -21,6 +21,8 @@
 import org.phenotips.configuration.internal.DefaultRecordConfiguration;
 import org.phenotips.configuration.spi.RecordConfigurationModule;
 import org.phenotips.configuration.spi.UIXRecordSection;
+import org.phenotips.consents.Consent;
+import org.phenotips.consents.ConsentManager;
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
 
@@ -34,6 +36,7 @@
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.junit.Assert;
@@ -201,6 +204,31 @@ public void afterProcessOnlyConsentedSectionsRemain() throws ComponentLookupExce
         Assert.assertFalse(sectionC.isEnabled());
     }
 
+    @Test
+    public void cacheKeyIsEmptyForNonPatients() throws ComponentLookupException
+    {
+        when(this.patients.get(any(DocumentReference.class))).thenReturn(null);
+        Assert.assertEquals("", this.mocker.getComponentUnderTest().getCacheKey(PATIENT_LABEL));
+    }
+
+    @Test
+    public void cacheKeyDescribesMissingConsents() throws ComponentLookupException
+    {
+        final ConsentManager consentManager = this.mocker.getInstance(ConsentManager.class);
+        final Consent required = mockConsent("main", true, null);
+        final Consent all = mockConsent("all", false, Collections.<String>emptyList());
+        final Consent some = mockConsent("some", false, Arrays.asList(FIELD_A_LABEL, FIELD_C_LABEL));
+        final Consent none = mockConsent("none", false, null);
+        when(consentManager.getMissingConsentsForPatient(this.patient))
+            .thenReturn(new LinkedHashSet<>(Arrays.asList(required, all, some, none)));
+
+        Assert.assertEquals("consents:main!required:all!all:some[phenotips.fieldA,phenotips.fieldC]:none",
+            this.mocker.getComponentUnderTest().getCacheKey(PATIENT_LABEL));
+
+        when(consentManager.getMissingConsentsForPatient(this.patient)).thenReturn(Collections.<Consent>emptySet());
+        Assert.assertEquals("consents", this.mocker.getComponentUnderTest().getCacheKey(PATIENT_LABEL));
+    }
+
     @Test
     public void priorityIs90() throws ComponentLookupException
     {
@@ -228,4 +256,15 @@ public void supportsRecordTypeReturnsFalseIfNullOrEmpty() throws ComponentLookup
         Assert.assertFalse(this.mocker.getComponentUnderTest().supportsRecordType(null));
         Assert.assertFalse(this.mocker.getComponentUnderTest().supportsRecordType(""));
     }
+
+    private Consent mockConsent(String id, boolean isRequired, List<String> fields)
+    {
+        final Consent consent = mock(Consent.class);
+        when(consent.getId()).thenReturn(id);
+        when(consent.isRequired()).thenReturn(isRequired);
+        when(consent.getFields()).thenReturn(fields);
+        when(consent.affectsAllFields()).thenReturn(fields != null && fields.isEmpty());
+        when(consent.affectsSomeFields()).thenReturn(fields != null);
+        return consent;
+    }
 }
@@ -22,8 +22,10 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 
 import java.io.File;
@@ -31,20 +33,21 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
 import ontologizer.go.Term;
@@ -55,20 +58,43 @@
 /**
  * An implementation of {@link DiagnosisService} using BOQA, see
  * <a href="http://bioinformatics.oxfordjournals.org/content/28/19/2502.abstract">this article</a>.
+ * <p>
+ * The BOQA network is set up once, when the component is initialized at startup by the {@link BoqaInitializer}. The
+ * marginals are computed by a pool of worker threads owned by this component, one per available processor by default,
+ * configurable using the {@code phenotips.diagnosis.threads} property in {@code xwiki.properties}. BOQA can only split
+ * a computation between threads by starting a new thread pool for each call, so each request is computed by a single
+ * worker instead, and concurrent requests run in parallel, at most one per worker.
+ * </p>
  *
  * @since 1.1M1
  * @version $Id$
  */
 @Singleton
 @Component
-public class DefaultDiagnosisService implements DiagnosisService, Initializable
+public class DefaultDiagnosisService implements DiagnosisService, Initializable, Disposable
 {
+    /** Diseases whose name starts with one of these symbols are not suggested. */
+    private static final Pattern EXCLUDED_NAME = Pattern.compile("[*+^]");
+
+    private static final String OMIM_PREFIX = "OMIM:";
+
     @Inject
     private Logger logger;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     private BOQA boqa;
 
-    private Map<Integer, ByteString> omimMap;
+    /** The BOQA indexes of the OMIM diseases, the only ones that are suggested. */
+    private int[] omimIndexes;
+
+    /** The OMIM identifiers, in the {@code MIM:123456} format, corresponding to {@link #omimIndexes}. */
+    private String[] omimIds;
+
+    /** The workers computing the marginals. */
+    private ExecutorService executor;
 
     @Inject
     private VocabularyManager vocabulary;
@@ -115,13 +141,39 @@ public void initialize() throws InitializationException
 
         this.boqa.setup(this.utils.getGraph(), this.utils.getDataAssociation());
 
-        // Set up our index -> OMIM mapping by flipping the OMIM -> Index mapping in boqa
-        Set<Map.Entry<ByteString, Integer>> omimtonum = this.boqa.item2Index.entrySet();
-        this.omimMap = new HashMap<>(omimtonum.size());
-
-        for (Map.Entry<ByteString, Integer> item : omimtonum) {
-            this.omimMap.put(item.getValue(), item.getKey());
+        // Set up our index -> OMIM mapping from the OMIM -> Index mapping in boqa, ignoring non-OMIM diseases
+        // (BOQA has ORPHANET and DECIPHER as well)
+        List<Integer> indexes = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<ByteString, Integer> item : this.boqa.item2Index.entrySet()) {
+            String itemId = String.valueOf(item.getKey());
+            if (itemId.startsWith(OMIM_PREFIX)) {
+                indexes.add(item.getValue());
+                // Strip 'O' in "OMIM"
+                ids.add(itemId.substring(1));
+            }
         }
+        this.omimIndexes = new int[indexes.size()];
+        for (int i = 0; i < this.omimIndexes.length; ++i) {
+            this.omimIndexes[i] = indexes.get(i);
+        }
+        this.omimIds = ids.toArray(new String[ids.size()]);
+
+        Integer configuredThreads = this.configuration.getProperty("phenotips.diagnosis.threads", Integer.class);
+        int threads = configuredThreads != null && configuredThreads > 0 ? configuredThreads
+            : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "PhenoTips diagnosis " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdownNow();
     }
 
     @Override
@@ -144,68 +196,59 @@ public List<VocabularyTerm> getDiagnosis(List<String> phenotypes, List<String> n
         }
 
         // Get marginals
-        final BOQA.Result res = this.boqa.assignMarginals(o, false, 1);
-
-        // All of this is sorting diseases by marginals
-        Integer[] order = new Integer[res.size()];
-        for (int i = 0; i < order.length; i++) {
-            order[i] = i;
+        BOQA.Result res;
+        try {
+            res = this.executor.submit(() -> this.boqa.assignMarginals(o, false, 1)).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (ExecutionException | RejectedExecutionException ex) {
+            this.logger.warn("Failed to compute the diagnosis: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+        double[] marginals = new double[this.omimIndexes.length];
+        for (int i = 0; i < marginals.length; ++i) {
+            marginals[i] = res.getMarginal(this.omimIndexes[i]);
         }
 
-        Arrays.sort(order, new Comparator<Integer>()
-        {
-            @Override
-            public int compare(Integer o1, Integer o2)
-            {
-                if (res.getMarginal(o1) < res.getMarginal(o2)) {
-                    return 1;
-                }
-                if (res.getMarginal(o1) > res.getMarginal(o2)) {
-                    return -1;
-                }
-                return 0;
-            }
-        });
-
-        // Get top limit results
+        // Get top limit results; some of the best diseases may not be suggested, so start with a few more candidates
+        // than needed, and only select more if these aren't enough
         List<VocabularyTerm> results = new ArrayList<>();
-        for (int id : order) {
-            if (results.size() >= limit) {
-                break;
-            }
-
-            String termId = String.valueOf(this.omimMap.get(id));
-            String vocabularyId = StringUtils.substringBefore(termId, ":");
-
-            // ignore non-OMIM diseases (BOQA has ORPHANET and DECIPHER as well)
-            if (!"OMIM".equals(vocabularyId)) {
-                continue;
+        int examined = 0;
+        int candidates = 2 * limit;
+        while (results.size() < limit && examined < marginals.length) {
+            int[] top = TopScores.select(marginals, candidates);
+            while (examined < top.length && results.size() < limit) {
+                VocabularyTerm term = resolveDisease(this.omimIds[top[examined++]]);
+                if (term != null) {
+                    results.add(term);
+                }
             }
+            candidates *= 2;
+        }
 
-            // Strip 'O' in "OMIM"
-            termId = termId.substring(1);
-
-            VocabularyTerm term = this.vocabulary.resolveTerm(termId);
-
-            if (term == null) {
-                this.logger.warn(String.format(
-                    "Unable to resolve OMIM term '%s' due to outdated OMIM vocabulary.", termId));
-                continue;
-            }
+        this.logger.debug(String.valueOf(results));
 
-            // Do not suggest diseases that start with *, +, and ^
-            Pattern pattern = Pattern.compile("[*+^]");
-            if (pattern.matcher(term.getName().substring(0, 1)).matches()) {
-                continue;
-            }
+        return results;
+    }
 
-            results.add(term);
+    private VocabularyTerm resolveDisease(String termId)
+    {
+        VocabularyTerm term = this.vocabulary.resolveTerm(termId);
 
+        if (term == null) {
+            this.logger.warn(String.format(
+                "Unable to resolve OMIM term '%s' due to outdated OMIM vocabulary.", termId));
+            return null;
         }
 
-        this.logger.debug(String.valueOf(results));
+        // Do not suggest diseases that start with *, +, and ^
+        String name = term.getName();
+        if (name == null || name.isEmpty() || EXCLUDED_NAME.matcher(name.substring(0, 1)).matches()) {
+            return null;
+        }
 
-        return results;
+        return term;
     }
 
     private boolean addTermAndAncestors(Term t, Observations o)
@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.internal;
+
+/**
+ * Selects the positions of the highest scores from an array of scores, using a bounded binary heap of primitive
+ * positions, so that only {@code O(n log k)} comparisons are needed and no boxing takes place, instead of sorting all
+ * the scores.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class TopScores
+{
+    private TopScores()
+    {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Selects the best {@code k} scores. Equal scores are ordered by their position, so that the result is stable
+     * and selecting a larger {@code k} returns the same first positions.
+     *
+     * @param scores the scores to select from
+     * @param k the maximum number of positions to return
+     * @return the positions of the best scores, ordered from the best score to the worst; contains fewer than
+     *         {@code k} positions only if there are fewer than {@code k} scores
+     */
+    static int[] select(double[] scores, int k)
+    {
+        int size = Math.min(k, scores.length);
+        if (size <= 0) {
+            return new int[0];
+        }
+        // Min-heap holding the best positions seen so far, with the worst of them at the root
+        int[] heap = new int[size];
+        int heapSize = 0;
+        for (int i = 0; i < scores.length; ++i) {
+            if (heapSize < size) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, scores);
+            } else if (isBetter(i, heap[0], scores)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+
+        // Repeatedly removing the worst position fills the result from the end
+        int[] result = new int[heapSize];
+        for (int last = heapSize - 1; last >= 0; --last) {
+            result[last] = heap[0];
+            heap[0] = heap[last];
+            siftDown(heap, last, scores);
+        }
+        return result;
+    }
+
+    private static boolean isBetter(int a, int b, double[] scores)
+    {
+        return scores[a] > scores[b] || scores[a] == scores[b] && a < b;
+    }
+
+    private static void siftUp(int[] heap, int position, double[] scores)
+    {
+        int current = position;
+        while (current > 0) {
+            int parent = (current - 1) >>> 1;
+            if (!isBetter(heap[parent], heap[current], scores)) {
+                break;
+            }
+            swap(heap, parent, current);
+            current = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, double[] scores)
+    {
+        int current = 0;
+        while (true) {
+            int worst = current;
+            int left = 2 * current + 1;
+            int right = left + 1;
+            if (left < heapSize && isBetter(heap[worst], heap[left], scores)) {
+                worst = left;
+            }
+            if (right < heapSize && isBetter(heap[worst], heap[right], scores)) {
+                worst = right;
+            }
+            if (worst == current) {
+                return;
+            }
+            swap(heap, worst, current);
+            current = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j)
+    {
+        int temp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temp;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TopScores}.
+ *
+ * @version $Id$
+ */
+public class TopScoresTest
+{
+    @Test
+    public void selectReturnsBestPositionsInOrder()
+    {
+        double[] scores = new double[] { 0.1, 0.7, 0.3, 0.9, 0.5 };
+        Assert.assertArrayEquals(new int[] { 3, 1, 4 }, TopScores.select(scores, 3));
+    }
+
+    @Test
+    public void equalScoresAreOrderedByPosition()
+    {
+        double[] scores = new double[] { 0.5, 0.2, 0.5, 0.5, 0.8 };
+        Assert.assertArrayEquals(new int[] { 4, 0, 2 }, TopScores.select(scores, 3));
+        Assert.assertArrayEquals(new int[] { 4, 0, 2, 3 }, TopScores.select(scores, 4));
+    }
+
+    @Test
+    public void selectWithLargeLimitReturnsAllPositions()
+    {
+        double[] scores = new double[] { 0.2, 0.1, 0.3 };
+        Assert.assertArrayEquals(new int[] { 2, 0, 1 }, TopScores.select(scores, 10));
+    }
+
+    @Test
+    public void selectWithNoScoresOrNonPositiveLimitReturnsEmptyArray()
+    {
+        Assert.assertEquals(0, TopScores.select(new double[0], 5).length);
+        Assert.assertEquals(0, TopScores.select(new double[] { 0.5 }, 0).length);
+    }
+}
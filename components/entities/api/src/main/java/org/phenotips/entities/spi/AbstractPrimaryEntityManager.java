@@ -21,6 +21,7 @@
 import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.entities.PrimaryEntityManager;
 import org.phenotips.entities.internal.LazyPrimaryEntityIterator;
+import org.phenotips.metrics.MetricsRegistry;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.bridge.DocumentModelBridge;
@@ -81,6 +82,9 @@
 @Unstable("New class and interface added in 1.3")
 public abstract class AbstractPrimaryEntityManager<E extends PrimaryEntity> implements PrimaryEntityManager<E>
 {
+    /** The name of the counter holding the number of queries run to find entities. */
+    protected static final String QUERIES_METRIC = "queries";
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -112,6 +116,10 @@
     @Named("local")
     protected EntityReferenceSerializer<String> localSerializer;
 
+    /** Counts the queries run for finding entities. */
+    @Inject
+    protected MetricsRegistry metrics;
+
     /** The concrete {@link PrimaryEntity} instance class being managed. */
     private Class<? extends E> eclass;
 
@@ -192,6 +200,7 @@ public E getByName(String name)
                     + ") as entity where doc.space = :space and doc.title = :name",
                 Query.XWQL).bindValue("space", this.getDataSpace().getName()).bindValue("name", name);
             List<String> docNames = q.execute();
+            this.metrics.increment(QUERIES_METRIC);
             for (String docName : docNames) {
                 return get(docName);
             }
@@ -213,6 +222,7 @@ public Iterator<E> getAll()
                 .bindValue("template2",
                     StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template");
             List<String> docNames = q.execute();
+            this.metrics.increment(QUERIES_METRIC);
             return new LazyPrimaryEntityIterator<>(docNames, this);
         } catch (QueryException ex) {
             this.logger.warn("Failed to query all entities of type [{}]: {}", getEntityXClassReference(),
@@ -288,6 +298,7 @@ protected long getLastUsedId()
                         + ") as entity where doc.space = :space order by doc.name desc",
                     Query.XWQL).bindValue("space", this.getDataSpace().getName()).setLimit(1);
             List<String> crtMaxIDList = q.execute();
+            this.metrics.increment(QUERIES_METRIC);
             if (!crtMaxIDList.isEmpty() && crtMaxIDList.get(0) != null) {
                 crtMaxID = Integer.parseInt(crtMaxIDList.get(0).replaceAll("\\D++", ""));
             }
@@ -173,22 +173,38 @@ public List<Feature> sortFeaturesSimple(@Nonnull Set<? extends Feature> features
     public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features)
     {
         this.sectionFeatureTree = new HashMap<>();
-        List<Feature> positiveList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, true));
-        List<Feature> negativeList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, false));
+        return sortFeaturesWithSections(features, this.sectionFeatureTree);
+    }
+
+    /**
+     * Same as {@link #sortFeaturesWithSections(java.util.Set)}, but the feature sections are put in the passed map
+     * instead of {@link #sectionFeatureTree}, so that patients can be sorted concurrently.
+     *
+     * @param features set of features to sort. Cannot be null
+     * @param sectionFeatureTree will be filled with feature ids mapped to the title of the category they belong to
+     * @return a subset of the passed in features in a specific order
+     */
+    public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features,
+        Map<String, String> sectionFeatureTree)
+    {
+        List<Feature> positiveList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, true), sectionFeatureTree);
+        List<Feature> negativeList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, false), sectionFeatureTree);
 
         positiveList.addAll(negativeList);
         return positiveList;
     }
 
     /**
-     * Fills {@link #sectionFeatureTree} with feature ids mapped to section names. This function is used internally only
-     * in {@link #sortFeaturesWithSections(java.util.Set)}; if changing that, keep in mind the mutation of
-     * {@link #sectionFeatureTree}.
+     * Fills {@code sectionFeatureTree} with feature ids mapped to section names. This function is used internally only
+     * in {@link #sortFeaturesWithSections(java.util.Set, Map)}.
      *
      * @param features list of features to be sorted. Cannot be null
+     * @param sectionFeatureTree the map to fill
      * @return list of features sorted in the same order as {@link #categoryMapping}
      */
-    private List<Feature> sortFeaturesBySection(List<Feature> features)
+    private List<Feature> sortFeaturesBySection(List<Feature> features, Map<String, String> sectionFeatureTree)
     {
         List<Feature> sortedFeatures = new LinkedList<>();
 
@@ -204,7 +220,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
                 while (iter.hasNext()) {
                     Feature feature = iter.next();
                     if (getCategoriesFromOntology(feature.getId()).contains(category)) {
-                        this.sectionFeatureTree.put(feature.getId(), section);
+                        sectionFeatureTree.put(feature.getId(), section);
                         sortedFeatures.add(feature);
                         iter.remove();
                     }
@@ -212,7 +228,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
             }
         }
         for (Feature feature : features) {
-            this.sectionFeatureTree.put(feature.getId(), "No category");
+            sectionFeatureTree.put(feature.getId(), "No category");
         }
         sortedFeatures.addAll(features);
         return sortedFeatures;
@@ -145,8 +145,8 @@ public DataSection phenotypeBody(Patient patient) throws Exception
         if (!categoriesEnabled) {
             sortedFeatures = this.phenotypeHelper.sortFeaturesSimple(features);
         } else {
-            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features);
-            sectionFeatureLookup = this.phenotypeHelper.getSectionFeatureTree();
+            // The helper is shared by all the patients, which may be exported concurrently
+            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features, sectionFeatureLookup);
         }
 
         Boolean lastStatus = null;
@@ -17,22 +17,53 @@
  */
 package org.phenotips.export.internal;
 
+import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.data.Patient;
 
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
- * Assembles the various DataSections.
+ * Assembles the various DataSections. The sections of each patient are independent of the other patients, so they are
+ * generated and styled on a small pool of worker threads, and then appended to the sheet in the original patient
+ * order as soon as they are ready. Only a bounded number of patients are processed ahead of the one being appended.
+ * The workers are shared by all the exports, so concurrent exports compete for the same few threads instead of each
+ * starting its own pool; idle workers are stopped after a minute.
  *
  * @version $Id$
  * @since 1.0RC1
  */
 public class SheetAssembler
 {
+    /** How many patients can be processed ahead of the one being appended, for each worker thread. */
+    private static final int PATIENTS_AHEAD_PER_WORKER = 4;
+
+    /** The number of shared worker threads, also the most patients a single export processes at the same time. */
+    private static final int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+
     /** The global section meant to eventually contain all {@link org.phenotips.export.internal.DataCell}s. */
     private DataSection oneSection = new DataSection();
 
@@ -59,21 +90,7 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
 
         /* Headers MUST be generated first. Some of them contain setup code for the body */
         List<DataSection> headers = generateHeader(converter, enabledFields);
-        List<List<DataSection>> bodySections = generateBody(converter, patients);
-
-        List<DataSection> patientsCombined = new LinkedList<>();
-        for (List<DataSection> patientSections : bodySections) {
-            for (DataSection section : patientSections) {
-                section.finalizeToMatrix();
-                Styler.disallowBodyStyles(section);
-                Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
-                Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
-            }
-
-            DataSection assembled = assembleSectionsX(patientSections, true);
-            Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
-            patientsCombined.add(assembled);
-        }
+        DataSection bodyCombined = generateBody(converter, patients);
 
         /* Inserting styling calls here is fairly unavoidable. Also don't forget to merge BEFORE styling. */
         for (DataSection header : headers) {
@@ -82,7 +99,6 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
             Styler.styleSectionBorder(header, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
         }
 
-        DataSection bodyCombined = assembleSectionsY(patientsCombined, false);
         DataSection headerCombined = assembleSectionsX(headers, true);
 
         /* Add style through functions. Use only with finalized sections. */
@@ -97,52 +113,163 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
     }
 
     /**
-     * Instruction list of which {@link org.phenotips.export.internal.DataToCellConverter}'s functions to call with a
-     * null {@link org.phenotips.export.internal.DataSection} filter.
+     * Generates the styled rows of all the patients, in parallel when possible, and stacks them in patient order.
+     *
+     * @return the combined, not finalized, body section
+     */
+    private DataSection generateBody(DataToCellConverter converter, List<Patient> patients) throws Exception
+    {
+        int parallelism = Math.min(WORKER_THREADS, patients.size());
+        Function<Patient, Callable<DataSection>> tasks = parallelism > 1 ? createParallelTasks(converter) : null;
+        if (tasks == null) {
+            return assembleBody(patients, patient -> () -> generatePatient(converter, patient), null, 1);
+        }
+        return assembleBody(patients, tasks, Workers.INSTANCE, parallelism);
+    }
+
+    /**
+     * Generates the rows of all the patients and stacks them in patient order. When an executor is given, up to
+     * {@link #PATIENTS_AHEAD_PER_WORKER} patients per worker are processed ahead of the one being appended, so the
+     * result is the same as when generating the rows one after the other in the current thread.
      *
-     * @return list of generated, not null {@link org.phenotips.export.internal.DataSection}s
+     * @param patients the patients to export, {@code null} items are skipped
+     * @param tasks creates the task generating the rows of a patient; called in the current thread
+     * @param workers the executor running the tasks, or {@code null} to run them in the current thread
+     * @param parallelism how many workers this export may keep busy
+     * @return the combined, not finalized, body section
+     * @throws Exception if generating the rows of a patient fails
      */
-    private List<List<DataSection>> generateBody(DataToCellConverter converter, List<Patient> patients)
-        throws Exception
+    static DataSection assembleBody(List<Patient> patients, Function<Patient, Callable<DataSection>> tasks,
+        ExecutorService workers, int parallelism) throws Exception
     {
-        List<List<DataSection>> allSections = new LinkedList<>();
-        for (Patient patient : patients) {
-            if (patient == null) {
-                continue;
+        DataSection bodyCombined = new DataSection();
+        Integer offset = 0;
+        if (workers == null) {
+            for (Patient patient : patients) {
+                if (patient != null) {
+                    offset = appendSectionY(bodyCombined, tasks.apply(patient).call(), offset);
+                }
             }
-            List<DataSection> patientSections = new LinkedList<>();
-            patientSections.add(converter.idBody(patient));
-            patientSections.add(converter.documentInfoBody(patient));
-            patientSections.add(converter.patientInfoBody(patient));
-            patientSections.add(converter.familyHistoryBody(patient));
-            patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
-            patientSections.add(converter.prenatalPhenotypeBody(patient));
-            patientSections.add(converter.medicalHistoryBody(patient));
-            patientSections.add(converter.isNormalBody(patient));
-            patientSections.add(converter.phenotypeBody(patient));
-            patientSections.add(converter.genesBody(patient));
-            patientSections.add(converter.variantsBody(patient));
-            patientSections.add(converter.geneticNotesBody(patient));
-            patientSections.add(converter.clinicalDiagnosisBody(patient));
-            patientSections.add(converter.disordersBody(patient));
-            patientSections.add(converter.diagnosisNotesBody(patient));
-            patientSections.add(converter.isSolvedBody(patient));
-
-            /* Null section filter */
-            Iterator<DataSection> it = patientSections.iterator();
-            while (it.hasNext()) {
-                DataSection i = it.next();
-                if (i == null) {
-                    it.remove();
+            return bodyCombined;
+        }
+
+        int maxPending = PATIENTS_AHEAD_PER_WORKER * parallelism;
+        Deque<Future<DataSection>> pending = new ArrayDeque<>(maxPending);
+        try {
+            Iterator<Patient> remaining = patients.iterator();
+            while (remaining.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < maxPending && remaining.hasNext()) {
+                    Patient patient = remaining.next();
+                    if (patient != null) {
+                        pending.add(workers.submit(tasks.apply(patient)));
+                    }
                 }
+                if (!pending.isEmpty()) {
+                    offset = appendSectionY(bodyCombined, getResult(pending.poll()), offset);
+                }
+            }
+        } finally {
+            // Only left over if the export failed; the workers are shared, so running tasks are left to finish
+            for (Future<DataSection> task : pending) {
+                task.cancel(false);
+            }
+        }
+        return bodyCombined;
+    }
+
+    /**
+     * Instruction list of which {@link org.phenotips.export.internal.DataToCellConverter}'s functions to call with a
+     * null {@link org.phenotips.export.internal.DataSection} filter. The resulting sections are finalized, styled, and
+     * combined into the patient's rows.
+     *
+     * @return the styled and finalized rows of the patient
+     */
+    private DataSection generatePatient(DataToCellConverter converter, Patient patient) throws Exception
+    {
+        List<DataSection> patientSections = new ArrayList<>();
+        patientSections.add(converter.idBody(patient));
+        patientSections.add(converter.documentInfoBody(patient));
+        patientSections.add(converter.patientInfoBody(patient));
+        patientSections.add(converter.familyHistoryBody(patient));
+        patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
+        patientSections.add(converter.prenatalPhenotypeBody(patient));
+        patientSections.add(converter.medicalHistoryBody(patient));
+        patientSections.add(converter.isNormalBody(patient));
+        patientSections.add(converter.phenotypeBody(patient));
+        patientSections.add(converter.genesBody(patient));
+        patientSections.add(converter.variantsBody(patient));
+        patientSections.add(converter.geneticNotesBody(patient));
+        patientSections.add(converter.clinicalDiagnosisBody(patient));
+        patientSections.add(converter.disordersBody(patient));
+        patientSections.add(converter.diagnosisNotesBody(patient));
+        patientSections.add(converter.isSolvedBody(patient));
+
+        /* Null section filter */
+        patientSections.removeIf(Objects::isNull);
+
+        for (DataSection section : patientSections) {
+            section.finalizeToMatrix();
+            Styler.disallowBodyStyles(section);
+            Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
+            Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        }
+
+        DataSection assembled = assembleSectionsX(patientSections, true);
+        Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
+        return assembled;
+    }
+
+    /**
+     * Creates the tasks generating the patient rows on the shared workers. Each task runs in its own copy of the
+     * execution context of the current request, since the converters need the current wiki, user, and locale.
+     *
+     * @return a task factory, or {@code null} if the rows must be generated in the current thread
+     */
+    private Function<Patient, Callable<DataSection>> createParallelTasks(DataToCellConverter converter)
+    {
+        final Execution execution;
+        final ExecutionContextManager contextManager;
+        try {
+            ComponentManager cm = ComponentManagerRegistry.getContextComponentManager();
+            execution = cm.getInstance(Execution.class);
+            contextManager = cm.getInstance(ExecutionContextManager.class);
+        } catch (ComponentLookupException | RuntimeException ex) {
+            return null;
+        }
+        final ExecutionContext context = execution.getContext();
+        if (context == null) {
+            return null;
+        }
+        return patient -> {
+            // Tasks are created by the thread submitting them, so the context is cloned while it isn't used
+            ExecutionContext workerContext;
+            try {
+                workerContext = contextManager.clone(context);
+            } catch (ExecutionContextException ex) {
+                throw new IllegalStateException(ex);
             }
-            allSections.add(patientSections);
+            return () -> {
+                execution.setContext(workerContext);
+                try {
+                    return generatePatient(converter, patient);
+                } finally {
+                    execution.removeContext();
+                }
+            };
+        };
+    }
+
+    private static DataSection getResult(Future<DataSection> result) throws Exception
+    {
+        try {
+            return result.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
         }
-        return allSections;
     }
 
     /**
-     * Same as {@link #generateBody(DataToCellConverter, java.util.List)} but for header sections. Most of header
+     * Same as {@link #generatePatient(DataToCellConverter, Patient)} but for header sections. Most of header
      * functions from {@link org.phenotips.export.internal.DataToCellConverter} contain some set up code.
      */
     private List<DataSection> generateHeader(DataToCellConverter converter, Set<String> enabledFields) throws Exception
@@ -205,13 +332,7 @@ private DataSection assembleSectionsY(List<DataSection> sections, Boolean finali
 
         Integer offset = 0;
         for (DataSection section : sections) {
-            Set<DataCell> cells = section.getCellList();
-
-            for (DataCell cell : cells) {
-                cell.setY(cell.getY() + offset);
-                combinedSection.addCell(cell);
-            }
-            offset += section.getMaxY() + 1;
+            offset = appendSectionY(combinedSection, section, offset);
         }
         if (finalize) {
             combinedSection.finalizeToMatrix();
@@ -220,6 +341,20 @@ private DataSection assembleSectionsY(List<DataSection> sections, Boolean finali
         return combinedSection;
     }
 
+    /**
+     * Appends a section below the ones already added to a combined section.
+     *
+     * @return the offset at which the next section should be appended
+     */
+    private static Integer appendSectionY(DataSection combinedSection, DataSection section, Integer offset)
+    {
+        for (DataCell cell : section.getCellList()) {
+            cell.setY(cell.getY() + offset);
+            combinedSection.addCell(cell);
+        }
+        return offset + section.getMaxY() + 1;
+    }
+
     /**
      * @return a {@link org.phenotips.export.internal.DataSection} that contains all
      *         {@link org.phenotips.export.internal.DataCell}s
@@ -236,4 +371,23 @@ public Integer getHeaderHeight()
     {
         return this.headerHeight;
     }
+
+    /** Lazily creates the worker pool shared by all the exports. */
+    private static final class Workers
+    {
+        private static final ExecutorService INSTANCE = createWorkers();
+
+        private static ExecutorService createWorkers()
+        {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor result = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(), task -> {
+                    Thread thread = new Thread(task, "PhenoTips spreadsheet export " + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            result.allowCoreThreadTimeOut(true);
+            return result;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Service for exporting a list of patients as a JSON array. Patients are loaded and written to the output one at a
+ * time, so the memory needed doesn't depend on the number of exported patients.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Component
+@Named("jsonexport")
+@Singleton
+public class JSONExportService implements ScriptService
+{
+    /** Factory for the JSON streams used for writing the export. */
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private PatientRepository patientRepository;
+
+    /** Used for obtaining the current user. */
+    @Inject
+    private UserManager userManager;
+
+    /** Used for checking access rights. */
+    @Inject
+    private AuthorizationService access;
+
+    /**
+     * Export the provided list of patients into a JSON array, containing the specified fields. The resulting JSON will
+     * be sent through the provided output stream, usually the {@code $response}'s output stream. Patients that don't
+     * exist or that the current user cannot view are skipped.
+     *
+     * @param patientIds list of patient IDs of the the patients to export
+     * @param enabledFields the names of the fields to export, all available fields are exported if {@code null}
+     * @param outputStream the output stream where the resulting JSON will be sent
+     */
+    public void export(List<String> patientIds, Collection<String> enabledFields, OutputStream outputStream)
+    {
+        try (JsonGenerator generator = this.jsonFactory.createGenerator(outputStream)) {
+            // The output stream is managed by the caller
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            User currentUser = this.userManager.getCurrentUser();
+            generator.writeStartArray();
+            for (String patientId : patientIds) {
+                Patient patient = this.patientRepository.get(patientId);
+                if (patient == null
+                    || !this.access.hasAccess(currentUser, Right.VIEW, patient.getDocumentReference())) {
+                    continue;
+                }
+                generator.writeStartObject();
+                patient.writeJSON(generator, enabledFields);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (Exception ex) {
+            this.logger.error("Error caught while generating a JSON export", ex);
+        }
+    }
+}
@@ -215,5 +215,12 @@ public void sortFeaturesWithSections() throws Exception
         Assert.assertTrue(sorted.contains(featureThree));
         Assert.assertTrue(sorted.contains(featureFour));
         Assert.assertTrue(helpersSpy.getSectionFeatureTree().containsKey("id4"));
+
+        // Sorting into a caller provided map leaves the shared tree alone
+        Map<String, String> previousTree = helpersSpy.getSectionFeatureTree();
+        Map<String, String> sections = new HashMap<>();
+        Assert.assertEquals(sorted, helpersSpy.sortFeaturesWithSections(features, sections));
+        Assert.assertEquals(previousTree, sections);
+        Assert.assertSame(previousTree, helpersSpy.getSectionFeatureTree());
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SheetAssembler}.
+ *
+ * @version $Id$
+ */
+public class SheetAssemblerTest
+{
+    private final Random random = new Random(42);
+
+    private final List<Patient> patients = new ArrayList<>();
+
+    private ExecutorService workers;
+
+    @Before
+    public void setUp()
+    {
+        this.workers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 100; ++i) {
+            Patient patient = mock(Patient.class);
+            when(patient.getId()).thenReturn("P" + i);
+            this.patients.add(patient);
+        }
+        // Skipped
+        this.patients.add(50, null);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.workers.shutdownNow();
+    }
+
+    @Test
+    public void parallelRowsAreAssembledLikeSerialRows() throws Exception
+    {
+        DataSection serial = SheetAssembler.assembleBody(this.patients, this::rows, null, 1);
+        DataSection parallel = SheetAssembler.assembleBody(this.patients, this::slowRows, this.workers, 4);
+
+        Assert.assertEquals(serial.getMaxX(), parallel.getMaxX());
+        Assert.assertEquals(serial.getMaxY(), parallel.getMaxY());
+        Assert.assertEquals(describe(serial), describe(parallel));
+        // The rows of each patient follow the rows of the previous patient
+        Assert.assertEquals("P0:0@0,0", describe(parallel).get(0));
+        Assert.assertTrue(describe(parallel).contains("P99:0@0," + serial.getMaxY()));
+    }
+
+    @Test
+    public void failuresArePropagated() throws Exception
+    {
+        Function<Patient, Callable<DataSection>> failing = patient -> "P42".equals(patient.getId()) ? () -> {
+            throw new IllegalStateException("P42");
+        } : slowRows(patient);
+        try {
+            SheetAssembler.assembleBody(this.patients, failing, this.workers, 4);
+            Assert.fail("Failures must be propagated");
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals("P42", ex.getMessage());
+        }
+    }
+
+    /** Patients have between one and three rows, with one cell on the first row and two on the others. */
+    private Callable<DataSection> rows(Patient patient)
+    {
+        return () -> {
+            int number = Integer.parseInt(patient.getId().substring(1));
+            DataSection result = new DataSection();
+            for (int y = 0; y <= number % 3; ++y) {
+                for (int x = 0; x <= Math.min(y, 1); ++x) {
+                    result.addCell(new DataCell(patient.getId() + ':' + x, x, y));
+                }
+            }
+            return result;
+        };
+    }
+
+    /** Same as {@link #rows(Patient)}, but taking a random time, so that the rows are ready out of order. */
+    private Callable<DataSection> slowRows(Patient patient)
+    {
+        int delay = this.random.nextInt(5);
+        Callable<DataSection> rows = rows(patient);
+        return () -> {
+            Thread.sleep(delay);
+            return rows.call();
+        };
+    }
+
+    private List<String> describe(DataSection section)
+    {
+        List<String> result = new ArrayList<>();
+        for (DataCell cell : section.getCellList()) {
+            result.add(cell.getValue() + '@' + cell.getX() + ',' + cell.getY());
+        }
+        return result;
+    }
+}
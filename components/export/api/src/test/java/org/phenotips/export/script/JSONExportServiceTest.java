@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link JSONExportService} script service.
+ *
+ * @version $Id$
+ */
+public class JSONExportServiceTest
+{
+    private static final List<String> FIELDS = Collections.singletonList("phenotype");
+
+    @Mock
+    private Logger logger;
+
+    @Mock
+    private PatientRepository repository;
+
+    @Mock
+    private UserManager userManager;
+
+    @Mock
+    private AuthorizationService access;
+
+    @Mock
+    private User user;
+
+    @Mock
+    private Patient patient1;
+
+    @Mock
+    private Patient patient2;
+
+    private JSONExportService service;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        MockitoAnnotations.initMocks(this);
+        this.service = new JSONExportService();
+        ReflectionUtils.setFieldValue(this.service, "logger", this.logger);
+        ReflectionUtils.setFieldValue(this.service, "patientRepository", this.repository);
+        ReflectionUtils.setFieldValue(this.service, "userManager", this.userManager);
+        ReflectionUtils.setFieldValue(this.service, "access", this.access);
+
+        when(this.userManager.getCurrentUser()).thenReturn(this.user);
+        mockPatient(this.patient1, "P0000001");
+        mockPatient(this.patient2, "P0000002");
+    }
+
+    @Test
+    public void accessiblePatientsAreExported() throws IOException
+    {
+        Assert.assertEquals("[{\"id\":\"P0000001\"},{\"id\":\"P0000002\"}]",
+            export(Arrays.asList("P0000001", "P0000002", "P0000003")));
+        verify(this.patient1).writeJSON(any(JsonGenerator.class), eq(FIELDS));
+    }
+
+    @Test
+    public void inaccessiblePatientsAreSkipped()
+    {
+        when(this.access.hasAccess(this.user, Right.VIEW, this.patient1.getDocumentReference())).thenReturn(false);
+        Assert.assertEquals("[{\"id\":\"P0000002\"}]", export(Arrays.asList("P0000001", "P0000002")));
+    }
+
+    @Test
+    public void emptyListExportsEmptyArray()
+    {
+        Assert.assertEquals("[]", export(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void serializationErrorsAreLogged() throws IOException
+    {
+        IOException exception = new IOException("Broken pipe");
+        doThrow(exception).when(this.patient2).writeJSON(any(JsonGenerator.class), any(Collection.class));
+        export(Arrays.asList("P0000001", "P0000002"));
+        verify(this.logger).error("Error caught while generating a JSON export", exception);
+    }
+
+    private void mockPatient(Patient patient, String id) throws IOException
+    {
+        DocumentReference reference = new DocumentReference("xwiki", "data", id);
+        when(this.repository.get(id)).thenReturn(patient);
+        when(patient.getDocumentReference()).thenReturn(reference);
+        when(this.access.hasAccess(this.user, Right.VIEW, reference)).thenReturn(true);
+        doAnswer(invocation -> {
+            ((JsonGenerator) invocation.getArguments()[0]).writeStringField("id", id);
+            return null;
+        }).when(patient).writeJSON(any(JsonGenerator.class), any(Collection.class));
+    }
+
+    private String export(List<String> patientIds)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.service.export(patientIds, FIELDS, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of all the family records, with their identifiers and the identifiers and names of their members, used for
+ * listing and searching families without querying and loading every family document. Access rights of the current
+ * user are checked while going through the families, so only the requested number of accessible families is ever
+ * checked and returned.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface FamilyIndex
+{
+    /**
+     * Lists families in ascending order of their identifier, using keyset pagination: the next page starts right after
+     * the last family identifier returned in the previous page.
+     *
+     * @param after the identifier of the last family in the previous page, or {@code null} to start from the first
+     *            family; it doesn't have to be the identifier of an existing family
+     * @param limit the maximum number of families to return
+     * @param right the right that the current user must have on each returned family
+     * @return the requested page of families, may be empty
+     */
+    List<FamilySummary> list(String after, int limit, Right right);
+
+    /**
+     * Searches families whose identifier or external identifier contains the input, or which have a member whose
+     * identifier, external identifier or name contains the input. Matching is case insensitive. Member names are only
+     * matched if patient names are enabled in the patient record configuration. A family found through one of its
+     * members is only returned if the current user has the required right on that member.
+     *
+     * @param input the text to search for
+     * @param limit the maximum number of families to return
+     * @param right the right that the current user must have on each returned family, or on the matched member
+     * @param order the order of the results; if {@code null}, families are returned in ascending order of their
+     *            identifier, which is faster since results don't need to be sorted
+     * @return the matching families, may be empty
+     */
+    List<FamilySummary> search(String input, int limit, Right right, Comparator<FamilySummary> order);
+
+    /**
+     * Adds a family to the index, or updates the indexed data if the family is already indexed.
+     *
+     * @param family the family to index
+     */
+    void index(Family family);
+
+    /**
+     * Removes a family from the index.
+     *
+     * @param family the family to remove
+     */
+    void delete(Family family);
+
+    /**
+     * Updates the indexed identifiers and name of a patient, if the patient is a member of an indexed family.
+     *
+     * @param patient the patient to reindex
+     */
+    void index(Patient patient);
+
+    /**
+     * Removes a patient from the members of its family.
+     *
+     * @param patient the patient to remove
+     */
+    void delete(Patient patient);
+}
@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+
+/**
+ * Lightweight description of a family record, as stored in the {@link FamilyIndex}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public interface FamilySummary
+{
+    /**
+     * @return the internal identifier of the family, see {@link Family#getId()}
+     */
+    String getId();
+
+    /**
+     * @return the external identifier of the family, an empty string if not set
+     */
+    String getExternalId();
+
+    /**
+     * @return a reference to the document storing the family
+     */
+    DocumentReference getDocumentReference();
+
+    /**
+     * @return an unmodifiable list with the identifiers of the patient records in this family
+     */
+    List<String> getMemberIds();
+
+    /**
+     * For search results, the family member that matched the search, when the family was found through one of its
+     * members rather than through its own identifiers.
+     *
+     * @return the identifier of the matched patient record, or {@code null} if the family itself matched or this is
+     *         not a search result
+     */
+    String getMatchedMemberId();
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * A typed, read-only view of a family pedigree, with the members and the relationships between them indexed so that
+ * relatives, affected status and consanguinity can be queried without walking the raw pedigree JSON.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public interface PedigreeGraph
+{
+    /**
+     * All the members of the pedigree, ordered by their node identifier.
+     *
+     * @return an unmodifiable list of members, may be empty
+     */
+    List<PedigreeMember> getMembers();
+
+    /**
+     * @param nodeId the identifier of a node in the pedigree
+     * @return the member with the requested node identifier, or {@code null} if there's no such member
+     */
+    PedigreeMember getMember(int nodeId);
+
+    /**
+     * @param patientId the identifier of a PhenoTips patient record
+     * @return the member linked to the requested patient record, or {@code null} if the patient isn't in the pedigree
+     */
+    PedigreeMember getMemberByPatientId(String patientId);
+
+    /**
+     * @return the proband of the family, or {@code null} if no proband is set
+     */
+    PedigreeMember getProband();
+
+    /**
+     * The parents of a member, as drawn in the pedigree; this includes adoptive parents.
+     *
+     * @param member a member of this pedigree
+     * @return an unmodifiable list of at most two members, may be empty
+     */
+    List<PedigreeMember> getParents(PedigreeMember member);
+
+    /**
+     * The children of a member, from all of its relationships, as drawn in the pedigree.
+     *
+     * @param member a member of this pedigree
+     * @return an unmodifiable list of members, may be empty
+     */
+    List<PedigreeMember> getChildren(PedigreeMember member);
+
+    /**
+     * The members with which the given member has a relationship.
+     *
+     * @param member a member of this pedigree
+     * @return an unmodifiable list of members, may be empty
+     */
+    List<PedigreeMember> getPartners(PedigreeMember member);
+
+    /**
+     * The other children of the relationship a member descends from.
+     *
+     * @param member a member of this pedigree
+     * @return an unmodifiable list of members, may be empty
+     */
+    List<PedigreeMember> getSiblings(PedigreeMember member);
+
+    /**
+     * @return the number of generations drawn in the pedigree
+     */
+    int getGenerationCount();
+
+    /**
+     * @param generation a generation number, starting at {@code 1} for the oldest generation
+     * @return an unmodifiable list of the members in the requested generation, may be empty
+     */
+    List<PedigreeMember> getGeneration(int generation);
+
+    /**
+     * The coefficient of relationship between two members, i.e. the expected fraction of alleles they share by
+     * descent. Adoptive links are not taken into account.
+     *
+     * @param first a member of this pedigree
+     * @param second another member of this pedigree
+     * @return a value between {@code 0} (unrelated) and {@code 1} (the same member), may be higher than {@code 0.5}
+     *         for relatives from a consanguineous family
+     */
+    double getRelatedness(PedigreeMember first, PedigreeMember second);
+
+    /**
+     * The blood relatives of a member, up to the requested degree of relationship. The degree is {@code 1} for
+     * parents, children and full siblings, {@code 2} for grandparents, grandchildren, half siblings, aunts, uncles,
+     * nieces and nephews, {@code 3} for first cousins and so on.
+     *
+     * @param member a member of this pedigree
+     * @param maxDegree the maximum degree of relationship to return
+     * @return the relatives mapped to their degree of relationship, ordered by degree, may be empty
+     */
+    Map<PedigreeMember, Integer> getRelatives(PedigreeMember member, int maxDegree);
+
+    /**
+     * @return an unmodifiable list of the members marked as affected, may be empty
+     */
+    List<PedigreeMember> getAffectedMembers();
+
+    /**
+     * @param termId the identifier of a phenotype or disorder, e.g. {@code HP:0001250} or {@code MIM:123456}
+     * @return an unmodifiable list of the members in which the term is present, may be empty
+     */
+    List<PedigreeMember> getMembersWithTerm(String termId);
+
+    /**
+     * Checks if two members are blood relatives. If the two members have a relationship explicitly marked as
+     * consanguineous or not consanguineous in the pedigree, that takes precedence.
+     *
+     * @param first a member of this pedigree
+     * @param second another member of this pedigree
+     * @return {@code true} if the two members are consanguineous
+     */
+    boolean isConsanguineous(PedigreeMember first, PedigreeMember second);
+
+    /**
+     * @return {@code true} if at least one relationship in the pedigree is consanguineous
+     */
+    boolean hasConsanguinity();
+
+    /**
+     * Retrieve the pedigree graph in JSON format, listing all the members with the identifiers of their parents,
+     * children and partners.
+     *
+     * @return a new JSON object
+     */
+    JSONObject toJSON();
+}
@@ -0,0 +1,41 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Provides {@link PedigreeGraph pedigree graphs} for families. Graphs are built once from the stored pedigree and
+ * reused until the family record changes.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface PedigreeGraphManager
+{
+    /**
+     * Retrieve the graph of the pedigree currently stored in a family. No access rights are checked.
+     *
+     * @param family the family whose pedigree to retrieve
+     * @return the pedigree graph, or {@code null} if the family is {@code null} or doesn't have a pedigree
+     */
+    PedigreeGraph getGraph(Family family);
+}
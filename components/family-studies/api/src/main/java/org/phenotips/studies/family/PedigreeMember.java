@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Set;
+
+import org.json.JSONObject;
+
+/**
+ * A person node in a {@link PedigreeGraph}. Members are immutable snapshots of the data stored in the pedigree JSON
+ * at the time the graph was built.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public interface PedigreeMember
+{
+    /**
+     * The identifier of the node inside the pedigree, unique only within its pedigree.
+     *
+     * @return the pedigree node identifier
+     */
+    int getNodeId();
+
+    /**
+     * The identifier of the PhenoTips patient record linked to this node, if any.
+     *
+     * @return the linked patient identifier, or {@code null} if the node isn't linked to a patient record
+     */
+    String getPatientId();
+
+    /**
+     * The sex of this member, as stored in the pedigree.
+     *
+     * @return one of {@code M}, {@code F}, {@code O} or {@code U}
+     */
+    String getSex();
+
+    /**
+     * The generation this member belongs to, counted from the oldest generation in the pedigree.
+     *
+     * @return a positive generation number, or {@code 0} for members not drawn in the pedigree
+     */
+    int getGeneration();
+
+    /**
+     * @return {@code true} if this member is the proband of the family
+     */
+    boolean isProband();
+
+    /**
+     * @return {@code true} if this member is drawn in the pedigree, {@code false} for family members only linked to
+     *         the family record
+     */
+    boolean isInPedigree();
+
+    /**
+     * @return {@code true} if this member is marked as affected in the pedigree
+     */
+    boolean isAffected();
+
+    /**
+     * The carrier status set in the pedigree.
+     *
+     * @return one of {@code affected}, {@code carrier}, {@code presymptomatic}, or an empty string if not set
+     */
+    String getCarrierStatus();
+
+    /**
+     * The identifiers of the phenotypes observed in this member and of the disorders it was diagnosed with.
+     *
+     * @return an unmodifiable set of term identifiers, may be empty
+     */
+    Set<String> getPresentTerms();
+
+    /**
+     * Retrieve this member in JSON format.
+     *
+     * @return a new JSON object
+     */
+    JSONObject toJSON();
+}
@@ -62,10 +62,9 @@ public boolean matches(Object otherEvent)
             if (!StringUtils.equals(otherFamilyEvent.getEventType(), this.eventType)) {
                 return false;
             }
-            if (this.family == null) {
-                return false;
-            }
-            return this.family.equals(otherFamilyEvent.getFamily());
+            return this.family == null || this.family.getDocumentReference() == null
+                || (otherFamilyEvent.getFamily() != null && this.family.getDocumentReference().equals(
+                    otherFamilyEvent.getFamily().getDocumentReference()));
         }
         return false;
     }
@@ -67,14 +67,7 @@ public String getImage(String highlightCurrentPatientId)
     @Override
     public String getImage(String highlightCurrentPatientId, int width, int height)
     {
-        String svg = SvgUpdater.setCurrentPatientStylesInSvg(this.image, highlightCurrentPatientId);
-        if (width > 0) {
-            svg = SvgUpdater.setSVGWidth(svg, width);
-        }
-        if (height > 0) {
-            svg = SvgUpdater.setSVGHeight(svg, height);
-        }
-        return svg;
+        return SvgUpdater.getStyledSvg(this.image, highlightCurrentPatientId, width, height);
     }
 
     @Override
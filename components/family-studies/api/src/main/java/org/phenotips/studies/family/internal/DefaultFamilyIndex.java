@@ -0,0 +1,393 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.configuration.RecordConfigurationManager;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientData;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.internal.LazyIndexLoader;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyIndex;
+import org.phenotips.studies.family.FamilySummary;
+import org.phenotips.studies.family.internal.FamilyTextIndex.FamilyEntry;
+import org.phenotips.studies.family.internal.FamilyTextIndex.MemberEntry;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link FamilyIndex}, keeping a {@link FamilyTextIndex} in memory. The index is loaded
+ * from the database with two queries the first time it is needed, and then kept up to date by the
+ * {@link FamilyIndexListener}. Searches can run concurrently, while updates need exclusive access to the index.
+ * Loading, and retrying failed loads, is managed by a {@link LazyIndexLoader}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultFamilyIndex implements FamilyIndex
+{
+    /** Lists all the families with their external identifier. */
+    private static final String FAMILIES_QUERY = "select doc.name, family.external_id"
+        + " from Document doc, doc.object(PhenoTips.FamilyClass) as family where doc.name <> :t";
+
+    /** Lists all the patients which belong to a family, with their identifiers and names. */
+    private static final String MEMBERS_QUERY = "select doc.name, familyref.reference, patient.external_id,"
+        + " patient.first_name, patient.last_name from Document doc, doc.object(PhenoTips.PatientClass) as patient,"
+        + " doc.object(PhenoTips.FamilyReferenceClass) as familyref where doc.name <> :t";
+
+    private static final String TEMPLATE_PARAMETER = "t";
+
+    private static final String FIRST_NAME = "first_name";
+
+    private static final String LAST_NAME = "last_name";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    private PatientRepository patients;
+
+    @Inject
+    private RecordConfigurationManager configuration;
+
+    /** Used for obtaining the current user. */
+    @Inject
+    private UserManager userManager;
+
+    /** Used for checking access rights. */
+    @Inject
+    private AuthorizationService access;
+
+    /** Parses family references and identifiers into proper references. */
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> resolver;
+
+    private final FamilyTextIndex index = new FamilyTextIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LazyIndexLoader loader = new LazyIndexLoader(this.lock, this::load);
+
+    @Override
+    public List<FamilySummary> list(String after, int limit, Right right)
+    {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        this.loader.ensureLoaded();
+        User user = this.userManager.getCurrentUser();
+        List<FamilySummary> result = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            Map<String, FamilyEntry> families =
+                after == null ? this.index.getFamilies() : this.index.getFamilies().tailMap(after, false);
+            for (FamilyEntry family : families.values()) {
+                if (this.access.hasAccess(user, right, getFamilyReference(family.id))) {
+                    result.add(toSummary(family, null));
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public List<FamilySummary> search(String input, int limit, Right right, Comparator<FamilySummary> order)
+    {
+        String query = FamilyTextIndex.normalize(input);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        this.loader.ensureLoaded();
+        User user = this.userManager.getCurrentUser();
+        boolean matchNames = this.configuration.getConfiguration("patient").getEnabledFieldNames().contains(FIRST_NAME);
+        List<FamilySummary> result = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            Iterable<String> candidates = this.index.getCandidates(query);
+            if (order != null) {
+                // Only the text matches are sorted, access rights are still checked lazily in the requested order
+                List<FamilySummary> matches = new ArrayList<>();
+                for (String id : candidates) {
+                    FamilyEntry family = this.index.getFamilies().get(id);
+                    if (family.matches(query) || !getMatchingMembers(family, query, matchNames).isEmpty()) {
+                        matches.add(toSummary(family, null));
+                    }
+                }
+                Collections.sort(matches, order);
+                List<String> sorted = new ArrayList<>(matches.size());
+                for (FamilySummary match : matches) {
+                    sorted.add(match.getId());
+                }
+                candidates = sorted;
+            }
+            for (String id : candidates) {
+                FamilySummary match = check(this.index.getFamilies().get(id), query, matchNames, user, right);
+                if (match != null) {
+                    result.add(match);
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public void index(Family family)
+    {
+        if (!this.loader.isUpdateNeeded(family)) {
+            return;
+        }
+        List<String> memberIds = family.getMembersIds();
+        if (memberIds == null) {
+            memberIds = Collections.emptyList();
+        }
+        // Load the new members outside the lock, so that searches aren't blocked by the database
+        Map<String, Patient> newMembers = new HashMap<>();
+        this.lock.readLock().lock();
+        try {
+            for (String memberId : memberIds) {
+                if (StringUtils.isNotBlank(memberId) && !this.index.hasMember(memberId)) {
+                    newMembers.put(memberId, null);
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        for (String memberId : newMembers.keySet()) {
+            newMembers.put(memberId, this.patients.get(memberId));
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            // A load running meanwhile may have failed, then the next load will read this family
+            if (!this.loader.isLoaded()) {
+                return;
+            }
+            Map<String, MemberEntry> knownMembers = new LinkedHashMap<>();
+            for (String memberId : memberIds) {
+                MemberEntry member = this.index.getMember(memberId);
+                if (member != null) {
+                    knownMembers.put(memberId, member);
+                }
+            }
+            this.index.putFamily(family.getId(), family.getExternalId(), memberIds);
+            for (MemberEntry member : knownMembers.values()) {
+                this.index.putMember(member.id, member.externalId, member.name);
+            }
+            for (Patient patient : newMembers.values()) {
+                if (patient != null) {
+                    this.index.putMember(patient.getId(), patient.getExternalId(), getName(patient));
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Family family)
+    {
+        if (!this.loader.isUpdateNeeded(family)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if (this.loader.isLoaded()) {
+                this.index.removeFamily(family.getId());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void index(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        String name = getName(patient);
+        this.lock.writeLock().lock();
+        try {
+            // Patients outside families are not indexed, and patients joining a family are indexed with the family
+            if (this.loader.isLoaded()) {
+                this.index.putMember(patient.getId(), patient.getExternalId(), name);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if (this.loader.isLoaded()) {
+                this.index.removeMember(patient.getId());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a family matches a query and is accessible, either directly or through one of its members.
+     *
+     * @return the summary of the accessible match, or {@code null} if the family doesn't match or isn't accessible
+     */
+    private FamilySummary check(FamilyEntry family, String query, boolean matchNames, User user, Right right)
+    {
+        if (family.matches(query) && this.access.hasAccess(user, right, getFamilyReference(family.id))) {
+            return toSummary(family, null);
+        }
+        for (String memberId : getMatchingMembers(family, query, matchNames)) {
+            if (this.access.hasAccess(user, right, this.resolver.resolve(memberId, Patient.DEFAULT_DATA_SPACE))) {
+                return toSummary(family, memberId);
+            }
+        }
+        return null;
+    }
+
+    private List<String> getMatchingMembers(FamilyEntry family, String query, boolean matchNames)
+    {
+        List<String> result = new ArrayList<>();
+        for (String memberId : family.memberIds) {
+            MemberEntry member = this.index.getMember(memberId);
+            if (member == null ? FamilyTextIndex.normalize(memberId).contains(query)
+                : member.matches(query, matchNames)) {
+                result.add(memberId);
+            }
+        }
+        return result;
+    }
+
+    private FamilySummary toSummary(FamilyEntry family, String matchedMemberId)
+    {
+        return new DefaultFamilySummary(family.id, family.externalId, getFamilyReference(family.id), family.memberIds,
+            matchedMemberId);
+    }
+
+    private DocumentReference getFamilyReference(String id)
+    {
+        return this.resolver.resolve(id, Family.DATA_SPACE);
+    }
+
+    private String getName(Patient patient)
+    {
+        PatientData<String> names = patient.getData("patientName");
+        if (names == null) {
+            return null;
+        }
+        return joinName(names.get(FIRST_NAME), names.get(LAST_NAME));
+    }
+
+    private String joinName(String firstName, String lastName)
+    {
+        return String.format("%s %s", StringUtils.defaultString(firstName), StringUtils.defaultString(lastName))
+            .trim();
+    }
+
+    /**
+     * Reads all the families and their members from the database. Must be called while holding the write lock.
+     *
+     * @return {@code true} if the families were loaded, {@code false} if the database couldn't be read
+     */
+    private boolean load()
+    {
+        long start = System.currentTimeMillis();
+        try {
+            Query q = this.qm.createQuery(FAMILIES_QUERY, Query.XWQL);
+            q.bindValue(TEMPLATE_PARAMETER, "FamilyTemplate");
+            List<Object[]> familyRows = q.execute();
+
+            q = this.qm.createQuery(MEMBERS_QUERY, Query.XWQL);
+            q.bindValue(TEMPLATE_PARAMETER, "PatientTemplate");
+            List<Object[]> memberRows = q.execute();
+
+            this.index.clear();
+            Map<String, List<String>> familyMembers = new HashMap<>();
+            for (Object[] row : memberRows) {
+                String reference = (String) row[1];
+                if (StringUtils.isNotBlank(reference)) {
+                    String familyId = this.resolver.resolve(reference, Family.DATA_SPACE).getName();
+                    familyMembers.computeIfAbsent(familyId, k -> new ArrayList<>()).add((String) row[0]);
+                }
+            }
+
+            for (Object[] row : familyRows) {
+                String id = (String) row[0];
+                List<String> members = familyMembers.get(id);
+                this.index.putFamily(id, (String) row[1], members == null ? Collections.<String>emptyList() : members);
+            }
+            for (Object[] row : memberRows) {
+                this.index.putMember((String) row[0], (String) row[2], joinName((String) row[3], (String) row[4]));
+            }
+            this.logger.info("Indexed [{}] families for listing and search in [{}] ms",
+                this.index.getFamilies().size(), System.currentTimeMillis() - start);
+            return true;
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to load families for listing and search: {}", ex.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.FamilySummary;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable implementation of {@link FamilySummary}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class DefaultFamilySummary implements FamilySummary
+{
+    private final String id;
+
+    private final String externalId;
+
+    private final DocumentReference documentReference;
+
+    private final List<String> memberIds;
+
+    private final String matchedMemberId;
+
+    /**
+     * Simple constructor passing all the data.
+     *
+     * @param id the internal identifier of the family
+     * @param externalId the external identifier of the family, may be {@code null}
+     * @param documentReference a reference to the document storing the family
+     * @param memberIds the identifiers of the family members
+     * @param matchedMemberId the family member that matched a search, may be {@code null}
+     */
+    public DefaultFamilySummary(String id, String externalId, DocumentReference documentReference,
+        List<String> memberIds, String matchedMemberId)
+    {
+        this.id = id;
+        this.externalId = externalId == null ? "" : externalId;
+        this.documentReference = documentReference;
+        this.memberIds = Collections.unmodifiableList(new ArrayList<>(memberIds));
+        this.matchedMemberId = matchedMemberId;
+    }
+
+    @Override
+    public String getId()
+    {
+        return this.id;
+    }
+
+    @Override
+    public String getExternalId()
+    {
+        return this.externalId;
+    }
+
+    @Override
+    public DocumentReference getDocumentReference()
+    {
+        return this.documentReference;
+    }
+
+    @Override
+    public List<String> getMemberIds()
+    {
+        return this.memberIds;
+    }
+
+    @Override
+    public String getMatchedMemberId()
+    {
+        return this.matchedMemberId;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.id;
+    }
+}
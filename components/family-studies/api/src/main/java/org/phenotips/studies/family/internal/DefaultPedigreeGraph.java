@@ -0,0 +1,689 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeMember;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * {@link PedigreeGraph} built from the pedigree JSON stored in a family. All the members, relationships, generations,
+ * affected members and terms are indexed once when the graph is created, so that structural queries only touch the
+ * members involved. Kinship coefficients are computed for all pairs of members the first time they are needed, after
+ * which relatedness queries take constant time, and listing the relatives of a member takes linear time.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class DefaultPedigreeGraph implements PedigreeGraph
+{
+    private static final String ID_KEY = "id";
+
+    private static final String MEMBERS_KEY = "members";
+
+    private static final String PROPERTIES_KEY = "properties";
+
+    private static final String CONSANGUINITY_KEY = "consanguinity";
+
+    private static final String YES = "yes";
+
+    private static final String NO = "no";
+
+    private static final int NONE = -1;
+
+    private static final double LOG_2 = Math.log(2);
+
+    /** All the members, sorted by their node identifier. */
+    private final List<PedigreeMember> members;
+
+    /** Maps node identifiers to the position of the member in {@link #members}. */
+    private final Map<Integer, Integer> indexes = new HashMap<>();
+
+    private final Map<String, PedigreeMember> membersByPatientId = new HashMap<>();
+
+    private final Map<String, List<PedigreeMember>> membersByTerm = new HashMap<>();
+
+    private final List<PedigreeMember> affected = new ArrayList<>();
+
+    private final List<List<PedigreeMember>> generations = new ArrayList<>();
+
+    /** The parents of each member, as drawn in the pedigree, including adoptive parents. */
+    private final int[][] parents;
+
+    /** The biological parents of each member, {@link #NONE} if not known. */
+    private final int[][] biologicalParents;
+
+    private final List<List<Integer>> children;
+
+    private final List<List<Integer>> partners;
+
+    /** For each member, the relationship it descends from, indexing {@link #relationshipChildren}. */
+    private final int[] parentRelationship;
+
+    private final List<List<Integer>> relationshipChildren = new ArrayList<>();
+
+    /** The pairs of partners, as {@link #pairKey(int, int) pair keys}, in the order of their relationships. */
+    private final List<Long> couples = new ArrayList<>();
+
+    /** Consanguinity explicitly set for a relationship, indexed by the {@link #pairKey(int, int) pair key}. */
+    private final Map<Long, Boolean> explicitConsanguinity = new HashMap<>();
+
+    private final PedigreeMember proband;
+
+    /** Lazily computed kinship coefficients, see {@link #getKinship()}. */
+    private volatile Kinship kinship;
+
+    /**
+     * Builds a graph from a pedigree JSON, in the format produced by the pedigree editor.
+     *
+     * @param data the pedigree JSON, must not be {@code null}; it is only read during construction
+     */
+    public DefaultPedigreeGraph(JSONObject data)
+    {
+        List<JSONObject> nodes = collectNodes(data.optJSONArray(MEMBERS_KEY));
+        int size = nodes.size();
+        this.parents = new int[size][];
+        this.biologicalParents = new int[size][];
+        this.parentRelationship = new int[size];
+        this.children = newAdjacencyList(size);
+        this.partners = newAdjacencyList(size);
+        Arrays.fill(this.parents, new int[0]);
+        Arrays.fill(this.biologicalParents, new int[] { NONE, NONE });
+        Arrays.fill(this.parentRelationship, NONE);
+
+        readRelationships(data.optJSONArray("relationships"));
+        int[] memberGenerations = computeGenerations(nodes);
+
+        int probandNodeId = data.optInt("proband", NONE);
+        List<PedigreeMember> result = new ArrayList<>(size);
+        PedigreeMember foundProband = null;
+        for (int i = 0; i < size; ++i) {
+            PedigreeMember member = createMember(nodes.get(i), memberGenerations[i], probandNodeId);
+            result.add(member);
+            indexMember(member);
+            if (member.isProband()) {
+                foundProband = member;
+            }
+        }
+        this.members = Collections.unmodifiableList(result);
+        this.proband = foundProband;
+    }
+
+    @Override
+    public List<PedigreeMember> getMembers()
+    {
+        return this.members;
+    }
+
+    @Override
+    public PedigreeMember getMember(int nodeId)
+    {
+        Integer index = this.indexes.get(nodeId);
+        return index == null ? null : this.members.get(index);
+    }
+
+    @Override
+    public PedigreeMember getMemberByPatientId(String patientId)
+    {
+        return this.membersByPatientId.get(patientId);
+    }
+
+    @Override
+    public PedigreeMember getProband()
+    {
+        return this.proband;
+    }
+
+    @Override
+    public List<PedigreeMember> getParents(PedigreeMember member)
+    {
+        int index = indexOf(member);
+        if (index == NONE) {
+            return Collections.emptyList();
+        }
+        List<PedigreeMember> result = new ArrayList<>(2);
+        for (int parent : this.parents[index]) {
+            result.add(this.members.get(parent));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public List<PedigreeMember> getChildren(PedigreeMember member)
+    {
+        int index = indexOf(member);
+        return index == NONE ? Collections.<PedigreeMember>emptyList() : toMembers(this.children.get(index), NONE);
+    }
+
+    @Override
+    public List<PedigreeMember> getPartners(PedigreeMember member)
+    {
+        int index = indexOf(member);
+        return index == NONE ? Collections.<PedigreeMember>emptyList() : toMembers(this.partners.get(index), NONE);
+    }
+
+    @Override
+    public List<PedigreeMember> getSiblings(PedigreeMember member)
+    {
+        int index = indexOf(member);
+        if (index == NONE || this.parentRelationship[index] == NONE) {
+            return Collections.emptyList();
+        }
+        return toMembers(this.relationshipChildren.get(this.parentRelationship[index]), index);
+    }
+
+    @Override
+    public int getGenerationCount()
+    {
+        return this.generations.size();
+    }
+
+    @Override
+    public List<PedigreeMember> getGeneration(int generation)
+    {
+        if (generation < 1 || generation > this.generations.size()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(this.generations.get(generation - 1));
+    }
+
+    @Override
+    public double getRelatedness(PedigreeMember first, PedigreeMember second)
+    {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        if (a == NONE || b == NONE) {
+            return 0;
+        }
+        return a == b ? 1 : 2 * getKinship().get(a, b);
+    }
+
+    @Override
+    public Map<PedigreeMember, Integer> getRelatives(PedigreeMember member, int maxDegree)
+    {
+        int index = indexOf(member);
+        if (index == NONE || maxDegree < 1) {
+            return Collections.emptyMap();
+        }
+        // Bucket the relatives by degree so that the result is ordered without sorting
+        Map<Integer, List<PedigreeMember>> byDegree = new TreeMap<>();
+        Kinship coefficients = getKinship();
+        for (int other = 0; other < this.members.size(); ++other) {
+            double relatedness = other == index ? 0 : 2 * coefficients.get(index, other);
+            if (relatedness > 0) {
+                int degree = Math.max(1, (int) Math.round(-Math.log(relatedness) / LOG_2));
+                if (degree <= maxDegree) {
+                    List<PedigreeMember> bucket = byDegree.get(degree);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>();
+                        byDegree.put(degree, bucket);
+                    }
+                    bucket.add(this.members.get(other));
+                }
+            }
+        }
+        Map<PedigreeMember, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<PedigreeMember>> bucket : byDegree.entrySet()) {
+            for (PedigreeMember relative : bucket.getValue()) {
+                result.put(relative, bucket.getKey());
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public List<PedigreeMember> getAffectedMembers()
+    {
+        return Collections.unmodifiableList(this.affected);
+    }
+
+    @Override
+    public List<PedigreeMember> getMembersWithTerm(String termId)
+    {
+        List<PedigreeMember> result = this.membersByTerm.get(termId);
+        return result == null ? Collections.<PedigreeMember>emptyList() : Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public boolean isConsanguineous(PedigreeMember first, PedigreeMember second)
+    {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        if (a == NONE || b == NONE || a == b) {
+            return false;
+        }
+        Boolean explicit = this.explicitConsanguinity.get(pairKey(a, b));
+        if (explicit != null) {
+            return explicit;
+        }
+        return getKinship().get(a, b) > 0;
+    }
+
+    @Override
+    public boolean hasConsanguinity()
+    {
+        for (long couple : this.couples) {
+            Boolean explicit = this.explicitConsanguinity.get(couple);
+            if (explicit != null ? explicit : getKinship().get((int) (couple >>> 32), (int) couple) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        JSONObject result = new JSONObject();
+        if (this.proband != null) {
+            result.put("proband", this.proband.getNodeId());
+        }
+        result.put("generations", this.generations.size());
+        result.put(CONSANGUINITY_KEY, hasConsanguinity());
+        JSONArray membersJSON = new JSONArray();
+        for (int i = 0; i < this.members.size(); ++i) {
+            JSONObject memberJSON = this.members.get(i).toJSON();
+            JSONArray parentsJSON = new JSONArray();
+            for (int parent : this.parents[i]) {
+                parentsJSON.put(this.members.get(parent).getNodeId());
+            }
+            memberJSON.put("parents", parentsJSON);
+            memberJSON.put("children", toNodeIds(this.children.get(i)));
+            memberJSON.put("partners", toNodeIds(this.partners.get(i)));
+            membersJSON.put(memberJSON);
+        }
+        result.put(MEMBERS_KEY, membersJSON);
+        return result;
+    }
+
+    /**
+     * Collects the valid member nodes, sorted by their node identifier, and indexes their position.
+     *
+     * @param nodes the {@code members} array of the pedigree JSON, may be {@code null}
+     * @return the member nodes, in the order in which they will be stored
+     */
+    private List<JSONObject> collectNodes(JSONArray nodes)
+    {
+        Map<Integer, JSONObject> sorted = new TreeMap<>();
+        if (nodes != null) {
+            for (Object node : nodes) {
+                if (node instanceof JSONObject && ((JSONObject) node).optInt(ID_KEY, NONE) >= 0) {
+                    JSONObject member = (JSONObject) node;
+                    if (!sorted.containsKey(member.getInt(ID_KEY))) {
+                        sorted.put(member.getInt(ID_KEY), member);
+                    }
+                }
+            }
+        }
+        for (Integer nodeId : sorted.keySet()) {
+            this.indexes.put(nodeId, this.indexes.size());
+        }
+        return new ArrayList<>(sorted.values());
+    }
+
+    private void readRelationships(JSONArray relationships)
+    {
+        if (relationships == null) {
+            return;
+        }
+        for (Object item : relationships) {
+            if (item instanceof JSONObject) {
+                readRelationship((JSONObject) item);
+            }
+        }
+    }
+
+    private void readRelationship(JSONObject relationship)
+    {
+        int[] couple = resolve(relationship.optJSONArray(MEMBERS_KEY));
+        if (couple.length == 2) {
+            this.partners.get(couple[0]).add(couple[1]);
+            this.partners.get(couple[1]).add(couple[0]);
+            long key = pairKey(couple[0], couple[1]);
+            this.couples.add(key);
+            JSONObject properties = relationship.optJSONObject(PROPERTIES_KEY);
+            String consanguinity = properties == null ? null : properties.optString(CONSANGUINITY_KEY);
+            if (YES.equals(consanguinity) || NO.equals(consanguinity)) {
+                this.explicitConsanguinity.put(key, YES.equals(consanguinity));
+            }
+        }
+
+        List<Integer> offspring = new ArrayList<>();
+        JSONArray childrenJSON = relationship.optJSONArray("children");
+        if (childrenJSON != null) {
+            for (Object item : childrenJSON) {
+                Integer child = item instanceof JSONObject ? this.indexes.get(((JSONObject) item).optInt(ID_KEY, NONE))
+                    : null;
+                if (child == null || this.parentRelationship[child] != NONE) {
+                    // Unknown child, or a child already attached to another relationship
+                    continue;
+                }
+                offspring.add(child);
+                this.parentRelationship[child] = this.relationshipChildren.size();
+                this.parents[child] = couple;
+                if (!"in".equals(((JSONObject) item).optString("adopted"))) {
+                    this.biologicalParents[child] = Arrays.copyOf(couple, 2);
+                    if (couple.length < 2) {
+                        Arrays.fill(this.biologicalParents[child], couple.length, 2, NONE);
+                    }
+                }
+                for (int parent : couple) {
+                    this.children.get(parent).add(child);
+                }
+            }
+        }
+        this.relationshipChildren.add(offspring);
+    }
+
+    /**
+     * Resolves the node identifiers listed as members of a relationship, skipping unknown or repeated identifiers.
+     *
+     * @param nodeIds a JSON array of node identifiers, may be {@code null}
+     * @return the positions of the known members, at most two
+     */
+    private int[] resolve(JSONArray nodeIds)
+    {
+        if (nodeIds == null) {
+            return new int[0];
+        }
+        int[] result = new int[2];
+        int count = 0;
+        for (int i = 0; i < nodeIds.length() && count < 2; ++i) {
+            Integer index = this.indexes.get(nodeIds.optInt(i, NONE));
+            if (index != null && (count == 0 || result[0] != index)) {
+                result[count++] = index;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Assigns generations with a breadth-first traversal: partners share a generation, children are one generation
+     * below their parents. Each connected part of the pedigree is numbered starting from {@code 1}.
+     *
+     * @param nodes the member nodes
+     * @return the generation of each member, {@code 0} for members not drawn in the pedigree
+     */
+    private int[] computeGenerations(List<JSONObject> nodes)
+    {
+        int size = nodes.size();
+        int[] result = new int[size];
+        boolean[] visited = new boolean[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        List<Integer> component = new ArrayList<>();
+        for (int start = 0; start < size; ++start) {
+            if (visited[start] || nodes.get(start).optBoolean("notInPedigree")) {
+                continue;
+            }
+            component.clear();
+            visited[start] = true;
+            queue.add(start);
+            int min = 0;
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                component.add(current);
+                min = Math.min(min, result[current]);
+                visit(this.partners.get(current), result[current], visited, result, queue);
+                visit(this.children.get(current), result[current] + 1, visited, result, queue);
+                for (int parent : this.parents[current]) {
+                    visit(Collections.singletonList(parent), result[current] - 1, visited, result, queue);
+                }
+            }
+            for (int member : component) {
+                result[member] += 1 - min;
+            }
+        }
+        return result;
+    }
+
+    private void visit(List<Integer> next, int generation, boolean[] visited, int[] result, Deque<Integer> queue)
+    {
+        for (int member : next) {
+            if (!visited[member]) {
+                visited[member] = true;
+                result[member] = generation;
+                queue.add(member);
+            }
+        }
+    }
+
+    private PedigreeMember createMember(JSONObject node, int generation, int probandNodeId)
+    {
+        int nodeId = node.getInt(ID_KEY);
+        JSONObject properties = node.optJSONObject(PROPERTIES_KEY);
+        JSONObject pedigreeProperties = node.optJSONObject("pedigreeProperties");
+        if (properties == null) {
+            properties = new JSONObject();
+        }
+        if (pedigreeProperties == null) {
+            pedigreeProperties = new JSONObject();
+        }
+        String patientId = StringUtils.defaultIfBlank(properties.optString(ID_KEY), null);
+        String sex = StringUtils.defaultIfBlank(properties.optString("sex"),
+            StringUtils.defaultIfBlank(pedigreeProperties.optString("gender"), "U"));
+        Set<String> terms = new LinkedHashSet<>();
+        collectTerms(properties.optJSONArray("features"), terms);
+        collectTerms(properties.optJSONArray("disorders"), terms);
+        return new DefaultPedigreeMember(nodeId, patientId, sex, generation, nodeId == probandNodeId,
+            !node.optBoolean("notInPedigree"), pedigreeProperties.optString("carrierStatus"), terms);
+    }
+
+    private void collectTerms(JSONArray terms, Set<String> result)
+    {
+        if (terms == null) {
+            return;
+        }
+        for (Object item : terms) {
+            if (item instanceof JSONObject) {
+                JSONObject term = (JSONObject) item;
+                String id = term.optString(ID_KEY);
+                if (StringUtils.isNotBlank(id) && !NO.equals(term.optString("observed"))) {
+                    result.add(id);
+                }
+            }
+        }
+    }
+
+    private void indexMember(PedigreeMember member)
+    {
+        if (member.getPatientId() != null && !this.membersByPatientId.containsKey(member.getPatientId())) {
+            this.membersByPatientId.put(member.getPatientId(), member);
+        }
+        for (String term : member.getPresentTerms()) {
+            List<PedigreeMember> withTerm = this.membersByTerm.get(term);
+            if (withTerm == null) {
+                withTerm = new ArrayList<>();
+                this.membersByTerm.put(term, withTerm);
+            }
+            withTerm.add(member);
+        }
+        if (member.isAffected()) {
+            this.affected.add(member);
+        }
+        if (member.getGeneration() > 0) {
+            while (this.generations.size() < member.getGeneration()) {
+                this.generations.add(new ArrayList<PedigreeMember>());
+            }
+            this.generations.get(member.getGeneration() - 1).add(member);
+        }
+    }
+
+    private int indexOf(PedigreeMember member)
+    {
+        if (member == null) {
+            return NONE;
+        }
+        Integer index = this.indexes.get(member.getNodeId());
+        return index == null ? NONE : index;
+    }
+
+    private List<PedigreeMember> toMembers(List<Integer> positions, int exclude)
+    {
+        List<PedigreeMember> result = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            if (position != exclude) {
+                result.add(this.members.get(position));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private JSONArray toNodeIds(List<Integer> positions)
+    {
+        JSONArray result = new JSONArray();
+        for (int position : positions) {
+            result.put(this.members.get(position).getNodeId());
+        }
+        return result;
+    }
+
+    private Kinship getKinship()
+    {
+        Kinship result = this.kinship;
+        if (result == null) {
+            result = new Kinship(this.biologicalParents);
+            this.kinship = result;
+        }
+        return result;
+    }
+
+    private static long pairKey(int first, int second)
+    {
+        return ((long) Math.min(first, second) << 32) | Math.max(first, second);
+    }
+
+    private static List<List<Integer>> newAdjacencyList(int size)
+    {
+        List<List<Integer>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            result.add(new ArrayList<Integer>(2));
+        }
+        return result;
+    }
+
+    /**
+     * Kinship coefficients for all the pairs of members, computed with the tabular method: members are processed so
+     * that ancestors come before their descendants, and the kinship of a member with any previously processed member
+     * is the average of the kinship of its two parents with that member.
+     */
+    private static final class Kinship
+    {
+        /** The position of each member in the ancestors-first order. */
+        private final int[] order;
+
+        /** Lower triangular matrix of coefficients, indexed by the positions in {@link #order}. */
+        private final double[][] coefficients;
+
+        Kinship(int[][] parents)
+        {
+            int size = parents.length;
+            this.order = sortAncestorsFirst(parents);
+            int[] members = new int[size];
+            for (int i = 0; i < size; ++i) {
+                members[this.order[i]] = i;
+            }
+            this.coefficients = new double[size][];
+            for (int position = 0; position < size; ++position) {
+                this.coefficients[position] = new double[position + 1];
+                int father = knownParent(parents[members[position]][0], position);
+                int mother = knownParent(parents[members[position]][1], position);
+                for (int previous = 0; previous < position; ++previous) {
+                    this.coefficients[position][previous] =
+                        (lookup(father, members[previous]) + lookup(mother, members[previous])) / 2;
+                }
+                this.coefficients[position][position] = (1 + lookup(father, mother)) / 2;
+            }
+        }
+
+        double get(int first, int second)
+        {
+            return lookup(first, second);
+        }
+
+        private int knownParent(int parent, int childPosition)
+        {
+            // Parents that come after their child can only come from a cycle in malformed data; ignore them
+            return parent != NONE && this.order[parent] < childPosition ? parent : NONE;
+        }
+
+        private double lookup(int first, int second)
+        {
+            if (first == NONE || second == NONE) {
+                return 0;
+            }
+            int a = this.order[first];
+            int b = this.order[second];
+            return a >= b ? this.coefficients[a][b] : this.coefficients[b][a];
+        }
+
+        private static int[] sortAncestorsFirst(int[][] parents)
+        {
+            int size = parents.length;
+            List<List<Integer>> offspring = newAdjacencyList(size);
+            int[] pending = new int[size];
+            for (int child = 0; child < size; ++child) {
+                for (int parent : parents[child]) {
+                    if (parent != NONE) {
+                        offspring.get(parent).add(child);
+                        ++pending[child];
+                    }
+                }
+            }
+            int[] result = new int[size];
+            Arrays.fill(result, NONE);
+            Deque<Integer> ready = new ArrayDeque<>();
+            for (int i = 0; i < size; ++i) {
+                if (pending[i] == 0) {
+                    ready.add(i);
+                }
+            }
+            int next = 0;
+            while (!ready.isEmpty()) {
+                int current = ready.poll();
+                result[current] = next++;
+                for (int child : offspring.get(current)) {
+                    if (--pending[child] == 0) {
+                        ready.add(child);
+                    }
+                }
+            }
+            for (int i = 0; i < size; ++i) {
+                if (result[i] == NONE) {
+                    result[i] = next++;
+                }
+            }
+            return result;
+        }
+    }
+}
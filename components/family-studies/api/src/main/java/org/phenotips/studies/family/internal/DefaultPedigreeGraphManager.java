@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.Pedigree;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default {@link PedigreeGraphManager} implementation. Graphs are built from the pedigree stored in the family
+ * document and cached by document version, so that a graph is parsed only once for each saved version of a family.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultPedigreeGraphManager implements PedigreeGraphManager, Initializable
+{
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    private Cache<PedigreeGraph> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = this.cacheManager.createNewCache(new LRUCacheConfiguration("phenotips.pedigreeGraphs", 500));
+        } catch (CacheException ex) {
+            throw new InitializationException("Failed to create the pedigree graph cache", ex);
+        }
+    }
+
+    @Override
+    public PedigreeGraph getGraph(Family family)
+    {
+        if (family == null) {
+            return null;
+        }
+        DocumentReference reference = family.getDocumentReference();
+        try {
+            XWikiDocument document = (XWikiDocument) this.documentAccessBridge.getDocumentInstance(reference);
+            String key = this.serializer.serialize(reference) + '@' + document.getVersion();
+            PedigreeGraph graph = this.cache.get(key);
+            if (graph == null) {
+                JSONObject data = getPedigreeData(document);
+                if (data == null) {
+                    return null;
+                }
+                graph = new DefaultPedigreeGraph(data);
+                this.cache.set(key, graph);
+            }
+            return graph;
+        } catch (JSONException ex) {
+            this.logger.error("Pedigree data for family [{}] is not a valid pedigree JSON: [{}]", reference,
+                ex.getMessage());
+        } catch (Exception ex) {
+            this.logger.error("Failed to load the pedigree of family [{}]: [{}]", reference, ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    private JSONObject getPedigreeData(XWikiDocument document)
+    {
+        BaseObject pedigreeObject = document.getXObject(Pedigree.CLASS_REFERENCE);
+        if (pedigreeObject == null) {
+            return null;
+        }
+        String data = pedigreeObject.getStringValue(Pedigree.DATA);
+        if (StringUtils.isBlank(data)) {
+            return null;
+        }
+        JSONObject result = new JSONObject(data);
+        return DefaultPedigree.isSupportedPedigreeFormat(result) ? result : null;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.PedigreeMember;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Immutable {@link PedigreeMember} implementation, built by {@link DefaultPedigreeGraph}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class DefaultPedigreeMember implements PedigreeMember
+{
+    private static final String AFFECTED = "affected";
+
+    private final int nodeId;
+
+    private final String patientId;
+
+    private final String sex;
+
+    private final int generation;
+
+    private final boolean proband;
+
+    private final boolean inPedigree;
+
+    private final String carrierStatus;
+
+    private final Set<String> presentTerms;
+
+    /**
+     * Simple constructor passing all the member data.
+     *
+     * @param nodeId the identifier of the node inside the pedigree
+     * @param patientId the identifier of the linked patient record, may be {@code null}
+     * @param sex the sex of the member
+     * @param generation the generation number, {@code 0} if the member is not drawn in the pedigree
+     * @param proband whether this member is the proband
+     * @param inPedigree whether this member is drawn in the pedigree
+     * @param carrierStatus the carrier status, may be {@code null}
+     * @param presentTerms the identifiers of the observed phenotypes and diagnosed disorders
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public DefaultPedigreeMember(int nodeId, String patientId, String sex, int generation, boolean proband,
+        boolean inPedigree, String carrierStatus, Set<String> presentTerms)
+    {
+        this.nodeId = nodeId;
+        this.patientId = patientId;
+        this.sex = sex;
+        this.generation = generation;
+        this.proband = proband;
+        this.inPedigree = inPedigree;
+        this.carrierStatus = StringUtils.defaultString(carrierStatus);
+        this.presentTerms = Collections.unmodifiableSet(presentTerms);
+    }
+
+    @Override
+    public int getNodeId()
+    {
+        return this.nodeId;
+    }
+
+    @Override
+    public String getPatientId()
+    {
+        return this.patientId;
+    }
+
+    @Override
+    public String getSex()
+    {
+        return this.sex;
+    }
+
+    @Override
+    public int getGeneration()
+    {
+        return this.generation;
+    }
+
+    @Override
+    public boolean isProband()
+    {
+        return this.proband;
+    }
+
+    @Override
+    public boolean isInPedigree()
+    {
+        return this.inPedigree;
+    }
+
+    @Override
+    public boolean isAffected()
+    {
+        return AFFECTED.equals(this.carrierStatus);
+    }
+
+    @Override
+    public String getCarrierStatus()
+    {
+        return this.carrierStatus;
+    }
+
+    @Override
+    public Set<String> getPresentTerms()
+    {
+        return this.presentTerms;
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        JSONObject result = new JSONObject();
+        result.put("nodeId", this.nodeId);
+        if (this.patientId != null) {
+            result.put("patientId", this.patientId);
+        }
+        result.put("sex", this.sex);
+        result.put("generation", this.generation);
+        result.put("proband", this.proband);
+        result.put("inPedigree", this.inPedigree);
+        result.put(AFFECTED, isAffected());
+        if (!this.carrierStatus.isEmpty()) {
+            result.put("carrierStatus", this.carrierStatus);
+        }
+        result.put("terms", new JSONArray(this.presentTerms));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DefaultPedigreeMember)) {
+            return false;
+        }
+        DefaultPedigreeMember other = (DefaultPedigreeMember) obj;
+        return this.nodeId == other.nodeId && StringUtils.equals(this.patientId, other.patientId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.nodeId;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.patientId == null ? String.valueOf(this.nodeId) : this.nodeId + ":" + this.patientId;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+import org.phenotips.studies.family.events.FamilyChangedEvent;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.users.UserManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Detects new and changed family records and fires {@link FamilyChangedEvent}s.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("familyChangedEventSource")
+@Singleton
+public class FamilyChangedEventSource implements EventListener
+{
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private UserManager userManager;
+
+    @Inject
+    private FamilyRepository repository;
+
+    @Override
+    public String getName()
+    {
+        return "familyChangedEventSource";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new DocumentCreatedEvent(), new DocumentUpdatedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+        if (doc == null || doc.getXObject(Family.CLASS_REFERENCE) == null
+            || "FamilyTemplate".equals(doc.getDocumentReference().getName())) {
+            return;
+        }
+        Family family = this.repository.load(doc);
+        this.observationManager.notify(new FamilyChangedEvent(family, this.userManager.getCurrentUser()), source);
+    }
+}
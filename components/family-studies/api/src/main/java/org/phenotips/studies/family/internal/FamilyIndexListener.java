@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.events.PatientChangedEvent;
+import org.phenotips.data.events.PatientDeletedEvent;
+import org.phenotips.data.events.PatientEvent;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyIndex;
+import org.phenotips.studies.family.events.FamilyChangedEvent;
+import org.phenotips.studies.family.events.FamilyDeletedEvent;
+import org.phenotips.studies.family.events.FamilyEvent;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Keeps the {@link FamilyIndex} up to date with changes to families and to their members.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("phenotips-family-index")
+@Singleton
+public class FamilyIndexListener extends AbstractEventListener
+{
+    @Inject
+    private FamilyIndex index;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public FamilyIndexListener()
+    {
+        super("phenotips-family-index", new FamilyChangedEvent(), new FamilyDeletedEvent(), new PatientChangedEvent(),
+            new PatientDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(final Event event, final Object source, final Object data)
+    {
+        if (event instanceof FamilyEvent) {
+            Family family = ((FamilyEvent) event).getFamily();
+            if (event instanceof FamilyDeletedEvent) {
+                this.index.delete(family);
+            } else {
+                this.index.index(family);
+            }
+        } else {
+            Patient patient = ((PatientEvent) event).getPatient();
+            if (event instanceof PatientDeletedEvent) {
+                this.index.delete(patient);
+            } else {
+                this.index.index(patient);
+            }
+        }
+    }
+}
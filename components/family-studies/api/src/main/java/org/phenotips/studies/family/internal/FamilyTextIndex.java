@@ -0,0 +1,329 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * In-memory index of family and member identifiers and names. Families are kept sorted by their identifier, which is
+ * the stable key used for paging. For searching, every indexed text is split into all its substrings of up to
+ * {@link #GRAM_LENGTH} characters, and each such n-gram points to the sorted set of families containing it. A query of
+ * up to three characters is answered directly by its n-gram postings; longer queries scan the shortest posting list
+ * among their trigrams and verify each candidate.
+ * <p>
+ * This class is not thread safe, callers must synchronize access.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+class FamilyTextIndex
+{
+    /** The maximum length of the indexed n-grams. */
+    static final int GRAM_LENGTH = 3;
+
+    private final NavigableMap<String, FamilyEntry> families = new TreeMap<>();
+
+    private final Map<String, MemberEntry> members = new HashMap<>();
+
+    /** Member identifier to the identifier of the family it belongs to. */
+    private final Map<String, String> memberFamilies = new HashMap<>();
+
+    private final Map<String, NavigableSet<String>> postings = new HashMap<>();
+
+    /**
+     * Adds or replaces a family. Members which aren't known yet are indexed only by their identifier until
+     * {@link #putMember} is called for them.
+     *
+     * @param id the family identifier
+     * @param externalId the external identifier of the family, may be {@code null}
+     * @param memberIds the identifiers of the family members
+     */
+    void putFamily(String id, String externalId, Collection<String> memberIds)
+    {
+        removeFamily(id);
+        List<String> validMembers = new ArrayList<>(memberIds.size());
+        for (String memberId : memberIds) {
+            if (StringUtils.isNotBlank(memberId) && !validMembers.contains(memberId)) {
+                validMembers.add(memberId);
+                String previousFamily = this.memberFamilies.put(memberId, id);
+                if (previousFamily != null) {
+                    // The patient moved to this family, but the previous family wasn't reindexed yet
+                    FamilyEntry previous = this.families.get(previousFamily);
+                    previous.memberIds.remove(memberId);
+                    reindex(previous);
+                }
+            }
+        }
+        FamilyEntry entry = new FamilyEntry(id, StringUtils.defaultString(externalId), validMembers);
+        this.families.put(id, entry);
+        reindex(entry);
+    }
+
+    /**
+     * Removes a family, and forgets about its members.
+     *
+     * @param id the family identifier
+     */
+    void removeFamily(String id)
+    {
+        FamilyEntry entry = this.families.remove(id);
+        if (entry == null) {
+            return;
+        }
+        removePostings(entry);
+        for (String memberId : entry.memberIds) {
+            this.memberFamilies.remove(memberId);
+            this.members.remove(memberId);
+        }
+    }
+
+    /**
+     * Sets the data of a family member.
+     *
+     * @param id the identifier of the patient record
+     * @param externalId the external identifier of the patient, may be {@code null}
+     * @param name the name of the patient, may be {@code null}
+     * @return {@code true} if the patient belongs to an indexed family and was updated, {@code false} otherwise
+     */
+    boolean putMember(String id, String externalId, String name)
+    {
+        String familyId = this.memberFamilies.get(id);
+        if (familyId == null) {
+            return false;
+        }
+        MemberEntry member =
+            new MemberEntry(id, StringUtils.defaultString(externalId), StringUtils.defaultString(name));
+        if (!member.equals(this.members.put(id, member))) {
+            reindex(this.families.get(familyId));
+        }
+        return true;
+    }
+
+    /**
+     * Removes a patient from the members of its family.
+     *
+     * @param id the identifier of the patient record
+     */
+    void removeMember(String id)
+    {
+        this.members.remove(id);
+        String familyId = this.memberFamilies.remove(id);
+        if (familyId != null) {
+            FamilyEntry family = this.families.get(familyId);
+            family.memberIds.remove(id);
+            reindex(family);
+        }
+    }
+
+    /** Removes all the families and members. */
+    void clear()
+    {
+        this.families.clear();
+        this.members.clear();
+        this.memberFamilies.clear();
+        this.postings.clear();
+    }
+
+    /**
+     * @param id the identifier of a patient record
+     * @return {@code true} if the patient is a member of an indexed family and its data is known
+     */
+    boolean hasMember(String id)
+    {
+        return this.members.containsKey(id);
+    }
+
+    /**
+     * @return all the families, sorted by identifier
+     */
+    NavigableMap<String, FamilyEntry> getFamilies()
+    {
+        return this.families;
+    }
+
+    /**
+     * @param id the identifier of a patient record
+     * @return the indexed member, or {@code null} if the patient isn't indexed
+     */
+    MemberEntry getMember(String id)
+    {
+        return this.members.get(id);
+    }
+
+    /**
+     * Lists the identifiers of the families which may match a query, sorted by identifier. All the families matching
+     * the query are guaranteed to be included, but not all candidates are guaranteed to match.
+     *
+     * @param query the normalized query, see {@link #normalize(String)}
+     * @return the candidate family identifiers; this is a live view that must not be modified
+     */
+    NavigableSet<String> getCandidates(String query)
+    {
+        if (query.length() <= GRAM_LENGTH) {
+            return getPosting(query);
+        }
+        NavigableSet<String> result = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); ++i) {
+            NavigableSet<String> posting = getPosting(query.substring(i, i + GRAM_LENGTH));
+            if (result == null || posting.size() < result.size()) {
+                result = posting;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param text a text to search for or to index
+     * @return the text converted to the case insensitive form used in the index
+     */
+    static String normalize(String text)
+    {
+        return StringUtils.defaultString(text).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private NavigableSet<String> getPosting(String gram)
+    {
+        NavigableSet<String> result = this.postings.get(gram);
+        return result == null ? Collections.<String>emptyNavigableSet() : result;
+    }
+
+    private void reindex(FamilyEntry entry)
+    {
+        removePostings(entry);
+        Set<String> texts = new HashSet<>();
+        texts.add(normalize(entry.id));
+        texts.add(normalize(entry.externalId));
+        for (String memberId : entry.memberIds) {
+            texts.add(normalize(memberId));
+            MemberEntry member = this.members.get(memberId);
+            if (member != null) {
+                texts.add(normalize(member.externalId));
+                texts.add(normalize(member.name));
+            }
+        }
+        for (String text : texts) {
+            for (int length = 1; length <= GRAM_LENGTH; ++length) {
+                for (int i = 0; i + length <= text.length(); ++i) {
+                    entry.grams.add(text.substring(i, i + length));
+                }
+            }
+        }
+        for (String gram : entry.grams) {
+            NavigableSet<String> posting = this.postings.get(gram);
+            if (posting == null) {
+                posting = new TreeSet<>();
+                this.postings.put(gram, posting);
+            }
+            posting.add(entry.id);
+        }
+    }
+
+    private void removePostings(FamilyEntry entry)
+    {
+        for (String gram : entry.grams) {
+            NavigableSet<String> posting = this.postings.get(gram);
+            if (posting != null) {
+                posting.remove(entry.id);
+                if (posting.isEmpty()) {
+                    this.postings.remove(gram);
+                }
+            }
+        }
+        entry.grams.clear();
+    }
+
+    /** An indexed family. */
+    static final class FamilyEntry
+    {
+        final String id;
+
+        final String externalId;
+
+        final List<String> memberIds;
+
+        /** The n-grams under which this family is currently indexed. */
+        final Set<String> grams = new HashSet<>();
+
+        FamilyEntry(String id, String externalId, List<String> memberIds)
+        {
+            this.id = id;
+            this.externalId = externalId;
+            this.memberIds = memberIds;
+        }
+
+        boolean matches(String query)
+        {
+            return normalize(this.id).contains(query) || normalize(this.externalId).contains(query);
+        }
+    }
+
+    /** An indexed family member. */
+    static final class MemberEntry
+    {
+        final String id;
+
+        final String externalId;
+
+        final String name;
+
+        MemberEntry(String id, String externalId, String name)
+        {
+            this.id = id;
+            this.externalId = externalId;
+            this.name = name;
+        }
+
+        boolean matches(String query, boolean matchName)
+        {
+            return normalize(this.id).contains(query) || normalize(this.externalId).contains(query)
+                || matchName && normalize(this.name).contains(query);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof MemberEntry)) {
+                return false;
+            }
+            MemberEntry other = (MemberEntry) obj;
+            return this.id.equals(other.id) && this.externalId.equals(other.externalId)
+                && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+/**
+ * A unit of work for family updates which affect several documents at once, such as saving a pedigree: all the
+ * modified family and patient documents are registered with the batch instead of being saved right away, and are
+ * persisted together by {@link #commit()}, inside a single storage transaction. Each document is saved at most once,
+ * no matter how many times it was modified, so document change events are also fired only once per document.
+ * <p>
+ * Documents that were already saved by some other means after being registered (for example by
+ * {@link org.phenotips.data.Patient#updateFromJSON(org.json.JSONObject)}) are not saved again, unless they were
+ * modified since. Such saves are not part of the batch: they happen when they are requested, their change events
+ * are fired right away, before the batch is committed, and rolling back the batch doesn't undo what the listeners
+ * of these events did. Only the changes registered with {@link #add(XWikiDocument, String)} are guaranteed to be
+ * persisted together.
+ * </p>
+ * <p>
+ * Instances are not thread safe, and must be used by the thread that created them.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class FamilyUpdateBatch
+{
+    private static final String COMMENT_SEPARATOR = "; ";
+
+    private final XWikiContext context;
+
+    private final Logger logger;
+
+    private final Map<DocumentReference, PendingDocument> documents = new LinkedHashMap<>();
+
+    private final XWikiHibernateStore store;
+
+    private boolean transactionStarted;
+
+    /**
+     * Starts a new batch, opening a storage transaction which will include all the document saves performed until
+     * the batch is {@link #commit() committed} or {@link #rollback() rolled back}.
+     *
+     * @param context the current context
+     * @param logger the logger to use for reporting problems
+     */
+    FamilyUpdateBatch(XWikiContext context, Logger logger)
+    {
+        this.context = context;
+        this.logger = logger;
+        this.store = context.getWiki().getHibernateStore();
+        if (this.store != null) {
+            try {
+                this.store.checkHibernate(context);
+                this.transactionStarted = this.store.beginTransaction(context);
+            } catch (XWikiException ex) {
+                // Not fatal, each document will be saved in its own transaction
+                this.logger.warn("Failed to start a transaction for updating the family: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Registers a document which was modified and must be saved when the batch is committed.
+     *
+     * @param document the modified document
+     * @param comment the history comment describing the change; if the document is modified several times, all the
+     *            comments are kept
+     */
+    void add(XWikiDocument document, String comment)
+    {
+        PendingDocument pending = this.documents.get(document.getDocumentReference());
+        if (pending == null) {
+            pending = new PendingDocument(document, comment);
+            this.documents.put(document.getDocumentReference(), pending);
+        } else if (StringUtils.isNotBlank(comment) && !StringUtils.contains(pending.comment, comment)) {
+            pending.comment = StringUtils.isBlank(pending.comment) ? comment
+                : pending.comment + COMMENT_SEPARATOR + comment;
+        }
+        pending.markedDirty |= isDirty(document);
+    }
+
+    /**
+     * Saves all the registered documents that were not saved since they were registered, and commits the transaction.
+     * If any save fails, the whole transaction is rolled back.
+     *
+     * @throws XWikiException if saving one of the documents fails
+     */
+    void commit() throws XWikiException
+    {
+        try {
+            for (PendingDocument pending : this.documents.values()) {
+                XWikiDocument document = pending.document;
+                if (pending.markedDirty && !document.isNew() && !isDirty(document)) {
+                    // Already saved after being registered
+                    continue;
+                }
+                document.setAuthorReference(this.context.getUserReference());
+                this.context.getWiki().saveDocument(document, pending.comment, this.context);
+            }
+        } catch (XWikiException ex) {
+            this.logger.error("Failed to save document as part of a family update, rolling back: {}",
+                ex.getMessage());
+            rollback();
+            throw ex;
+        }
+        this.documents.clear();
+        endTransaction(true);
+    }
+
+    /**
+     * Discards the registered documents and rolls back the changes already written in the transaction, if any. Does
+     * nothing if the batch was already committed or rolled back, so it can safely be called from a {@code finally}
+     * block.
+     */
+    void rollback()
+    {
+        this.documents.clear();
+        endTransaction(false);
+    }
+
+    private boolean isDirty(XWikiDocument document)
+    {
+        return document.isMetaDataDirty() || document.isContentDirty();
+    }
+
+    private void endTransaction(boolean commit)
+    {
+        if (this.transactionStarted) {
+            this.transactionStarted = false;
+            this.store.endTransaction(this.context, commit);
+        }
+    }
+
+    private static final class PendingDocument
+    {
+        private final XWikiDocument document;
+
+        private String comment;
+
+        /** Whether the document was known to have unsaved changes when registered. */
+        private boolean markedDirty;
+
+        PendingDocument(XWikiDocument document, String comment)
+        {
+            this.document = document;
+            this.comment = comment;
+        }
+    }
+}
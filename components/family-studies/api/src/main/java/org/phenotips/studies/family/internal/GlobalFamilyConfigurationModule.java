@@ -85,6 +85,13 @@ public boolean supportsRecordType(final String recordType)
         return "family".equals(recordType);
     }
 
+    @Override
+    public String getCacheKey(String recordType)
+    {
+        // Only depends on UI extensions, which invalidate the cache when changed
+        return "";
+    }
+
     /**
      * Returns all the {@link UIExtension} sections for the default family sheet, and sorts them in preferred order.
      *
@@ -45,8 +45,10 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -164,16 +166,25 @@ public boolean forceRemoveAllMembers(Family family, User updatingUser)
         if (!this.authorizationService.hasAccess(updatingUser, Right.EDIT, family.getDocumentReference())) {
             return false;
         }
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.xcontextProvider.get(), this.logger);
+        boolean committed = false;
         try {
             for (Patient patient : family.getMembers()) {
                 // remove the member without updating family document (use "batch mode")
                 // since we don't care about it as it will be removed anyway
-                this.removeMember(family, patient, updatingUser, true);
+                this.removeMember(family, patient, updatingUser, batch);
             }
+            batch.commit();
+            committed = true;
             return true;
-        } catch (PTException ex) {
+        } catch (PTException | XWikiException ex) {
             this.logger.error("Failed to unlink all patients for the family [{}]: {}", family.getId(), ex.getMessage());
             return false;
+        } finally {
+            // Also covers unexpected runtime exceptions, which must not leave the transaction open
+            if (!committed) {
+                batch.rollback();
+            }
         }
     }
 
@@ -220,14 +231,16 @@ public Family getFamilyForPatient(Patient patient)
     @Override
     public synchronized void addMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.addMember(family, patient, updatingUser, false);
+        this.addMember(family, patient, updatingUser, null);
     }
 
     /**
      * This method may be called either as a standalone invocation, or internally as part of family pedigree update. The
-     * latter invocation may add multiple patients (a "batch update")
+     * latter invocation may add multiple patients (a "batch update"), in which case the modified patient document is
+     * only registered in the batch, and neither the pedigree nor the family document are updated.
      */
-    private void addMember(Family family, Patient patient, User updatingUser, boolean batchUpdate) throws PTException
+    private void addMember(Family family, Patient patient, User updatingUser, FamilyUpdateBatch batch)
+        throws PTException
     {
         if (family == null) {
             throw new PTInvalidFamilyIdException(null);
@@ -235,7 +248,7 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
         if (patient == null) {
             throw new PTInvalidPatientIdException(null);
         }
-        if (!batchUpdate) {
+        if (batch == null) {
             // when called as part of a batch update all permissions have already been checked;
             // otherwise perform the check, which may throw some exceptiuon in case of problems
             this.checkIfPatientCanBeAddedToFamily(family, patient, updatingUser);
@@ -258,12 +271,15 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
         if (!this.setFamilyReference(patientDocument, family.getXDocument(), context)) {
             throw new PTInternalErrorException();
         }
-        if (!savePatientDocument(patientDocument, "added to family " + family.getId(), context)) {
+        String comment = "added to family " + family.getId();
+        if (batch != null) {
+            batch.add(patientDocument, comment);
+        } else if (!savePatientDocument(patientDocument, comment, context)) {
             throw new PTInternalErrorException();
         }
 
         // add patient to the stored pedigree JSON
-        if (!batchUpdate) {
+        if (batch == null) {
             Pedigree pedigree = family.getPedigree();
             if (pedigree != null) {
                 pedigree.addLink(patientId);
@@ -281,7 +297,7 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
         familyObject.set(PhenotipsFamily.FAMILY_MEMBERS_FIELD, members, context);
 
         // only save family document if this add() is not performed as a part of a batch update
-        if (!batchUpdate) {
+        if (batch == null) {
             if (!saveFamilyDocument(family, "added " + patientId + " to the family", context)) {
                 throw new PTInternalErrorException();
             }
@@ -291,10 +307,15 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
     @Override
     public synchronized void removeMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.removeMember(family, patient, updatingUser, false);
+        this.removeMember(family, patient, updatingUser, null);
     }
 
-    private void removeMember(Family family, Patient patient, User updatingUser, boolean batchUpdate)
+    /**
+     * This method may be called either as a standalone invocation, or internally as part of a batch update, in which
+     * case the modified patient document is only registered in the batch, and neither the pedigree nor the family
+     * document are updated, since the caller is expected to either replace the pedigree or delete the family.
+     */
+    private void removeMember(Family family, Patient patient, User updatingUser, FamilyUpdateBatch batch)
         throws PTException
     {
         if (family == null) {
@@ -303,7 +324,7 @@ private void removeMember(Family family, Patient patient, User updatingUser, boo
         if (patient == null) {
             throw new PTInvalidPatientIdException(null);
         }
-        if (!batchUpdate) {
+        if (batch == null) {
             // when called as part of a batch update all permissions have already been checked;
             // otherwise perform the check, which may throw some exceptiuon in case of problems
             this.checkIfPatientCanBeRemovedFromFamily(family, patient, updatingUser);
@@ -327,12 +348,14 @@ private void removeMember(Family family, Patient patient, User updatingUser, boo
         if (!this.removeFamilyReference(patientDocument)) {
             throw new PTInternalErrorException();
         }
-        if (!savePatientDocument(patientDocument, "removed from family", context)) {
+        if (batch != null) {
+            batch.add(patientDocument, "removed from family");
+        } else if (!savePatientDocument(patientDocument, "removed from family", context)) {
             throw new PTInternalErrorException();
         }
 
         // Remove patient from the pedigree
-        Pedigree pedigree = family.getPedigree();
+        Pedigree pedigree = batch == null ? family.getPedigree() : null;
         if (pedigree != null) {
             pedigree.removeLink(patientId);
             if (!this.setPedigreeObject(family, pedigree, context)) {
@@ -347,7 +370,7 @@ private void removeMember(Family family, Patient patient, User updatingUser, boo
         BaseObject familyObject = family.getXDocument().getXObject(Family.CLASS_REFERENCE);
         familyObject.set(PhenotipsFamily.FAMILY_MEMBERS_FIELD, members, context);
 
-        if (!batchUpdate) {
+        if (batch == null) {
             if (!saveFamilyDocument(family, "removed " + patientId + " from the family", context)) {
                 throw new PTInternalErrorException();
             }
@@ -453,7 +476,11 @@ private void checkIfPatientCanBeRemovedFromFamily(Family family, Patient patient
     public synchronized void setPedigree(Family family, Pedigree pedigree, User updatingUser) throws PTException
     {
         // note: whenever available, internal versions of helper methods are used which modify the
-        // family document but do not save it to disk
+        // family and patient documents but do not save them to disk; the family document and the
+        // membership changes are saved together at the end, once each, in the batch transaction.
+        // The update is not fully atomic: patients updated from the pedigree JSON are saved right away
+        // by Patient#updateFromJSON, which offers no way of deferring the save; their update events are
+        // fired before the batch commits, and are not undone if the batch is rolled back afterwards
         List<String> oldMembers = family.getMembersIds();
 
         List<String> currentMembers = pedigree.extractIds();
@@ -463,50 +490,64 @@ public synchronized void setPedigree(Family family, Pedigree pedigree, User upda
         patientsToAdd.addAll(currentMembers);
         patientsToAdd.removeAll(oldMembers);
 
-        this.checkValidity(family, patientsToAdd, updatingUser);
+        // Removed members who are no longer in the family
+        List<String> patientsToRemove = new LinkedList<>();
+        patientsToRemove.addAll(oldMembers);
+        patientsToRemove.removeAll(currentMembers);
+
+        // each affected patient is loaded only once, and the same instance is used for all the updates
+        Map<String, Patient> patients = new HashMap<>();
+
+        this.checkValidity(family, patientsToAdd, updatingUser, patients);
 
         XWikiContext context = this.xcontextProvider.get();
         context.setUserReference(updatingUser == null ? null : updatingUser.getProfileDocument());
 
-        // update patient data from pedigree's JSON
-        // (no links to families are set at this point, only patient dat ais updated)
-        this.updatePatientsFromJson(pedigree, updatingUser);
-
         boolean firstPedigree = (family.getPedigree() == null);
 
-        this.setPedigreeObject(family, pedigree, context);
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(context, this.logger);
+        boolean committed = false;
+        try {
+            for (String patientId : patientsToRemove) {
+                // remove the member and update patient document, but don't write anything to disk yet
+                this.removeMember(family, getPatient(patientId, patients), updatingUser, batch);
+            }
 
-        // Removed members who are no longer in the family
-        List<String> patientsToRemove = new LinkedList<>();
-        patientsToRemove.addAll(oldMembers);
-        patientsToRemove.removeAll(currentMembers);
-        for (String patientId : patientsToRemove) {
-            Patient patient = this.patientRepository.get(patientId);
-            // remove the memebr and update patient document, but don't write family document to disk yet
-            // and don't update permisisons (that will be done once afdter all patients are added/removed)
-            this.removeMember(family, patient, updatingUser, true);
-        }
+            for (String patientId : patientsToAdd) {
+                this.addMember(family, getPatient(patientId, patients), updatingUser, batch);
+            }
 
-        for (String patientId : patientsToAdd) {
-            Patient patient = this.patientRepository.get(patientId);
-            this.addMember(family, patient, updatingUser, true);
-        }
+            // update patient data from pedigree's JSON; this saves each updated patient immediately, and since
+            // the family references are already set, these patient documents aren't saved again at the end
+            this.updatePatientsFromJson(pedigree, updatingUser, patients);
+
+            this.setPedigreeObject(family, pedigree, context);
 
-        if (firstPedigree && StringUtils.isEmpty(family.getExternalId())) {
-            // default family identifier to proband last name - only on first pedigree creation
-            // and only if no extrenal id is already (manully) defined
-            String lastName = pedigree.getProbandPatientLastName();
-            if (lastName != null) {
-                this.setFamilyExternalId(lastName, family, context);
+            if (firstPedigree && StringUtils.isEmpty(family.getExternalId())) {
+                // default family identifier to proband last name - only on first pedigree creation
+                // and only if no extrenal id is already (manully) defined
+                String lastName = pedigree.getProbandPatientLastName();
+                if (lastName != null) {
+                    this.setFamilyExternalId(lastName, family, context);
+                }
             }
-        }
 
-        if (!this.saveFamilyDocument(family, "Updated family from saved pedigree", context)) {
+            batch.add(family.getXDocument(), "Updated family from saved pedigree");
+            batch.commit();
+            committed = true;
+        } catch (XWikiException ex) {
+            this.logger.error("Error saving family [{}] from pedigree: [{}]", family.getId(), ex.getMessage());
             throw new PTInternalErrorException();
+        } finally {
+            // Whatever the failure, the transaction must not be left open
+            if (!committed) {
+                batch.rollback();
+            }
         }
     }
 
-    private void checkValidity(Family family, List<String> newMembers, User updatingUser) throws PTException
+    private void checkValidity(Family family, List<String> newMembers, User updatingUser,
+        Map<String, Patient> patients) throws PTException
     {
         // Checks that current user has edit permissions on family
         if (!this.authorizationService.hasAccess(updatingUser, Right.EDIT, family.getDocumentReference())) {
@@ -521,13 +562,13 @@ private void checkValidity(Family family, List<String> newMembers, User updating
         // Check if every new member can be added to the family
         if (newMembers != null) {
             for (String patientId : newMembers) {
-                Patient patient = this.patientRepository.get(patientId);
+                Patient patient = getPatient(patientId, patients);
                 checkIfPatientCanBeAddedToFamily(family, patient, updatingUser);
             }
         }
     }
 
-    private void updatePatientsFromJson(Pedigree pedigree, User updatingUser)
+    private void updatePatientsFromJson(Pedigree pedigree, User updatingUser, Map<String, Patient> patients)
     {
         String idKey = "id";
         try {
@@ -535,7 +576,7 @@ private void updatePatientsFromJson(Pedigree pedigree, User updatingUser)
 
             for (JSONObject singlePatient : patientsJson) {
                 if (singlePatient.has(idKey)) {
-                    Patient patient = this.patientRepository.get(singlePatient.getString(idKey));
+                    Patient patient = getPatient(singlePatient.getString(idKey), patients);
                     if (!this.authorizationService.hasAccess(
                         updatingUser, Right.EDIT, patient.getDocumentReference())) {
                         // skip patients the current user does not have edit rights for
@@ -549,6 +590,19 @@ private void updatePatientsFromJson(Pedigree pedigree, User updatingUser)
         }
     }
 
+    /**
+     * Returns the patient with the given identifier, loading it only the first time it is requested.
+     */
+    private Patient getPatient(String patientId, Map<String, Patient> patients)
+    {
+        Patient patient = patients.get(patientId);
+        if (patient == null && !patients.containsKey(patientId)) {
+            patient = this.patientRepository.get(patientId);
+            patients.put(patientId, patient);
+        }
+        return patient;
+    }
+
     private String findDuplicate(List<String> updatedMembers)
     {
         List<String> duplicationCheck = new LinkedList<>();
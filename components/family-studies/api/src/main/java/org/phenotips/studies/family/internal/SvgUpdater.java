@@ -17,32 +17,54 @@
  */
 package org.phenotips.studies.family.internal;
 
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.lang3.StringUtils;
+import java.util.Set;
 
 /**
  * Tools for updating the SVG generated by the pedigree.
+ * <p>
+ * All the operations are performed by a single forward scan over the SVG text: each tag is visited once, the elements
+ * of interest ({@code <svg>}, {@code <a>}, {@code <rect>}, {@code <circle>} and {@code <text>}) are reported to a
+ * {@link SvgRewriter} as they are encountered, and the result is assembled in one go at the end. This keeps the cost
+ * linear in the size of the SVG, no matter how many individuals the pedigree contains, and allows several changes
+ * (link removal, label shifting, styling and resizing) to be combined in the same pass.
+ * </p>
  *
  * @version $Id$
  * @since 1.2RC1
  */
 public final class SvgUpdater
 {
-    // matches SVG links to patients, such as href="/bin/data/P0000001"
-    private static final Pattern PATIENT_PAGE_LINK_PATTERN = Pattern.compile("href=\"[\\w\\/]*?/(P\\d+)");
+    /** The number of pixels to shift text when a link is removed. */
+    private static final int SVG_LINK_HEIGHT_IN_PIXELS = 22;
+
+    private static final String PEDIGREE_NODE_ID = "pedigreeNodeID=\"";
+
+    private static final String NODE_SHAPE_ID = "node-shape-";
+
+    private static final String PROBAND_MARKER = "isProband=\"true\"";
 
     private static final String STROKE_ATTR_TOKEN = "stroke-width=\"";
 
-    /**
-     * The number of pixels to shift text when a link is removed.
-     */
-    private static final int SVG_LINK_HEIGHT_IN_PIXELS = 22;
+    private static final String Y_ATTR_TOKEN = " y=\"";
+
+    private static final String HREF_TOKEN = "href=\"";
+
+    private static final String SVG_TAG = "svg";
+
+    private static final String LINK_TAG = "a";
+
+    private static final String TEXT_TAG = "text";
+
+    private static final String RECT_TAG = "rect";
+
+    private static final String CIRCLE_TAG = "circle";
+
+    private static final double PROBAND_STROKE_WIDTH = 2;
+
+    private static final double CURRENT_PATIENT_STROKE_WIDTH = 5;
 
     private SvgUpdater()
     {
@@ -60,8 +82,7 @@ public static String setSVGWidth(String svg, int width)
         if (width <= 0 || svg == null) {
             return svg;
         }
-        String updatedSvg = svg.replaceFirst("(<svg[^>]+)width=\"\\d+\"", "$1width=\"" + width + '"');
-        return updatedSvg;
+        return new SvgRewriter().withWidth(width).rewrite(svg);
     }
 
     /**
@@ -76,8 +97,7 @@ public static String setSVGHeight(String svg, int height)
         if (height <= 0 || svg == null) {
             return svg;
         }
-        String updatedSvg = svg.replaceFirst("(<svg[^>]+)height=\"\\d+\"", "$1height=\"" + height + '"');
-        return updatedSvg;
+        return new SvgRewriter().withHeight(height).rewrite(svg);
     }
 
     /**
@@ -89,119 +109,7 @@ public static String setSVGHeight(String svg, int height)
      */
     public static String removeLink(String svg, String removePatientId)
     {
-        List<SvgElementHolder> links = SvgUpdater.findAndParseAllElements(svg, new SvgLinkParser(removePatientId));
-        String svgWithNoLink = SvgUpdater.applyActionToSvg(svg, links.iterator(), new SvgRemoveAction());
-
-        Iterable<SvgElementHolder> labels = SvgUpdater.findAndParseAllElements(svgWithNoLink, new SvgTextParser(links));
-        // shift up labels below the link after removing the link
-        labels = SvgUpdater.shiftSvgElements(labels, -SvgUpdater.SVG_LINK_HEIGHT_IN_PIXELS);
-        String updatedSvg = SvgUpdater.applyActionToSvg(svgWithNoLink, labels.iterator(), new SvgUpdateAction());
-
-        return updatedSvg;
-    }
-
-    private static List<SvgElementHolder> findAndParseAllElements(String svg, SvgElementParser parser)
-    {
-        // TODO: replace by some SVG/XML library, e.g. https://xmlgraphics.apache.org/batik/
-
-        List<SvgElementHolder> elementList = new LinkedList<>();
-
-        try {
-            String remainingSvg = svg;
-            int potentialStart;
-            // the index of the opening tag, so that we know which closing tag to look for
-            int selectedTag;
-            int offsetFromSvgStart = 0;
-            int testStart = 0;
-            while (testStart != -1) {
-                potentialStart = remainingSvg.length();
-                selectedTag = 0;
-                int tagIndex = 0;
-                for (String tagOpen : parser.getSvgTagOpen()) {
-                    testStart = remainingSvg.indexOf(tagOpen);
-                    if (testStart != -1 && testStart <= potentialStart) {
-                        potentialStart = testStart;
-                        selectedTag = tagIndex;
-                    }
-                    tagIndex++;
-                }
-
-                int potentialEnd = remainingSvg.indexOf(parser.getSvgTagClosed().get(selectedTag));
-                if (potentialEnd != -1) {
-                    int nextSubstringStart = potentialEnd + parser.getSvgTagClosed().get(selectedTag).length();
-                    parser.iterativeAdd(potentialStart, svg, offsetFromSvgStart, nextSubstringStart, elementList);
-                    remainingSvg = remainingSvg.substring(nextSubstringStart);
-                    offsetFromSvgStart += nextSubstringStart;
-                } else {
-                    // TODO: throw an error if end is not found?
-                    break;
-                }
-            }
-        } catch (Exception ex) {
-            // TODO: throw?
-        }
-        return elementList;
-    }
-
-    private static SvgElementHolder findProbandShape(Iterable<SvgElementHolder> elements)
-    {
-        for (SvgElementHolder shape : elements) {
-            if (shape.belongsToProband) {
-                return shape;
-            }
-        }
-        return null;
-    }
-
-    private static SvgElementHolder findShapeWithNodeId(Iterable<SvgElementHolder> elements, String nodeId)
-    {
-        for (SvgElementHolder shape : elements) {
-            if (shape.nodeId.equalsIgnoreCase(nodeId)) {
-                return shape;
-            }
-        }
-        return null;
-    }
-
-    private static Iterable<SvgElementHolder> shiftSvgElements(Iterable<SvgElementHolder> elements, int shiftBy)
-    {
-        for (SvgElementHolder element : elements) {
-            int startYPosition = element.content.indexOf(" y=\"");
-            if (startYPosition != -1) {
-                // accounting for length of ` y="`
-                startYPosition += 4;
-                int endYPosition = element.content.indexOf('"', startYPosition + 1);
-                String yPositionString = element.content.substring(startYPosition, endYPosition);
-                double yPosition = Double.parseDouble(yPositionString);
-
-                Double newYPosition = yPosition + shiftBy;
-                element.content = element.content.substring(0, startYPosition) + newYPosition.toString()
-                    + element.content.substring(endYPosition);
-            }
-        }
-        return elements;
-    }
-
-    /**
-     * Replaces parts of SVG that are stored in the provided element list with the appropriately modified parts.
-     *
-     * @param elements must be a deterministic iterator, returning links in order that they occur in the svg
-     * @param svg must not be null
-     * @return modified svg
-     */
-    private static String applyActionToSvg(String svg, Iterator<SvgElementHolder> elements, SvgAction action)
-    {
-        String parsedSvg = "";
-        int splitHead = 0;
-        SvgElementHolder holder;
-        while (elements.hasNext()) {
-            holder = elements.next();
-            parsedSvg += svg.substring(splitHead, holder.startPosition);
-            parsedSvg += action.getReplacement(holder);
-            splitHead = holder.endPosition;
-        }
-        parsedSvg += svg.substring(splitHead);
-        return parsedSvg;
+        return new SvgRewriter().withRemovedLink(removePatientId).rewrite(svg);
     }
 
     /**
@@ -214,371 +122,408 @@ private static String applyActionToSvg(String svg, Iterator<SvgElementHolder> el
      */
     public static String setCurrentPatientStylesInSvg(String svg, String patientId)
     {
-        List<SvgElementHolder> nodeShapes = SvgUpdater.findAndParseAllElements(svg, new SvgNodeShapeParser());
-
-        // not ideal, but will likely work fine for a long time - removing stroke from every shape
-        SvgUpdater.removeStrokeWidth(nodeShapes);
-
-        SvgElementHolder probandShape = SvgUpdater.findProbandShape(nodeShapes);
-        if (probandShape != null) {
-            addProbandStyle(probandShape);
-        }
-
-        List<SvgElementHolder> links = SvgUpdater.findAndParseAllElements(svg, new SvgLinkParser(patientId));
-        if (links.size() == 1) {
-            // TODO: not sure what to do if more than one link to the same patient ID
-            SvgElementHolder currentShape = SvgUpdater.findShapeWithNodeId(nodeShapes, links.get(0).nodeId);
-            if (currentShape != null) {
-                addCurrentPatientStyle(currentShape);
-            }
-        }
-
-        String updatedSvg = SvgUpdater.applyActionToSvg(svg, nodeShapes.iterator(), new SvgUpdateAction());
-        return updatedSvg;
-    }
-
-    private static void removeStrokeWidth(Iterable<SvgElementHolder> shapes)
-    {
-        for (SvgElementHolder shape : shapes) {
-            int styleStart = shape.content.indexOf(STROKE_ATTR_TOKEN);
-            int styleEnd = shape.content.indexOf('"', styleStart + STROKE_ATTR_TOKEN.length());
-            // should throw an error if end is not found, but we are trying to make sure no data is lost
-            if (styleStart != -1 && styleEnd != -1) {
-                shape.content = shape.content.substring(0, styleStart) + shape.content.substring(styleEnd + 1);
-            }
-        }
+        return new SvgRewriter().withCurrentPatient(patientId).rewrite(svg);
     }
 
     /**
-     * @param probandShapes usually will be only one, or none
+     * Processes the SVG to visually mark a patient with current patient style and to resize the image, in a single
+     * pass. Equivalent to calling {@link #setCurrentPatientStylesInSvg(String, String)}, then
+     * {@link #setSVGWidth(String, int)} and {@link #setSVGHeight(String, int)}.
+     *
+     * @param svg a string representing an svg, may be {@code null}
+     * @param patientId the id of the patient that should be visually marked as current
+     * @param width target width in pixels, ignored if not positive
+     * @param height target height in pixels, ignored if not positive
+     * @return the updated svg
+     * @since 1.5M1
      */
-    private static void addProbandStyle(SvgElementHolder probandShape)
+    public static String getStyledSvg(String svg, String patientId, int width, int height)
     {
-        SvgUpdater.setStrokeWidth(probandShape, 2);
+        if (svg == null) {
+            return null;
+        }
+        return new SvgRewriter().withCurrentPatient(patientId).withWidth(width).withHeight(height).rewrite(svg);
     }
 
     /**
-     * @param currentPatientShapes usually will be only one, or none
+     * Single pass SVG transformer. The SVG is scanned once from start to end, and each recognized element is handled
+     * as an event. Elements whose final form depends on something that may appear later in the document (e.g. a
+     * label whose link has not been seen yet) are kept aside as {@link SvgElement placeholders} and resolved when the
+     * output is assembled, so no part of the input is ever scanned twice.
      */
-    private static void addCurrentPatientStyle(SvgElementHolder currentPatientShape)
+    private static final class SvgRewriter
     {
-        SvgUpdater.setStrokeWidth(currentPatientShape, 5);
-    }
+        private int width;
 
-    private static SvgElementHolder setStrokeWidth(SvgElementHolder element, double width)
-    {
-        if (element.content.contains(STROKE_ATTR_TOKEN)) {
-            int tokenStart = element.content.indexOf(STROKE_ATTR_TOKEN);
-            int tokenEnd = element.content.indexOf('"', tokenStart + STROKE_ATTR_TOKEN.length());
-            element.content = element.content.substring(0, tokenStart + STROKE_ATTR_TOKEN.length()) + width
-                + element.content.substring(tokenEnd);
-        } else {
-            int closingBracketPos = element.content.indexOf('>');
-            element.content = element.content.substring(0, closingBracketPos) + " " + STROKE_ATTR_TOKEN + width + '"'
-                + element.content.substring(closingBracketPos);
-        }
-        return element;
-    }
+        private int height;
 
-    private static class SvgElementHolder
-    {
-        private int startPosition;
+        private boolean removeLinks;
 
-        /**
-         * Includes the entire closing tag.
-         */
-        private int endPosition;
+        private String removedPatientId;
 
-        private int nodeIdTokenStart;
+        private boolean styleShapes;
 
-        private String content;
+        private String currentPatientId;
 
-        private String patientId = "";
+        /** Output, as a sequence of literal SVG fragments and {@link SvgElement placeholders}. */
+        private final List<Object> output = new ArrayList<>();
 
-        private String nodeId = "";
+        private StringBuilder literal = new StringBuilder();
 
-        /**
-         * Could be false even if it does. Must be synchronized with elements that automatically have this property
-         * assigned.
-         */
-        private boolean belongsToProband;
-    }
-
-    private static class SvgLinkParser extends AbstractSvgElementParser
-    {
-        private String filterPatientId;
+        /** Pedigree node IDs of the removed links, whose labels must be shifted up. */
+        private final Set<String> removedNodeIds = new HashSet<>();
 
-        SvgLinkParser(String patientId)
-        {
-            this.filterPatientId = patientId;
-        }
+        /** Pedigree node IDs of the links pointing to the current patient. */
+        private final List<String> currentPatientNodeIds = new ArrayList<>(1);
 
-        @Override
-        public List<String> getSvgTagOpen()
+        SvgRewriter withWidth(int newWidth)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "<a");
-            return list;
+            this.width = newWidth;
+            return this;
         }
 
-        @Override
-        public List<String> getSvgTagClosed()
+        SvgRewriter withHeight(int newHeight)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "</a>");
-            return list;
+            this.height = newHeight;
+            return this;
         }
 
-        @Override
-        protected String getNodeIdTokenStartString()
+        SvgRewriter withRemovedLink(String patientId)
         {
-            return PEDIGREE_NODE_ID;
+            this.removeLinks = true;
+            this.removedPatientId = patientId;
+            return this;
         }
 
-        @Override
-        public boolean test(String testPiece)
+        SvgRewriter withCurrentPatient(String patientId)
         {
-            return testPiece.contains(PEDIGREE_NODE_ID);
+            this.styleShapes = true;
+            this.currentPatientId = patientId;
+            return this;
         }
 
-        @Override
-        public boolean testHolder(SvgElementHolder holder)
+        String rewrite(String svg)
         {
-            if (this.filterPatientId == null) {
-                return true;
+            final int length = svg.length();
+            boolean rootSeen = false;
+            int position = 0;
+            int copied = 0;
+            while (position < length) {
+                int tagStart = svg.indexOf('<', position);
+                if (tagStart == -1) {
+                    break;
+                }
+                String tagName = getTagName(svg, tagStart);
+                int tagEnd = tagName == null ? -1 : svg.indexOf('>', tagStart);
+                if (tagName == null || tagEnd == -1) {
+                    position = tagStart + 1;
+                    continue;
+                }
+                if (SVG_TAG.equals(tagName)) {
+                    if (!rootSeen && (this.width > 0 || this.height > 0)) {
+                        this.literal.append(svg, copied, tagStart);
+                        onRootTag(svg.substring(tagStart, tagEnd + 1));
+                        copied = tagEnd + 1;
+                    }
+                    rootSeen = true;
+                    position = tagEnd + 1;
+                    continue;
+                }
+                int elementEnd = getElementEnd(svg, tagName, tagEnd);
+                if (elementEnd == -1) {
+                    // Unclosed element, leave the rest of the SVG untouched
+                    break;
+                }
+                this.literal.append(svg, copied, tagStart);
+                onElement(tagName, svg.substring(tagStart, elementEnd));
+                copied = elementEnd;
+                position = elementEnd;
             }
-            return this.filterPatientId.equalsIgnoreCase(holder.patientId);
+            this.literal.append(svg, copied, length);
+            return assemble(length);
         }
 
-        @Override
-        protected void performAdditionalOperations(SvgElementHolder holder)
+        private void onRootTag(String tag)
         {
-            try {
-                holder.patientId = parsePatientIdFromLink(holder);
-            } catch (Exception ex) {
-                // can't do anything
+            String result = tag;
+            if (this.width > 0) {
+                result = replaceNumericAttribute(result, "width", this.width);
             }
-        }
-
-        private String parsePatientIdFromLink(SvgElementHolder link)
-        {
-            Matcher linkMatch = PATIENT_PAGE_LINK_PATTERN.matcher(link.content);
-            if (linkMatch.find()) {
-                return linkMatch.group(1);
+            if (this.height > 0) {
+                result = replaceNumericAttribute(result, "height", this.height);
             }
-            return "";
+            this.literal.append(result);
         }
-    }
 
-    private static class SvgNodeShapeParser extends AbstractSvgElementParser
-    {
-        private static final String TEXT_ID_TOKEN_START = "node-shape-";
-
-        @Override
-        public List<String> getSvgTagOpen()
+        private void onElement(String tagName, String content)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "<rect", "<circle");
-            return list;
+            if (LINK_TAG.equals(tagName)) {
+                onLink(content);
+            } else if (TEXT_TAG.equals(tagName) && this.removeLinks) {
+                defer(new SvgElement(content, parseNodeId(content, PEDIGREE_NODE_ID), false));
+            } else if (this.styleShapes && !TEXT_TAG.equals(tagName) && content.contains(NODE_SHAPE_ID)) {
+                defer(new SvgElement(content, parseNodeId(content, NODE_SHAPE_ID), true));
+            } else {
+                this.literal.append(content);
+            }
         }
 
-        @Override
-        public List<String> getSvgTagClosed()
+        private void onLink(String content)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "</rect>", "</circle>");
-            return list;
+            if (!content.contains(PEDIGREE_NODE_ID)) {
+                this.literal.append(content);
+                return;
+            }
+            String patientId = parsePatientId(content);
+            String nodeId = parseNodeId(content, PEDIGREE_NODE_ID);
+            if (this.removeLinks
+                && (this.removedPatientId == null || this.removedPatientId.equalsIgnoreCase(patientId))) {
+                if (nodeId != null) {
+                    this.removedNodeIds.add(nodeId);
+                }
+                return;
+            }
+            if (this.currentPatientId != null && this.currentPatientId.equalsIgnoreCase(patientId)) {
+                this.currentPatientNodeIds.add(nodeId);
+            }
+            this.literal.append(content);
         }
 
-        @Override
-        protected String getNodeIdTokenStartString()
+        private void defer(SvgElement element)
         {
-            return TEXT_ID_TOKEN_START;
+            if (this.literal.length() > 0) {
+                this.output.add(this.literal);
+                this.literal = new StringBuilder();
+            }
+            this.output.add(element);
         }
 
-        @Override
-        public boolean test(String testPiece)
+        private String assemble(int expectedLength)
         {
-            return testPiece.contains(TEXT_ID_TOKEN_START);
+            if (this.output.isEmpty()) {
+                return this.literal.toString();
+            }
+            // TODO: not sure what to do if more than one link to the same patient ID
+            String currentNodeId = this.currentPatientNodeIds.size() == 1 ? this.currentPatientNodeIds.get(0) : null;
+            StringBuilder result = new StringBuilder(expectedLength + 64);
+            for (Object part : this.output) {
+                if (part instanceof SvgElement) {
+                    SvgElement element = (SvgElement) part;
+                    result.append(element.isShape ? styleShape(element, currentNodeId) : shiftLabel(element));
+                } else {
+                    result.append((CharSequence) part);
+                }
+            }
+            result.append(this.literal);
+            return result.toString();
         }
 
-        @Override
-        public boolean testHolder(SvgElementHolder holder)
+        private String shiftLabel(SvgElement label)
         {
-            return true;
+            if (label.nodeId == null || !this.removedNodeIds.contains(label.nodeId)) {
+                return label.content;
+            }
+            String content = label.content;
+            int start = content.indexOf(Y_ATTR_TOKEN);
+            if (start == -1) {
+                return content;
+            }
+            start += Y_ATTR_TOKEN.length();
+            int end = content.indexOf('"', start + 1);
+            if (end == -1) {
+                return content;
+            }
+            try {
+                Double y = Double.parseDouble(content.substring(start, end)) - SVG_LINK_HEIGHT_IN_PIXELS;
+                return content.substring(0, start) + y.toString() + content.substring(end);
+            } catch (NumberFormatException ex) {
+                return content;
+            }
         }
 
-        @Override
-        protected void performAdditionalOperations(SvgElementHolder holder)
+        private String styleShape(SvgElement shape, String currentNodeId)
         {
-            holder.belongsToProband = holder.content.contains("isProband=\"true\"");
-        }
-    }
-
-    private static class SvgTextParser extends AbstractSvgElementParser
-    {
-        private List<SvgElementHolder> filterByNodeId;
+            // not ideal, but will likely work fine for a long time - removing stroke from every shape
+            String content = shape.content;
+            int styleStart = content.indexOf(STROKE_ATTR_TOKEN);
+            int styleEnd = styleStart == -1 ? -1 : content.indexOf('"', styleStart + STROKE_ATTR_TOKEN.length());
+            if (styleEnd != -1) {
+                content = content.substring(0, styleStart) + content.substring(styleEnd + 1);
+            }
 
-        SvgTextParser(List<SvgElementHolder> nodeList)
-        {
-            this.filterByNodeId = nodeList;
+            double strokeWidth = 0;
+            if (currentNodeId != null && currentNodeId.equalsIgnoreCase(shape.nodeId)) {
+                strokeWidth = CURRENT_PATIENT_STROKE_WIDTH;
+            } else if (content.contains(PROBAND_MARKER)) {
+                strokeWidth = PROBAND_STROKE_WIDTH;
+            }
+            return strokeWidth > 0 ? setStrokeWidth(content, strokeWidth) : content;
         }
 
-        @Override
-        public List<String> getSvgTagOpen()
+        private static String setStrokeWidth(String content, double strokeWidth)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "<text");
-            return list;
+            int tokenStart = content.indexOf(STROKE_ATTR_TOKEN);
+            if (tokenStart != -1) {
+                int valueStart = tokenStart + STROKE_ATTR_TOKEN.length();
+                int tokenEnd = content.indexOf('"', valueStart);
+                return content.substring(0, valueStart) + strokeWidth + content.substring(tokenEnd);
+            }
+            int insertAt = content.indexOf('>');
+            if (insertAt > 0 && content.charAt(insertAt - 1) == '/') {
+                insertAt--;
+            }
+            return content.substring(0, insertAt) + ' ' + STROKE_ATTR_TOKEN + strokeWidth + '"'
+                + content.substring(insertAt);
         }
 
-        @Override
-        public List<String> getSvgTagClosed()
+        /**
+         * Returns the name of the tag starting at the given position, if it is one of the tags handled by this
+         * rewriter, {@code null} otherwise (other tags, closing tags, comments, processing instructions...).
+         */
+        private static String getTagName(String svg, int tagStart)
         {
-            List<String> list = new LinkedList<>();
-            Collections.addAll(list, "</text>");
-            return list;
+            int nameStart = tagStart + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < svg.length() && Character.isLetter(svg.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || nameEnd == svg.length()) {
+                return null;
+            }
+            char next = svg.charAt(nameEnd);
+            if (next != '>' && next != '/' && !Character.isWhitespace(next)) {
+                return null;
+            }
+            switch (nameEnd - nameStart) {
+                case 1:
+                    return matches(svg, nameStart, LINK_TAG);
+                case 3:
+                    return matches(svg, nameStart, SVG_TAG);
+                case 4:
+                    String name = matches(svg, nameStart, TEXT_TAG);
+                    return name != null ? name : matches(svg, nameStart, RECT_TAG);
+                case 6:
+                    return matches(svg, nameStart, CIRCLE_TAG);
+                default:
+                    return null;
+            }
         }
 
-        @Override
-        protected String getNodeIdTokenStartString()
+        private static String matches(String svg, int offset, String name)
         {
-            return PEDIGREE_NODE_ID;
+            return svg.regionMatches(offset, name, 0, name.length()) ? name : null;
         }
 
-        @Override
-        public boolean test(String testPiece)
+        /**
+         * Returns the position right after the end of the element whose opening tag ends at {@code tagEnd}, or
+         * {@code -1} if the element isn't closed.
+         */
+        private static int getElementEnd(String svg, String tagName, int tagEnd)
         {
-            return testPiece.contains(PEDIGREE_NODE_ID);
+            if (svg.charAt(tagEnd - 1) == '/') {
+                return tagEnd + 1;
+            }
+            String closingTag = "</" + tagName + '>';
+            int closingStart = svg.indexOf(closingTag, tagEnd);
+            return closingStart == -1 ? -1 : closingStart + closingTag.length();
         }
 
-        @Override
-        public boolean testHolder(SvgElementHolder holder)
+        private static String replaceNumericAttribute(String tag, String name, int value)
         {
-            if (this.filterByNodeId == null) {
-                return true;
-            }
-            for (SvgElementHolder element : this.filterByNodeId) {
-                if (holder.nodeId.equalsIgnoreCase(element.nodeId)) {
-                    return true;
+            String token = name + "=\"";
+            int searchFrom = 0;
+            while (true) {
+                int tokenStart = tag.indexOf(token, searchFrom);
+                if (tokenStart == -1) {
+                    return tag;
+                }
+                int valueStart = tokenStart + token.length();
+                int valueEnd = valueStart;
+                while (valueEnd < tag.length() && Character.isDigit(tag.charAt(valueEnd))) {
+                    valueEnd++;
                 }
+                if (Character.isWhitespace(tag.charAt(tokenStart - 1)) && valueEnd > valueStart
+                    && valueEnd < tag.length() && tag.charAt(valueEnd) == '"') {
+                    return tag.substring(0, valueStart) + value + tag.substring(valueEnd);
+                }
+                searchFrom = valueStart;
             }
-            return false;
         }
 
-        @Override
-        protected void performAdditionalOperations(SvgElementHolder holder)
+        /**
+         * Gets a numeric node id following the given token.
+         *
+         * @return the node id, or {@code null} if the token isn't found or isn't followed by a numeric node id
+         */
+        private static String parseNodeId(String content, String token)
         {
-            // the pedigree no longer puts the node id into the class name (??)
+            int tokenStart = content.indexOf(token);
+            if (tokenStart == -1) {
+                return null;
+            }
+            int idStart = tokenStart + token.length();
+            int idEnd = idStart;
+            while (idEnd < content.length() && Character.isDigit(content.charAt(idEnd))) {
+                idEnd++;
+            }
+            return idEnd > idStart ? content.substring(idStart, idEnd) : null;
         }
-    }
-
-    private abstract static class AbstractSvgElementParser implements SvgElementParser
-    {
-        protected static final String PEDIGREE_NODE_ID = "pedigreeNodeID=\"";
-
-        @Override
-        public abstract List<String> getSvgTagOpen();
-
-        @Override
-        public abstract List<String> getSvgTagClosed();
-
-        protected abstract String getNodeIdTokenStartString();
-
-        @Override
-        public abstract boolean test(String testPiece);
-
-        @Override
-        public abstract boolean testHolder(SvgElementHolder holder);
 
-        protected abstract void performAdditionalOperations(SvgElementHolder holder);
-
-        @Override
-        public void iterativeAdd(int start, String svg, int offset, int nextSubstringStart,
-            List<SvgElementHolder> elementList)
+        /**
+         * Extracts the patient identifier from SVG links to patients, such as {@code href="/bin/data/P0000001"}.
+         *
+         * @return the linked patient identifier, or an empty string if this isn't a link to a patient
+         */
+        private static String parsePatientId(String link)
         {
-            int absoluteStart = start + offset;
-            int absoluteEnd = nextSubstringStart + offset;
-            String content = svg.substring(absoluteStart, absoluteEnd);
-            if (this.test(content)) {
-                SvgElementHolder holder = this.createBasicHolder(absoluteStart, absoluteEnd, content);
-                this.performAdditionalOperations(holder);
-                if (this.testHolder(holder)) {
-                    elementList.add(holder);
+            int hrefStart = link.indexOf(HREF_TOKEN);
+            while (hrefStart != -1) {
+                for (int i = hrefStart + HREF_TOKEN.length(); i < link.length() && isPathCharacter(link.charAt(i));
+                    ++i) {
+                    if (link.charAt(i) == '/') {
+                        String patientId = getPatientId(link, i + 1);
+                        if (patientId != null) {
+                            return patientId;
+                        }
+                    }
                 }
+                hrefStart = link.indexOf(HREF_TOKEN, hrefStart + 1);
             }
+            return "";
         }
 
-        private SvgElementHolder createBasicHolder(int start, int end, String content)
+        private static boolean isPathCharacter(char c)
         {
-            SvgElementHolder holder = new SvgElementHolder();
-            holder.startPosition = start;
-            holder.endPosition = end;
-            holder.content = content;
-            holder.nodeIdTokenStart = content.indexOf(this.getNodeIdTokenStartString());
-            holder.nodeId = parseNodeIdFromElement(holder, this.getNodeIdTokenStartString());
-            return holder;
+            return c == '/' || c == '_' || c < 128 && Character.isLetterOrDigit(c);
         }
 
-        /**
-         * Gets a node id from any string (usually SVG id or class attributes).
-         *
-         * @return -1 if {@link SvgElementHolder#nodeIdTokenStart} is -1 or if fails to find a numeric node id.
-         *         Otherwise returns the node id
-         */
-        private String parseNodeIdFromElement(SvgElementHolder element, String tokenStartString)
+        private static String getPatientId(String link, int start)
         {
-            if (element.nodeIdTokenStart != -1) {
-                String nodeIdString = "";
-                int readingPosition = element.nodeIdTokenStart + tokenStartString.length();
-                Character idChar = element.content.charAt(readingPosition);
-                while (Character.isDigit(idChar)) {
-                    nodeIdString += idChar;
-                    readingPosition++;
-                    idChar = element.content.charAt(readingPosition);
-                }
-                if (StringUtils.isNotBlank(nodeIdString)) {
-                    return nodeIdString;
-                }
+            if (start >= link.length() || link.charAt(start) != 'P') {
+                return null;
             }
-            return null;
+            int end = start + 1;
+            while (end < link.length() && Character.isDigit(link.charAt(end))) {
+                end++;
+            }
+            return end > start + 1 ? link.substring(start, end) : null;
         }
     }
 
-    private interface SvgElementParser
+    /** An SVG element whose final content is decided once the whole SVG has been scanned. */
+    private static final class SvgElement
     {
-        List<String> getSvgTagOpen();
-
-        List<String> getSvgTagClosed();
+        private final String content;
 
-        boolean test(String testPiece);
+        private final String nodeId;
 
-        boolean testHolder(SvgElementHolder holder);
-
-        void iterativeAdd(int start, String svg, int offset, int nextSubstringStart,
-            List<SvgElementHolder> elementList);
-    }
+        private final boolean isShape;
 
-    private static class SvgUpdateAction implements SvgAction
-    {
-        @Override
-        public String getReplacement(SvgElementHolder holder)
-        {
-            return holder.content;
-        }
-    }
-
-    private static class SvgRemoveAction implements SvgAction
-    {
-        @Override
-        public String getReplacement(SvgElementHolder holder)
+        SvgElement(String content, String nodeId, boolean isShape)
         {
-            return "";
+            this.content = content;
+            this.nodeId = nodeId;
+            this.isShape = isShape;
         }
     }
-
-    private interface SvgAction
-    {
-        String getReplacement(SvgElementHolder holder);
-    }
 }
@@ -23,22 +23,20 @@
 import org.phenotips.data.PatientRepository;
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyIndex;
 import org.phenotips.studies.family.FamilyRepository;
+import org.phenotips.studies.family.FamilySummary;
 
 import org.xwiki.component.annotation.Component;
-import org.xwiki.query.Query;
-import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryManager;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 import org.xwiki.xml.XMLUtils;
 
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,7 +47,6 @@
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.slf4j.Logger;
 
 import com.xpn.xwiki.XWikiContext;
 
@@ -80,9 +77,7 @@
 
     private static final String ID = "id";
 
-    private static final String INPUT_PARAMETER = "input";
-
-    private static final String INPUT_FORMAT = "%%%s%%";
+    private static final String DESC = "desc";
 
     private static final String FAMILY_ID = ID;
 
@@ -94,12 +89,9 @@
 
     private static final String FAMILY_MEMBERS = "familyMembers";
 
-    /** Runs queries for finding families. */
-    @Inject
-    private QueryManager qm;
-
+    /** Finds the families matching a search. */
     @Inject
-    private Logger logger;
+    private FamilyIndex familyIndex;
 
     @Inject
     private FamilyRepository familyRepository;
@@ -123,7 +115,7 @@
      * Returns a list of families by the input search criteria. The user has to have requiredPermission on each family.
      *
      * @param input criterion to select families by
-     * @param resultsLimit maximal number of results for each query
+     * @param resultsLimit maximal number of results
      * @param requiredPermission permission a user has to have over each family in the result
      * @param orderField field used for ordering the families, can be one of {@code id} (default) or {@code eid}
      * @param order the sorting order, can be one of {@code asc} (default) or {@code desc}
@@ -133,9 +125,35 @@
     public String searchFamilies(String input, int resultsLimit, String requiredPermission, String orderField,
         String order, boolean returnAsJSON)
     {
+        Comparator<FamilySummary> comparator = null;
+        if ("eid".equals(orderField)) {
+            comparator = Comparator.comparing(FamilySummary::getExternalId).thenComparing(FamilySummary::getId);
+        } else if (DESC.equals(order)) {
+            comparator = Comparator.comparing(FamilySummary::getId);
+        }
+        if (comparator != null && DESC.equals(order)) {
+            comparator = comparator.reversed();
+        }
+
+        boolean usePatientName = this.configuration.getConfiguration(PATIENT_LABEL).getEnabledFieldNames()
+            .contains(FIRST_NAME);
         Set<FamilySearchResult> results = new LinkedHashSet<>();
-        queryFamilies(input, requiredPermission, resultsLimit, orderField, order, results);
-        queryPatients(input, requiredPermission, resultsLimit, orderField, order, results);
+        for (FamilySummary match : this.familyIndex.search(input, resultsLimit, Right.toRight(requiredPermission),
+            comparator)) {
+            Family family = this.familyRepository.get(match.getId());
+            if (family == null) {
+                continue;
+            }
+            Patient patient = null;
+            if (match.getMatchedMemberId() != null) {
+                patient = this.patientRepository.get(match.getMatchedMemberId());
+            }
+            if (patient == null) {
+                results.add(new FamilySearchResult(family, requiredPermission));
+            } else {
+                results.add(new FamilySearchResult(patient, usePatientName, family, requiredPermission));
+            }
+        }
         return formatResults(results, returnAsJSON);
     }
 
@@ -196,119 +214,6 @@ private JSONObject getPatientInformationAsJSON(Patient patient)
         return patientJSON;
     }
 
-    private void queryFamilies(String input, String requiredPermission, int resultsLimit, String orderField,
-        String order, Set<FamilySearchResult> results)
-    {
-        String safeOrderField = "doc.name";
-        if ("eid".equals(orderField)) {
-            safeOrderField = "family.external_id";
-        }
-        String safeOrder = " asc";
-        if ("desc".equals(order)) {
-            safeOrder = " desc";
-        }
-
-        StringBuilder querySb = new StringBuilder();
-        querySb.append("select doc.name ");
-        querySb.append(" from  Document doc, ");
-        querySb.append("       doc.object(PhenoTips.FamilyClass) as family ");
-        querySb.append(" where lower(doc.name) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-        querySb.append(" or lower(family.external_id) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-        querySb.append(" order by " + safeOrderField + safeOrder);
-
-        List<String> queryResults = runQuery(querySb.toString(), input);
-
-        // Process family query results
-        for (String queryResult : queryResults) {
-            Family family = this.familyRepository.get(queryResult);
-            if (family == null) {
-                continue;
-            }
-
-            Right right = Right.toRight(requiredPermission);
-            if (!this.authorizationService.hasAccess(
-                this.userManager.getCurrentUser(), right, family.getDocumentReference())) {
-                continue;
-            }
-
-            results.add(new FamilySearchResult(family, requiredPermission));
-            if (results.size() >= resultsLimit) {
-                break;
-            }
-        }
-    }
-
-    private void queryPatients(String input, String requiredPermission, int resultsLimit, String orderField,
-        String order, Set<FamilySearchResult> results)
-    {
-        String safeOrderField = "doc.name";
-        if ("eid".equals(orderField)) {
-            safeOrderField = "patient.external_id";
-        }
-        String safeOrder = " asc";
-        if ("desc".equals(order)) {
-            safeOrder = " desc";
-        }
-
-        StringBuilder querySb = new StringBuilder();
-        querySb.append("from doc.object(PhenoTips.PatientClass) as patient,");
-        querySb.append(" doc.object(PhenoTips.FamilyReferenceClass) as familyref");
-        querySb.append(" where lower(doc.name) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-        querySb.append(" or lower(patient.external_id) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-
-        boolean usePatientName = this.configuration.getConfiguration(PATIENT_LABEL).getEnabledFieldNames()
-            .contains(FIRST_NAME);
-        if (usePatientName) {
-            querySb.append(" or lower(patient.first_name) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-            querySb.append(" or lower(patient.last_name) like :").append(PhenotipsFamilyExport.INPUT_PARAMETER);
-        }
-        querySb.append(" order by " + safeOrderField + safeOrder);
-
-        List<String> queryResults = runQuery(querySb.toString(), input);
-
-        // Process family query results
-        for (String queryResult : queryResults) {
-            Patient patient = this.patientRepository.get(queryResult);
-            if (patient == null) {
-                continue;
-            }
-
-            Right right = Right.toRight(requiredPermission);
-            if (!this.authorizationService.hasAccess(this.userManager.getCurrentUser(), right,
-                patient.getDocumentReference())) {
-                continue;
-            }
-
-            Family family = this.familyRepository.getFamilyForPatient(patient);
-            if (family == null) {
-                continue;
-            }
-
-            results.add(new FamilySearchResult(patient, usePatientName, family, requiredPermission));
-            if (results.size() >= resultsLimit) {
-                break;
-            }
-        }
-    }
-
-    private List<String> runQuery(String queryString, String input)
-    {
-        String formattedInput = String.format(PhenotipsFamilyExport.INPUT_FORMAT, input.toLowerCase());
-
-        // Query patients
-        Query query = null;
-        List<String> queryResults = null;
-        try {
-            query = this.qm.createQuery(queryString, Query.XWQL);
-            query.bindValue(PhenotipsFamilyExport.INPUT_PARAMETER, formattedInput);
-            queryResults = query.execute();
-        } catch (QueryException e) {
-            this.logger.error("Error while performing patients/families query: [{}] ", e.getMessage());
-            return Collections.emptyList();
-        }
-        return queryResults;
-    }
-
     private String formatResults(Set<FamilySearchResult> results, boolean returnAsJSON)
     {
         JSONArray familyArray = null;
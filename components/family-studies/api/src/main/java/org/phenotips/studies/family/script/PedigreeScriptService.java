@@ -23,6 +23,9 @@
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyTools;
 import org.phenotips.studies.family.Pedigree;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+import org.phenotips.studies.family.PedigreeMember;
 import org.phenotips.studies.family.exceptions.PTException;
 import org.phenotips.studies.family.exceptions.PTInvalidFamilyIdException;
 import org.phenotips.studies.family.exceptions.PTInvalidPatientIdException;
@@ -51,8 +54,10 @@
 import org.xwiki.users.UserManager;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -86,6 +91,9 @@ public class PedigreeScriptService implements ScriptService
     @Inject
     private FamilyTools familyTools;
 
+    @Inject
+    private PedigreeGraphManager pedigreeGraphManager;
+
     @Inject
     private Logger logger;
 
@@ -129,6 +137,47 @@ public JSONResponse getFamilyAndPedigree(String documentId)
         }
     }
 
+    /**
+     * Returns the typed graph of the pedigree of a family, which can be used for querying relatives, affected members
+     * and consanguinity without walking the pedigree JSON.
+     *
+     * @param documentId PhenoTips family id or PhenoTips patient id; for a patient id, the graph of the patient's
+     *            family is returned
+     * @return the pedigree graph, or {@code null} if the family doesn't exist, doesn't have a pedigree, or the current
+     *         user doesn't have view access to it
+     * @since 1.5M1
+     */
+    public PedigreeGraph getPedigreeGraph(String documentId)
+    {
+        try {
+            Family family = getViewableFamily(documentId);
+            return family == null ? null : this.pedigreeGraphManager.getGraph(family);
+        } catch (Exception ex) {
+            this.logger.error("Failed to retrieve the pedigree graph for [{}]: {}", documentId, ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lists the blood relatives of a patient, as drawn in the pedigree of the patient's family.
+     *
+     * @param patientId PhenoTips patient id
+     * @param maxDegree the maximum degree of relationship to return, {@code 1} for parents, children and siblings
+     * @return the relatives mapped to their degree of relationship, ordered by degree; empty if the patient isn't in a
+     *         pedigree or the current user doesn't have view access to the family
+     * @since 1.5M1
+     * @see PedigreeGraph#getRelatives(PedigreeMember, int)
+     */
+    public Map<PedigreeMember, Integer> getRelatives(String patientId, int maxDegree)
+    {
+        PedigreeGraph graph = getPedigreeGraph(patientId);
+        PedigreeMember member = graph == null ? null : graph.getMemberByPatientId(patientId);
+        if (member == null) {
+            return Collections.emptyMap();
+        }
+        return graph.getRelatives(member, maxDegree);
+    }
+
     /**
      * Checks if a patient can be linked to a family. The id of the patient to link is patientItLinkId. The family is
      * given by documentId: If document is a family id, it is read directly by its id. If it's a patient id, the family
@@ -197,6 +246,26 @@ public JSONResponse savePedigree(String familyId, String json, String image)
         }
     }
 
+    private Family getViewableFamily(String documentId)
+    {
+        User currentUser = this.userManager.getCurrentUser();
+        Family family;
+        Patient patient = this.patientRepository.get(documentId);
+        if (patient != null) {
+            if (!this.authorizationService.hasAccess(currentUser, Right.VIEW, patient.getDocumentReference())) {
+                return null;
+            }
+            family = this.familyTools.getFamilyForPatient(documentId);
+        } else {
+            family = this.familyTools.getFamilyById(documentId);
+        }
+        if (family == null
+            || !this.authorizationService.hasAccess(currentUser, Right.VIEW, family.getDocumentReference())) {
+            return null;
+        }
+        return family;
+    }
+
     private JSONResponse convertExceptionIntoJSONResponse(Exception ex)
     {
         if (ex instanceof PTException) {
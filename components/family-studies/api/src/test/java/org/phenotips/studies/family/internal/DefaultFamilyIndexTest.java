@@ -0,0 +1,324 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.configuration.RecordConfiguration;
+import org.phenotips.configuration.RecordConfigurationManager;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientData;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyIndex;
+import org.phenotips.studies.family.FamilySummary;
+
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultFamilyIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultFamilyIndexTest
+{
+    @Rule
+    public MockitoComponentMockingRule<FamilyIndex> mocker =
+        new MockitoComponentMockingRule<>(DefaultFamilyIndex.class);
+
+    private FamilyIndex index;
+
+    private Query familiesQuery;
+
+    private Query membersQuery;
+
+    private List<String> enabledFields = new ArrayList<>(Arrays.asList("first_name", "last_name"));
+
+    private AuthorizationService access;
+
+    private User user;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.index = this.mocker.getComponentUnderTest();
+
+        QueryManager qm = this.mocker.getInstance(QueryManager.class);
+        this.familiesQuery = mock(Query.class);
+        this.membersQuery = mock(Query.class);
+        when(qm.createQuery(any(String.class), eq(Query.XWQL))).then(invocation -> String.valueOf(
+            invocation.getArguments()[0]).contains("FamilyReferenceClass") ? this.membersQuery : this.familiesQuery);
+        when(this.familiesQuery.<Object[]>execute()).thenReturn(Arrays.asList(
+            new Object[] { "FAM0000003", "Smith family" },
+            new Object[] { "FAM0000001", "" },
+            new Object[] { "FAM0000002", null }));
+        when(this.membersQuery.<Object[]>execute()).thenReturn(Arrays.asList(
+            new Object[] { "P0000001", "xwiki:Families.FAM0000001", "NCH-1", "Jane", "Doe" },
+            new Object[] { "P0000002", "Families.FAM0000001", null, "John", "Doe" },
+            new Object[] { "P0000003", "xwiki:Families.FAM0000003", "NCH-3", "Alice", "Smith" }));
+
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentReferenceResolver.class, String.class), "current");
+        when(resolver.resolve(anyString(), any(EntityReference.class))).then(invocation -> new DocumentReference(
+            "xwiki", ((EntityReference) invocation.getArguments()[1]).getName(),
+            StringUtils.substringAfterLast("." + invocation.getArguments()[0], ".")));
+
+        RecordConfiguration config = mock(RecordConfiguration.class);
+        when(this.mocker.getInstance(RecordConfigurationManager.class).getConfiguration("patient"))
+            .thenReturn(config);
+        when(config.getEnabledFieldNames()).thenReturn(this.enabledFields);
+
+        this.user = mock(User.class);
+        when(this.mocker.getInstance(UserManager.class).getCurrentUser()).thenReturn(this.user);
+        this.access = this.mocker.getInstance(AuthorizationService.class);
+        when(this.access.hasAccess(eq(this.user), eq(Right.VIEW), any(EntityReference.class))).thenReturn(true);
+        when(this.access.hasAccess(this.user, Right.VIEW, familyReference("FAM0000002"))).thenReturn(false);
+    }
+
+    @Test
+    public void listUsesKeysetPaging()
+    {
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000003"), ids(this.index.list(null, 10, Right.VIEW)));
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), ids(this.index.list(null, 1, Right.VIEW)));
+        Assert.assertEquals(Collections.singletonList("FAM0000003"),
+            ids(this.index.list("FAM0000001", 1, Right.VIEW)));
+        Assert.assertTrue(this.index.list("FAM0000003", 1, Right.VIEW).isEmpty());
+        Assert.assertTrue(this.index.list(null, 0, Right.VIEW).isEmpty());
+    }
+
+    @Test
+    public void listReturnsFamilyData()
+    {
+        FamilySummary family = this.index.list(null, 1, Right.VIEW).get(0);
+        Assert.assertEquals("FAM0000001", family.getId());
+        Assert.assertEquals("", family.getExternalId());
+        Assert.assertEquals(familyReference("FAM0000001"), family.getDocumentReference());
+        Assert.assertEquals(Arrays.asList("P0000001", "P0000002"), family.getMemberIds());
+        Assert.assertNull(family.getMatchedMemberId());
+    }
+
+    @Test
+    public void listOnlyChecksAccessToTheReturnedPage()
+    {
+        this.index.list(null, 1, Right.VIEW);
+        verify(this.access, never()).hasAccess(this.user, Right.VIEW, familyReference("FAM0000003"));
+    }
+
+    @Test
+    public void searchMatchesFamiliesAndMembers()
+    {
+        List<FamilySummary> result = this.index.search("SMITH", 10, Right.VIEW, null);
+        Assert.assertEquals(Collections.singletonList("FAM0000003"), ids(result));
+        Assert.assertNull(result.get(0).getMatchedMemberId());
+
+        result = this.index.search("nch-1", 10, Right.VIEW, null);
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), ids(result));
+        Assert.assertEquals("P0000001", result.get(0).getMatchedMemberId());
+
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000003"), ids(this.index.search("0", 10, Right.VIEW,
+            null)));
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), ids(this.index.search("0", 1, Right.VIEW,
+            null)));
+    }
+
+    @Test
+    public void searchIgnoresNamesWhenTheyAreDisabled()
+    {
+        Assert.assertEquals(1, this.index.search("john doe", 10, Right.VIEW, null).size());
+        this.enabledFields.clear();
+        Assert.assertTrue(this.index.search("john doe", 10, Right.VIEW, null).isEmpty());
+    }
+
+    @Test
+    public void searchChecksAccessToTheMatchedMember()
+    {
+        when(this.access.hasAccess(this.user, Right.VIEW, familyReference("FAM0000001"))).thenReturn(false);
+        when(this.access.hasAccess(this.user, Right.VIEW, new DocumentReference("xwiki", "data", "P0000001")))
+            .thenReturn(false);
+
+        List<FamilySummary> result = this.index.search("doe", 10, Right.VIEW, null);
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), ids(result));
+        Assert.assertEquals("P0000002", result.get(0).getMatchedMemberId());
+
+        Assert.assertTrue(this.index.search("jane", 10, Right.VIEW, null).isEmpty());
+    }
+
+    @Test
+    public void searchSortsResults()
+    {
+        Comparator<FamilySummary> order = Comparator.comparing(FamilySummary::getExternalId).reversed();
+        Assert.assertEquals(Arrays.asList("FAM0000003", "FAM0000001"), ids(this.index.search("fam", 10, Right.VIEW,
+            order)));
+    }
+
+    @Test
+    public void indexIsLoadedOnlyOnce() throws QueryException
+    {
+        this.index.list(null, 10, Right.VIEW);
+        this.index.search("fam", 10, Right.VIEW, null);
+
+        verify(this.familiesQuery, times(1)).execute();
+        verify(this.membersQuery, times(1)).execute();
+        verify(this.familiesQuery).bindValue("t", "FamilyTemplate");
+        verify(this.membersQuery).bindValue("t", "PatientTemplate");
+    }
+
+    @Test
+    public void changesAreIgnoredBeforeTheIndexIsLoaded() throws QueryException
+    {
+        Family family = family("FAM0000004", "New", "P0000004");
+        this.index.index(family);
+        this.index.delete(family);
+
+        verify(this.familiesQuery, never()).execute();
+        verify(family, never()).getMembersIds();
+    }
+
+    @Test
+    public void changesAreReflectedAfterTheIndexIsLoaded() throws Exception
+    {
+        this.index.list(null, 10, Right.VIEW);
+
+        Patient newMember = patient("P0000004", "NCH-4", "Bob", "Brown");
+        when(this.mocker.getInstance(PatientRepository.class).get("P0000004")).thenReturn(newMember);
+        this.index.index(family("FAM0000004", "New", "P0000003", "P0000004"));
+        List<FamilySummary> result = this.index.search("brown", 10, Right.VIEW, null);
+        Assert.assertEquals(Collections.singletonList("FAM0000004"), ids(result));
+        Assert.assertEquals("P0000004", result.get(0).getMatchedMemberId());
+        // The moved patient is no longer a member of its old family, but is still known by name
+        Assert.assertEquals(Collections.singletonList("FAM0000004"), ids(this.index.search("alice", 10,
+            Right.VIEW, null)));
+
+        this.index.index(patient("P0000004", "NCH-4", "Bob", "Green"));
+        Assert.assertTrue(this.index.search("brown", 10, Right.VIEW, null).isEmpty());
+        Assert.assertEquals(1, this.index.search("green", 10, Right.VIEW, null).size());
+
+        this.index.delete(patient("P0000004", null, null, null));
+        Assert.assertTrue(this.index.search("green", 10, Right.VIEW, null).isEmpty());
+
+        this.index.delete(family("FAM0000004", "New"));
+        this.index.delete((Family) null);
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000003"), ids(this.index.list(null, 10, Right.VIEW)));
+    }
+
+    @Test
+    public void failedLoadsAreRetriedAfterAChange() throws QueryException
+    {
+        when(this.familiesQuery.execute()).thenThrow(new QueryException("failed", this.familiesQuery, null))
+            .thenReturn(Collections.<Object>singletonList(new Object[] { "FAM0000001", "" }));
+
+        Assert.assertTrue(this.index.list(null, 10, Right.VIEW).isEmpty());
+        // The failure is remembered, listing or searching again doesn't reload everything
+        Assert.assertTrue(this.index.list(null, 10, Right.VIEW).isEmpty());
+        Assert.assertTrue(this.index.search("doe", 10, Right.VIEW, null).isEmpty());
+        verify(this.familiesQuery, times(1)).execute();
+
+        this.index.delete(family("FAM0000004", "Deleted"));
+        Assert.assertEquals(1, this.index.list(null, 10, Right.VIEW).size());
+        verify(this.familiesQuery, times(2)).execute();
+    }
+
+    @Test
+    public void changesMadeWhileLoadingAreNotLost() throws Exception
+    {
+        Family family = family("FAM0000004", "New", "P0000004");
+        List<Object[]> families = this.familiesQuery.execute();
+        Thread[] writer = new Thread[1];
+        when(this.familiesQuery.execute()).then(invocation -> {
+            // The family is saved while the stored families are being read
+            writer[0] = new Thread(() -> this.index.index(family));
+            writer[0].start();
+            while (writer[0].getState() != Thread.State.WAITING && writer[0].isAlive()) {
+                Thread.yield();
+            }
+            return families;
+        });
+
+        this.index.list(null, 10, Right.VIEW);
+        writer[0].join();
+
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000003", "FAM0000004"),
+            ids(this.index.list(null, 10, Right.VIEW)));
+    }
+
+    private DocumentReference familyReference(String id)
+    {
+        return new DocumentReference("xwiki", "Families", id);
+    }
+
+    private Family family(String id, String externalId, String... memberIds)
+    {
+        Family family = mock(Family.class);
+        when(family.getId()).thenReturn(id);
+        when(family.getExternalId()).thenReturn(externalId);
+        when(family.getMembersIds()).thenReturn(Arrays.asList(memberIds));
+        return family;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Patient patient(String id, String externalId, String firstName, String lastName)
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.getId()).thenReturn(id);
+        when(patient.getExternalId()).thenReturn(externalId);
+        PatientData<String> names = mock(PatientData.class);
+        when(names.get("first_name")).thenReturn(firstName);
+        when(names.get("last_name")).thenReturn(lastName);
+        when(patient.<String>getData("patientName")).thenReturn(names);
+        return patient;
+    }
+
+    private List<String> ids(List<FamilySummary> families)
+    {
+        List<String> result = new ArrayList<>();
+        for (FamilySummary family : families) {
+            result.add(family.getId());
+        }
+        return result;
+    }
+}
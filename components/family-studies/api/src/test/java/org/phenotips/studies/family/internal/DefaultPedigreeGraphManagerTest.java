@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.Pedigree;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPedigreeGraphManager} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPedigreeGraphManagerTest
+{
+    private static final String PEDIGREE = "{\"proband\":1,\"members\":[{\"id\":1,\"properties\":{\"id\":\"P01\"}},"
+        + "{\"id\":2},{\"id\":3}],\"relationships\":[{\"id\":4,\"members\":[2,3],\"children\":[{\"id\":1}]}]}";
+
+    private static final String CACHE_KEY = "xwiki:Families.FAM01@3.1";
+
+    @Rule
+    public final MockitoComponentMockingRule<PedigreeGraphManager> mocker =
+        new MockitoComponentMockingRule<>(DefaultPedigreeGraphManager.class);
+
+    @Mock
+    private Family family;
+
+    @Mock
+    private XWikiDocument document;
+
+    @Mock
+    private BaseObject pedigreeObject;
+
+    @Mock
+    private Cache<PedigreeGraph> cache;
+
+    private DocumentReference familyReference = new DocumentReference("xwiki", "Families", "FAM01");
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.<PedigreeGraph>createNewCache(any(CacheConfiguration.class))).thenReturn(this.cache);
+
+        when(this.family.getDocumentReference()).thenReturn(this.familyReference);
+        DocumentAccessBridge bridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(bridge.getDocumentInstance(this.familyReference)).thenReturn(this.document);
+        when(this.document.getVersion()).thenReturn("3.1");
+        when(this.document.getXObject(Pedigree.CLASS_REFERENCE)).thenReturn(this.pedigreeObject);
+        when(this.pedigreeObject.getStringValue(Pedigree.DATA)).thenReturn(PEDIGREE);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.familyReference)).thenReturn("xwiki:Families.FAM01");
+    }
+
+    @Test
+    public void graphIsBuiltAndCachedByVersion() throws Exception
+    {
+        PedigreeGraph graph = this.mocker.getComponentUnderTest().getGraph(this.family);
+
+        Assert.assertEquals(3, graph.getMembers().size());
+        Assert.assertEquals("P01", graph.getProband().getPatientId());
+        Assert.assertEquals(2, graph.getParents(graph.getProband()).size());
+        verify(this.cache).set(CACHE_KEY, graph);
+    }
+
+    @Test
+    public void cachedGraphIsReused() throws Exception
+    {
+        PedigreeGraph cached = new DefaultPedigreeGraph(new JSONObject(PEDIGREE));
+        when(this.cache.get(CACHE_KEY)).thenReturn(cached);
+
+        Assert.assertSame(cached, this.mocker.getComponentUnderTest().getGraph(this.family));
+        verify(this.document, never()).getXObject(Pedigree.CLASS_REFERENCE);
+        verify(this.cache, never()).set(anyString(), any(PedigreeGraph.class));
+    }
+
+    @Test
+    public void newVersionIsRebuilt() throws Exception
+    {
+        when(this.cache.get(CACHE_KEY)).thenReturn(new DefaultPedigreeGraph(new JSONObject(PEDIGREE)));
+        when(this.document.getVersion()).thenReturn("4.1");
+
+        PedigreeGraph graph = this.mocker.getComponentUnderTest().getGraph(this.family);
+
+        verify(this.cache).set(eq("xwiki:Families.FAM01@4.1"), eq(graph));
+    }
+
+    @Test
+    public void missingOrInvalidPedigreeReturnsNull() throws Exception
+    {
+        Assert.assertNull(this.mocker.getComponentUnderTest().getGraph(null));
+
+        when(this.pedigreeObject.getStringValue(Pedigree.DATA)).thenReturn("{not json");
+        Assert.assertNull(this.mocker.getComponentUnderTest().getGraph(this.family));
+
+        when(this.pedigreeObject.getStringValue(Pedigree.DATA)).thenReturn("{\"data\":{}}");
+        Assert.assertNull(this.mocker.getComponentUnderTest().getGraph(this.family));
+
+        when(this.document.getXObject(Pedigree.CLASS_REFERENCE)).thenReturn(null);
+        Assert.assertNull(this.mocker.getComponentUnderTest().getGraph(this.family));
+
+        verify(this.cache, never()).set(anyString(), any(PedigreeGraph.class));
+    }
+}
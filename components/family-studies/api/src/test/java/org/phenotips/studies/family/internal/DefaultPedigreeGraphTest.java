@@ -0,0 +1,298 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeMember;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DefaultPedigreeGraph}.
+ *
+ * @version $Id$
+ */
+public class DefaultPedigreeGraphTest
+{
+    private static final String SEIZURE = "HP:0001250";
+
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    private static final String DISORDER = "MIM:123456";
+
+    private static final double DELTA = 1e-9;
+
+    private JSONObject data;
+
+    private PedigreeGraph graph;
+
+    /**
+     * Three generations leading to a marriage between first cousins 7 and 8, whose child 9 is the proband. Member 10 is
+     * adopted into the family of 7, and 11 is a family member not drawn in the pedigree.
+     */
+    @Before
+    public void setUp()
+    {
+        JSONArray members = new JSONArray();
+        members.put(member(1, null, "M"));
+        members.put(member(2, null, "F"));
+        members.put(member(3, "P0000003", "M"));
+        members.put(member(4, null, "F"));
+        members.put(member(5, null, "F"));
+        members.put(member(6, null, "M"));
+        JSONObject seven = member(7, "P0000007", "M");
+        seven.getJSONObject("properties").put("features",
+            new JSONArray().put(new JSONObject().put("id", SEIZURE).put("observed", "yes")));
+        seven.put("pedigreeProperties", new JSONObject().put("carrierStatus", "affected"));
+        members.put(seven);
+        JSONObject eight = member(8, null, "F");
+        eight.getJSONObject("properties")
+            .put("features", new JSONArray()
+                .put(new JSONObject().put("id", SEIZURE).put("observed", "no"))
+                .put(new JSONObject().put("id", PHENOTYPIC_ABNORMALITY).put("observed", "yes")))
+            .put("disorders", new JSONArray().put(new JSONObject().put("id", DISORDER).put("label", "Disorder")));
+        eight.put("pedigreeProperties", new JSONObject().put("carrierStatus", "carrier"));
+        members.put(eight);
+        JSONObject nine = member(9, "P0000009", "U");
+        nine.put("pedigreeProperties", new JSONObject().put("carrierStatus", "affected"));
+        members.put(nine);
+        members.put(member(10, null, "F"));
+        members.put(member(11, "P0000011", "M").put("notInPedigree", true));
+
+        JSONArray relationships = new JSONArray();
+        relationships.put(relationship(100, 1, 2, child(3), child(4)));
+        relationships.put(relationship(101, 3, 5, child(7), child(10).put("adopted", "in")));
+        relationships.put(relationship(102, 6, 4, child(8)));
+        relationships.put(relationship(103, 7, 8, child(9)));
+
+        this.data = new JSONObject().put("proband", 9).put("members", members).put("relationships", relationships);
+        this.graph = new DefaultPedigreeGraph(this.data);
+    }
+
+    @Test
+    public void membersAreIndexed()
+    {
+        Assert.assertEquals(11, this.graph.getMembers().size());
+        Assert.assertEquals(7, this.graph.getMember(7).getNodeId());
+        Assert.assertNull(this.graph.getMember(42));
+        Assert.assertEquals(3, this.graph.getMemberByPatientId("P0000003").getNodeId());
+        Assert.assertNull(this.graph.getMemberByPatientId("P0000042"));
+        Assert.assertEquals(this.graph.getMember(9), this.graph.getProband());
+        Assert.assertTrue(this.graph.getProband().isProband());
+        Assert.assertFalse(this.graph.getMember(7).isProband());
+        Assert.assertEquals("U", this.graph.getProband().getSex());
+        Assert.assertFalse(this.graph.getMember(11).isInPedigree());
+        Assert.assertTrue(this.graph.getMember(10).isInPedigree());
+    }
+
+    @Test
+    public void structureQueries()
+    {
+        Assert.assertEquals(Arrays.asList(7, 8), nodeIds(this.graph.getParents(this.graph.getMember(9))));
+        Assert.assertEquals(Arrays.asList(3, 5), nodeIds(this.graph.getParents(this.graph.getMember(10))));
+        Assert.assertEquals(Collections.emptyList(), this.graph.getParents(this.graph.getMember(1)));
+        Assert.assertEquals(Arrays.asList(7, 10), nodeIds(this.graph.getChildren(this.graph.getMember(3))));
+        Assert.assertEquals(Arrays.asList(8), nodeIds(this.graph.getPartners(this.graph.getMember(7))));
+        Assert.assertEquals(Arrays.asList(10), nodeIds(this.graph.getSiblings(this.graph.getMember(7))));
+        Assert.assertEquals(Arrays.asList(4), nodeIds(this.graph.getSiblings(this.graph.getMember(3))));
+        Assert.assertEquals(Collections.emptyList(), this.graph.getSiblings(this.graph.getMember(1)));
+        Assert.assertEquals(Collections.emptyList(), this.graph.getChildren(null));
+    }
+
+    @Test
+    public void generationsAreComputedFromTheStructure()
+    {
+        Assert.assertEquals(4, this.graph.getGenerationCount());
+        Assert.assertEquals(Arrays.asList(1, 2), nodeIds(this.graph.getGeneration(1)));
+        Assert.assertEquals(Arrays.asList(3, 4, 5, 6), nodeIds(this.graph.getGeneration(2)));
+        Assert.assertEquals(Arrays.asList(7, 8, 10), nodeIds(this.graph.getGeneration(3)));
+        Assert.assertEquals(Arrays.asList(9), nodeIds(this.graph.getGeneration(4)));
+        Assert.assertEquals(Collections.emptyList(), this.graph.getGeneration(5));
+        Assert.assertEquals(0, this.graph.getMember(11).getGeneration());
+    }
+
+    @Test
+    public void relatednessFollowsBiologicalLinks()
+    {
+        Assert.assertEquals(1, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(7)), DELTA);
+        Assert.assertEquals(0.5, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(3)), DELTA);
+        Assert.assertEquals(0.5, this.graph.getRelatedness(this.graph.getMember(3), this.graph.getMember(4)), DELTA);
+        Assert.assertEquals(0.25, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(1)), DELTA);
+        Assert.assertEquals(0.125, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(8)),
+            DELTA);
+        // The child of first cousins shares more than half of the alleles of each parent
+        Assert.assertEquals(0.5625, this.graph.getRelatedness(this.graph.getMember(9), this.graph.getMember(7)),
+            DELTA);
+        // Adopted children are not blood relatives
+        Assert.assertEquals(0, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(10)), DELTA);
+        Assert.assertEquals(0, this.graph.getRelatedness(this.graph.getMember(3), this.graph.getMember(5)), DELTA);
+        Assert.assertEquals(0, this.graph.getRelatedness(this.graph.getMember(7), this.graph.getMember(11)), DELTA);
+    }
+
+    @Test
+    public void relativesAreOrderedByDegree()
+    {
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        expected.put(3, 1);
+        expected.put(5, 1);
+        expected.put(9, 1);
+        Assert.assertEquals(expected, degrees(this.graph.getRelatives(this.graph.getMember(7), 1)));
+
+        expected.put(1, 2);
+        expected.put(2, 2);
+        expected.put(4, 2);
+        expected.put(8, 3);
+        Assert.assertEquals(expected, degrees(this.graph.getRelatives(this.graph.getMember(7), 3)));
+        Assert.assertEquals(new ArrayList<>(expected.keySet()),
+            nodeIds(new ArrayList<>(this.graph.getRelatives(this.graph.getMember(7), 3).keySet())));
+
+        Assert.assertTrue(this.graph.getRelatives(this.graph.getMember(10), 5).isEmpty());
+        Assert.assertTrue(this.graph.getRelatives(this.graph.getMember(7), 0).isEmpty());
+    }
+
+    @Test
+    public void affectedMembersAndTermsAreIndexed()
+    {
+        Assert.assertEquals(Arrays.asList(7, 9), nodeIds(this.graph.getAffectedMembers()));
+        Assert.assertEquals("carrier", this.graph.getMember(8).getCarrierStatus());
+        Assert.assertFalse(this.graph.getMember(8).isAffected());
+        Assert.assertEquals(Arrays.asList(7), nodeIds(this.graph.getMembersWithTerm(SEIZURE)));
+        Assert.assertEquals(Arrays.asList(8), nodeIds(this.graph.getMembersWithTerm(PHENOTYPIC_ABNORMALITY)));
+        Assert.assertEquals(Arrays.asList(8), nodeIds(this.graph.getMembersWithTerm(DISORDER)));
+        Assert.assertEquals(Collections.emptyList(), this.graph.getMembersWithTerm("HP:0000001"));
+    }
+
+    @Test
+    public void consanguinityIsDetectedFromCommonAncestors()
+    {
+        Assert.assertTrue(this.graph.isConsanguineous(this.graph.getMember(7), this.graph.getMember(8)));
+        Assert.assertFalse(this.graph.isConsanguineous(this.graph.getMember(3), this.graph.getMember(5)));
+        Assert.assertTrue(this.graph.hasConsanguinity());
+    }
+
+    @Test
+    public void explicitConsanguinityTakesPrecedence()
+    {
+        this.data.getJSONArray("relationships").getJSONObject(3)
+            .put("properties", new JSONObject().put("consanguinity", "no"));
+        this.data.getJSONArray("relationships").getJSONObject(1)
+            .put("properties", new JSONObject().put("consanguinity", "yes"));
+        PedigreeGraph explicit = new DefaultPedigreeGraph(this.data);
+
+        Assert.assertFalse(explicit.isConsanguineous(explicit.getMember(7), explicit.getMember(8)));
+        Assert.assertTrue(explicit.isConsanguineous(explicit.getMember(3), explicit.getMember(5)));
+        Assert.assertTrue(explicit.hasConsanguinity());
+
+        this.data.getJSONArray("relationships").getJSONObject(1).remove("properties");
+        Assert.assertFalse(new DefaultPedigreeGraph(this.data).hasConsanguinity());
+    }
+
+    @Test
+    public void toJSONListsMembersWithTheirLinks()
+    {
+        JSONObject json = this.graph.toJSON();
+        Assert.assertEquals(9, json.getInt("proband"));
+        Assert.assertEquals(4, json.getInt("generations"));
+        Assert.assertTrue(json.getBoolean("consanguinity"));
+        JSONArray membersJSON = json.getJSONArray("members");
+        Assert.assertEquals(11, membersJSON.length());
+        JSONObject nine = membersJSON.getJSONObject(8);
+        Assert.assertEquals(9, nine.getInt("nodeId"));
+        Assert.assertEquals("P0000009", nine.getString("patientId"));
+        Assert.assertTrue(nine.getBoolean("affected"));
+        Assert.assertEquals(4, nine.getInt("generation"));
+        Assert.assertEquals("[7,8]", nine.getJSONArray("parents").toString());
+        Assert.assertEquals("[]", nine.getJSONArray("children").toString());
+        Assert.assertEquals("[9]", membersJSON.getJSONObject(6).getJSONArray("children").toString());
+        Assert.assertEquals("[8]", membersJSON.getJSONObject(6).getJSONArray("partners").toString());
+        Assert.assertEquals("[\"" + SEIZURE + "\"]", membersJSON.getJSONObject(6).getJSONArray("terms").toString());
+    }
+
+    @Test
+    public void malformedDataIsTolerated()
+    {
+        PedigreeGraph empty = new DefaultPedigreeGraph(new JSONObject());
+        Assert.assertTrue(empty.getMembers().isEmpty());
+        Assert.assertNull(empty.getProband());
+        Assert.assertEquals(0, empty.getGenerationCount());
+        Assert.assertFalse(empty.hasConsanguinity());
+
+        JSONObject partial = new JSONObject().put("members", new JSONArray().put(member(1, null, "F")).put("x"))
+            .put("relationships", new JSONArray()
+                .put(new JSONObject().put("members", new JSONArray().put(1).put(42)).put("children",
+                    new JSONArray().put(child(1))))
+                .put(new JSONObject().put("members", new JSONArray()).put("children", new JSONArray().put(child(7)))));
+        PedigreeGraph graphWithErrors = new DefaultPedigreeGraph(partial);
+        Assert.assertEquals(1, graphWithErrors.getMembers().size());
+        Assert.assertEquals(1, graphWithErrors.getGenerationCount());
+        Assert.assertTrue(graphWithErrors.getRelatives(graphWithErrors.getMember(1), 3).isEmpty());
+    }
+
+    private JSONObject member(int id, String patientId, String sex)
+    {
+        JSONObject properties = new JSONObject().put("sex", sex);
+        if (patientId != null) {
+            properties.put("id", patientId);
+        }
+        return new JSONObject().put("id", id).put("properties", properties);
+    }
+
+    private JSONObject child(int id)
+    {
+        return new JSONObject().put("id", id);
+    }
+
+    private JSONObject relationship(int id, int partner1, int partner2, JSONObject... children)
+    {
+        JSONArray childrenJSON = new JSONArray();
+        for (JSONObject child : children) {
+            childrenJSON.put(child);
+        }
+        return new JSONObject().put("id", id).put("members", new JSONArray().put(partner1).put(partner2))
+            .put("children", childrenJSON);
+    }
+
+    private List<Integer> nodeIds(List<PedigreeMember> members)
+    {
+        List<Integer> result = new ArrayList<>();
+        for (PedigreeMember member : members) {
+            result.add(member.getNodeId());
+        }
+        return result;
+    }
+
+    private Map<Integer, Integer> degrees(Map<PedigreeMember, Integer> relatives)
+    {
+        Map<Integer, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<PedigreeMember, Integer> relative : relatives.entrySet()) {
+            result.put(relative.getKey().getNodeId(), relative.getValue());
+        }
+        return result;
+    }
+}
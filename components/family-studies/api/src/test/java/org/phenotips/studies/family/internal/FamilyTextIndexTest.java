@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link FamilyTextIndex}.
+ *
+ * @version $Id$
+ */
+public class FamilyTextIndexTest
+{
+    private FamilyTextIndex index;
+
+    @Before
+    public void setUp()
+    {
+        this.index = new FamilyTextIndex();
+        this.index.putFamily("FAM0000002", "Smith family", Arrays.asList("P0000003", "P0000004"));
+        this.index.putFamily("FAM0000001", "", Arrays.asList("P0000001", "P0000002"));
+        this.index.putFamily("FAM0000003", null, Collections.<String>emptyList());
+        this.index.putMember("P0000001", "NCH-123", "Jane Doe");
+        this.index.putMember("P0000002", null, "John Doe");
+        this.index.putMember("P0000003", "NCH-456", "Alice Smith");
+    }
+
+    @Test
+    public void familiesAreSortedByIdentifier()
+    {
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000002", "FAM0000003"),
+            new ArrayList<>(this.index.getFamilies().keySet()));
+        Assert.assertEquals(Collections.singletonList("FAM0000003"),
+            new ArrayList<>(this.index.getFamilies().tailMap("FAM0000002", false).keySet()));
+    }
+
+    @Test
+    public void shortQueriesUseTheirOwnPostings()
+    {
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000002", "FAM0000003"), candidates("fam"));
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), candidates("doe"));
+        Assert.assertEquals(Collections.singletonList("FAM0000002"), candidates("4"));
+        Assert.assertTrue(candidates("xyz").isEmpty());
+    }
+
+    @Test
+    public void longQueriesReturnAllMatchingFamilies()
+    {
+        Assert.assertTrue(candidates("nch-12").contains("FAM0000001"));
+        Assert.assertTrue(candidates("smith fam").contains("FAM0000002"));
+        Assert.assertTrue(candidates("p0000004").contains("FAM0000002"));
+        Assert.assertTrue(candidates("fam0000003").contains("FAM0000003"));
+        Assert.assertTrue(candidates("nonexistent").isEmpty());
+    }
+
+    @Test
+    public void queriesAreNormalized()
+    {
+        Assert.assertEquals("jane", FamilyTextIndex.normalize(" JaNe "));
+        Assert.assertEquals("", FamilyTextIndex.normalize(null));
+    }
+
+    @Test
+    public void updatedMembersAreReindexed()
+    {
+        Assert.assertTrue(this.index.putMember("P0000001", "NCH-789", "Jane Roe"));
+        Assert.assertFalse(candidates("jane roe").isEmpty());
+        Assert.assertTrue(candidates("nch-12").isEmpty());
+        Assert.assertEquals(Collections.singletonList("FAM0000001"), candidates("doe"));
+
+        Assert.assertFalse(this.index.putMember("P0000009", "NCH-999", "Unrelated"));
+        Assert.assertTrue(candidates("unr").isEmpty());
+    }
+
+    @Test
+    public void removedMembersAreNoLongerFound()
+    {
+        this.index.removeMember("P0000002");
+        Assert.assertTrue(candidates("john").isEmpty());
+        Assert.assertFalse(this.index.hasMember("P0000002"));
+        Assert.assertEquals(Collections.singletonList("P0000001"),
+            this.index.getFamilies().get("FAM0000001").memberIds);
+    }
+
+    @Test
+    public void membersMovedToAnotherFamilyLeaveTheOldFamily()
+    {
+        this.index.putFamily("FAM0000003", null, Collections.singletonList("P0000001"));
+        Assert.assertEquals(Collections.singletonList("P0000002"),
+            this.index.getFamilies().get("FAM0000001").memberIds);
+        Assert.assertEquals(Collections.singletonList("FAM0000003"), candidates("p0000001"));
+    }
+
+    @Test
+    public void removedFamiliesAreNoLongerFound()
+    {
+        this.index.removeFamily("FAM0000002");
+        this.index.removeFamily("FAM0000009");
+        Assert.assertTrue(candidates("smith").isEmpty());
+        Assert.assertFalse(this.index.hasMember("P0000003"));
+        Assert.assertEquals(Arrays.asList("FAM0000001", "FAM0000003"),
+            new ArrayList<>(this.index.getFamilies().keySet()));
+    }
+
+    private List<String> candidates(String query)
+    {
+        List<String> result = new ArrayList<>();
+        String q = FamilyTextIndex.normalize(query);
+        for (String id : this.index.getCandidates(q)) {
+            // Long queries may return false positives, which are filtered by the caller
+            FamilyTextIndex.FamilyEntry family = this.index.getFamilies().get(id);
+            boolean matches = family.matches(q);
+            for (String memberId : family.memberIds) {
+                FamilyTextIndex.MemberEntry member = this.index.getMember(memberId);
+                matches |= member == null ? FamilyTextIndex.normalize(memberId).contains(q) : member.matches(q, true);
+            }
+            if (matches) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link FamilyUpdateBatch}.
+ *
+ * @version $Id$
+ */
+public class FamilyUpdateBatchTest
+{
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private XWikiHibernateStore store;
+
+    @Mock
+    private Logger logger;
+
+    @Mock
+    private XWikiDocument familyDoc;
+
+    @Mock
+    private XWikiDocument patientDoc;
+
+    private DocumentReference userReference = new DocumentReference("xwiki", "XWiki", "padams");
+
+    @Before
+    public void setup() throws XWikiException
+    {
+        MockitoAnnotations.initMocks(this);
+
+        when(this.context.getWiki()).thenReturn(this.xwiki);
+        when(this.context.getUserReference()).thenReturn(this.userReference);
+        when(this.xwiki.getHibernateStore()).thenReturn(this.store);
+        when(this.store.beginTransaction(this.context)).thenReturn(true);
+
+        when(this.familyDoc.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "Families", "FAM01"));
+        when(this.patientDoc.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "data", "P01"));
+        when(this.familyDoc.isMetaDataDirty()).thenReturn(true);
+        when(this.patientDoc.isMetaDataDirty()).thenReturn(true);
+    }
+
+    @Test
+    public void eachDocumentIsSavedOnceInsideOneTransaction() throws XWikiException
+    {
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.patientDoc, "removed from family");
+        batch.add(this.familyDoc, "Updated family from saved pedigree");
+        batch.add(this.patientDoc, "added to family FAM01");
+        batch.commit();
+
+        verify(this.store).beginTransaction(this.context);
+        verify(this.xwiki).saveDocument(this.patientDoc, "removed from family; added to family FAM01", this.context);
+        verify(this.xwiki).saveDocument(this.familyDoc, "Updated family from saved pedigree", this.context);
+        verify(this.patientDoc).setAuthorReference(this.userReference);
+        verify(this.store).endTransaction(this.context, true);
+    }
+
+    @Test
+    public void documentsSavedAfterRegistrationAreNotSavedAgain() throws XWikiException
+    {
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.patientDoc, "added to family FAM01");
+        batch.add(this.familyDoc, "Updated family from saved pedigree");
+        // the patient document gets saved by someone else, e.g. while updating it from JSON
+        when(this.patientDoc.isMetaDataDirty()).thenReturn(false);
+        batch.commit();
+
+        verify(this.xwiki, never()).saveDocument(this.patientDoc, "added to family FAM01", this.context);
+        verify(this.xwiki).saveDocument(this.familyDoc, "Updated family from saved pedigree", this.context);
+    }
+
+    @Test
+    public void failedSaveRollsBackTheTransaction() throws XWikiException
+    {
+        doThrow(new XWikiException()).when(this.xwiki).saveDocument(this.familyDoc, "updated", this.context);
+
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.patientDoc, "added");
+        batch.add(this.familyDoc, "updated");
+        try {
+            batch.commit();
+            Assert.fail("Saving errors must be propagated");
+        } catch (XWikiException ex) {
+            // Expected
+        }
+
+        verify(this.store).endTransaction(this.context, false);
+        verify(this.store, never()).endTransaction(this.context, true);
+    }
+
+    @Test
+    public void rollbackAfterAnUnexpectedFailureEndsTheTransaction() throws XWikiException
+    {
+        doThrow(new IllegalStateException()).when(this.xwiki).saveDocument(this.familyDoc, "updated", this.context);
+
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.familyDoc, "updated");
+        try {
+            batch.commit();
+            Assert.fail("Unexpected errors must be propagated");
+        } catch (IllegalStateException ex) {
+            // Expected, the caller rolls back from a finally block
+            batch.rollback();
+        }
+
+        verify(this.store).endTransaction(this.context, false);
+        verify(this.store, never()).endTransaction(this.context, true);
+    }
+
+    @Test
+    public void rollbackAfterCommitDoesNothing() throws XWikiException
+    {
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.familyDoc, "updated");
+        batch.commit();
+        batch.rollback();
+
+        verify(this.store, times(1)).endTransaction(this.context, true);
+        verify(this.store, never()).endTransaction(this.context, false);
+    }
+
+    @Test
+    public void existingTransactionIsNotEnded() throws XWikiException
+    {
+        when(this.store.beginTransaction(this.context)).thenReturn(false);
+
+        FamilyUpdateBatch batch = new FamilyUpdateBatch(this.context, this.logger);
+        batch.add(this.familyDoc, "updated");
+        batch.commit();
+
+        verify(this.xwiki, times(1)).saveDocument(this.familyDoc, "updated", this.context);
+        verify(this.store, never()).endTransaction(this.context, true);
+    }
+}
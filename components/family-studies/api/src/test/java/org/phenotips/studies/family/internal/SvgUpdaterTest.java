@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link SvgUpdater}.
+ *
+ * @version $Id$
+ */
+public class SvgUpdaterTest
+{
+    private static final String SVG_START = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"800\" height=\"600\">";
+
+    private static final String SVG_END = "</svg>";
+
+    private static final String LINK_1 =
+        "<a xlink:href=\"/bin/data/P0000001\" pedigreeNodeID=\"1\"><text y=\"3\">P0000001</text></a>";
+
+    private static final String LINK_2 =
+        "<a xlink:href=\"/bin/data/P0000002\" pedigreeNodeID=\"2\"><text y=\"3\">P0000002</text></a>";
+
+    @Test
+    public void setSVGWidthReplacesOnlyRootWidth()
+    {
+        String svg = SVG_START + "<rect width=\"10\" stroke-width=\"1\"></rect>" + SVG_END;
+        Assert.assertEquals(SVG_START.replace("800", "1024") + "<rect width=\"10\" stroke-width=\"1\"></rect>"
+            + SVG_END, SvgUpdater.setSVGWidth(svg, 1024));
+    }
+
+    @Test
+    public void setSVGHeightIgnoresNonPositiveValues()
+    {
+        String svg = SVG_START + SVG_END;
+        Assert.assertSame(svg, SvgUpdater.setSVGHeight(svg, 0));
+        Assert.assertEquals(SVG_START.replace("600", "50") + SVG_END, SvgUpdater.setSVGHeight(svg, 50));
+        Assert.assertNull(SvgUpdater.setSVGHeight(null, 50));
+    }
+
+    @Test
+    public void removeLinkRemovesLinkAndShiftsLabelsOfTheSameNode()
+    {
+        String svg = SVG_START
+            + "<text x=\"1\" y=\"100\" pedigreeNodeID=\"1\">before</text>"
+            + LINK_1 + LINK_2
+            + "<text x=\"1\" y=\"120\" pedigreeNodeID=\"1\">after</text>"
+            + "<text x=\"1\" y=\"120\" pedigreeNodeID=\"2\">other</text>"
+            + SVG_END;
+        Assert.assertEquals(SVG_START
+            + "<text x=\"1\" y=\"78.0\" pedigreeNodeID=\"1\">before</text>"
+            + LINK_2
+            + "<text x=\"1\" y=\"98.0\" pedigreeNodeID=\"1\">after</text>"
+            + "<text x=\"1\" y=\"120\" pedigreeNodeID=\"2\">other</text>"
+            + SVG_END, SvgUpdater.removeLink(svg, "P0000001"));
+    }
+
+    @Test
+    public void removeLinkWithUnknownPatientLeavesSvgUnchanged()
+    {
+        String svg = SVG_START + LINK_1 + "<text y=\"120\" pedigreeNodeID=\"1\">label</text>" + SVG_END;
+        Assert.assertEquals(svg, SvgUpdater.removeLink(svg, "P0000003"));
+    }
+
+    @Test
+    public void setCurrentPatientStylesMarksProbandAndCurrentPatient()
+    {
+        String svg = SVG_START
+            + "<rect class=\"node-shape-1\" stroke-width=\"1\"></rect>"
+            + "<circle class=\"node-shape-2\" isProband=\"true\"></circle>"
+            + "<circle class=\"node-shape-3\" stroke-width=\"1\"></circle>"
+            + LINK_1 + SVG_END;
+        Assert.assertEquals(SVG_START
+            + "<rect class=\"node-shape-1\"  stroke-width=\"5.0\"></rect>"
+            + "<circle class=\"node-shape-2\" isProband=\"true\" stroke-width=\"2.0\"></circle>"
+            + "<circle class=\"node-shape-3\" ></circle>"
+            + LINK_1 + SVG_END, SvgUpdater.setCurrentPatientStylesInSvg(svg, "P0000001"));
+    }
+
+    @Test
+    public void getStyledSvgCombinesStylesAndDimensions()
+    {
+        String svg = SVG_START + "<rect class=\"node-shape-1\"></rect>" + LINK_1 + SVG_END;
+        String expected = SvgUpdater.setSVGHeight(
+            SvgUpdater.setSVGWidth(SvgUpdater.setCurrentPatientStylesInSvg(svg, "P0000001"), 300), 200);
+        Assert.assertEquals(expected, SvgUpdater.getStyledSvg(svg, "P0000001", 300, 200));
+        Assert.assertNull(SvgUpdater.getStyledSvg(null, "P0000001", 300, 200));
+    }
+
+    @Test
+    public void largePedigreesAreProcessedCorrectly()
+    {
+        for (int size = 10; size <= 10000; size *= 10) {
+            String svg = generatePedigree(size);
+            String updated = SvgUpdater.removeLink(svg, "P0000002");
+            Assert.assertFalse(updated.contains("/P0000002\""));
+            Assert.assertTrue(updated.contains("/P0000001\""));
+            Assert.assertTrue(updated.contains("y=\"80.0\" pedigreeNodeID=\"2\""));
+            Assert.assertEquals(svg.length() - LINK_2.length() + 1, updated.length());
+        }
+    }
+
+    private static String generatePedigree(int size)
+    {
+        StringBuilder result = new StringBuilder(SVG_START);
+        for (int i = 1; i <= size; ++i) {
+            result.append("<circle class=\"node-shape-").append(i).append("\" stroke-width=\"1\"></circle>");
+            result.append("<text y=\"102\" pedigreeNodeID=\"").append(i).append("\">Name</text>");
+            result.append(String.format("<a xlink:href=\"/bin/data/P%07d\" pedigreeNodeID=\"%d\">", i, i));
+            result.append(String.format("<text y=\"3\">P%07d</text></a>", i));
+        }
+        return result.append(SVG_END).toString();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.migrations;
+
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.hibernate.AbstractHibernateDataMigration;
+
+/**
+ * Base class for data migrations that rewrite documents independently of each other. Instead of processing all the
+ * documents in one long transaction, the list of documents is split into chunks, each chunk is migrated in its own
+ * transaction by a bounded pool of workers, and completed chunks are recorded in a {@link MigrationCheckpoint
+ * checkpoint}. If the migration fails or the server is stopped midway, the next run only processes the remaining
+ * documents.
+ * <p>
+ * Since a chunk that was committed but not yet recorded in the checkpoint will be migrated again,
+ * {@link #migrateDocument(String, Session, XWikiContext)} must be idempotent: a document that was already migrated
+ * must be left unchanged.
+ * </p>
+ * <p>
+ * The chunk size and the number of workers can be configured in {@code xwiki.properties} with
+ * {@code phenotips.migrations.chunkSize} and {@code phenotips.migrations.workers}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public abstract class AbstractChunkedDocumentDataMigration extends AbstractHibernateDataMigration
+    implements HibernateCallback<Object>
+{
+    private static final String CHUNK_SIZE_PROPERTY = "phenotips.migrations.chunkSize";
+
+    private static final String WORKERS_PROPERTY = "phenotips.migrations.workers";
+
+    private static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private static final int DEFAULT_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private static final int PERCENT = 100;
+
+    /** The keys under which the Hibernate store keeps the session and transaction of the current context. */
+    private static final String[] HIBERNATE_CONTEXT_KEYS = {"hibsession", "hibtransaction"};
+
+    /** Where the chunk size and the number of workers are configured. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Provides the location where checkpoints are stored. */
+    @Inject
+    private Environment environment;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger migrationLogger;
+
+    /**
+     * Lists the documents that must be migrated.
+     *
+     * @param session the Hibernate session to use for querying
+     * @return the names of the documents to migrate; the order must be stable across runs
+     * @throws HibernateException if querying the database fails
+     * @throws XWikiException if querying the database fails
+     */
+    protected abstract List<String> getDocumentsToMigrate(Session session) throws HibernateException, XWikiException;
+
+    /**
+     * Migrates one document. Errors specific to this document should be handled and logged here; an exception thrown
+     * by this method rolls back the whole chunk, which will be retried the next time the migration runs.
+     *
+     * @param documentName the name of the document to migrate, as returned by {@link #getDocumentsToMigrate(Session)}
+     * @param session the Hibernate session of the current chunk
+     * @param context the XWiki context to use
+     * @throws HibernateException if accessing the database fails
+     * @throws XWikiException if accessing the database fails
+     */
+    protected abstract void migrateDocument(String documentName, Session session, XWikiContext context)
+        throws HibernateException, XWikiException;
+
+    @Override
+    protected void hibernateMigrate() throws DataMigrationException, XWikiException
+    {
+        XWikiContext context = getXWikiContext();
+        List<String> documents = getStore().executeRead(context, this::getDocumentsToMigrate);
+        MigrationCheckpoint checkpoint = loadCheckpoint(context);
+
+        List<List<String>> chunks = new ArrayList<>();
+        int chunkSize = Math.max(1, this.configuration.getProperty(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE));
+        List<String> chunk = new ArrayList<>(chunkSize);
+        int remaining = 0;
+        for (String document : documents) {
+            if (checkpoint.isCompleted(document)) {
+                continue;
+            }
+            chunk.add(document);
+            ++remaining;
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        this.migrationLogger.info("[{}] Migrating {} documents in {} chunks, {} already migrated", getName(),
+            remaining, chunks.size(), documents.size() - remaining);
+
+        int failed = migrateChunks(chunks, remaining, checkpoint, context);
+        if (failed > 0) {
+            throw new DataMigrationException(String.format("%d of %d chunks failed to migrate; the migration will"
+                + " resume with the failed chunks the next time it runs", failed, chunks.size()));
+        }
+        try {
+            checkpoint.delete();
+        } catch (IOException ex) {
+            this.migrationLogger.warn("[{}] Failed to delete the migration checkpoint: {}", getName(),
+                ex.getMessage());
+        }
+    }
+
+    /**
+     * Migrates all the documents serially, in the provided session, without any checkpoints.
+     *
+     * @param session the Hibernate session to use
+     * @return {@code null}
+     * @throws HibernateException if accessing the database fails
+     * @throws XWikiException if accessing the database fails
+     */
+    @Override
+    public Object doInHibernate(Session session) throws HibernateException, XWikiException
+    {
+        XWikiContext context = getXWikiContext();
+        for (String documentName : getDocumentsToMigrate(session)) {
+            migrateDocument(documentName, session, context);
+        }
+        return null;
+    }
+
+    private int migrateChunks(List<List<String>> chunks, int total, MigrationCheckpoint checkpoint,
+        XWikiContext context)
+    {
+        AtomicInteger done = new AtomicInteger();
+        int failed = 0;
+        int workers = Math.min(chunks.size(),
+            Math.max(1, this.configuration.getProperty(WORKERS_PROPERTY, DEFAULT_WORKERS)));
+        if (workers <= 1) {
+            // No need for extra threads, run in the current context
+            for (List<String> chunk : chunks) {
+                if (!migrateChunk(chunk, checkpoint, context)) {
+                    ++failed;
+                }
+                reportProgress(done.addAndGet(chunk.size()), total);
+            }
+            return failed;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            CompletionService<Boolean> completion = new ExecutorCompletionService<>(pool);
+            for (List<String> chunk : chunks) {
+                // Each worker gets its own context, so that it uses its own Hibernate session and transaction
+                XWikiContext workerContext = context.clone();
+                for (String key : HIBERNATE_CONTEXT_KEYS) {
+                    workerContext.remove(key);
+                }
+                completion.submit(() -> {
+                    try {
+                        return migrateChunkInWorker(chunk, checkpoint, workerContext);
+                    } finally {
+                        done.addAndGet(chunk.size());
+                    }
+                });
+            }
+            for (int i = 0; i < chunks.size(); ++i) {
+                if (!completion.take().get()) {
+                    ++failed;
+                }
+                reportProgress(done.get(), total);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.migrationLogger.warn("[{}] Interrupted while waiting for the migration to finish", getName());
+            return chunks.size();
+        } catch (ExecutionException ex) {
+            // Shouldn't happen, migrateChunk catches all exceptions
+            this.migrationLogger.error("[{}] Unexpected migration failure: {}", getName(), ex.getMessage(), ex);
+            return chunks.size();
+        } finally {
+            pool.shutdownNow();
+        }
+        return failed;
+    }
+
+    private boolean migrateChunkInWorker(List<String> chunk, MigrationCheckpoint checkpoint,
+        XWikiContext workerContext)
+    {
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, workerContext);
+        this.execution.setContext(executionContext);
+        try {
+            return migrateChunk(chunk, checkpoint, workerContext);
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+
+    private boolean migrateChunk(List<String> chunk, MigrationCheckpoint checkpoint, XWikiContext context)
+    {
+        try {
+            getStore().executeWrite(context, session -> {
+                for (String documentName : chunk) {
+                    migrateDocument(documentName, session, context);
+                }
+                return null;
+            });
+        } catch (Exception ex) {
+            this.migrationLogger.error("[{}] Failed to migrate the chunk starting with [{}]: {}", getName(),
+                chunk.get(0), ex.getMessage(), ex);
+            return false;
+        }
+        try {
+            checkpoint.markCompleted(chunk);
+        } catch (IOException ex) {
+            // The chunk is migrated, it will just be migrated again if the migration doesn't finish
+            this.migrationLogger.warn("[{}] Failed to record migration progress: {}", getName(), ex.getMessage());
+        }
+        return true;
+    }
+
+    private void reportProgress(int done, int total)
+    {
+        this.migrationLogger.info("[{}] Migrated {} of {} documents ({}%)", getName(), done, total,
+            total == 0 ? PERCENT : (long) done * PERCENT / total);
+    }
+
+    private MigrationCheckpoint loadCheckpoint(XWikiContext context)
+    {
+        File file = null;
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        if (permanentDirectory != null) {
+            file = new File(permanentDirectory,
+                "migrations/" + context.getWikiId() + '-' + getVersion() + ".checkpoint");
+        }
+        try {
+            return MigrationCheckpoint.load(file);
+        } catch (IOException ex) {
+            this.migrationLogger.warn("[{}] Failed to read the migration checkpoint, starting from the beginning: {}",
+                getName(), ex.getMessage());
+            return MigrationCheckpoint.empty(file);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.migrations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persistent record of the documents already processed by a {@link AbstractChunkedDocumentDataMigration chunked
+ * migration}, allowing an interrupted migration to resume where it stopped. The names of the documents in each
+ * completed chunk are appended to a file, one per line, and the file is synced to disk before the chunk is considered
+ * done. A line left incomplete by a crash is ignored when the checkpoint is read back.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class MigrationCheckpoint
+{
+    private static final char SEPARATOR = '\n';
+
+    /** The file backing this checkpoint, {@code null} if the checkpoint only lives in memory. */
+    private final File file;
+
+    private final Set<String> completed;
+
+    private MigrationCheckpoint(File file, Set<String> completed)
+    {
+        this.file = file;
+        this.completed = completed;
+    }
+
+    /**
+     * Reads the checkpoint stored in a file, if any.
+     *
+     * @param file the file backing the checkpoint, may be {@code null} for a checkpoint that isn't persisted
+     * @return the loaded checkpoint, empty if the file doesn't exist yet
+     * @throws IOException if the file exists but cannot be read
+     */
+    static MigrationCheckpoint load(File file) throws IOException
+    {
+        Set<String> completed = new HashSet<>();
+        if (file != null && file.isFile()) {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int start = 0;
+            for (int end = content.indexOf(SEPARATOR); end >= 0; end = content.indexOf(SEPARATOR, start)) {
+                if (end > start) {
+                    completed.add(content.substring(start, end));
+                }
+                start = end + 1;
+            }
+        }
+        return new MigrationCheckpoint(file, completed);
+    }
+
+    /**
+     * Creates a new checkpoint, ignoring any previous content of its file.
+     *
+     * @param file the file backing the checkpoint, may be {@code null} for a checkpoint that isn't persisted
+     * @return an empty checkpoint
+     */
+    static MigrationCheckpoint empty(File file)
+    {
+        return new MigrationCheckpoint(file, new HashSet<String>());
+    }
+
+    /**
+     * Checks if a document was already processed.
+     *
+     * @param documentName the name of the document to check
+     * @return {@code true} if the document was part of a completed chunk
+     */
+    synchronized boolean isCompleted(String documentName)
+    {
+        return this.completed.contains(documentName);
+    }
+
+    /**
+     * The number of documents already processed.
+     *
+     * @return a positive number, or {@code 0} if nothing was processed yet
+     */
+    synchronized int size()
+    {
+        return this.completed.size();
+    }
+
+    /**
+     * Records a chunk as completed, and makes sure the record reaches the disk.
+     *
+     * @param documentNames the names of the documents in the chunk
+     * @throws IOException if writing to the checkpoint file fails
+     */
+    synchronized void markCompleted(Collection<String> documentNames) throws IOException
+    {
+        this.completed.addAll(documentNames);
+        if (this.file == null) {
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        for (String documentName : documentNames) {
+            out.append(documentName).append(SEPARATOR);
+        }
+        this.file.getParentFile().mkdirs();
+        try (FileOutputStream stream = new FileOutputStream(this.file, true)) {
+            stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Discards the checkpoint, once the migration has completed successfully.
+     *
+     * @throws IOException if the checkpoint file cannot be deleted
+     */
+    synchronized void delete() throws IOException
+    {
+        this.completed.clear();
+        if (this.file != null) {
+            Files.deleteIfExists(this.file.toPath());
+        }
+    }
+}
@@ -50,11 +50,9 @@
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
-import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.store.migration.DataMigrationException;
 import com.xpn.xwiki.store.migration.XWikiDBVersion;
-import com.xpn.xwiki.store.migration.hibernate.AbstractHibernateDataMigration;
 
 /**
  * Migration for PhenoTips issue PT-3292: linking existing cancers to their OncoTree identifiers.
@@ -65,8 +63,7 @@
 @Component
 @Named("R71506-PT-3292")
 @Singleton
-public class R71506PhenoTips3292DataMigration extends AbstractHibernateDataMigration
-    implements HibernateCallback<Object>
+public class R71506PhenoTips3292DataMigration extends AbstractChunkedDocumentDataMigration
 {
     /** Pedigree XClass that holds pedigree data (image, structure, etc). */
     private static final EntityReference PEDIGREE_CLASS_REFERENCE =
@@ -119,22 +116,24 @@ public class R71506PhenoTips3292DataMigration extends AbstractHibernateDataMigra
     private Logger logger;
 
     @Override
-    public Object doInHibernate(final Session session) throws HibernateException, XWikiException
+    protected List<String> getDocumentsToMigrate(final Session session) throws HibernateException, XWikiException
     {
         // Select all families.
         final Query query = session.createQuery("select distinct o.name from BaseObject o where o.className= '"
-            + this.serializer.serialize(PEDIGREE_CLASS_REFERENCE) + "' and o.name <> 'PhenoTips.FamilyTemplate'");
+            + this.serializer.serialize(PEDIGREE_CLASS_REFERENCE) + "' and o.name <> 'PhenoTips.FamilyTemplate'"
+            + " order by o.name");
 
         @SuppressWarnings("unchecked")
         List<String> docs = query.list();
 
         this.logger.debug("Found {} documents", docs.size());
+        return docs;
+    }
 
-        final XWikiContext context = getXWikiContext();
-        final XWiki xwiki = context.getWiki();
-        // Migrate each family.
-        docs.forEach(docName -> migrateFamily(docName, session, context, xwiki));
-        return null;
+    @Override
+    protected void migrateDocument(final String docName, final Session session, final XWikiContext context)
+    {
+        migrateFamily(docName, session, context, context.getWiki());
     }
 
     /**
@@ -366,12 +365,6 @@ private void collectIntoJSONArray(
         }
     }
 
-    @Override
-    protected void hibernateMigrate() throws DataMigrationException, XWikiException
-    {
-        getStore().executeWrite(getXWikiContext(), this);
-    }
-
     @Override
     public String getDescription()
     {
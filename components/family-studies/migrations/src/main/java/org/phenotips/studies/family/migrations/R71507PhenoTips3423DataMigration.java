@@ -49,11 +49,9 @@
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
-import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.store.migration.DataMigrationException;
 import com.xpn.xwiki.store.migration.XWikiDBVersion;
-import com.xpn.xwiki.store.migration.hibernate.AbstractHibernateDataMigration;
 
 /**
  * Migrate from old internal pedigree format to the new.
@@ -66,8 +64,7 @@
 @Component
 @Named("R71507-PT-3423")
 @Singleton
-public class R71507PhenoTips3423DataMigration extends AbstractHibernateDataMigration implements
-    HibernateCallback<Object>
+public class R71507PhenoTips3423DataMigration extends AbstractChunkedDocumentDataMigration
 {
     /**
      * Pedigree XClass that holds pedigree data (image, structure, etc).
@@ -152,75 +149,69 @@ public XWikiDBVersion getVersion()
     }
 
     @Override
-    public void hibernateMigrate() throws DataMigrationException, XWikiException
+    protected List<String> getDocumentsToMigrate(Session session) throws HibernateException, XWikiException
     {
-        getStore().executeWrite(getXWikiContext(), this);
-    }
-
-    @Override
-    public Object doInHibernate(Session session) throws HibernateException, XWikiException
-    {
-        XWikiContext context = getXWikiContext();
-        XWiki xwiki = context.getWiki();
-
         // Select all families
         Query q = session.createQuery("select distinct o.name from BaseObject o where o.className = '"
             + this.serializer.serialize(PEDIGREE_CLASS_REFERENCE)
-            + "' and o.name <> 'PhenoTips.FamilyTemplate'");
+            + "' and o.name <> 'PhenoTips.FamilyTemplate' order by o.name");
 
         @SuppressWarnings("unchecked")
         List<String> docs = q.list();
 
         this.logger.debug("Found {} documents", docs.size());
+        return docs;
+    }
 
-        for (String docName : docs) {
-            XWikiDocument xDocument;
-            BaseObject pedigreeXObject;
-
-            try {
-                xDocument = xwiki.getDocument(this.resolver.resolve(docName), context);
-                if (xDocument == null) {
-                    continue;
-                }
+    @Override
+    protected void migrateDocument(String docName, Session session, XWikiContext context)
+        throws HibernateException, XWikiException
+    {
+        XWiki xwiki = context.getWiki();
+        XWikiDocument xDocument;
+        BaseObject pedigreeXObject;
 
-                pedigreeXObject = xDocument.getXObject(PEDIGREE_CLASS_REFERENCE);
-                if (pedigreeXObject == null) {
-                    continue;
-                }
-            } catch (Exception e) {
-                this.logger.error("Error checking pedigree data for document {}: [{}]",
-                        docName, e.getMessage());
-                continue;
+        try {
+            xDocument = xwiki.getDocument(this.resolver.resolve(docName), context);
+            if (xDocument == null) {
+                return;
             }
 
-            try {
-                this.logger.debug("Updating pedigree for document {}.", docName);
-
-                if (!this.updatePedigree(pedigreeXObject, context, docName)) {
-                    continue;
-                }
+            pedigreeXObject = xDocument.getXObject(PEDIGREE_CLASS_REFERENCE);
+            if (pedigreeXObject == null) {
+                return;
+            }
+        } catch (Exception e) {
+            this.logger.error("Error checking pedigree data for document {}: [{}]",
+                    docName, e.getMessage());
+            return;
+        }
 
-                xDocument.setComment(this.getDescription());
-                xDocument.setMinorEdit(true);
+        try {
+            this.logger.debug("Updating pedigree for document {}.", docName);
 
-            } catch (Exception e) {
-                this.logger.error("Error updating pedigree data format for document {}: [{}]",
-                        docName, e.getMessage());
-                continue;
+            if (!this.updatePedigree(pedigreeXObject, context, docName)) {
+                return;
             }
 
-            try {
-                // There's a bug in XWiki which prevents saving an object in the same session that it was loaded,
-                // so we must clear the session cache first.
-                session.clear();
-                ((XWikiHibernateStore) getStore()).saveXWikiDoc(xDocument, context, false);
-                session.flush();
-            } catch (DataMigrationException e) {
-                this.logger.error("Error when saving XWiki document {}: [{}]", docName, e.getMessage());
-            }
+            xDocument.setComment(this.getDescription());
+            xDocument.setMinorEdit(true);
+
+        } catch (Exception e) {
+            this.logger.error("Error updating pedigree data format for document {}: [{}]",
+                    docName, e.getMessage());
+            return;
+        }
 
+        try {
+            // There's a bug in XWiki which prevents saving an object in the same session that it was loaded,
+            // so we must clear the session cache first.
+            session.clear();
+            ((XWikiHibernateStore) getStore()).saveXWikiDoc(xDocument, context, false);
+            session.flush();
+        } catch (DataMigrationException e) {
+            this.logger.error("Error when saving XWiki document {}: [{}]", docName, e.getMessage());
         }
-        return null;
     }
 
     // used to store data about a (potentially multi-generation) path (in a graph sense)
@@ -265,29 +256,38 @@ private boolean updatePedigree(BaseObject pedigreeXObject, XWikiContext context,
     {
         String oldPedigreeAsText = pedigreeXObject.getStringValue(PEDIGREECLASS_JSONDATA_KEY);
         if (!StringUtils.isEmpty(oldPedigreeAsText)) {
+            JSONObject oldPedigree = new JSONObject(oldPedigreeAsText);
 
-            if (pedigreeIsInSimpleJSONFormat(oldPedigreeAsText)) {
+            if (pedigreeIsInSimpleJSONFormat(oldPedigree)) {
                 this.logger.warn("Skipping conversion for family [{}] - pedigree is in SimpleJSON format", docName);
                 return false;
             }
 
-            String convertedPedigree = this.convertPedigreeData(oldPedigreeAsText);
+            // The migration may be resumed after an interruption, don't convert the same pedigree twice
+            if (pedigreeIsInNewFormat(oldPedigree)) {
+                this.logger.debug("Skipping conversion for family [{}] - pedigree is already converted", docName);
+                return false;
+            }
+
+            String convertedPedigree = this.convertPedigreeData(oldPedigree);
             pedigreeXObject.set(PEDIGREECLASS_JSONDATA_KEY, convertedPedigree, context);
             return true;
         }
         return false;
     }
 
-    private boolean pedigreeIsInSimpleJSONFormat(String pedigreeAsText)
+    private boolean pedigreeIsInSimpleJSONFormat(JSONObject pedigreeJSON)
     {
-        JSONObject pedigreeJSON = new JSONObject(pedigreeAsText);
         return (pedigreeJSON.optJSONArray(SIMPLE_JSON_DATA_KEY) != null);
     }
 
-    private String convertPedigreeData(String oldFormatData)
+    private boolean pedigreeIsInNewFormat(JSONObject pedigreeJSON)
     {
-        JSONObject oldPedigreeData = new JSONObject(oldFormatData);
+        return !pedigreeJSON.has(OLD_PEDIGREE_GRAPH_KEY) && pedigreeJSON.optJSONArray(PEDIGREE_MEMBERS_KEY) != null;
+    }
 
+    private String convertPedigreeData(JSONObject oldPedigreeData)
+    {
         this.logger.debug("Old pedigree: [{}]", oldPedigreeData.toString());
 
         // create a sceleton JSON with all data structures present but blank
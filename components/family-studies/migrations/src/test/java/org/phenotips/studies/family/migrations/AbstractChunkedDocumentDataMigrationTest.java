@@ -0,0 +1,270 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.migrations;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.hibernate.Session;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.XWikiDBVersion;
+import com.xpn.xwiki.store.migration.hibernate.HibernateDataMigration;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link AbstractChunkedDocumentDataMigration} base class.
+ *
+ * @version $Id$
+ */
+public class AbstractChunkedDocumentDataMigrationTest
+{
+    private static final String CHUNK_SIZE = "phenotips.migrations.chunkSize";
+
+    private static final String WORKERS = "phenotips.migrations.workers";
+
+    @Rule
+    public MockitoComponentMockingRule<HibernateDataMigration> mocker =
+        new MockitoComponentMockingRule<>(ChunkedMigration.class, HibernateDataMigration.class, "R1-chunked");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ChunkedMigration component;
+
+    private XWikiContext context;
+
+    private ConfigurationSource configuration;
+
+    private Execution execution;
+
+    private Session session = mock(Session.class);
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        this.mocker.registerMockComponent(ComponentManager.class);
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class);
+        XWikiHibernateStore store = mock(XWikiHibernateStore.class);
+        when(componentManager.getInstance(XWikiStoreInterface.class, "hibernate")).thenReturn(store);
+        when(store.executeRead(any(XWikiContext.class), any(HibernateCallback.class))).thenAnswer(
+            invocation -> ((HibernateCallback<?>) invocation.getArguments()[1]).doInHibernate(this.session));
+        when(store.executeWrite(any(XWikiContext.class), any(HibernateCallback.class))).thenAnswer(
+            invocation -> ((HibernateCallback<?>) invocation.getArguments()[1]).doInHibernate(this.session));
+
+        this.component = (ChunkedMigration) this.mocker.getComponentUnderTest();
+
+        this.context = mock(XWikiContext.class);
+        when(this.context.getWikiId()).thenReturn("xwiki");
+        when(this.context.clone()).thenReturn(this.context);
+        this.execution = this.mocker.getInstance(Execution.class);
+        ExecutionContext executionContext = mock(ExecutionContext.class);
+        when(this.execution.getContext()).thenReturn(executionContext);
+        when(executionContext.getProperty(anyString())).thenReturn(this.context);
+
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.folder.getRoot());
+
+        this.configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(this.configuration.getProperty(eq(CHUNK_SIZE), any(Integer.class))).thenReturn(3);
+        when(this.configuration.getProperty(eq(WORKERS), any(Integer.class))).thenReturn(1);
+
+        for (int i = 1; i <= 10; ++i) {
+            this.component.documents.add("Families.FAM" + i);
+        }
+    }
+
+    @Test
+    public void allDocumentsAreMigratedOnce() throws Exception
+    {
+        this.component.hibernateMigrate();
+
+        Assert.assertEquals(10, this.component.migrated.size());
+        for (String document : this.component.documents) {
+            Assert.assertEquals(1, this.component.migrated.get(document).get());
+        }
+        // 4 chunks, each in its own transaction
+        verify(getStore(), times(4)).executeWrite(any(XWikiContext.class), any(HibernateCallback.class));
+        // The checkpoint is removed once the migration is done
+        Assert.assertFalse(getCheckpointFile().exists());
+    }
+
+    @Test
+    public void failedMigrationResumesWithTheRemainingChunks() throws Exception
+    {
+        this.component.failing.add("Families.FAM5");
+        try {
+            this.component.hibernateMigrate();
+            Assert.fail("A failed chunk must fail the migration");
+        } catch (DataMigrationException ex) {
+            // Expected
+        }
+        // The chunks before and after the failed one are still migrated and recorded
+        Assert.assertTrue(getCheckpointFile().exists());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM1").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM10").get());
+        Assert.assertNull(this.component.migrated.get("Families.FAM6"));
+
+        this.component.failing.clear();
+        this.component.hibernateMigrate();
+
+        // Only the failed chunk is migrated again
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM1").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM3").get());
+        Assert.assertEquals(2, this.component.migrated.get("Families.FAM4").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM5").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM6").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM7").get());
+        Assert.assertEquals(1, this.component.migrated.get("Families.FAM10").get());
+        Assert.assertFalse(getCheckpointFile().exists());
+    }
+
+    @Test
+    public void chunksAreMigratedByParallelWorkers() throws Exception
+    {
+        when(this.configuration.getProperty(eq(CHUNK_SIZE), any(Integer.class))).thenReturn(2);
+        when(this.configuration.getProperty(eq(WORKERS), any(Integer.class))).thenReturn(3);
+
+        this.component.hibernateMigrate();
+
+        Assert.assertEquals(10, this.component.migrated.size());
+        for (String document : this.component.documents) {
+            Assert.assertEquals(1, this.component.migrated.get(document).get());
+        }
+        // Each chunk gets its own context
+        verify(this.context, times(5)).clone();
+        verify(this.execution, times(5)).setContext(any(ExecutionContext.class));
+        verify(this.execution, times(5)).removeContext();
+        Assert.assertFalse(getCheckpointFile().exists());
+    }
+
+    @Test
+    public void failingWorkerDoesNotStopOtherWorkers() throws Exception
+    {
+        when(this.configuration.getProperty(eq(WORKERS), any(Integer.class))).thenReturn(2);
+        this.component.failing.add("Families.FAM1");
+        try {
+            this.component.hibernateMigrate();
+            Assert.fail("A failed chunk must fail the migration");
+        } catch (DataMigrationException ex) {
+            // Expected
+        }
+        Assert.assertNull(this.component.migrated.get("Families.FAM2"));
+        for (String document : Arrays.asList("Families.FAM4", "Families.FAM7", "Families.FAM10")) {
+            Assert.assertEquals(1, this.component.migrated.get(document).get());
+        }
+    }
+
+    @Test
+    public void serialMigrationDoesNotUseCheckpoints() throws Exception
+    {
+        this.component.doInHibernate(this.session);
+
+        Assert.assertEquals(10, this.component.migrated.size());
+        verify(getStore(), never()).executeWrite(any(XWikiContext.class), any(HibernateCallback.class));
+        verify(this.context, never()).getWikiId();
+    }
+
+    private XWikiHibernateStore getStore() throws Exception
+    {
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class);
+        return (XWikiHibernateStore) componentManager.getInstance(XWikiStoreInterface.class, "hibernate");
+    }
+
+    private File getCheckpointFile()
+    {
+        return new File(this.folder.getRoot(), "migrations/xwiki-1.checkpoint");
+    }
+
+    /** A migration that only counts how many times each document was migrated. */
+    @Component
+    @Named("R1-chunked")
+    @Singleton
+    public static class ChunkedMigration extends AbstractChunkedDocumentDataMigration
+    {
+        private final List<String> documents = new ArrayList<>();
+
+        private final Map<String, AtomicInteger> migrated = new ConcurrentHashMap<>();
+
+        private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String getDescription()
+        {
+            return "Test migration";
+        }
+
+        @Override
+        public XWikiDBVersion getVersion()
+        {
+            return new XWikiDBVersion(1);
+        }
+
+        @Override
+        protected List<String> getDocumentsToMigrate(Session session)
+        {
+            return this.documents;
+        }
+
+        @Override
+        protected void migrateDocument(String documentName, Session session, XWikiContext context)
+            throws XWikiException
+        {
+            if (this.failing.contains(documentName)) {
+                throw new XWikiException();
+            }
+            this.migrated.computeIfAbsent(documentName, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+}
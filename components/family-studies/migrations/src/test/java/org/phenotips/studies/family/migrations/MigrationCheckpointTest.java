@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.migrations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link MigrationCheckpoint} class.
+ *
+ * @version $Id$
+ */
+public class MigrationCheckpointTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void missingFileGivesEmptyCheckpoint() throws Exception
+    {
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(new File(this.folder.getRoot(), "none"));
+        Assert.assertEquals(0, checkpoint.size());
+        Assert.assertFalse(checkpoint.isCompleted("Families.FAM0000001"));
+    }
+
+    @Test
+    public void completedChunksSurviveReloading() throws Exception
+    {
+        File file = new File(this.folder.getRoot(), "migrations/xwiki-71507.checkpoint");
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(file);
+        checkpoint.markCompleted(Arrays.asList("Families.FAM0000001", "Families.FAM0000002"));
+        checkpoint.markCompleted(Collections.singletonList("Families.FAM0000003"));
+        Assert.assertTrue(checkpoint.isCompleted("Families.FAM0000002"));
+
+        MigrationCheckpoint reloaded = MigrationCheckpoint.load(file);
+        Assert.assertEquals(3, reloaded.size());
+        Assert.assertTrue(reloaded.isCompleted("Families.FAM0000001"));
+        Assert.assertTrue(reloaded.isCompleted("Families.FAM0000003"));
+        Assert.assertFalse(reloaded.isCompleted("Families.FAM0000004"));
+    }
+
+    @Test
+    public void incompleteLastLineIsIgnored() throws Exception
+    {
+        File file = this.folder.newFile("partial.checkpoint");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("Families.FAM0000001\nFamilies.FAM00".getBytes(StandardCharsets.UTF_8));
+        }
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(file);
+        Assert.assertEquals(1, checkpoint.size());
+        Assert.assertTrue(checkpoint.isCompleted("Families.FAM0000001"));
+        Assert.assertFalse(checkpoint.isCompleted("Families.FAM00"));
+    }
+
+    @Test
+    public void deleteRemovesFile() throws Exception
+    {
+        File file = new File(this.folder.getRoot(), "done.checkpoint");
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(file);
+        checkpoint.markCompleted(Collections.singletonList("Families.FAM0000001"));
+        Assert.assertTrue(file.exists());
+        checkpoint.delete();
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(0, MigrationCheckpoint.load(file).size());
+    }
+
+    @Test
+    public void checkpointWithoutFileOnlyLivesInMemory() throws Exception
+    {
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(null);
+        checkpoint.markCompleted(Collections.singletonList("Families.FAM0000001"));
+        Assert.assertTrue(checkpoint.isCompleted("Families.FAM0000001"));
+        checkpoint.delete();
+        Assert.assertEquals(0, checkpoint.size());
+    }
+}
@@ -346,6 +346,22 @@ public void doInHibernateDoesNothingWhenPedigreeIsInSimpleJSONFormat() throws XW
         verifyNoMoreInteractions(this.xwiki, this.xDocument1, this.pedigreeBaseObject1);
     }
 
+    @Test
+    public void doInHibernateDoesNothingWhenPedigreeIsAlreadyMigrated() throws XWikiException
+    {
+        when(this.query.list()).thenReturn(Collections.singletonList(FAMILY_1));
+        when(this.pedigreeBaseObject1.getStringValue(PEDIGREECLASS_JSONDATA_KEY))
+            .thenReturn(PEDIGREE_1_MIGRATED_DATA);
+
+        this.component.doInHibernate(this.session);
+
+        verify(this.xwiki, times(1)).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+        verify(this.xDocument1, times(1)).getXObject(any(EntityReference.class));
+        verify(this.pedigreeBaseObject1, times(1)).getStringValue(PEDIGREECLASS_JSONDATA_KEY);
+        verify(this.store, never()).saveXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class), eq(false));
+        verifyNoMoreInteractions(this.xwiki, this.xDocument1, this.pedigreeBaseObject1);
+    }
+
     @Test
     public void doInHibernateBehavesAsExpectedForSimplePedigree() throws XWikiException
     {
@@ -46,15 +46,24 @@
     Response addFamily(String json);
 
     /**
+     * Lists the families visible to the current user, sorted by their identifier. Pages can either be requested with
+     * {@code after}, the identifier of the last family in the previous page, which is returned as {@code next} in the
+     * response metadata, or with the {@code start} offset. Keyset paging with {@code after} is preferred, since it
+     * doesn't require checking access rights on all the preceding families; in this mode the total number of visible
+     * families is not computed.
+     *
      * @param start for large result set paging, the index of the first patient to display in the returned page
      * @param number for large result set paging, how many patients to display in the returned page
      * @param fullJSON when true, complete family JSON is returned. When false, only a subset of data needed for
      *            all-data-tables is returned.
+     * @param after for keyset paging, the identifier of the last family in the previous page; if specified,
+     *            {@code start} is ignored
      * @return a list of family records
      */
     @GET
     Response listFamilies(
         @QueryParam("start") @DefaultValue("0") Integer start,
         @QueryParam("number") @DefaultValue("30") Integer number,
-        @QueryParam("full_json") @DefaultValue("false") Boolean fullJSON);
+        @QueryParam("full_json") @DefaultValue("false") Boolean fullJSON,
+        @QueryParam("after") String after);
 }
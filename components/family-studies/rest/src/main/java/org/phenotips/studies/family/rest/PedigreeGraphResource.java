@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.rest;
+
+import org.xwiki.stability.Unstable;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for retrieving the typed pedigree graph of a family, identified by its internal PhenoTips identifier.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Path("/families/{entity-id}/pedigree")
+public interface PedigreeGraphResource
+{
+    /**
+     * Retrieve the pedigree of a family as a graph, listing each member with its generation, affected status, present
+     * terms, and the node identifiers of its parents, children and partners. If the indicated family record doesn't
+     * exist or doesn't have a pedigree, or if the user sending the request doesn't have the right to view the target
+     * family record, an error is returned.
+     *
+     * @param id the family's internal identifier, see {@link org.phenotips.studies.family.Family#getId()}
+     * @return the JSON representation of the pedigree graph, or a status message in case of error
+     */
+    @GET
+    Response getPedigreeGraph(@PathParam("entity-id") String id);
+}
@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.rest;
+
+import org.xwiki.stability.Unstable;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for listing the relatives of a member of a family pedigree.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Path("/families/{entity-id}/pedigree/relatives/{member-id}")
+public interface PedigreeRelativesResource
+{
+    /**
+     * Retrieve the blood relatives of a pedigree member, ordered by their degree of relationship. If the indicated
+     * family record doesn't exist or doesn't have a pedigree, if the member isn't in the pedigree, or if the user
+     * sending the request doesn't have the right to view the target family record, an error is returned.
+     *
+     * @param id the family's internal identifier, see {@link org.phenotips.studies.family.Family#getId()}
+     * @param memberId the identifier of the patient record linked to the member, or the member's pedigree node
+     *            identifier
+     * @param maxDegree the maximum degree of relationship to return, {@code 1} for parents, children and siblings
+     * @return the JSON representation of the member and its relatives, or a status message in case of error
+     */
+    @GET
+    Response getRelatives(@PathParam("entity-id") String id, @PathParam("member-id") String memberId,
+        @QueryParam("max_degree") @DefaultValue("1") int maxDegree);
+}
@@ -19,16 +19,17 @@
 
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyIndex;
+import org.phenotips.studies.family.FamilySummary;
 import org.phenotips.studies.family.FamilyTools;
 import org.phenotips.studies.family.rest.FamiliesResource;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.EntityType;
-import org.xwiki.model.reference.DocumentReference;
-import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.security.authorization.Right;
@@ -36,8 +37,11 @@
 import org.xwiki.users.UserManager;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -86,15 +90,13 @@ public class DefaultFamiliesResourceImpl extends XWikiResource implements Famili
     @Inject
     private FamilyTools familyTools;
 
-    /** Fills in missing reference fields with those from the current context document to create a full reference. */
     @Inject
-    @Named("current")
-    private EntityReferenceResolver<EntityReference> currentResolver;
+    private FamilyIndex familyIndex;
 
-    /** Parses string representations of document references into proper references. */
+    /** Fills in missing reference fields with those from the current context document to create a full reference. */
     @Inject
     @Named("current")
-    private DocumentReferenceResolver<String> stringResolver;
+    private EntityReferenceResolver<EntityReference> currentResolver;
 
     @Override
     public Response addFamily(String json)
@@ -132,56 +134,42 @@ public Response addFamily(String json)
     }
 
     @Override
-    public Response listFamilies(Integer start, Integer number, Boolean fullJSON)
+    public Response listFamilies(Integer start, Integer number, Boolean fullJSON, String after)
     {
-        this.logger.debug("Listing families via REST, start: {} number: {}, fullJSON: {}", start, number, fullJSON);
+        this.logger.debug("Listing families via REST, start: {} number: {}, fullJSON: {}, after: {}", start, number,
+            fullJSON, after);
         long startTime = System.nanoTime();
 
         try {
-            String safeOrderField = "doc.name";
-            String safeOrder = " asc";
-            Query query = this.queries.createQuery(
-                "select doc.name, family.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
-                    + " from Document doc, doc.object(PhenoTips.FamilyClass) as family where doc.name <> :t order by "
-                    + safeOrderField + safeOrder,
-                Query.XWQL);
-            query.bindValue("t", "FamilyTemplate");
+            JSONObject metadata = new JSONObject();
+            List<FamilySummary> page;
+            if (after != null) {
+                page = this.familyIndex.list(after, number, Right.VIEW);
+            } else {
+                // Offset paging must also report the total, so all the families are checked for access rights
+                List<FamilySummary> visible = this.familyIndex.list(null, Integer.MAX_VALUE, Right.VIEW);
+                int from = Math.min(Math.max(start, 0), visible.size());
+                int to = from + Math.min(Math.max(number, 0), visible.size() - from);
+                page = visible.subList(from, to);
+                metadata.put("totalVisibleFamilies", visible.size());
+            }
 
+            Map<String, Object[]> records = getSummaryData(page);
             JSONArray familyList = new JSONArray();
-
-            List<Object[]> records = query.execute();
-
-            User currentUser = this.users.getCurrentUser();
-
-            int total = 0;
-            int skipped = 0;
-
-            for (Object[] record : records) {
-
-                String familyID = (String) record[0];
-                this.logger.debug("REST: Found family: {}", familyID);
-
+            for (FamilySummary family : page) {
+                Object[] record = records.get(family.getId());
                 if (!validateSummaryObject(record)) {
-                    this.logger.debug("REST: Skipping family, misformatted data");
-                    continue;
-                }
-                if (!hasViewRights(familyID, currentUser)) {
-                    this.logger.debug("REST: Skipping family, no view rights for the user");
+                    this.logger.debug("REST: Skipping family [{}], misformatted data", family.getId());
                     continue;
                 }
-
-                total++;
-
-                // Since raw queries can't take into account access rights, we must do our own paging with rights checks
-                if (++skipped > start && familyList.length() < number) {
-                    this.addRecordToList(familyList, fullJSON, familyID, record);
-                }
+                this.addRecordToList(familyList, fullJSON, family.getId(), record);
             }
 
-            JSONObject metadata = new JSONObject();
-            metadata.put("totalVisibleFamilies", total);
             metadata.put("returnedFamilies", familyList.length());
             metadata.put("requestedPageSize", number);
+            if (!page.isEmpty() && page.size() >= number) {
+                metadata.put("next", page.get(page.size() - 1).getId());
+            }
 
             JSONObject response = new JSONObject();
             response.put(METADATA_FIELD_NAME, metadata);
@@ -196,6 +184,28 @@ public Response listFamilies(Integer start, Integer number, Boolean fullJSON)
         }
     }
 
+    /** Fetches the document metadata of the families in a page with a single query. */
+    private Map<String, Object[]> getSummaryData(List<FamilySummary> page) throws QueryException
+    {
+        Map<String, Object[]> result = new HashMap<>();
+        if (page.isEmpty()) {
+            return result;
+        }
+        List<String> names = new ArrayList<>(page.size());
+        for (FamilySummary family : page) {
+            names.add(family.getId());
+        }
+        Query query = this.queries.createQuery(
+            "select doc.name, family.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.FamilyClass) as family where doc.name in (:names)",
+            Query.XWQL);
+        query.bindValue("names", names);
+        for (Object[] record : query.<Object[]>execute()) {
+            result.put((String) record[0], record);
+        }
+        return result;
+    }
+
     private void addRecordToList(JSONArray familyList, Boolean fullJSON, String familyID, Object[] summaryData)
     {
         JSONObject familyJSON;
@@ -252,13 +262,4 @@ private boolean validateSummaryObject(Object[] summaryData)
         }
         return true;
     }
-
-    private boolean hasViewRights(String familyID, User currentUser)
-    {
-        DocumentReference doc = this.stringResolver.resolve(String.valueOf(familyID), Family.DATA_SPACE);
-        if (!this.access.hasAccess(currentUser, Right.VIEW, doc)) {
-            return false;
-        }
-        return true;
-    }
 }
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.rest.internal;
+
+import org.phenotips.rest.Autolinker;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+import org.phenotips.studies.family.rest.PedigreeGraphResource;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation for {@link PedigreeGraphResource} using XWiki's support for REST resources.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("org.phenotips.studies.family.rest.internal.DefaultPedigreeGraphResourceImpl")
+@Singleton
+public class DefaultPedigreeGraphResourceImpl extends XWikiResource implements PedigreeGraphResource
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private FamilyRepository repository;
+
+    @Inject
+    private AuthorizationService access;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    private PedigreeGraphManager graphs;
+
+    @Inject
+    private Provider<Autolinker> autolinker;
+
+    @Override
+    public Response getPedigreeGraph(String id)
+    {
+        Family family = this.repository.get(id);
+        if (family == null) {
+            this.logger.debug("No such family record: [{}]", id);
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        User currentUser = this.users.getCurrentUser();
+        if (!this.access.hasAccess(currentUser, Right.VIEW, family.getDocumentReference())) {
+            this.logger.debug("View access denied to user [{}] on family record [{}]", currentUser, id);
+            return Response.status(Status.FORBIDDEN).build();
+        }
+        PedigreeGraph graph = this.graphs.getGraph(family);
+        if (graph == null) {
+            this.logger.debug("Family record [{}] doesn't have a pedigree", id);
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        JSONObject json = graph.toJSON();
+        json.put("links", this.autolinker.get().forResource(getClass(), this.uriInfo).build());
+        return Response.ok(json, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+}
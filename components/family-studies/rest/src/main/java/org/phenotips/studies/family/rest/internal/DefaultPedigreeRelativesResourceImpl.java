@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.rest.internal;
+
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+import org.phenotips.studies.family.PedigreeMember;
+import org.phenotips.studies.family.rest.PedigreeRelativesResource;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation for {@link PedigreeRelativesResource} using XWiki's support for REST resources.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("org.phenotips.studies.family.rest.internal.DefaultPedigreeRelativesResourceImpl")
+@Singleton
+public class DefaultPedigreeRelativesResourceImpl extends XWikiResource implements PedigreeRelativesResource
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private FamilyRepository repository;
+
+    @Inject
+    private AuthorizationService access;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    private PedigreeGraphManager graphs;
+
+    @Override
+    public Response getRelatives(String id, String memberId, int maxDegree)
+    {
+        if (maxDegree < 1) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        Family family = this.repository.get(id);
+        if (family == null) {
+            this.logger.debug("No such family record: [{}]", id);
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        User currentUser = this.users.getCurrentUser();
+        if (!this.access.hasAccess(currentUser, Right.VIEW, family.getDocumentReference())) {
+            this.logger.debug("View access denied to user [{}] on family record [{}]", currentUser, id);
+            return Response.status(Status.FORBIDDEN).build();
+        }
+        PedigreeGraph graph = this.graphs.getGraph(family);
+        PedigreeMember member = graph == null ? null : findMember(graph, memberId);
+        if (member == null) {
+            this.logger.debug("No member [{}] in the pedigree of family [{}]", memberId, id);
+            return Response.status(Status.NOT_FOUND).build();
+        }
+
+        JSONArray relatives = new JSONArray();
+        for (Map.Entry<PedigreeMember, Integer> relative : graph.getRelatives(member, maxDegree).entrySet()) {
+            JSONObject relativeJSON = relative.getKey().toJSON();
+            relativeJSON.put("degree", relative.getValue());
+            relativeJSON.put("relatedness", graph.getRelatedness(member, relative.getKey()));
+            relatives.put(relativeJSON);
+        }
+        JSONObject json = new JSONObject();
+        json.put("member", member.toJSON());
+        json.put("relatives", relatives);
+        return Response.ok(json, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private PedigreeMember findMember(PedigreeGraph graph, String memberId)
+    {
+        PedigreeMember result = graph.getMemberByPatientId(memberId);
+        if (result == null && StringUtils.isNumeric(memberId) && memberId.length() < 10) {
+            result = graph.getMember(Integer.parseInt(memberId));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.rest.internal;
+
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+import org.phenotips.studies.family.PedigreeGraph;
+import org.phenotips.studies.family.PedigreeGraphManager;
+import org.phenotips.studies.family.internal.DefaultPedigreeGraph;
+import org.phenotips.studies.family.rest.PedigreeRelativesResource;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPedigreeRelativesResourceImpl} component.
+ */
+public class DefaultPedigreeRelativesResourceImplTest
+{
+    private static final String FAMILY_ID = "FAM00000001";
+
+    private static final String PATIENT_ID = "P0000001";
+
+    /** A child (1) with its parents (2, 3) and a grandfather (4). */
+    private static final String PEDIGREE = "{\"members\":[{\"id\":1,\"properties\":{\"id\":\"P0000001\"}},"
+        + "{\"id\":2},{\"id\":3},{\"id\":4}],\"relationships\":[{\"id\":5,\"members\":[2,3],\"children\":[{\"id\":1}]},"
+        + "{\"id\":6,\"members\":[4],\"children\":[{\"id\":2}]}]}";
+
+    @Rule
+    public MockitoComponentMockingRule<PedigreeRelativesResource> mocker =
+        new MockitoComponentMockingRule<>(DefaultPedigreeRelativesResourceImpl.class);
+
+    @Mock
+    private User currentUser;
+
+    @Mock
+    private Family family;
+
+    private DocumentReference familyReference = new DocumentReference("xwiki", "Families", FAMILY_ID);
+
+    private AuthorizationService access;
+
+    private PedigreeGraphManager graphs;
+
+    private PedigreeRelativesResource resource;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+
+        // This is needed for the XWikiResource initialization
+        Execution execution = mock(Execution.class);
+        ExecutionContext executionContext = mock(ExecutionContext.class);
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        doReturn(executionContext).when(execution).getContext();
+        doReturn(mock(XWikiContext.class)).when(executionContext).getProperty("xwikicontext");
+
+        this.resource = this.mocker.getComponentUnderTest();
+
+        final UserManager users = this.mocker.getInstance(UserManager.class);
+        doReturn(this.currentUser).when(users).getCurrentUser();
+
+        FamilyRepository repository = this.mocker.getInstance(FamilyRepository.class);
+        when(repository.get(FAMILY_ID)).thenReturn(this.family);
+        when(this.family.getDocumentReference()).thenReturn(this.familyReference);
+
+        this.access = this.mocker.getInstance(AuthorizationService.class);
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.familyReference)).thenReturn(true);
+
+        PedigreeGraph graph = new DefaultPedigreeGraph(new JSONObject(PEDIGREE));
+        this.graphs = this.mocker.getInstance(PedigreeGraphManager.class);
+        when(this.graphs.getGraph(this.family)).thenReturn(graph);
+    }
+
+    @Test
+    public void relativesAreListedByDegree()
+    {
+        Response response = this.resource.getRelatives(FAMILY_ID, PATIENT_ID, 2);
+
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        JSONObject json = (JSONObject) response.getEntity();
+        Assert.assertEquals(1, json.getJSONObject("member").getInt("nodeId"));
+        JSONArray relatives = json.getJSONArray("relatives");
+        Assert.assertEquals(3, relatives.length());
+        Assert.assertEquals(2, relatives.getJSONObject(0).getInt("nodeId"));
+        Assert.assertEquals(1, relatives.getJSONObject(0).getInt("degree"));
+        Assert.assertEquals(0.5, relatives.getJSONObject(0).getDouble("relatedness"), 0);
+        Assert.assertEquals(3, relatives.getJSONObject(1).getInt("nodeId"));
+        Assert.assertEquals(4, relatives.getJSONObject(2).getInt("nodeId"));
+        Assert.assertEquals(2, relatives.getJSONObject(2).getInt("degree"));
+    }
+
+    @Test
+    public void membersCanBeIdentifiedByNodeId()
+    {
+        Response response = this.resource.getRelatives(FAMILY_ID, "4", 1);
+
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        JSONArray relatives = ((JSONObject) response.getEntity()).getJSONArray("relatives");
+        Assert.assertEquals(1, relatives.length());
+        Assert.assertEquals(2, relatives.getJSONObject(0).getInt("nodeId"));
+    }
+
+    @Test
+    public void errorsAreReported()
+    {
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(),
+            this.resource.getRelatives(FAMILY_ID, PATIENT_ID, 0).getStatus());
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(),
+            this.resource.getRelatives("FAM00000002", PATIENT_ID, 1).getStatus());
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(),
+            this.resource.getRelatives(FAMILY_ID, "P0000002", 1).getStatus());
+
+        when(this.graphs.getGraph(this.family)).thenReturn(null);
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(),
+            this.resource.getRelatives(FAMILY_ID, PATIENT_ID, 1).getStatus());
+
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.familyReference)).thenReturn(false);
+        Assert.assertEquals(Status.FORBIDDEN.getStatusCode(),
+            this.resource.getRelatives(FAMILY_ID, PATIENT_ID, 1).getStatus());
+    }
+}
@@ -24,12 +24,17 @@
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -165,6 +170,12 @@ public class DefaultGenePanelImpl implements GenePanel
      * Builds a list of {@link TermsForGene} objects for a given set of {@link #getPresentTerms()}. The
      * {@link #getAbsentTerms()} are ignored in this version of {@link GenePanel}. Genes specified as
      * {@code absentGenes absent genes} are excluded from the returned list.
+     * <p>
+     * The {@code associated_genes} of an HPO term, which already include the genes annotated to any of its
+     * descendants, form a posting list from the phenotype to its genes. The posting lists of all the present terms are
+     * merged into a list of terms for each gene, and then all the distinct genes are resolved at once, with a single
+     * request to the gene vocabulary.
+     * </p>
      *
      * @param absentGenes genes that were tested negative
      * @param generateMatchCount iff true, generate a term to number of associated genes mapping
@@ -173,37 +184,81 @@ private void buildTermsForGeneList(@Nonnull final Collection<VocabularyTerm> abs
         boolean generateMatchCount)
     {
         final Set<String> geneExclusions = getAllExcludedGenes(absentGenes);
-        // A builder to add and update the count data for all the genes.
-        final TermsForGeneBuilder termsForGeneBuilder = new TermsForGeneBuilder(geneExclusions);
-        // Update the data for all HPO identifiers.
-        if (generateMatchCount) {
-            final MatchCountBuilder matchCountBuilder = new MatchCountBuilder();
-            getPresentTerms().forEach(
-                term -> addMatchCountsAndTermsForGene(term, geneExclusions, termsForGeneBuilder, matchCountBuilder));
+        final MatchCountBuilder matchCountBuilder = generateMatchCount ? new MatchCountBuilder() : null;
+        // Merge the posting lists of all the present terms, keyed by the gene symbol as entered in the annotations.
+        final Map<String, List<VocabularyTerm>> termsForEnteredGene = new LinkedHashMap<>();
+        for (final VocabularyTerm term : getPresentTerms()) {
+            final List<String> storedGenes = getGeneDataFromTerm(term);
+            if (matchCountBuilder != null) {
+                matchCountBuilder.add(term, CollectionUtils.subtract(storedGenes, geneExclusions));
+            }
+            storedGenes.forEach(gene -> termsForEnteredGene.computeIfAbsent(gene, k -> new ArrayList<>()).add(term));
+        }
+        if (matchCountBuilder != null) {
             this.matchCounts = matchCountBuilder.build();
-        } else {
-            getPresentTerms().forEach(term -> addTermForGenes(term, getGeneDataFromTerm(term), termsForGeneBuilder));
         }
+
+        final Map<String, VocabularyTerm> geneTerms = resolveGenes(termsForEnteredGene.keySet());
+        // A builder to add and update the count data for all the genes.
+        final TermsForGeneBuilder termsForGeneBuilder = new TermsForGeneBuilder(geneExclusions);
+        termsForEnteredGene.forEach((enteredGene, terms) ->
+            addTermsForGene(enteredGene, geneTerms.get(enteredGene), terms, termsForGeneBuilder));
         this.termsForGeneList = termsForGeneBuilder.build();
     }
 
     /**
-     * Adds the match counts and terms for gene.
+     * Retrieves the gene vocabulary terms for all the provided gene symbols, with one batched vocabulary request. The
+     * returned terms are mapped back to the requested symbols using their identifier, their current symbol, and their
+     * aliases, with a current symbol taking precedence over the aliases of other genes. Symbols are compared ignoring
+     * case, as the vocabulary does when searching for them.
+     *
+     * @param enteredGenes the gene symbols to resolve, as entered in the annotations, possibly aliases
+     * @return a map from each entered gene symbol to the corresponding gene term; symbols that are not valid genes are
+     *         missing from the map
+     */
+    private Map<String, VocabularyTerm> resolveGenes(@Nonnull final Set<String> enteredGenes)
+    {
+        if (enteredGenes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Set<VocabularyTerm> geneTerms = this.hgnc.getTerms(enteredGenes);
+        if (CollectionUtils.isEmpty(geneTerms)) {
+            return Collections.emptyMap();
+        }
+        // The same gene may have been entered with different cases.
+        final Map<String, List<String>> enteredGenesByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        enteredGenes.forEach(gene -> enteredGenesByName.computeIfAbsent(gene, k -> new ArrayList<>()).add(gene));
+        final Map<String, VocabularyTerm> result = new HashMap<>();
+        // First map the aliases, then the current symbols and identifiers, which override any ambiguous alias.
+        for (final VocabularyTerm geneTerm : geneTerms) {
+            if (geneTerm != null) {
+                getEnteredGenes(getGeneNameStream(geneTerm).skip(1), enteredGenesByName)
+                    .forEach(alias -> result.putIfAbsent(alias, geneTerm));
+            }
+        }
+        for (final VocabularyTerm geneTerm : geneTerms) {
+            if (geneTerm != null) {
+                getEnteredGenes(Stream.of(geneTerm.getId(), (String) geneTerm.get(SYMBOL_LABEL)), enteredGenesByName)
+                    .forEach(name -> result.put(name, geneTerm));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entered gene symbols matching any of the provided gene names, ignoring case.
      *
-     * @param term the {@link VocabularyTerm} of interest
-     * @param geneExclusions the identifiers for genes to be excluded
-     * @param termsForGeneBuilder the {@link TermsForGeneBuilder} object
-     * @param matchCountBuilder the {@link MatchCountBuilder} object
+     * @param names a stream of gene names, may contain nulls
+     * @param enteredGenesByName the entered gene symbols, keyed case-insensitively
+     * @return a stream of the entered gene symbols, as entered
      */
-    private void addMatchCountsAndTermsForGene(
-        @Nonnull final VocabularyTerm term,
-        @Nonnull final Set<String> geneExclusions,
-        @Nonnull final TermsForGeneBuilder termsForGeneBuilder,
-        @Nonnull final MatchCountBuilder matchCountBuilder)
+    private Stream<String> getEnteredGenes(@Nonnull final Stream<String> names,
+        @Nonnull final Map<String, List<String>> enteredGenesByName)
     {
-        final List<String> storedGenes = getGeneDataFromTerm(term);
-        matchCountBuilder.add(term, CollectionUtils.subtract(storedGenes, geneExclusions));
-        addTermForGenes(term, storedGenes, termsForGeneBuilder);
+        return names.filter(Objects::nonNull)
+            .map(enteredGenesByName::get)
+            .filter(Objects::nonNull)
+            .flatMap(List::stream);
     }
 
     /**
@@ -242,22 +297,21 @@ private Stream<String> getGeneNameStream(@Nonnull final VocabularyTerm gene)
     }
 
     /**
-     * For each gene in a list of {@code genes}, adds the gene as key and {@code term} as value to the provided
+     * Adds the {@code enteredGene gene}, with all its associated {@code terms}, to the provided
      * {@code termsForGeneBuilder}.
      *
-     * @param term the {@link VocabularyTerm HPO vocabulary term} associated with the provided list of {@code genes}
-     * @param genes a list of gene symbols associated with {@code term}
+     * @param enteredGene the gene symbol, as entered in the annotations, possibly an alias
+     * @param geneTerm the resolved gene vocabulary term, may be null if {@code enteredGene} is not a valid symbol
+     * @param terms the {@link VocabularyTerm HPO vocabulary terms} associated with {@code enteredGene}
      * @param termsForGeneBuilder a builder for creating and updating {@link TermsForGene} objects for each gene
      */
-    private void addTermForGenes(@Nonnull final VocabularyTerm term, @Nonnull final List<String> genes,
-        @Nonnull final TermsForGeneBuilder termsForGeneBuilder)
+    private void addTermsForGene(@Nonnull final String enteredGene, @Nullable final VocabularyTerm geneTerm,
+        @Nonnull final List<VocabularyTerm> terms, @Nonnull final TermsForGeneBuilder termsForGeneBuilder)
     {
-        for (final String enteredGene : genes) {
-            // Get the gene term. May be null if gene is not a valid symbol.
-            final VocabularyTerm geneTerm = this.hgnc.getTerm(enteredGene);
-            // Since entered gene may be an alias, get the current gene symbol and gene ID.
-            final String geneSymbol = getGeneSymbol(enteredGene, geneTerm);
-            final String geneId = getGeneId(geneSymbol, geneTerm);
+        // Since entered gene may be an alias, get the current gene symbol and gene ID.
+        final String geneSymbol = getGeneSymbol(enteredGene, geneTerm);
+        final String geneId = getGeneId(geneSymbol, geneTerm);
+        for (final VocabularyTerm term : terms) {
             if (termsForGeneBuilder.contains(geneId)) {
                 termsForGeneBuilder.update(geneId, term);
             } else {
@@ -26,9 +26,11 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 import org.json.JSONArray;
@@ -41,7 +43,13 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -76,6 +84,8 @@
 
     private static final String ENSEMBL_ID = "ensembl_gene_id";
 
+    private static final String SYMBOL_LABEL = "symbol";
+
     private static final String HGNC_LABEL = "hgnc";
 
     private static final String SIZE_LABEL = "returnedrows";
@@ -399,6 +409,67 @@ public void panelSizeIsCorrectWhenBothPresentAndAbsentTermsProvided()
         assertEquals(3, this.termsGenePanel.size());
     }
 
+    @Test
+    public void allGenesAreResolvedWithOneVocabularyRequest()
+    {
+        reset(this.hgnc);
+        when(this.hgnc.getTerms(anyCollectionOf(String.class))).thenReturn(Collections.emptySet());
+
+        final GenePanel panel = new DefaultGenePanelImpl(this.presentTerms, Collections.emptyList(),
+            this.vocabularyManager);
+
+        verify(this.hgnc, times(1)).getTerms(new HashSet<>(Arrays.asList(GENE1, GENE2, GENE3)));
+        verify(this.hgnc, never()).getTerm(anyString());
+        // Unknown genes are still listed, with the entered symbol used as the gene ID.
+        assertEquals(3, panel.size());
+        assertEquals(GENE2, panel.getTermsForGeneList().get(0).getGeneId());
+        assertEquals(2, panel.getTermsForGeneList().get(0).getCount());
+    }
+
+    @Test
+    public void genesEnteredAsAliasesAreMergedWithTheCurrentSymbol()
+    {
+        final VocabularyTerm currentGene = mock(VocabularyTerm.class);
+        when(currentGene.get(SYMBOL_LABEL)).thenReturn(GENE1);
+        when(currentGene.get("alt_id")).thenReturn(Collections.singletonList(GENE3));
+        when(currentGene.get(ENSEMBL_ID)).thenReturn(GENE_ID_LIST1);
+        reset(this.hgnc);
+        when(this.hgnc.getTerms(anyCollectionOf(String.class))).thenReturn(Collections.singleton(currentGene));
+
+        final GenePanel panel = new DefaultGenePanelImpl(this.presentTerms, Collections.emptyList(),
+            this.vocabularyManager);
+
+        // GENE3 is an alias of GENE1, so both HPO terms are listed for the same gene.
+        assertEquals(2, panel.size());
+        final TermsForGene first = panel.getTermsForGeneList().get(0);
+        assertEquals(2, first.getCount());
+        final TermsForGene merged = GENE_ID1.equals(first.getGeneId()) ? first : panel.getTermsForGeneList().get(1);
+        assertEquals(GENE1, merged.getGeneSymbol());
+        assertEquals(2, merged.getCount());
+    }
+
+    @Test
+    public void genesAreResolvedIgnoringCase()
+    {
+        final String currentSymbol = GENE1.toUpperCase(Locale.ROOT);
+        final VocabularyTerm currentGene = mock(VocabularyTerm.class);
+        when(currentGene.get(SYMBOL_LABEL)).thenReturn(currentSymbol);
+        when(currentGene.get("alt_id")).thenReturn(Collections.singletonList(GENE3.toUpperCase(Locale.ROOT)));
+        when(currentGene.get(ENSEMBL_ID)).thenReturn(GENE_ID_LIST1);
+        reset(this.hgnc);
+        when(this.hgnc.getTerms(anyCollectionOf(String.class))).thenReturn(Collections.singleton(currentGene));
+
+        final GenePanel panel = new DefaultGenePanelImpl(this.presentTerms, Collections.emptyList(),
+            this.vocabularyManager);
+
+        // The lowercase GENE1 and GENE3 are both resolved to the same gene, listed with its current symbol.
+        assertEquals(2, panel.size());
+        final TermsForGene first = panel.getTermsForGeneList().get(0);
+        final TermsForGene merged = GENE_ID1.equals(first.getGeneId()) ? first : panel.getTermsForGeneList().get(1);
+        assertEquals(currentSymbol, merged.getGeneSymbol());
+        assertEquals(2, merged.getCount());
+    }
+
     //--------------------------------------Helper methods-------------------------------------//
 
     /**
@@ -449,9 +520,11 @@ private void makeGenePanelMocks()
         when(this.presentTerm1.get(ASSOCIATED_GENES)).thenReturn(associatedGenes1);
         when(this.presentTerm2.get(ASSOCIATED_GENES)).thenReturn(associatedGenes2);
 
-        when(this.hgnc.getTerm(GENE1)).thenReturn(geneTerm1);
-        when(this.hgnc.getTerm(GENE2)).thenReturn(geneTerm2);
-        when(this.hgnc.getTerm(GENE3)).thenReturn(geneTerm3);
+        when(geneTerm1.get(SYMBOL_LABEL)).thenReturn(GENE1);
+        when(geneTerm2.get(SYMBOL_LABEL)).thenReturn(GENE2);
+        when(geneTerm3.get(SYMBOL_LABEL)).thenReturn(GENE3);
+        when(this.hgnc.getTerms(anyCollectionOf(String.class)))
+            .thenReturn(new HashSet<>(Arrays.asList(geneTerm1, geneTerm2, geneTerm3)));
 
         when(geneTerm1.get(ENSEMBL_ID)).thenReturn(GENE_ID_LIST1);
         when(geneTerm2.get(ENSEMBL_ID)).thenReturn(GENE_ID_LIST2);
@@ -54,6 +54,18 @@
 @Singleton
 public class DefaultGenePanelLoader implements GenePanelLoader, Initializable
 {
+    /**
+     * The maximum number of gene panels to cache. Panels only hold references to already loaded vocabulary terms, so
+     * they are small enough to keep many of them, and most distinct feature sets can stay cached.
+     */
+    private static final int CACHE_SIZE = 1000;
+
+    /**
+     * For how long to keep a computed panel, in hours. Entries expire after being written, not after being accessed,
+     * so that frequently requested panels are still recomputed after the vocabularies are reindexed.
+     */
+    private static final int CACHE_EXPIRY = 1;
+
     @Inject
     private GenePanelFactory genePanelFactory;
 
@@ -70,8 +82,8 @@ public class DefaultGenePanelLoader implements GenePanelLoader, Initializable
     public void initialize()
     {
         this.loadingCache = CacheBuilder.newBuilder()
-            .maximumSize(100)
-            .expireAfterAccess(5, TimeUnit.MINUTES)
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRY, TimeUnit.HOURS)
             .build(new CacheLoader<PanelData, GenePanel>()
             {
                 @Override
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-memory index of the {@link NormalizedMedication normalized medications} and phenotypes of all the patients,
+ * answering cohort queries such as "patients on valproate with seizures". Each patient is indexed under the ChEBI
+ * terms of the drugs taken and all their ancestors, so that querying for a drug class also matches the drugs in that
+ * class, and under the observed HPO terms and all their ancestors. The index is kept up to date as patients are
+ * modified. Only the patients that the current user can view are returned.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface MedicationIndex
+{
+    /**
+     * Find the patients taking all the specified drugs and having all the specified phenotypes.
+     *
+     * @param drugs ChEBI term identifiers, e.g. {@code CHEBI:39867}, or drug names, e.g. {@code valproate}; names not
+     *            found in ChEBI are matched against the names recorded for each medication; may be empty
+     * @param phenotypes HPO term identifiers, e.g. {@code HP:0001250}; may be empty
+     * @return the identifiers of the matching patients, sorted; may be empty, but not {@code null}; if both criteria
+     *         are empty, nothing is returned
+     */
+    List<String> findPatients(Collection<String> drugs, Collection<String> phenotypes);
+
+    /**
+     * Get the normalized medications of a patient, as stored in the index.
+     *
+     * @param patientId the identifier of the patient, e.g. {@code P0000123}
+     * @return the patient's medications; empty if the patient has no medications or cannot be viewed by the current
+     *         user
+     */
+    List<NormalizedMedication> getMedications(String patientId);
+
+    /**
+     * Add (or update) a patient to the index.
+     *
+     * @param patient the patient to index
+     */
+    void index(Patient patient);
+
+    /**
+     * Delete a patient from the index.
+     *
+     * @param patient the patient to delete
+     */
+    void delete(Patient patient);
+
+    /**
+     * Rebuild the index from the stored patient records.
+     */
+    void reindex();
+}
@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Turns free text {@link Medication} records into {@link NormalizedMedication structured data}, identifying the drug
+ * in the ChEBI vocabulary and parsing the dose and frequency.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface MedicationNormalizer
+{
+    /**
+     * Normalize a medication record.
+     *
+     * @param medication the medication to normalize
+     * @return the normalized medication, or {@code null} if {@code medication} is {@code null}; the fields that cannot
+     *         be normalized are left {@code null}
+     */
+    NormalizedMedication normalize(Medication medication);
+
+    /**
+     * Identify a drug by its name, looking at both the names and the synonyms of the ChEBI terms.
+     *
+     * @param name the name of a drug, case insensitive, e.g. {@code valproate}
+     * @return the matching ChEBI term, or {@code null} if no term has this exact name or synonym
+     */
+    VocabularyTerm getDrug(String name);
+}
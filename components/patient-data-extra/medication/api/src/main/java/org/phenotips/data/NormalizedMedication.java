@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.stability.Unstable;
+
+import org.json.JSONObject;
+
+/**
+ * A {@link Medication} record normalized into structured data: the drug is identified by a ChEBI term, and the free
+ * text dose and frequency are parsed into numbers, where possible. The original record is still available through
+ * {@link #getMedication()}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public final class NormalizedMedication
+{
+    /** The JSON key for the identified drug. */
+    public static final String DRUG = "drug";
+
+    /** The JSON key for the numeric dose amount. */
+    public static final String DOSE_AMOUNT = "doseAmount";
+
+    /** The JSON key for the unit of the dose. */
+    public static final String DOSE_UNIT = "doseUnit";
+
+    /** The JSON key for the number of doses administered per day. */
+    public static final String DOSES_PER_DAY = "dosesPerDay";
+
+    private static final String ID = "id";
+
+    /** The original medication record. */
+    private final Medication medication;
+
+    /** The ChEBI identifier of the drug. */
+    private final String drugId;
+
+    /** The ChEBI name of the drug. */
+    private final String drugName;
+
+    /** The numeric part of the dose. */
+    private final Double doseAmount;
+
+    /** The unit of the dose. */
+    private final String doseUnit;
+
+    /** The number of doses per day. */
+    private final Double dosesPerDay;
+
+    /**
+     * Basic constructor receiving all the required information.
+     *
+     * @param medication the original medication record, must not be {@code null}
+     * @param drugId see {@link #getDrugId()}, may be {@code null}
+     * @param drugName see {@link #getDrugName()}, may be {@code null}
+     * @param doseAmount see {@link #getDoseAmount()}, may be {@code null}
+     * @param doseUnit see {@link #getDoseUnit()}, may be {@code null}
+     * @param dosesPerDay see {@link #getDosesPerDay()}, may be {@code null}
+     * @throws IllegalArgumentException if {@code medication} is {@code null}
+     */
+    public NormalizedMedication(final Medication medication,
+        final String drugId,
+        final String drugName,
+        final Double doseAmount,
+        final String doseUnit,
+        final Double dosesPerDay)
+    {
+        if (medication == null) {
+            throw new IllegalArgumentException("The medication parameter must not be null");
+        }
+        this.medication = medication;
+        this.drugId = drugId;
+        this.drugName = drugName;
+        this.doseAmount = doseAmount;
+        this.doseUnit = doseUnit;
+        this.dosesPerDay = dosesPerDay;
+    }
+
+    /**
+     * The original medication record.
+     *
+     * @return the medication, never {@code null}
+     */
+    public Medication getMedication()
+    {
+        return this.medication;
+    }
+
+    /**
+     * The identifier of the ChEBI term matching the medicine.
+     *
+     * @return a term identifier, e.g. {@code CHEBI:39867}, or {@code null} if the medicine could not be identified
+     */
+    public String getDrugId()
+    {
+        return this.drugId;
+    }
+
+    /**
+     * The name of the ChEBI term matching the medicine.
+     *
+     * @return a term name, e.g. {@code valproic acid}, or {@code null} if the medicine could not be identified
+     */
+    public String getDrugName()
+    {
+        return this.drugName;
+    }
+
+    /**
+     * The amount of medicine given in one dose, parsed from {@link Medication#getDose()}.
+     *
+     * @return a number, or {@code null} if the dose is missing or could not be parsed
+     */
+    public Double getDoseAmount()
+    {
+        return this.doseAmount;
+    }
+
+    /**
+     * The unit in which the {@link #getDoseAmount() dose amount} is expressed, e.g. {@code mg}.
+     *
+     * @return a string, may be {@code null}
+     */
+    public String getDoseUnit()
+    {
+        return this.doseUnit;
+    }
+
+    /**
+     * The number of doses given per day, parsed from {@link Medication#getFrequency()}.
+     *
+     * @return a number, possibly fractional for medicines given less than once a day, or {@code null} if the
+     *         frequency is missing or could not be parsed
+     */
+    public Double getDosesPerDay()
+    {
+        return this.dosesPerDay;
+    }
+
+    /**
+     * The total amount of medicine given per day, in {@link #getDoseUnit() dose units}.
+     *
+     * @return a number, or {@code null} if either the dose amount or the frequency is not known
+     */
+    public Double getDailyDose()
+    {
+        if (this.doseAmount == null || this.dosesPerDay == null) {
+            return null;
+        }
+        return this.doseAmount * this.dosesPerDay;
+    }
+
+    /**
+     * Serialize as JSON, in the same format as {@link Medication#toJSON()}, with the normalized fields added:
+     *
+     * <pre>
+     * {
+     *   "name": "Depakene",
+     *   "genericName": "valproic acid",
+     *   "dose": "250mg",
+     *   "frequency": "8h",
+     *   "drug": {"id": "CHEBI:39867", "name": "valproic acid"},
+     *   "doseAmount": 250,
+     *   "doseUnit": "mg",
+     *   "dosesPerDay": 3
+     * }
+     * </pre>
+     *
+     * @return a JSON object; any missing field is not set at all in the output
+     */
+    public JSONObject toJSON()
+    {
+        JSONObject result = this.medication.toJSON();
+        if (this.drugId != null) {
+            result.put(DRUG, new JSONObject().put(ID, this.drugId).putOpt(Medication.NAME, this.drugName));
+        }
+        result.putOpt(DOSE_AMOUNT, this.doseAmount);
+        result.putOpt(DOSE_UNIT, this.doseUnit);
+        result.putOpt(DOSES_PER_DAY, this.dosesPerDay);
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Medication;
+import org.phenotips.data.MedicationNormalizer;
+import org.phenotips.data.NormalizedMedication;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Normalizes medications using the ChEBI vocabulary. The generic name is preferred for identifying the drug, falling
+ * back to the brand name, and each name is first looked up among the exact term names, then among the exact synonyms.
+ * Since the same few drug names are used over and over, the lookups, including the failed ones, are cached.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class ChEBIMedicationNormalizer implements MedicationNormalizer
+{
+    private static final String NAME_FIELD = "nameExact";
+
+    private static final String SYNONYM_FIELD = "synonymExact";
+
+    /** Used for identifying drugs. */
+    @Inject
+    @Named("chebi")
+    private Vocabulary chebi;
+
+    /** Lowercase drug name to the matching term, empty for names not found in the vocabulary. */
+    private final Map<String, Optional<VocabularyTerm>> drugs = new ConcurrentHashMap<>();
+
+    @Override
+    public NormalizedMedication normalize(Medication medication)
+    {
+        if (medication == null) {
+            return null;
+        }
+        VocabularyTerm drug = getDrug(medication.getGenericName());
+        if (drug == null) {
+            drug = getDrug(medication.getName());
+        }
+        return new NormalizedMedication(medication,
+            drug == null ? null : drug.getId(),
+            drug == null ? null : drug.getName(),
+            DosingParser.parseDoseAmount(medication.getDose()),
+            DosingParser.parseDoseUnit(medication.getDose()),
+            DosingParser.parseDosesPerDay(medication.getFrequency()));
+    }
+
+    @Override
+    public VocabularyTerm getDrug(String name)
+    {
+        if (StringUtils.isBlank(name)) {
+            return null;
+        }
+        return this.drugs.computeIfAbsent(StringUtils.normalizeSpace(name).toLowerCase(Locale.ROOT), this::lookup)
+            .orElse(null);
+    }
+
+    private Optional<VocabularyTerm> lookup(String name)
+    {
+        List<VocabularyTerm> result = this.chebi.search(Collections.singletonMap(NAME_FIELD, name));
+        if (result == null || result.isEmpty()) {
+            result = this.chebi.search(Collections.singletonMap(SYNONYM_FIELD, name));
+        }
+        return result == null || result.isEmpty() ? Optional.empty() : Optional.ofNullable(result.get(0));
+    }
+}
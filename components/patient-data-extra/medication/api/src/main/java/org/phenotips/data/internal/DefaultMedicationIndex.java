@@ -0,0 +1,484 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Medication;
+import org.phenotips.data.MedicationIndex;
+import org.phenotips.data.MedicationNormalizer;
+import org.phenotips.data.NormalizedMedication;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientData;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.internal.LazyIndexLoader;
+import org.phenotips.data.indexing.internal.PatientTermIndex;
+import org.phenotips.data.indexing.internal.TermClosures;
+import org.phenotips.data.internal.controller.MedicationController;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.MutablePeriod;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link MedicationIndex}, keeping inverted indexes from drug and phenotype terms to
+ * patients in memory. The index is loaded from the database with a few bulk queries the first time it is needed, and
+ * then kept up to date by the {@link MedicationIndexListener}. Searches can run concurrently, while updates need
+ * exclusive access to the index. Drugs and phenotypes share the same {@link PatientTermIndex}, since their keys can't
+ * collide. Loading, and retrying failed loads, is managed by a {@link LazyIndexLoader}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultMedicationIndex implements MedicationIndex, Initializable
+{
+    /** Lists the short text properties of all the medications, one row for each property. */
+    private static final String STRINGS_QUERY = "select obj.name, obj.number, prop.id.name, prop.value"
+        + " from BaseObject obj, StringProperty prop"
+        + " where obj.className = :medicationClass and obj.name like :space and prop.id.id = obj.id";
+
+    /** Lists the numeric properties of all the medications, i.e. the duration, one row for each property. */
+    private static final String NUMBERS_QUERY = "select obj.name, obj.number, prop.id.name, prop.value"
+        + " from BaseObject obj, IntegerProperty prop"
+        + " where obj.className = :medicationClass and obj.name like :space and prop.id.id = obj.id";
+
+    /** Lists the observed phenotypes of all the patients in the patient data space, one row for each phenotype. */
+    private static final String PHENOTYPES_QUERY = "select obj.name, item"
+        + " from BaseObject obj, DBStringListProperty prop join prop.list as item"
+        + " where obj.className = :patientClass and obj.name like :space"
+        + " and prop.id.id = obj.id and prop.id.name = :property";
+
+    private static final String MEDICATION_CLASS = "PhenoTips.MedicationDataClass";
+
+    private static final String PATIENT_CLASS = "PhenoTips.PatientClass";
+
+    private static final String PHENOTYPE_PROPERTY = "phenotype";
+
+    private static final String SPACE_PARAMETER = "space";
+
+    private static final String HPO_PREFIX = "HP:";
+
+    private static final String CHEBI_PREFIX = "CHEBI:";
+
+    /** Prefix of the index keys used for the recorded drug names, to distinguish them from ChEBI identifiers. */
+    private static final String NAME_PREFIX = "name:";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    private PatientRepository repository;
+
+    @Inject
+    private MedicationNormalizer normalizer;
+
+    /** Provides the ancestors of the drug terms. */
+    @Inject
+    @Named("chebi")
+    private Vocabulary chebi;
+
+    /** Provides the ancestors of the phenotype terms. */
+    @Inject
+    @Named("hpo")
+    private Vocabulary hpo;
+
+    /** Used for obtaining the current user. */
+    @Inject
+    private UserManager userManager;
+
+    /** Used for checking access rights. */
+    @Inject
+    private AuthorizationService access;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<EntityReference> resolver;
+
+    /** Patient identifier to the patient's normalized medications. */
+    private final Map<String, List<NormalizedMedication>> medications = new HashMap<>();
+
+    /** Indexes each patient under the drug terms and recorded drug names taken, and the phenotype terms observed. */
+    private final PatientTermIndex index = new PatientTermIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LazyIndexLoader loader = new LazyIndexLoader(this.lock, this::load);
+
+    /** The ancestors of the drug terms. */
+    private TermClosures drugClosures;
+
+    /** The ancestors of the phenotype terms. */
+    private TermClosures phenotypeClosures;
+
+    @Override
+    public void initialize()
+    {
+        this.drugClosures = new TermClosures(this.chebi, CHEBI_PREFIX);
+        this.phenotypeClosures = new TermClosures(this.hpo, HPO_PREFIX);
+    }
+
+    @Override
+    public List<String> findPatients(Collection<String> drugs, Collection<String> phenotypes)
+    {
+        List<String> keys = new ArrayList<>();
+        if (drugs != null) {
+            for (String drug : drugs) {
+                if (StringUtils.isNotBlank(drug)) {
+                    keys.add(getDrugKey(drug.trim()));
+                }
+            }
+        }
+        if (phenotypes != null) {
+            for (String phenotype : phenotypes) {
+                if (StringUtils.isNotBlank(phenotype)) {
+                    keys.add(phenotype.trim());
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        this.loader.ensureLoaded();
+
+        Set<String> matches;
+        this.lock.readLock().lock();
+        try {
+            matches = this.index.findAll(keys);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        List<String> result = new ArrayList<>(matches.size());
+        User user = this.userManager.getCurrentUser();
+        for (String id : matches) {
+            if (canView(user, id)) {
+                result.add(id);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Override
+    public List<NormalizedMedication> getMedications(String patientId)
+    {
+        if (StringUtils.isBlank(patientId)) {
+            return Collections.emptyList();
+        }
+        this.loader.ensureLoaded();
+        if (!canView(this.userManager.getCurrentUser(), patientId)) {
+            return Collections.emptyList();
+        }
+        this.lock.readLock().lock();
+        try {
+            List<NormalizedMedication> result = this.medications.get(patientId);
+            return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void index(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        List<NormalizedMedication> normalized = new ArrayList<>();
+        PatientData<Medication> data = patient.getData(MedicationController.DATA_NAME);
+        if (data != null) {
+            for (Medication medication : data) {
+                if (medication != null) {
+                    normalized.add(this.normalizer.normalize(medication));
+                }
+            }
+        }
+        Set<String> drugKeys = getDrugKeys(normalized);
+        Set<String> phenotype = getPhenotype(patient);
+        this.lock.writeLock().lock();
+        try {
+            // A load running meanwhile may have failed, then the next load will read this patient
+            if (this.loader.isLoaded()) {
+                put(patient.getId(), normalized, drugKeys, phenotype);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if (this.loader.isLoaded()) {
+                this.medications.remove(patient.getId());
+                this.index.remove(patient.getId());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reindex()
+    {
+        this.lock.writeLock().lock();
+        try {
+            // The vocabularies may have been reindexed as well
+            this.drugClosures.clear();
+            this.phenotypeClosures.clear();
+            this.loader.reload();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the medications and phenotypes of all the patients from the database. Must be called while holding the
+     * write lock.
+     *
+     * @return {@code true} if the data was loaded, {@code false} if the database couldn't be read
+     */
+    private boolean load()
+    {
+        long start = System.currentTimeMillis();
+        String space = this.repository.getDataSpace().getName() + ".%";
+        try {
+            // Document name to object number to property name to value; notes are not needed for the index
+            Map<String, Map<Integer, Map<String, Object>>> objects = new HashMap<>();
+            readMedicationProperties(STRINGS_QUERY, space, objects);
+            readMedicationProperties(NUMBERS_QUERY, space, objects);
+
+            Query q = this.qm.createQuery(PHENOTYPES_QUERY, Query.HQL);
+            q.bindValue("patientClass", PATIENT_CLASS);
+            q.bindValue(SPACE_PARAMETER, space);
+            q.bindValue("property", PHENOTYPE_PROPERTY);
+            List<Object[]> rows = q.execute();
+            Map<String, Set<String>> patientPhenotypes = new HashMap<>();
+            for (Object[] row : rows) {
+                String term = (String) row[1];
+                if (StringUtils.startsWith(term, HPO_PREFIX)) {
+                    patientPhenotypes.computeIfAbsent(getPatientId(row[0]), k -> new HashSet<>()).add(term);
+                }
+            }
+
+            Map<String, List<NormalizedMedication>> patientMedications = new HashMap<>();
+            for (Map.Entry<String, Map<Integer, Map<String, Object>>> doc : objects.entrySet()) {
+                List<NormalizedMedication> normalized = new ArrayList<>(doc.getValue().size());
+                for (Map<String, Object> properties : doc.getValue().values()) {
+                    normalized.add(this.normalizer.normalize(toMedication(properties)));
+                }
+                patientMedications.put(getPatientId(doc.getKey()), normalized);
+            }
+            prefetchClosures(patientMedications, patientPhenotypes);
+
+            this.medications.clear();
+            this.index.clear();
+            Set<String> patients = new HashSet<>(patientMedications.keySet());
+            patients.addAll(patientPhenotypes.keySet());
+            for (String id : patients) {
+                List<NormalizedMedication> normalized =
+                    patientMedications.getOrDefault(id, Collections.emptyList());
+                Set<String> phenotype = new HashSet<>();
+                for (String term : patientPhenotypes.getOrDefault(id, Collections.emptySet())) {
+                    addPhenotypeKeys(term, phenotype);
+                }
+                put(id, normalized, getDrugKeys(normalized), phenotype);
+            }
+            this.logger.info("Indexed the medications of [{}] patients in [{}] ms", this.medications.size(),
+                System.currentTimeMillis() - start);
+            return true;
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to load patient medications for cohort search: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    private void readMedicationProperties(String query, String space,
+        Map<String, Map<Integer, Map<String, Object>>> objects) throws QueryException
+    {
+        Query q = this.qm.createQuery(query, Query.HQL);
+        q.bindValue("medicationClass", MEDICATION_CLASS);
+        q.bindValue(SPACE_PARAMETER, space);
+        List<Object[]> rows = q.execute();
+        for (Object[] row : rows) {
+            objects.computeIfAbsent((String) row[0], k -> new TreeMap<>())
+                .computeIfAbsent((Integer) row[1], k -> new HashMap<>())
+                .put((String) row[2], row[3]);
+        }
+    }
+
+    private Medication toMedication(Map<String, Object> properties)
+    {
+        MutablePeriod p = new MutablePeriod();
+        p.setYears(getInt(properties.get(MedicationController.DURATION_YEARS)));
+        p.setMonths(getInt(properties.get(MedicationController.DURATION_MONTHS)));
+        return new Medication((String) properties.get(Medication.NAME),
+            (String) properties.get(Medication.GENERIC_NAME),
+            (String) properties.get(Medication.DOSE),
+            (String) properties.get(Medication.FREQUENCY),
+            p.toPeriod(),
+            (String) properties.get(Medication.EFFECT),
+            null);
+    }
+
+    private int getInt(Object value)
+    {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private String getPatientId(Object documentName)
+    {
+        return StringUtils.substringAfter((String) documentName, ".");
+    }
+
+    /** Must be called while holding the write lock. */
+    private void put(String id, List<NormalizedMedication> normalized, Set<String> drugKeys, Set<String> phenotype)
+    {
+        if (normalized.isEmpty()) {
+            this.medications.remove(id);
+        } else {
+            this.medications.put(id, normalized);
+        }
+        Set<String> keys = new HashSet<>(drugKeys);
+        keys.addAll(phenotype);
+        this.index.put(id, keys);
+    }
+
+    private String getDrugKey(String drug)
+    {
+        if (StringUtils.startsWithIgnoreCase(drug, CHEBI_PREFIX)) {
+            return CHEBI_PREFIX + drug.substring(CHEBI_PREFIX.length());
+        }
+        VocabularyTerm term = this.normalizer.getDrug(drug);
+        return term != null ? term.getId() : getNameKey(drug);
+    }
+
+    private Set<String> getDrugKeys(List<NormalizedMedication> normalized)
+    {
+        Set<String> result = new HashSet<>();
+        for (NormalizedMedication medication : normalized) {
+            if (medication.getDrugId() != null) {
+                // The drug itself is indexed even if its ancestors can't be fetched right now
+                result.add(medication.getDrugId());
+                result.addAll(this.drugClosures.get(medication.getDrugId()));
+            }
+            // Drugs not found in ChEBI can still be searched by their recorded names
+            addNameKey(medication.getMedication().getName(), result);
+            addNameKey(medication.getMedication().getGenericName(), result);
+        }
+        return result;
+    }
+
+    private void addNameKey(String name, Set<String> keys)
+    {
+        if (StringUtils.isNotBlank(name)) {
+            keys.add(getNameKey(name));
+        }
+    }
+
+    private String getNameKey(String name)
+    {
+        return NAME_PREFIX + StringUtils.normalizeSpace(name).toLowerCase(Locale.ROOT);
+    }
+
+    private Set<String> getPhenotype(Patient patient)
+    {
+        Set<String> result = new HashSet<>();
+        for (Feature feature : patient.getFeatures()) {
+            if (feature.isPresent()) {
+                addPhenotypeKeys(feature.getId(), result);
+            }
+        }
+        return result;
+    }
+
+    private void addPhenotypeKeys(String term, Set<String> keys)
+    {
+        if (StringUtils.startsWith(term, HPO_PREFIX)) {
+            keys.add(term);
+            keys.addAll(this.phenotypeClosures.get(term));
+        }
+    }
+
+    /** Fetches all the terms not yet known with one request per vocabulary, instead of one request per term. */
+    private void prefetchClosures(Map<String, List<NormalizedMedication>> patientMedications,
+        Map<String, Set<String>> patientPhenotypes)
+    {
+        Set<String> drugTerms = new HashSet<>();
+        for (List<NormalizedMedication> normalized : patientMedications.values()) {
+            for (NormalizedMedication medication : normalized) {
+                if (medication.getDrugId() != null) {
+                    drugTerms.add(medication.getDrugId());
+                }
+            }
+        }
+        this.drugClosures.prefetch(drugTerms);
+        Set<String> phenotypeTerms = new HashSet<>();
+        for (Set<String> terms : patientPhenotypes.values()) {
+            phenotypeTerms.addAll(terms);
+        }
+        this.phenotypeClosures.prefetch(phenotypeTerms);
+    }
+
+    private boolean canView(User user, String patientId)
+    {
+        return this.access.hasAccess(user, Right.VIEW, this.resolver.resolve(
+            new EntityReference(patientId, EntityType.DOCUMENT, this.repository.getDataSpace())));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Parses the free text dose and frequency of a medication, as entered by users, into numbers. Only the common
+ * notations are recognized, such as {@code 250mg}, {@code 2.5 ml}, {@code 8h}, {@code every 12 hours}, {@code bid},
+ * {@code 3 times a day} or {@code weekly}; anything else is considered unknown.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class DosingParser
+{
+    private static final Pattern DOSE = Pattern.compile("(\\d+(?:[.,]\\d+)?)\\s*([^\\d\\s].*)?");
+
+    /** E.g. {@code 3x/day}, {@code 2 times a day}, {@code 1 per week}; a plain {@code 2d} is an interval. */
+    private static final Pattern TIMES = Pattern.compile(
+        "(\\d+(?:\\.\\d+)?)\\s*(?:(?:x|times?)\\s*(?:/|per|a|an|each|every)?|/|per)\\s*(d|day|daily|w|wk|week|weekly)");
+
+    /** E.g. {@code 8h}, {@code q12h}, {@code every 2 days}. */
+    private static final Pattern INTERVAL = Pattern.compile(
+        "(?:q|every\\s*)?(\\d+(?:\\.\\d+)?)\\s*(h|hr|hrs|hours?|d|days?|w|wk|weeks?)");
+
+    private static final Map<String, Double> ABBREVIATIONS = new HashMap<>();
+
+    private static final double HOURS_PER_DAY = 24;
+
+    private static final double DAYS_PER_WEEK = 7;
+
+    static {
+        Double once = 1.0;
+        for (String s : new String[] { "qd", "od", "daily", "once daily", "once a day", "once per day", "every day",
+            "qam", "qpm", "qhs", "at bedtime" }) {
+            ABBREVIATIONS.put(s, once);
+        }
+        for (String s : new String[] { "bid", "bd", "twice daily", "twice a day", "twice per day" }) {
+            ABBREVIATIONS.put(s, 2.0);
+        }
+        for (String s : new String[] { "tid", "tds", "three times daily", "three times a day" }) {
+            ABBREVIATIONS.put(s, 3.0);
+        }
+        for (String s : new String[] { "qid", "qds", "four times daily", "four times a day" }) {
+            ABBREVIATIONS.put(s, 4.0);
+        }
+        for (String s : new String[] { "weekly", "once weekly", "once a week", "every week", "qw", "qwk" }) {
+            ABBREVIATIONS.put(s, 1 / DAYS_PER_WEEK);
+        }
+    }
+
+    private DosingParser()
+    {
+        // Utility class, no instances
+    }
+
+    /**
+     * Parses the amount of a dose.
+     *
+     * @param dose the dose as entered by the user, e.g. {@code 250 mg}
+     * @return the amount, e.g. {@code 250}, or {@code null} if the dose doesn't start with a number
+     */
+    static Double parseDoseAmount(String dose)
+    {
+        Matcher m = matchDose(dose);
+        return m == null ? null : Double.valueOf(m.group(1).replace(',', '.'));
+    }
+
+    /**
+     * Parses the unit of a dose.
+     *
+     * @param dose the dose as entered by the user, e.g. {@code 250 mg}
+     * @return the unit, e.g. {@code mg}, or {@code null} if the dose doesn't start with a number or has no unit
+     */
+    static String parseDoseUnit(String dose)
+    {
+        Matcher m = matchDose(dose);
+        return m == null ? null : StringUtils.defaultIfBlank(StringUtils.trim(m.group(2)), null);
+    }
+
+    /**
+     * Parses a frequency into the number of doses per day.
+     *
+     * @param frequency the frequency as entered by the user, e.g. {@code every 8 hours}
+     * @return the number of doses per day, e.g. {@code 3}, or {@code null} if the frequency isn't recognized
+     */
+    static Double parseDosesPerDay(String frequency)
+    {
+        if (StringUtils.isBlank(frequency)) {
+            return null;
+        }
+        String text = StringUtils.normalizeSpace(frequency.toLowerCase(Locale.ROOT));
+        // Abbreviations are also written with dots, e.g. b.i.d.
+        Double result = ABBREVIATIONS.get(StringUtils.remove(text, '.'));
+        if (result != null) {
+            return result;
+        }
+        Matcher m = TIMES.matcher(text);
+        if (m.matches()) {
+            double times = Double.parseDouble(m.group(1));
+            return m.group(2).startsWith("w") ? times / DAYS_PER_WEEK : times;
+        }
+        m = INTERVAL.matcher(text);
+        if (m.matches()) {
+            double interval = Double.parseDouble(m.group(1));
+            if (interval <= 0) {
+                return null;
+            }
+            switch (m.group(2).charAt(0)) {
+                case 'h':
+                    return HOURS_PER_DAY / interval;
+                case 'd':
+                    return 1 / interval;
+                default:
+                    return 1 / (interval * DAYS_PER_WEEK);
+            }
+        }
+        return null;
+    }
+
+    private static Matcher matchDose(String dose)
+    {
+        if (StringUtils.isBlank(dose)) {
+            return null;
+        }
+        Matcher m = DOSE.matcher(dose.trim());
+        return m.matches() ? m : null;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.MedicationIndex;
+import org.phenotips.data.Patient;
+import org.phenotips.data.events.PatientChangedEvent;
+import org.phenotips.data.events.PatientDeletedEvent;
+import org.phenotips.data.events.PatientEvent;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Keeps the {@link MedicationIndex} up to date as patients are saved or deleted.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("phenotips-medication-indexer")
+@Singleton
+public class MedicationIndexListener extends AbstractEventListener
+{
+    /** The index to update. */
+    @Inject
+    private MedicationIndex index;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public MedicationIndexListener()
+    {
+        super("phenotips-medication-indexer", new PatientChangedEvent(), new PatientDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(final Event event, final Object source, final Object data)
+    {
+        Patient patient = ((PatientEvent) event).getPatient();
+        if (event instanceof PatientDeletedEvent) {
+            this.index.delete(patient);
+        } else if (patient != null) {
+            this.index.index(patient);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.script;
+
+import org.phenotips.data.Medication;
+import org.phenotips.data.MedicationIndex;
+import org.phenotips.data.MedicationNormalizer;
+import org.phenotips.data.NormalizedMedication;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Cohort queries over the medications taken by patients, among the patients that the current user can view.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Component
+@Named("medications")
+@Singleton
+public class MedicationScriptService implements ScriptService
+{
+    /** The wrapped index that does the actual work. */
+    @Inject
+    private MedicationIndex index;
+
+    @Inject
+    private MedicationNormalizer normalizer;
+
+    /**
+     * Find the patients taking all the specified drugs and having all the specified phenotypes, e.g.
+     * {@code $services.medications.findPatients(['valproate'], ['HP:0001250'])}.
+     *
+     * @param drugs ChEBI term identifiers or drug names; drug classes also match the drugs in that class
+     * @param phenotypes HPO term identifiers; more general terms also match more specific phenotypes
+     * @return the identifiers of the matching patients, sorted
+     */
+    public List<String> findPatients(Collection<String> drugs, Collection<String> phenotypes)
+    {
+        return this.index.findPatients(drugs, phenotypes);
+    }
+
+    /**
+     * Get the normalized medications of a patient.
+     *
+     * @param patientId the identifier of the patient, e.g. {@code P0000123}
+     * @return the patient's medications; empty if the patient has no medications or cannot be viewed
+     */
+    public List<NormalizedMedication> getMedications(String patientId)
+    {
+        return this.index.getMedications(patientId);
+    }
+
+    /**
+     * Normalize a medication record, for example one that is being entered.
+     *
+     * @param medication the medication to normalize
+     * @return the normalized medication, or {@code null} if {@code medication} is {@code null}
+     */
+    public NormalizedMedication normalize(Medication medication)
+    {
+        return this.normalizer.normalize(medication);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Medication;
+import org.phenotips.data.MedicationNormalizer;
+import org.phenotips.data.NormalizedMedication;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Collections;
+
+import org.joda.time.Period;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link ChEBIMedicationNormalizer} component.
+ *
+ * @version $Id$
+ */
+public class ChEBIMedicationNormalizerTest
+{
+    private static final String VALPROIC_ACID = "CHEBI:39867";
+
+    @Rule
+    public MockitoComponentMockingRule<MedicationNormalizer> mocker =
+        new MockitoComponentMockingRule<>(ChEBIMedicationNormalizer.class);
+
+    private MedicationNormalizer normalizer;
+
+    private Vocabulary chebi;
+
+    private VocabularyTerm valproicAcid;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.normalizer = this.mocker.getComponentUnderTest();
+        this.chebi = this.mocker.getInstance(Vocabulary.class, "chebi");
+        this.valproicAcid = mock(VocabularyTerm.class);
+        when(this.valproicAcid.getId()).thenReturn(VALPROIC_ACID);
+        when(this.valproicAcid.getName()).thenReturn("valproic acid");
+        when(this.chebi.search(anyMapOf(String.class, Object.class))).thenReturn(Collections.emptyList());
+        when(this.chebi.search(Collections.singletonMap("nameExact", "valproic acid")))
+            .thenReturn(Collections.singletonList(this.valproicAcid));
+        when(this.chebi.search(Collections.singletonMap("synonymExact", "valproate")))
+            .thenReturn(Collections.singletonList(this.valproicAcid));
+    }
+
+    @Test
+    public void normalizeIdentifiesTheDrugAndParsesTheDosing()
+    {
+        Medication medication = new Medication("Depakene", "Valproic  Acid", "250 mg", "tid", Period.years(2),
+            "strongImprovement", null);
+
+        NormalizedMedication result = this.normalizer.normalize(medication);
+
+        Assert.assertSame(medication, result.getMedication());
+        Assert.assertEquals(VALPROIC_ACID, result.getDrugId());
+        Assert.assertEquals("valproic acid", result.getDrugName());
+        Assert.assertEquals(250, result.getDoseAmount(), 1e-9);
+        Assert.assertEquals("mg", result.getDoseUnit());
+        Assert.assertEquals(3, result.getDosesPerDay(), 1e-9);
+        Assert.assertEquals(750, result.getDailyDose(), 1e-9);
+        Assert.assertEquals(VALPROIC_ACID, result.toJSON().getJSONObject("drug").getString("id"));
+        Assert.assertEquals("Depakene", result.toJSON().getString("name"));
+    }
+
+    @Test
+    public void normalizeFallsBackToTheBrandNameAndSynonyms()
+    {
+        NormalizedMedication result =
+            this.normalizer.normalize(new Medication("Valproate", null, null, null, null, null, null));
+
+        Assert.assertEquals(VALPROIC_ACID, result.getDrugId());
+        Assert.assertNull(result.getDoseAmount());
+        Assert.assertNull(result.getDosesPerDay());
+        Assert.assertNull(result.getDailyDose());
+        Assert.assertFalse(result.toJSON().has("doseAmount"));
+    }
+
+    @Test
+    public void unknownDrugsAreNotIdentified()
+    {
+        NormalizedMedication result =
+            this.normalizer.normalize(new Medication("Herbal tea", null, "1 cup", "daily", null, null, null));
+
+        Assert.assertNull(result.getDrugId());
+        Assert.assertNull(result.getDrugName());
+        Assert.assertEquals("cup", result.getDoseUnit());
+        Assert.assertEquals(1, result.getDosesPerDay(), 1e-9);
+        Assert.assertFalse(result.toJSON().has("drug"));
+        Assert.assertNull(this.normalizer.normalize(null));
+    }
+
+    @Test
+    public void lookupsAreCached()
+    {
+        Assert.assertSame(this.valproicAcid, this.normalizer.getDrug("Valproate"));
+        Assert.assertSame(this.valproicAcid, this.normalizer.getDrug("valproate "));
+        Assert.assertNull(this.normalizer.getDrug("herbal tea"));
+        Assert.assertNull(this.normalizer.getDrug("Herbal Tea"));
+        Assert.assertNull(this.normalizer.getDrug(" "));
+
+        verify(this.chebi, times(1)).search(Collections.singletonMap("synonymExact", "valproate"));
+        verify(this.chebi, times(1)).search(Collections.singletonMap("nameExact", "herbal tea"));
+        verify(this.chebi, times(1)).search(Collections.singletonMap("synonymExact", "herbal tea"));
+    }
+}
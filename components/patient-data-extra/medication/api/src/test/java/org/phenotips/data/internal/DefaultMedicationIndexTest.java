@@ -0,0 +1,431 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.IndexedPatientData;
+import org.phenotips.data.Medication;
+import org.phenotips.data.MedicationIndex;
+import org.phenotips.data.MedicationNormalizer;
+import org.phenotips.data.NormalizedMedication;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.Period;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultMedicationIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultMedicationIndexTest
+{
+    private static final String VALPROIC_ACID = "CHEBI:39867";
+
+    private static final String LEVETIRACETAM = "CHEBI:6437";
+
+    private static final String ANTICONVULSANT = "CHEBI:35623";
+
+    private static final String SEIZURE = "HP:0001250";
+
+    private static final String HEART = "HP:0001627";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String GENERIC_NAME = "genericName";
+
+    @Rule
+    public MockitoComponentMockingRule<MedicationIndex> mocker =
+        new MockitoComponentMockingRule<>(DefaultMedicationIndex.class);
+
+    private MedicationIndex index;
+
+    private Query strings;
+
+    private Query numbers;
+
+    private Query phenotypes;
+
+    private Vocabulary chebi;
+
+    private Vocabulary hpo;
+
+    private MedicationNormalizer normalizer;
+
+    private List<Object[]> stringRows = new ArrayList<>();
+
+    private List<Object[]> phenotypeRows = new ArrayList<>();
+
+    private Map<String, VocabularyTerm> terms = new HashMap<>();
+
+    /** Lowercase drug name to drug term. */
+    private Map<String, VocabularyTerm> drugs = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.index = this.mocker.getComponentUnderTest();
+
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.getDataSpace()).thenReturn(new EntityReference("data", EntityType.SPACE));
+
+        QueryManager qm = this.mocker.getInstance(QueryManager.class);
+        this.strings = mock(Query.class);
+        this.numbers = mock(Query.class);
+        this.phenotypes = mock(Query.class);
+        when(qm.createQuery(contains("StringProperty"), eq(Query.HQL))).thenReturn(this.strings);
+        when(qm.createQuery(contains("IntegerProperty"), eq(Query.HQL))).thenReturn(this.numbers);
+        when(qm.createQuery(contains("DBStringListProperty"), eq(Query.HQL))).thenReturn(this.phenotypes);
+        when(this.strings.<Object[]>execute()).thenReturn(this.stringRows);
+        when(this.numbers.<Object[]>execute()).thenReturn(Arrays.asList(
+            new Object[] { "data.P1", 0, "durationYears", 1 }, new Object[] { "data.P1", 0, "durationMonths", 6 }));
+        when(this.phenotypes.<Object[]>execute()).thenReturn(this.phenotypeRows);
+
+        this.stringRows.add(new Object[] { "data.P1", 0, "name", "Depakene" });
+        this.stringRows.add(new Object[] { "data.P1", 0, GENERIC_NAME, "valproic acid" });
+        this.stringRows.add(new Object[] { "data.P1", 0, "dose", "250mg" });
+        this.stringRows.add(new Object[] { "data.P2", 0, GENERIC_NAME, "valproic acid" });
+        this.stringRows.add(new Object[] { "data.P3", 0, GENERIC_NAME, "levetiracetam" });
+        this.stringRows.add(new Object[] { "data.P4", 0, "name", "Herbal tea" });
+        this.stringRows.add(new Object[] { "data.P4", 1, GENERIC_NAME, "levetiracetam" });
+        this.phenotypeRows.add(new Object[] { "data.P1", SEIZURE });
+        this.phenotypeRows.add(new Object[] { "data.P2", HEART });
+        this.phenotypeRows.add(new Object[] { "data.P3", SEIZURE });
+        this.phenotypeRows.add(new Object[] { "data.P4", SEIZURE });
+        this.phenotypeRows.add(new Object[] { "data.P4", "Free text phenotype" });
+
+        VocabularyTerm anticonvulsant = term(ANTICONVULSANT);
+        this.drugs.put("valproic acid", term(VALPROIC_ACID, anticonvulsant));
+        this.drugs.put("valproate", this.drugs.get("valproic acid"));
+        this.drugs.put("levetiracetam", term(LEVETIRACETAM, anticonvulsant));
+        VocabularyTerm abnormality = term(ABNORMALITY);
+        term(SEIZURE, abnormality);
+        term(HEART, abnormality);
+        this.chebi = vocabulary("chebi");
+        this.hpo = vocabulary("hpo");
+
+        this.normalizer = this.mocker.getInstance(MedicationNormalizer.class);
+        when(this.normalizer.getDrug(anyString()))
+            .then(invocation -> this.drugs.get(((String) invocation.getArguments()[0]).toLowerCase(Locale.ROOT)));
+        when(this.normalizer.normalize(any(Medication.class))).then(invocation -> {
+            Medication medication = (Medication) invocation.getArguments()[0];
+            VocabularyTerm drug = this.drugs.get(String.valueOf(medication.getGenericName()));
+            return new NormalizedMedication(medication, drug == null ? null : drug.getId(), null,
+                DosingParser.parseDoseAmount(medication.getDose()), null, null);
+        });
+
+        User user = mock(User.class);
+        when(this.mocker.getInstance(UserManager.class).getCurrentUser()).thenReturn(user);
+        DocumentReferenceResolver<EntityReference> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentReferenceResolver.class, EntityReference.class), "current");
+        when(resolver.resolve(any(EntityReference.class))).then(invocation -> new DocumentReference("xwiki", "data",
+            ((EntityReference) invocation.getArguments()[0]).getName()));
+        AuthorizationService access = this.mocker.getInstance(AuthorizationService.class);
+        when(access.hasAccess(eq(user), eq(Right.VIEW), any(EntityReference.class))).thenReturn(true);
+        when(access.hasAccess(user, Right.VIEW, new DocumentReference("xwiki", "data", "P3"))).thenReturn(false);
+    }
+
+    @Test
+    public void findPatientsMatchesDrugNamesAndPhenotypes()
+    {
+        Assert.assertEquals(Collections.singletonList("P1"),
+            this.index.findPatients(Collections.singleton("Valproate"), Collections.singleton(SEIZURE)));
+        Assert.assertEquals(Arrays.asList("P1", "P2"),
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), null));
+        Assert.assertEquals(Collections.singletonList("P4"),
+            this.index.findPatients(Arrays.asList("levetiracetam", "herbal TEA"), Collections.singleton(SEIZURE)));
+    }
+
+    @Test
+    public void findPatientsMatchesDrugClassesAndPhenotypeAncestors()
+    {
+        Assert.assertEquals(Arrays.asList("P1", "P2", "P4"),
+            this.index.findPatients(Collections.singleton(ANTICONVULSANT), Collections.singleton(ABNORMALITY)));
+        Assert.assertEquals(Arrays.asList("P1", "P4"),
+            this.index.findPatients(Collections.singleton("chebi:35623"), Collections.singleton(SEIZURE)));
+    }
+
+    @Test
+    public void findPatientsOnlyReturnsAccessiblePatients()
+    {
+        Assert.assertEquals(Collections.singletonList("P4"),
+            this.index.findPatients(Collections.singleton(LEVETIRACETAM), null));
+    }
+
+    @Test
+    public void unmatchedCriteriaReturnNothing()
+    {
+        Assert.assertTrue(this.index.findPatients(Collections.singleton("aspirin"), null).isEmpty());
+        Assert.assertTrue(
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), Arrays.asList(SEIZURE, HEART)).isEmpty());
+    }
+
+    @Test
+    public void emptyQueriesDoNotLoadTheIndex() throws QueryException
+    {
+        Assert.assertTrue(this.index.findPatients(null, null).isEmpty());
+        Assert.assertTrue(this.index.findPatients(Collections.singleton(" "), Collections.emptySet()).isEmpty());
+        Assert.assertTrue(this.index.getMedications(null).isEmpty());
+        verify(this.strings, never()).execute();
+    }
+
+    @Test
+    public void indexIsLoadedOnlyOnce() throws QueryException
+    {
+        this.index.findPatients(Collections.singleton(VALPROIC_ACID), null);
+        this.index.findPatients(null, Collections.singleton(HEART));
+
+        verify(this.strings, times(1)).execute();
+        verify(this.numbers, times(1)).execute();
+        verify(this.phenotypes, times(1)).execute();
+        verify(this.strings).bindValue("medicationClass", "PhenoTips.MedicationDataClass");
+        verify(this.strings).bindValue("space", "data.%");
+        verify(this.phenotypes).bindValue("patientClass", "PhenoTips.PatientClass");
+        verify(this.phenotypes).bindValue("property", "phenotype");
+        // The stored terms are fetched at once, and free text is never looked up
+        verify(this.chebi, times(1)).getTerms(anyCollectionOf(String.class));
+        verify(this.hpo, times(1)).getTerms(anyCollectionOf(String.class));
+        verify(this.hpo, never()).getTerm(anyString());
+    }
+
+    @Test
+    public void getMedicationsReturnsTheStoredRecords()
+    {
+        List<NormalizedMedication> result = this.index.getMedications("P1");
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(VALPROIC_ACID, result.get(0).getDrugId());
+        Assert.assertEquals(250, result.get(0).getDoseAmount(), 1e-9);
+        Assert.assertEquals("Depakene", result.get(0).getMedication().getName());
+        Assert.assertEquals(new Period(1, 6, 0, 0, 0, 0, 0, 0), result.get(0).getMedication().getDuration());
+        Assert.assertEquals(2, this.index.getMedications("P4").size());
+        Assert.assertTrue(this.index.getMedications("P3").isEmpty());
+        Assert.assertTrue(this.index.getMedications("P5").isEmpty());
+    }
+
+    @Test
+    public void changesAreIgnoredBeforeTheIndexIsLoaded() throws QueryException
+    {
+        Patient patient = patient("P5", Collections.emptyList());
+        this.index.index(patient);
+        this.index.delete(patient);
+
+        verify(this.strings, never()).execute();
+        verify(patient, never()).getFeatures();
+    }
+
+    @Test
+    public void changesAreReflectedAfterTheIndexIsLoaded()
+    {
+        Assert.assertEquals(Arrays.asList("P1", "P2"),
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), null));
+
+        this.index.index(patient("P5", Collections.singletonList(
+            new Medication(null, "valproic acid", null, null, null, null, null)), feature(SEIZURE, true)));
+        this.index.index(patient("P1", Collections.emptyList(), feature(SEIZURE, true)));
+        Assert.assertEquals(Arrays.asList("P2", "P5"),
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), null));
+        Assert.assertTrue(this.index.getMedications("P1").isEmpty());
+        Assert.assertEquals(Arrays.asList("P1", "P4", "P5"),
+            this.index.findPatients(null, Collections.singleton(SEIZURE)));
+
+        this.index.delete(patient("P2", Collections.emptyList()));
+        this.index.delete(null);
+        Assert.assertEquals(Collections.singletonList("P5"),
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), null));
+    }
+
+    @Test
+    public void failedLoadsAreRetriedAfterAChange() throws QueryException
+    {
+        when(this.strings.execute()).thenThrow(new QueryException("failed", this.strings, null)).thenReturn(
+            Collections.<Object>unmodifiableList(this.stringRows));
+
+        Assert.assertTrue(this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).isEmpty());
+        // The failure is remembered, searching again doesn't reload everything
+        Assert.assertTrue(this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).isEmpty());
+        verify(this.strings, times(1)).execute();
+
+        this.index.delete(patient("P5", Collections.emptyList()));
+        Assert.assertEquals(2, this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).size());
+        verify(this.strings, times(2)).execute();
+    }
+
+    @Test
+    public void failedLoadsAreRetriedOnReindex() throws QueryException
+    {
+        when(this.strings.execute()).thenThrow(new QueryException("failed", this.strings, null)).thenReturn(
+            Collections.<Object>unmodifiableList(this.stringRows));
+
+        Assert.assertTrue(this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).isEmpty());
+        this.index.reindex();
+
+        Assert.assertEquals(2, this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).size());
+    }
+
+    @Test
+    public void changesMadeWhileLoadingAreNotLost() throws Exception
+    {
+        Patient patient = patient("P5", Collections.singletonList(
+            new Medication(null, "valproic acid", null, null, null, null, null)), feature(SEIZURE, true));
+        Thread[] writer = new Thread[1];
+        when(this.strings.execute()).then(invocation -> {
+            // The patient is saved while the stored medications are being read
+            writer[0] = new Thread(() -> this.index.index(patient));
+            writer[0].start();
+            while (writer[0].getState() != Thread.State.WAITING && writer[0].isAlive()) {
+                Thread.yield();
+            }
+            return this.stringRows;
+        });
+
+        this.index.findPatients(Collections.singleton(VALPROIC_ACID), null);
+        writer[0].join();
+
+        Assert.assertEquals(Arrays.asList("P1", "P2", "P5"),
+            this.index.findPatients(Collections.singleton(VALPROIC_ACID), null));
+    }
+
+    @Test
+    public void allTermsAreIndexedWhenTheVocabularyReturnsPartialResults()
+    {
+        VocabularyTerm anticonvulsant = this.terms.get(ANTICONVULSANT);
+        VocabularyTerm abnormality = this.terms.get(ABNORMALITY);
+        for (int i = 0; i < 1500; ++i) {
+            String drug = "drug " + i;
+            this.drugs.put(drug, term(String.format("CHEBI:1%06d", i), anticonvulsant));
+            String phenotype = String.format("HP:1%06d", i);
+            term(phenotype, abnormality);
+            this.stringRows.add(new Object[] { "data.Q" + i, 0, GENERIC_NAME, drug });
+            this.phenotypeRows.add(new Object[] { "data.Q" + i, phenotype });
+        }
+
+        // Each of the patients is found through the ancestors of terms that were not part of a partial response
+        Assert.assertEquals(1503,
+            this.index.findPatients(Collections.singleton(ANTICONVULSANT), Collections.singleton(ABNORMALITY)).size());
+        Assert.assertEquals(Collections.singletonList("Q1499"), this.index.findPatients(
+            Collections.singleton("CHEBI:1001499"), Collections.singleton("HP:1001499")));
+        Assert.assertTrue(this.index.findPatients(
+            Collections.singleton("CHEBI:1000000"), Collections.singleton("HP:1000001")).isEmpty());
+    }
+
+    @Test
+    public void reindexReloadsPatientsAndTerms() throws QueryException
+    {
+        this.index.findPatients(Collections.singleton(VALPROIC_ACID), null);
+        this.stringRows.add(new Object[] { "data.P5", 0, GENERIC_NAME, "valproic acid" });
+
+        this.index.reindex();
+
+        Assert.assertEquals(3, this.index.findPatients(Collections.singleton(VALPROIC_ACID), null).size());
+        verify(this.strings, times(2)).execute();
+        verify(this.chebi, times(2)).getTerms(anyCollectionOf(String.class));
+    }
+
+    private Vocabulary vocabulary(String hint) throws Exception
+    {
+        Vocabulary result = this.mocker.getInstance(Vocabulary.class, hint);
+        // Like an unpaginated Solr query, at most 10 of the requested terms are returned at once
+        when(result.getTerms(anyCollectionOf(String.class))).then(invocation -> {
+            Set<VocabularyTerm> found = new HashSet<>();
+            for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                if (found.size() < 10 && this.terms.containsKey(id)) {
+                    found.add(this.terms.get(id));
+                }
+            }
+            return found;
+        });
+        when(result.getTerm(anyString())).then(invocation -> this.terms.get(invocation.getArguments()[0]));
+        return result;
+    }
+
+    private VocabularyTerm term(String id, VocabularyTerm... parents)
+    {
+        VocabularyTerm term = mock(VocabularyTerm.class);
+        when(term.getId()).thenReturn(id);
+        Set<VocabularyTerm> closure = new HashSet<>();
+        closure.add(term);
+        for (VocabularyTerm parent : parents) {
+            closure.addAll(parent.getAncestorsAndSelf());
+        }
+        when(term.getAncestorsAndSelf()).thenReturn(closure);
+        this.terms.put(id, term);
+        return term;
+    }
+
+    private Feature feature(String id, boolean present)
+    {
+        Feature feature = mock(Feature.class);
+        when(feature.getId()).thenReturn(id);
+        when(feature.isPresent()).thenReturn(present);
+        return feature;
+    }
+
+    private Patient patient(String id, List<Medication> medications, Feature... features)
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.getId()).thenReturn(id);
+        doReturn(new HashSet<>(Arrays.asList(features))).when(patient).getFeatures();
+        doReturn(medications.isEmpty() ? null : new IndexedPatientData<>("medication", medications)).when(patient)
+            .getData("medication");
+        return patient;
+    }
+}
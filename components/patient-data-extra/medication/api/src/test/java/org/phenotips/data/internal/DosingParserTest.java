@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DosingParser} class.
+ *
+ * @version $Id$
+ */
+public class DosingParserTest
+{
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void doseAmountAndUnitAreParsed()
+    {
+        Assert.assertEquals(250, DosingParser.parseDoseAmount("250mg"), DELTA);
+        Assert.assertEquals("mg", DosingParser.parseDoseUnit("250mg"));
+        Assert.assertEquals(2.5, DosingParser.parseDoseAmount(" 2,5 ml "), DELTA);
+        Assert.assertEquals("ml", DosingParser.parseDoseUnit(" 2,5 ml "));
+        Assert.assertEquals(10, DosingParser.parseDoseAmount("10 mg/kg"), DELTA);
+        Assert.assertEquals("mg/kg", DosingParser.parseDoseUnit("10 mg/kg"));
+        Assert.assertEquals(1, DosingParser.parseDoseAmount("1"), DELTA);
+        Assert.assertNull(DosingParser.parseDoseUnit("1"));
+    }
+
+    @Test
+    public void unparseableDosesAreUnknown()
+    {
+        Assert.assertNull(DosingParser.parseDoseAmount(null));
+        Assert.assertNull(DosingParser.parseDoseAmount(""));
+        Assert.assertNull(DosingParser.parseDoseAmount("one tablet"));
+        Assert.assertNull(DosingParser.parseDoseUnit("one tablet"));
+    }
+
+    @Test
+    public void intervalsAreParsed()
+    {
+        Assert.assertEquals(3, DosingParser.parseDosesPerDay("8h"), DELTA);
+        Assert.assertEquals(2, DosingParser.parseDosesPerDay("q12h"), DELTA);
+        Assert.assertEquals(4, DosingParser.parseDosesPerDay("every 6 hours"), DELTA);
+        Assert.assertEquals(0.5, DosingParser.parseDosesPerDay("2d"), DELTA);
+        Assert.assertEquals(0.5, DosingParser.parseDosesPerDay("every 2 days"), DELTA);
+        Assert.assertEquals(1.0 / 14, DosingParser.parseDosesPerDay("every 2 weeks"), DELTA);
+    }
+
+    @Test
+    public void repetitionsAreParsed()
+    {
+        Assert.assertEquals(3, DosingParser.parseDosesPerDay("3 times a day"), DELTA);
+        Assert.assertEquals(3, DosingParser.parseDosesPerDay("3x/day"), DELTA);
+        Assert.assertEquals(2, DosingParser.parseDosesPerDay("2x daily"), DELTA);
+        Assert.assertEquals(1, DosingParser.parseDosesPerDay("1/day"), DELTA);
+        Assert.assertEquals(3.0 / 7, DosingParser.parseDosesPerDay("3 per week"), DELTA);
+    }
+
+    @Test
+    public void abbreviationsAreParsed()
+    {
+        Assert.assertEquals(1, DosingParser.parseDosesPerDay("Daily"), DELTA);
+        Assert.assertEquals(2, DosingParser.parseDosesPerDay("BID"), DELTA);
+        Assert.assertEquals(2, DosingParser.parseDosesPerDay("b.i.d."), DELTA);
+        Assert.assertEquals(3, DosingParser.parseDosesPerDay("tid"), DELTA);
+        Assert.assertEquals(4, DosingParser.parseDosesPerDay("four times a day"), DELTA);
+        Assert.assertEquals(1.0 / 7, DosingParser.parseDosesPerDay("once a week"), DELTA);
+    }
+
+    @Test
+    public void unparseableFrequenciesAreUnknown()
+    {
+        Assert.assertNull(DosingParser.parseDosesPerDay(null));
+        Assert.assertNull(DosingParser.parseDosesPerDay(" "));
+        Assert.assertNull(DosingParser.parseDosesPerDay("as needed"));
+        Assert.assertNull(DosingParser.parseDosesPerDay("q0h"));
+    }
+}
@@ -23,6 +23,8 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.json.JSONObject;
@@ -92,6 +94,62 @@ PushServerSendPatientResponse sendPatient(Patient patient, Set<String> exportFie
         String groupName, String remoteGUID, String remoteServerIdentifier, String userName, String password,
         String user_token);
 
+    /**
+     * Same as {@link #sendPatient}, but when updating a remote patient, only sends the sections of the patient data
+     * which changed since the previous push, as identified by the content hashes recorded by that push. The remote
+     * server leaves the sections which are not sent untouched. The content hashes of the sections pushed now are
+     * available in the response, through {@link PushServerSendPatientResponse#getPushedContentHashes()}.
+     *
+     * @param patient local patient to be pushed to the remote server
+     * @param exportFields patient fields to be pushed. All other fields will be omitted.
+     * @param patientState JSON containing different categories of patient state, such as granted consents
+     * @param groupName group name (optional, can be {@code null})
+     * @param remoteGUID the GUID of the remote patient to update; if {@code null}, a new remote patient is created with
+     *            all the data
+     * @param previousContentHashes the content hashes recorded by the previous push of this patient to the same remote
+     *            patient; if {@code null}, all the data is pushed
+     * @param remoteServerIdentifier server name as configured in TODO
+     * @param userName user name on the remote server
+     * @param password user password on the remote server. Ignored if user_token is not null.
+     * @param userToken passwordless-login token provided by the remote server on the last successful login (optional,
+     *            can be {@code null})
+     * @return Server response, see {@link #sendPatient}
+     * @since 1.5M1
+     */
+    PushServerSendPatientResponse sendPatientChanges(Patient patient, Set<String> exportFields,
+        JSONObject patientState, String groupName, String remoteGUID, JSONObject previousContentHashes,
+        String remoteServerIdentifier, String userName, String password, String userToken);
+
+    /**
+     * Submits the specified subset of patient data for several patients to the specified remote server, in a single
+     * request if the remote server supports it, or one patient at a time otherwise. Each patient is handled the same
+     * way {@link #sendPatient} does.
+     *
+     * @param patients local patients to be pushed to the remote server
+     * @param exportFields patient fields to be pushed. All other fields will be omitted.
+     * @param patientStates JSON containing different categories of patient state, such as granted consents, keyed by
+     *            the local patient identifier; patients without a state get an empty one
+     * @param remoteGUIDs the GUIDs of the remote patients to update, keyed by the local patient identifier; patients
+     *            without a GUID are created as new remote patients
+     * @param previousContentHashes if not {@code null}, only the changed sections of the patient data are pushed to
+     *            existing remote patients, as done by {@link #sendPatientChanges}, using these content hashes recorded
+     *            by previous pushes, keyed by the local patient identifier
+     * @param groupName group name (optional, can be {@code null})
+     * @param remoteServerIdentifier server name as configured in TODO
+     * @param userName user name on the remote server
+     * @param password user password on the remote server. Ignored if user_token is not null.
+     * @param userToken passwordless-login token provided by the remote server on the last successful login (optional,
+     *            can be {@code null})
+     * @return the server responses for each patient, in the same order as the patients were given; an item will be
+     *         {@code null} if no response was received for the corresponding patient (e.g. a wrong server IP, a
+     *         network problem, etc.)
+     * @since 1.5M1
+     */
+    List<PushServerSendPatientResponse> sendPatients(List<Patient> patients, Set<String> exportFields,
+        Map<String, JSONObject> patientStates, Map<String, String> remoteGUIDs,
+        Map<String, JSONObject> previousContentHashes, String groupName, String remoteServerIdentifier,
+        String userName, String password, String userToken);
+
     /**
      * Gets the remote patient ID and URL for viewing the remote patient.
      * <p>
@@ -21,6 +21,7 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -151,6 +152,29 @@ PushServerSendPatientResponse sendPatient(String patientID, String exportFieldLi
     PushServerSendPatientResponse sendPatient(String patientID, String exportFieldListJSON, String patientState,
         String groupName, String remoteGUID, String remoteServerIdentifier);
 
+    /**
+     * Submits the specified subset of patient data for several patients to the specified remote server, using the
+     * previously stored remote user name and login token to authenticate on the remote server. If the remote server
+     * supports it, all the patients are pushed in a single request.
+     * <p>
+     * Patients which were previously pushed to the same remote server update the remote patient created by the last
+     * push, all the other patients create new remote patients.
+     * </p>
+     *
+     * @param patientIDs local patients to be pushed to the remote server
+     * @param exportFieldListJSON patient fields to be pushed, as a string representing a JSON array, see
+     *            {@link #sendPatient(String, String, String, String, String, String)}
+     * @param patientState a JSON encoded as a {@link String}, containing (meta) information about the state of the
+     *            patients' records, the same for all patients
+     * @param groupName group name (optional, can be {@code null})
+     * @param remoteServerIdentifier server name as configured in TODO
+     * @return the server responses, keyed by local patient identifier, in the same order as the requested patients;
+     *         a response is {@code null} if no response was received from the server for that patient
+     * @since 1.5M1
+     */
+    Map<String, PushServerSendPatientResponse> sendPatients(List<String> patientIDs, String exportFieldListJSON,
+        String patientState, String groupName, String remoteServerIdentifier);
+
     /**
      * @param remoteServerIdentifier
      * @param remotePatientGUID
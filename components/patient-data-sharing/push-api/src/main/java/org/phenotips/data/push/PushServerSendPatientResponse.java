@@ -21,6 +21,8 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import org.json.JSONObject;
+
 /**
  * API that allows pushing patient data to a remote PhenoTips instance.
  *
@@ -61,4 +63,15 @@ public interface PushServerSendPatientResponse extends PushServerGetPatientIDRes
      *         push.
      */
     boolean isActionFailed_MissingConsent();
+
+    /**
+     * The content hashes of the patient data sections which were pushed, to be recorded for the next push of the same
+     * patient, so that only the changed sections are pushed again. This is computed by the client, it is not part of
+     * the server's response.
+     *
+     * @return a JSON object holding the hash of each patient data section, keyed by the name of the data controller,
+     *         or {@code null} if changes were not tracked or the push failed
+     * @since 1.5M1
+     */
+    JSONObject getPushedContentHashes();
 }
@@ -19,6 +19,7 @@
 
 import org.phenotips.Constants;
 import org.phenotips.data.Patient;
+import org.phenotips.data.PatientDataController;
 import org.phenotips.data.internal.controller.VersionsController;
 import org.phenotips.data.push.PushPatientData;
 import org.phenotips.data.push.PushServerConfigurationResponse;
@@ -28,29 +29,45 @@
 import org.phenotips.data.shareprotocol.ShareProtocol.Incompatibility;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.model.reference.DocumentReference;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
@@ -93,6 +110,9 @@ public class DefaultPushPatientData implements PushPatientData
 
     private static final String XWIKI_RAW_OUTPUT_VALUE = "plain";
 
+    /** Buffer size used when streaming batch pushes. */
+    private static final int BATCH_BUFFER_SIZE = 8192;
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -100,6 +120,11 @@ public class DefaultPushPatientData implements PushPatientData
     @Inject
     private Provider<XWikiContext> xcontextProvider;
 
+    /** Used for looking up the patient data controllers, needed for tracking which parts of a patient changed. */
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManager;
+
     /** HTTP client used for communicating with the remote server. */
     private final CloseableHttpClient client = HttpClients.createSystem();
 
@@ -272,6 +297,23 @@ public PushServerSendPatientResponse sendPatient(Patient patient, Set<String> ex
         JSONObject patientState,
         String groupName, String remoteGUID, String remoteServerIdentifier, String userName, String password,
         String userToken)
+    {
+        return sendPatient(patient, exportFields, patientState, groupName, remoteGUID, remoteServerIdentifier,
+            userName, password, userToken, false, null);
+    }
+
+    @Override
+    public PushServerSendPatientResponse sendPatientChanges(Patient patient, Set<String> exportFields,
+        JSONObject patientState, String groupName, String remoteGUID, JSONObject previousContentHashes,
+        String remoteServerIdentifier, String userName, String password, String userToken)
+    {
+        return sendPatient(patient, exportFields, patientState, groupName, remoteGUID, remoteServerIdentifier,
+            userName, password, userToken, true, previousContentHashes);
+    }
+
+    private PushServerSendPatientResponse sendPatient(Patient patient, Set<String> exportFields,
+        JSONObject patientState, String groupName, String remoteGUID, String remoteServerIdentifier, String userName,
+        String password, String userToken, boolean trackChanges, JSONObject previousContentHashes)
     {
         this.logger.info("Pushing data to server: [{}]", remoteServerIdentifier);
 
@@ -283,33 +325,11 @@ public PushServerSendPatientResponse sendPatient(Patient patient, Set<String> ex
             List<NameValuePair> data =
                 generateRequestData(ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH, userName, password, userToken,
                     serverProtocolVersion);
-            if (exportFields != null) {
-                // Version information is required in the JSON; when exportFields is null everything is included anyway
-                exportFields.add(VersionsController.getEnablingFieldName());
-            }
-
-            // for compatibility with servers running older versions of PhenoTips:
-            //
-            // if the target server is known to support only old versions of push protocol, replace
-            // those fields which are not compatible with compatible alternatives (to trigger old serializers)
-            if (this.protocolVersionsCache.containsKey(remoteServerIdentifier)) {
-                if (ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.containsKey(serverProtocolVersion)) {
-                    this.logger.warn("Using old serializers for protocol version [{}] to push data to server [{}]",
-                        serverProtocolVersion, remoteServerIdentifier);
-                    List<ShareProtocol.Incompatibility> incompatibilitiesList =
-                        ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.get(serverProtocolVersion);
-                    for (Incompatibility incompat : incompatibilitiesList) {
-                        if (exportFields.contains(incompat.getCurrentFieldName())) {
-                            exportFields.remove(incompat.getCurrentFieldName());
-                            if (!StringUtils.isEmpty(incompat.getDeprecatedFieldName())) {
-                                exportFields.add(incompat.getDeprecatedFieldName());
-                            }
-                        }
-                    }
-                }
-            }
+            adjustExportFields(exportFields, remoteServerIdentifier, serverProtocolVersion);
 
-            String patientJSON = patient.toJSON(exportFields).toString();
+            PatientPushDelta delta = trackChanges ? computeDelta(patient, exportFields, remoteGUID,
+                previousContentHashes) : null;
+            String patientJSON = (delta != null ? delta.getData() : patient.toJSON(exportFields)).toString();
             this.logger.debug("Sending patient JSON: [{}]", patientJSON);
 
             data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
@@ -337,7 +357,11 @@ public PushServerSendPatientResponse sendPatient(Patient patient, Set<String> ex
                 this.logger.trace("RESPONSE FROM SERVER: {}", response);
                 JSONObject responseJSON = new JSONObject(response);
 
-                return new DefaultPushServerSendPatientResponse(responseJSON);
+                DefaultPushServerSendPatientResponse result = new DefaultPushServerSendPatientResponse(responseJSON);
+                if (delta != null && result.isSuccessful()) {
+                    result.setPushedContentHashes(delta.getHashes());
+                }
+                return result;
             }
         } catch (Exception ex) {
             this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
@@ -349,6 +373,254 @@ public PushServerSendPatientResponse sendPatient(Patient patient, Set<String> ex
         return null;
     }
 
+    @Override
+    public List<PushServerSendPatientResponse> sendPatients(List<Patient> patients, Set<String> exportFields,
+        Map<String, JSONObject> patientStates, Map<String, String> remoteGUIDs,
+        Map<String, JSONObject> previousContentHashes, String groupName, String remoteServerIdentifier,
+        String userName, String password, String userToken)
+    {
+        List<PushServerSendPatientResponse> result = null;
+        String serverProtocolVersion = this.getProtocolVersionForPushingToServer(remoteServerIdentifier);
+        if (ShareProtocol.BATCH_PUSH_PROTOCOL_VERSIONS.contains(serverProtocolVersion)) {
+            result = sendPatientsBatch(patients, exportFields, patientStates, remoteGUIDs, previousContentHashes,
+                groupName, remoteServerIdentifier, userName, password, userToken, serverProtocolVersion);
+        }
+        if (result == null) {
+            // The remote server doesn't know how to receive batches, push patients one by one
+            this.logger.debug("Pushing [{}] patients one by one to server [{}]", patients.size(),
+                remoteServerIdentifier);
+            result = new ArrayList<>(patients.size());
+            for (Patient patient : patients) {
+                String patientId = patient.getId();
+                result.add(sendPatient(patient, exportFields == null ? null : new HashSet<>(exportFields),
+                    getPatientState(patientStates, patientId), groupName, getRemoteGUID(remoteGUIDs, patientId),
+                    remoteServerIdentifier, userName, password, userToken, previousContentHashes != null,
+                    previousContentHashes == null ? null : previousContentHashes.get(patientId)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Pushes all the patients in a single request, streaming them as gzip-compressed NDJSON, one patient at a time.
+     *
+     * @return the list of responses for each patient, or {@code null} if the remote server does not support batch
+     *         pushes and the patients must be pushed one by one
+     */
+    private List<PushServerSendPatientResponse> sendPatientsBatch(List<Patient> patients, Set<String> exportFields,
+        Map<String, JSONObject> patientStates, Map<String, String> remoteGUIDs,
+        Map<String, JSONObject> previousContentHashes, String groupName, String remoteServerIdentifier,
+        String userName, String password, String userToken, String serverProtocolVersion)
+    {
+        this.logger.info("Pushing a batch of [{}] patients to server: [{}]", patients.size(), remoteServerIdentifier);
+
+        HttpPost method = null;
+
+        try {
+            Set<String> fields = exportFields == null ? null : new HashSet<>(exportFields);
+            adjustExportFields(fields, remoteServerIdentifier, serverProtocolVersion);
+
+            JSONObject header = new JSONObject();
+            header.put(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME, userName);
+            if (StringUtils.isNotBlank(userToken)) {
+                header.put(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN, userToken);
+            } else {
+                header.put(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD, password);
+            }
+            header.putOpt(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME, groupName);
+
+            method = generateBatchRequest(remoteServerIdentifier, serverProtocolVersion);
+            if (method == null) {
+                return Collections.nCopies(patients.size(), null);
+            }
+            // Filled in while the request is being sent, if changes are tracked
+            Map<String, JSONObject> pushedContentHashes = new HashMap<>();
+            method.setEntity(generateBatchEntity(header, patients, fields, patientStates, remoteGUIDs,
+                previousContentHashes, pushedContentHashes));
+
+            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
+                int returnCode = httpResponse.getStatusLine().getStatusCode();
+                this.logger.trace("Batch push HTTP return code: {}", returnCode);
+
+                String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
+                this.logger.trace("RESPONSE FROM SERVER: {}", response);
+                JSONObject responseJSON = new JSONObject(response);
+
+                List<PushServerSendPatientResponse> result = parseBatchResponse(responseJSON, patients.size());
+                if (result != null && previousContentHashes != null) {
+                    for (int i = 0; i < patients.size(); ++i) {
+                        PushServerSendPatientResponse patientResponse = result.get(i);
+                        if (patientResponse.isSuccessful()) {
+                            ((DefaultPushServerSendPatientResponse) patientResponse)
+                                .setPushedContentHashes(pushedContentHashes.get(patients.get(i).getId()));
+                        }
+                    }
+                }
+                return result;
+            }
+        } catch (Exception ex) {
+            this.logger.error("Failed to push patients: {}", ex.getMessage(), ex);
+        } finally {
+            if (method != null) {
+                method.releaseConnection();
+            }
+        }
+        return Collections.nCopies(patients.size(), null);
+    }
+
+    private HttpPost generateBatchRequest(String remoteServerIdentifier, String protocolVersion)
+    {
+        BaseObject serverConfiguration = this.getPushServerConfiguration(remoteServerIdentifier);
+
+        String submitURL = getBaseURL(serverConfiguration);
+        if (submitURL == null) {
+            return null;
+        }
+
+        // The request body is not a form, so the parameters needed for dispatching the request go in the URL
+        List<NameValuePair> parameters = new LinkedList<>();
+        parameters.add(new BasicNameValuePair(XWIKI_RAW_OUTPUT_KEY, XWIKI_RAW_OUTPUT_VALUE));
+        parameters.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER, protocolVersion));
+        parameters.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_ACTION,
+            ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH_BATCH));
+        submitURL = submitURL + '?' + URLEncodedUtils.format(parameters, Consts.UTF_8);
+
+        this.logger.trace("POST URL: {}", submitURL);
+
+        return new HttpPost(submitURL);
+    }
+
+    /**
+     * Creates a request body which serializes patients only while being sent, so that only one patient JSON is kept in
+     * memory at any time, no matter how many patients are pushed.
+     */
+    private HttpEntity generateBatchEntity(final JSONObject header, final List<Patient> patients,
+        final Set<String> exportFields, final Map<String, JSONObject> patientStates,
+        final Map<String, String> remoteGUIDs, final Map<String, JSONObject> previousContentHashes,
+        final Map<String, JSONObject> pushedContentHashes)
+    {
+        EntityTemplate entity = new EntityTemplate(output -> {
+            GZIPOutputStream compressed = new GZIPOutputStream(output, BATCH_BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(compressed, Consts.UTF_8), BATCH_BUFFER_SIZE);
+            writeBatchLine(writer, header);
+            for (Patient patient : patients) {
+                String patientId = patient.getId();
+                String remoteGUID = getRemoteGUID(remoteGUIDs, patientId);
+                JSONObject patientJSON;
+                if (previousContentHashes != null) {
+                    PatientPushDelta delta = computeDelta(patient, exportFields, remoteGUID,
+                        previousContentHashes.get(patientId));
+                    pushedContentHashes.put(patientId, delta.getHashes());
+                    patientJSON = delta.getData();
+                } else {
+                    patientJSON = patient.toJSON(exportFields);
+                }
+                JSONObject line = new JSONObject();
+                line.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON, patientJSON);
+                line.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE, getPatientState(patientStates, patientId));
+                line.putOpt(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, remoteGUID);
+                writeBatchLine(writer, line);
+            }
+            writer.flush();
+            // The underlying stream belongs to the HTTP connection, just write the gzip trailer without closing it
+            compressed.finish();
+        });
+        entity.setContentType(ContentType.create(ShareProtocol.CLIENT_BATCH_CONTENT_TYPE, Consts.UTF_8).toString());
+        entity.setContentEncoding(ShareProtocol.CLIENT_BATCH_CONTENT_ENCODING);
+        entity.setChunked(true);
+        return entity;
+    }
+
+    private void writeBatchLine(Writer writer, JSONObject line) throws IOException
+    {
+        line.write(writer);
+        writer.write('\n');
+    }
+
+    private List<PushServerSendPatientResponse> parseBatchResponse(JSONObject responseJSON, int patientCount)
+    {
+        DefaultPushServerSendPatientResponse response = new DefaultPushServerSendPatientResponse(responseJSON);
+        if (!response.isSuccessful()
+            && (response.isActionFailed_isUnknownAction() || response.isServerDoesNotAcceptClientProtocolVersion())) {
+            this.logger.info("Remote server does not support batch pushes, falling back to single patient pushes");
+            return null;
+        }
+        List<PushServerSendPatientResponse> result = new ArrayList<>(patientCount);
+        JSONArray results = responseJSON.optJSONArray(ShareProtocol.SERVER_JSON_PUSH_BATCH_KEY_NAME_RESULTS);
+        for (int i = 0; i < patientCount; ++i) {
+            JSONObject patientResponse = results == null ? null : results.optJSONObject(i);
+            // If the whole batch failed, for example because of a failed login, the same error applies to all patients
+            result.add(patientResponse == null ? response
+                : new DefaultPushServerSendPatientResponse(patientResponse));
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the fields which the remote server can't read with compatible alternatives, and adds the version
+     * information required in the pushed JSON.
+     *
+     * @param exportFields the fields to export, will be modified; if {@code null}, everything is exported anyway
+     * @param remoteServerIdentifier the target server
+     * @param serverProtocolVersion the protocol version used for talking to the target server
+     */
+    private void adjustExportFields(Set<String> exportFields, String remoteServerIdentifier,
+        String serverProtocolVersion)
+    {
+        if (exportFields == null) {
+            return;
+        }
+        // Version information is required in the JSON; when exportFields is null everything is included anyway
+        exportFields.add(VersionsController.getEnablingFieldName());
+
+        // for compatibility with servers running older versions of PhenoTips:
+        //
+        // if the target server is known to support only old versions of push protocol, replace
+        // those fields which are not compatible with compatible alternatives (to trigger old serializers)
+        if (this.protocolVersionsCache.containsKey(remoteServerIdentifier)
+            && ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.containsKey(serverProtocolVersion)) {
+            this.logger.warn("Using old serializers for protocol version [{}] to push data to server [{}]",
+                serverProtocolVersion, remoteServerIdentifier);
+            List<ShareProtocol.Incompatibility> incompatibilitiesList =
+                ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.get(serverProtocolVersion);
+            for (Incompatibility incompat : incompatibilitiesList) {
+                if (exportFields.contains(incompat.getCurrentFieldName())) {
+                    exportFields.remove(incompat.getCurrentFieldName());
+                    if (!StringUtils.isEmpty(incompat.getDeprecatedFieldName())) {
+                        exportFields.add(incompat.getDeprecatedFieldName());
+                    }
+                }
+            }
+        }
+    }
+
+    private PatientPushDelta computeDelta(Patient patient, Set<String> exportFields, String remoteGUID,
+        JSONObject previousContentHashes)
+    {
+        try {
+            List<PatientDataController<?>> controllers =
+                this.componentManager.get().getInstanceList(PatientDataController.class);
+            // A new remote patient always needs all the data
+            return PatientPushDelta.compute(patient, exportFields, controllers,
+                remoteGUID == null ? null : previousContentHashes);
+        } catch (ComponentLookupException ex) {
+            this.logger.warn("Failed to look up patient data controllers, pushing all data: {}", ex.getMessage());
+            return PatientPushDelta.compute(patient, exportFields, Collections.<PatientDataController<?>>emptyList(),
+                null);
+        }
+    }
+
+    private JSONObject getPatientState(Map<String, JSONObject> patientStates, String patientId)
+    {
+        JSONObject state = patientStates == null ? null : patientStates.get(patientId);
+        return state == null ? new JSONObject() : state;
+    }
+
+    private String getRemoteGUID(Map<String, String> remoteGUIDs, String patientId)
+    {
+        return remoteGUIDs == null ? null : remoteGUIDs.get(patientId);
+    }
+
     @Override
     public PushServerGetPatientIDResponse getPatientURL(String remoteServerIdentifier, String remoteGUID,
         String userName, String password, String userToken)
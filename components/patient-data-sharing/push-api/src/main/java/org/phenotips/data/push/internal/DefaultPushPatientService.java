@@ -38,7 +38,10 @@
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.UserManager;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +53,7 @@
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
@@ -317,15 +321,107 @@ public PushServerSendPatientResponse sendPatient(String patientID, String export
         Set<String> exportFields = parseJSONArrayIntoSet(exportFieldListJSON);
         JSONObject patientStateJSON = this.parsePatientStateToJSON(patientState);
 
-        PushServerSendPatientResponse response = this.internalService.sendPatient(patient, exportFields,
-            patientStateJSON, groupName, remoteGUID, remoteServerIdentifier, storedData.getRemoteUserName(), null,
-            storedData.getLoginToken());
+        PushServerSendPatientResponse response = this.internalService.sendPatientChanges(patient, exportFields,
+            patientStateJSON, groupName, remoteGUID,
+            getPreviousContentHashes(patient.getId(), remoteServerIdentifier, remoteGUID), remoteServerIdentifier,
+            storedData.getRemoteUserName(), null, storedData.getLoginToken());
+
+        storePushInfo(patient, remoteServerIdentifier, response);
+        return response;
+    }
+
+    @Override
+    public Map<String, PushServerSendPatientResponse> sendPatients(List<String> patientIDs,
+        String exportFieldListJSON, String patientState, String groupName, String remoteServerIdentifier)
+    {
+        Map<String, PushServerSendPatientResponse> result = new LinkedHashMap<>();
+        RemoteLoginData storedData = getStoredData(remoteServerIdentifier);
+        if (storedData == null || storedData.getRemoteUserName() == null || storedData.getLoginToken() == null) {
+            for (String patientID : patientIDs) {
+                result.put(patientID, new DefaultPushServerSendPatientResponse(
+                    DefaultPushServerResponse.generateIncorrectCredentialsJSON()));
+            }
+            return result;
+        }
+
+        List<Patient> patients = new ArrayList<>(patientIDs.size());
+        Map<String, JSONObject> patientStates = new HashMap<>();
+        Map<String, String> remoteGUIDs = new HashMap<>();
+        Map<String, JSONObject> previousContentHashes = new HashMap<>();
+        JSONObject patientStateJSON = this.parsePatientStateToJSON(patientState);
+        for (String patientID : patientIDs) {
+            Patient patient = getPatientByID(patientID, "push");
+            if (patient == null) {
+                result.put(patientID,
+                    new DefaultPushServerSendPatientResponse(DefaultPushServerResponse.generateActionFailedJSON()));
+                continue;
+            }
+            // Reserve the slot to keep the requested order
+            result.put(patient.getId(), null);
+            patients.add(patient);
+            patientStates.put(patient.getId(), patientStateJSON);
+            PatientPushedToInfo pushInfo =
+                this.storageManager.getPatientPushInfo(patient.getId(), remoteServerIdentifier);
+            if (pushInfo != null && pushInfo.getRemotePatientGUID() != null) {
+                remoteGUIDs.put(patient.getId(), pushInfo.getRemotePatientGUID());
+                previousContentHashes.put(patient.getId(), parseContentHashes(pushInfo.getPushedContentHashes()));
+            }
+        }
+        if (patients.isEmpty()) {
+            return result;
+        }
+
+        List<PushServerSendPatientResponse> responses = this.internalService.sendPatients(patients,
+            parseJSONArrayIntoSet(exportFieldListJSON), patientStates, remoteGUIDs, previousContentHashes, groupName,
+            remoteServerIdentifier, storedData.getRemoteUserName(), null, storedData.getLoginToken());
+
+        for (int i = 0; i < patients.size(); ++i) {
+            Patient patient = patients.get(i);
+            PushServerSendPatientResponse response = responses.get(i);
+            result.put(patient.getId(), response);
+            storePushInfo(patient, remoteServerIdentifier, response);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the content hashes recorded by the last push of the given patient, if it was pushed to the same remote
+     * patient, so that only the data that changed since is pushed again.
+     */
+    private JSONObject getPreviousContentHashes(String localPatientID, String remoteServerIdentifier,
+        String remoteGUID)
+    {
+        if (remoteGUID == null) {
+            return null;
+        }
+        PatientPushedToInfo pushInfo = this.storageManager.getPatientPushInfo(localPatientID, remoteServerIdentifier);
+        if (pushInfo == null || !remoteGUID.equals(pushInfo.getRemotePatientGUID())) {
+            return null;
+        }
+        return parseContentHashes(pushInfo.getPushedContentHashes());
+    }
+
+    private JSONObject parseContentHashes(String contentHashes)
+    {
+        if (contentHashes == null) {
+            return null;
+        }
+        try {
+            return new JSONObject(contentHashes);
+        } catch (JSONException ex) {
+            this.logger.warn("Invalid stored content hashes, pushing all data: {}", ex.getMessage());
+            return null;
+        }
+    }
 
+    private void storePushInfo(Patient patient, String remoteServerIdentifier, PushServerSendPatientResponse response)
+    {
         if (response != null && response.isSuccessful()) {
+            JSONObject contentHashes = response.getPushedContentHashes();
             this.storageManager.storePatientPushInfo(patient.getId(), remoteServerIdentifier,
-                response.getRemotePatientGUID(), response.getRemotePatientID(), response.getRemotePatientURL());
+                response.getRemotePatientGUID(), response.getRemotePatientID(), response.getRemotePatientURL(),
+                contentHashes == null ? null : contentHashes.toString());
         }
-        return response;
     }
 
     @Override
@@ -340,13 +436,12 @@ public PushServerSendPatientResponse sendPatient(String patientID, String export
         Set<String> exportFields = parseJSONArrayIntoSet(exportFieldListJSON);
         JSONObject patientStateJSON = this.parsePatientStateToJSON(patientState);
 
-        PushServerSendPatientResponse response = this.internalService.sendPatient(patient, exportFields,
-            patientStateJSON, groupName, remoteGUID, remoteServerIdentifier, remoteUserName, password, null);
+        PushServerSendPatientResponse response = this.internalService.sendPatientChanges(patient, exportFields,
+            patientStateJSON, groupName, remoteGUID,
+            getPreviousContentHashes(patient.getId(), remoteServerIdentifier, remoteGUID), remoteServerIdentifier,
+            remoteUserName, password, null);
 
-        if (response != null && response.isSuccessful()) {
-            this.storageManager.storePatientPushInfo(patient.getId(), remoteServerIdentifier,
-                response.getRemotePatientGUID(), response.getRemotePatientID(), response.getRemotePatientURL());
-        }
+        storePushInfo(patient, remoteServerIdentifier, response);
 
         return response;
     }
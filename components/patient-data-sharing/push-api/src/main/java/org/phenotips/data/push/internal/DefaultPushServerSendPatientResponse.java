@@ -25,11 +25,24 @@
 public class DefaultPushServerSendPatientResponse extends DefaultPushServerGetPatientIDResponse implements
     PushServerSendPatientResponse
 {
+    private JSONObject pushedContentHashes;
+
     DefaultPushServerSendPatientResponse(JSONObject serverResponse)
     {
         super(serverResponse);
     }
 
+    void setPushedContentHashes(JSONObject pushedContentHashes)
+    {
+        this.pushedContentHashes = pushedContentHashes;
+    }
+
+    @Override
+    public JSONObject getPushedContentHashes()
+    {
+        return this.pushedContentHashes;
+    }
+
     @Override
     public boolean isActionFailed_incorrectGroup()
     {
@@ -0,0 +1,268 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.push.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientDataController;
+import org.phenotips.data.internal.controller.VersionsController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The part of a patient's data which must be pushed to a remote server in order to update the copy created by a
+ * previous push. The data is split in sections, one for each {@link PatientDataController data controller}, and a
+ * content hash is computed for each section; only the sections whose hash differs from the one recorded by the
+ * previous push are included, while the receiver leaves the missing sections untouched, since it updates patients
+ * using the {@link org.phenotips.data.PatientWritePolicy#UPDATE} policy.
+ * <p>
+ * Since several controllers may write into the same JSON property, a changed section is pushed by sending the complete
+ * values of all the JSON properties the controller writes to, so that the other controllers sharing those properties
+ * don't lose data on the receiving side. The version information is always sent.
+ * </p>
+ * <p>
+ * Since missing properties are left untouched by the receiver, properties which were pushed before but are no longer
+ * written, for example because all the data of a section was deleted, are sent with an explicit empty value. For this,
+ * the record of each pushed section holds, along with its hash, an empty value for each of its properties.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class PatientPushDelta
+{
+    private static final String ID_KEY = "id";
+
+    private static final String REPORTER_KEY = "reporter";
+
+    private static final String REFERRER_KEY = "referrer";
+
+    private static final String HASH_KEY = "hash";
+
+    private static final String EMPTY_VALUES_KEY = "empty";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final JSONObject data;
+
+    private final JSONObject hashes;
+
+    private PatientPushDelta(JSONObject data, JSONObject hashes)
+    {
+        this.data = data;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Computes the data that must be pushed.
+     *
+     * @param patient the patient being pushed
+     * @param exportFields the fields to push, {@code null} for all fields
+     * @param controllers all the available data controllers
+     * @param previousHashes the section hashes recorded by the previous push of this patient to the same remote
+     *            patient, as returned by {@link #getHashes()}, or {@code null} if all the data must be pushed
+     * @return the computed delta
+     */
+    static PatientPushDelta compute(Patient patient, Collection<String> exportFields,
+        Collection<PatientDataController<?>> controllers, JSONObject previousHashes)
+    {
+        if (controllers.isEmpty()) {
+            // Nothing to split the data by, everything is pushed
+            return new PatientPushDelta(patient.toJSON(exportFields), new JSONObject());
+        }
+
+        // The full JSON is assembled from the sections, just like Patient#toJSON would, instead of serializing twice
+        JSONObject full = new JSONObject();
+        if (isFieldIncluded(exportFields, ID_KEY)) {
+            full.put(ID_KEY, patient.getId());
+        }
+        if (patient.getReporter() != null
+            && (isFieldIncluded(exportFields, REPORTER_KEY) || isFieldIncluded(exportFields, REFERRER_KEY))) {
+            full.put(REPORTER_KEY, patient.getReporter().getName());
+        }
+
+        JSONObject hashes = new JSONObject();
+        Set<String> changedKeys = new HashSet<>();
+        JSONObject clearedKeys = new JSONObject();
+        for (PatientDataController<?> controller : controllers) {
+            JSONObject section = new JSONObject();
+            controller.writeJSON(patient, section, exportFields);
+            JSONObject previous = previousHashes == null ? null : previousHashes.optJSONObject(controller.getName());
+            if (section.length() > 0) {
+                String hash = hash(section);
+                hashes.put(controller.getName(),
+                    new JSONObject().put(HASH_KEY, hash).put(EMPTY_VALUES_KEY, getEmptyValues(section)));
+                merge(section, full);
+                if (previous != null && hash.equals(previous.optString(HASH_KEY, null))
+                    && !VersionsController.getEnablingFieldName().equals(controller.getName())) {
+                    continue;
+                }
+                changedKeys.addAll(section.keySet());
+            }
+            // The properties pushed before but no longer written must be explicitly cleared on the receiving side
+            JSONObject previousEmptyValues = previous == null ? null : previous.optJSONObject(EMPTY_VALUES_KEY);
+            if (previousEmptyValues != null) {
+                for (String key : previousEmptyValues.keySet()) {
+                    if (!section.has(key)) {
+                        clearedKeys.put(key, previousEmptyValues.get(key));
+                    }
+                }
+            }
+        }
+
+        if (previousHashes == null) {
+            return new PatientPushDelta(full, hashes);
+        }
+        JSONObject delta = new JSONObject();
+        delta.putOpt(ID_KEY, full.opt(ID_KEY));
+        for (String key : changedKeys) {
+            delta.putOpt(key, full.opt(key));
+        }
+        for (String key : clearedKeys.keySet()) {
+            // Another controller may still write into a shared property, in which case its value is sent instead
+            if (!delta.has(key)) {
+                delta.put(key, full.has(key) ? full.get(key) : clearedKeys.get(key));
+            }
+        }
+        return new PatientPushDelta(delta, hashes);
+    }
+
+    /**
+     * The patient JSON to push.
+     *
+     * @return a JSON in the format generated by {@link Patient#toJSON()}, possibly missing some of the properties
+     */
+    JSONObject getData()
+    {
+        return this.data;
+    }
+
+    /**
+     * The hashes of all the pushed sections, including the ones which didn't change and weren't sent, to be used as
+     * the {@code previousHashes} for the next push.
+     *
+     * @return a JSON object holding the record of each section, keyed by the name of the data controller, with the
+     *         hash of the section and an empty value for each of its properties
+     */
+    JSONObject getHashes()
+    {
+        return this.hashes;
+    }
+
+    private static boolean isFieldIncluded(Collection<String> selectedFields, String fieldName)
+    {
+        return (selectedFields == null || selectedFields.contains(fieldName));
+    }
+
+    /**
+     * Copies the properties of a section into the full patient JSON, combining the objects written by several
+     * controllers into the same property, as they would have been if written directly into the same JSON.
+     */
+    private static void merge(JSONObject section, JSONObject target)
+    {
+        for (String key : section.keySet()) {
+            Object value = section.get(key);
+            if (value instanceof JSONObject) {
+                JSONObject existing = target.optJSONObject(key);
+                if (existing == null) {
+                    existing = new JSONObject();
+                    target.put(key, existing);
+                }
+                merge((JSONObject) value, existing);
+            } else {
+                target.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Lists the properties of a section, each with an empty value of the same type, which can be sent to clear that
+     * property on the receiving side.
+     */
+    private static JSONObject getEmptyValues(JSONObject section)
+    {
+        JSONObject result = new JSONObject();
+        for (String key : section.keySet()) {
+            Object value = section.get(key);
+            if (value instanceof JSONArray) {
+                result.put(key, new JSONArray());
+            } else if (value instanceof JSONObject) {
+                result.put(key, new JSONObject());
+            } else if (value instanceof String) {
+                result.put(key, "");
+            } else {
+                result.put(key, JSONObject.NULL);
+            }
+        }
+        return result;
+    }
+
+    private static String hash(JSONObject section)
+    {
+        StringBuilder canonical = new StringBuilder();
+        writeCanonical(section, canonical);
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            return Base64.getEncoder()
+                .encodeToString(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Serializes a JSON value with the keys of objects in sorted order, since the order of keys in a {@link JSONObject}
+     * is unspecified and the same data must always produce the same hash.
+     */
+    private static void writeCanonical(Object value, StringBuilder out)
+    {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>(object.keySet());
+            Collections.sort(keys);
+            out.append('{');
+            for (String key : keys) {
+                out.append(JSONObject.quote(key)).append(':');
+                writeCanonical(object.opt(key), out);
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            out.append('[');
+            for (Object item : (JSONArray) value) {
+                writeCanonical(item, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else {
+            out.append(JSONObject.valueToString(value));
+        }
+    }
+}
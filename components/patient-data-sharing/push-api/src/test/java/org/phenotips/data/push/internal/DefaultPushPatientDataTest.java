@@ -18,7 +18,9 @@
 package org.phenotips.data.push.internal;
 
 import org.phenotips.Constants;
+import org.phenotips.data.Patient;
 import org.phenotips.data.push.PushPatientData;
+import org.phenotips.data.push.PushServerSendPatientResponse;
 import org.phenotips.data.shareprotocol.ShareProtocol;
 
 import org.xwiki.component.manager.ComponentLookupException;
@@ -26,11 +28,18 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import javax.inject.Provider;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
@@ -41,6 +50,7 @@
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.message.BasicStatusLine;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -196,4 +206,85 @@ public void getRemoteConfigurationReturnsNullWhenServerConfiguredWithBlankBaseUR
             this.mocker.getComponentUnderTest().getRemoteConfiguration("RemoteServer1", "name", "pass", ""));
         Mockito.verify(this.client, Mockito.never()).execute(Matchers.any(HttpPost.class));
     }
+
+    @Test
+    public void sendPatientsStreamsAllPatientsInOneCompressedRequest()
+        throws ComponentLookupException, ClientProtocolException, IOException
+    {
+        when(this.response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(this.response.getEntity()).thenReturn(new ByteArrayEntity(("{\"success\":true,"
+            + "\"response_protocol_version\":\"1.5\",\"results\":[{\"success\":true,\"patient_guid\":\"g1\"},"
+            + "{\"success\":true,\"patient_guid\":\"g2\"}]}").getBytes()));
+        Patient p1 = mockPatient("P0000001");
+        Patient p2 = mockPatient("P0000002");
+
+        List<PushServerSendPatientResponse> responses = this.mocker.getComponentUnderTest().sendPatients(
+            Arrays.asList(p1, p2), null, null, Collections.singletonMap("P0000002", "g2"), null, "group",
+            "RemoteServer1", "name", "pass", "token");
+
+        Mockito.verify(this.client).execute(Matchers.any(HttpPost.class));
+        HttpPost request = this.post.getValue();
+        List<NameValuePair> parameters = URLEncodedUtils.parse(request.getURI(), "UTF-8");
+        Assert.assertTrue(parameters.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_ACTION,
+            ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH_BATCH)));
+        Assert.assertTrue(parameters.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER,
+            ShareProtocol.CURRENT_PUSH_PROTOCOL_VERSION)));
+        Assert.assertEquals(ShareProtocol.CLIENT_BATCH_CONTENT_ENCODING,
+            request.getEntity().getContentEncoding().getValue());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        request.getEntity().writeTo(body);
+        List<String> lines = IOUtils.readLines(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())),
+            StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        JSONObject header = new JSONObject(lines.get(0));
+        Assert.assertEquals("name", header.getString(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME));
+        Assert.assertEquals("token", header.getString(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN));
+        Assert.assertFalse(header.has(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD));
+        Assert.assertEquals("group", header.getString(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME));
+        JSONObject first = new JSONObject(lines.get(1));
+        Assert.assertEquals("P0000001", first.getJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON)
+            .getString("id"));
+        Assert.assertFalse(first.has(ShareProtocol.CLIENT_POST_KEY_NAME_GUID));
+        JSONObject second = new JSONObject(lines.get(2));
+        Assert.assertEquals("g2", second.getString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID));
+
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals("g1", responses.get(0).getRemotePatientGUID());
+        Assert.assertEquals("g2", responses.get(1).getRemotePatientGUID());
+    }
+
+    @Test
+    public void sendPatientsFallsBackToSinglePushesWhenBatchesAreNotSupported()
+        throws ComponentLookupException, ClientProtocolException, IOException
+    {
+        when(this.response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(this.response.getEntity()).thenReturn(
+            new ByteArrayEntity(("{\"success\":false,\"response_protocol_version\":\"1.5\","
+                + "\"action_failed\":true,\"unsupported_action\":true}").getBytes()),
+            new ByteArrayEntity("{\"success\":true,\"patient_guid\":\"g1\"}".getBytes()),
+            new ByteArrayEntity("{\"success\":true,\"patient_guid\":\"g2\"}".getBytes()));
+        Patient p1 = mockPatient("P0000001");
+        Patient p2 = mockPatient("P0000002");
+
+        List<PushServerSendPatientResponse> responses = this.mocker.getComponentUnderTest().sendPatients(
+            Arrays.asList(p1, p2), null, null, null, null, null, "RemoteServer1", "name", "pass", null);
+
+        Mockito.verify(this.client, Mockito.times(3)).execute(Matchers.any(HttpPost.class));
+        HttpPost request = this.post.getAllValues().get(1);
+        List<NameValuePair> requestData = URLEncodedUtils.parse(request.getEntity());
+        Assert.assertTrue(requestData.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_ACTION,
+            ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH)));
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals("g1", responses.get(0).getRemotePatientGUID());
+        Assert.assertEquals("g2", responses.get(1).getRemotePatientGUID());
+    }
+
+    private Patient mockPatient(String id)
+    {
+        Patient patient = Mockito.mock(Patient.class);
+        when(patient.getId()).thenReturn(id);
+        when(patient.toJSON(null)).thenReturn(new JSONObject().put("id", id));
+        return patient;
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.push.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientDataController;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientPushDelta}.
+ *
+ * @version $Id$
+ */
+public class PatientPushDeltaTest
+{
+    @Mock
+    private Patient patient;
+
+    @Mock
+    private PatientDataController<String> sexController;
+
+    @Mock
+    private PatientDataController<String> featuresController;
+
+    @Mock
+    private PatientDataController<String> versionsController;
+
+    private JSONObject data;
+
+    private List<PatientDataController<?>> controllers;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+
+        this.data = new JSONObject();
+        this.data.put("id", "P0000001");
+        this.data.put("sex", "M");
+        this.data.put("features", new JSONArray().put("HP:0000001"));
+        this.data.put("nonstandard_features", new JSONArray());
+        this.data.put("meta", new JSONObject().put("phenotips_version", "1.5"));
+        when(this.patient.getId()).thenReturn("P0000001");
+
+        mockController(this.sexController, "sex", "sex");
+        mockController(this.featuresController, "features", "features", "nonstandard_features");
+        mockController(this.versionsController, "versions", "meta");
+        this.controllers = Arrays.asList(this.sexController, this.featuresController, this.versionsController);
+    }
+
+    @Test
+    public void everythingIsSentWithoutPreviousHashes()
+    {
+        PatientPushDelta delta = PatientPushDelta.compute(this.patient, null, this.controllers, null);
+        Assert.assertTrue(this.data.similar(delta.getData()));
+        Assert.assertEquals(3, delta.getHashes().length());
+    }
+
+    @Test
+    public void onlyChangedSectionsAreSent()
+    {
+        JSONObject previousHashes = PatientPushDelta.compute(this.patient, null, this.controllers, null).getHashes();
+
+        this.data.put("features", new JSONArray().put("HP:0000001").put("HP:0000002"));
+        PatientPushDelta delta = PatientPushDelta.compute(this.patient, null, this.controllers, previousHashes);
+
+        JSONObject sent = delta.getData();
+        Assert.assertEquals("P0000001", sent.getString("id"));
+        Assert.assertFalse(sent.has("sex"));
+        Assert.assertEquals(2, sent.getJSONArray("features").length());
+        // all the properties of a changed controller are sent
+        Assert.assertTrue(sent.has("nonstandard_features"));
+        // version information is always sent
+        Assert.assertTrue(sent.has("meta"));
+        Assert.assertTrue(previousHashes.getJSONObject("sex").similar(delta.getHashes().getJSONObject("sex")));
+        Assert.assertNotEquals(previousHashes.getJSONObject("features").getString("hash"),
+            delta.getHashes().getJSONObject("features").getString("hash"));
+    }
+
+    @Test
+    public void deletedSectionsAreExplicitlyCleared()
+    {
+        JSONObject previousHashes = PatientPushDelta.compute(this.patient, null, this.controllers, null).getHashes();
+
+        this.data.remove("sex");
+        this.data.remove("features");
+        this.data.remove("nonstandard_features");
+        PatientPushDelta delta = PatientPushDelta.compute(this.patient, null, this.controllers, previousHashes);
+
+        JSONObject sent = delta.getData();
+        Assert.assertEquals("", sent.getString("sex"));
+        Assert.assertEquals(0, sent.getJSONArray("features").length());
+        Assert.assertEquals(0, sent.getJSONArray("nonstandard_features").length());
+        Assert.assertFalse(delta.getHashes().has("sex"));
+        Assert.assertFalse(delta.getHashes().has("features"));
+
+        // Once cleared, they are no longer sent
+        delta = PatientPushDelta.compute(this.patient, null, this.controllers, delta.getHashes());
+        Assert.assertFalse(delta.getData().has("sex"));
+        Assert.assertFalse(delta.getData().has("features"));
+    }
+
+    @Test
+    public void propertiesNoLongerWrittenByAChangedSectionAreCleared()
+    {
+        JSONObject previousHashes = PatientPushDelta.compute(this.patient, null, this.controllers, null).getHashes();
+
+        this.data.remove("nonstandard_features");
+        PatientPushDelta delta = PatientPushDelta.compute(this.patient, null, this.controllers, previousHashes);
+
+        JSONObject sent = delta.getData();
+        Assert.assertEquals(1, sent.getJSONArray("features").length());
+        Assert.assertEquals(0, sent.getJSONArray("nonstandard_features").length());
+    }
+
+    @Test
+    public void thePatientIsSerializedOnlyOnce()
+    {
+        PatientPushDelta.compute(this.patient, null, this.controllers, null);
+
+        verify(this.patient, never()).toJSON(Matchers.<Collection<String>>any());
+        verify(this.sexController, times(1)).writeJSON(Matchers.same(this.patient), Matchers.any(JSONObject.class),
+            Matchers.<Collection<String>>any());
+    }
+
+    @Test
+    public void hashesDoNotDependOnKeyOrder()
+    {
+        JSONObject previousHashes = PatientPushDelta.compute(this.patient, null, this.controllers, null).getHashes();
+
+        JSONObject reordered = new JSONObject();
+        reordered.put("meta", this.data.get("meta"));
+        reordered.put("nonstandard_features", this.data.get("nonstandard_features"));
+        reordered.put("features", this.data.get("features"));
+        reordered.put("sex", this.data.get("sex"));
+        reordered.put("id", this.data.get("id"));
+        this.data = reordered;
+
+        PatientPushDelta delta = PatientPushDelta.compute(this.patient, null, this.controllers, previousHashes);
+        Assert.assertTrue(previousHashes.similar(delta.getHashes()));
+        Assert.assertFalse(delta.getData().has("sex"));
+        Assert.assertFalse(delta.getData().has("features"));
+    }
+
+    private void mockController(PatientDataController<String> controller, String name, final String... keys)
+    {
+        when(controller.getName()).thenReturn(name);
+        doAnswer(invocation -> {
+            JSONObject json = (JSONObject) invocation.getArguments()[1];
+            for (String key : keys) {
+                json.putOpt(key, this.data.opt(key));
+            }
+            return null;
+        }).when(controller).writeJSON(Matchers.same(this.patient), Matchers.any(JSONObject.class),
+            Matchers.<Collection<String>>any());
+    }
+}
@@ -116,6 +116,23 @@
      */
     JSONObject receivePatient();
 
+    /**
+     * Receives data for several patients at once, and either updates existing patients or creates new patients. The
+     * request body is a (possibly gzip-compressed) stream of newline-delimited JSON objects, as described in
+     * {@link org.phenotips.data.shareprotocol.ShareProtocol}: the first one holds the login parameters, and each of the
+     * following ones describes a patient. Patients are imported one by one, while the request is being read.
+     * <p>
+     * The login is validated the same way {@code getConfiguration()} does, and the same {@code JSONObject} is returned
+     * in case of any problems. Otherwise, each patient is handled just like {@link #receivePatient()} does, and the
+     * response has the {@code success} key set to {@code true} and a {@code results} list holding, for each patient in
+     * the request, the response that {@link #receivePatient()} would have returned for it.
+     *
+     * @return {@code JSONObject} with {@code success} set to {@code true} if the batch was read, and the responses for
+     *         each patient, or with {@code success} set to {@code false} if the whole batch was rejected
+     * @since 1.5M1
+     */
+    JSONObject receivePatients();
+
     /**
      * Returns the URL of the patient object with the given GUID. Requires a valid username and credentials to be
      * supplied in the request, which are validated the same way {@code getConfiguration()} does, and returns the same
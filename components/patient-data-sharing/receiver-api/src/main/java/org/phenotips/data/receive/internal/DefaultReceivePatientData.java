@@ -23,6 +23,7 @@
 import org.phenotips.consents.ConsentManager;
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientWritePolicy;
 import org.phenotips.data.internal.PhenoTipsPatient;
 import org.phenotips.data.permissions.EntityPermissionsManager;
 import org.phenotips.data.receive.ReceivePatientData;
@@ -45,13 +46,20 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -94,6 +102,8 @@ public class DefaultReceivePatientData implements ReceivePatientData
 
     private final static String SERVER_CONFIG_USER_TOKEN_EXPIRE_PROPERTY_NAME = "user_token_life_in_days";
 
+    private final static String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
     /** used for secure user login token generation */
     private SecureRandom secureRandomGenerator = new SecureRandom();
 
@@ -392,24 +402,41 @@ protected boolean userTokensEnabled(BaseObject serverConfig)
      *         otherwise
      */
     protected JSONObject validateLogin(XWikiRequest request, XWikiContext context)
+    {
+        return validateLogin(request::getParameter, request, context);
+    }
+
+    /**
+     * Same as {@link #validateLogin(XWikiRequest, XWikiContext)}, but reads the login parameters from the given source
+     * instead of the request parameters.
+     *
+     * @param parameters provides the values of the login parameters, given their name
+     * @param request the current request, used for identifying the source server
+     * @param context the current context
+     * @return {@code null} iff user name and user credentials are valid, a JSON object containing error description
+     *         otherwise
+     * @since 1.5M1
+     */
+    protected JSONObject validateLogin(Function<String, String> parameters, XWikiRequest request,
+        XWikiContext context)
     {
         try {
-            String clientVersion = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER);
+            String clientVersion = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER);
             if (!isCompatibleVersion(clientVersion)) {
                 this.logger.error("Rejecting push request by {} - incompatible push protocol version",
                     request.getRemoteAddr());
                 return generateIncompatibleVersionResponse();
             }
 
-            String userName = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME);
-            String token = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN);
+            String userName = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME);
+            String token = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN);
 
             if (userName == null) {
                 return generateFailedCredentialsResponse();
             }
 
             if (token == null) {
-                String password = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD);
+                String password = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD);
 
                 if (context.getWiki().getAuthService().authenticate(userName, password, context) == null) {
                     return generateFailedCredentialsResponse();
@@ -479,90 +506,196 @@ public JSONObject receivePatient()
             String patientStateRaw = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE);
             if (patientStateRaw != null) {
                 consentIds = extractConsents(patientStateRaw);
-                // there should not be any consent updates if consents are not enabled
-                if (!consentIds.isEmpty() && !this.consentAuthorizer.consentsGloballyEnabled()) {
-                    // reject, as a non-malicious user would never arrive to this execution point
-                    return this.generateFailedActionResponse();
-                }
-            }
-
-            boolean requireConsents =
-                areConsentsRequired(request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER));
-            if (requireConsents) {
-                boolean consentAuthorized = this.consentAuthorizer.authorizeInteraction(consentIds);
-                if (!consentAuthorized) {
-                    this.logger.error("Rejecting patient data from {} - not all required consents have been given",
-                        request.getRemoteAddr());
-                    return this.generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MISSINGCONSENT);
-                }
             }
 
             String patientJSON = URLDecoder.decode(patientJSONRaw, XWiki.DEFAULT_ENCODING);
             this.logger.debug("Received patient JSON: [{}]", patientJSON);
 
-            Patient affectedPatient;
+            return importPatient(new JSONObject(patientJSON), consentIds,
+                request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_GUID), userName, groupName,
+                request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER), request, context);
+        } catch (Exception ex) {
+            this.logger.error("Error importing patient [{}] {}", ex.getMessage(), ex);
+            return this.generateFailedActionResponse();
+        }
+    }
 
-            // if GUID is present in the request attempt to update an existing patient
-            // (or fail if GUID is invalid or the patient is not created/authored by the user)
-            String guid = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_GUID);
-            User user = this.userManager.getUser(userName);
-            context.setUserReference(user.getProfileDocument());
+    @Override
+    public JSONObject receivePatients()
+    {
+        XWikiContext context = getXContext();
+        XWikiRequest request = context.getRequest();
 
-            if (guid != null) {
-                affectedPatient = getPatientByGUID(guid);
-                if (affectedPatient == null) {
-                    return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGUID);
-                }
-                if (!userCanAccessPatient(userName, affectedPatient)) {
-                    return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_GUIDACCESSDENIED);
-                }
-                this.logger.warn("Loaded existing patient [{}] successfully", affectedPatient.getId());
-            } else {
+        this.logger.warn("Push patient batch request from remote [{}]", request.getRemoteAddr());
 
-                affectedPatient = this.patientRepository.create(user.getProfileDocument());
-                if (affectedPatient == null) {
-                    this.logger.error("Can not create new patient");
-                    return generateFailedActionResponse();
-                }
+        try (BufferedReader reader = getBatchReader(request)) {
+            // The first line holds the login parameters, common to all patients
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                this.logger.error("No login data provided by {}", request.getRemoteAddr());
+                return generateFailedCredentialsResponse();
+            }
+            JSONObject header = new JSONObject(headerLine);
+            // The protocol version is sent in the URL, since it is needed before the body can be read
+            Function<String, String> parameters = name -> header.has(name) ? header.optString(name, null)
+                : request.getParameter(name);
 
-                XWikiDocument doc = affectedPatient.getXDocument();
-                doc.setAuthorReference(user.getProfileDocument());
-
-                // assign ownership to group (if provided) or to the user, and set access rights
-                if (groupName != null) {
-                    Group group = this.groupManager.getGroup(groupName);
-                    this.permissionManager.getEntityAccess(affectedPatient).setOwner(group.getReference());
-                    this.permissionManager.getEntityAccess(affectedPatient).addCollaborator(user.getProfileDocument(),
-                        this.permissionManager.resolveAccessLevel("manage"));
-                } else {
-                    this.permissionManager.getEntityAccess(affectedPatient).setOwner(user.getProfileDocument());
-                }
+            JSONObject loginError = validateLogin(parameters, request, context);
+            if (loginError != null) {
+                return loginError;
+            }
 
-                this.logger.warn("Created new patient successfully");
+            String userName = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME);
+            String groupName = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME);
+            if (groupName != null && !isValidUserGroup(userName, groupName)) {
+                this.logger.warn("Incorrect group name provided by {}", request.getRemoteAddr());
+                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGROUP);
             }
+            String clientVersion = parameters.apply(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER);
+
+            // Patients are imported one at a time, as soon as they are read, so that only one patient is kept in memory
+            JSONArray results = new JSONArray();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                results.put(receiveBatchPatient(line, userName, groupName, clientVersion, request, context));
+            }
+            this.logger.warn("Processed a batch of [{}] patients", results.length());
 
-            JSONObject patientData = new JSONObject(patientJSON);
-            affectedPatient.updateFromJSON(patientData);
+            JSONObject response = generateSuccessfulResponse();
+            response.put(ShareProtocol.SERVER_JSON_PUSH_BATCH_KEY_NAME_RESULTS, results);
+            return response;
+        } catch (Exception ex) {
+            this.logger.error("Error importing patient batch [{}] {}", ex.getMessage(), ex);
+            return this.generateFailedActionResponse();
+        }
+    }
 
-            if (consentIds != null) {
-                this.consentManager.setPatientConsents(affectedPatient, consentIds);
-            }
+    private BufferedReader getBatchReader(XWikiRequest request) throws IOException
+    {
+        InputStream input = request.getInputStream();
+        if (ShareProtocol.CLIENT_BATCH_CONTENT_ENCODING.equalsIgnoreCase(request.getHeader(CONTENT_ENCODING_HEADER))) {
+            input = new GZIPInputStream(input);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
 
-            this.logger.warn("Updated patient successfully");
+    private JSONObject receiveBatchPatient(String line, String userName, String groupName, String clientVersion,
+        XWikiRequest request, XWikiContext context)
+    {
+        try {
+            JSONObject record = new JSONObject(line);
+            JSONObject patientData = record.optJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON);
+            if (patientData == null) {
+                this.logger.error("No patient data provided by {})", request.getRemoteAddr());
+                return generateFailedActionResponse();
+            }
+            JSONObject patientState = record.optJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE);
+            Set<String> consentIds = patientState == null ? null : extractConsents(patientState);
 
-            // store separately from the patient object
-            BaseObject serverConfig = getSourceServerConfiguration(request.getRemoteAddr(), context);
-            String sourceServerName = getRemoteServerName(serverConfig, request);
-            String patientGUID = getPatientGUID(affectedPatient);
-            this.storageManager.storePatientSourceServerInfo(patientGUID, sourceServerName);
+            String guid = record.optString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, null);
 
-            return generateSuccessfulResponseWithPatientIDs(affectedPatient, context);
+            return importPatient(patientData, consentIds, guid, userName, groupName, clientVersion, request, context);
         } catch (Exception ex) {
             this.logger.error("Error importing patient [{}] {}", ex.getMessage(), ex);
             return this.generateFailedActionResponse();
         }
     }
 
+    /**
+     * Creates or updates a patient with data received from a remote server, after the login and the group were
+     * validated.
+     *
+     * @param patientData the received patient data
+     * @param consentIds the consents granted for the patient, {@code null} if no patient state was received
+     * @param guid the GUID of the patient to update, or {@code null} if a new patient must be created
+     * @param userName the name of the user pushing the patient
+     * @param groupName the name of the group which will own a new patient, may be {@code null}
+     * @param clientVersion the protocol version used by the client
+     * @param request the current request
+     * @param context the current context
+     * @return the response for this patient
+     * @throws Exception if importing the patient fails
+     */
+    private JSONObject importPatient(JSONObject patientData, Set<String> consentIds, String guid, String userName,
+        String groupName, String clientVersion, XWikiRequest request, XWikiContext context) throws Exception
+    {
+        // there should not be any consent updates if consents are not enabled
+        if (consentIds != null && !consentIds.isEmpty() && !this.consentAuthorizer.consentsGloballyEnabled()) {
+            // reject, as a non-malicious user would never arrive to this execution point
+            return this.generateFailedActionResponse();
+        }
+
+        boolean requireConsents = areConsentsRequired(clientVersion);
+        if (requireConsents) {
+            boolean consentAuthorized = this.consentAuthorizer.authorizeInteraction(consentIds);
+            if (!consentAuthorized) {
+                this.logger.error("Rejecting patient data from {} - not all required consents have been given",
+                    request.getRemoteAddr());
+                return this.generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MISSINGCONSENT);
+            }
+        }
+
+        Patient affectedPatient;
+
+        // if GUID is present in the request attempt to update an existing patient
+        // (or fail if GUID is invalid or the patient is not created/authored by the user)
+        User user = this.userManager.getUser(userName);
+        context.setUserReference(user.getProfileDocument());
+
+        if (guid != null) {
+            affectedPatient = getPatientByGUID(guid);
+            if (affectedPatient == null) {
+                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGUID);
+            }
+            if (!userCanAccessPatient(userName, affectedPatient)) {
+                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_GUIDACCESSDENIED);
+            }
+            this.logger.warn("Loaded existing patient [{}] successfully", affectedPatient.getId());
+        } else {
+
+            affectedPatient = this.patientRepository.create(user.getProfileDocument());
+            if (affectedPatient == null) {
+                this.logger.error("Can not create new patient");
+                return generateFailedActionResponse();
+            }
+
+            XWikiDocument doc = affectedPatient.getXDocument();
+            doc.setAuthorReference(user.getProfileDocument());
+
+            // assign ownership to group (if provided) or to the user, and set access rights
+            if (groupName != null) {
+                Group group = this.groupManager.getGroup(groupName);
+                this.permissionManager.getEntityAccess(affectedPatient).setOwner(group.getReference());
+                this.permissionManager.getEntityAccess(affectedPatient).addCollaborator(user.getProfileDocument(),
+                    this.permissionManager.resolveAccessLevel("manage"));
+            } else {
+                this.permissionManager.getEntityAccess(affectedPatient).setOwner(user.getProfileDocument());
+            }
+
+            this.logger.warn("Created new patient successfully");
+        }
+
+        // Only the received sections are replaced, clients may push just the data that changed since the last push
+        affectedPatient.updateFromJSON(patientData, PatientWritePolicy.UPDATE);
+
+        if (consentIds != null) {
+            this.consentManager.setPatientConsents(affectedPatient, consentIds);
+        }
+
+        this.logger.warn("Updated patient successfully");
+
+        // store separately from the patient object
+        BaseObject serverConfig = getSourceServerConfiguration(request.getRemoteAddr(), context);
+        String sourceServerName = getRemoteServerName(serverConfig, request);
+        String patientGUID = getPatientGUID(affectedPatient);
+        this.storageManager.storePatientSourceServerInfo(patientGUID, sourceServerName);
+
+        return generateSuccessfulResponseWithPatientIDs(affectedPatient, context);
+    }
+
     private boolean areConsentsRequired(String clientProtocolVersion)
     {
         if (!ShareProtocol.ALLOW_NO_CONSENTS_PROTOCOL_VERSIONS.contains(clientProtocolVersion)) {
@@ -583,9 +716,18 @@ private boolean areConsentsRequired(String clientProtocolVersion)
      * @param rawPatientState patient state JSON string directly from the {@link Request} object
      */
     private Set<String> extractConsents(String rawPatientState)
+    {
+        return extractConsents(this.patientStateToJson(rawPatientState));
+    }
+
+    /**
+     * Exctacts the list of granted consents from a parsed patient state.
+     *
+     * @param patientState patient state JSON, may be {@code null}
+     */
+    private Set<String> extractConsents(JSONObject patientState)
     {
         Set<String> consents = new HashSet<>();
-        JSONObject patientState = this.patientStateToJson(rawPatientState);
         if (patientState != null) {
             try {
                 JSONArray consentsJson =
@@ -56,6 +56,10 @@
 
     private String remotePatientGUID; // supposedly never changes; nullable: in case remote server does not provide a GUID
 
+    @Column(length = 8192)
+    private String pushedContentHashes; // JSON with the content hash of each patient data section as of last push;
+    // nullable: unknown for old pushes, in which case the next push must send all the data
+
     /** Default constructor used by Hibernate. */
     protected PatientPushedToInfo()
     {
@@ -126,4 +130,27 @@ public void setRemotePatientURL(String remotePatientURL)
     {
         this.remotePatientURL = remotePatientURL;
     }
+
+    /**
+     * The content hashes of the patient data sections sent by the last push, used for only pushing the sections that
+     * changed since.
+     *
+     * @return a JSON object serialized as a string, holding the hash of each patient data section keyed by the name of
+     *         the data controller, or {@code null} if unknown
+     * @since 1.5M1
+     */
+    public String getPushedContentHashes()
+    {
+        return this.pushedContentHashes;
+    }
+
+    /**
+     * @param pushedContentHashes the content hashes of the patient data sections sent by the last push, see
+     *            {@link #getPushedContentHashes()}
+     * @since 1.5M1
+     */
+    public void setPushedContentHashes(String pushedContentHashes)
+    {
+        this.pushedContentHashes = pushedContentHashes;
+    }
 }
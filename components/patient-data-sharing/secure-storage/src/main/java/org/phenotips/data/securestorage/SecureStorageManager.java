@@ -49,9 +49,14 @@
     // null if local
     PatientSourceServerInfo getPatientSourceServerInfo(String patientGUID);
 
+    // forgets the content hashes of previous pushes, so the next push will send all the data
     void storePatientPushInfo(String localPatientID, String remoteServerName,
         String remotePatientGUID, String remotePatientID, String remotePatientURL);
 
+    // pushedContentHashes: see PatientPushedToInfo.getPushedContentHashes(), may be null
+    void storePatientPushInfo(String localPatientID, String remoteServerName,
+        String remotePatientGUID, String remotePatientID, String remotePatientURL, String pushedContentHashes);
+
     void deletePatientPushInfo(String localPatientID);
 
     // null if never pushed to the given server
@@ -262,6 +262,14 @@ public PatientSourceServerInfo getPatientSourceServerInfo(String patientGUID)
     @Override
     public void storePatientPushInfo(String localPatientID, String remoteServerName,
         String remotePatientGUID, String remotePatientID, String remotePatientURL)
+    {
+        storePatientPushInfo(localPatientID, remoteServerName, remotePatientGUID, remotePatientID, remotePatientURL,
+            null);
+    }
+
+    @Override
+    public void storePatientPushInfo(String localPatientID, String remoteServerName,
+        String remotePatientGUID, String remotePatientID, String remotePatientURL, String pushedContentHashes)
     {
         if (localPatientID == null || remoteServerName == null) {
             return;
@@ -281,14 +289,17 @@ public void storePatientPushInfo(String localPatientID, String remoteServerName,
             existing.setRemotePatientID(remotePatientID);
             existing.setRemotePatientGUID(remotePatientGUID);
             existing.setRemotePatientURL(remotePatientURL);
+            existing.setPushedContentHashes(pushedContentHashes);
             session.update(existing);
         }
         else
         {
             this.logger.debug("Saving new patient push info [{}]: [{}@{}]", localPatientID,
                 remotePatientID, remoteServerName);
-            session.save(new PatientPushedToInfo(localPatientID, remoteServerName,
-                remotePatientGUID, remotePatientID, remotePatientURL));
+            PatientPushedToInfo info = new PatientPushedToInfo(localPatientID, remoteServerName,
+                remotePatientGUID, remotePatientID, remotePatientURL);
+            info.setPushedContentHashes(pushedContentHashes);
+            session.save(info);
         }
         t.commit();
     }
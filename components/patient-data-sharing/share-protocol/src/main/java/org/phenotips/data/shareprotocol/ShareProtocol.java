@@ -50,11 +50,18 @@
     /** version 1.4: shift from single Pubmed ID value to multiple Pubmed IDs */
     public static final String VERSION_1_4 = "1.4";
 
-    public static final String CURRENT_PUSH_PROTOCOL_VERSION = VERSION_1_4;
+    /** version 1.5: batch push of several patients in one gzipped NDJSON request */
+    public static final String VERSION_1_5 = "1.5";
+
+    public static final String CURRENT_PUSH_PROTOCOL_VERSION = VERSION_1_5;
 
     // list of protocol versions that the current server can read data from
     public static final List<String> COMPATIBLE_CLIENT_PROTOCOL_VERSIONS =
-        Arrays.asList(VERSION_1, VERSION_1_1, VERSION_1_2, VERSION_1_3, VERSION_1_4);
+        Arrays.asList(VERSION_1, VERSION_1_1, VERSION_1_2, VERSION_1_3, VERSION_1_4, VERSION_1_5);
+
+    // list of protocol versions which support the PUSH_BATCH action; when pushing several patients to a server
+    // using any other version, patients are pushed one by one using the PUSH action
+    public static final List<String> BATCH_PUSH_PROTOCOL_VERSIONS = Arrays.asList(VERSION_1_5);
 
     // list of versions which can push even if required consents have not been checked
     public static final List<String> ALLOW_NO_CONSENTS_PROTOCOL_VERSIONS = Arrays.asList(VERSION_1);
@@ -96,7 +103,7 @@
     // Those are listed explicitly because there is no way to tell if a version is old or new
     // unless it is explicitly listed
     public static final List<String> COMPATIBLE_OLD_SERVER_PROTOCOL_VERSIONS =
-        Arrays.asList(VERSION_1, VERSION_1_1, VERSION_1_2, VERSION_1_3);
+        Arrays.asList(VERSION_1, VERSION_1_1, VERSION_1_2, VERSION_1_3, VERSION_1_4);
 
     // =========================================================================
 
@@ -127,6 +134,8 @@
                                                                                      // the patient object with the
                                                                                      // given GUID
 
+    public static final String CLIENT_POST_ACTIONKEY_VALUE_PUSH_BATCH = "push_batch"; // push several patients at once
+
     // for the PUSH action the following fields must be set:
     public static final String CLIENT_POST_KEY_NAME_PATIENTJSON = "patient_json";
 
@@ -151,6 +160,16 @@
 
     // for the GETURL action the String CLIENT_POST_KEY_NAME_GUID key must be set
 
+    // for the PUSH_BATCH action only the ACTION and PROTOCOLVER parameters are sent in the request URL, and the
+    // request body is a gzip-compressed stream of newline-delimited JSON objects (one per line):
+    // - the first line is a header object holding all the other POST parameters (USERNAME, PASSWORD or USER_TOKEN,
+    // and optionally GROUPNAME), which apply to all the patients in the batch
+    // - each of the following lines describes one patient, using the PATIENTJSON key (a JSON object, not
+    // URL-encoded), and optionally the PATIENTSTATE (a JSON object) and GUID keys
+    public static final String CLIENT_BATCH_CONTENT_TYPE = "application/x-ndjson";
+
+    public static final String CLIENT_BATCH_CONTENT_ENCODING = "gzip";
+
     // =========================================================================
 
     // every server response JSON will include the following fields:
@@ -242,6 +261,11 @@
                                                                                        // and/or to update the patient
                                                                                        // later
 
+    // response to a PUSH_BATCH action request will include the following field (iff login was successful), a list
+    // holding, in the same order as the patients in the request, the response for each patient, with the same
+    // fields as a response to a PUSH action request
+    public static final String SERVER_JSON_PUSH_BATCH_KEY_NAME_RESULTS = "results";
+
     /**
      * Helper class describing an incompatibility between serializers in two different PhenoTips versions. An
      * incommpatibility is described in terms of a "controlling field name" which triggers (part of) a serializer when
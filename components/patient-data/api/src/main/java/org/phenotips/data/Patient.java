@@ -25,11 +25,14 @@
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.stability.Unstable;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Information about a patient.
  *
@@ -119,6 +122,32 @@ public interface Patient extends PrimaryEntity
      */
     JSONObject toJSON(Collection<String> selectedFields);
 
+    /**
+     * Write patient data, in the same format as {@link #toJSON(Collection)}, directly into a JSON stream. Unlike
+     * {@link #toJSON(Collection)}, this doesn't require building the whole JSON tree in memory, which makes it better
+     * suited for serializing many patients in a row. The patient's properties are written in the JSON object currently
+     * open in the generator: the caller is responsible for starting and ending the object, and may write other
+     * properties in it.
+     * <p>
+     * The default implementation still builds the JSON tree using {@link #toJSON(Collection)}, and only then copies it
+     * into the stream.
+     * </p>
+     *
+     * @param generator the JSON stream to write to, positioned inside an object
+     * @param selectedFields list of fields which should be included in the output, all available fields will be
+     *            included if {@code null}
+     * @throws IOException if writing to the stream fails
+     * @since 1.5M1
+     */
+    default void writeJSON(JsonGenerator generator, Collection<String> selectedFields) throws IOException
+    {
+        JSONObject json = toJSON(selectedFields);
+        for (String key : json.keySet()) {
+            generator.writeFieldName(key);
+            generator.writeRawValue(JSONObject.valueToString(json.get(key)));
+        }
+    }
+
     /**
      * Update patient data using the provided json object (in the format generated by {@link #toJSON()}).
      * <p>
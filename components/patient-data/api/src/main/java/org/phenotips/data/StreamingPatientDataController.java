@@ -0,0 +1,56 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.stability.Unstable;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A {@link PatientDataController} that can also write its data directly into a JSON stream, used by
+ * {@link Patient#writeJSON(JsonGenerator, Collection)} for serializing patients without building a full JSON tree.
+ * Controllers which only implement the {@link PatientDataController} methods are still supported: their output is
+ * collected in a {@code JSONObject} which is then copied into the stream.
+ * <p>
+ * Since properties can't be extended once they have been written to a stream, a streaming controller must only write
+ * properties that no other controller writes to. Controllers that share a JSON property with other controllers, such as
+ * the {@code prenatal_perinatal_history} object, must keep using the {@code JSONObject} based methods.
+ * </p>
+ *
+ * @param <T> the type of data being managed by this component
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public interface StreamingPatientDataController<T> extends PatientDataController<T>
+{
+    /**
+     * Exports the data being managed by this data controller into the patient JSON stream. The output must be the same
+     * as the one produced by {@link #writeJSON(Patient, org.json.JSONObject, Collection)}.
+     *
+     * @param patient the patient being exported
+     * @param generator the JSON stream to write to, positioned inside the patient object
+     * @param selectedFieldNames the list of patient record fields which this controller should consider when writing to
+     *            JSON, may be {@code null}, in which case all available data should be written
+     * @throws IOException if writing to the stream fails
+     */
+    void writeJSON(Patient patient, JsonGenerator generator, Collection<String> selectedFieldNames) throws IOException;
+}
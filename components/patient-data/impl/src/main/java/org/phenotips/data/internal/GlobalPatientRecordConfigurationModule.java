@@ -107,11 +107,12 @@ public RecordConfiguration process(RecordConfiguration config)
         }
         config.setSections(recordSections);
 
-        DocumentReference mapping = getPhenotypeMapping();
+        BaseObject settings = getGlobalConfigurationObject();
+        DocumentReference mapping = getPhenotypeMapping(settings);
         if (mapping != null) {
             config.setPhenotypeMapping(mapping);
         }
-        String dobFormat = getDateOfBirthFormat();
+        String dobFormat = getDateOfBirthFormat(settings);
         if (StringUtils.isNotBlank(dobFormat)) {
             config.setDateOfBirthFormat(dobFormat);
         }
@@ -119,6 +120,13 @@ public RecordConfiguration process(RecordConfiguration config)
         return config;
     }
 
+    @Override
+    public String getCacheKey(String recordType)
+    {
+        // Only depends on UI extensions and the global preferences, which invalidate the cache when changed
+        return "";
+    }
+
     @Override
     public int getPriority()
     {
@@ -142,9 +150,8 @@ private List<UIExtension> getOrderedSectionUIExtensions()
         return this.orderFilter.filter(sections, "order");
     }
 
-    private DocumentReference getPhenotypeMapping()
+    private DocumentReference getPhenotypeMapping(BaseObject settings)
     {
-        BaseObject settings = getGlobalConfigurationObject();
         if (settings == null) {
             return null;
         }
@@ -154,9 +161,8 @@ private DocumentReference getPhenotypeMapping()
 
     }
 
-    private String getDateOfBirthFormat()
+    private String getDateOfBirthFormat(BaseObject settings)
     {
-        BaseObject settings = getGlobalConfigurationObject();
         if (settings != null) {
             return settings.getStringValue(DOB_FORMAT_LABEL);
         }
@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Copies {@code org.json} values into a Jackson JSON stream, for data produced by patient data controllers that don't
+ * support streaming. Values are written as proper JSON tokens, without going through an intermediate string.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class JSONStreamingAdapter
+{
+    private JSONStreamingAdapter()
+    {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Writes all the properties of a JSON object as fields of the JSON object currently open in the stream.
+     *
+     * @param generator the JSON stream to write to, positioned inside an object
+     * @param json the properties to write, may be {@code null}
+     * @throws IOException if writing to the stream fails
+     */
+    public static void writeFields(JsonGenerator generator, JSONObject json) throws IOException
+    {
+        if (json == null) {
+            return;
+        }
+        for (String key : json.keySet()) {
+            generator.writeFieldName(key);
+            writeValue(generator, json.opt(key));
+        }
+    }
+
+    /**
+     * Writes a value stored in an {@code org.json} object or array.
+     *
+     * @param generator the JSON stream to write to
+     * @param value the value to write, may be {@code null}, {@link JSONObject#NULL}, a {@link JSONObject}, a
+     *            {@link JSONArray}, a string, a number, a boolean, or any other object supported by {@code org.json}
+     * @throws IOException if writing to the stream fails
+     */
+    public static void writeValue(JsonGenerator generator, Object value) throws IOException
+    {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            generator.writeNull();
+        } else if (value instanceof JSONObject) {
+            generator.writeStartObject();
+            writeFields(generator, (JSONObject) value);
+            generator.writeEndObject();
+        } else if (value instanceof JSONArray) {
+            generator.writeStartArray();
+            for (Object item : (JSONArray) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else {
+            // Other values, like enums, maps or JSONString implementations, are serialized the same way org.json does
+            generator.writeRawValue(JSONObject.valueToString(value));
+        }
+    }
+}
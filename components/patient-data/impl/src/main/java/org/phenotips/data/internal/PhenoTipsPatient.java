@@ -25,13 +25,16 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
 import org.phenotips.data.PatientWritePolicy;
+import org.phenotips.data.StreamingPatientDataController;
 import org.phenotips.entities.spi.AbstractPrimaryEntity;
+import org.phenotips.metrics.MetricsRegistry;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -45,6 +48,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
@@ -80,6 +84,9 @@ public class PhenoTipsPatient extends AbstractPrimaryEntity implements Patient
     /** Extra data that can be plugged into the patient record. */
     private Map<String, PatientData<?>> extraData = new TreeMap<>();
 
+    /** Records how long each data controller takes to load, save, and serialize its data, may be {@code null}. */
+    private MetricsRegistry metrics;
+
     /**
      * Constructor that copies the data from an XDocument.
      *
@@ -118,6 +125,26 @@ private void loadSerializers()
         } catch (ComponentLookupException ex) {
             this.logger.error("Failed to lookup serializers", ex);
         }
+        try {
+            this.metrics = ComponentManagerRegistry.getContextComponentManager().getInstance(MetricsRegistry.class);
+        } catch (ComponentLookupException ex) {
+            this.logger.debug("Metrics are not available: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Records how long a data controller took to perform an operation.
+     *
+     * @param serializer the data controller that performed the operation
+     * @param operation the name of the operation, e.g. {@code load}
+     * @param start the value of {@link System#nanoTime()} when the operation started
+     */
+    private void recordTime(PatientDataController<?> serializer, String operation, long start)
+    {
+        if (this.metrics != null && this.metrics.isEnabled()) {
+            this.metrics.updateTime("patient.controller." + serializer.getName() + '.' + operation,
+                System.nanoTime() - start);
+        }
     }
 
     /**
@@ -127,7 +154,9 @@ private void readPatientData(String name)
     {
         PatientDataController<?> serializer = this.serializers.get(name);
         if (serializer != null) {
+            long start = System.nanoTime();
             PatientData<?> data = serializer.load(this);
+            recordTime(serializer, "load", start);
             if (data != null) {
                 this.extraData.put(data.getName(), data);
             }
@@ -216,12 +245,47 @@ public JSONObject toJSON(Collection<String> selectedFields)
         }
 
         for (PatientDataController<?> serializer : this.serializers.values()) {
+            long start = System.nanoTime();
             serializer.writeJSON(this, result, selectedFields);
+            recordTime(serializer, "writeJSON", start);
         }
 
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Controllers implementing {@link StreamingPatientDataController} write their data directly in the stream. The
+     * output of all the other controllers is collected in a single JSON object, so that they can still extend each
+     * other's properties, which is copied in the stream after all the streaming controllers are done.
+     * </p>
+     */
+    @Override
+    public void writeJSON(JsonGenerator generator, Collection<String> selectedFields) throws IOException
+    {
+        if (isFieldIncluded(selectedFields, JSON_KEY_ID)) {
+            generator.writeStringField(JSON_KEY_ID, getId());
+        }
+
+        if (getReporter() != null && (isFieldIncluded(selectedFields, JSON_KEY_REPORTER)
+            || isFieldIncluded(selectedFields, PARAM_KEY_REFERRER))) {
+            generator.writeStringField(JSON_KEY_REPORTER, getReporter().getName());
+        }
+
+        JSONObject nonStreamedData = new JSONObject();
+        for (PatientDataController<?> serializer : this.serializers.values()) {
+            long start = System.nanoTime();
+            if (serializer instanceof StreamingPatientDataController) {
+                ((StreamingPatientDataController<?>) serializer).writeJSON(this, generator, selectedFields);
+            } else {
+                serializer.writeJSON(this, nonStreamedData, selectedFields);
+            }
+            recordTime(serializer, "writeJSON", start);
+        }
+        JSONStreamingAdapter.writeFields(generator, nonStreamedData);
+    }
+
     @Override
     public void updateFromJSON(JSONObject json)
     {
@@ -247,11 +311,15 @@ public void updateFromJSON(JSONObject json, PatientWritePolicy policy)
 
             for (PatientDataController<?> serializer : this.serializers.values()) {
                 try {
+                    long start = System.nanoTime();
                     PatientData<?> patientData = serializer.readJSON(json);
+                    recordTime(serializer, "readJSON", start);
                     if (patientData != null || PatientWritePolicy.REPLACE.equals(policy)) {
                         this.extraData.put(patientData != null ? patientData.getName() : serializer.getName(),
                             patientData);
+                        start = System.nanoTime();
                         serializer.save(this, policy);
+                        recordTime(serializer, "save", start);
                         this.logger.info("Successfully updated patient form JSON using serializer [{}]",
                             serializer.getName());
                     }
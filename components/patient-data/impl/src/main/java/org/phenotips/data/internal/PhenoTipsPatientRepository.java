@@ -70,6 +70,7 @@ public Patient getByName(String name)
             Query q = this.qm.createQuery("where doc.object(PhenoTips.PatientClass).external_id = :eid", Query.XWQL);
             q.bindValue("eid", name);
             List<String> results = q.execute();
+            this.metrics.increment(QUERIES_METRIC);
             if (results.size() == 1) {
                 DocumentReference reference =
                     this.stringResolver.resolve(results.get(0), Patient.DEFAULT_DATA_SPACE);
@@ -162,6 +163,7 @@ protected long getLastUsedId()
                         + " where patient.identifier is not null order by patient.identifier desc",
                     Query.XWQL).setLimit(1);
             List<Long> crtMaxIDList = q.execute();
+            this.metrics.increment(QUERIES_METRIC);
             if (!crtMaxIDList.isEmpty() && crtMaxIDList.get(0) != null) {
                 crtMaxID = crtMaxIDList.get(0);
             }
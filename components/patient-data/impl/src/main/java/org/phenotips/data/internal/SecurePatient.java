@@ -27,11 +27,13 @@
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.stability.Unstable;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xpn.xwiki.api.Document;
 import com.xpn.xwiki.doc.XWikiDocument;
 
@@ -135,6 +137,12 @@ public JSONObject toJSON(Collection<String> selectedFields)
         return this.patient.toJSON(selectedFields);
     }
 
+    @Override
+    public void writeJSON(JsonGenerator generator, Collection<String> selectedFields) throws IOException
+    {
+        this.patient.writeJSON(generator, selectedFields);
+    }
+
     @Override
     public EntityReference getType()
     {
@@ -24,11 +24,14 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
 import org.phenotips.data.PatientWritePolicy;
+import org.phenotips.data.StreamingPatientDataController;
+import org.phenotips.data.internal.JSONStreamingAdapter;
 import org.phenotips.data.internal.PhenoTipsFeature;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.EntityReference;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -54,6 +57,7 @@
 import org.json.JSONObject;
 import org.slf4j.Logger;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -71,6 +75,7 @@
 @Named("features")
 @Singleton
 public class FeaturesController extends AbstractComplexController<Feature>
+    implements StreamingPatientDataController<Feature>
 {
     /**
      * used for generating JSON and reading from JSON.
@@ -187,6 +192,47 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         json.put(JSON_KEY_NON_STANDARD_FEATURES, nonStandardFeaturesToJSON(data, selectedFieldNames));
     }
 
+    @Override
+    public void writeJSON(Patient patient, JsonGenerator generator, Collection<String> selectedFieldNames)
+        throws IOException
+    {
+        if (selectedFieldNames != null && !isFieldSuffixIncluded(selectedFieldNames, PHENOTYPE_POSITIVE_PROPERTY)) {
+            return;
+        }
+
+        PatientData<Feature> data = patient.getData(getName());
+        generator.writeArrayFieldStart(JSON_KEY_FEATURES);
+        writeFeatures(generator, data, selectedFieldNames, true);
+        generator.writeEndArray();
+        generator.writeArrayFieldStart(JSON_KEY_NON_STANDARD_FEATURES);
+        writeFeatures(generator, data, selectedFieldNames, false);
+        generator.writeEndArray();
+    }
+
+    /**
+     * Streams the selected features one at a time, in the same format as {@link #featuresToJSON} and
+     * {@link #nonStandardFeaturesToJSON}.
+     */
+    private void writeFeatures(JsonGenerator generator, PatientData<Feature> data, Collection<String> selectedFields,
+        boolean standard) throws IOException
+    {
+        if (data == null) {
+            return;
+        }
+        Iterator<Feature> iterator = data.iterator();
+        while (iterator.hasNext()) {
+            Feature phenotype = iterator.next();
+            if (StringUtils.isBlank(phenotype.getId()) == standard
+                || !isFieldIncluded(selectedFields, phenotype.getType())) {
+                continue;
+            }
+            JSONObject featureJSON = phenotype.toJSON();
+            if (featureJSON != null) {
+                JSONStreamingAdapter.writeValue(generator, featureJSON);
+            }
+        }
+    }
+
     /**
      * creates & returns a new JSON array of all patient features (as JSON objects).
      */
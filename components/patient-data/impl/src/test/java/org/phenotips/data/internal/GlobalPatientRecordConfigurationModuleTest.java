@@ -294,4 +294,10 @@ public void supportsRecordTypeReturnsFalseIfNullOrEmpty() throws ComponentLookup
         Assert.assertFalse(this.mocker.getComponentUnderTest().supportsRecordType(null));
         Assert.assertFalse(this.mocker.getComponentUnderTest().supportsRecordType(""));
     }
+
+    @Test
+    public void cacheKeyIsConstant() throws ComponentLookupException
+    {
+        Assert.assertEquals("", this.mocker.getComponentUnderTest().getCacheKey(PATIENT_LABEL));
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Tests for the {@link JSONStreamingAdapter} class.
+ *
+ * @version $Id$
+ */
+public class JSONStreamingAdapterTest
+{
+    @Test
+    public void allValueTypesAreCopied() throws IOException
+    {
+        JSONObject json = new JSONObject()
+            .put("string", "a \"quoted\" value")
+            .put("int", 42)
+            .put("long", 12345678901L)
+            .put("double", 1.5)
+            .put("boolean", true)
+            .put("null", JSONObject.NULL)
+            .put("object", new JSONObject().put("nested", new JSONArray().put(1).put("two").put(JSONObject.NULL)))
+            .put("array", new JSONArray().put(new JSONObject().put("id", "HP:0000001")));
+
+        String streamed = stream(json);
+
+        Assert.assertTrue(json.similar(new JSONObject(streamed)));
+    }
+
+    @Test
+    public void bigNumbersAreWrittenExactly() throws IOException
+    {
+        Assert.assertEquals("{\"decimal\":0.125}", stream(new JSONObject().put("decimal", new BigDecimal("0.125"))));
+    }
+
+    @Test
+    public void nullObjectWritesNoFields() throws IOException
+    {
+        Assert.assertEquals("{}", stream(null));
+    }
+
+    @Test
+    public void emptyValuesAreCopied() throws IOException
+    {
+        JSONObject json = new JSONObject().put("object", new JSONObject()).put("array", new JSONArray());
+        Assert.assertTrue(json.similar(new JSONObject(stream(json))));
+    }
+
+    private String stream(JSONObject json) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            JSONStreamingAdapter.writeFields(generator, json);
+            generator.writeEndObject();
+        }
+        return out.toString();
+    }
+}
@@ -25,11 +25,14 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
 import org.phenotips.data.PatientWritePolicy;
+import org.phenotips.data.StreamingPatientDataController;
 import org.phenotips.data.internal.PhenoTipsFeature;
 
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -38,6 +41,8 @@
 
 import javax.inject.Provider;
 
+import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,6 +50,8 @@
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -340,4 +347,45 @@ public void saveReplacesFeaturesWhenPolicyIsReplace() throws XWikiException
 
         verifyNoMoreInteractions(this.doc, this.dataHolder);
     }
+
+    @Test
+    public void streamedJSONMatchesJSONObjectOutput() throws IOException
+    {
+        when(this.feature2.getId()).thenReturn("HP:0000002");
+        when(this.feature2.toJSON()).thenReturn(new JSONObject().put("id", "HP:0000002").put("observed", "yes"));
+        when(this.feature3.getId()).thenReturn("HP:0000003");
+        when(this.feature3.toJSON()).thenReturn(new JSONObject().put("id", "HP:0000003").put("observed", "yes"));
+        when(this.feature4.getId()).thenReturn("");
+        when(this.feature4.toJSON()).thenReturn(new JSONObject().put("label", FEATURE_4).put("observed", "no"));
+        final List<Feature> featureList = Arrays.asList(this.feature2, this.feature3, this.feature4);
+        final PatientData<Feature> data = new IndexedPatientData<>(this.component.getName(), featureList);
+        doReturn(data).when(this.patient).getData(this.component.getName());
+
+        JSONObject expected = new JSONObject();
+        this.component.writeJSON(this.patient, expected, null);
+
+        JSONObject actual = new JSONObject(stream(null));
+        Assert.assertTrue(expected.similar(actual));
+        Assert.assertEquals(2, actual.getJSONArray("features").length());
+        Assert.assertEquals(1, actual.getJSONArray("nonstandard_features").length());
+    }
+
+    @Test
+    public void streamedJSONSkipsFeaturesWhenPhenotypeFieldsAreNotSelected() throws IOException
+    {
+        Assert.assertEquals("{}", stream(Collections.singletonList("sex")));
+        verifyZeroInteractions(this.patient);
+    }
+
+    private String stream(List<String> selectedFields) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            ((StreamingPatientDataController<Feature>) this.component).writeJSON(this.patient, generator,
+                selectedFields);
+            generator.writeEndObject();
+        }
+        return out.toString();
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-memory index of the phenotypes of all the patients, answering "patients like this one" queries. Each patient is
+ * represented by its observed phenotypes closed over their HPO ancestors, and the index is kept up to date as patients
+ * are modified. Only the patients that the current user can view are returned.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface PatientSimilarityIndex
+{
+    /**
+     * Find the patients with the phenotypes most similar to the phenotype of a given patient.
+     *
+     * @param patient the reference patient, will not be included in the results
+     * @param measure the similarity measure to use
+     * @param limit the maximum number of patients to return
+     * @return the most similar patients, in descending order of their score; may be empty, but not {@code null}
+     */
+    List<SimilarPatient> findSimilar(Patient patient, SimilarityMeasure measure, int limit);
+
+    /**
+     * Find the patients with the phenotypes most similar to a list of phenotypes.
+     *
+     * @param phenotypes a list of HPO term identifiers, e.g. {@code HP:0001250}; their ancestors don't have to be
+     *            included, and unknown terms are ignored
+     * @param measure the similarity measure to use
+     * @param limit the maximum number of patients to return
+     * @return the most similar patients, in descending order of their score; may be empty, but not {@code null}
+     */
+    List<SimilarPatient> findSimilar(Collection<String> phenotypes, SimilarityMeasure measure, int limit);
+
+    /**
+     * Add (or update) a patient to the index.
+     *
+     * @param patient the patient to index
+     */
+    void index(Patient patient);
+
+    /**
+     * Delete a patient from the index.
+     *
+     * @param patient the patient to delete
+     */
+    void delete(Patient patient);
+
+    /**
+     * Rebuild the index from the stored patient records.
+     */
+    void reindex();
+}
@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.xwiki.stability.Unstable;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * A patient returned by a {@link PatientSimilarityIndex similarity search}, along with its similarity score.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public final class SimilarPatient
+{
+    /** @see #getId() */
+    private final String id;
+
+    /** @see #getScore() */
+    private final double score;
+
+    /**
+     * Simple constructor passing all the data.
+     *
+     * @param id the identifier of the matched patient, e.g. {@code P0000123}
+     * @param score the similarity score of the patient
+     */
+    public SimilarPatient(String id, double score)
+    {
+        this.id = id;
+        this.score = score;
+    }
+
+    /**
+     * The identifier of the matched patient.
+     *
+     * @return the patient identifier, e.g. {@code P0000123}
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * How similar the matched patient is to the query; the range of the score depends on the
+     * {@link SimilarityMeasure measure} used.
+     *
+     * @return a positive number, higher for more similar patients
+     */
+    public double getScore()
+    {
+        return this.score;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof SimilarPatient)) {
+            return false;
+        }
+        SimilarPatient other = (SimilarPatient) obj;
+        return new EqualsBuilder().append(this.id, other.id).append(this.score, other.score).isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder().append(this.id).append(this.score).toHashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.id + ':' + this.score;
+    }
+}
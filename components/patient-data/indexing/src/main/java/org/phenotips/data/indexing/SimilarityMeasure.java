@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The semantic similarity measures supported by the {@link PatientSimilarityIndex}. Both measures compare the
+ * phenotypes of two patients closed over their ancestors in the HPO, with each term weighted by its information content
+ * in the indexed cohort.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+public enum SimilarityMeasure
+{
+    /**
+     * Graph information content similarity: the information content of the terms shared by the two phenotypes, divided
+     * by the information content of all the terms in either phenotype. Scores are between {@code 0} and {@code 1}.
+     */
+    SIMGIC,
+
+    /**
+     * Resnik similarity: the information content of the most informative term shared by the two phenotypes. Scores are
+     * between {@code 0} and the information content of the rarest term in the cohort.
+     */
+    RESNIK
+}
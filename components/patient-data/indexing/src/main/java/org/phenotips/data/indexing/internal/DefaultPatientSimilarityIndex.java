@@ -0,0 +1,268 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilarityIndex;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabulary.Vocabulary;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link PatientSimilarityIndex}, keeping a {@link PatientTermIndex} in memory. The index
+ * is loaded from the database with a single query the first time it is needed, and then kept up to date by the
+ * {@link PatientEventListener}. Searches can run concurrently, while updates need exclusive access to the index.
+ * Loading, and retrying failed loads, is managed by a {@link LazyIndexLoader}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultPatientSimilarityIndex implements PatientSimilarityIndex, Initializable
+{
+    /** Lists the observed phenotypes of all the patients in the patient data space, one row for each phenotype. */
+    private static final String PHENOTYPES_QUERY = "select obj.name, item"
+        + " from BaseObject obj, DBStringListProperty prop join prop.list as item"
+        + " where obj.className = :patientClass and obj.name like :space"
+        + " and prop.id.id = obj.id and prop.id.name = :property";
+
+    private static final String PATIENT_CLASS = "PhenoTips.PatientClass";
+
+    private static final String PHENOTYPE_PROPERTY = "phenotype";
+
+    private static final String HPO_PREFIX = "HP:";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    private PatientRepository repository;
+
+    /** Provides the ancestors of the HPO terms. */
+    @Inject
+    @Named("hpo")
+    private Vocabulary hpo;
+
+    /** Used for obtaining the current user. */
+    @Inject
+    private UserManager userManager;
+
+    /** Used for checking access rights. */
+    @Inject
+    private AuthorizationService access;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<EntityReference> resolver;
+
+    private final PatientTermIndex index = new PatientTermIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LazyIndexLoader loader = new LazyIndexLoader(this.lock, this::load);
+
+    /** The ancestors of the HPO terms. */
+    private TermClosures closures;
+
+    @Override
+    public void initialize()
+    {
+        this.closures = new TermClosures(this.hpo, HPO_PREFIX);
+    }
+
+    @Override
+    public List<SimilarPatient> findSimilar(Patient patient, SimilarityMeasure measure, int limit)
+    {
+        if (patient == null) {
+            return Collections.emptyList();
+        }
+        String self = patient.getId();
+        return search(getPhenotype(patient), measure, limit, id -> !id.equals(self));
+    }
+
+    @Override
+    public List<SimilarPatient> findSimilar(Collection<String> phenotypes, SimilarityMeasure measure, int limit)
+    {
+        if (phenotypes == null) {
+            return Collections.emptyList();
+        }
+        Set<String> phenotype = new HashSet<>();
+        for (String term : phenotypes) {
+            phenotype.addAll(this.closures.get(term));
+        }
+        return search(phenotype, measure, limit, id -> true);
+    }
+
+    @Override
+    public void index(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        Set<String> phenotype = getPhenotype(patient);
+        this.lock.writeLock().lock();
+        try {
+            // A load running meanwhile may have failed, then the next load will read this patient
+            if (this.loader.isLoaded()) {
+                this.index.put(patient.getId(), phenotype);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        if (!this.loader.isUpdateNeeded(patient)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            if (this.loader.isLoaded()) {
+                this.index.remove(patient.getId());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reindex()
+    {
+        this.lock.writeLock().lock();
+        try {
+            // The vocabulary may have been reindexed as well
+            this.closures.clear();
+            this.loader.reload();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private List<SimilarPatient> search(Set<String> phenotype, SimilarityMeasure measure, int limit,
+        Predicate<String> filter)
+    {
+        if (phenotype.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        this.loader.ensureLoaded();
+        User user = this.userManager.getCurrentUser();
+        EntityReference dataSpace = this.repository.getDataSpace();
+        Predicate<String> accessible = id -> this.access.hasAccess(user, Right.VIEW,
+            this.resolver.resolve(new EntityReference(id, EntityType.DOCUMENT, dataSpace)));
+        this.lock.readLock().lock();
+        try {
+            return this.index.search(phenotype, measure == null ? SimilarityMeasure.SIMGIC : measure, limit,
+                filter.and(accessible));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the phenotypes of all the patients from the database. Must be called while holding the write lock.
+     *
+     * @return {@code true} if the phenotypes were loaded, {@code false} if the database couldn't be read
+     */
+    private boolean load()
+    {
+        long start = System.currentTimeMillis();
+        String space = this.repository.getDataSpace().getName();
+        try {
+            Query q = this.qm.createQuery(PHENOTYPES_QUERY, Query.HQL);
+            q.bindValue("patientClass", PATIENT_CLASS);
+            q.bindValue("space", space + ".%");
+            q.bindValue("property", PHENOTYPE_PROPERTY);
+            List<Object[]> rows = q.execute();
+
+            Map<String, Set<String>> phenotypes = new HashMap<>();
+            Set<String> terms = new HashSet<>();
+            for (Object[] row : rows) {
+                String id = StringUtils.substringAfter((String) row[0], ".");
+                String term = (String) row[1];
+                phenotypes.computeIfAbsent(id, k -> new HashSet<>()).add(term);
+                terms.add(term);
+            }
+            this.closures.prefetch(terms);
+
+            this.index.clear();
+            for (Map.Entry<String, Set<String>> patient : phenotypes.entrySet()) {
+                Set<String> phenotype = new HashSet<>();
+                for (String term : patient.getValue()) {
+                    phenotype.addAll(this.closures.get(term));
+                }
+                this.index.put(patient.getKey(), phenotype);
+            }
+            this.logger.info("Indexed the phenotypes of [{}] patients for similarity search in [{}] ms",
+                this.index.size(), System.currentTimeMillis() - start);
+            return true;
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to load patient phenotypes for similarity search: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    private Set<String> getPhenotype(Patient patient)
+    {
+        Set<String> result = new HashSet<>();
+        for (Feature feature : patient.getFeatures()) {
+            if (feature.isPresent() && StringUtils.isNotBlank(feature.getId())) {
+                result.addAll(this.closures.get(feature.getId()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Manages loading an in-memory index from the database the first time it is needed. Indexes guard their data with a
+ * {@link ReadWriteLock}, and the load runs while holding its write lock. Changes to the indexed records that happen
+ * while the index is loading must be applied once the load ends, since the load may have already read the old data,
+ * while changes happening before the index is loaded can be ignored, since the load will pick them up. A failed load
+ * is not retried on every request, so that a database problem doesn't turn each request into a full reload, but only
+ * after a while, or as soon as an indexed record changes. This class is thread safe.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class LazyIndexLoader
+{
+    /** How long to wait before retrying a failed load, in milliseconds, unless a record changes meanwhile. */
+    private static final long RETRY_DELAY = 60 * 1000L;
+
+    /** The lock guarding the index data. */
+    private final ReadWriteLock lock;
+
+    /** Reads all the data into the index, returning whether the load succeeded. */
+    private final BooleanSupplier loader;
+
+    private volatile boolean loaded;
+
+    /** Set while the index is being loaded, when changes must wait for the load to end instead of being ignored. */
+    private volatile boolean loading;
+
+    /** When the last failed load happened, {@code 0} if there's no failure to remember. */
+    private volatile long failedAt;
+
+    /**
+     * Simple constructor.
+     *
+     * @param lock the lock guarding the index data, whose write lock is held while loading
+     * @param loader reads all the data into the index, replacing its previous content, and returns {@code true} if it
+     *            succeeded, or {@code false} if the data couldn't be read, in which case the previous content must be
+     *            left untouched
+     */
+    public LazyIndexLoader(ReadWriteLock lock, BooleanSupplier loader)
+    {
+        this.lock = lock;
+        this.loader = loader;
+    }
+
+    /**
+     * Loads the index if it isn't loaded yet, unless the last load failed too recently. Must be called before reading
+     * from the index, and without holding the read lock.
+     */
+    public void ensureLoaded()
+    {
+        if (!this.loaded && canRetry()) {
+            this.lock.writeLock().lock();
+            try {
+                if (!this.loaded && canRetry()) {
+                    load();
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Reloads the index right away, even if it is already loaded or the last load failed recently.
+     */
+    public void reload()
+    {
+        this.lock.writeLock().lock();
+        try {
+            this.failedAt = 0;
+            load();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a change must be applied to the index, and allows a failed load to be retried right away, since the
+     * data may have been fixed.
+     *
+     * @param changed the changed record
+     * @return {@code true} if the index is loaded or being loaded, {@code false} if the change can be ignored
+     */
+    public boolean isUpdateNeeded(Object changed)
+    {
+        if (changed == null) {
+            return false;
+        }
+        this.failedAt = 0;
+        return this.loaded || this.loading;
+    }
+
+    /**
+     * Checks if the index is loaded. Changes must only be applied to a loaded index, and since a load running meanwhile
+     * may have failed, this must be checked again while holding the write lock, right before applying a change.
+     *
+     * @return {@code true} if the index was successfully loaded
+     */
+    public boolean isLoaded()
+    {
+        return this.loaded;
+    }
+
+    private boolean canRetry()
+    {
+        return System.currentTimeMillis() - this.failedAt >= RETRY_DELAY;
+    }
+
+    /** Must be called while holding the write lock. */
+    private void load()
+    {
+        this.loading = true;
+        try {
+            if (this.loader.getAsBoolean()) {
+                this.loaded = true;
+                this.failedAt = 0;
+            } else {
+                this.failedAt = System.currentTimeMillis();
+            }
+        } finally {
+            this.loading = false;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index of patient annotations, such as phenotypes or drugs, identified by vocabulary terms. Each patient is
+ * stored as a sorted array of term numbers, and each term has a posting list with the patients annotated with it. The
+ * information content of a term is computed from the number of indexed patients annotated with it, so it always
+ * reflects the current cohort: terms present in every patient carry no information, and terms seen in a single patient
+ * carry the most.
+ * <p>
+ * Searches visit the posting lists of the query terms in decreasing order of their information content, scoring each
+ * newly seen patient exactly. Once the best score that a patient not seen yet could still reach, i.e. one annotated
+ * only with the remaining, less informative terms, cannot beat the worst of the top results, the remaining postings are
+ * skipped. Since informative terms are rare, most of the cohort is never looked at.
+ * </p>
+ * <p>
+ * Cohort queries, i.e. {@link #findAll finding the patients annotated with all of a set of terms}, intersect the
+ * posting lists of the query terms, starting from the shortest one.
+ * </p>
+ * <p>
+ * This class is not thread safe; concurrent searches are safe only as long as the index is not modified.
+ * </p>
+ * <p>
+ * This is an implementation detail shared by the in-memory patient indexes, such as the similarity and medication
+ * indexes, and not part of the public API.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class PatientTermIndex
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final double LOG2 = Math.log(2);
+
+    /** Orders search results by descending score, and by identifier for equal scores. */
+    private static final Comparator<SimilarPatient> RANKING =
+        Comparator.comparingDouble(SimilarPatient::getScore).reversed().thenComparing(SimilarPatient::getId);
+
+    /** Term identifier to term number. */
+    private final Map<String, Integer> terms = new HashMap<>();
+
+    /** Term number to the number of indexed patients annotated with it. */
+    private int[] termCounts = new int[INITIAL_CAPACITY];
+
+    /** Term number to the slots of the patients annotated with it. */
+    private Postings[] postings = new Postings[INITIAL_CAPACITY];
+
+    /** Patient identifier to patient slot. */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /** Patient slot to patient identifier, {@code null} for free slots. */
+    private String[] patients = new String[INITIAL_CAPACITY];
+
+    /** Patient slot to the sorted term numbers of its phenotype. */
+    private int[][] vectors = new int[INITIAL_CAPACITY][];
+
+    /** Slots freed by deleted patients, reused before allocating new ones. */
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /** The first slot never used so far. */
+    private int nextSlot;
+
+    /**
+     * Add or replace the annotations of a patient.
+     *
+     * @param patientId the identifier of the patient
+     * @param phenotype the terms annotating the patient, already closed over their ancestors; if empty, the patient is
+     *            removed from the index, since it can't match anything
+     */
+    public void put(String patientId, Collection<String> phenotype)
+    {
+        remove(patientId);
+        if (phenotype.isEmpty()) {
+            return;
+        }
+        int[] vector = new int[phenotype.size()];
+        int length = 0;
+        for (String term : new LinkedHashSet<>(phenotype)) {
+            vector[length++] = getOrAddTerm(term);
+        }
+        vector = Arrays.copyOf(vector, length);
+        Arrays.sort(vector);
+
+        int slot = allocateSlot();
+        this.patients[slot] = patientId;
+        this.vectors[slot] = vector;
+        this.slots.put(patientId, slot);
+        for (int term : vector) {
+            ++this.termCounts[term];
+            this.postings[term].add(slot);
+        }
+    }
+
+    /**
+     * Remove a patient from the index, if present.
+     *
+     * @param patientId the identifier of the patient
+     */
+    public void remove(String patientId)
+    {
+        Integer slot = this.slots.remove(patientId);
+        if (slot == null) {
+            return;
+        }
+        for (int term : this.vectors[slot]) {
+            --this.termCounts[term];
+            this.postings[term].remove(slot);
+        }
+        this.patients[slot] = null;
+        this.vectors[slot] = null;
+        this.freeSlots.push(slot);
+    }
+
+    /** Remove all the patients, and forget all the terms. */
+    public void clear()
+    {
+        this.terms.clear();
+        this.termCounts = new int[INITIAL_CAPACITY];
+        this.postings = new Postings[INITIAL_CAPACITY];
+        this.slots.clear();
+        this.patients = new String[INITIAL_CAPACITY];
+        this.vectors = new int[INITIAL_CAPACITY][];
+        this.freeSlots.clear();
+        this.nextSlot = 0;
+    }
+
+    /**
+     * The number of indexed patients.
+     *
+     * @return a positive number, or {@code 0} if the index is empty
+     */
+    public int size()
+    {
+        return this.slots.size();
+    }
+
+    /**
+     * The information content of a term in the indexed cohort, i.e. {@code log2((N + 1) / (n + 1))}, where {@code N} is
+     * the number of indexed patients and {@code n} the number of patients annotated with the term.
+     *
+     * @param term a term identifier
+     * @return a positive number, or {@code 0} if all the indexed patients are annotated with the term
+     */
+    public double getInformationContent(String term)
+    {
+        Integer number = this.terms.get(term);
+        return informationContent(number == null ? 0 : this.termCounts[number]);
+    }
+
+    /**
+     * Find the indexed patients most similar to a phenotype.
+     *
+     * @param phenotype the query terms, already closed over their ancestors
+     * @param measure the similarity measure to use
+     * @param limit the maximum number of patients to return
+     * @param filter which patients can be returned; it is only tested for patients that score high enough to be
+     *            included in the results, so it can be expensive
+     * @return the most similar patients with a positive score, in descending order of their score
+     */
+    public List<SimilarPatient> search(Collection<String> phenotype, SimilarityMeasure measure, int limit,
+        Predicate<String> filter)
+    {
+        if (limit <= 0 || this.slots.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        double[] ic = new double[this.terms.size()];
+        for (int i = 0; i < ic.length; ++i) {
+            ic[i] = informationContent(this.termCounts[i]);
+        }
+
+        // Unknown terms have no postings, but they still count towards the size of the query for SimGIC
+        double queryInformation = 0;
+        List<Integer> known = new ArrayList<>(phenotype.size());
+        for (String term : new LinkedHashSet<>(phenotype)) {
+            Integer number = this.terms.get(term);
+            queryInformation += number == null ? informationContent(0) : ic[number];
+            if (number != null && ic[number] > 0) {
+                known.add(number);
+            }
+        }
+        int[] query = known.stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[] order = known.stream().sorted(Comparator.comparingDouble(term -> -ic[term]))
+            .mapToInt(Integer::intValue).toArray();
+
+        double remaining = 0;
+        for (int term : order) {
+            remaining += ic[term];
+        }
+
+        PriorityQueue<SimilarPatient> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        BitSet seen = new BitSet(this.nextSlot);
+        for (int term : order) {
+            double bound = measure == SimilarityMeasure.RESNIK ? ic[term] : remaining / queryInformation;
+            if (top.size() == limit && bound <= top.peek().getScore()) {
+                break;
+            }
+            Postings candidates = this.postings[term];
+            for (int i = 0; i < candidates.size(); ++i) {
+                int slot = candidates.get(i);
+                if (seen.get(slot)) {
+                    continue;
+                }
+                seen.set(slot);
+                double score = score(query, this.vectors[slot], ic, measure, queryInformation);
+                if ((top.size() < limit || score > top.peek().getScore()) && filter.test(this.patients[slot])) {
+                    top.add(new SimilarPatient(this.patients[slot], score));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            remaining -= ic[term];
+        }
+
+        List<SimilarPatient> result = new ArrayList<>(top);
+        result.sort(RANKING);
+        return result;
+    }
+
+    /**
+     * Find the indexed patients annotated with all the specified terms.
+     *
+     * @param query the terms to look for; since the patients are indexed with the ancestors of their terms, general
+     *            terms also match patients annotated with more specific ones
+     * @return the identifiers of the matching patients, in no particular order; empty if the query is empty or any of
+     *         its terms is not known
+     */
+    public Set<String> findAll(Collection<String> query)
+    {
+        List<Postings> lists = new ArrayList<>(query.size());
+        for (String term : new LinkedHashSet<>(query)) {
+            Integer number = this.terms.get(term);
+            if (number == null || this.postings[number].size() == 0) {
+                return Collections.emptySet();
+            }
+            lists.add(this.postings[number]);
+        }
+        if (lists.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // Starting from the rarest term keeps the candidates few
+        lists.sort(Comparator.comparingInt(Postings::size));
+        BitSet matches = lists.get(0).toBitSet();
+        for (int i = 1; i < lists.size() && !matches.isEmpty(); ++i) {
+            matches.and(lists.get(i).toBitSet());
+        }
+        Set<String> result = new HashSet<>();
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            result.add(this.patients[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * Exactly score a patient by merging the two sorted term arrays.
+     *
+     * @param query the sorted term numbers of the query
+     * @param vector the sorted term numbers of the patient
+     * @param ic the information content of each term
+     * @param measure the similarity measure to compute
+     * @param queryInformation the total information content of the query
+     * @return the similarity score
+     */
+    private static double score(int[] query, int[] vector, double[] ic, SimilarityMeasure measure,
+        double queryInformation)
+    {
+        double shared = 0;
+        double best = 0;
+        double patientInformation = 0;
+        int q = 0;
+        for (int term : vector) {
+            patientInformation += ic[term];
+            while (q < query.length && query[q] < term) {
+                ++q;
+            }
+            if (q < query.length && query[q] == term) {
+                shared += ic[term];
+                best = Math.max(best, ic[term]);
+            }
+        }
+        if (measure == SimilarityMeasure.RESNIK) {
+            return best;
+        }
+        double total = queryInformation + patientInformation - shared;
+        return total > 0 ? shared / total : 0;
+    }
+
+    private double informationContent(int count)
+    {
+        return Math.log((this.slots.size() + 1.0) / (count + 1.0)) / LOG2;
+    }
+
+    private int getOrAddTerm(String term)
+    {
+        Integer number = this.terms.get(term);
+        if (number == null) {
+            number = this.terms.size();
+            if (number == this.termCounts.length) {
+                this.termCounts = Arrays.copyOf(this.termCounts, number * 2);
+                this.postings = Arrays.copyOf(this.postings, number * 2);
+            }
+            this.postings[number] = new Postings();
+            this.terms.put(term, number);
+        }
+        return number;
+    }
+
+    private int allocateSlot()
+    {
+        if (!this.freeSlots.isEmpty()) {
+            return this.freeSlots.pop();
+        }
+        if (this.nextSlot == this.patients.length) {
+            this.patients = Arrays.copyOf(this.patients, this.nextSlot * 2);
+            this.vectors = Arrays.copyOf(this.vectors, this.nextSlot * 2);
+        }
+        return this.nextSlot++;
+    }
+
+    /** A growable list of patient slots, in no particular order. */
+    private static final class Postings
+    {
+        private int[] slots = new int[4];
+
+        private int size;
+
+        void add(int slot)
+        {
+            if (this.size == this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, this.size * 2);
+            }
+            this.slots[this.size++] = slot;
+        }
+
+        void remove(int slot)
+        {
+            for (int i = 0; i < this.size; ++i) {
+                if (this.slots[i] == slot) {
+                    this.slots[i] = this.slots[--this.size];
+                    return;
+                }
+            }
+        }
+
+        int get(int index)
+        {
+            return this.slots[index];
+        }
+
+        int size()
+        {
+            return this.size;
+        }
+
+        BitSet toBitSet()
+        {
+            BitSet result = new BitSet();
+            for (int i = 0; i < this.size; ++i) {
+                result.set(this.slots[i]);
+            }
+            return result;
+        }
+    }
+}
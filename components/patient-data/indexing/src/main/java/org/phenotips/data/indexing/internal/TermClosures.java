@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Cache of the ancestor closures of vocabulary terms, as needed by the in-memory indexes, where each record is indexed
+ * under its terms and all their ancestors. Only the terms that were actually found in the vocabulary are cached: a term
+ * missing from a response may just as well be the result of a failed request, so it is looked up again the next time it
+ * is needed. This class is thread safe, and like {@link PatientTermIndex}, it is an implementation detail of the
+ * in-memory patient indexes, not part of the public API.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class TermClosures
+{
+    /** The vocabulary providing the terms. */
+    private final Vocabulary vocabulary;
+
+    /** The prefix of the term identifiers belonging to the vocabulary, other identifiers are never looked up. */
+    private final String prefix;
+
+    /** Term identifier to the identifiers of the term and all its ancestors. */
+    private final Map<String, Set<String>> closures = new ConcurrentHashMap<>();
+
+    /**
+     * Simple constructor.
+     *
+     * @param vocabulary the vocabulary providing the terms
+     * @param prefix the prefix of the term identifiers belonging to the vocabulary, e.g. {@code HP:}; free text and
+     *            terms from other vocabularies are ignored
+     */
+    public TermClosures(Vocabulary vocabulary, String prefix)
+    {
+        this.vocabulary = vocabulary;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Fetches the closures of all the terms not yet known with a single vocabulary request, instead of one request per
+     * term. This is only an optimization, the terms that couldn't be fetched are still looked up by {@link #get}.
+     *
+     * @param termIds the identifiers of the terms that will be needed
+     */
+    public void prefetch(Collection<String> termIds)
+    {
+        Set<String> missing = new HashSet<>();
+        for (String termId : termIds) {
+            if (accepts(termId) && !this.closures.containsKey(termId)) {
+                missing.add(termId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        for (VocabularyTerm term : this.vocabulary.getTerms(missing)) {
+            if (term != null && missing.contains(term.getId())) {
+                this.closures.put(term.getId(), getAncestorsAndSelf(term));
+            }
+        }
+    }
+
+    /**
+     * Get the identifiers of a term and all its ancestors.
+     *
+     * @param termId the identifier of the term
+     * @return an unmodifiable set, empty if the term doesn't belong to the vocabulary or is not found
+     */
+    public Set<String> get(String termId)
+    {
+        if (!accepts(termId)) {
+            return Collections.emptySet();
+        }
+        Set<String> result = this.closures.get(termId);
+        if (result == null) {
+            VocabularyTerm term = this.vocabulary.getTerm(termId);
+            if (term == null) {
+                return Collections.emptySet();
+            }
+            result = getAncestorsAndSelf(term);
+            this.closures.put(termId, result);
+        }
+        return result;
+    }
+
+    /**
+     * Forget all the cached closures, for example after the vocabulary was reindexed.
+     */
+    public void clear()
+    {
+        this.closures.clear();
+    }
+
+    private boolean accepts(String termId)
+    {
+        return StringUtils.startsWith(termId, this.prefix);
+    }
+
+    private Set<String> getAncestorsAndSelf(VocabularyTerm term)
+    {
+        Set<String> result = new HashSet<>();
+        for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
+            result.add(ancestor.getId());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilarityIndex;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.EnumUtils;
+
+/**
+ * Finds patients with similar phenotypes, among the patients that the current user can view.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Component
+@Named("patientSimilarity")
+@Singleton
+public class PatientSimilarityScriptService implements ScriptService
+{
+    private static final int DEFAULT_LIMIT = 10;
+
+    /** The wrapped index that does the actual work. */
+    @Inject
+    private PatientSimilarityIndex index;
+
+    /** Checks that the current user can view the reference patient. */
+    @Inject
+    @Named("secure")
+    private PatientRepository repository;
+
+    /**
+     * Find the ten patients most similar to a patient, using the {@link SimilarityMeasure#SIMGIC SimGIC} measure.
+     *
+     * @param patientId the identifier of the reference patient, e.g. {@code P0000123}
+     * @return the most similar patients, in descending order of their score; empty if the reference patient doesn't
+     *         exist or cannot be viewed by the current user
+     */
+    public List<SimilarPatient> findSimilar(String patientId)
+    {
+        return findSimilar(patientId, SimilarityMeasure.SIMGIC.name(), DEFAULT_LIMIT);
+    }
+
+    /**
+     * Find the patients most similar to a patient.
+     *
+     * @param patientId the identifier of the reference patient, e.g. {@code P0000123}
+     * @param measure the name of the {@link SimilarityMeasure similarity measure} to use, e.g. {@code simgic} or
+     *            {@code resnik}; unknown measures default to SimGIC
+     * @param limit the maximum number of patients to return
+     * @return the most similar patients, in descending order of their score; empty if the reference patient doesn't
+     *         exist or cannot be viewed by the current user
+     */
+    public List<SimilarPatient> findSimilar(String patientId, String measure, int limit)
+    {
+        try {
+            Patient patient = this.repository.get(patientId);
+            return this.index.findSimilar(patient, getMeasure(measure), limit);
+        } catch (SecurityException ex) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Find the patients most similar to a list of phenotypes.
+     *
+     * @param phenotypes a list of HPO term identifiers, e.g. {@code HP:0001250}
+     * @param measure the name of the {@link SimilarityMeasure similarity measure} to use, e.g. {@code simgic} or
+     *            {@code resnik}; unknown measures default to SimGIC
+     * @param limit the maximum number of patients to return
+     * @return the most similar patients, in descending order of their score
+     */
+    public List<SimilarPatient> findSimilarToPhenotype(Collection<String> phenotypes, String measure, int limit)
+    {
+        return this.index.findSimilar(phenotypes, getMeasure(measure), limit);
+    }
+
+    private SimilarityMeasure getMeasure(String name)
+    {
+        SimilarityMeasure measure =
+            EnumUtils.getEnum(SimilarityMeasure.class, name == null ? null : name.toUpperCase(Locale.ROOT));
+        return measure == null ? SimilarityMeasure.SIMGIC : measure;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilarityIndex;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientSimilarityIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientSimilarityIndexTest
+{
+    private static final String SEIZURE = "HP:0001250";
+
+    private static final String HEART = "HP:0001627";
+
+    private static final String EYE = "HP:0000478";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String ROOT = "HP:0000001";
+
+    @Rule
+    public MockitoComponentMockingRule<PatientSimilarityIndex> mocker =
+        new MockitoComponentMockingRule<>(DefaultPatientSimilarityIndex.class);
+
+    private PatientSimilarityIndex index;
+
+    private QueryManager qm;
+
+    private Query query;
+
+    private Vocabulary hpo;
+
+    private List<Object[]> rows = new ArrayList<>();
+
+    private Map<String, VocabularyTerm> terms = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.index = this.mocker.getComponentUnderTest();
+
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.getDataSpace()).thenReturn(new EntityReference("data", EntityType.SPACE));
+
+        this.query = mock(Query.class);
+        this.qm = this.mocker.getInstance(QueryManager.class);
+        when(this.qm.createQuery(anyString(), eq(Query.HQL))).thenReturn(this.query);
+        when(this.query.<Object[]>execute()).thenReturn(this.rows);
+        this.rows.add(new Object[] { "data.P1", SEIZURE });
+        this.rows.add(new Object[] { "data.P1", "Free text phenotype" });
+        this.rows.add(new Object[] { "data.P2", SEIZURE });
+        this.rows.add(new Object[] { "data.P2", HEART });
+        this.rows.add(new Object[] { "data.P3", HEART });
+        this.rows.add(new Object[] { "data.P4", EYE });
+
+        VocabularyTerm abnormality = term(ABNORMALITY, term(ROOT));
+        term(SEIZURE, abnormality);
+        term(HEART, abnormality);
+        term(EYE, abnormality);
+        this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
+        when(this.hpo.getTerms(anyCollectionOf(String.class))).then(invocation -> {
+            Set<VocabularyTerm> result = new HashSet<>();
+            for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                result.add(this.terms.get(id));
+            }
+            result.remove(null);
+            return result;
+        });
+        when(this.hpo.getTerm(anyString())).then(invocation -> this.terms.get(invocation.getArguments()[0]));
+
+        User user = mock(User.class);
+        when(this.mocker.getInstance(UserManager.class).getCurrentUser()).thenReturn(user);
+        DocumentReferenceResolver<EntityReference> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentReferenceResolver.class, EntityReference.class), "current");
+        when(resolver.resolve(any(EntityReference.class))).then(invocation -> new DocumentReference("xwiki", "data",
+            ((EntityReference) invocation.getArguments()[0]).getName()));
+        AuthorizationService access = this.mocker.getInstance(AuthorizationService.class);
+        when(access.hasAccess(eq(user), eq(Right.VIEW), any(EntityReference.class))).thenReturn(true);
+        when(access.hasAccess(user, Right.VIEW, new DocumentReference("xwiki", "data", "P3"))).thenReturn(false);
+    }
+
+    @Test
+    public void findSimilarExcludesTheReferencePatient()
+    {
+        Patient patient = patient("P1", feature(SEIZURE, true), feature(EYE, false), feature("", true));
+
+        List<SimilarPatient> result = this.index.findSimilar(patient, SimilarityMeasure.SIMGIC, 10);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("P2", result.get(0).getId());
+        Assert.assertEquals(0.5, result.get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    public void findSimilarOnlyReturnsAccessiblePatients()
+    {
+        List<SimilarPatient> result =
+            this.index.findSimilar(Collections.singleton(HEART), SimilarityMeasure.RESNIK, 10);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("P2", result.get(0).getId());
+        Assert.assertEquals(Math.log(5.0 / 3) / Math.log(2), result.get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    public void findSimilarDefaultsToSimGIC()
+    {
+        Assert.assertEquals(Collections.singletonList(new SimilarPatient("P4", 1)),
+            this.index.findSimilar(Arrays.asList(EYE, "HP:9999999", "unknown"), null, 10));
+    }
+
+    @Test
+    public void emptyQueriesDoNotLoadTheIndex() throws QueryException
+    {
+        Assert.assertTrue(this.index.findSimilar((Patient) null, SimilarityMeasure.SIMGIC, 10).isEmpty());
+        Assert.assertTrue(this.index.findSimilar((Collection<String>) null, SimilarityMeasure.SIMGIC, 10).isEmpty());
+        Assert.assertTrue(this.index.findSimilar(Collections.singleton(ROOT), SimilarityMeasure.SIMGIC, 0).isEmpty());
+        Assert.assertTrue(this.index.findSimilar(Collections.singleton("unknown"), SimilarityMeasure.SIMGIC, 10)
+            .isEmpty());
+        verify(this.query, never()).execute();
+    }
+
+    @Test
+    public void indexIsLoadedOnlyOnce() throws QueryException
+    {
+        this.index.findSimilar(Collections.singleton(SEIZURE), SimilarityMeasure.SIMGIC, 10);
+        this.index.findSimilar(Collections.singleton(HEART), SimilarityMeasure.SIMGIC, 10);
+
+        verify(this.query, times(1)).execute();
+        verify(this.query).bindValue("patientClass", "PhenoTips.PatientClass");
+        verify(this.query).bindValue("space", "data.%");
+        verify(this.query).bindValue("property", "phenotype");
+        // The stored terms are fetched at once, and free text is never looked up
+        verify(this.hpo, times(1)).getTerms(anyCollectionOf(String.class));
+        verify(this.hpo, never()).getTerm("Free text phenotype");
+    }
+
+    @Test
+    public void changesAreIgnoredBeforeTheIndexIsLoaded() throws QueryException
+    {
+        Patient patient = patient("P5", feature(EYE, true));
+        this.index.index(patient);
+        this.index.delete(patient);
+
+        verify(this.query, never()).execute();
+        verify(patient, never()).getFeatures();
+    }
+
+    @Test
+    public void changesAreReflectedAfterTheIndexIsLoaded()
+    {
+        Assert.assertEquals(1, this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).size());
+
+        this.index.index(patient("P5", feature(EYE, true)));
+        List<SimilarPatient> result = this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10);
+        Assert.assertEquals(Arrays.asList(new SimilarPatient("P4", 1), new SimilarPatient("P5", 1)), result);
+
+        this.index.delete(patient("P4"));
+        this.index.delete(null);
+        result = this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10);
+        Assert.assertEquals(Collections.singletonList(new SimilarPatient("P5", 1)), result);
+    }
+
+    @Test
+    public void failedLoadsAreRetriedAfterAChange() throws QueryException
+    {
+        when(this.query.execute()).thenThrow(new QueryException("failed", this.query, null)).thenReturn(
+            Collections.<Object>unmodifiableList(this.rows));
+
+        Assert.assertTrue(this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).isEmpty());
+        // The failure is remembered, searching again doesn't reload everything
+        Assert.assertTrue(this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).isEmpty());
+        verify(this.query, times(1)).execute();
+
+        this.index.index(patient("P5", feature(EYE, true)));
+        Assert.assertEquals(1, this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).size());
+        verify(this.query, times(2)).execute();
+    }
+
+    @Test
+    public void failedLoadsAreRetriedOnReindex() throws QueryException
+    {
+        when(this.query.execute()).thenThrow(new QueryException("failed", this.query, null)).thenReturn(
+            Collections.<Object>unmodifiableList(this.rows));
+
+        Assert.assertTrue(this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).isEmpty());
+        this.index.reindex();
+
+        Assert.assertEquals(1, this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).size());
+    }
+
+    @Test
+    public void changesMadeWhileLoadingAreNotLost() throws Exception
+    {
+        Patient patient = patient("P5", feature(EYE, true));
+        Thread[] writer = new Thread[1];
+        when(this.query.execute()).then(invocation -> {
+            // The patient is saved while the stored phenotypes are being read
+            writer[0] = new Thread(() -> this.index.index(patient));
+            writer[0].start();
+            while (writer[0].getState() != Thread.State.WAITING && writer[0].isAlive()) {
+                Thread.yield();
+            }
+            return this.rows;
+        });
+
+        this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10);
+        writer[0].join();
+
+        Assert.assertEquals(2, this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).size());
+    }
+
+    @Test
+    public void allTermsAreIndexedWhenTheVocabularyReturnsPartialResults()
+    {
+        // Like an unpaginated Solr query, at most 10 of the requested terms are returned at once
+        when(this.hpo.getTerms(anyCollectionOf(String.class))).then(invocation -> {
+            Set<VocabularyTerm> result = new HashSet<>();
+            for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                if (result.size() < 10 && this.terms.containsKey(id)) {
+                    result.add(this.terms.get(id));
+                }
+            }
+            return result;
+        });
+        VocabularyTerm abnormality = this.terms.get(ABNORMALITY);
+        for (int i = 0; i < 1500; ++i) {
+            String id = String.format("HP:1%06d", i);
+            term(id, abnormality);
+            this.rows.add(new Object[] { "data.Q" + i, id });
+        }
+
+        // Each of the patients is found through a term that was not part of a partial response
+        Assert.assertEquals(1, this.index.findSimilar(Collections.singleton("HP:1001499"), SimilarityMeasure.SIMGIC, 10)
+            .size());
+        Assert.assertEquals(1, this.index.findSimilar(Collections.singleton("HP:1000000"), SimilarityMeasure.SIMGIC, 10)
+            .size());
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i < 1500; i += 100) {
+            String id = String.format("HP:1%06d", i);
+            for (SimilarPatient patient : this.index.findSimilar(Collections.singleton(id), SimilarityMeasure.SIMGIC,
+                10)) {
+                found.add(patient.getId());
+            }
+        }
+        Assert.assertEquals(15, found.size());
+    }
+
+    @Test
+    public void reindexReloadsPatientsAndTerms() throws QueryException
+    {
+        this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10);
+        this.rows.add(new Object[] { "data.P5", EYE });
+
+        this.index.reindex();
+
+        Assert.assertEquals(2, this.index.findSimilar(Collections.singleton(EYE), SimilarityMeasure.SIMGIC, 10).size());
+        verify(this.query, times(2)).execute();
+        verify(this.hpo, times(2)).getTerms(anyCollectionOf(String.class));
+    }
+
+    private VocabularyTerm term(String id, VocabularyTerm... parents)
+    {
+        VocabularyTerm term = mock(VocabularyTerm.class);
+        when(term.getId()).thenReturn(id);
+        Set<VocabularyTerm> closure = new HashSet<>();
+        closure.add(term);
+        for (VocabularyTerm parent : parents) {
+            closure.addAll(parent.getAncestorsAndSelf());
+        }
+        when(term.getAncestorsAndSelf()).thenReturn(closure);
+        this.terms.put(id, term);
+        return term;
+    }
+
+    private Feature feature(String id, boolean present)
+    {
+        Feature feature = mock(Feature.class);
+        when(feature.getId()).thenReturn(id);
+        when(feature.isPresent()).thenReturn(present);
+        return feature;
+    }
+
+    private Patient patient(String id, Feature... features)
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.getId()).thenReturn(id);
+        doReturn(new HashSet<>(Arrays.asList(features))).when(patient).getFeatures();
+        return patient;
+    }
+}
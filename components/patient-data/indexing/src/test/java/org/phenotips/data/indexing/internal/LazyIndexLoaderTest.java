@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link LazyIndexLoader}.
+ *
+ * @version $Id$
+ */
+public class LazyIndexLoaderTest
+{
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The results of the next loads, loads succeed once there are no more results to return. */
+    private final Queue<Boolean> results = new LinkedList<>();
+
+    /** Whether each change reported during a load had to be applied. */
+    private final List<Boolean> changesDuringLoad = new ArrayList<>();
+
+    private int loads;
+
+    private LazyIndexLoader loader;
+
+    @Before
+    public void setUp()
+    {
+        this.loader = new LazyIndexLoader(this.lock, () -> {
+            ++this.loads;
+            Assert.assertTrue(((ReentrantReadWriteLock) this.lock).isWriteLockedByCurrentThread());
+            this.changesDuringLoad.add(this.loader.isUpdateNeeded("changed"));
+            return this.results.isEmpty() || this.results.poll();
+        });
+    }
+
+    @Test
+    public void indexIsLoadedOnlyOnce()
+    {
+        this.loader.ensureLoaded();
+        this.loader.ensureLoaded();
+
+        Assert.assertTrue(this.loader.isLoaded());
+        Assert.assertEquals(1, this.loads);
+    }
+
+    @Test
+    public void changesAreOnlyNeededOnceTheIndexStartsLoading()
+    {
+        Assert.assertFalse(this.loader.isUpdateNeeded("changed"));
+        Assert.assertFalse(this.loader.isUpdateNeeded(null));
+
+        this.loader.ensureLoaded();
+
+        Assert.assertEquals(Arrays.asList(true), this.changesDuringLoad);
+        Assert.assertTrue(this.loader.isUpdateNeeded("changed"));
+        Assert.assertFalse(this.loader.isUpdateNeeded(null));
+    }
+
+    @Test
+    public void failedLoadsAreOnlyRetriedAfterAChange()
+    {
+        this.results.add(false);
+
+        this.loader.ensureLoaded();
+        Assert.assertFalse(this.loader.isLoaded());
+        this.loader.ensureLoaded();
+        Assert.assertEquals(1, this.loads);
+
+        Assert.assertFalse(this.loader.isUpdateNeeded("changed"));
+        this.loader.ensureLoaded();
+        Assert.assertTrue(this.loader.isLoaded());
+        Assert.assertEquals(2, this.loads);
+    }
+
+    @Test
+    public void reloadIgnoresRecentFailures()
+    {
+        this.results.add(false);
+        this.loader.ensureLoaded();
+
+        this.loader.reload();
+
+        Assert.assertTrue(this.loader.isLoaded());
+        Assert.assertEquals(2, this.loads);
+    }
+
+    @Test
+    public void failedReloadsKeepTheLoadedIndex()
+    {
+        this.loader.ensureLoaded();
+        this.results.add(false);
+
+        this.loader.reload();
+
+        Assert.assertTrue(this.loader.isLoaded());
+        Assert.assertEquals(2, this.loads);
+        this.loader.ensureLoaded();
+        Assert.assertEquals(2, this.loads);
+    }
+}
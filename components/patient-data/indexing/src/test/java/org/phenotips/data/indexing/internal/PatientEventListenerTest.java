@@ -21,6 +21,7 @@
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
 import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PatientSimilarityIndex;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.observation.EventListener;
@@ -46,6 +47,8 @@
     @Mock
     private PatientIndexer patientIndexer;
 
+    private PatientSimilarityIndex similarityIndex;
+
     @Mock
     private Patient patient;
 
@@ -58,6 +61,7 @@ public void setUp() throws ComponentLookupException
 
         this.eventListener = this.mocker.getComponentUnderTest();
         this.patientIndexer = this.mocker.getInstance(PatientIndexer.class);
+        this.similarityIndex = this.mocker.getInstance(PatientSimilarityIndex.class);
     }
 
     @Test
@@ -68,6 +72,7 @@ public void deletePatientTest()
 
         this.eventListener.onEvent(patientDeleteEvent, mock(Object.class), mock(Object.class));
         verify(this.patientIndexer).delete(this.patient);
+        verify(this.similarityIndex).delete(this.patient);
     }
 
     @Test
@@ -78,5 +83,6 @@ public void indexPatientTest()
 
         this.eventListener.onEvent(patientEvent, mock(Object.class), mock(Object.class));
         verify(this.patientIndexer).index(this.patient);
+        verify(this.similarityIndex).index(this.patient);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PatientTermIndex}.
+ *
+ * @version $Id$
+ */
+public class PatientTermIndexTest
+{
+    private static final String ROOT = "HP:0000001";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String SEIZURE = "HP:0001250";
+
+    private static final String HEART = "HP:0001627";
+
+    private static final String EYE = "HP:0000478";
+
+    private PatientTermIndex index;
+
+    @Before
+    public void setUp()
+    {
+        this.index = new PatientTermIndex();
+        this.index.put("P1", Arrays.asList(ROOT, ABNORMALITY, SEIZURE));
+        this.index.put("P2", Arrays.asList(ROOT, ABNORMALITY, SEIZURE, HEART));
+        this.index.put("P3", Arrays.asList(ROOT, ABNORMALITY, HEART));
+        this.index.put("P4", Arrays.asList(ROOT, ABNORMALITY, EYE));
+    }
+
+    @Test
+    public void informationContentDependsOnTermFrequency()
+    {
+        Assert.assertEquals(0, this.index.getInformationContent(ROOT), 0);
+        Assert.assertEquals(log2(5.0 / 3), this.index.getInformationContent(SEIZURE), 1e-9);
+        Assert.assertEquals(log2(5.0 / 2), this.index.getInformationContent(EYE), 1e-9);
+        Assert.assertEquals(log2(5), this.index.getInformationContent("HP:0000707"), 1e-9);
+    }
+
+    @Test
+    public void simGICRanksPatientsBySharedInformation()
+    {
+        List<SimilarPatient> result =
+            this.index.search(Arrays.asList(ROOT, ABNORMALITY, SEIZURE), SimilarityMeasure.SIMGIC, 10, id -> true);
+
+        double seizure = log2(5.0 / 3);
+        double heart = log2(5.0 / 3);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(new SimilarPatient("P1", 1), result.get(0));
+        Assert.assertEquals("P2", result.get(1).getId());
+        Assert.assertEquals(seizure / (seizure + heart), result.get(1).getScore(), 1e-9);
+    }
+
+    @Test
+    public void resnikUsesTheMostInformativeSharedTerm()
+    {
+        List<SimilarPatient> result =
+            this.index.search(Arrays.asList(ROOT, ABNORMALITY, SEIZURE, EYE), SimilarityMeasure.RESNIK, 10, id -> true);
+
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("P4", result.get(0).getId());
+        Assert.assertEquals(log2(5.0 / 2), result.get(0).getScore(), 1e-9);
+        // Equal scores are ordered by identifier
+        Assert.assertEquals("P1", result.get(1).getId());
+        Assert.assertEquals("P2", result.get(2).getId());
+    }
+
+    @Test
+    public void searchRespectsLimitAndFilter()
+    {
+        List<SimilarPatient> result =
+            this.index.search(Arrays.asList(ROOT, SEIZURE, HEART), SimilarityMeasure.SIMGIC, 1, id -> true);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(new SimilarPatient("P2", 1), result.get(0));
+
+        result = this.index.search(Arrays.asList(ROOT, SEIZURE, HEART), SimilarityMeasure.SIMGIC, 1,
+            id -> !"P2".equals(id));
+        Assert.assertEquals(1, result.size());
+        Assert.assertNotEquals("P2", result.get(0).getId());
+
+        Assert.assertTrue(this.index.search(Arrays.asList(SEIZURE), SimilarityMeasure.SIMGIC, 0, id -> true).isEmpty());
+    }
+
+    @Test
+    public void termsSharedByEveryoneDoNotMatch()
+    {
+        Assert.assertTrue(
+            this.index.search(Arrays.asList(ROOT, ABNORMALITY), SimilarityMeasure.SIMGIC, 10, id -> true).isEmpty());
+        Assert.assertTrue(this.index.search(Collections.singleton("HP:0000707"), SimilarityMeasure.RESNIK, 10,
+            id -> true).isEmpty());
+    }
+
+    @Test
+    public void findAllIntersectsThePostings()
+    {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P1", "P2")),
+            this.index.findAll(Arrays.asList(ABNORMALITY, SEIZURE)));
+        Assert.assertEquals(Collections.singleton("P2"), this.index.findAll(Arrays.asList(SEIZURE, HEART, ROOT)));
+        Assert.assertEquals(4, this.index.findAll(Collections.singleton(ROOT)).size());
+        Assert.assertTrue(this.index.findAll(Arrays.asList(SEIZURE, EYE)).isEmpty());
+        Assert.assertTrue(this.index.findAll(Arrays.asList(SEIZURE, "HP:0000707")).isEmpty());
+        Assert.assertTrue(this.index.findAll(Collections.<String>emptySet()).isEmpty());
+    }
+
+    @Test
+    public void findAllReflectsUpdatesAndRemovals()
+    {
+        this.index.remove("P2");
+        this.index.put("P4", Arrays.asList(ROOT, ABNORMALITY, SEIZURE));
+        this.index.put("P3", Collections.<String>emptySet());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P1", "P4")), this.index.findAll(Arrays.asList(SEIZURE)));
+        Assert.assertTrue(this.index.findAll(Arrays.asList(HEART)).isEmpty());
+        Assert.assertTrue(this.index.findAll(Arrays.asList(EYE)).isEmpty());
+    }
+
+    @Test
+    public void updatesAndRemovalsAreReflectedInSearches()
+    {
+        this.index.put("P1", Arrays.asList(ROOT, ABNORMALITY, EYE));
+        this.index.remove("P2");
+        this.index.remove("P5");
+        Assert.assertEquals(3, this.index.size());
+
+        Assert.assertTrue(
+            this.index.search(Arrays.asList(ROOT, SEIZURE), SimilarityMeasure.SIMGIC, 10, id -> true).isEmpty());
+        List<SimilarPatient> result =
+            this.index.search(Arrays.asList(ROOT, ABNORMALITY, EYE), SimilarityMeasure.SIMGIC, 10, id -> true);
+        Assert.assertEquals(Arrays.asList(new SimilarPatient("P1", 1), new SimilarPatient("P4", 1)), result);
+
+        // Freed slots are reused
+        this.index.put("P5", Arrays.asList(ROOT, SEIZURE));
+        this.index.put("P6", Collections.emptyList());
+        Assert.assertEquals(4, this.index.size());
+        Assert.assertEquals("P5",
+            this.index.search(Arrays.asList(SEIZURE), SimilarityMeasure.SIMGIC, 10, id -> true).get(0).getId());
+
+        this.index.clear();
+        Assert.assertEquals(0, this.index.size());
+        Assert.assertTrue(
+            this.index.search(Arrays.asList(SEIZURE), SimilarityMeasure.SIMGIC, 10, id -> true).isEmpty());
+    }
+
+    @Test
+    public void prunedSearchesReturnTheSameScoresAsAFullScan()
+    {
+        Random random = new Random(42);
+        Map<String, Set<String>> patients = new HashMap<>();
+        this.index.clear();
+        for (int i = 0; i < 2000; ++i) {
+            Set<String> phenotype = randomPhenotype(random);
+            this.index.put("P" + i, phenotype);
+            patients.put("P" + i, phenotype);
+        }
+        for (int q = 0; q < 20; ++q) {
+            Set<String> query = randomPhenotype(random);
+            for (SimilarityMeasure measure : SimilarityMeasure.values()) {
+                List<SimilarPatient> expected = fullScan(patients, query, measure, 10);
+                List<SimilarPatient> actual = this.index.search(query, measure, 10, id -> true);
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); ++i) {
+                    Assert.assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+                }
+            }
+        }
+    }
+
+    /** Generates a phenotype closed over a synthetic hierarchy where the parent of term {@code n} is {@code n / 3}. */
+    private Set<String> randomPhenotype(Random random)
+    {
+        Set<String> result = new HashSet<>();
+        result.add(ROOT);
+        int terms = 1 + random.nextInt(8);
+        for (int i = 0; i < terms; ++i) {
+            for (int term = (int) Math.abs(random.nextGaussian() * 300); term > 0; term /= 3) {
+                result.add("T" + term);
+            }
+        }
+        return result;
+    }
+
+    private List<SimilarPatient> fullScan(Map<String, Set<String>> patients, Set<String> query,
+        SimilarityMeasure measure, int limit)
+    {
+        double queryInformation = 0;
+        for (String term : query) {
+            queryInformation += this.index.getInformationContent(term);
+        }
+        List<SimilarPatient> result = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> patient : patients.entrySet()) {
+            double shared = 0;
+            double best = 0;
+            double patientInformation = 0;
+            for (String term : patient.getValue()) {
+                double ic = this.index.getInformationContent(term);
+                patientInformation += ic;
+                if (query.contains(term)) {
+                    shared += ic;
+                    best = Math.max(best, ic);
+                }
+            }
+            double score = measure == SimilarityMeasure.RESNIK ? best
+                : shared / (queryInformation + patientInformation - shared);
+            if (score > 0) {
+                result.add(new SimilarPatient(patient.getKey(), score));
+            }
+        }
+        result.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    private static double log2(double value)
+    {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link TermClosures} class.
+ *
+ * @version $Id$
+ */
+public class TermClosuresTest
+{
+    private static final String SEIZURE = "HP:0001250";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private Vocabulary hpo;
+
+    private VocabularyTerm seizure;
+
+    private TermClosures closures;
+
+    @Before
+    public void setUp()
+    {
+        this.hpo = mock(Vocabulary.class);
+        VocabularyTerm abnormality = mock(VocabularyTerm.class);
+        when(abnormality.getId()).thenReturn(ABNORMALITY);
+        this.seizure = mock(VocabularyTerm.class);
+        when(this.seizure.getId()).thenReturn(SEIZURE);
+        when(this.seizure.getAncestorsAndSelf()).thenReturn(new HashSet<>(Arrays.asList(this.seizure, abnormality)));
+        this.closures = new TermClosures(this.hpo, "HP:");
+    }
+
+    @Test
+    public void prefetchedTermsAreNotLookedUpAgain()
+    {
+        when(this.hpo.getTerms(anyCollectionOf(String.class))).thenReturn(Collections.singleton(this.seizure));
+
+        this.closures.prefetch(Arrays.asList(SEIZURE, "Free text"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(SEIZURE, ABNORMALITY)), this.closures.get(SEIZURE));
+        verify(this.hpo).getTerms(Collections.singleton(SEIZURE));
+        verify(this.hpo, never()).getTerm(anyString());
+    }
+
+    @Test
+    public void termsMissingFromThePrefetchAreLookedUpLater()
+    {
+        // E.g. the request failed, or was truncated
+        when(this.hpo.getTerms(anyCollectionOf(String.class))).thenReturn(Collections.emptySet());
+        when(this.hpo.getTerm(SEIZURE)).thenReturn(null, this.seizure);
+
+        this.closures.prefetch(Collections.singleton(SEIZURE));
+
+        Assert.assertTrue(this.closures.get(SEIZURE).isEmpty());
+        Assert.assertEquals(2, this.closures.get(SEIZURE).size());
+        Assert.assertEquals(2, this.closures.get(SEIZURE).size());
+        verify(this.hpo, times(2)).getTerm(SEIZURE);
+    }
+
+    @Test
+    public void otherTermsAreIgnored()
+    {
+        Assert.assertTrue(this.closures.get("Free text").isEmpty());
+        Assert.assertTrue(this.closures.get(null).isEmpty());
+        this.closures.prefetch(Arrays.asList("Free text", "ORDO:1"));
+
+        verify(this.hpo, never()).getTerm(anyString());
+        verify(this.hpo, never()).getTerms(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void clearForgetsTheClosures()
+    {
+        when(this.hpo.getTerm(SEIZURE)).thenReturn(this.seizure);
+        this.closures.get(SEIZURE);
+        this.closures.clear();
+        this.closures.get(SEIZURE);
+
+        verify(this.hpo, times(2)).getTerm(SEIZURE);
+    }
+}
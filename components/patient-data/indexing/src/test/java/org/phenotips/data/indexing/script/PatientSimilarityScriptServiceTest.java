@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilarityIndex;
+import org.phenotips.data.indexing.SimilarPatient;
+import org.phenotips.data.indexing.SimilarityMeasure;
+
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientSimilarityScriptService} component.
+ *
+ * @version $Id$
+ */
+public class PatientSimilarityScriptServiceTest
+{
+    @Rule
+    public MockitoComponentMockingRule<ScriptService> mocker =
+        new MockitoComponentMockingRule<>(PatientSimilarityScriptService.class);
+
+    private PatientSimilarityScriptService service;
+
+    private PatientSimilarityIndex index;
+
+    private PatientRepository repository;
+
+    private Patient patient = mock(Patient.class);
+
+    private List<SimilarPatient> similar = Collections.singletonList(new SimilarPatient("P2", 0.5));
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.service = (PatientSimilarityScriptService) this.mocker.getComponentUnderTest();
+        this.index = this.mocker.getInstance(PatientSimilarityIndex.class);
+        this.repository = this.mocker.getInstance(PatientRepository.class, "secure");
+        when(this.repository.get("P1")).thenReturn(this.patient);
+    }
+
+    @Test
+    public void findSimilarUsesSimGICByDefault()
+    {
+        when(this.index.findSimilar(this.patient, SimilarityMeasure.SIMGIC, 10)).thenReturn(this.similar);
+        Assert.assertSame(this.similar, this.service.findSimilar("P1"));
+    }
+
+    @Test
+    public void findSimilarParsesTheMeasure()
+    {
+        when(this.index.findSimilar(this.patient, SimilarityMeasure.RESNIK, 5)).thenReturn(this.similar);
+        Assert.assertSame(this.similar, this.service.findSimilar("P1", "resnik", 5));
+
+        this.service.findSimilar("P1", "unknown", 5);
+        verify(this.index).findSimilar(this.patient, SimilarityMeasure.SIMGIC, 5);
+    }
+
+    @Test
+    public void findSimilarReturnsNothingForInaccessiblePatients()
+    {
+        when(this.repository.get("P3")).thenThrow(new SecurityException());
+        Assert.assertTrue(this.service.findSimilar("P3", "simgic", 5).isEmpty());
+    }
+
+    @Test
+    public void findSimilarToPhenotypeForwardsTheQuery()
+    {
+        List<String> phenotype = Arrays.asList("HP:0001250", "HP:0001627");
+        when(this.index.findSimilar(phenotype, SimilarityMeasure.SIMGIC, 3)).thenReturn(this.similar);
+        Assert.assertSame(this.similar, this.service.findSimilarToPhenotype(phenotype, null, 3));
+    }
+}
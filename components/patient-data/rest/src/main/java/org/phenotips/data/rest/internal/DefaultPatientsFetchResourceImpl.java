@@ -21,7 +21,6 @@
 import org.phenotips.data.PatientRepository;
 import org.phenotips.data.rest.PatientResource;
 import org.phenotips.data.rest.PatientsFetchResource;
-import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.rest.Autolinker;
 
 import org.xwiki.component.annotation.Component;
@@ -33,7 +32,11 @@
 import org.xwiki.rest.XWikiResource;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -42,18 +45,14 @@
 import javax.inject.Singleton;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.json.JSONObject;
+import org.json.JSONArray;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.Version;
-import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.collect.ImmutableSet;
 
 /**
@@ -67,8 +66,8 @@
 @Singleton
 public class DefaultPatientsFetchResourceImpl extends XWikiResource implements PatientsFetchResource
 {
-    /** Jackson object mapper to facilitate array serialization. */
-    private final ObjectMapper objectMapper = getCustomObjectMapper();
+    /** Factory for the JSON streams used for writing the response. */
+    private final JsonFactory jsonFactory = new JsonFactory();
 
     /** The query manager for patient retrieval. */
     @Inject
@@ -96,18 +95,19 @@ public Response fetchPatients()
 
         this.slf4Jlogger.debug("Retrieving patient records with external IDs [{}] and internal IDs [{}]", eids, ids);
 
-        // Build a set of patients from the provided external and/or internal ID data.
-        final ImmutableSet.Builder<PrimaryEntity> patientsBuilder = ImmutableSet.builder();
+        // Build a set of patient identifiers from the provided external and/or internal ID data.
+        final ImmutableSet.Builder<String> patientIdsBuilder = ImmutableSet.builder();
 
         try {
-            addEids(patientsBuilder, eids);
-            addIds(patientsBuilder, ids);
-            // Generate JSON for all retrieved patients.
-            final String json = this.objectMapper.writeValueAsString(patientsBuilder.build());
+            addEids(patientIdsBuilder, eids);
+            addIds(patientIdsBuilder, ids);
+            final Set<String> patientIds = patientIdsBuilder.build();
+            // The response is written after this method returns, when the request context and the current user may
+            // already be gone, so the accessible patients and their links are resolved now, and only their
+            // serialization is streamed
+            final Map<Patient, String> patients = getPatients(patientIds);
+            final StreamingOutput json = output -> writePatients(patients, output);
             return Response.ok(json, MediaType.APPLICATION_JSON_TYPE).build();
-        } catch (final JsonProcessingException ex) {
-            this.slf4Jlogger.error("Failed to serialize patients [{}] to JSON: {}", eids, ex.getMessage());
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
         } catch (final QueryException ex) {
             this.slf4Jlogger.error("Failed to retrieve patients with external ids [{}]: {}", eids, ex.getMessage());
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -115,106 +115,116 @@ public Response fetchPatients()
     }
 
     /**
-     * Retrieves patient entities given a list of external patient IDs.
+     * Retrieves patient identifiers given a list of external patient IDs.
      *
-     * @param patientsBuilder a patient entity set builder
+     * @param patientIdsBuilder a patient identifier set builder
      * @param eids a list of external patient IDs, as strings
      * @throws QueryException if the query fails
      */
-    private void addEids(@Nonnull final ImmutableSet.Builder<PrimaryEntity> patientsBuilder,
+    private void addEids(@Nonnull final ImmutableSet.Builder<String> patientIdsBuilder,
         @Nonnull final List<Object> eids) throws QueryException
     {
         if (CollectionUtils.isNotEmpty(eids)) {
-            collectPatientsFromEids(patientsBuilder, eids);
+            collectPatientIdsFromEids(patientIdsBuilder, eids);
         }
     }
 
     /**
-     * Retrieves and collects patient entities that correspond to the provided external ID.
+     * Retrieves and collects the internal patient identifiers that correspond to the provided external IDs.
      *
-     * @param patientsBuilder a patient entity set builder
+     * @param patientIdsBuilder a patient identifier set builder
      * @param eids external patient IDs, as a list
      * @throws QueryException if the query fails
      */
-    private void collectPatientsFromEids(@Nonnull final ImmutableSet.Builder<PrimaryEntity> patientsBuilder,
+    private void collectPatientIdsFromEids(@Nonnull final ImmutableSet.Builder<String> patientIdsBuilder,
         @Nonnull final List<Object> eids) throws QueryException
     {
         final Query q = this.qm.createQuery("from doc.object(PhenoTips.PatientClass) p where p.external_id in (:eids)",
             Query.XWQL);
         q.bindValue("eids", eids);
         final List<Object> patientIds = q.execute();
-        addIds(patientsBuilder, patientIds);
+        addIds(patientIdsBuilder, patientIds);
     }
 
     /**
-     * Retrieves patient entities given a list of internal patient IDs.
+     * Collects the non-blank internal patient IDs.
      *
-     * @param patientsBuilder a patient entity set builder
+     * @param patientIdsBuilder a patient identifier set builder
      * @param ids a list of patient ids, as strings
      */
-    private void addIds(@Nonnull final ImmutableSet.Builder<PrimaryEntity> patientsBuilder,
+    private void addIds(@Nonnull final ImmutableSet.Builder<String> patientIdsBuilder,
         @Nonnull final List<Object> ids)
     {
         for (final Object id : ids) {
             if (StringUtils.isNotBlank((String) id)) {
-                addPatientFromId(patientsBuilder, id);
+                patientIdsBuilder.add((String) id);
             }
         }
     }
 
     /**
-     * Given the patient's internal ID, retrieves the patient entity, if it exists and if the user has view rights, and
-     * adds it to the set of patient entities.
+     * Loads the requested patients that the current user can access, along with the links to their resources.
      *
-     * @param patientsBuilder a patient entity set builder
-     * @param id an internal patient ID
+     * @param patientIds the internal identifiers of the requested patients
+     * @return the accessible patients, in the requested order, each with its links serialized as a JSON array
      */
-    private void addPatientFromId(@Nonnull final ImmutableSet.Builder<PrimaryEntity> patientsBuilder,
-        @Nonnull final Object id)
+    private Map<Patient, String> getPatients(@Nonnull final Set<String> patientIds)
     {
-        try {
-            // Try to get the patient entity.
-            final PrimaryEntity patient = this.repository.get((String) id);
-            // If user has view rights and patient with the provided ID exists, add patient to patient set.
+        final Map<Patient, String> result = new LinkedHashMap<>();
+        for (final String id : patientIds) {
+            final Patient patient = getPatient(id);
             if (patient != null) {
-                patientsBuilder.add(patient);
+                result.put(patient, new JSONArray(this.autolinker.get()
+                    .forSecondaryResource(PatientResource.class, this.uriInfo)
+                    .withExtraParameters("entity-id", patient.getId())
+                    .withExtraParameters("entity-type", "patients")
+                    .build()).toString());
             }
-        } catch (final SecurityException ex) {
-            this.slf4Jlogger.warn("Failed to retrieve patient with ID [{}]: {}", id, ex.getMessage());
         }
+        return result;
     }
 
     /**
-     * A custom object mapper to facilitate serializing a list of {@link Patient} objects.
+     * Writes a JSON array with the requested patients, serializing one patient at a time.
      *
-     * @return an object mapper that can serialize {@link Patient} objects
+     * @param patients the accessible patients, each with its serialized links
+     * @param output the response stream
+     * @throws IOException if writing the response fails
      */
-    private ObjectMapper getCustomObjectMapper()
+    private void writePatients(@Nonnull final Map<Patient, String> patients, @Nonnull final OutputStream output)
+        throws IOException
     {
-        final ObjectMapper mapper = new ObjectMapper();
-        SimpleModule m = new SimpleModule("PrimaryEntitySerializer", new Version(1, 0, 0, "", "org.phenotips",
-            "PatientReferenceSerializer"));
-        m.addSerializer(PrimaryEntity.class, new PrimaryEntitySerializer());
-        mapper.registerModule(m);
-        return mapper;
+        try (JsonGenerator generator = this.jsonFactory.createGenerator(output)) {
+            // The response stream is managed by the container
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            for (final Map.Entry<Patient, String> patient : patients.entrySet()) {
+                generator.writeStartObject();
+                patient.getKey().writeJSON(generator, null);
+                generator.writeFieldName("links");
+                generator.writeRawValue(patient.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (final IOException ex) {
+            this.slf4Jlogger.error("Failed to serialize patients to JSON: {}", ex.getMessage());
+            throw ex;
+        }
     }
 
     /**
-     * A custom serializer for primary entities.
+     * Given the patient's internal ID, retrieves the patient entity, if it exists and if the user has view rights.
+     *
+     * @param id an internal patient ID
+     * @return the patient, or {@code null} if it doesn't exist or isn't accessible
      */
-    private final class PrimaryEntitySerializer extends JsonSerializer<PrimaryEntity>
+    private Patient getPatient(@Nonnull final String id)
     {
-        @Override
-        public void serialize(final PrimaryEntity primaryEntity, final JsonGenerator jgen,
-            final SerializerProvider provider) throws IOException
-        {
-            final JSONObject json = primaryEntity.toJSON();
-            json.put("links", DefaultPatientsFetchResourceImpl.this.autolinker.get()
-                .forSecondaryResource(PatientResource.class, DefaultPatientsFetchResourceImpl.this.uriInfo)
-                .withExtraParameters("entity-id", primaryEntity.getId())
-                .withExtraParameters("entity-type", "patients")
-                .build());
-            jgen.writeRawValue(json.toString());
+        try {
+            return this.repository.get(id);
+        } catch (final SecurityException ex) {
+            this.slf4Jlogger.warn("Failed to retrieve patient with ID [{}]: {}", id, ex.getMessage());
         }
+        return null;
     }
 }
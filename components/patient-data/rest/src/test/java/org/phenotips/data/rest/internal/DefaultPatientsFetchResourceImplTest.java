@@ -34,12 +34,16 @@
 import org.xwiki.query.internal.DefaultQuery;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.json.JSONArray;
@@ -50,8 +54,10 @@
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.collect.ImmutableList;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -59,6 +65,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -118,7 +125,7 @@
     private final Collection<String> uriList = ImmutableList.of("http://uri");
 
     @Before
-    public void setUp() throws ComponentLookupException, QueryException
+    public void setUp() throws ComponentLookupException, QueryException, IOException
     {
         MockitoAnnotations.initMocks(this);
 
@@ -151,9 +158,12 @@ public void setUp() throws ComponentLookupException, QueryException
         final QueryManager qm = this.mocker.getInstance(QueryManager.class);
         doReturn(this.query).when(qm).createQuery(Matchers.anyString(), Matchers.anyString());
 
-        when(this.patient1.toJSON()).thenReturn(this.patient1JSON);
-        when(this.patient2.toJSON()).thenReturn(this.patient2JSON);
-        when(this.patient3.toJSON()).thenReturn(this.patient3JSON);
+        doAnswer(writeFields(this.patient1JSON)).when(this.patient1).writeJSON(any(JsonGenerator.class),
+            any(Collection.class));
+        doAnswer(writeFields(this.patient2JSON)).when(this.patient2).writeJSON(any(JsonGenerator.class),
+            any(Collection.class));
+        doAnswer(writeFields(this.patient3JSON)).when(this.patient3).writeJSON(any(JsonGenerator.class),
+            any(Collection.class));
 
         when(this.repository.get(ID_1)).thenReturn(this.patient1);
         when(this.repository.get(ID_2)).thenReturn(this.patient2);
@@ -162,18 +172,18 @@ public void setUp() throws ComponentLookupException, QueryException
     }
 
     @Test
-    public void getPatientsWithEmptyEidAndId()
+    public void getPatientsWithEmptyEidAndId() throws IOException
     {
         doReturn(Collections.emptyList()).when(this.request).getProperties(EID_LABEL);
         doReturn(Collections.emptyList()).when(this.request).getProperties(ID_LABEL);
 
         final Response response = this.component.fetchPatients();
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
-        assertEquals("[]", response.getEntity());
+        assertEquals("[]", getEntity(response));
     }
 
     @Test
-    public void getPatientsPerformsCorrectlyOnePatientRecordByEidNoneById() throws QueryException
+    public void getPatientsPerformsCorrectlyOnePatientRecordByEidNoneById() throws QueryException, IOException
     {
         final List<Object> eidList = ImmutableList.<Object>of(EID1);
 
@@ -187,13 +197,13 @@ public void getPatientsPerformsCorrectlyOnePatientRecordByEidNoneById() throws Q
         final JSONArray expected =
             new JSONArray().put(new JSONObject().put(ID_LABEL, ID_1).put(LINKS_LABEL, this.uriList));
 
-        final JSONArray actual = new JSONArray(response.getEntity().toString());
+        final JSONArray actual = new JSONArray(getEntity(response));
         assertTrue(expected.similar(actual));
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
     }
 
     @Test
-    public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToAll() throws QueryException
+    public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToAll() throws QueryException, IOException
     {
         final List<Object> eidList = ImmutableList.<Object>of(EID1, EID2);
 
@@ -210,14 +220,14 @@ public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToAll() throw
             .put(new JSONObject().put(ID_LABEL, ID_1).put(LINKS_LABEL, this.uriList))
             .put(new JSONObject().put(ID_LABEL, ID_2).put(LINKS_LABEL, this.uriList))
             .put(new JSONObject().put(ID_LABEL, ID_3).put(LINKS_LABEL, this.uriList));
-        final JSONArray actual = new JSONArray(response.getEntity().toString());
+        final JSONArray actual = new JSONArray(getEntity(response));
 
         assertTrue(expected.similar(actual));
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
     }
 
     @Test
-    public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToSome() throws QueryException
+    public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToSome() throws QueryException, IOException
     {
         final List<Object> eidList = ImmutableList.<Object>of(EID1, EID2);
 
@@ -234,14 +244,14 @@ public void getPatientsPerformsCorrectlySeveralPatientRecordsAccessToSome() thro
         final JSONArray expected =
             new JSONArray().put(new JSONObject().put(ID_LABEL, ID_1).put(LINKS_LABEL, this.uriList))
                 .put(new JSONObject().put(ID_LABEL, ID_3).put(LINKS_LABEL, this.uriList));
-        final JSONArray actual = new JSONArray(response.getEntity().toString());
+        final JSONArray actual = new JSONArray(getEntity(response));
         verify(this.logger).warn("Failed to retrieve patient with ID [{}]: {}", ID_2, null);
         assertTrue(expected.similar(actual));
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
     }
 
     @Test
-    public void getPatientsPerformsCorrectlyOnePatientIdDoesNotExist() throws QueryException
+    public void getPatientsPerformsCorrectlyOnePatientIdDoesNotExist() throws QueryException, IOException
     {
         final List<Object> eidList = ImmutableList.<Object>of(EID1, EID2);
 
@@ -256,7 +266,7 @@ public void getPatientsPerformsCorrectlyOnePatientIdDoesNotExist() throws QueryE
             new JSONArray().put(new JSONObject().put(ID_LABEL, ID_1).put(LINKS_LABEL, this.uriList))
                 .put(new JSONObject().put(ID_LABEL, ID_2).put(LINKS_LABEL, this.uriList))
                 .put(new JSONObject().put(ID_LABEL, ID_3).put(LINKS_LABEL, this.uriList));
-        final JSONArray actual = new JSONArray(response.getEntity().toString());
+        final JSONArray actual = new JSONArray(getEntity(response));
         assertTrue(expected.similar(actual));
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
     }
@@ -281,4 +291,40 @@ public void getPatientsPerformsCorrectlyIfQueryExceptionIsThrown() throws QueryE
         assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), response.getStatus());
         assertEquals(null, response.getEntity());
     }
+
+    @Test
+    public void getPatientsResolvesPatientsAndLinksBeforeWritingTheResponse() throws Exception
+    {
+        doReturn(Collections.emptyList()).when(this.request).getProperties(EID_LABEL);
+        doReturn(ImmutableList.of(ID_1, ID_1)).when(this.request).getProperties(ID_LABEL);
+
+        final Response response = this.component.fetchPatients();
+        verify(this.repository).get(ID_1);
+        final Autolinker autolinker = this.mocker.getInstance(Autolinker.class);
+        verify(autolinker).build();
+
+        final JSONArray actual = new JSONArray(getEntity(response));
+        verify(this.repository).get(ID_1);
+        verify(autolinker).build();
+        assertTrue(new JSONArray().put(new JSONObject().put(ID_LABEL, ID_1).put(LINKS_LABEL, this.uriList))
+            .similar(actual));
+    }
+
+    private String getEntity(final Response response) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Answer<Void> writeFields(final JSONObject json)
+    {
+        return invocation -> {
+            final JsonGenerator generator = (JsonGenerator) invocation.getArguments()[0];
+            for (final String key : json.keySet()) {
+                generator.writeStringField(key, json.getString(key));
+            }
+            return null;
+        };
+    }
 }
@@ -76,6 +76,89 @@
      */
     double standardDeviationToValue(boolean male, float ageInMonths, double targetDeviation);
 
+    /**
+     * Get the percentiles for a series of measured values, for example all the measurements of a patient.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, usually in centimeters or kilograms, in the same order as the ages
+     * @return the percentile of each measurement, as returned by {@link #valueToPercentile(boolean, float, double)}
+     * @throws IllegalArgumentException if the number of ages and values differ
+     * @since 1.5M1
+     */
+    default int[] valuesToPercentiles(boolean male, float[] agesInMonths, double[] values)
+    {
+        if (agesInMonths.length != values.length) {
+            throw new IllegalArgumentException("The number of ages and values must be the same");
+        }
+        int[] result = new int[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = valueToPercentile(male, agesInMonths[i], values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the standard deviations for a series of measured values, for example all the measurements of a patient.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, usually in centimeters or kilograms, in the same order as the ages
+     * @return the standard deviation of each measurement, as returned by
+     *         {@link #valueToStandardDeviation(boolean, float, double)}
+     * @throws IllegalArgumentException if the number of ages and values differ
+     * @since 1.5M1
+     */
+    default double[] valuesToStandardDeviations(boolean male, float[] agesInMonths, double[] values)
+    {
+        if (agesInMonths.length != values.length) {
+            throw new IllegalArgumentException("The number of ages and values must be the same");
+        }
+        double[] result = new double[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = valueToStandardDeviation(male, agesInMonths[i], values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the points of a percentile curve, as displayed in growth charts.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the ages for which to compute the curve points, in months
+     * @param targetPercentile a number between 0 and 100 (inclusive) specifying the target percentile
+     * @return the measurement corresponding to the target percentile at each of the requested ages, as returned by
+     *         {@link #percentileToValue(boolean, float, int)}
+     * @since 1.5M1
+     */
+    default double[] percentileToValues(boolean male, float[] agesInMonths, int targetPercentile)
+    {
+        double[] result = new double[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = percentileToValue(male, agesInMonths[i], targetPercentile);
+        }
+        return result;
+    }
+
+    /**
+     * Get the points of a standard deviation curve, as displayed in growth charts.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the ages for which to compute the curve points, in months
+     * @param targetDeviation a number specifying the target deviation
+     * @return the measurement corresponding to the target deviation at each of the requested ages, as returned by
+     *         {@link #standardDeviationToValue(boolean, float, double)}
+     * @since 1.5M1
+     */
+    default double[] standardDeviationToValues(boolean male, float[] agesInMonths, double targetDeviation)
+    {
+        double[] result = new double[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = standardDeviationToValue(male, agesInMonths[i], targetDeviation);
+        }
+        return result;
+    }
+
     /**
      * Some measurements should be taken on both sides of the body, since they can differ, for example different left
      * and right ear lengths. This method is used to indicate those measurements.
@@ -29,8 +29,9 @@
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -47,6 +48,26 @@ public abstract class AbstractMeasurementHandler implements MeasurementHandler,
     /** Tool used for computing the percentile corresponding to a given z-score. */
     private static final NormalDistribution NORMAL = new NormalDistribution();
 
+    /** The percentiles displayed in the charts. */
+    private static final int[] CHART_PERCENTILES = new int[] { 3, 10, 25, 50, 75, 90, 97 };
+
+    /** The largest whole standard deviation for which curves are cached, including the ones displayed in charts. */
+    private static final int MAX_CACHED_DEVIATION = 5;
+
+    /**
+     * The z-score corresponding to each percentile from 0 to 100. The open ended 0 and 100 percentiles are replaced by
+     * the 0.25, respectively 99.75 percentage.
+     */
+    private static final double[] PERCENTILE_Z_SCORES = new double[101];
+
+    static {
+        PERCENTILE_Z_SCORES[0] = NORMAL.inverseCumulativeProbability(0.25 / 100.0);
+        for (int percentile = 1; percentile < 100; ++percentile) {
+            PERCENTILE_Z_SCORES[percentile] = NORMAL.inverseCumulativeProbability(percentile / 100.0);
+        }
+        PERCENTILE_Z_SCORES[100] = NORMAL.inverseCumulativeProbability(99.75 / 100.0);
+    }
+
     /**
      * Triplet storing the median (M), the generalized coefficient of variation (S), and the power in the Box-Cox
      * transformation (L) values used to compute the percentile corresponding to a given value.
@@ -91,17 +112,17 @@ public String toString()
     @Inject
     private MeasurementsChartConfigurationsFactory settingsFactory;
 
-    /**
-     * Table storing the LMS triplets for each month of the normal development of boys corresponding to this measurement
-     * type.
-     */
-    private List<LMS> measurementsForAgeBoys;
+    /** Table storing the LMS triplets for the normal development of boys corresponding to this measurement type. */
+    private LMSTable measurementsForAgeBoys;
 
-    /**
-     * Table storing the LMS triplets for each month of the normal development of girls corresponding to this
-     * measurement type.
-     */
-    private List<LMS> measurementsForAgeGirls;
+    /** Table storing the LMS triplets for the normal development of girls corresponding to this measurement type. */
+    private LMSTable measurementsForAgeGirls;
+
+    /** Cached percentile and standard deviation curves for boys, with the expected value for each month of age. */
+    private final Map<Double, double[]> curvesBoys = new ConcurrentHashMap<>();
+
+    /** Cached percentile and standard deviation curves for girls, with the expected value for each month of age. */
+    private final Map<Double, double[]> curvesGirls = new ConcurrentHashMap<>();
 
     /** The list of chart settings configured for this measurement. */
     private List<MeasurementsChartConfiguration> chartConfigurations;
@@ -116,35 +137,67 @@ public String toString()
     @Override
     public int valueToPercentile(boolean male, float ageInMonths, double value)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
+        LMS lms = getLMSForAge(male, ageInMonths);
         return valueToPercentile(value, lms);
     }
 
     @Override
     public double valueToStandardDeviation(boolean male, float ageInMonths, double value)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
+        LMS lms = getLMSForAge(male, ageInMonths);
         return valueToStandardDeviation(value, lms);
     }
 
     @Override
     public double percentileToValue(boolean male, float ageInMonths, int targetPercentile)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        if (lms == null) {
-            return Double.NaN;
-        }
-        return percentileToValue(targetPercentile, lms.m, lms.l, lms.s);
+        return zScoreToValue(male, ageInMonths, PERCENTILE_Z_SCORES[getCorrectedPercentile(targetPercentile)], true);
     }
 
     @Override
     public double standardDeviationToValue(boolean male, float ageInMonths, double targetDeviation)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        if (lms == null) {
-            return Double.NaN;
+        return zScoreToValue(male, ageInMonths, targetDeviation, isStandardDeviationCached(targetDeviation));
+    }
+
+    @Override
+    public int[] valuesToPercentiles(boolean male, float[] agesInMonths, double[] values)
+    {
+        checkSeries(agesInMonths, values);
+        LMSTable table = getLMSTable(male);
+        double[] lms = new double[3];
+        int[] result = new int[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = table.get(agesInMonths[i], lms) ? valueToPercentile(values[i], lms[1], lms[0], lms[2]) : -1;
         }
-        return standardDeviationToValue(targetDeviation, lms.m, lms.l, lms.s);
+        return result;
+    }
+
+    @Override
+    public double[] valuesToStandardDeviations(boolean male, float[] agesInMonths, double[] values)
+    {
+        checkSeries(agesInMonths, values);
+        LMSTable table = getLMSTable(male);
+        double[] lms = new double[3];
+        double[] result = new double[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = table.get(agesInMonths[i], lms)
+                ? valueToStandardDeviation(values[i], lms[1], lms[0], lms[2]) : Double.NaN;
+        }
+        return result;
+    }
+
+    @Override
+    public double[] percentileToValues(boolean male, float[] agesInMonths, int targetPercentile)
+    {
+        return zScoreToValues(male, agesInMonths, PERCENTILE_Z_SCORES[getCorrectedPercentile(targetPercentile)],
+            true);
+    }
+
+    @Override
+    public double[] standardDeviationToValues(boolean male, float[] agesInMonths, double targetDeviation)
+    {
+        return zScoreToValues(male, agesInMonths, targetDeviation, isStandardDeviationCached(targetDeviation));
     }
 
     @Override
@@ -164,6 +217,15 @@ public void initialize() throws InitializationException
     {
         readData();
         this.chartConfigurations = this.settingsFactory.loadConfigurationsForMeasurementType(getName());
+        // Precompute the curves displayed in the charts
+        for (boolean male : new boolean[] { true, false }) {
+            for (int percentile : CHART_PERCENTILES) {
+                getCurve(male, PERCENTILE_Z_SCORES[percentile]);
+            }
+            for (int deviation = -MAX_CACHED_DEVIATION; deviation <= MAX_CACHED_DEVIATION; ++deviation) {
+                getCurve(male, deviation);
+            }
+        }
     }
 
     /**
@@ -175,8 +237,8 @@ private void readData() throws InitializationException
     {
         BufferedReader in = null;
         String filename = getName() + ".csv";
-        this.measurementsForAgeBoys = new ArrayList<>();
-        this.measurementsForAgeGirls = new ArrayList<>();
+        LMSTable.Builder boys = new LMSTable.Builder();
+        LMSTable.Builder girls = new LMSTable.Builder();
         InputStream inStream = this.getClass().getResourceAsStream(filename);
         if (inStream == null) {
             throw new InitializationException("Missing measurements tables for [" + this.getName() + "]");
@@ -198,68 +260,38 @@ private void readData() throws InitializationException
                 double l = Double.parseDouble(tokens[2]);
                 double m = Double.parseDouble(tokens[3]);
                 double s = Double.parseDouble(tokens[4]);
-                LMS lms = new LMS(l, m, s);
                 if ("1".equals(tokens[0])) {
-                    while (day >= this.measurementsForAgeBoys.size()) {
-                        this.measurementsForAgeBoys.add(null);
-                    }
-                    this.measurementsForAgeBoys.set(day, lms);
+                    boys.add(day, l, m, s);
                 } else {
-                    while (day >= this.measurementsForAgeGirls.size()) {
-                        this.measurementsForAgeGirls.add(null);
-                    }
-                    this.measurementsForAgeGirls.set(day, lms);
+                    girls.add(day, l, m, s);
                 }
             }
         } catch (IOException ex) {
             // This shouldn't happen
             this.logger.error("Failed to read data table [{}]: {}", new Object[] { filename, ex.getMessage(), ex });
         }
+        this.measurementsForAgeBoys = boys.build();
+        this.measurementsForAgeGirls = girls.build();
     }
 
     /**
-     * Extract the LMS triplet corresponding to a given month from the given list. If the requested month is before the
-     * first element of the list, {@code null} is returned. If a valid entry corresponding to the requested month is
-     * found in the list, then return that entry. If there's no entry for the requested month, but there are valid
-     * entries in previous and later months, a linear interpolation of the nearest surrounding entries is computed and
-     * returned. Otherwise, if the requested month is beyond the last valid entry, return the last valid entry.
+     * Compute the LMS triplet corresponding to a given age. If the requested age is before the first available entry,
+     * {@code null} is returned. If a valid entry corresponding to the requested age is found, then return that entry.
+     * If there's no entry for the requested age, but there are valid entries in previous and later days, a linear
+     * interpolation of the nearest surrounding entries is computed and returned. Otherwise, if the requested age is
+     * beyond the last valid entry, return the last valid entry.
      *
-     * @param list the standard list of measurements where to look in
+     * @param male {@code true} for boys, {@code false} for girls
      * @param ageInMonths the target age (in months) for which to compute the LMS triplet
      * @return a LMS triplet computed according to the rules above, possibly {@code null}
      */
-    protected LMS getLMSForAge(List<LMS> list, float ageInMonths)
+    protected LMS getLMSForAge(boolean male, float ageInMonths)
     {
-        // LMS data is stored per day, currently but input is given as a float for months
-        int ageInDays = (int) Math.round(ageInMonths * 30.4375);
-        if (ageInDays < 0) {
+        double[] lms = new double[3];
+        if (!getLMSTable(male).get(ageInMonths, lms)) {
             return null;
-        } else if (ageInDays >= list.size()) {
-            return list.get(list.size() - 1);
-        }
-
-        LMS result;
-        result = list.get(ageInDays);
-        if (result == null) {
-            int lowerAge = ageInDays - 1;
-            while (lowerAge >= 0 && list.get(lowerAge) == null) {
-                --lowerAge;
-            }
-            if (lowerAge < 0) {
-                return null;
-            }
-            int upperAge = ageInDays + 1;
-            while (upperAge < list.size() && list.get(upperAge) == null) {
-                ++upperAge;
-            }
-            LMS lowerLMS = list.get(lowerAge);
-            LMS upperLMS = list.get(upperAge);
-            double delta = ((double) ageInDays - lowerAge) / (upperAge - lowerAge);
-            result =
-                new LMS(lowerLMS.l + (upperLMS.l - lowerLMS.l) * delta, lowerLMS.m + (upperLMS.m - lowerLMS.m) * delta,
-                    lowerLMS.s + (upperLMS.s - lowerLMS.s) * delta);
         }
-        return result;
+        return new LMS(lms[0], lms[1], lms[2]);
     }
 
     /**
@@ -339,15 +371,7 @@ protected double valueToStandardDeviation(double x, double m, double l, double s
      */
     protected double percentileToValue(int percentile, double m, double l, double s)
     {
-        double correctedPercentile = percentile;
-        if (percentile <= 0) {
-            correctedPercentile = 0.25;
-        } else if (percentile >= 100) {
-            correctedPercentile = 99.75;
-        }
-        double z = NORMAL.inverseCumulativeProbability(correctedPercentile / 100.0);
-        double x = (l != 0) ? Math.pow(z * l * s + 1, 1 / l) * m : Math.exp(z * s) * m;
-        return x;
+        return standardDeviationToValue(PERCENTILE_Z_SCORES[getCorrectedPercentile(percentile)], m, l, s);
     }
 
     /**
@@ -366,17 +390,114 @@ protected double standardDeviationToValue(double deviation, double m, double l,
     }
 
     /**
-     * Choose between the girls and boys measurements list, depending on the requested sex and on the availability of
+     * Choose between the girls and boys measurements table, depending on the requested sex and on the availability of
      * distinct measurements for girls.
      *
      * @param male {@code true} for boys, {@code false} for girls
-     * @return a list of {@link LMS} triplets
+     * @return a table of LMS triplets
      */
-    protected List<LMS> getLMSList(boolean male)
+    private LMSTable getLMSTable(boolean male)
     {
         if (!male && !this.measurementsForAgeGirls.isEmpty()) {
             return this.measurementsForAgeGirls;
         }
         return this.measurementsForAgeBoys;
     }
+
+    /**
+     * Compute the value that would correspond to a target z-score at a given age.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param ageInMonths the age, in months
+     * @param z the target z-score
+     * @param cached whether the curve for this z-score may be cached
+     * @return the expected measurement, or {@code NaN} if no data is available for the requested age
+     */
+    private double zScoreToValue(boolean male, float ageInMonths, double z, boolean cached)
+    {
+        if (cached && isWholeMonth(ageInMonths)) {
+            double[] curve = getCurve(male, z);
+            int month = (int) ageInMonths;
+            if (month < curve.length) {
+                return curve[month];
+            }
+            // Ages past the end of the curve are computed from the last entry of the table
+        }
+        LMS lms = getLMSForAge(male, ageInMonths);
+        if (lms == null) {
+            return Double.NaN;
+        }
+        return standardDeviationToValue(z, lms.m, lms.l, lms.s);
+    }
+
+    /**
+     * Compute the values that would correspond to a target z-score at several ages.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the ages, in months
+     * @param z the target z-score
+     * @param cached whether the curve for this z-score may be cached
+     * @return the expected measurement at each of the ages, {@code NaN} where no data is available
+     */
+    private double[] zScoreToValues(boolean male, float[] agesInMonths, double z, boolean cached)
+    {
+        LMSTable table = getLMSTable(male);
+        double[] curve = cached ? getCurve(male, z) : null;
+        double[] lms = new double[3];
+        double[] result = new double[agesInMonths.length];
+        for (int i = 0; i < result.length; ++i) {
+            float age = agesInMonths[i];
+            if (curve != null && isWholeMonth(age) && age < curve.length) {
+                result[i] = curve[(int) age];
+            } else {
+                result[i] = table.get(age, lms) ? standardDeviationToValue(z, lms[1], lms[0], lms[2]) : Double.NaN;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the curve for a z-score, holding the expected value for each month of age, up to the last month for which
+     * reference data is available. The curve is computed on first use and cached.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param z the target z-score
+     * @return the expected value for each month of age, {@code NaN} for months where no data is available
+     */
+    private double[] getCurve(boolean male, double z)
+    {
+        Map<Double, double[]> cache = male ? this.curvesBoys : this.curvesGirls;
+        return cache.computeIfAbsent(z, key -> {
+            LMSTable table = getLMSTable(male);
+            double[] curve = new double[Math.max(table.getMaximumAgeInMonths(), 0) + 1];
+            double[] lms = new double[3];
+            for (int month = 0; month < curve.length; ++month) {
+                curve[month] =
+                    table.get(month, lms) ? standardDeviationToValue(z, lms[1], lms[0], lms[2]) : Double.NaN;
+            }
+            return curve;
+        });
+    }
+
+    private static boolean isWholeMonth(float ageInMonths)
+    {
+        return ageInMonths >= 0 && ageInMonths == (int) ageInMonths;
+    }
+
+    private static boolean isStandardDeviationCached(double deviation)
+    {
+        return deviation == Math.rint(deviation) && Math.abs(deviation) <= MAX_CACHED_DEVIATION;
+    }
+
+    private static int getCorrectedPercentile(int percentile)
+    {
+        return Math.max(0, Math.min(100, percentile));
+    }
+
+    private static void checkSeries(float[] agesInMonths, double[] values)
+    {
+        if (agesInMonths.length != values.length) {
+            throw new IllegalArgumentException("The number of ages and values must be the same");
+        }
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.measurements.internal;
+
+import java.util.Arrays;
+
+/**
+ * Growth reference data for one sex and one measurement type: the L, M and S values for each day of age for which
+ * reference data is available, stored in parallel primitive arrays sorted by age, so that the values for a given age
+ * are found with a binary search.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class LMSTable
+{
+    /** The number of days in a month, on average. */
+    private static final double DAYS_PER_MONTH = 30.4375;
+
+    /** The ages, in days, for which reference data is available, in ascending order. */
+    private final int[] days;
+
+    /** L values, the power, for each entry in {@link #days}. */
+    private final double[] l;
+
+    /** M values, the median, for each entry in {@link #days}. */
+    private final double[] m;
+
+    /** S values, the generalized coefficient of variation, for each entry in {@link #days}. */
+    private final double[] s;
+
+    private LMSTable(int[] days, double[] l, double[] m, double[] s)
+    {
+        this.days = days;
+        this.l = l;
+        this.m = m;
+        this.s = s;
+    }
+
+    /**
+     * Whether this table holds any data.
+     *
+     * @return {@code true} if there are no entries in this table
+     */
+    boolean isEmpty()
+    {
+        return this.days.length == 0;
+    }
+
+    /**
+     * The age of the last entry in this table, in months, beyond which the last entry is used for any age.
+     *
+     * @return the maximum age for which reference data is available, in months, or {@code -1} if the table is empty
+     */
+    int getMaximumAgeInMonths()
+    {
+        return isEmpty() ? -1 : (int) Math.ceil(this.days[this.days.length - 1] / DAYS_PER_MONTH);
+    }
+
+    /**
+     * Compute the LMS triplet corresponding to a given age. If the requested age is unknown or before the first
+     * entry, {@code false} is returned. If there's an entry corresponding to the requested age, then that entry is
+     * used. If there's no entry for the requested age, but there are entries before and after it, a linear
+     * interpolation of the nearest surrounding entries is computed. Otherwise, if the requested age is beyond the last
+     * entry, the last entry is used.
+     *
+     * @param ageInMonths the target age, in months
+     * @param result a three elements array where the computed L, M and S values will be stored, in this order
+     * @return {@code true} if a triplet was computed, {@code false} if no data is available for the requested age
+     */
+    boolean get(float ageInMonths, double[] result)
+    {
+        if (Float.isNaN(ageInMonths) || isEmpty()) {
+            return false;
+        }
+        // LMS data is stored per day, but input is given as a float for months
+        int ageInDays = (int) Math.round(ageInMonths * DAYS_PER_MONTH);
+        if (ageInDays < 0) {
+            return false;
+        }
+        int last = this.days.length - 1;
+        if (ageInDays >= this.days[last]) {
+            set(last, result);
+            return true;
+        }
+        int position = Arrays.binarySearch(this.days, ageInDays);
+        if (position >= 0) {
+            set(position, result);
+            return true;
+        }
+        int upper = -position - 1;
+        if (upper == 0) {
+            return false;
+        }
+        int lower = upper - 1;
+        double delta = ((double) ageInDays - this.days[lower]) / (this.days[upper] - this.days[lower]);
+        result[0] = this.l[lower] + (this.l[upper] - this.l[lower]) * delta;
+        result[1] = this.m[lower] + (this.m[upper] - this.m[lower]) * delta;
+        result[2] = this.s[lower] + (this.s[upper] - this.s[lower]) * delta;
+        return true;
+    }
+
+    private void set(int position, double[] result)
+    {
+        result[0] = this.l[position];
+        result[1] = this.m[position];
+        result[2] = this.s[position];
+    }
+
+    /**
+     * Collects the entries of a {@link LMSTable}, in any order.
+     */
+    static final class Builder
+    {
+        private int size;
+
+        private int[] days = new int[64];
+
+        private double[] l = new double[64];
+
+        private double[] m = new double[64];
+
+        private double[] s = new double[64];
+
+        /**
+         * Add an entry to the table. If there already is an entry for the same age, it is replaced.
+         *
+         * @param day the age, in days
+         * @param lValue L value, the power
+         * @param mValue M value, the median
+         * @param sValue S value, the generalized coefficient of variation
+         * @return this builder, for chaining
+         */
+        Builder add(int day, double lValue, double mValue, double sValue)
+        {
+            if (this.size == this.days.length) {
+                int capacity = this.size * 2;
+                this.days = Arrays.copyOf(this.days, capacity);
+                this.l = Arrays.copyOf(this.l, capacity);
+                this.m = Arrays.copyOf(this.m, capacity);
+                this.s = Arrays.copyOf(this.s, capacity);
+            }
+            this.days[this.size] = day;
+            this.l[this.size] = lValue;
+            this.m[this.size] = mValue;
+            this.s[this.size] = sValue;
+            ++this.size;
+            return this;
+        }
+
+        /**
+         * Create the table, sorting the entries by age.
+         *
+         * @return a new table holding all the added entries
+         */
+        LMSTable build()
+        {
+            // Stable sort of the positions by age, so that the last entry added for the same age wins
+            Integer[] order = new Integer[this.size];
+            for (int i = 0; i < this.size; ++i) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(this.days[a], this.days[b]));
+            int count = 0;
+            int[] sortedDays = new int[this.size];
+            double[] sortedL = new double[this.size];
+            double[] sortedM = new double[this.size];
+            double[] sortedS = new double[this.size];
+            for (int i = 0; i < this.size; ++i) {
+                int position = order[i];
+                if (count > 0 && sortedDays[count - 1] == this.days[position]) {
+                    --count;
+                }
+                sortedDays[count] = this.days[position];
+                sortedL[count] = this.l[position];
+                sortedM[count] = this.m[position];
+                sortedS[count] = this.s[position];
+                ++count;
+            }
+            return new LMSTable(Arrays.copyOf(sortedDays, count), Arrays.copyOf(sortedL, count),
+                Arrays.copyOf(sortedM, count), Arrays.copyOf(sortedS, count));
+        }
+    }
+}
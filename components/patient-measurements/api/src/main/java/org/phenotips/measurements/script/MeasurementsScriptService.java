@@ -25,6 +25,7 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.script.service.ScriptService;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -134,6 +135,97 @@ public Set<String> getAvailableMeasurementNames()
         return Collections.emptySet();
     }
 
+    /**
+     * Compute the percentiles for a series of measurements of the same type, for example all the weights of a patient.
+     *
+     * @param measurementType the type of measurement
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, in the same order as the ages
+     * @return the percentile of each measurement, {@code -1} for measurements taken at an age for which no reference
+     *         data is available, or {@code null} if the measurement type is unknown or the number of ages and values
+     *         differ
+     * @since 1.5M1
+     */
+    public List<Integer> getPercentiles(String measurementType, boolean male, List<? extends Number> agesInMonths,
+        List<? extends Number> values)
+    {
+        MeasurementHandler handler = get(measurementType);
+        if (handler == null || agesInMonths == null || values == null || agesInMonths.size() != values.size()) {
+            return null;
+        }
+        int[] result = handler.valuesToPercentiles(male, toFloatArray(agesInMonths), toDoubleArray(values));
+        return Arrays.asList(ArrayUtils.toObject(result));
+    }
+
+    /**
+     * Compute the standard deviations for a series of measurements of the same type, for example all the weights of a
+     * patient.
+     *
+     * @param measurementType the type of measurement
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, in the same order as the ages
+     * @return the standard deviation of each measurement, {@code NaN} for measurements taken at an age for which no
+     *         reference data is available, or {@code null} if the measurement type is unknown or the number of ages
+     *         and values differ
+     * @since 1.5M1
+     */
+    public List<Double> getStandardDeviations(String measurementType, boolean male,
+        List<? extends Number> agesInMonths, List<? extends Number> values)
+    {
+        MeasurementHandler handler = get(measurementType);
+        if (handler == null || agesInMonths == null || values == null || agesInMonths.size() != values.size()) {
+            return null;
+        }
+        double[] result = handler.valuesToStandardDeviations(male, toFloatArray(agesInMonths), toDoubleArray(values));
+        return Arrays.asList(ArrayUtils.toObject(result));
+    }
+
+    /**
+     * Compute the points of a percentile curve to be displayed in a growth chart.
+     *
+     * @param measurementType the type of measurement
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param percentile the target percentile, a number between 0 and 100
+     * @param agesInMonths the ages for which to compute the points of the curve, in months
+     * @return the value corresponding to the target percentile at each of the requested ages, or {@code null} if the
+     *         measurement type is unknown
+     * @since 1.5M1
+     */
+    public List<Double> getPercentileCurve(String measurementType, boolean male, int percentile,
+        List<? extends Number> agesInMonths)
+    {
+        MeasurementHandler handler = get(measurementType);
+        if (handler == null || agesInMonths == null) {
+            return null;
+        }
+        return Arrays.asList(ArrayUtils.toObject(handler.percentileToValues(male, toFloatArray(agesInMonths),
+            percentile)));
+    }
+
+    /**
+     * Compute the points of a standard deviation curve to be displayed in a growth chart.
+     *
+     * @param measurementType the type of measurement
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param deviation the target standard deviation
+     * @param agesInMonths the ages for which to compute the points of the curve, in months
+     * @return the value corresponding to the target standard deviation at each of the requested ages, or {@code null}
+     *         if the measurement type is unknown
+     * @since 1.5M1
+     */
+    public List<Double> getStandardDeviationCurve(String measurementType, boolean male, double deviation,
+        List<? extends Number> agesInMonths)
+    {
+        MeasurementHandler handler = get(measurementType);
+        if (handler == null || agesInMonths == null) {
+            return null;
+        }
+        return Arrays.asList(ArrayUtils.toObject(handler.standardDeviationToValues(male, toFloatArray(agesInMonths),
+            deviation)));
+    }
+
     /**
      * Convert a percentile number into a string grossly describing the value.
      *
@@ -176,6 +268,26 @@ public String getFuzzyValue(double deviation)
         return returnValue;
     }
 
+    private static float[] toFloatArray(List<? extends Number> numbers)
+    {
+        float[] result = new float[numbers.size()];
+        for (int i = 0; i < result.length; ++i) {
+            Number number = numbers.get(i);
+            result[i] = number == null ? Float.NaN : number.floatValue();
+        }
+        return result;
+    }
+
+    private static double[] toDoubleArray(List<? extends Number> numbers)
+    {
+        double[] result = new double[numbers.size()];
+        for (int i = 0; i < result.length; ++i) {
+            Number number = numbers.get(i);
+            result[i] = number == null ? Double.NaN : number.doubleValue();
+        }
+        return result;
+    }
+
     /**
      * Temporary mechanism for sorting measurements, uses a hardcoded list of measurements in the desired order.
      *
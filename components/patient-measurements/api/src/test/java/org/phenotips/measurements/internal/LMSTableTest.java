@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.measurements.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link LMSTable}.
+ *
+ * @version $Id$
+ */
+public class LMSTableTest
+{
+    private static final double DELTA = 1.0E-9;
+
+    private final LMSTable table = new LMSTable.Builder()
+        .add(61, 3, 30, 0.3)
+        .add(0, 1, 10, 0.1)
+        .add(30, 2, 20, 0.2)
+        .build();
+
+    @Test
+    public void exactEntriesAreReturned()
+    {
+        double[] lms = new double[3];
+        Assert.assertTrue(this.table.get(0, lms));
+        Assert.assertArrayEquals(new double[] { 1, 10, 0.1 }, lms, DELTA);
+    }
+
+    @Test
+    public void missingEntriesAreInterpolated()
+    {
+        double[] lms = new double[3];
+        // 1.5 months is 46 days, between the entries for days 30 and 61
+        Assert.assertTrue(this.table.get(1.5f, lms));
+        Assert.assertArrayEquals(new double[] { 2.516129032, 25.16129032, 0.2516129032 }, lms, 1.0E-6);
+    }
+
+    @Test
+    public void agesAfterTheLastEntryUseTheLastEntry()
+    {
+        double[] lms = new double[3];
+        Assert.assertTrue(this.table.get(100, lms));
+        Assert.assertArrayEquals(new double[] { 3, 30, 0.3 }, lms, DELTA);
+        Assert.assertEquals(3, this.table.getMaximumAgeInMonths());
+    }
+
+    @Test
+    public void unknownAgesHaveNoData()
+    {
+        double[] lms = new double[3];
+        Assert.assertFalse(this.table.get(-1, lms));
+        Assert.assertFalse(this.table.get(Float.NaN, lms));
+        Assert.assertFalse(new LMSTable.Builder().add(30, 1, 1, 1).build().get(0, lms));
+        Assert.assertFalse(new LMSTable.Builder().build().get(1, lms));
+    }
+
+    @Test
+    public void laterEntriesForTheSameAgeReplaceEarlierOnes()
+    {
+        double[] lms = new double[3];
+        LMSTable replaced = new LMSTable.Builder().add(0, 1, 1, 1).add(0, 2, 2, 2).build();
+        Assert.assertTrue(replaced.get(0, lms));
+        Assert.assertArrayEquals(new double[] { 2, 2, 2 }, lms, DELTA);
+    }
+}
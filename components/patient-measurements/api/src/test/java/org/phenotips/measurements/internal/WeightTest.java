@@ -101,6 +101,67 @@ public void testStandardDeviationToValue() throws ComponentLookupException
             this.mocker.getComponentUnderTest().standardDeviationToValue(false, 359, Integer.MIN_VALUE), 1.0E-2);
     }
 
+    @Test
+    public void testBatchComputationsMatchSingleValues() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        float[] ages = new float[] { -1, 0, 0.5f, 12, 13.25f, 349, 1000 };
+        double[] values = new double[] { 4.0, 3.35, 4.1, 9.6, 10.2, 67.0, 71.9 };
+        for (boolean male : new boolean[] { true, false }) {
+            int[] percentiles = handler.valuesToPercentiles(male, ages, values);
+            double[] deviations = handler.valuesToStandardDeviations(male, ages, values);
+            double[] percentileCurve = handler.percentileToValues(male, ages, 37);
+            double[] deviationCurve = handler.standardDeviationToValues(male, ages, -1.5);
+            for (int i = 0; i < ages.length; ++i) {
+                Assert.assertEquals(handler.valueToPercentile(male, ages[i], values[i]), percentiles[i]);
+                Assert.assertEquals(handler.valueToStandardDeviation(male, ages[i], values[i]), deviations[i], 0);
+                Assert.assertEquals(handler.percentileToValue(male, ages[i], 37), percentileCurve[i], 0);
+                Assert.assertEquals(handler.standardDeviationToValue(male, ages[i], -1.5), deviationCurve[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCachedCurvesMatchComputedValues() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        // Whole months use the cached curves, the others are computed for each call
+        for (int month = 0; month < 300; ++month) {
+            Assert.assertEquals(handler.percentileToValue(true, month + 0.0001f, 90),
+                handler.percentileToValue(true, month, 90), 1.0E-2);
+            Assert.assertEquals(handler.standardDeviationToValue(false, month + 0.0001f, 2),
+                handler.standardDeviationToValue(false, month, 2), 1.0E-2);
+        }
+    }
+
+    @Test
+    public void testAgesPastTheTableUseTheLastEntry() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        // The tables end at day 8766 for boys and 8705 for girls, with medians of 71.90 and 58.12
+        float[] ages = new float[] { 288, 289, 1000, 1000.5f, 100000 };
+        for (int i = 0; i < ages.length; ++i) {
+            Assert.assertEquals(71.90, handler.percentileToValue(true, ages[i], 50), 1.0E-2);
+            Assert.assertEquals(58.12, handler.percentileToValue(false, ages[i], 50), 1.0E-2);
+            Assert.assertEquals(71.90, handler.standardDeviationToValue(true, ages[i], 0), 1.0E-2);
+            Assert.assertEquals(handler.percentileToValue(true, 1000.5f, 90),
+                handler.percentileToValue(true, ages[i], 90), 0);
+            Assert.assertEquals(handler.standardDeviationToValue(false, 1000.5f, -2),
+                handler.standardDeviationToValue(false, ages[i], -2), 0);
+            Assert.assertEquals(50, handler.valueToPercentile(true, ages[i], 71.9));
+        }
+        double[] curve = handler.percentileToValues(false, ages, 50);
+        for (double value : curve) {
+            Assert.assertEquals(58.12, value, 1.0E-2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchComputationsRequireOneValuePerAge() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().valuesToPercentiles(true, new float[] { 1, 2 }, new double[] { 5 });
+    }
+
     @Test
     public void testIsDoubleSided() throws ComponentLookupException
     {
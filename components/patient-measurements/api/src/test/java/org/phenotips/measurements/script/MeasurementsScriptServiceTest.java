@@ -25,6 +25,7 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +67,24 @@ public void testGetWithValidHint() throws ComponentLookupException
         Assert.assertEquals(handler, this.mocker.getComponentUnderTest().get("height"));
     }
 
+    @Test
+    public void testBatchComputations() throws ComponentLookupException
+    {
+        ComponentManager cm = this.mocker.getInstance(ComponentManager.class, "context");
+        MeasurementHandler handler = Mockito.mock(MeasurementHandler.class);
+        when(cm.getInstance(MeasurementHandler.class, "weight")).thenReturn(handler);
+        when(handler.valuesToPercentiles(true, new float[] { 1, 2.5f }, new double[] { 4, 5 }))
+            .thenReturn(new int[] { 10, 20 });
+        when(handler.percentileToValues(false, new float[] { 0, 1 }, 50)).thenReturn(new double[] { 3.2, 4.1 });
+
+        MeasurementsScriptService service = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(Arrays.asList(10, 20),
+            service.getPercentiles("weight", true, Arrays.asList(1, 2.5), Arrays.asList(4, 5.0)));
+        Assert.assertEquals(Arrays.asList(3.2, 4.1),
+            service.getPercentileCurve("weight", false, 50, Arrays.asList(0, 1)));
+        Assert.assertNull(service.getPercentiles("weight", true, Arrays.asList(1, 2), Arrays.asList(4)));
+    }
+
     @Test
     public void testGetAvailableMeasurementHandlers() throws ComponentLookupException
     {
@@ -0,0 +1,365 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.differentialPhenotypes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+
+/**
+ * A compact, read-only, in-memory representation of the disease &times; phenotype annotations, used for suggesting
+ * phenotypes without querying the disease index. Phenotypes and diseases are identified by their position in the
+ * matrix, and all the data is stored in primitive arrays:
+ * <ul>
+ * <li>for each phenotype, its ancestors (including itself), and the diseases annotated with it or with one of its
+ * descendants, as positive or as negative phenotype;</li>
+ * <li>for each disease, the phenotypes it is directly annotated with.</li>
+ * </ul>
+ * <p>
+ * Diseases are scored the same way the disease index would score a query for the selected positive and negative
+ * phenotypes, using the BM25 formula on the {@code symptom} and {@code not_symptom} fields, which hold the annotated
+ * phenotypes along with all their ancestors.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class PhenotypeAnnotationMatrix
+{
+    /** Only phenotypic abnormalities are suggested. */
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    /** How many of the best matching diseases are used for computing the suggestions. */
+    private static final int MATCHING_DISEASES = 100;
+
+    /** BM25 term frequency saturation parameter, same as the one used by the disease index. */
+    private static final double K1 = 1.2;
+
+    /** BM25 length normalization parameter, same as the one used by the disease index. */
+    private static final double B = 0.75;
+
+    private static final String ID = "id";
+
+    private static final String NAME = "name";
+
+    private final Map<String, Integer> phenotypeIndex;
+
+    private final String[] phenotypeIds;
+
+    /** For each phenotype, the positions of its ancestors, including itself. */
+    private final int[][] ancestors;
+
+    /** For each phenotype, whether it is a phenotypic abnormality. */
+    private final boolean[] abnormality;
+
+    /** For each disease, the positions of the phenotypes it is directly annotated with. */
+    private final int[][] actualSymptoms;
+
+    /** For each disease, whether it must not be suggested, as is the case for obsolete entries. */
+    private final boolean[] excluded;
+
+    private final Field symptoms;
+
+    private final Field notSymptoms;
+
+    private PhenotypeAnnotationMatrix(Map<String, Integer> phenotypeIndex, List<int[]> ancestors,
+        List<int[]> actualSymptoms, List<int[]> actualNotSymptoms, boolean[] excluded)
+    {
+        this.phenotypeIndex = phenotypeIndex;
+        this.phenotypeIds = new String[phenotypeIndex.size()];
+        for (Map.Entry<String, Integer> phenotype : phenotypeIndex.entrySet()) {
+            this.phenotypeIds[phenotype.getValue()] = phenotype.getKey();
+        }
+        this.ancestors = ancestors.toArray(new int[ancestors.size()][]);
+        this.abnormality = new boolean[this.phenotypeIds.length];
+        Integer root = phenotypeIndex.get(PHENOTYPIC_ABNORMALITY);
+        for (int i = 0; root != null && i < this.ancestors.length; ++i) {
+            this.abnormality[i] = Arrays.binarySearch(this.ancestors[i], root) >= 0;
+        }
+        this.actualSymptoms = actualSymptoms.toArray(new int[actualSymptoms.size()][]);
+        this.excluded = excluded;
+        this.symptoms = new Field(this.ancestors, actualSymptoms);
+        this.notSymptoms = new Field(this.ancestors, actualNotSymptoms);
+    }
+
+    /**
+     * Builds a new matrix.
+     *
+     * @param phenotypes the HPO terms, as Solr documents with the {@code id} and {@code term_category} fields
+     * @param diseases the disease terms, as Solr documents with the {@code id}, {@code name}, {@code actual_symptom}
+     *            and {@code actual_not_symptom} fields
+     * @return the new matrix
+     */
+    static PhenotypeAnnotationMatrix build(Iterable<SolrDocument> phenotypes, Iterable<SolrDocument> diseases)
+    {
+        Map<String, Integer> index = new HashMap<>();
+        List<Collection<Object>> ancestorIds = new ArrayList<>();
+        for (SolrDocument phenotype : phenotypes) {
+            String id = (String) phenotype.getFieldValue(ID);
+            if (id != null && !index.containsKey(id)) {
+                index.put(id, index.size());
+                ancestorIds.add(phenotype.getFieldValues("term_category"));
+            }
+        }
+        // Unknown phenotypes are appended to the index while processing, so reserve the positions of the known ones
+        List<int[]> ancestors = new ArrayList<>(Collections.nCopies(index.size(), (int[]) null));
+        for (int i = 0; i < ancestorIds.size(); ++i) {
+            ancestors.set(i, toPositions(ancestorIds.get(i), i, index, ancestors));
+        }
+
+        List<int[]> actualSymptoms = new ArrayList<>();
+        List<int[]> actualNotSymptoms = new ArrayList<>();
+        List<Boolean> excluded = new ArrayList<>();
+        for (SolrDocument disease : diseases) {
+            actualSymptoms.add(toPositions(disease.getFieldValues("actual_symptom"), -1, index, ancestors));
+            actualNotSymptoms.add(toPositions(disease.getFieldValues("actual_not_symptom"), -1, index, ancestors));
+            excluded.add(isExcluded((String) disease.getFieldValue(NAME)));
+        }
+        boolean[] excludedArray = new boolean[excluded.size()];
+        for (int i = 0; i < excludedArray.length; ++i) {
+            excludedArray[i] = excluded.get(i);
+        }
+        return new PhenotypeAnnotationMatrix(index, ancestors, actualSymptoms, actualNotSymptoms, excludedArray);
+    }
+
+    /**
+     * Computes the phenotypes which best differentiate between the diseases matching the selected phenotypes.
+     *
+     * @param phenotypes the selected phenotypes
+     * @param nphenotypes phenotypes that are not observed in the patient
+     * @return the suggested phenotypes, mapped to their score, ordered from the best suggestion to the worst
+     */
+    Map<String, Double> suggest(Collection<String> phenotypes, Collection<String> nphenotypes)
+    {
+        double[] diseaseScores = new double[this.actualSymptoms.length];
+        // The already selected phenotypes, their ancestors, and the unobserved phenotypes are not suggested
+        boolean[] ignored = new boolean[this.phenotypeIds.length];
+        // Selected phenotypes are scored once, even when they are ancestors of other selected phenotypes
+        boolean[] scored = new boolean[this.phenotypeIds.length];
+        for (String phenotype : phenotypes) {
+            Integer position = this.phenotypeIndex.get(phenotype);
+            if (position != null && !scored[position]) {
+                scored[position] = true;
+                this.symptoms.score(position, diseaseScores);
+                for (int ancestor : this.ancestors[position]) {
+                    ignored[ancestor] = true;
+                }
+            }
+        }
+        boolean[] unobserved = new boolean[this.phenotypeIds.length];
+        for (String phenotype : nphenotypes) {
+            Integer position = this.phenotypeIndex.get(phenotype);
+            if (position != null && !unobserved[position]) {
+                this.notSymptoms.score(position, diseaseScores);
+                unobserved[position] = true;
+            }
+        }
+
+        int[] matchingDiseases = selectMatchingDiseases(diseaseScores);
+        double[] cumulativeScore = new double[this.phenotypeIds.length];
+        int[] matchCounter = new int[this.phenotypeIds.length];
+        for (int disease : matchingDiseases) {
+            for (int phenotype : this.actualSymptoms[disease]) {
+                if (ignored[phenotype] || unobserved[phenotype] || !this.abnormality[phenotype]) {
+                    continue;
+                }
+                cumulativeScore[phenotype] += diseaseScores[disease];
+                ++matchCounter[phenotype];
+            }
+        }
+
+        int minCounter = Integer.MAX_VALUE;
+        List<Integer> candidates = new ArrayList<>();
+        for (int phenotype = 0; phenotype < matchCounter.length; ++phenotype) {
+            if (matchCounter[phenotype] > 0) {
+                minCounter = Math.min(minCounter, matchCounter[phenotype]);
+                cumulativeScore[phenotype] /= matchCounter[phenotype] * matchCounter[phenotype];
+                candidates.add(phenotype);
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (minCounter <= matchingDiseases.length / 2) {
+            candidates.sort((a, b) -> Double.compare(cumulativeScore[b], cumulativeScore[a]));
+            for (int phenotype : candidates) {
+                result.put(this.phenotypeIds[phenotype], cumulativeScore[phenotype]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Selects the best scoring diseases, at most {@link #MATCHING_DISEASES}, among the ones that can be suggested.
+     *
+     * @param diseaseScores the score of each disease
+     * @return the positions of the selected diseases
+     */
+    private int[] selectMatchingDiseases(double[] diseaseScores)
+    {
+        int count = 0;
+        double[] matchingScores = new double[diseaseScores.length];
+        for (int disease = 0; disease < diseaseScores.length; ++disease) {
+            if (diseaseScores[disease] > 0 && !this.excluded[disease]) {
+                matchingScores[count++] = diseaseScores[disease];
+            }
+        }
+        double threshold = 0;
+        if (count > MATCHING_DISEASES) {
+            Arrays.sort(matchingScores, 0, count);
+            threshold = matchingScores[count - MATCHING_DISEASES];
+        }
+        int[] result = new int[Math.min(count, MATCHING_DISEASES)];
+        int selected = 0;
+        // Diseases strictly above the threshold first, then as many as needed of those equal to the threshold
+        for (int disease = 0; disease < diseaseScores.length && selected < result.length; ++disease) {
+            if (diseaseScores[disease] > threshold && !this.excluded[disease]) {
+                result[selected++] = disease;
+            }
+        }
+        for (int disease = 0; disease < diseaseScores.length && selected < result.length; ++disease) {
+            if (diseaseScores[disease] == threshold && threshold > 0 && !this.excluded[disease]) {
+                result[selected++] = disease;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isExcluded(String name)
+    {
+        return name != null && !name.isEmpty() && "*+^".indexOf(name.charAt(0)) >= 0;
+    }
+
+    /**
+     * Converts phenotype identifiers into sorted, distinct phenotype positions, registering unknown phenotypes as
+     * phenotypes without ancestors.
+     */
+    private static int[] toPositions(Collection<Object> ids, int self, Map<String, Integer> index,
+        List<int[]> ancestors)
+    {
+        int[] result = new int[(ids == null ? 0 : ids.size()) + (self >= 0 ? 1 : 0)];
+        int count = 0;
+        if (self >= 0) {
+            result[count++] = self;
+        }
+        if (ids != null) {
+            for (Object id : ids) {
+                Integer position = index.get(String.valueOf(id));
+                if (position == null) {
+                    position = index.size();
+                    index.put(String.valueOf(id), position);
+                    ancestors.add(new int[] { position });
+                }
+                result[count++] = position;
+            }
+        }
+        return Arrays.stream(result, 0, count).sorted().distinct().toArray();
+    }
+
+    /**
+     * The data of an indexed disease field holding phenotypes along with all their ancestors, and the statistics
+     * needed for scoring a query on that field.
+     */
+    private static final class Field
+    {
+        /** For each phenotype, the diseases having it in this field. */
+        private final int[][] postings;
+
+        /** For each phenotype, the inverse document frequency. */
+        private final double[] idf;
+
+        /** For each disease, the BM25 weight of a matching phenotype, given the length of the field. */
+        private final double[] weight;
+
+        Field(int[][] ancestors, List<int[]> annotations)
+        {
+            int diseases = annotations.size();
+            int[][] closures = new int[diseases][];
+            int[] frequencies = new int[ancestors.length];
+            boolean[] seen = new boolean[ancestors.length];
+            int docCount = 0;
+            long totalLength = 0;
+            for (int disease = 0; disease < diseases; ++disease) {
+                closures[disease] = closure(annotations.get(disease), ancestors, seen);
+                for (int phenotype : closures[disease]) {
+                    ++frequencies[phenotype];
+                }
+                if (closures[disease].length > 0) {
+                    ++docCount;
+                    totalLength += closures[disease].length;
+                }
+            }
+
+            this.postings = new int[ancestors.length][];
+            this.idf = new double[ancestors.length];
+            for (int phenotype = 0; phenotype < ancestors.length; ++phenotype) {
+                this.postings[phenotype] = new int[frequencies[phenotype]];
+                this.idf[phenotype] = Math.log(1 + (docCount - frequencies[phenotype] + 0.5)
+                    / (frequencies[phenotype] + 0.5));
+            }
+            int[] filled = new int[ancestors.length];
+            double averageLength = docCount == 0 ? 1 : (double) totalLength / docCount;
+            this.weight = new double[diseases];
+            for (int disease = 0; disease < diseases; ++disease) {
+                for (int phenotype : closures[disease]) {
+                    this.postings[phenotype][filled[phenotype]++] = disease;
+                }
+                this.weight[disease] =
+                    (K1 + 1) / (1 + K1 * (1 - B + B * closures[disease].length / averageLength));
+            }
+        }
+
+        /**
+         * Adds the score of a query for a phenotype on this field to the scores of the matching diseases.
+         *
+         * @param phenotype the position of the queried phenotype
+         * @param diseaseScores the disease scores to update
+         */
+        void score(int phenotype, double[] diseaseScores)
+        {
+            for (int disease : this.postings[phenotype]) {
+                diseaseScores[disease] += this.idf[phenotype] * this.weight[disease];
+            }
+        }
+
+        /** Computes the union of the ancestors of the given phenotypes. */
+        private static int[] closure(int[] phenotypes, int[][] ancestors, boolean[] seen)
+        {
+            List<Integer> result = new ArrayList<>();
+            for (int phenotype : phenotypes) {
+                for (int ancestor : ancestors[phenotype]) {
+                    if (!seen[ancestor]) {
+                        seen[ancestor] = true;
+                        result.add(ancestor);
+                    }
+                }
+            }
+            int[] closure = new int[result.size()];
+            for (int i = 0; i < closure.length; ++i) {
+                closure[i] = result.get(i);
+                seen[closure[i]] = false;
+            }
+            return closure;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.differentialPhenotypes;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
+import org.phenotips.vocabulary.VocabularyInputTerm;
+
+import org.xwiki.component.annotation.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.slf4j.Logger;
+
+/**
+ * Holds the {@link PhenotypeAnnotationMatrix} used by the {@link PhenotypeSuggestService}. The matrix is built from
+ * the HPO and OMIM indexes the first time it is needed, and rebuilt every time a reindex of one of these vocabularies
+ * completes, once the freshly indexed data is live. If the matrix cannot be built, for example while an index is still
+ * empty, the failure is remembered and building is only attempted again after a while.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component(roles = { PhenotypeAnnotationMatrixManager.class, VocabularyExtension.class })
+@Named("phenotype-annotation-matrix")
+@Singleton
+public class PhenotypeAnnotationMatrixManager implements VocabularyExtension
+{
+    private static final String HPO = "hpo";
+
+    private static final String OMIM = "omim";
+
+    private static final String ID = "id";
+
+    private static final int PAGE_SIZE = 5000;
+
+    /** How long to wait before trying again to build the matrix after a failure, in milliseconds. */
+    private static final long RETRY_DELAY = 60 * 1000L;
+
+    @Inject
+    @Named(HPO)
+    private Vocabulary hpo;
+
+    @Inject
+    @Named(OMIM)
+    private Vocabulary omim;
+
+    @Inject
+    private SolrVocabularyResourceManager solrManager;
+
+    @Inject
+    private Logger logger;
+
+    private volatile PhenotypeAnnotationMatrix matrix;
+
+    /** When the last attempt to build the matrix failed, {@code 0} if it didn't. */
+    private volatile long failedAt;
+
+    /**
+     * Returns the current annotation matrix, building it if needed.
+     *
+     * @return the matrix, or {@code null} if it cannot be built
+     */
+    PhenotypeAnnotationMatrix getMatrix()
+    {
+        PhenotypeAnnotationMatrix result = this.matrix;
+        if (result == null && canRetry()) {
+            synchronized (this) {
+                result = this.matrix;
+                if (result == null && canRetry()) {
+                    result = rebuild();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isVocabularySupported(Vocabulary vocabulary)
+    {
+        return HPO.equals(vocabulary.getIdentifier()) || OMIM.equals(vocabulary.getIdentifier());
+    }
+
+    @Override
+    public void indexingStarted(Vocabulary vocabulary)
+    {
+        // Nothing to prepare
+    }
+
+    @Override
+    public void extendTerm(VocabularyInputTerm term, Vocabulary vocabulary)
+    {
+        // The annotations are only read once all the terms are indexed
+    }
+
+    @Override
+    public void indexingEnded(Vocabulary vocabulary)
+    {
+        // Only called once the new index replaced the old one, so the current cores hold the new data; cancelled
+        // reindexes leave the live data, and thus the current matrix, unchanged
+        synchronized (this) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void extendQuery(SolrQuery query, Vocabulary vocabulary)
+    {
+        // Queries are not affected
+    }
+
+    private boolean canRetry()
+    {
+        return System.currentTimeMillis() - this.failedAt >= RETRY_DELAY;
+    }
+
+    /**
+     * Builds a new matrix from the live indexes and installs it. If that fails, the failure is remembered and the
+     * previous matrix, if any, stays in use. Must be called while holding this object's lock.
+     *
+     * @return the new matrix, or {@code null} if it cannot be built
+     */
+    private PhenotypeAnnotationMatrix rebuild()
+    {
+        PhenotypeAnnotationMatrix result =
+            build(this.solrManager.getSolrConnection(this.hpo), this.solrManager.getSolrConnection(this.omim));
+        if (result == null) {
+            this.failedAt = System.currentTimeMillis();
+        } else {
+            this.matrix = result;
+            this.failedAt = 0;
+        }
+        return result;
+    }
+
+    private PhenotypeAnnotationMatrix build(SolrClient hpoIndex, SolrClient omimIndex)
+    {
+        try {
+            List<SolrDocument> phenotypes = fetchAll(hpoIndex, ID, "term_category");
+            List<SolrDocument> diseases = fetchAll(omimIndex, ID, "name", "actual_symptom", "actual_not_symptom");
+            if (phenotypes.isEmpty() || diseases.isEmpty()) {
+                return null;
+            }
+            return PhenotypeAnnotationMatrix.build(phenotypes, diseases);
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            this.logger.warn("Failed to build the phenotype annotation matrix: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private List<SolrDocument> fetchAll(SolrClient index, String... fields) throws SolrServerException, IOException
+    {
+        List<SolrDocument> result = new ArrayList<>();
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields(fields);
+        query.setRows(PAGE_SIZE);
+        query.setSort(SolrQuery.SortClause.asc(ID));
+        String cursor = CursorMarkParams.CURSOR_MARK_START;
+        while (true) {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+            QueryResponse response = index.query(query);
+            result.addAll(response.getResults());
+            String next = response.getNextCursorMark();
+            if (next == null || cursor.equals(next)) {
+                return result;
+            }
+            cursor = next;
+        }
+    }
+}
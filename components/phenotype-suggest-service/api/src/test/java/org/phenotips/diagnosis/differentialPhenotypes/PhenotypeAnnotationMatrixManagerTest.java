@@ -0,0 +1,114 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.differentialPhenotypes;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
+
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PhenotypeAnnotationMatrixManager}.
+ *
+ * @version $Id$
+ */
+public class PhenotypeAnnotationMatrixManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<VocabularyExtension> mocker =
+        new MockitoComponentMockingRule<>(PhenotypeAnnotationMatrixManager.class);
+
+    private PhenotypeAnnotationMatrixManager manager;
+
+    private SolrClient hpoIndex;
+
+    private SolrClient omimIndex;
+
+    private Vocabulary hpo;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.manager = (PhenotypeAnnotationMatrixManager) this.mocker.getComponentUnderTest();
+        this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
+        Vocabulary omim = this.mocker.getInstance(Vocabulary.class, "omim");
+        when(this.hpo.getIdentifier()).thenReturn("hpo");
+        when(omim.getIdentifier()).thenReturn("omim");
+
+        // Empty indexes, as before the vocabularies are first indexed
+        QueryResponse empty = mock(QueryResponse.class);
+        when(empty.getResults()).thenReturn(new SolrDocumentList());
+        when(empty.getNextCursorMark()).thenReturn(CursorMarkParams.CURSOR_MARK_START);
+        this.hpoIndex = mock(SolrClient.class);
+        this.omimIndex = mock(SolrClient.class);
+        when(this.hpoIndex.query(any(SolrQuery.class))).thenReturn(empty);
+        when(this.omimIndex.query(any(SolrQuery.class))).thenReturn(empty);
+        SolrVocabularyResourceManager solrManager = this.mocker.getInstance(SolrVocabularyResourceManager.class);
+        when(solrManager.getSolrConnection(this.hpo)).thenReturn(this.hpoIndex);
+        when(solrManager.getSolrConnection(omim)).thenReturn(this.omimIndex);
+    }
+
+    @Test
+    public void failedBuildsAreNotRetriedOnEveryRequest() throws Exception
+    {
+        Assert.assertNull(this.manager.getMatrix());
+        Assert.assertNull(this.manager.getMatrix());
+        Assert.assertNull(this.manager.getMatrix());
+
+        verify(this.hpoIndex, times(1)).query(any(SolrQuery.class));
+        verify(this.omimIndex, times(1)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    public void finishedReindexesRebuildRightAway() throws Exception
+    {
+        Assert.assertNull(this.manager.getMatrix());
+
+        this.manager.indexingEnded(this.hpo);
+
+        verify(this.hpoIndex, times(2)).query(any(SolrQuery.class));
+        verify(this.omimIndex, times(2)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    public void cancelledReindexesDoNotRebuild() throws Exception
+    {
+        this.manager.indexingStarted(this.hpo);
+        this.manager.indexingCancelled(this.hpo);
+
+        verify(this.hpoIndex, times(0)).query(any(SolrQuery.class));
+        verify(this.omimIndex, times(0)).query(any(SolrQuery.class));
+    }
+}
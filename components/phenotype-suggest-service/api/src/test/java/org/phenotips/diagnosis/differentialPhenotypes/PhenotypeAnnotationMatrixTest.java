@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.differentialPhenotypes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PhenotypeAnnotationMatrix}.
+ *
+ * @version $Id$
+ */
+public class PhenotypeAnnotationMatrixTest
+{
+    private PhenotypeAnnotationMatrix matrix;
+
+    @Before
+    public void setup()
+    {
+        List<SolrDocument> phenotypes = new ArrayList<>();
+        phenotypes.add(phenotype("HP:0000001"));
+        phenotypes.add(phenotype("HP:0000005", "HP:0000001"));
+        phenotypes.add(phenotype("HP:0000118", "HP:0000001"));
+        phenotypes.add(phenotype("HP:0000100", "HP:0000118", "HP:0000001"));
+        phenotypes.add(phenotype("HP:0000101", "HP:0000100", "HP:0000118", "HP:0000001"));
+        phenotypes.add(phenotype("HP:0000200", "HP:0000118", "HP:0000001"));
+        phenotypes.add(phenotype("HP:0000300", "HP:0000118", "HP:0000001"));
+
+        List<SolrDocument> diseases = new ArrayList<>();
+        diseases.add(disease("100001", "Disease 1", "HP:0000101", "HP:0000200", "HP:0000005"));
+        diseases.add(disease("100002", "Disease 2", "HP:0000100", "HP:0000300"));
+        diseases.add(disease("100003", "Disease 3", "HP:0000200", "HP:0000300"));
+        diseases.add(disease("100004", "*Obsolete disease", "HP:0000101", "HP:0000400"));
+        diseases.add(disease("100005", "Disease 5", "HP:0000300"));
+        this.matrix = PhenotypeAnnotationMatrix.build(phenotypes, diseases);
+    }
+
+    @Test
+    public void selectedPhenotypesAncestorsAndNonAbnormalitiesAreNotSuggested()
+    {
+        Map<String, Double> result =
+            this.matrix.suggest(Collections.singleton("HP:0000100"), Collections.<String>emptySet());
+        Assert.assertEquals(3, result.size());
+        Assert.assertTrue(result.keySet().containsAll(Arrays.asList("HP:0000101", "HP:0000200", "HP:0000300")));
+    }
+
+    @Test
+    public void phenotypesOfShorterAnnotatedDiseasesComeFirst()
+    {
+        Map<String, Double> result =
+            this.matrix.suggest(Collections.singleton("HP:0000100"), Collections.<String>emptySet());
+        List<Double> scores = new ArrayList<>(result.values());
+        // Disease 2 has fewer annotations than Disease 1, so it matches the query better
+        Assert.assertEquals("HP:0000300", result.keySet().iterator().next());
+        Assert.assertTrue(scores.get(0) > scores.get(1));
+        Assert.assertEquals(scores.get(1), scores.get(2), 0.0);
+    }
+
+    @Test
+    public void resultsDoNotDependOnTheOrderOfTheSelectedPhenotypes()
+    {
+        // HP:0000100 is an ancestor of HP:0000101, but both must contribute to the disease scores
+        Map<String, Double> result =
+            this.matrix.suggest(Arrays.asList("HP:0000101", "HP:0000100"), Collections.<String>emptySet());
+        Map<String, Double> swapped =
+            this.matrix.suggest(Arrays.asList("HP:0000100", "HP:0000101"), Collections.<String>emptySet());
+
+        Assert.assertEquals(Arrays.asList("HP:0000200", "HP:0000300"), new ArrayList<>(result.keySet()));
+        Assert.assertEquals(new ArrayList<>(result.entrySet()), new ArrayList<>(swapped.entrySet()));
+    }
+
+    @Test
+    public void unobservedPhenotypesAreNotSuggested()
+    {
+        Map<String, Double> result =
+            this.matrix.suggest(Collections.singleton("HP:0000100"), Collections.singleton("HP:0000300"));
+        Assert.assertEquals(2, result.size());
+        Assert.assertFalse(result.containsKey("HP:0000300"));
+    }
+
+    @Test
+    public void excludedDiseasesAreNotUsed()
+    {
+        // Only the excluded disease is annotated with this phenotype
+        Map<String, Double> result =
+            this.matrix.suggest(Collections.singleton("HP:0000400"), Collections.<String>emptySet());
+        Assert.assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void unknownPhenotypesAreIgnored()
+    {
+        Assert.assertTrue(this.matrix.suggest(Collections.singleton("HP:9999999"), Collections.<String>emptySet())
+            .isEmpty());
+    }
+
+    private SolrDocument phenotype(String id, String... ancestors)
+    {
+        SolrDocument result = new SolrDocument();
+        result.setField("id", id);
+        if (ancestors.length > 0) {
+            result.setField("term_category", Arrays.asList(ancestors));
+        }
+        return result;
+    }
+
+    private SolrDocument disease(String id, String name, String... symptoms)
+    {
+        SolrDocument result = new SolrDocument();
+        result.setField("id", id);
+        result.setField("name", name);
+        result.setField("actual_symptom", Arrays.asList(symptoms));
+        return result;
+    }
+}
@@ -20,6 +20,9 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Utilities for easy encryption and decryption.
  *
@@ -46,6 +49,24 @@
      */
     String decryptWithSystemKey(String encryptedMessage);
 
+    /**
+     * Decrypt several messages using the system-wide encryption key, for example all the encrypted values that must be
+     * displayed in a listing or included in an export.
+     *
+     * @param encryptedMessages the messages to decrypt; may contain {@code null} values
+     * @return the decrypted messages, in the same order as the input messages, with {@code null} for the {@code null}
+     *         inputs
+     * @since 1.5M1
+     */
+    default List<String> decryptAllWithSystemKey(List<String> encryptedMessages)
+    {
+        List<String> result = new ArrayList<>(encryptedMessages.size());
+        for (String encryptedMessage : encryptedMessages) {
+            result.add(decryptWithSystemKey(encryptedMessage));
+        }
+        return result;
+    }
+
     /**
      * Compute a strong digest (one-way hash) of a message.
      *
@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of decrypted values, keyed by their ciphertext. The least recently used entries are evicted once the
+ * maximum size is reached. Evicted and cleared values are only dropped, so like any other string they stay in memory
+ * until garbage collected.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class DecryptionCache
+{
+    private final int capacity;
+
+    private final LinkedHashMap<String, String> entries;
+
+    /**
+     * Simple constructor.
+     *
+     * @param capacity the maximum number of values to keep; a value of {@code 0} or less disables caching
+     */
+    DecryptionCache(final int capacity)
+    {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > DecryptionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Retrieves a cached decrypted value.
+     *
+     * @param ciphertext the encrypted value
+     * @return the decrypted value, or {@code null} if it is not cached
+     */
+    synchronized String get(final String ciphertext)
+    {
+        return this.entries.get(ciphertext);
+    }
+
+    /**
+     * Stores a decrypted value in the cache.
+     *
+     * @param ciphertext the encrypted value
+     * @param plaintext the decrypted value
+     */
+    synchronized void put(final String ciphertext, final String plaintext)
+    {
+        if (this.capacity <= 0 || ciphertext == null || plaintext == null) {
+            return;
+        }
+        this.entries.put(ciphertext, plaintext);
+    }
+
+    /**
+     * The number of cached values.
+     *
+     * @return the current size of the cache
+     */
+    synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Removes all the cached values.
+     */
+    synchronized void clear()
+    {
+        this.entries.clear();
+    }
+}
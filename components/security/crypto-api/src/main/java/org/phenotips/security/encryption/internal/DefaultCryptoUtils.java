@@ -21,36 +21,78 @@
 import org.phenotips.security.encryption.SystemPasswordConfiguration;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.jasypt.digest.StandardStringDigester;
-import org.jasypt.util.text.StrongTextEncryptor;
+import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 
 /**
  * The straight-forward implementation of the {@link CryptoUtils} role.
+ * <p>
+ * Every encrypted value uses a random salt, so decrypting it requires a full password based key derivation, which is
+ * slow by design. To avoid paying this cost each time the same value is read, decrypted values are kept in a bounded
+ * {@link DecryptionCache cache}, keyed by their ciphertext; the size of the cache is configured with the
+ * {@code crypto.encryption.decryptionCacheSize} setting in {@code WEB-INF/xwiki.properties}, and setting it to
+ * {@code 0} disables caching. A pool of ciphers is used, so that several threads can encrypt and decrypt values in
+ * parallel; the same algorithm and parameters as before are used, so existing values can still be decrypted. Batch
+ * decryptions run on a dedicated pool with one thread per cipher, shut down when the component is disposed, so that
+ * they neither compete with other work on the common fork-join pool nor use more threads than there are ciphers.
+ * </p>
  *
  * @version $Id$
  * @since 1.3M2
  */
 @Component
 @Singleton
-public class DefaultCryptoUtils implements CryptoUtils, Initializable
+public class DefaultCryptoUtils implements CryptoUtils, Initializable, Disposable
 {
+    /** The algorithm used by {@link org.jasypt.util.text.StrongTextEncryptor}, which was used before 1.5M1. */
+    private static final String ENCRYPTION_ALGORITHM = "PBEWithMD5AndTripleDES";
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+
     @Inject
     private SystemPasswordConfiguration passwordConfig;
 
-    private StrongTextEncryptor encryptor;
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    private PooledPBEStringEncryptor encryptor;
 
     private StandardStringDigester digester;
 
+    private DecryptionCache cache;
+
+    /** Decrypts the values of batch decryptions in parallel. */
+    private ExecutorService executor;
+
     @Override
     public void initialize() throws InitializationException
     {
-        this.encryptor = new StrongTextEncryptor();
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.encryptor = new PooledPBEStringEncryptor();
+        this.encryptor.setAlgorithm(ENCRYPTION_ALGORITHM);
+        this.encryptor.setPoolSize(threads);
         this.encryptor.setPassword(this.passwordConfig.getSystemPassword());
 
         this.digester = new StandardStringDigester();
@@ -58,18 +100,121 @@ public void initialize() throws InitializationException
         this.digester.setIterations(100);
         this.digester.setSaltSizeBytes(16);
         this.digester.initialize();
+
+        Integer cacheSize = this.configuration.getProperty("crypto.encryption.decryptionCacheSize", Integer.class);
+        this.cache = new DecryptionCache(cacheSize != null ? cacheSize : DEFAULT_CACHE_SIZE);
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "PhenoTips decryption " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdownNow();
+        this.cache.clear();
     }
 
     @Override
     public String encryptWithSystemKey(String message)
     {
-        return this.encryptor.encrypt(message);
+        String encryptedMessage = this.encryptor.encrypt(message);
+        // The value is usually read back right after being stored
+        this.cache.put(encryptedMessage, message);
+        return encryptedMessage;
     }
 
     @Override
     public String decryptWithSystemKey(String encryptedMessage)
     {
-        return this.encryptor.decrypt(encryptedMessage);
+        if (encryptedMessage == null) {
+            return null;
+        }
+        String message = this.cache.get(encryptedMessage);
+        if (message == null) {
+            message = this.encryptor.decrypt(encryptedMessage);
+            this.cache.put(encryptedMessage, message);
+        }
+        return message;
+    }
+
+    @Override
+    public List<String> decryptAllWithSystemKey(List<String> encryptedMessages)
+    {
+        Map<String, String> decrypted = new ConcurrentHashMap<>();
+        Map<String, Future<?>> missing = new LinkedHashMap<>();
+        for (String encryptedMessage : encryptedMessages) {
+            if (encryptedMessage != null && !decrypted.containsKey(encryptedMessage)
+                && !missing.containsKey(encryptedMessage)) {
+                String message = this.cache.get(encryptedMessage);
+                if (message != null) {
+                    decrypted.put(encryptedMessage, message);
+                } else {
+                    missing.put(encryptedMessage, null);
+                }
+            }
+        }
+        // The ciphers are pooled, so the values which aren't cached yet can be decrypted in parallel
+        if (missing.size() > 1) {
+            try {
+                for (Map.Entry<String, Future<?>> task : missing.entrySet()) {
+                    task.setValue(this.executor.submit(() -> decrypt(task.getKey(), decrypted)));
+                }
+            } catch (RejectedExecutionException ex) {
+                // Disposed, the remaining values are decrypted below
+            }
+        }
+        for (Map.Entry<String, Future<?>> task : missing.entrySet()) {
+            if (task.getValue() == null) {
+                decrypt(task.getKey(), decrypted);
+            } else {
+                waitFor(task.getValue(), missing.values());
+            }
+        }
+
+        List<String> result = new ArrayList<>(encryptedMessages.size());
+        for (String encryptedMessage : encryptedMessages) {
+            result.add(encryptedMessage == null ? null : decrypted.get(encryptedMessage));
+        }
+        return result;
+    }
+
+    private void decrypt(String encryptedMessage, Map<String, String> decrypted)
+    {
+        String message = this.encryptor.decrypt(encryptedMessage);
+        this.cache.put(encryptedMessage, message);
+        decrypted.put(encryptedMessage, message);
+    }
+
+    private void waitFor(Future<?> task, Iterable<Future<?>> batch)
+    {
+        try {
+            task.get();
+        } catch (ExecutionException ex) {
+            cancel(batch);
+            if (ex.getCause() instanceof RuntimeException) {
+                // Fail just like decryptWithSystemKey would for the same value
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            cancel(batch);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decrypting values", ex);
+        }
+    }
+
+    private void cancel(Iterable<Future<?>> batch)
+    {
+        for (Future<?> task : batch) {
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DecryptionCache}.
+ *
+ * @version $Id$
+ */
+public class DecryptionCacheTest
+{
+    @Test
+    public void leastRecentlyUsedValuesAreEvicted()
+    {
+        DecryptionCache cache = new DecryptionCache(2);
+        cache.put("e1", "one");
+        cache.put("e2", "two");
+        Assert.assertEquals("one", cache.get("e1"));
+        cache.put("e3", "three");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("one", cache.get("e1"));
+        Assert.assertNull(cache.get("e2"));
+        Assert.assertEquals("three", cache.get("e3"));
+    }
+
+    @Test
+    public void nothingIsCachedWhenDisabled()
+    {
+        DecryptionCache cache = new DecryptionCache(0);
+        cache.put("e1", "one");
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("e1"));
+    }
+
+    @Test
+    public void nullValuesAreNotCached()
+    {
+        DecryptionCache cache = new DecryptionCache(5);
+        cache.put(null, "one");
+        cache.put("e1", null);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void clearRemovesAllValues()
+    {
+        DecryptionCache cache = new DecryptionCache(5);
+        cache.put("e1", "one");
+        cache.put("e1", "uno");
+        cache.put("e2", "two");
+        Assert.assertEquals("uno", cache.get("e1"));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get("e1"));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import org.phenotips.security.encryption.CryptoUtils;
+import org.phenotips.security.encryption.SystemPasswordConfiguration;
+
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.util.text.StrongTextEncryptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultCryptoUtils} component.
+ *
+ * @version $Id$
+ */
+public class DefaultCryptoUtilsTest
+{
+    private static final String PASSWORD = "s3cr3t p4ssw0rd";
+
+    private static final String CACHE_SIZE_KEY = "crypto.encryption.decryptionCacheSize";
+
+    @Mock
+    private SystemPasswordConfiguration passwordConfig;
+
+    @Mock
+    private ConfigurationSource configuration;
+
+    private StrongTextEncryptor previousEncryptor;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.passwordConfig.getSystemPassword()).thenReturn(PASSWORD);
+
+        this.previousEncryptor = new StrongTextEncryptor();
+        this.previousEncryptor.setPassword(PASSWORD);
+    }
+
+    @Test
+    public void valuesEncryptedWithThePreviousEncryptorCanBeDecrypted() throws InitializationException
+    {
+        CryptoUtils utils = createCryptoUtils();
+        String encrypted = this.previousEncryptor.encrypt("John Doe");
+        Assert.assertEquals("John Doe", utils.decryptWithSystemKey(encrypted));
+        // A second read is served from the cache
+        Assert.assertEquals("John Doe", utils.decryptWithSystemKey(encrypted));
+    }
+
+    @Test
+    public void encryptedValuesCanBeDecryptedWithThePreviousEncryptor() throws InitializationException
+    {
+        CryptoUtils utils = createCryptoUtils();
+        String encrypted = utils.encryptWithSystemKey("P0000123");
+        Assert.assertNotEquals("P0000123", encrypted);
+        Assert.assertEquals("P0000123", this.previousEncryptor.decrypt(encrypted));
+        Assert.assertEquals("P0000123", utils.decryptWithSystemKey(encrypted));
+    }
+
+    @Test
+    public void decryptionWorksWithCachingDisabled() throws InitializationException
+    {
+        when(this.configuration.getProperty(CACHE_SIZE_KEY, Integer.class)).thenReturn(0);
+        CryptoUtils utils = createCryptoUtils();
+        String encrypted = this.previousEncryptor.encrypt("value");
+        Assert.assertEquals("value", utils.decryptWithSystemKey(encrypted));
+        Assert.assertEquals("value", utils.decryptWithSystemKey(encrypted));
+        Assert.assertNull(utils.decryptWithSystemKey(null));
+    }
+
+    @Test
+    public void batchDecryptionKeepsTheOrderOfTheInput() throws InitializationException
+    {
+        CryptoUtils utils = createCryptoUtils();
+        List<String> encrypted = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            String value = "value " + (i % 7);
+            encrypted.add(i % 2 == 0 ? this.previousEncryptor.encrypt(value) : utils.encryptWithSystemKey(value));
+            expected.add(value);
+        }
+        encrypted.add(encrypted.get(0));
+        expected.add(expected.get(0));
+        encrypted.add(null);
+        expected.add(null);
+
+        Assert.assertEquals(expected, utils.decryptAllWithSystemKey(encrypted));
+        Assert.assertEquals(expected, utils.decryptAllWithSystemKey(encrypted));
+        Assert.assertTrue(utils.decryptAllWithSystemKey(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test(expected = EncryptionOperationNotPossibleException.class)
+    public void batchDecryptionFailsForInvalidValues() throws InitializationException
+    {
+        CryptoUtils utils = createCryptoUtils();
+        List<String> encrypted = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            encrypted.add(this.previousEncryptor.encrypt("value " + i));
+        }
+        encrypted.add("bm90IGVuY3J5cHRlZA==");
+        utils.decryptAllWithSystemKey(encrypted);
+    }
+
+    @Test
+    public void digestsCanBeValidated() throws InitializationException
+    {
+        CryptoUtils utils = createCryptoUtils();
+        String digest = utils.digest("message");
+        Assert.assertTrue(utils.validateDigest("message", digest));
+        Assert.assertFalse(utils.validateDigest("other", digest));
+        Assert.assertFalse(utils.validateDigest("message", null));
+    }
+
+    @Test
+    public void disposeClearsTheCache() throws Exception
+    {
+        DefaultCryptoUtils utils = createCryptoUtils();
+        List<String> encrypted = Arrays.asList(utils.encryptWithSystemKey("a"), utils.encryptWithSystemKey("b"));
+        DecryptionCache cache = (DecryptionCache) ReflectionUtils.getFieldValue(utils, "cache");
+        Assert.assertEquals(2, cache.size());
+        utils.dispose();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(Arrays.asList("a", "b"), utils.decryptAllWithSystemKey(encrypted));
+    }
+
+    private DefaultCryptoUtils createCryptoUtils() throws InitializationException
+    {
+        DefaultCryptoUtils utils = new DefaultCryptoUtils();
+        ReflectionUtils.setFieldValue(utils, "passwordConfig", this.passwordConfig);
+        ReflectionUtils.setFieldValue(utils, "configuration", this.configuration);
+        utils.initialize();
+        return utils;
+    }
+}
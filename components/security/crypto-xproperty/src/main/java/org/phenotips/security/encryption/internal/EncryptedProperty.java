@@ -19,14 +19,24 @@
 
 import org.phenotips.security.encryption.CryptoUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
 
+import com.xpn.xwiki.objects.BaseCollection;
 import com.xpn.xwiki.objects.BaseStringProperty;
 import com.xpn.xwiki.web.Utils;
 
 /**
  * XProperty for storing a piece of text encrypted in the database. The maximum length of the values depends on the text
  * itself, but is large enough to support even a hundred megabytes.
+ * <p>
+ * Decrypting a value is slow, so the decrypted value is remembered until the stored value changes. Since the values of
+ * an object are usually read together, for example when displaying or exporting a record, the first read of an
+ * encrypted value decrypts all the encrypted values of the object not decrypted yet, with a single
+ * {@link CryptoUtils#decryptAllWithSystemKey(java.util.List) batch decryption}.
+ * </p>
  *
  * @see EncryptedMetaClass
  * @see EncryptedClass
@@ -40,6 +50,9 @@ public class EncryptedProperty extends BaseStringProperty
     /** Will be pre-pended to the values of the encrypted properties to identify that they are indeed encrypted. */
     private static final String ENCRYPTED_IDENTIFIER = "e:";
 
+    /** The last decrypted value, along with the stored value it was decrypted from. */
+    private transient volatile Decrypted decrypted;
+
     @Override
     public String getValue()
     {
@@ -98,7 +111,70 @@ private String encrypt(String text)
      */
     private String decrypt(String text)
     {
-        return getCryptoUtils().decryptWithSystemKey(getRawValue(text));
+        Decrypted known = this.decrypted;
+        if (known == null || !known.from.equals(text)) {
+            known = decryptAll(text);
+        }
+        return known.value;
+    }
+
+    /**
+     * Decrypts this value together with the other encrypted values of the same object which weren't decrypted yet.
+     *
+     * @param text the stored value of this property, prefixed with the {@link #ENCRYPTED_IDENTIFIER encryption
+     *            identifier}
+     * @return the decrypted value of this property
+     */
+    private Decrypted decryptAll(String text)
+    {
+        List<EncryptedProperty> properties = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        properties.add(this);
+        values.add(text);
+        BaseCollection<?> object = getObject();
+        if (object != null) {
+            for (Object property : object.getProperties()) {
+                if (property instanceof EncryptedProperty && property != this) {
+                    EncryptedProperty other = (EncryptedProperty) property;
+                    String value = other.getStoredValue();
+                    if (value != null && isEncrypted(value)
+                        && (other.decrypted == null || !other.decrypted.from.equals(value))) {
+                        properties.add(other);
+                        values.add(value);
+                    }
+                }
+            }
+        }
+
+        CryptoUtils crypto = getCryptoUtils();
+        if (properties.size() > 1) {
+            List<String> rawValues = new ArrayList<>(values.size());
+            for (String value : values) {
+                rawValues.add(getRawValue(value));
+            }
+            try {
+                List<String> result = crypto.decryptAllWithSystemKey(rawValues);
+                for (int i = 0; i < properties.size(); ++i) {
+                    properties.get(i).decrypted = new Decrypted(values.get(i), result.get(i));
+                }
+                return this.decrypted;
+            } catch (RuntimeException ex) {
+                // One of the other values can't be decrypted, which mustn't prevent reading this one
+            }
+        }
+        Decrypted result = new Decrypted(text, crypto.decryptWithSystemKey(getRawValue(text)));
+        this.decrypted = result;
+        return result;
+    }
+
+    /**
+     * Returns the stored value, encrypted or not.
+     *
+     * @return the value as stored in the database
+     */
+    private String getStoredValue()
+    {
+        return super.getValue();
     }
 
     /**
@@ -116,4 +192,18 @@ private CryptoUtils getCryptoUtils()
     {
         return Utils.getComponent(CryptoUtils.class);
     }
+
+    /** A decrypted value, along with the stored value it was decrypted from. */
+    private static final class Decrypted
+    {
+        private final String from;
+
+        private final String value;
+
+        Decrypted(String from, String value)
+        {
+            this.from = from;
+            this.value = value;
+        }
+    }
 }
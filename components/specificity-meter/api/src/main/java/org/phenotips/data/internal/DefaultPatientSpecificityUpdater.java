@@ -0,0 +1,351 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientSpecificity;
+import org.phenotips.data.PatientSpecificityService;
+import org.phenotips.data.events.PatientChangedEvent;
+import org.phenotips.data.events.PatientEvent;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Default implementation of the {@link PatientSpecificityUpdater}. Listens for patient changes and, when the
+ * phenotype of a patient no longer matches the one for which the stored score was computed, hands the patient over to
+ * a small pool of background workers, which compute the new score using the {@link PatientSpecificityService} and
+ * store it in a {@code PhenoTips.SpecificityClass} object, along with a hash of the scored phenotype. Only that object
+ * is written to the database, so storing a score doesn't create a new version of the patient record, doesn't change
+ * its author or modification date, doesn't fire patient change events, and can't overwrite concurrent edits. A
+ * patient is queued at most once: loading it while it is being scored doesn't queue it again, but scheduling it from
+ * elsewhere meanwhile scores it once more afterwards.
+ * <p>
+ * The number of workers can be configured using the {@code phenotips.patientScoring.updaterThreads} property in
+ * {@code xwiki.properties}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component(roles = { PatientSpecificityUpdater.class, EventListener.class })
+@Named("patient-specificity-updater")
+@Singleton
+public class DefaultPatientSpecificityUpdater
+    implements PatientSpecificityUpdater, EventListener, Initializable, Disposable
+{
+    /** The XClass used for storing the precomputed specificity score. */
+    public static final EntityReference CLASS_REFERENCE = new EntityReference("SpecificityClass",
+        EntityType.DOCUMENT, new EntityReference("PhenoTips", EntityType.SPACE));
+
+    private static final String NAME = "patient-specificity-updater";
+
+    private static final String SCORE = "score";
+
+    private static final String DATE = "date";
+
+    private static final String SERVER = "server";
+
+    private static final String FEATURES_HASH = "features_hash";
+
+    private static final int DEFAULT_THREADS = 2;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** The actual service performing the specificity computation. */
+    @Inject
+    private PatientSpecificityService service;
+
+    @Inject
+    private PatientRepository repository;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    /**
+     * Patients waiting to be scored or being scored, used for not scheduling the same patient more than once. Also
+     * guards {@link #running} and {@link #changed}.
+     */
+    private final Set<DocumentReference> pending = new HashSet<>();
+
+    /** Patients being scored, mapped to the worker scoring them. */
+    private final Map<DocumentReference, Thread> running = new HashMap<>();
+
+    /** Patients scheduled again while being scored, which must be scored once more after the current computation. */
+    private final Set<DocumentReference> changed = new HashSet<>();
+
+    private ExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int threads = Math.max(1, this.configuration.getProperty("phenotips.patientScoring.updaterThreads",
+            DEFAULT_THREADS));
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "PhenoTips specificity updater " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdown();
+        try {
+            // Give the scores being computed a chance to be stored
+            this.executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.executor.shutdownNow();
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        // Also fired for newly created patients
+        return Collections.<Event>singletonList(new PatientChangedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        Patient patient = ((PatientEvent) event).getPatient();
+        if (patient != null && isStale(patient)) {
+            scheduleUpdate(patient);
+        }
+    }
+
+    @Override
+    public PatientSpecificity getStoredSpecificity(Patient patient)
+    {
+        BaseObject stored = getStoredObject(patient);
+        if (stored == null || stored.getDateValue(DATE) == null) {
+            return null;
+        }
+        return new PatientSpecificity(stored.getDoubleValue(SCORE), stored.getDateValue(DATE),
+            stored.getStringValue(SERVER));
+    }
+
+    @Override
+    public boolean isStale(Patient patient)
+    {
+        BaseObject stored = getStoredObject(patient);
+        return stored == null || !getFeaturesHash(patient).equals(stored.getStringValue(FEATURES_HASH));
+    }
+
+    @Override
+    public void scheduleUpdate(Patient patient)
+    {
+        schedule(patient.getDocumentReference());
+    }
+
+    private void schedule(final DocumentReference reference)
+    {
+        if (reference == null) {
+            return;
+        }
+        synchronized (this.pending) {
+            Thread worker = this.running.get(reference);
+            if (worker == Thread.currentThread()) {
+                // The worker loading the patient asks for the score it is about to compute
+                return;
+            }
+            if (!this.pending.add(reference)) {
+                if (worker != null) {
+                    // Changed while being scored, the score being computed may already be outdated
+                    this.changed.add(reference);
+                }
+                return;
+            }
+        }
+        try {
+            this.executor.execute(() -> update(reference));
+        } catch (RuntimeException ex) {
+            // Rejected while shutting down
+            synchronized (this.pending) {
+                this.pending.remove(reference);
+            }
+        }
+    }
+
+    /**
+     * Computes a hash identifying the phenotype of a patient, as far as specificity scoring is concerned, so that a
+     * stored score can be matched against the current phenotype. The order of the features doesn't matter.
+     *
+     * @param patient the patient whose phenotype to hash
+     * @return a short string hash
+     */
+    static String getFeaturesHash(Patient patient)
+    {
+        List<String> features = new ArrayList<>();
+        for (Feature feature : patient.getFeatures()) {
+            if (StringUtils.isNotEmpty(feature.getId())) {
+                features.add(feature.isPresent() ? feature.getId() : '-' + feature.getId());
+            }
+        }
+        Collections.sort(features);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(
+                digest.digest(StringUtils.join(features, ',').getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private BaseObject getStoredObject(Patient patient)
+    {
+        XWikiDocument doc = patient.getXDocument();
+        return doc == null ? null : doc.getXObject(CLASS_REFERENCE);
+    }
+
+    /**
+     * Runs in a worker thread: computes and stores the score of a patient.
+     *
+     * @param reference the document where the patient is stored
+     */
+    private void update(DocumentReference reference)
+    {
+        synchronized (this.pending) {
+            this.running.put(reference, Thread.currentThread());
+        }
+        try {
+            this.contextManager.initialize(new ExecutionContext());
+            XWikiContext context = this.xcontextProvider.get();
+            context.setWikiId(reference.getWikiReference().getName());
+
+            Patient patient = this.repository.get(reference);
+            if (patient == null || !isStale(patient)) {
+                return;
+            }
+            String featuresHash = getFeaturesHash(patient);
+            PatientSpecificity specificity = this.service.getSpecificity(patient);
+            if (specificity == null) {
+                return;
+            }
+
+            XWikiDocument doc = context.getWiki().getDocument(reference, context).clone();
+            BaseObject stored = doc.getXObject(CLASS_REFERENCE, true, context);
+            stored.setDoubleValue(SCORE, specificity.getScore());
+            stored.setDateValue(DATE, specificity.getComputationDate());
+            stored.setStringValue(SERVER, specificity.getComputingMethod());
+            stored.setStringValue(FEATURES_HASH, featuresHash);
+            store(stored, doc, context);
+        } catch (Exception ex) {
+            this.logger.warn("Failed to update the specificity score of patient [{}]: {}", reference,
+                ex.getMessage());
+        } finally {
+            this.execution.removeContext();
+            // Only done now, so that a failed computation isn't endlessly rescheduled by loading the patient
+            boolean again;
+            synchronized (this.pending) {
+                this.running.remove(reference);
+                this.pending.remove(reference);
+                again = this.changed.remove(reference);
+            }
+            if (again) {
+                schedule(reference);
+            }
+        }
+    }
+
+    /**
+     * Writes only the score object to the database, then evicts the patient record from the document cache, so that
+     * the next time the patient is loaded the new score is visible.
+     *
+     * @param stored the updated score object
+     * @param doc the document holding the score object
+     * @param context the current context
+     * @throws XWikiException if writing the object fails
+     */
+    private void store(BaseObject stored, XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        context.getWiki().getHibernateStore().saveXWikiCollection(stored, context, true);
+        XWikiStoreInterface store = context.getWiki().getStore();
+        if (store instanceof XWikiCacheStore) {
+            XWikiCacheStore cacheStore = (XWikiCacheStore) store;
+            cacheStore.getCache().remove(cacheStore.getKey(doc, context));
+        }
+    }
+}
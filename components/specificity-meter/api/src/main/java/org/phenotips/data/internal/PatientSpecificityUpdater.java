@@ -0,0 +1,63 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientSpecificity;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Keeps the specificity scores of patient records precomputed and stored in the records themselves, so that reading a
+ * score never requires waiting for a, possibly remote, computation. Scores are computed asynchronously, whenever the
+ * phenotype of a patient changes.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface PatientSpecificityUpdater
+{
+    /**
+     * Retrieves the specificity score stored in a patient record, which may have been computed for an older version
+     * of the patient's phenotype, see {@link #isStale(Patient)}.
+     *
+     * @param patient the patient whose score to retrieve
+     * @return the stored score, or {@code null} if no score was stored yet
+     */
+    PatientSpecificity getStoredSpecificity(Patient patient);
+
+    /**
+     * Checks if the specificity score stored in a patient record doesn't correspond to the current phenotype of the
+     * patient, either because the phenotype changed since the score was computed, or because no score was stored yet.
+     *
+     * @param patient the patient to check
+     * @return {@code true} if the stored score is missing or outdated, {@code false} if it is up to date
+     */
+    boolean isStale(Patient patient);
+
+    /**
+     * Schedules the computation of a new score for a patient, which will be stored in the patient record once ready.
+     * Returns immediately; requests for a patient that is already waiting to be scored are ignored.
+     *
+     * @param patient the patient to score
+     */
+    void scheduleUpdate(Patient patient);
+}
@@ -22,8 +22,8 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
 import org.phenotips.data.PatientSpecificity;
-import org.phenotips.data.PatientSpecificityService;
 import org.phenotips.data.PatientWritePolicy;
+import org.phenotips.data.internal.PatientSpecificityUpdater;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
@@ -47,7 +47,9 @@
 import org.json.JSONObject;
 
 /**
- * Exposes the patient profile specificity.
+ * Exposes the patient profile specificity. The score is not computed on demand, but read from the patient record,
+ * where it is stored by the {@link PatientSpecificityUpdater}; a {@code stale} flag tells if the phenotype changed
+ * since the score was computed, in which case a new computation is scheduled.
  *
  * @version $Id$
  * @since 1.0M12
@@ -61,9 +63,9 @@ public class SpecificityController implements PatientDataController<Object>, Ini
     /** The name of the data module exposed by this class. */
     private static final String NAME = "specificity";
 
-    /** The actual service performing the specificity computation. */
+    /** Provides the precomputed scores. */
     @Inject
-    private PatientSpecificityService service;
+    private PatientSpecificityUpdater updater;
 
     private DateFormat isoDateFormat;
 
@@ -77,12 +79,17 @@ public void initialize() throws InitializationException
     @Override
     public PatientData<Object> load(Patient patient)
     {
-        PatientSpecificity spec = this.service.getSpecificity(patient);
+        PatientSpecificity spec = this.updater.getStoredSpecificity(patient);
+        boolean stale = spec == null || this.updater.isStale(patient);
+        if (stale) {
+            this.updater.scheduleUpdate(patient);
+        }
         if (spec != null) {
             Map<String, Object> data = new LinkedHashMap<String, Object>();
             data.put("score", spec.getScore());
             data.put("date", this.isoDateFormat.format(spec.getComputationDate()));
             data.put("server", spec.getComputingMethod());
+            data.put("stale", stale);
             return new DictionaryPatientData<Object>(NAME, data);
         }
         return null;
@@ -97,7 +104,7 @@ public void save(Patient patient)
     @Override
     public void save(final Patient patient, final PatientWritePolicy policy)
     {
-        // Nothing to save, the score is always computed
+        // Nothing to save, the score is stored by the specificity updater
     }
 
     @Override
@@ -130,7 +137,7 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
     @Override
     public PatientData<Object> readJSON(JSONObject json)
     {
-        // No need to read this, the score is not persisted
+        // No need to read this, the score is always computed locally
         return null;
     }
 
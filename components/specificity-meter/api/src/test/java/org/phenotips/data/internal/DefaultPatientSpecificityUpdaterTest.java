@@ -0,0 +1,283 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.PatientSpecificity;
+import org.phenotips.data.PatientSpecificityService;
+import org.phenotips.data.events.PatientChangedEvent;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientSpecificityUpdater}.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientSpecificityUpdaterTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PatientSpecificityUpdater> mocker =
+        new MockitoComponentMockingRule<>(DefaultPatientSpecificityUpdater.class, PatientSpecificityUpdater.class,
+            "patient-specificity-updater");
+
+    private final DocumentReference patientReference = new DocumentReference("xwiki", "data", "P0000001");
+
+    @Mock
+    private Patient patient;
+
+    @Mock
+    private XWikiDocument patientDoc;
+
+    @Mock
+    private BaseObject stored;
+
+    private PatientSpecificityService service;
+
+    private Set<Feature> features = new LinkedHashSet<>();
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.patientScoring.updaterThreads", 2)).thenReturn(1);
+        this.service = this.mocker.getInstance(PatientSpecificityService.class);
+
+        this.features.add(mockFeature("HP:1", true));
+        this.features.add(mockFeature("HP:2", false));
+        Mockito.doReturn(this.features).when(this.patient).getFeatures();
+        when(this.patient.getDocumentReference()).thenReturn(this.patientReference);
+        when(this.patient.getXDocument()).thenReturn(this.patientDoc);
+    }
+
+    @Test
+    public void getStoredSpecificityReadsTheStoredObject() throws ComponentLookupException
+    {
+        Date date = new Date();
+        when(this.patientDoc.getXObject(DefaultPatientSpecificityUpdater.CLASS_REFERENCE)).thenReturn(this.stored);
+        when(this.stored.getDoubleValue("score")).thenReturn(0.25);
+        when(this.stored.getDateValue("date")).thenReturn(date);
+        when(this.stored.getStringValue("server")).thenReturn("monarchinitiative.org");
+
+        PatientSpecificity spec = this.mocker.getComponentUnderTest().getStoredSpecificity(this.patient);
+        Assert.assertEquals(0.25, spec.getScore(), 0.0);
+        Assert.assertEquals(date, spec.getComputationDate());
+        Assert.assertEquals("monarchinitiative.org", spec.getComputingMethod());
+        Mockito.verifyZeroInteractions(this.service);
+    }
+
+    @Test
+    public void getStoredSpecificityWithNoStoredObjectReturnsNull() throws ComponentLookupException
+    {
+        Assert.assertNull(this.mocker.getComponentUnderTest().getStoredSpecificity(this.patient));
+        when(this.patient.getXDocument()).thenReturn(null);
+        Assert.assertNull(this.mocker.getComponentUnderTest().getStoredSpecificity(this.patient));
+    }
+
+    @Test
+    public void isStaleComparesTheFeaturesHash() throws ComponentLookupException
+    {
+        Assert.assertTrue(this.mocker.getComponentUnderTest().isStale(this.patient));
+
+        when(this.patientDoc.getXObject(DefaultPatientSpecificityUpdater.CLASS_REFERENCE)).thenReturn(this.stored);
+        when(this.stored.getStringValue("features_hash"))
+            .thenReturn(DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient));
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isStale(this.patient));
+
+        this.features.add(mockFeature("HP:3", true));
+        Assert.assertTrue(this.mocker.getComponentUnderTest().isStale(this.patient));
+    }
+
+    @Test
+    public void featuresHashDoesNotDependOnOrder()
+    {
+        String hash = DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient);
+        Set<Feature> reversed = new LinkedHashSet<>();
+        reversed.add(mockFeature("HP:2", false));
+        reversed.add(mockFeature("HP:1", true));
+        Mockito.doReturn(reversed).when(this.patient).getFeatures();
+        Assert.assertEquals(hash, DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient));
+
+        reversed.clear();
+        reversed.add(mockFeature("HP:2", true));
+        reversed.add(mockFeature("HP:1", true));
+        Assert.assertNotEquals(hash, DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient));
+    }
+
+    @Test
+    public void changedPatientIsScoredInTheBackgroundAndStored() throws Exception
+    {
+        Provider<XWikiContext> contextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        XWikiContext context = mock(XWikiContext.class);
+        when(contextProvider.get()).thenReturn(context);
+        XWiki xwiki = mock(XWiki.class);
+        when(context.getWiki()).thenReturn(xwiki);
+        XWikiHibernateStore hibernateStore = mock(XWikiHibernateStore.class);
+        when(xwiki.getHibernateStore()).thenReturn(hibernateStore);
+        XWikiCacheStore cacheStore = mock(XWikiCacheStore.class);
+        when(xwiki.getStore()).thenReturn(cacheStore);
+        @SuppressWarnings("unchecked")
+        Cache<XWikiDocument> documentCache = mock(Cache.class);
+        when(cacheStore.getCache()).thenReturn(documentCache);
+        XWikiDocument docToSave = mock(XWikiDocument.class);
+        when(cacheStore.getKey(docToSave, context)).thenReturn("xwiki:data.P0000001");
+        when(xwiki.getDocument(this.patientReference, context)).thenReturn(this.patientDoc);
+        when(this.patientDoc.clone()).thenReturn(docToSave);
+        when(docToSave.getXObject(DefaultPatientSpecificityUpdater.CLASS_REFERENCE, true, context))
+            .thenReturn(this.stored);
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.get(this.patientReference)).thenReturn(this.patient);
+        Date date = new Date();
+        when(this.service.getSpecificity(this.patient))
+            .thenReturn(new PatientSpecificity(0.25, date, "monarchinitiative.org"));
+
+        ((EventListener) this.mocker.getComponentUnderTest()).onEvent(new PatientChangedEvent(this.patient, null),
+            this.patientDoc, null);
+        // Waits for the pending updates to finish
+        ((Disposable) this.mocker.getComponentUnderTest()).dispose();
+
+        verify(this.stored).setDoubleValue("score", 0.25);
+        verify(this.stored).setDateValue("date", date);
+        verify(this.stored).setStringValue("server", "monarchinitiative.org");
+        verify(this.stored).setStringValue("features_hash",
+            DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient));
+        // Only the score is written, the patient record isn't saved as a whole
+        verify(hibernateStore).saveXWikiCollection(this.stored, context, true);
+        verify(documentCache).remove("xwiki:data.P0000001");
+        verify(xwiki, never()).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(),
+            any(XWikiContext.class));
+    }
+
+    @Test
+    public void upToDatePatientIsNotScored() throws Exception
+    {
+        when(this.patientDoc.getXObject(DefaultPatientSpecificityUpdater.CLASS_REFERENCE)).thenReturn(this.stored);
+        when(this.stored.getStringValue("features_hash"))
+            .thenReturn(DefaultPatientSpecificityUpdater.getFeaturesHash(this.patient));
+
+        ((EventListener) this.mocker.getComponentUnderTest()).onEvent(new PatientChangedEvent(this.patient, null),
+            this.patientDoc, null);
+        ((Disposable) this.mocker.getComponentUnderTest()).dispose();
+
+        verify(this.service, never()).getSpecificity(this.patient);
+    }
+
+    @Test
+    public void loadingThePatientBeingScoredDoesNotScheduleItAgain() throws Exception
+    {
+        mockContext();
+        final PatientSpecificityUpdater updater = this.mocker.getComponentUnderTest();
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        // Like the specificity controller, loading a patient without a stored score schedules an update
+        when(repository.get(this.patientReference)).then(invocation -> {
+            updater.scheduleUpdate(this.patient);
+            return this.patient;
+        });
+        // The score can't be computed right now
+        when(this.service.getSpecificity(this.patient)).thenReturn(null);
+
+        updater.scheduleUpdate(this.patient);
+        ((Disposable) updater).dispose();
+
+        verify(repository, times(1)).get(this.patientReference);
+        verify(this.service, times(1)).getSpecificity(this.patient);
+    }
+
+    @Test
+    public void patientScheduledWhileBeingScoredIsScoredAgain() throws Exception
+    {
+        mockContext();
+        final PatientSpecificityUpdater updater = this.mocker.getComponentUnderTest();
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.get(this.patientReference)).thenReturn(this.patient);
+        final AtomicInteger computations = new AtomicInteger();
+        when(this.service.getSpecificity(this.patient)).then(invocation -> {
+            if (computations.incrementAndGet() == 1) {
+                // The patient is changed by someone else meanwhile
+                Thread other = new Thread(() -> updater.scheduleUpdate(this.patient));
+                other.start();
+                other.join();
+            }
+            return null;
+        });
+
+        updater.scheduleUpdate(this.patient);
+        // Waits for the first computation to end, then for the second one
+        for (int i = 0; i < 500 && computations.get() < 2; ++i) {
+            Thread.sleep(10);
+        }
+        ((Disposable) updater).dispose();
+
+        verify(this.service, times(2)).getSpecificity(this.patient);
+    }
+
+    private void mockContext() throws ComponentLookupException
+    {
+        Provider<XWikiContext> contextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        XWikiContext context = mock(XWikiContext.class);
+        when(contextProvider.get()).thenReturn(context);
+    }
+
+    private Feature mockFeature(String id, boolean present)
+    {
+        Feature feature = mock(Feature.class);
+        when(feature.getId()).thenReturn(id);
+        when(feature.isPresent()).thenReturn(present);
+        return feature;
+    }
+}
@@ -23,7 +23,7 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
 import org.phenotips.data.PatientSpecificity;
-import org.phenotips.data.PatientSpecificityService;
+import org.phenotips.data.internal.PatientSpecificityUpdater;
 
 import org.xwiki.cache.CacheException;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -62,7 +62,7 @@
     @Mock
     private PatientSpecificity spec;
 
-    private PatientSpecificityService service;
+    private PatientSpecificityUpdater updater;
 
     private Date date;
 
@@ -76,7 +76,7 @@ public void setup() throws CacheException, ComponentLookupException
         MockitoAnnotations.initMocks(this);
         this.isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
         this.isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        this.service = this.mocker.getInstance(PatientSpecificityService.class);
+        this.updater = this.mocker.getInstance(PatientSpecificityUpdater.class);
         when(this.spec.getComputingMethod()).thenReturn("monarchinitiative.org");
         Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT+02:00"), Locale.ROOT);
         c.set(2010, 2, 20, 14, 20, 0);
@@ -86,7 +86,7 @@ public void setup() throws CacheException, ComponentLookupException
         when(this.spec.getComputationDate()).thenReturn(this.date);
         when(this.spec.getScore()).thenReturn(0.25);
 
-        when(this.service.getSpecificity(this.patient)).thenReturn(this.spec);
+        when(this.updater.getStoredSpecificity(this.patient)).thenReturn(this.spec);
     }
 
     @Test
@@ -98,13 +98,26 @@ public void load() throws ComponentLookupException
         Assert.assertEquals(0.25, (double) result.get("score"), 0.0);
         Assert.assertEquals(this.dateStr, result.get("date"));
         Assert.assertEquals("monarchinitiative.org", result.get("server"));
+        Assert.assertEquals(false, result.get("stale"));
+        Mockito.verify(this.updater, Mockito.never()).scheduleUpdate(this.patient);
+    }
+
+    @Test
+    public void loadWithStaleSpecificitySchedulesUpdate() throws ComponentLookupException
+    {
+        when(this.updater.isStale(this.patient)).thenReturn(true);
+        PatientData<Object> result = this.mocker.getComponentUnderTest().load(this.patient);
+        Assert.assertEquals(0.25, (double) result.get("score"), 0.0);
+        Assert.assertEquals(true, result.get("stale"));
+        Mockito.verify(this.updater).scheduleUpdate(this.patient);
     }
 
     @Test
     public void loadWithNoSpecificityDoesNothing() throws ComponentLookupException
     {
-        when(this.service.getSpecificity(this.patient)).thenReturn(null);
+        when(this.updater.getStoredSpecificity(this.patient)).thenReturn(null);
         Assert.assertNull(this.mocker.getComponentUnderTest().load(this.patient));
+        Mockito.verify(this.updater).scheduleUpdate(this.patient);
     }
 
     @Test
@@ -193,7 +206,7 @@ public void saveDoesNothing() throws ComponentLookupException
     {
         this.mocker.getComponentUnderTest().save(this.patient);
         this.mocker.getComponentUnderTest().save(null);
-        Mockito.verifyZeroInteractions(this.service);
+        Mockito.verifyZeroInteractions(this.updater);
     }
 
     @Test
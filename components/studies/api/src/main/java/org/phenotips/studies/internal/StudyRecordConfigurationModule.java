@@ -31,7 +31,9 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -133,36 +135,37 @@ public RecordConfiguration process(RecordConfiguration config)
     private void updateStudyConfiguration(final RecordConfiguration config, final List<String> sectionOverrides,
         final List<String> fieldOverrides)
     {
+        final Map<String, Integer> sectionPositions = getPositions(sectionOverrides);
+        final Map<String, Integer> fieldPositions = getPositions(fieldOverrides);
         List<RecordSection> updatedSections = new ArrayList<>(config.getAllSections());
         Collections.<RecordSection>sort(updatedSections, new Comparator<RecordSection>()
         {
             @Override
             public int compare(RecordSection o1, RecordSection o2)
             {
-                int i1 = sectionOverrides.indexOf(o1.getExtension().getId());
-                int i2 = sectionOverrides.indexOf(o2.getExtension().getId());
-                return (i2 == -1 || i1 == -1) ? (i2 - i1) : (i1 - i2);
+                return compareOverridePositions(sectionPositions, o1.getExtension().getId(),
+                    o2.getExtension().getId());
             }
         });
         for (final RecordSection section : updatedSections) {
             // If section ID is not in sectionOverrides, it's not enabled. Disable all elements for section.
-            if (!sectionOverrides.contains(section.getExtension().getId())) {
+            if (!sectionPositions.containsKey(section.getExtension().getId())) {
                 section.setEnabled(false);
             } else {
-                configureFields(section, fieldOverrides);
+                configureFields(section, fieldPositions);
             }
         }
         config.setSections(updatedSections);
     }
 
     /**
-     * Given the {@code section} that needs to be configured, and the {@code fieldOverrides enabled fields}, configures
+     * Given the {@code section} that needs to be configured, and the {@code fieldPositions enabled fields}, configures
      * the {@code section} elements.
      *
      * @param section the {@link RecordSection record section} that needs to be configured
-     * @param fieldOverrides the list of identifiers for enabled fields
+     * @param fieldPositions the identifiers of the enabled fields, mapped to their position in the configured order
      */
-    private void configureFields(final RecordSection section, final List<String> fieldOverrides)
+    private void configureFields(final RecordSection section, final Map<String, Integer> fieldPositions)
     {
         List<RecordElement> updatedElements = new ArrayList<>(section.getAllElements());
         Collections.<RecordElement>sort(updatedElements, new Comparator<RecordElement>()
@@ -170,19 +173,50 @@ private void configureFields(final RecordSection section, final List<String> fie
             @Override
             public int compare(RecordElement o1, RecordElement o2)
             {
-                int i1 = fieldOverrides.indexOf(o1.getExtension().getId());
-                int i2 = fieldOverrides.indexOf(o2.getExtension().getId());
-                return (i2 == -1 || i1 == -1) ? (i2 - i1) : (i1 - i2);
+                return compareOverridePositions(fieldPositions, o1.getExtension().getId(), o2.getExtension().getId());
             }
         });
         for (final RecordElement element : updatedElements) {
-            if (!fieldOverrides.contains(element.getExtension().getId())) {
+            if (!fieldPositions.containsKey(element.getExtension().getId())) {
                 element.setEnabled(false);
             }
         }
         section.setElements(updatedElements);
     }
 
+    /**
+     * Indexes the position of each identifier in an override list, so that sorting doesn't have to search the list for
+     * each comparison. If an identifier is listed more than once, its first position is used.
+     *
+     * @param overrides the list of enabled identifiers, in the configured order
+     * @return a map from each identifier to its position in the list
+     */
+    private Map<String, Integer> getPositions(List<String> overrides)
+    {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < overrides.size(); ++i) {
+            positions.putIfAbsent(overrides.get(i), i);
+        }
+        return positions;
+    }
+
+    /**
+     * Orders identifiers by their configured position; identifiers that aren't listed are placed after all the listed
+     * ones.
+     *
+     * @param positions the configured positions, as returned by {@link #getPositions(List)}
+     * @param id1 the first identifier to compare
+     * @param id2 the second identifier to compare
+     * @return a negative number, zero, or a positive number as the first identifier should be placed before, in the
+     *         same place as, or after the second identifier
+     */
+    private static int compareOverridePositions(Map<String, Integer> positions, String id1, String id2)
+    {
+        int i1 = positions.getOrDefault(id1, -1);
+        int i2 = positions.getOrDefault(id2, -1);
+        return (i2 == -1 || i1 == -1) ? (i2 - i1) : (i1 - i2);
+    }
+
     @Override
     public int getPriority()
     {
@@ -195,6 +229,13 @@ public boolean supportsRecordType(String recordType)
         return "patient".equals(recordType);
     }
 
+    @Override
+    public String getCacheKey(String recordType)
+    {
+        // Changes to the study documents themselves invalidate the cache, so only the binding is needed here
+        return StringUtils.defaultString(getBoundStudy());
+    }
+
     /**
      * If the current document is a patient record, and it has a valid specific study binding specified, then return
      * that configuration.
@@ -203,12 +244,7 @@ public boolean supportsRecordType(String recordType)
      */
     private StudyConfiguration getBoundConfiguration()
     {
-        if (this.dab.getCurrentDocumentReference() == null) {
-            // Non-interactive requests, use the default configuration
-            return null;
-        }
-        String boundConfig = (String) this.dab.getProperty(this.dab.getCurrentDocumentReference(),
-            this.resolver.resolve(STUDY_BINDING_CLASS_REFERENCE), STUDY_REFERENCE_PROPERTY_LABEL);
+        String boundConfig = getBoundStudy();
         if (StringUtils.isNotBlank(boundConfig)) {
             try {
                 XWikiContext context = this.xcontextProvider.get();
@@ -225,4 +261,19 @@ private StudyConfiguration getBoundConfiguration()
         }
         return null;
     }
+
+    /**
+     * Reads the serialized reference of the study bound to the current document.
+     *
+     * @return the bound study, or {@code null} if there's no current document or it isn't bound to a study
+     */
+    private String getBoundStudy()
+    {
+        if (this.dab.getCurrentDocumentReference() == null) {
+            // Non-interactive requests, use the default configuration
+            return null;
+        }
+        return (String) this.dab.getProperty(this.dab.getCurrentDocumentReference(),
+            this.resolver.resolve(STUDY_BINDING_CLASS_REFERENCE), STUDY_REFERENCE_PROPERTY_LABEL);
+    }
 }
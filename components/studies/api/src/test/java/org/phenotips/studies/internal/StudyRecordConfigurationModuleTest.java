@@ -267,6 +267,25 @@ public void processSetsCustomMapping() throws ComponentLookupException
         verify(this.config).setPhenotypeMapping(this.mappingDocumentReference);
     }
 
+    @Test
+    public void cacheKeyIsTheBoundStudy() throws Exception
+    {
+        Assert.assertEquals("Studies.Ataxia", this.mocker.getComponentUnderTest().getCacheKey("patient"));
+        verify(this.xwiki, never()).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void cacheKeyIsEmptyWithoutBoundStudy() throws ComponentLookupException
+    {
+        when(this.dab.getProperty(this.currentDocument, this.bindingClassDocument,
+            StudyRecordConfigurationModule.STUDY_REFERENCE_PROPERTY_LABEL))
+                .thenReturn(null);
+        Assert.assertEquals("", this.mocker.getComponentUnderTest().getCacheKey("patient"));
+
+        when(this.dab.getCurrentDocumentReference()).thenReturn(null);
+        Assert.assertEquals("", this.mocker.getComponentUnderTest().getCacheKey("patient"));
+    }
+
     @Test
     public void priorityIs50() throws ComponentLookupException
     {
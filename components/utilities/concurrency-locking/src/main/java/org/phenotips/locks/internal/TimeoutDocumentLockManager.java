@@ -18,6 +18,7 @@
 package org.phenotips.locks.internal;
 
 import org.phenotips.locks.DocumentLockManager;
+import org.phenotips.metrics.MetricsRegistry;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
@@ -48,6 +49,10 @@ public class TimeoutDocumentLockManager implements DocumentLockManager
     @Inject
     private Logger logger;
 
+    /** Records how long lock requests wait, and how many of them time out. */
+    @Inject
+    private MetricsRegistry metrics;
+
     private final ConcurrentHashMap<DocumentReference, Lock> locks = new ConcurrentHashMap<>();
 
     @Override
@@ -55,8 +60,11 @@ public void lock(@Nonnull final DocumentReference document)
     {
         try {
             final Lock lock = this.locks.computeIfAbsent(document, k -> new StampedLock().asWriteLock());
+            final long start = System.nanoTime();
             final boolean cleanLock = lock.tryLock(10, TimeUnit.SECONDS);
+            this.metrics.updateTime("locks.document.wait", System.nanoTime() - start);
             if (!cleanLock) {
+                this.metrics.increment("locks.document.timeout");
                 this.logger.debug("Timed out while waiting for lock on [{}], proceeding anyway", document);
             }
         } catch (InterruptedException ex) {
@@ -0,0 +1,123 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Collects simple performance measurements: counters, histograms of arbitrary values, and timers. Metrics are
+ * identified by dotted names, such as {@code vocabulary.hpo.search}, and are created the first time they are updated.
+ * <p>
+ * Collecting metrics is disabled by default, and can be enabled by setting {@code phenotips.metrics.enabled=true} in
+ * {@code xwiki.properties}. While disabled, all the update methods return immediately, so instrumented code may call
+ * them unconditionally. Code that needs to do extra work just for building a metric name should first check
+ * {@link #isEnabled()}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Role
+public interface MetricsRegistry
+{
+    /**
+     * Checks if metrics are being collected.
+     *
+     * @return {@code true} if metrics collection is enabled, {@code false} otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * Increments a counter by one.
+     *
+     * @param name the name of the counter
+     */
+    void increment(String name);
+
+    /**
+     * Increments a counter by a given amount. Counters incremented while a request is being measured, see
+     * {@link #startRequest()}, are also tallied per request.
+     *
+     * @param name the name of the counter
+     * @param delta the amount to add to the counter
+     */
+    void increment(String name, long delta);
+
+    /**
+     * Records a value in a histogram.
+     *
+     * @param name the name of the histogram
+     * @param value the value to record, must not be negative
+     */
+    void update(String name, long value);
+
+    /**
+     * Records the duration of an operation in a timer. The usual pattern is to remember {@link System#nanoTime()}
+     * before the operation, and pass the difference to this method after the operation completes.
+     *
+     * @param name the name of the timer
+     * @param durationNanos the duration of the operation, in nanoseconds
+     */
+    void updateTime(String name, long durationNanos);
+
+    /**
+     * Marks the start of a request processed by the current thread. Until {@link #endRequest()} is called, counter
+     * increments made by this thread are also tallied for this request.
+     */
+    void startRequest();
+
+    /**
+     * Marks the end of the request processed by the current thread. The total request time is recorded in the
+     * {@code requests} timer, and for each counter incremented during the request, the number of increments is
+     * recorded in the {@code <counter name>.perRequest} histogram.
+     */
+    void endRequest();
+
+    /**
+     * Returns a snapshot of all the metrics collected so far, sorted by name. Each metric is described by a map of
+     * statistics:
+     * <ul>
+     * <li>counters only have a {@code count}</li>
+     * <li>histograms have a {@code count}, and the {@code total}, {@code min}, {@code max}, {@code mean},
+     * {@code p50}, {@code p95} and {@code p99} of the recorded values</li>
+     * <li>timers have a {@code count}, and the same statistics as histograms, in milliseconds, with a {@code Ms}
+     * suffix, for example {@code p95Ms}</li>
+     * </ul>
+     * Percentiles are approximated, with a relative error of at most 100%, since values are grouped in power of two
+     * ranges.
+     *
+     * @return a map of statistics for each metric, empty if metrics are disabled or nothing was recorded yet
+     */
+    Map<String, Map<String, Number>> getSnapshot();
+
+    /**
+     * Returns the {@link #getSnapshot() snapshot} of all the metrics collected so far, as JSON.
+     *
+     * @return a JSON object with one key for each metric, holding an object with the metric's statistics
+     */
+    JSONObject toJSON();
+
+    /** Discards all the metrics collected so far. */
+    void reset();
+}
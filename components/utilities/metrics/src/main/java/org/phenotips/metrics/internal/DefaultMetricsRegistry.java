@@ -0,0 +1,238 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+import org.phenotips.metrics.MetricsReporter;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link MetricsRegistry} role, keeping all the metrics in memory. When enabled, all the
+ * available {@link MetricsReporter reporters} are started. A new, uninitialized instance is disabled, which makes it
+ * usable as a no-op registry.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultMetricsRegistry implements MetricsRegistry, Initializable, Disposable
+{
+    /** The name of the {@code xwiki.properties} setting that enables collecting metrics. */
+    private static final String ENABLED_KEY = "phenotips.metrics.enabled";
+
+    private static final String REQUESTS = "requests";
+
+    private static final String PER_REQUEST_SUFFIX = ".perRequest";
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private static final String MILLIS_SUFFIX = "Ms";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Provider<List<MetricsReporter>> reporters;
+
+    private final List<MetricsReporter> startedReporters = new LinkedList<>();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    /** Per request tallies of counter increments, present only while a request is being measured. */
+    private final ThreadLocal<RequestTally> requests = new ThreadLocal<>();
+
+    private volatile boolean enabled;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(ENABLED_KEY, Boolean.FALSE);
+        if (!this.enabled) {
+            return;
+        }
+        for (MetricsReporter reporter : this.reporters.get()) {
+            try {
+                reporter.start(this);
+                this.startedReporters.add(reporter);
+            } catch (Exception ex) {
+                this.logger.warn("Failed to start metrics reporter [{}]: {}", reporter.getClass().getName(),
+                    ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.enabled = false;
+        for (MetricsReporter reporter : this.startedReporters) {
+            try {
+                reporter.stop();
+            } catch (Exception ex) {
+                this.logger.warn("Failed to stop metrics reporter [{}]: {}", reporter.getClass().getName(),
+                    ex.getMessage());
+            }
+        }
+        this.startedReporters.clear();
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public void increment(String name)
+    {
+        increment(name, 1);
+    }
+
+    @Override
+    public void increment(String name, long delta)
+    {
+        if (!this.enabled) {
+            return;
+        }
+        this.counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+        RequestTally tally = this.requests.get();
+        if (tally != null) {
+            tally.counts.merge(name, delta, Long::sum);
+        }
+    }
+
+    @Override
+    public void update(String name, long value)
+    {
+        if (!this.enabled) {
+            return;
+        }
+        this.histograms.computeIfAbsent(name, k -> new Histogram()).update(value);
+    }
+
+    @Override
+    public void updateTime(String name, long durationNanos)
+    {
+        if (!this.enabled) {
+            return;
+        }
+        this.timers.computeIfAbsent(name, k -> new Histogram()).update(durationNanos);
+    }
+
+    @Override
+    public void startRequest()
+    {
+        if (!this.enabled) {
+            return;
+        }
+        this.requests.set(new RequestTally());
+    }
+
+    @Override
+    public void endRequest()
+    {
+        RequestTally tally = this.requests.get();
+        if (tally == null) {
+            return;
+        }
+        this.requests.remove();
+        if (!this.enabled) {
+            return;
+        }
+        updateTime(REQUESTS, System.nanoTime() - tally.start);
+        for (Map.Entry<String, Long> count : tally.counts.entrySet()) {
+            update(count.getKey() + PER_REQUEST_SUFFIX, count.getValue());
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, Number>> getSnapshot()
+    {
+        SortedMap<String, Map<String, Number>> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : this.counters.entrySet()) {
+            result.put(counter.getKey(), Collections.singletonMap("count", counter.getValue().sum()));
+        }
+        for (Map.Entry<String, Histogram> histogram : this.histograms.entrySet()) {
+            result.put(histogram.getKey(), histogram.getValue().snapshot(1, ""));
+        }
+        for (Map.Entry<String, Histogram> timer : this.timers.entrySet()) {
+            result.put(timer.getKey(), timer.getValue().snapshot(NANOS_PER_MILLI, MILLIS_SUFFIX));
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        JSONObject result = new JSONObject();
+        for (Map.Entry<String, Map<String, Number>> metric : getSnapshot().entrySet()) {
+            result.put(metric.getKey(), new JSONObject(metric.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.counters.clear();
+        this.histograms.clear();
+        this.timers.clear();
+    }
+
+    /** The start time of a request, and the counter increments made while processing it. */
+    private static final class RequestTally
+    {
+        private final long start = System.nanoTime();
+
+        private final Map<String, Long> counts = new HashMap<>();
+    }
+}
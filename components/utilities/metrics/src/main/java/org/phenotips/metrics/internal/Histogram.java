@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of non-negative long values. Instead of storing the values, only the number of values falling
+ * in each power of two range is counted, so percentiles are approximate, but recording a value is cheap and the memory
+ * used is constant.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class Histogram
+{
+    /** One bucket for {@code 0}, and one for each possible bit length of a positive long. */
+    private static final int BUCKETS = Long.SIZE;
+
+    private static final String COUNT = "count";
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram()
+    {
+        for (int i = 0; i < BUCKETS; ++i) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a value. Negative values are recorded as {@code 0}.
+     *
+     * @param value the value to record
+     */
+    void update(long value)
+    {
+        long safeValue = Math.max(value, 0);
+        this.buckets[bucketOf(safeValue)].increment();
+        this.count.increment();
+        this.total.add(safeValue);
+        this.min.accumulate(safeValue);
+        this.max.accumulate(safeValue);
+    }
+
+    /**
+     * Computes the statistics of the recorded values.
+     *
+     * @param scale all the statistics except the count are divided by this value, for example {@code 1000000} to
+     *            convert nanoseconds into milliseconds
+     * @param suffix a suffix to add to the name of all the statistics except the count, for example {@code Ms}
+     * @return an ordered map with the count, total, min, max, mean and 50th, 95th and 99th percentiles
+     */
+    Map<String, Number> snapshot(double scale, String suffix)
+    {
+        Map<String, Number> result = new LinkedHashMap<>();
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = this.buckets[i].sum();
+            n += counts[i];
+        }
+        result.put(COUNT, n);
+        if (n == 0) {
+            return result;
+        }
+        long minValue = this.min.get();
+        long maxValue = this.max.get();
+        result.put("total" + suffix, this.total.sum() / scale);
+        result.put("min" + suffix, minValue / scale);
+        result.put("max" + suffix, maxValue / scale);
+        result.put("mean" + suffix, this.total.sum() / scale / n);
+        result.put("p50" + suffix, percentile(counts, n, 0.50, minValue, maxValue) / scale);
+        result.put("p95" + suffix, percentile(counts, n, 0.95, minValue, maxValue) / scale);
+        result.put("p99" + suffix, percentile(counts, n, 0.99, minValue, maxValue) / scale);
+        return result;
+    }
+
+    private static int bucketOf(long value)
+    {
+        return BUCKETS - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket holding it, kept within the range of recorded values.
+     */
+    private static long percentile(long[] counts, long n, double quantile, long minValue, long maxValue)
+    {
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long upperBound = (i == 0) ? 0 : -1L >>> (BUCKETS - i);
+                return Math.max(minValue, Math.min(upperBound, maxValue));
+            }
+        }
+        return maxValue;
+    }
+}
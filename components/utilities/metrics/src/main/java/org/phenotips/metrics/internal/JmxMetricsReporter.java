@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+import org.phenotips.metrics.MetricsReporter;
+
+import org.xwiki.component.annotation.Component;
+
+import java.lang.management.ManagementFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+
+/**
+ * Publishes the collected metrics in the platform MBean server, under the {@code org.phenotips:type=Metrics} name, where
+ * they can be inspected with tools such as JConsole or VisualVM.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("jmx")
+@Singleton
+public class JmxMetricsReporter implements MetricsReporter
+{
+    /** The name under which the metrics bean is registered. */
+    static final String OBJECT_NAME = "org.phenotips:type=Metrics";
+
+    @Inject
+    private Logger logger;
+
+    private ObjectName name;
+
+    @Override
+    public void start(MetricsRegistry registry)
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new MetricsMBean(registry), objectName);
+            this.name = objectName;
+        } catch (JMException ex) {
+            this.logger.warn("Failed to register the metrics JMX bean: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void stop()
+    {
+        if (this.name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+        } catch (JMException ex) {
+            this.logger.debug("Failed to unregister the metrics JMX bean: {}", ex.getMessage());
+        }
+        this.name = null;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read only JMX view over the metrics in a {@link MetricsRegistry}. Each statistic of each metric is exposed as a
+ * separate attribute, named {@code <metric name>.<statistic>}, for example {@code vocabulary.hpo.search.p95Ms}. The
+ * list of attributes is recomputed every time the bean is inspected, so that newly created metrics also show up.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class MetricsMBean implements DynamicMBean
+{
+    private static final char SEPARATOR = '.';
+
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException
+    {
+        int separator = attribute.lastIndexOf(SEPARATOR);
+        if (separator > 0) {
+            Map<String, Number> metric = this.registry.getSnapshot().get(attribute.substring(0, separator));
+            if (metric != null && metric.containsKey(attribute.substring(separator + 1))) {
+                return metric.get(attribute.substring(separator + 1));
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        AttributeList result = new AttributeList();
+        Map<String, Map<String, Number>> snapshot = this.registry.getSnapshot();
+        for (String attribute : attributes) {
+            int separator = attribute.lastIndexOf(SEPARATOR);
+            Map<String, Number> metric = separator > 0 ? snapshot.get(attribute.substring(0, separator)) : null;
+            if (metric != null && metric.containsKey(attribute.substring(separator + 1))) {
+                result.add(new Attribute(attribute, metric.get(attribute.substring(separator + 1))));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+        throws MBeanException, ReflectionException
+    {
+        if ("reset".equals(actionName)) {
+            this.registry.reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Number>> metric : this.registry.getSnapshot().entrySet()) {
+            for (Map.Entry<String, Number> statistic : metric.getValue().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(metric.getKey() + SEPARATOR + statistic.getKey(),
+                    statistic.getValue().getClass().getName(), statistic.getKey() + " of " + metric.getKey(), true,
+                    false, false));
+            }
+        }
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Discards all the metrics collected so far",
+            null, "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "PhenoTips performance metrics",
+            attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+            new MBeanOperationInfo[] { reset }, null);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delimits the requests measured by the {@link MetricsRegistry} for requests which aren't processed by wiki actions,
+ * and thus aren't seen by the {@link RequestMetricsListener}, such as REST calls. Being a servlet filter, it isn't a
+ * component, so the registry is looked up in the root component manager the first time a request is processed.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class RequestMetricsFilter implements Filter
+{
+    private final Logger logger = LoggerFactory.getLogger(RequestMetricsFilter.class);
+
+    private ServletContext servletContext;
+
+    private volatile MetricsRegistry metrics;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException
+    {
+        this.servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException
+    {
+        MetricsRegistry registry = getMetrics();
+        if (registry == null || !registry.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        registry.startRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            registry.endRequest();
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        this.metrics = null;
+        this.servletContext = null;
+    }
+
+    private MetricsRegistry getMetrics()
+    {
+        if (this.metrics == null && this.servletContext != null) {
+            // The component manager is only available once the wiki has started
+            Object componentManager = this.servletContext.getAttribute(ComponentManager.class.getName());
+            if (componentManager instanceof ComponentManager) {
+                try {
+                    this.metrics = ((ComponentManager) componentManager).getInstance(MetricsRegistry.class);
+                } catch (ComponentLookupException ex) {
+                    this.logger.debug("Failed to look up the metrics registry: {}", ex.getMessage());
+                }
+            }
+        }
+        return this.metrics;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import org.xwiki.bridge.event.ActionExecutedEvent;
+import org.xwiki.bridge.event.ActionExecutingEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Delimits the requests measured by the {@link MetricsRegistry}, so that the total request time and the number of
+ * operations, such as database or vocabulary queries, performed by each request can be recorded.
+ * <p>
+ * Only requests processed by wiki actions are seen here; REST calls are measured by the {@link RequestMetricsFilter}
+ * instead. The per request query counts only include the queries explicitly instrumented, i.e. those issued by the
+ * patient repository and the entity managers, and the vocabulary Solr queries; queries run directly through the
+ * query manager or the store, for example by wiki pages or by other components, are not counted.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("metrics-request")
+@Singleton
+public class RequestMetricsListener extends AbstractEventListener
+{
+    @Inject
+    private MetricsRegistry metrics;
+
+    /** Basic constructor. */
+    public RequestMetricsListener()
+    {
+        super("metrics-request", new ActionExecutingEvent(), new ActionExecutedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof ActionExecutingEvent) {
+            this.metrics.startRequest();
+        } else if (event instanceof ActionExecutedEvent) {
+            this.metrics.endRequest();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.script;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.json.JSONObject;
+
+/**
+ * Exposes the collected performance metrics to scripts, for example for serving them as JSON from a wiki page.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable
+@Component
+@Named("metrics")
+@Singleton
+public class MetricsScriptService implements ScriptService
+{
+    @Inject
+    private MetricsRegistry metrics;
+
+    /**
+     * Checks if metrics are being collected.
+     *
+     * @return {@code true} if metrics collection is enabled in {@code xwiki.properties}
+     */
+    public boolean isEnabled()
+    {
+        return this.metrics.isEnabled();
+    }
+
+    /**
+     * Returns all the metrics collected so far.
+     *
+     * @return a JSON object with one key for each metric, holding an object with the metric's statistics, empty if
+     *         metrics are disabled
+     */
+    public JSONObject getJSON()
+    {
+        return this.metrics.toJSON();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+import org.phenotips.metrics.MetricsReporter;
+
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultMetricsRegistry} component.
+ *
+ * @version $Id$
+ */
+public class DefaultMetricsRegistryTest
+{
+    private static final String ENABLED_KEY = "phenotips.metrics.enabled";
+
+    @Mock
+    private ConfigurationSource configuration;
+
+    @Mock
+    private Logger logger;
+
+    @Mock
+    private Provider<List<MetricsReporter>> reportersProvider;
+
+    @Mock
+    private MetricsReporter reporter;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.configuration.getProperty(ENABLED_KEY, Boolean.FALSE)).thenReturn(Boolean.TRUE);
+        when(this.reportersProvider.get()).thenReturn(Arrays.asList(this.reporter));
+    }
+
+    @Test
+    public void countersAreIncremented() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        metrics.increment("queries");
+        metrics.increment("queries", 4);
+        metrics.increment("locks.document.timeout");
+
+        Map<String, Map<String, Number>> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(5L, snapshot.get("queries").get("count"));
+        Assert.assertEquals(1L, snapshot.get("locks.document.timeout").get("count"));
+    }
+
+    @Test
+    public void histogramStatisticsAreComputed() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        for (int i = 1; i <= 100; ++i) {
+            metrics.update("sizes", i);
+        }
+
+        Map<String, Number> sizes = metrics.getSnapshot().get("sizes");
+        Assert.assertEquals(100L, sizes.get("count"));
+        Assert.assertEquals(5050.0, sizes.get("total").doubleValue(), 0.0);
+        Assert.assertEquals(1.0, sizes.get("min").doubleValue(), 0.0);
+        Assert.assertEquals(100.0, sizes.get("max").doubleValue(), 0.0);
+        Assert.assertEquals(50.5, sizes.get("mean").doubleValue(), 0.0);
+        // Percentiles are the upper bound of the power of two range holding them
+        Assert.assertEquals(63.0, sizes.get("p50").doubleValue(), 0.0);
+        Assert.assertEquals(100.0, sizes.get("p95").doubleValue(), 0.0);
+        Assert.assertEquals(100.0, sizes.get("p99").doubleValue(), 0.0);
+    }
+
+    @Test
+    public void timersAreReportedInMilliseconds() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        metrics.updateTime("vocabulary.hpo.search", 2000000);
+        metrics.updateTime("vocabulary.hpo.search", 4000000);
+
+        Map<String, Number> search = metrics.getSnapshot().get("vocabulary.hpo.search");
+        Assert.assertEquals(2L, search.get("count"));
+        Assert.assertEquals(6.0, search.get("totalMs").doubleValue(), 0.0);
+        Assert.assertEquals(2.0, search.get("minMs").doubleValue(), 0.0);
+        Assert.assertEquals(4.0, search.get("maxMs").doubleValue(), 0.0);
+        Assert.assertEquals(3.0, search.get("meanMs").doubleValue(), 0.0);
+    }
+
+    @Test
+    public void countersAreTalliedPerRequest() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        metrics.increment("queries");
+        metrics.startRequest();
+        metrics.increment("queries");
+        metrics.increment("queries");
+        metrics.endRequest();
+        metrics.startRequest();
+        metrics.increment("queries");
+        metrics.endRequest();
+        // Outside a request, and ending a request that wasn't started, don't record anything
+        metrics.increment("queries");
+        metrics.endRequest();
+
+        Map<String, Map<String, Number>> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(5L, snapshot.get("queries").get("count"));
+        Assert.assertEquals(2L, snapshot.get("queries.perRequest").get("count"));
+        Assert.assertEquals(3.0, snapshot.get("queries.perRequest").get("total").doubleValue(), 0.0);
+        Assert.assertEquals(2L, snapshot.get("requests").get("count"));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() throws InitializationException
+    {
+        when(this.configuration.getProperty(ENABLED_KEY, Boolean.FALSE)).thenReturn(Boolean.FALSE);
+        MetricsRegistry metrics = createRegistry();
+        Assert.assertFalse(metrics.isEnabled());
+        metrics.increment("queries");
+        metrics.update("sizes", 3);
+        metrics.updateTime("vocabulary.hpo.search", 1000);
+        metrics.startRequest();
+        metrics.endRequest();
+
+        Assert.assertTrue(metrics.getSnapshot().isEmpty());
+        Assert.assertEquals(0, metrics.toJSON().length());
+        Mockito.verifyZeroInteractions(this.reportersProvider);
+    }
+
+    @Test
+    public void uninitializedRegistryIsDisabled()
+    {
+        MetricsRegistry metrics = new DefaultMetricsRegistry();
+        Assert.assertFalse(metrics.isEnabled());
+        metrics.increment("queries");
+        Assert.assertTrue(metrics.getSnapshot().isEmpty());
+    }
+
+    @Test
+    public void toJSONListsAllMetrics() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        metrics.increment("queries");
+        metrics.updateTime("patient.toJSON", 1000000);
+
+        JSONObject json = metrics.toJSON();
+        Assert.assertEquals(2, json.length());
+        Assert.assertEquals(1L, json.getJSONObject("queries").getLong("count"));
+        Assert.assertEquals(1.0, json.getJSONObject("patient.toJSON").getDouble("maxMs"), 0.0);
+    }
+
+    @Test
+    public void resetDiscardsMetrics() throws InitializationException
+    {
+        MetricsRegistry metrics = createRegistry();
+        metrics.increment("queries");
+        metrics.update("sizes", 3);
+        metrics.reset();
+        Assert.assertTrue(metrics.getSnapshot().isEmpty());
+    }
+
+    @Test
+    public void reportersAreStartedAndStopped() throws InitializationException, ComponentLifecycleException
+    {
+        DefaultMetricsRegistry metrics = createRegistry();
+        Mockito.verify(this.reporter).start(metrics);
+        metrics.dispose();
+        Mockito.verify(this.reporter).stop();
+        Assert.assertFalse(metrics.isEnabled());
+    }
+
+    @Test
+    public void failingReportersDontPreventInitialization() throws InitializationException
+    {
+        Mockito.doThrow(new IllegalStateException("port in use")).when(this.reporter)
+            .start(Mockito.any(MetricsRegistry.class));
+        MetricsRegistry metrics = createRegistry();
+        Assert.assertTrue(metrics.isEnabled());
+    }
+
+    private DefaultMetricsRegistry createRegistry() throws InitializationException
+    {
+        DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+        ReflectionUtils.setFieldValue(metrics, "logger", this.logger);
+        ReflectionUtils.setFieldValue(metrics, "configuration", this.configuration);
+        ReflectionUtils.setFieldValue(metrics, "reporters", this.reportersProvider);
+        metrics.initialize();
+        return metrics;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link JmxMetricsReporter} component.
+ *
+ * @version $Id$
+ */
+public class JmxMetricsReporterTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<JmxMetricsReporter> mocker =
+        new MockitoComponentMockingRule<>(JmxMetricsReporter.class);
+
+    @Mock
+    private MetricsRegistry registry;
+
+    private MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        Map<String, Number> search = new LinkedHashMap<>();
+        search.put("count", 2L);
+        search.put("p95Ms", 4.0);
+        Map<String, Map<String, Number>> snapshot = new LinkedHashMap<>();
+        snapshot.put("queries", Collections.singletonMap("count", 5L));
+        snapshot.put("vocabulary.hpo.search", search);
+        when(this.registry.getSnapshot()).thenReturn(snapshot);
+    }
+
+    @Test
+    public void metricsAreExposedAsAttributes() throws Exception
+    {
+        this.mocker.getComponentUnderTest().start(this.registry);
+        ObjectName name = new ObjectName(JmxMetricsReporter.OBJECT_NAME);
+        try {
+            Assert.assertEquals(5L, this.server.getAttribute(name, "queries.count"));
+            Assert.assertEquals(4.0, this.server.getAttribute(name, "vocabulary.hpo.search.p95Ms"));
+            Assert.assertEquals(3, this.server.getMBeanInfo(name).getAttributes().length);
+            this.server.invoke(name, "reset", null, null);
+            Mockito.verify(this.registry).reset();
+        } finally {
+            this.mocker.getComponentUnderTest().stop();
+        }
+        Assert.assertFalse(this.server.isRegistered(name));
+    }
+
+    @Test
+    public void stopWithoutStartDoesNothing() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().stop();
+        Mockito.verifyZeroInteractions(this.registry);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.metrics.internal;
+
+import org.phenotips.metrics.MetricsRegistry;
+
+import org.xwiki.component.manager.ComponentManager;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link RequestMetricsFilter}.
+ *
+ * @version $Id$
+ */
+public class RequestMetricsFilterTest
+{
+    @Mock
+    private FilterConfig config;
+
+    @Mock
+    private ServletContext servletContext;
+
+    @Mock
+    private ComponentManager componentManager;
+
+    @Mock
+    private MetricsRegistry metrics;
+
+    @Mock
+    private ServletRequest request;
+
+    @Mock
+    private ServletResponse response;
+
+    @Mock
+    private FilterChain chain;
+
+    private RequestMetricsFilter filter = new RequestMetricsFilter();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.config.getServletContext()).thenReturn(this.servletContext);
+        when(this.servletContext.getAttribute(ComponentManager.class.getName())).thenReturn(this.componentManager);
+        when(this.componentManager.getInstance(MetricsRegistry.class)).thenReturn(this.metrics);
+        when(this.metrics.isEnabled()).thenReturn(true);
+        this.filter.init(this.config);
+    }
+
+    @Test
+    public void requestsAreMeasured() throws Exception
+    {
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        InOrder order = Mockito.inOrder(this.metrics, this.chain);
+        order.verify(this.metrics).startRequest();
+        order.verify(this.chain).doFilter(this.request, this.response);
+        order.verify(this.metrics).endRequest();
+    }
+
+    @Test
+    public void failedRequestsAreStillEnded() throws Exception
+    {
+        doThrow(new ServletException()).when(this.chain).doFilter(this.request, this.response);
+        try {
+            this.filter.doFilter(this.request, this.response, this.chain);
+        } catch (ServletException ex) {
+            // Expected
+        }
+
+        verify(this.metrics).startRequest();
+        verify(this.metrics).endRequest();
+    }
+
+    @Test
+    public void requestsAreNotMeasuredWhenMetricsAreDisabled() throws Exception
+    {
+        when(this.metrics.isEnabled()).thenReturn(false);
+
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.chain).doFilter(this.request, this.response);
+        verify(this.metrics, never()).startRequest();
+    }
+
+    @Test
+    public void requestsPassThroughBeforeTheWikiIsStarted() throws Exception
+    {
+        when(this.servletContext.getAttribute(ComponentManager.class.getName())).thenReturn(null);
+
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.chain).doFilter(this.request, this.response);
+        verify(this.metrics, never()).startRequest();
+        verify(this.metrics, never()).endRequest();
+    }
+
+    @Test
+    public void theRegistryIsLookedUpOnce() throws Exception
+    {
+        this.filter.doFilter(this.request, this.response, this.chain);
+        this.filter.doFilter(this.request, this.response, this.chain);
+
+        verify(this.componentManager).getInstance(MetricsRegistry.class);
+        verify(this.chain, Mockito.times(2)).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    }
+}
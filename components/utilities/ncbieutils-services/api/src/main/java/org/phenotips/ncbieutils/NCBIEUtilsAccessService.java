@@ -18,13 +18,17 @@
 package org.phenotips.ncbieutils;
 
 import org.phenotips.ncbieutils.internal.AbstractSpecializedNCBIEUtilsAccessService;
+import org.phenotips.ncbieutils.internal.EUtilsClient;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.script.service.ScriptService;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
+
 /**
  * Script service exposing services provided by the online NCBI Entrez Utilities webserver.
  *
@@ -36,6 +40,13 @@
 @Singleton
 public class NCBIEUtilsAccessService implements ScriptService
 {
+    @Inject
+    private Logger logger;
+
+    /** Shared by all the database services, so that batching and rate limiting apply to all requests. */
+    @Inject
+    private EUtilsClient client;
+
     public NCBIEUtilsService get(final String name)
     {
         return new AbstractSpecializedNCBIEUtilsAccessService()
@@ -45,6 +56,18 @@ public String getDatabaseName()
             {
                 return name;
             }
+
+            @Override
+            protected EUtilsClient getClient()
+            {
+                return NCBIEUtilsAccessService.this.client;
+            }
+
+            @Override
+            protected Logger getLogger()
+            {
+                return NCBIEUtilsAccessService.this.logger;
+            }
         };
     }
 }
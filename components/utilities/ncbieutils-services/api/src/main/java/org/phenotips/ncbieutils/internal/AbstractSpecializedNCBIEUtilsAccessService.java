@@ -19,38 +19,20 @@
 
 import org.phenotips.ncbieutils.NCBIEUtilsService;
 
-import java.io.BufferedInputStream;
-import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
- * Base implementation for {@link NCBIEUtilsService}.
+ * Base implementation for {@link NCBIEUtilsService}. The requests are sent through the shared {@link EUtilsClient},
+ * which takes care of timeouts, rate limiting, caching and batching.
  *
  * @version $Id$
  */
@@ -59,21 +41,8 @@ public abstract class AbstractSpecializedNCBIEUtilsAccessService implements NCBI
     @Inject
     private Logger logger;
 
-    protected static final String SERVER_URL = "http://eutils.ncbi.nlm.nih.gov/entrez/eutils/";
-
-    protected static final String TERM_SEARCH_QUERY_SCRIPT = "esearch.fcgi";
-
-    protected static final String TERM_SEARCH_PARAM_NAME = "term";
-
-    protected static final String TERM_SUMMARY_QUERY_SCRIPT = "esummary.fcgi";
-
-    protected static final String TERM_SUMMARY_PARAM_NAME = "id";
-
-    protected static final String SPELL_CHECK_QUERY_SCRIPT = "espell.fcgi";
-
-    protected static final String SPELL_CHECK_PARAM_NAME = "term";
-
-    protected static final String DB_PARAM_NAME = "db";
+    @Inject
+    private EUtilsClient client;
 
     protected abstract String getDatabaseName();
 
@@ -116,49 +85,26 @@ public String getSuggestionsXML(final String query, final int rows, final int st
     @Override
     public String getName(String id)
     {
-        String url = composeURL(TERM_SUMMARY_QUERY_SCRIPT, TERM_SUMMARY_PARAM_NAME, id);
-        String result = id;
-        try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("DocSum");
-            if (nodes.getLength() > 0) {
-                Map<String, String> idToName = this.getNameForId(nodes.item(0));
-                result = idToName.get(id);
-                if (result != null && !id.equals(result)) {
-                    return result;
-                }
-            }
-            this.logger.warn("Name not found for OMIM id " + id);
+        String result = getNames(Collections.singletonList(id)).get(id);
+        if (result == null || id.equals(result)) {
+            getLogger().warn("Name not found for {} id {}", getDatabaseName(), id);
             return id;
-        } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve name for " + getDatabaseName() + " id " + id + " "
-                + ex.getClass().getName() + " " + ex.getMessage(), ex);
         }
-        return id;
+        return result;
     }
 
     @Override
     public Map<String, String> getNames(List<String> idList)
     {
         Map<String, String> result = new HashMap<String, String>();
-        String queryList = getSerializedList(idList);
-        String url = composeURL(TERM_SUMMARY_QUERY_SCRIPT, TERM_SUMMARY_PARAM_NAME, queryList);
         try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("DocSum");
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                Map<String, String> idToName = this.getNameForId(nodes.item(i));
-                for (String id : idToName.keySet()) {
-                    if (idList.contains(id)) {
-                        result.put(id, idToName.get(id));
-                    } else {
-                        this.logger.warn("Unrequested " + getDatabaseName() + " id " + id);
-                    }
-                }
+            for (SummaryDocument document : getClient().getSummaries(getDatabaseName(), idList)) {
+                String title = document.getTitle();
+                result.put(document.getId(), title == null ? document.getId() : title);
             }
         } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve name for " + getDatabaseName() + " ids " + queryList
-                + " " + ex.getClass().getName() + " " + ex.getMessage(), ex);
+            getLogger().error("Error while trying to retrieve names for {} ids {}: {}", getDatabaseName(), idList,
+                ex.getMessage(), ex);
         }
         return result;
     }
@@ -166,22 +112,13 @@ public Map<String, String> getNames(List<String> idList)
     @Override
     public String getCorrectedQuery(String query)
     {
-        // response example at http://eutils.ncbi.nlm.nih.gov/entrez/eutils/espell.fcgi?db=omim&term=atention+sindrom
-        // response type: XML
-        // get corrected query from /eSpellResult/CorrectedQuery (single element)
-        // use original query if this element is empty
-        String url = composeURL(SPELL_CHECK_QUERY_SCRIPT, SPELL_CHECK_PARAM_NAME, query);
+        // response example at https://eutils.ncbi.nlm.nih.gov/entrez/eutils/espell.fcgi?db=omim&term=atention+sindrom
+        // use original query if the corrected query is empty
         try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("CorrectedQuery");
-            if (nodes.getLength() > 0) {
-                String result = nodes.item(0).getTextContent();
-                result = StringUtils.trim(result);
-                return StringUtils.isNotEmpty(result) ? result : query;
-            }
+            String result = getClient().getCorrectedQuery(getDatabaseName(), query);
+            return StringUtils.isNotEmpty(result) ? result : query;
         } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve corrected query for " + query + " "
-                + ex.getClass().getName() + " " + ex.getMessage(), ex);
+            getLogger().error("Error while trying to retrieve corrected query for {}: {}", query, ex.getMessage(), ex);
         }
         return query;
     }
@@ -189,209 +126,59 @@ public String getCorrectedQuery(String query)
     @Override
     public List<String> getMatches(final String query, final int rows, final int start)
     {
-        // response example at http://eutils.ncbi.nlm.nih.gov/entrez/eutils/esearch.fcgi?db=omim&term=down
-        // response type: XML
-        // get corrected query from /eSearchResult/IdList/Id (multiple elements)
-        String url = composeURL(TERM_SEARCH_QUERY_SCRIPT, TERM_SEARCH_PARAM_NAME, query, rows, start);
-        List<String> result = new ArrayList<String>();
+        // response example at https://eutils.ncbi.nlm.nih.gov/entrez/eutils/esearch.fcgi?db=omim&term=down
         try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("IdList");
-            if (nodes.getLength() > 0) {
-                nodes = nodes.item(0).getChildNodes();
-                for (int i = 0; i < nodes.getLength(); ++i) {
-                    Node n = nodes.item(i);
-                    if (n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals("Id")) {
-                        result.add(n.getTextContent());
-                    }
-                }
-            }
-
+            return getClient().search(getDatabaseName(), query, rows, start);
         } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve matches for " + query + " " + ex.getClass().getName()
-                + " " + ex.getMessage(), ex);
+            getLogger().error("Error while trying to retrieve matches for {}: {}", query, ex.getMessage(), ex);
         }
-        return result;
+        return new ArrayList<String>();
     }
 
     @Override
     public List<Map<String, Object>> getSummaries(List<String> idList)
     {
         // response example at
-        // http://eutils.ncbi.nlm.nih.gov/entrez/eutils/esummary.fcgi?db=omim&id=190685,605298,604829,602917,601088,602523,602259
-        // response type: XML
-        // return it
-        String queryList = getSerializedList(idList);
-        String url = composeURL(TERM_SUMMARY_QUERY_SCRIPT, TERM_SUMMARY_PARAM_NAME, queryList);
+        // https://eutils.ncbi.nlm.nih.gov/entrez/eutils/esummary.fcgi?db=omim&id=190685,605298,604829,602917
         try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("Item");
-            // OMIM titles are all UPPERCASE, try to fix this
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                Node n = nodes.item(i);
-                if (n.getNodeType() == Node.ELEMENT_NODE) {
-                    if (n.getFirstChild() != null) {
-                        n.replaceChild(response.createTextNode(fixCase(n.getTextContent())), n.getFirstChild());
-                    }
-                }
-            }
-            List<Map<String, Object>> result = new LinkedList<Map<String, Object>>();
-            nodes = response.getElementsByTagName("DocSum");
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                Element n = (Element) nodes.item(i);
-                Map<String, Object> doc = new HashMap<String, Object>();
-                doc.put("id", n.getElementsByTagName("Id").item(0).getTextContent());
-                NodeList items = n.getElementsByTagName("Item");
-                for (int j = 0; j < items.getLength(); ++j) {
-                    Element item = (Element) items.item(j);
-                    if ("List".equals(item.getAttribute("Type"))) {
-                        NodeList subitems = item.getElementsByTagName("Item");
-                        if (subitems.getLength() > 0) {
-                            List<String> values = new ArrayList<String>(subitems.getLength());
-                            for (int k = 0; k < subitems.getLength(); ++k) {
-                                values.add(subitems.item(k).getTextContent());
-                            }
-                            doc.put(item.getAttribute("Name"), values);
-                        }
-                    } else {
-                        String value = item.getTextContent();
-                        if (StringUtils.isNotEmpty(value)) {
-                            doc.put(item.getAttribute("Name"), value);
-                        }
-                    }
-                }
-                result.add(doc);
+            List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+            for (SummaryDocument document : getClient().getSummaries(getDatabaseName(), idList)) {
+                result.add(document.toMap());
             }
             return result;
         } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve summaries for ids " + idList + " "
-                + ex.getClass().getName() + " " + ex.getMessage(), ex);
+            getLogger().error("Error while trying to retrieve summaries for ids {}: {}", idList, ex.getMessage(), ex);
         }
         return Collections.emptyList();
     }
 
     protected String getSummariesXML(List<String> idList)
     {
-        // response example at
-        // http://eutils.ncbi.nlm.nih.gov/entrez/eutils/esummary.fcgi?db=omim&id=190685,605298,604829,602917,601088,602523,602259
-        // response type: XML
-        // return it
-        String queryList = getSerializedList(idList);
-        String url = composeURL(TERM_SUMMARY_QUERY_SCRIPT, TERM_SUMMARY_PARAM_NAME, queryList);
         try {
-            Document response = readXML(url);
-            NodeList nodes = response.getElementsByTagName("Item");
-            // OMIM titles are all UPPERCASE, try to fix this
-            for (int i = 0; i < nodes.getLength(); ++i) {
-                Node n = nodes.item(i);
-                if (n.getNodeType() == Node.ELEMENT_NODE) {
-                    if (n.getFirstChild() != null) {
-                        n.replaceChild(response.createTextNode(fixCase(n.getTextContent())), n.getFirstChild());
-                    }
-                }
-            }
-            Source source = new DOMSource(response);
-            StringWriter stringWriter = new StringWriter();
-            Result result = new StreamResult(stringWriter);
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer();
-            transformer.transform(source, result);
-            return stringWriter.getBuffer().toString();
+            return EUtilsResponseParser.toXML(getClient().getSummaries(getDatabaseName(), idList));
         } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve summaries for ids " + idList + " "
-                + ex.getClass().getName() + " " + ex.getMessage(), ex);
+            getLogger().error("Error while trying to retrieve summaries for ids {}: {}", idList, ex.getMessage(), ex);
         }
         return "";
     }
 
-    private Map<String, String> getNameForId(Node source)
+    /**
+     * The client used for sending requests. Instances which are not created as components must override this method.
+     *
+     * @return the shared NCBI client
+     */
+    protected EUtilsClient getClient()
     {
-        Map<String, String> result = new HashMap<String, String>();
-        String id = null, name = null;
-        NodeList data = source.getChildNodes();
-        for (int i = 0; i < data.getLength(); ++i) {
-            Node n = data.item(i);
-            if (n.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if ("Id".equals(n.getNodeName())) {
-                id = n.getTextContent();
-            } else if ("Item".equals(n.getNodeName())) {
-                NamedNodeMap attrs = n.getAttributes();
-                if (attrs.getNamedItem("Name") != null && "Title".equals(attrs.getNamedItem("Name").getNodeValue())) {
-                    name = n.getTextContent();
-                }
-            }
-        }
-        if (id != null) {
-            if (name != null) {
-                result.put(id, fixCase(name));
-            } else {
-                result.put(id, id);
-            }
-        }
-        return result;
+        return this.client;
     }
 
-    private String composeURL(String scriptName, String paramName, String query)
+    /**
+     * The logger to use. Instances which are not created as components must override this method.
+     *
+     * @return a logger
+     */
+    protected Logger getLogger()
     {
-        try {
-            return SERVER_URL + scriptName + "?" + DB_PARAM_NAME + '=' + getDatabaseName() + "&" + paramName + "="
-                + URLEncoder.encode(query, "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            return SERVER_URL + scriptName + "?" + DB_PARAM_NAME + '=' + getDatabaseName() + "&" + paramName + "="
-                + query;
-        }
-    }
-
-    private String composeURL(String scriptName, String paramName, String query, final int rows, final int start)
-    {
-        try {
-            return SERVER_URL + scriptName + "?" + DB_PARAM_NAME + '=' + getDatabaseName() + "&" + paramName + "="
-                + URLEncoder.encode(query, "UTF-8") + "&RetMax=" + rows + "&RetStart=" + start;
-        } catch (UnsupportedEncodingException ex) {
-            return SERVER_URL + scriptName + "?" + DB_PARAM_NAME + '=' + getDatabaseName() + "&" + paramName + "="
-                + query + "&RetMax=" + rows + "&RetStart=" + start;
-        }
-    }
-
-    private org.w3c.dom.Document readXML(String url)
-    {
-        try {
-            BufferedInputStream in = new BufferedInputStream(new URL(url).openStream());
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            org.w3c.dom.Document result = dBuilder.parse(in);
-            result.getDocumentElement().normalize();
-            return result;
-        } catch (Exception ex) {
-            this.logger.error("Error while trying to retrieve data from URL " + url + " " + ex.getClass().getName()
-                + " " + ex.getMessage(), ex);
-            return null;
-        }
-    }
-
-    private static String fixCase(String text)
-    {
-        if (text == null || text.length() == 0) {
-            return "";
-        }
-        if (StringUtils.isAllUpperCase(text.replaceAll("[^a-zA-Z]", ""))) {
-            return StringUtils.capitalize(text.toLowerCase());
-        }
-        return text;
-    }
-
-    private static String getSerializedList(List<String> list)
-    {
-        String result = "";
-        if (!list.isEmpty()) {
-            StringBuilder listBuilder = new StringBuilder();
-            for (String item : list) {
-                listBuilder.append(',').append(item);
-            }
-            result = listBuilder.substring(1);
-        }
-        return result;
+        return this.logger;
     }
 }
@@ -0,0 +1,266 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of NCBI responses, stored as one file per entry in a directory, so that cached responses survive
+ * restarts. The cache is bounded both in total size, evicting the least recently used entries first, and in time,
+ * ignoring and deleting entries older than the configured time to live. Failures to read or write the cache are logged
+ * and treated as cache misses, since the responses can always be fetched again.
+ * <p>
+ * Only the in-memory index of the cached files is guarded by a lock; files are read, written and deleted outside of
+ * it, so that slow disk operations don't block concurrent requests. Each write goes through its own temporary file,
+ * moved into place atomically, so readers never see a partially written response.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class DiskResponseCache
+{
+    private static final String SUFFIX = ".xml";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Logger logger = LoggerFactory.getLogger(DiskResponseCache.class);
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final long timeToLive;
+
+    private final LongSupplier clock;
+
+    /** File name to file size, in access order. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * Opens a cache stored in a directory, using the system clock.
+     *
+     * @param directory where to store the cached responses, created if it doesn't exist
+     * @param maxSize the maximum total size of the cached responses, in bytes
+     * @param timeToLive how long a response stays valid, in milliseconds
+     */
+    public DiskResponseCache(File directory, long maxSize, long timeToLive)
+    {
+        this(directory, maxSize, timeToLive, System::currentTimeMillis);
+    }
+
+    /**
+     * Opens a cache stored in a directory, using a custom clock.
+     *
+     * @param directory where to store the cached responses, created if it doesn't exist
+     * @param maxSize the maximum total size of the cached responses, in bytes
+     * @param timeToLive how long a response stays valid, in milliseconds
+     * @param clock provides the current time, in milliseconds
+     */
+    DiskResponseCache(File directory, long maxSize, long timeToLive, LongSupplier clock)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * Retrieves a cached response.
+     *
+     * @param key the key identifying the response, for example the request URL
+     * @return the cached response, or {@code null} if it isn't cached or has expired
+     */
+    public byte[] get(String key)
+    {
+        String name = getFileName(key);
+        synchronized (this) {
+            // Looking up the entry also marks it as recently used
+            if (this.entries.get(name) == null) {
+                return null;
+            }
+        }
+        File file = new File(this.directory, name);
+        if (isExpired(file)) {
+            remove(name);
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException ex) {
+            // Evicted or expired meanwhile
+            remove(name);
+            return null;
+        } catch (IOException ex) {
+            this.logger.warn("Failed to read cached NCBI response [{}]: {}", file, ex.getMessage());
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response in the cache, evicting the least recently used responses if the cache becomes too large.
+     *
+     * @param key the key identifying the response, for example the request URL
+     * @param value the response to cache
+     */
+    public void put(String key, byte[] value)
+    {
+        if (value == null || value.length > this.maxSize) {
+            return;
+        }
+        String name = getFileName(key);
+        File file = new File(this.directory, name);
+        Path temporary = null;
+        try {
+            // Concurrent writes of the same response each use their own temporary file
+            temporary = Files.createTempFile(this.directory.toPath(), name, TEMPORARY_SUFFIX);
+            Files.write(temporary, value);
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to cache NCBI response [{}]: {}", file, ex.getMessage());
+            if (temporary != null) {
+                temporary.toFile().delete();
+            }
+            return;
+        }
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = this.entries.put(name, (long) value.length);
+            this.size += value.length - (previous == null ? 0 : previous);
+            evicted = evict();
+        }
+        delete(evicted);
+    }
+
+    /**
+     * @return the total size of the cached responses, in bytes
+     */
+    public synchronized long getSize()
+    {
+        return this.size;
+    }
+
+    private void load()
+    {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            this.logger.warn("Failed to create the NCBI response cache directory [{}]", this.directory);
+            return;
+        }
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Approximate the access order with the modification order
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX) || isExpired(file)) {
+                file.delete();
+            } else if (file.getName().endsWith(SUFFIX)) {
+                this.entries.put(file.getName(), file.length());
+                this.size += file.length();
+            }
+        }
+        delete(evict());
+    }
+
+    private boolean isExpired(File file)
+    {
+        return this.clock.getAsLong() - file.lastModified() > this.timeToLive;
+    }
+
+    /**
+     * Removes the least recently used entries from the index until the cache is small enough. Must be called while
+     * holding the lock.
+     *
+     * @return the names of the evicted files, which must be {@link #delete(List) deleted} after releasing the lock
+     */
+    private List<String> evict()
+    {
+        List<String> result = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = this.entries.entrySet().iterator();
+        while (this.size > this.maxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            result.add(entry.getKey());
+            this.size -= entry.getValue();
+            it.remove();
+        }
+        return result;
+    }
+
+    private void remove(String name)
+    {
+        synchronized (this) {
+            Long length = this.entries.remove(name);
+            if (length == null) {
+                // Already removed by another thread
+                return;
+            }
+            this.size -= length;
+        }
+        delete(Collections.singletonList(name));
+    }
+
+    private void delete(List<String> names)
+    {
+        for (String name : names) {
+            new File(this.directory, name).delete();
+        }
+    }
+
+    private static String getFileName(String key)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte b : digest) {
+                result.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            return result.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is always available
+            throw new IllegalStateException(ex);
+        }
+    }
+}
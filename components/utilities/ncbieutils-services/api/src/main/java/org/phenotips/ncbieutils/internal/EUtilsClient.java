@@ -0,0 +1,370 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Client for the NCBI Entrez Utilities server, shared by all the {@link AbstractSpecializedNCBIEUtilsAccessService
+ * database specific services}. Requests use connect and read timeouts, and are throttled with a
+ * {@link TokenBucketRateLimiter token bucket} to stay within the request rate allowed by NCBI. Responses are kept in a
+ * {@link DiskResponseCache persistent cache}, document summaries being cached individually, and concurrent requests
+ * for document summaries are {@link RequestCoalescer coalesced} into batched requests.
+ * <p>
+ * The client can be configured in {@code xwiki.properties}:
+ * </p>
+ * <ul>
+ * <li>{@code phenotips.ncbieutils.serverUrl}: the base URL of the server, defaults to {@value #DEFAULT_SERVER_URL}</li>
+ * <li>{@code phenotips.ncbieutils.apiKey}: an NCBI API key, which allows more requests per second</li>
+ * <li>{@code phenotips.ncbieutils.requestsPerSecond}: the maximum request rate, defaults to 3, or 10 with an API
+ * key</li>
+ * <li>{@code phenotips.ncbieutils.connectTimeout} and {@code phenotips.ncbieutils.readTimeout}: in milliseconds,
+ * default to 5000 and 15000</li>
+ * <li>{@code phenotips.ncbieutils.batchSize}: the maximum number of document summaries requested at once, defaults
+ * to 200</li>
+ * <li>{@code phenotips.ncbieutils.cache.maxSize}: the maximum size of the response cache, in megabytes, defaults to 50;
+ * 0 disables the cache</li>
+ * <li>{@code phenotips.ncbieutils.cache.timeToLive}: how long responses are cached, in hours, defaults to 24</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component(roles = { EUtilsClient.class })
+@Singleton
+public class EUtilsClient implements Initializable
+{
+    /** The public NCBI Entrez Utilities server. */
+    public static final String DEFAULT_SERVER_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/";
+
+    private static final String SEARCH_SCRIPT = "esearch.fcgi";
+
+    private static final String SUMMARY_SCRIPT = "esummary.fcgi";
+
+    private static final String SPELL_CHECK_SCRIPT = "espell.fcgi";
+
+    private static final String TERM_PARAMETER = "term";
+
+    private static final String CONFIGURATION_PREFIX = "phenotips.ncbieutils.";
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /** Responses larger than this are rejected, the expected responses are a few kilobytes long. */
+    private static final int MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Environment environment;
+
+    private final Map<String, RequestCoalescer<byte[]>> summaryRequests = new ConcurrentHashMap<>();
+
+    private String serverUrl;
+
+    private String apiKey;
+
+    private int connectTimeout;
+
+    private int readTimeout;
+
+    private int batchSize;
+
+    private TokenBucketRateLimiter rateLimiter;
+
+    private DiskResponseCache cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.serverUrl = StringUtils.appendIfMissing(getProperty("serverUrl", DEFAULT_SERVER_URL), "/");
+        this.apiKey = StringUtils.trimToNull(getProperty("apiKey", ""));
+        this.connectTimeout = getProperty("connectTimeout", 5000);
+        this.readTimeout = getProperty("readTimeout", 15000);
+        this.batchSize = Math.max(1, getProperty("batchSize", 200));
+        // NCBI allows 3 requests per second, or 10 with an API key
+        double rate = getProperty("requestsPerSecond", this.apiKey == null ? 3 : 10);
+        this.rateLimiter = new TokenBucketRateLimiter(rate, (int) Math.ceil(rate));
+
+        long cacheSize = getProperty("cache.maxSize", 50) * MEGABYTE;
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        if (cacheSize > 0 && permanentDirectory != null) {
+            this.cache = new DiskResponseCache(new File(permanentDirectory, "cache/ncbieutils"), cacheSize,
+                TimeUnit.HOURS.toMillis(getProperty("cache.timeToLive", 24)));
+        }
+    }
+
+    /**
+     * Searches a database, using the {@code esearch} service.
+     *
+     * @param database the name of the NCBI database to search, for example {@code pubmed}
+     * @param query the search query
+     * @param rows the maximum number of identifiers to return
+     * @param start the index of the first identifier to return
+     * @return the identifiers of the matched documents, in the order returned by the server
+     * @throws IOException if the request fails or the response is not valid
+     */
+    public List<String> search(String database, String query, int rows, int start) throws IOException
+    {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put(TERM_PARAMETER, query);
+        parameters.put("retmax", String.valueOf(rows));
+        parameters.put("retstart", String.valueOf(start));
+        byte[] response = getCached(composeURL(SEARCH_SCRIPT, database, parameters));
+        try {
+            return EUtilsResponseParser.parseIds(new ByteArrayInputStream(response));
+        } catch (XMLStreamException ex) {
+            throw new IOException("Invalid search response: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Gets spelling suggestions for a query, using the {@code espell} service.
+     *
+     * @param database the name of the NCBI database to use, for example {@code pubmed}
+     * @param query the query to correct
+     * @return the corrected query, or {@code null} if the server didn't suggest a correction
+     * @throws IOException if the request fails or the response is not valid
+     */
+    public String getCorrectedQuery(String database, String query) throws IOException
+    {
+        byte[] response =
+            getCached(composeURL(SPELL_CHECK_SCRIPT, database, Collections.singletonMap(TERM_PARAMETER, query)));
+        try {
+            return EUtilsResponseParser.parseCorrectedQuery(new ByteArrayInputStream(response));
+        } catch (XMLStreamException ex) {
+            throw new IOException("Invalid spelling response: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Gets the summaries of some documents, using the {@code esummary} service. Cached summaries are reused, and the
+     * missing ones are requested in batches, together with those requested concurrently by other threads.
+     *
+     * @param database the name of the NCBI database to use, for example {@code pubmed}
+     * @param ids the identifiers of the documents
+     * @return the summaries of the documents found, in the requested order
+     * @throws IOException if a request fails or a response is not valid
+     */
+    public List<SummaryDocument> getSummaries(String database, List<String> ids) throws IOException
+    {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (StringUtils.isNotBlank(id)) {
+                requested.add(id.trim());
+            }
+        }
+        Map<String, byte[]> responses = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : requested) {
+            byte[] cached = this.cache == null ? null : this.cache.get(getSummaryKey(database, id));
+            if (cached != null) {
+                responses.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            responses.putAll(fetchSummaries(database, missing));
+        }
+
+        List<SummaryDocument> result = new ArrayList<>(requested.size());
+        try {
+            for (String id : requested) {
+                byte[] response = responses.get(id);
+                if (response != null) {
+                    result.addAll(EUtilsResponseParser.parseSummaries(response));
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Invalid summary: " + ex.getMessage(), ex);
+        }
+        return result;
+    }
+
+    private Map<String, byte[]> fetchSummaries(final String database, List<String> ids) throws IOException
+    {
+        RequestCoalescer<byte[]> requests = this.summaryRequests.computeIfAbsent(database,
+            db -> new RequestCoalescer<>(this.batchSize, batch -> fetchSummaryBatch(db, batch)));
+        try {
+            // Leave time for the batches queued before ours
+            return requests.get(ids, this.connectTimeout + 2L * this.readTimeout);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof UncheckedIOException ? ex.getCause().getCause() : ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (TimeoutException ex) {
+            throw new IOException("Timed out waiting for the document summaries");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /** Requests a batch of summaries, and caches each of them separately. */
+    private Map<String, byte[]> fetchSummaryBatch(String database, List<String> ids)
+    {
+        try {
+            byte[] response = download(composeURL(SUMMARY_SCRIPT, database,
+                Collections.singletonMap("id", StringUtils.join(ids, ','))));
+            Map<String, byte[]> result = new LinkedHashMap<>();
+            for (SummaryDocument document : EUtilsResponseParser.parseSummaries(response)) {
+                byte[] serialized = EUtilsResponseParser.toXML(Collections.singletonList(document))
+                    .getBytes(StandardCharsets.UTF_8);
+                result.put(document.getId(), serialized);
+                if (this.cache != null) {
+                    this.cache.put(getSummaryKey(database, document.getId()), serialized);
+                }
+            }
+            return result;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (XMLStreamException ex) {
+            throw new UncheckedIOException(new IOException("Invalid summary response: " + ex.getMessage(), ex));
+        }
+    }
+
+    private byte[] getCached(String url) throws IOException
+    {
+        byte[] result = this.cache == null ? null : this.cache.get(url);
+        if (result == null) {
+            result = download(url);
+            if (this.cache != null) {
+                this.cache.put(url, result);
+            }
+        }
+        return result;
+    }
+
+    private byte[] download(String url) throws IOException
+    {
+        try {
+            if (!this.rateLimiter.acquire(this.readTimeout)) {
+                throw new IOException("Too many concurrent requests to the NCBI server");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        String fullUrl = this.apiKey == null ? url : url + "&api_key=" + encode(this.apiKey);
+        HttpURLConnection connection = (HttpURLConnection) new URL(fullUrl).openConnection();
+        connection.setConnectTimeout(this.connectTimeout);
+        connection.setReadTimeout(this.readTimeout);
+        try {
+            int status = connection.getResponseCode();
+            if (status == HTTP_TOO_MANY_REQUESTS) {
+                this.logger.warn("The NCBI server rejected a request because of the request rate, consider lowering"
+                    + " [{}requestsPerSecond]", CONFIGURATION_PREFIX);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("The NCBI server responded with status " + status + " for " + url);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return readFully(in);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String composeURL(String script, String database, Map<String, String> parameters)
+    {
+        StringBuilder result = new StringBuilder(this.serverUrl).append(script).append("?db=").append(encode(database));
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            result.append('&').append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+        }
+        return result.append("&tool=phenotips").toString();
+    }
+
+    private String getSummaryKey(String database, String id)
+    {
+        return this.serverUrl + SUMMARY_SCRIPT + '/' + database + '/' + id;
+    }
+
+    private <T> T getProperty(String name, T defaultValue)
+    {
+        return this.configuration.getProperty(CONFIGURATION_PREFIX + name, defaultValue);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (result.size() + read > MAX_RESPONSE_SIZE) {
+                throw new IOException("The NCBI response is too large");
+            }
+            result.write(buffer, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    private static String encode(String value)
+    {
+        try {
+            return URLEncoder.encode(StringUtils.defaultString(value), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            return value;
+        }
+    }
+}
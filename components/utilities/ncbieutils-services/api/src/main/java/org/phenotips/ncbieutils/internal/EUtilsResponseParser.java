@@ -0,0 +1,261 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Streaming parser for the XML responses of the NCBI Entrez Utilities, reading only the needed elements instead of
+ * building a DOM of the whole response.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public final class EUtilsResponseParser
+{
+    private static final String ID = "Id";
+
+    private static final String ITEM = "Item";
+
+    private static final String DOC_SUM = "DocSum";
+
+    private static final String NAME = "Name";
+
+    private static final String TYPE = "Type";
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static {
+        // The responses reference the NCBI DTDs, which must not be fetched
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private EUtilsResponseParser()
+    {
+        // Utility class, only static methods
+    }
+
+    /**
+     * Reads the identifiers listed in an {@code esearch} response, from {@code /eSearchResult/IdList/Id}.
+     *
+     * @param in the response
+     * @return the matched identifiers, in the order returned by the server
+     * @throws XMLStreamException if the response is not valid XML
+     */
+    public static List<String> parseIds(InputStream in) throws XMLStreamException
+    {
+        List<String> result = new ArrayList<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            boolean inList = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if ("IdList".equals(reader.getLocalName())) {
+                        inList = true;
+                    } else if (inList && ID.equals(reader.getLocalName())) {
+                        result.add(StringUtils.trim(reader.getElementText()));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "IdList".equals(reader.getLocalName())) {
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Reads the corrected query from an {@code espell} response, from {@code /eSpellResult/CorrectedQuery}.
+     *
+     * @param in the response
+     * @return the corrected query, or {@code null} if the response doesn't include a non-empty correction
+     * @throws XMLStreamException if the response is not valid XML
+     */
+    public static String parseCorrectedQuery(InputStream in) throws XMLStreamException
+    {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && "CorrectedQuery".equals(reader.getLocalName())) {
+                    return StringUtils.trimToNull(reader.getElementText());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the document summaries from an {@code esummary} response. Upper case values, such as OMIM titles, are
+     * converted to sentence case.
+     *
+     * @param in the response
+     * @return the document summaries, in the order returned by the server
+     * @throws XMLStreamException if the response is not valid XML
+     */
+    public static List<SummaryDocument> parseSummaries(InputStream in) throws XMLStreamException
+    {
+        List<SummaryDocument> result = new ArrayList<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && DOC_SUM.equals(reader.getLocalName())) {
+                    SummaryDocument document = readDocument(reader);
+                    if (document != null) {
+                        result.add(document);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Parses document summaries previously serialized with {@link #toXML(List)}.
+     *
+     * @param xml the serialized summaries
+     * @return the document summaries
+     * @throws XMLStreamException if the input is not valid XML
+     */
+    public static List<SummaryDocument> parseSummaries(byte[] xml) throws XMLStreamException
+    {
+        return parseSummaries(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Serializes document summaries in the {@code esummary} response format.
+     *
+     * @param documents the document summaries to serialize
+     * @return the XML serialization of the summaries, as an {@code eSummaryResult} document
+     * @throws XMLStreamException if writing the XML fails
+     */
+    public static String toXML(List<SummaryDocument> documents) throws XMLStreamException
+    {
+        StringWriter result = new StringWriter();
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(result);
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("eSummaryResult");
+        for (SummaryDocument document : documents) {
+            writer.writeStartElement(DOC_SUM);
+            writer.writeStartElement(ID);
+            writer.writeCharacters(document.getId());
+            writer.writeEndElement();
+            writeItems(document.getItems(), writer);
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+        return result.toString();
+    }
+
+    private static void writeItems(List<SummaryDocument.Item> items, XMLStreamWriter writer)
+        throws XMLStreamException
+    {
+        for (SummaryDocument.Item item : items) {
+            writer.writeStartElement(ITEM);
+            writer.writeAttribute(NAME, item.getName());
+            writer.writeAttribute(TYPE, item.getType());
+            if (item.getChildren().isEmpty()) {
+                writer.writeCharacters(item.getText());
+            } else {
+                writeItems(item.getChildren(), writer);
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    /** Reads a {@code DocSum} element, the reader must be positioned on its start tag. */
+    private static SummaryDocument readDocument(XMLStreamReader reader) throws XMLStreamException
+    {
+        String id = null;
+        // The items being read, with their children; the bottom of the stack collects the top level items
+        Deque<List<SummaryDocument.Item>> children = new ArrayDeque<>();
+        Deque<String[]> open = new ArrayDeque<>();
+        children.push(new ArrayList<>());
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (ID.equals(reader.getLocalName()) && open.isEmpty()) {
+                    id = StringUtils.trim(reader.getElementText());
+                } else if (ITEM.equals(reader.getLocalName())) {
+                    open.push(new String[] { reader.getAttributeValue(null, NAME),
+                        reader.getAttributeValue(null, TYPE) });
+                    children.push(new ArrayList<>());
+                    text.setLength(0);
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS && !open.isEmpty()) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (ITEM.equals(reader.getLocalName())) {
+                    String[] item = open.pop();
+                    List<SummaryDocument.Item> itemChildren = children.pop();
+                    String value = itemChildren.isEmpty() ? fixCase(text.toString()) : null;
+                    children.peek().add(new SummaryDocument.Item(item[0], item[1], value, itemChildren));
+                    text.setLength(0);
+                } else if (DOC_SUM.equals(reader.getLocalName())) {
+                    break;
+                }
+            }
+        }
+        return id == null ? null : new SummaryDocument(id, children.pop());
+    }
+
+    /**
+     * Converts texts written entirely in upper case, such as OMIM titles, to sentence case.
+     *
+     * @param text the text to fix
+     * @return the text in sentence case if it was all upper case, the unchanged text otherwise
+     */
+    static String fixCase(String text)
+    {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        if (StringUtils.isAllUpperCase(text.replaceAll("[^a-zA-Z]", ""))) {
+            return StringUtils.capitalize(text.toLowerCase());
+        }
+        return text;
+    }
+}
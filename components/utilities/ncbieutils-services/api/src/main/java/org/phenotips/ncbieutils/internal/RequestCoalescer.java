@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent requests for individual keys into batched calls. Keys requested by any thread are queued, and
+ * batches of up to a maximum number of queued keys are sent, in the order the keys were requested, by one thread at a
+ * time: a thread finding no batch in progress sends batches until its own keys are fetched, and then lets one of the
+ * waiting threads take over, so that no thread keeps sending the batches of other threads. Meanwhile, the other
+ * threads just wait for the values of their keys. A key requested while it is already queued or being fetched is not
+ * requested again.
+ *
+ * @param <V> the type of the fetched values
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class RequestCoalescer<V>
+{
+    private final int maxBatchSize;
+
+    private final Function<List<String>, Map<String, V>> fetcher;
+
+    /** Keys waiting to be fetched, in the order they were requested. */
+    private final Map<String, CompletableFuture<V>> queued = new LinkedHashMap<>();
+
+    /** Keys being fetched. */
+    private final Map<String, CompletableFuture<V>> fetching = new HashMap<>();
+
+    /** Whether a thread is sending batches; waiting threads are notified when a batch ends and when it stops. */
+    private boolean sending;
+
+    /**
+     * Simple constructor.
+     *
+     * @param maxBatchSize the maximum number of keys to send in one call
+     * @param fetcher fetches the values for a batch of keys; keys without a value may be missing from the result, and
+     *            exceptions are propagated to all the threads waiting for the batch
+     */
+    public RequestCoalescer(int maxBatchSize, Function<List<String>, Map<String, V>> fetcher)
+    {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Fetches the values for some keys, batched together with the keys requested concurrently by other threads.
+     *
+     * @param keys the keys to fetch
+     * @param timeout how long to wait for the values, in milliseconds
+     * @return the fetched values; keys without a value are missing from the result
+     * @throws ExecutionException if fetching a batch containing one of the keys failed
+     * @throws TimeoutException if the values were not fetched before the timeout
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public Map<String, V> get(Collection<String> keys, long timeout)
+        throws ExecutionException, TimeoutException, InterruptedException
+    {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Map<String, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String key : keys) {
+                CompletableFuture<V> future = this.fetching.get(key);
+                if (future == null) {
+                    future = this.queued.computeIfAbsent(key, k -> new CompletableFuture<>());
+                }
+                futures.put(key, future);
+            }
+        }
+
+        while (!isDone(futures.values())) {
+            synchronized (this) {
+                if (isDone(futures.values())) {
+                    break;
+                }
+                if (this.sending || this.queued.isEmpty()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    continue;
+                }
+                this.sending = true;
+            }
+            sendQueued(futures.values());
+        }
+
+        Map<String, V> result = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<V>> future : futures.entrySet()) {
+            V value = future.getValue().get();
+            if (value != null) {
+                result.put(future.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends batches until the values of the current thread are fetched, or no more keys are queued.
+     *
+     * @param own the values requested by the current thread
+     */
+    private void sendQueued(Collection<CompletableFuture<V>> own)
+    {
+        try {
+            while (!isDone(own)) {
+                Map<String, CompletableFuture<V>> batch = new LinkedHashMap<>();
+                synchronized (this) {
+                    Iterator<Map.Entry<String, CompletableFuture<V>>> it = this.queued.entrySet().iterator();
+                    while (it.hasNext() && batch.size() < this.maxBatchSize) {
+                        Map.Entry<String, CompletableFuture<V>> entry = it.next();
+                        batch.put(entry.getKey(), entry.getValue());
+                        it.remove();
+                    }
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                    this.fetching.putAll(batch);
+                }
+                try {
+                    Map<String, V> values = this.fetcher.apply(new ArrayList<>(batch.keySet()));
+                    for (Map.Entry<String, CompletableFuture<V>> entry : batch.entrySet()) {
+                        entry.getValue().complete(values == null ? null : values.get(entry.getKey()));
+                    }
+                } catch (RuntimeException | Error ex) {
+                    for (CompletableFuture<V> future : batch.values()) {
+                        future.completeExceptionally(ex);
+                    }
+                } finally {
+                    synchronized (this) {
+                        this.fetching.keySet().removeAll(batch.keySet());
+                        notifyAll();
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                // Let a waiting thread send the remaining queued keys
+                this.sending = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean isDone(Collection<CompletableFuture<V>> futures)
+    {
+        for (CompletableFuture<V> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
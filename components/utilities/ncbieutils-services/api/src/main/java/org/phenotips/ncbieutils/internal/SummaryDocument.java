@@ -0,0 +1,192 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A document summary returned by the NCBI {@code esummary} service: the identifier of the document, and a list of
+ * named and typed items, where items of type {@code List} contain other items.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class SummaryDocument
+{
+    private static final String LIST_TYPE = "List";
+
+    private final String id;
+
+    private final List<Item> items;
+
+    /**
+     * Simple constructor passing all the data.
+     *
+     * @param id the identifier of the document
+     * @param items the items of the document summary
+     */
+    public SummaryDocument(String id, List<Item> items)
+    {
+        this.id = id;
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    /**
+     * @return the identifier of the document
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the top level items of the document summary
+     */
+    public List<Item> getItems()
+    {
+        return this.items;
+    }
+
+    /**
+     * @return the value of the {@code Title} item, or {@code null} if there isn't one
+     */
+    public String getTitle()
+    {
+        for (Item item : this.items) {
+            if ("Title".equals(item.getName())) {
+                return item.getText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts this summary into the map format returned to scripts: the document identifier is stored under the
+     * {@code id} key, the values of {@code List} items as lists of strings, and the other non-empty items as strings.
+     * Items nested inside lists are also added under their own name.
+     *
+     * @return a map with the document identifier and items
+     */
+    public Map<String, Object> toMap()
+    {
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", this.id);
+        addItems(this.items, result);
+        return result;
+    }
+
+    private static void addItems(List<Item> items, Map<String, Object> result)
+    {
+        for (Item item : items) {
+            if (item.isList()) {
+                if (!item.getChildren().isEmpty()) {
+                    List<String> values = new ArrayList<>(item.getChildren().size());
+                    for (Item child : item.getChildren()) {
+                        values.add(child.getText());
+                    }
+                    result.put(item.getName(), values);
+                }
+                addItems(item.getChildren(), result);
+            } else if (StringUtils.isNotEmpty(item.getText())) {
+                result.put(item.getName(), item.getText());
+            }
+        }
+    }
+
+    /** A named and typed item of a document summary. */
+    public static class Item
+    {
+        private final String name;
+
+        private final String type;
+
+        private final String value;
+
+        private final List<Item> children;
+
+        /**
+         * Simple constructor passing all the data.
+         *
+         * @param name the name of the item
+         * @param type the type of the item, for example {@code String}, {@code Integer} or {@code List}
+         * @param value the text value of the item, for items which don't contain other items
+         * @param children the items contained in this item, for {@code List} and {@code Structure} items
+         */
+        public Item(String name, String type, String value, List<Item> children)
+        {
+            this.name = name;
+            this.type = type;
+            this.value = StringUtils.defaultString(value);
+            this.children = Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        /**
+         * @return the name of the item
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return the type of the item
+         */
+        public String getType()
+        {
+            return this.type;
+        }
+
+        /**
+         * @return the text value of the item; for items containing other items, the concatenated values of its
+         *         children
+         */
+        public String getText()
+        {
+            if (this.children.isEmpty()) {
+                return this.value;
+            }
+            StringBuilder result = new StringBuilder();
+            for (Item child : this.children) {
+                result.append(child.getText());
+            }
+            return result.toString();
+        }
+
+        /**
+         * @return the items contained in this item, empty for simple items
+         */
+        public List<Item> getChildren()
+        {
+            return this.children;
+        }
+
+        /**
+         * @return {@code true} if this item is of type {@code List}
+         */
+        public boolean isList()
+        {
+            return LIST_TYPE.equals(this.type);
+        }
+    }
+}
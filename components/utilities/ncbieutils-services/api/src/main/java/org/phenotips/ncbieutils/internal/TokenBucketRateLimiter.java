@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting the rate of requests sent to the NCBI servers. Tokens are added continuously at the configured
+ * rate, up to a maximum burst size, and each request consumes one token, waiting for one to become available if the
+ * bucket is empty.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+public class TokenBucketRateLimiter
+{
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double capacity;
+
+    private final double nanosPerToken;
+
+    private final LongSupplier clock;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * Creates a limiter using the system clock.
+     *
+     * @param permitsPerSecond how many requests are allowed each second, on average
+     * @param burst how many requests can be sent at once after a period of inactivity, at least one
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst)
+    {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * Creates a limiter using a custom clock.
+     *
+     * @param permitsPerSecond how many requests are allowed each second, on average
+     * @param burst how many requests can be sent at once after a period of inactivity, at least one
+     * @param clock provides the current time, in nanoseconds
+     */
+    TokenBucketRateLimiter(double permitsPerSecond, int burst, LongSupplier clock)
+    {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive");
+        }
+        this.capacity = Math.max(1, burst);
+        this.nanosPerToken = NANOS_PER_SECOND / permitsPerSecond;
+        this.clock = clock;
+        this.tokens = this.capacity;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token, waiting for one to become available if needed.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return {@code true} if a token was acquired, {@code false} if no token could be acquired before the timeout
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean acquire(long timeout) throws InterruptedException
+    {
+        long wait = reserve(TimeUnit.MILLISECONDS.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Reserves a token, if one will be available within the timeout.
+     *
+     * @param timeout the maximum time to wait, in nanoseconds
+     * @return how long the caller must wait before using the reserved token, in nanoseconds, or {@code -1} if no token
+     *         can be reserved within the timeout
+     */
+    synchronized long reserve(long timeout)
+    {
+        long now = this.clock.getAsLong();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) / this.nanosPerToken);
+        this.lastRefill = now;
+        if (this.tokens >= 1) {
+            this.tokens -= 1;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - this.tokens) * this.nanosPerToken);
+        if (wait > timeout) {
+            return -1;
+        }
+        // The token is taken in advance, later callers will wait for the following ones
+        this.tokens -= 1;
+        return wait;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link DiskResponseCache}.
+ *
+ * @version $Id$
+ */
+public class DiskResponseCacheTest
+{
+    private static final long HOUR = 3600 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = new File(this.folder.getRoot(), "cache");
+    }
+
+    @Test
+    public void storedResponsesAreReturned()
+    {
+        DiskResponseCache cache = new DiskResponseCache(this.directory, 1000, HOUR, this.now::get);
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", bytes("response a"));
+        Assert.assertEquals("response a", string(cache.get("a")));
+        cache.put("a", bytes("new a"));
+        Assert.assertEquals("new a", string(cache.get("a")));
+        Assert.assertEquals(5, cache.getSize());
+    }
+
+    @Test
+    public void responsesSurviveRestarts()
+    {
+        new DiskResponseCache(this.directory, 1000, HOUR, this.now::get).put("a", bytes("response a"));
+        DiskResponseCache cache = new DiskResponseCache(this.directory, 1000, HOUR, this.now::get);
+        Assert.assertEquals("response a", string(cache.get("a")));
+        Assert.assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted()
+    {
+        DiskResponseCache cache = new DiskResponseCache(this.directory, 10, HOUR, this.now::get);
+        cache.put("a", bytes("aaaa"));
+        cache.put("b", bytes("bbbb"));
+        cache.get("a");
+        cache.put("c", bytes("cccc"));
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("aaaa", string(cache.get("a")));
+        Assert.assertEquals("cccc", string(cache.get("c")));
+        Assert.assertEquals(8, cache.getSize());
+        Assert.assertEquals(2, this.directory.list().length);
+
+        // Too large to be cached at all
+        cache.put("d", bytes("ddddddddddd"));
+        Assert.assertNull(cache.get("d"));
+    }
+
+    @Test
+    public void expiredResponsesAreIgnored()
+    {
+        DiskResponseCache cache = new DiskResponseCache(this.directory, 1000, HOUR, this.now::get);
+        cache.put("a", bytes("response a"));
+        this.now.addAndGet(2 * HOUR);
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, this.directory.list().length);
+    }
+
+    @Test
+    public void expiredAndTemporaryFilesAreDeletedOnStartup() throws IOException
+    {
+        new DiskResponseCache(this.directory, 1000, HOUR, this.now::get).put("a", bytes("response a"));
+        Files.write(new File(this.directory, "partial.xml.tmp").toPath(), bytes("partial"));
+        this.now.addAndGet(2 * HOUR);
+
+        DiskResponseCache cache = new DiskResponseCache(this.directory, 1000, HOUR, this.now::get);
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, this.directory.list().length);
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value)
+    {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link EUtilsClient}, against a local HTTP server standing in for the NCBI server.
+ *
+ * @version $Id$
+ */
+public class EUtilsClientTest
+{
+    private static final String SUMMARY_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<!DOCTYPE eSummaryResult PUBLIC \"-//NLM//DTD esummary v1 20041029//EN\""
+        + " \"https://eutils.ncbi.nlm.nih.gov/eutils/dtd/20041029/esummary-v1.dtd\">\n<eSummaryResult>\n";
+
+    @Rule
+    public MockitoComponentMockingRule<EUtilsClient> mocker = new MockitoComponentMockingRule<>(EUtilsClient.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Blocks summary responses until released, to let concurrent requests pile up. */
+    private volatile CountDownLatch summaryGate = new CountDownLatch(0);
+
+    private volatile int status = 200;
+
+    private EUtilsClient client;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/eutils/", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty(anyString(), any(Object.class))).then(invocation -> invocation.getArguments()[1]);
+        when(configuration.getProperty("phenotips.ncbieutils.serverUrl", EUtilsClient.DEFAULT_SERVER_URL))
+            .thenReturn("http://127.0.0.1:" + this.server.getAddress().getPort() + "/eutils");
+        when(configuration.getProperty("phenotips.ncbieutils.requestsPerSecond", 3)).thenReturn(1000);
+        when(configuration.getProperty("phenotips.ncbieutils.readTimeout", 15000)).thenReturn(2000);
+        when(this.mocker.getInstance(Environment.class).getPermanentDirectory()).thenReturn(this.folder.getRoot());
+
+        this.client = this.mocker.getComponentUnderTest();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.summaryGate.countDown();
+        this.server.stop(0);
+    }
+
+    @Test
+    public void searchReturnsIdentifiers() throws IOException
+    {
+        Assert.assertEquals(Arrays.asList("190685", "605298"), this.client.search("omim", "down syndrome", 10, 5));
+        Assert.assertEquals(1, this.requests.size());
+        Assert.assertTrue(this.requests.get(0).startsWith("/eutils/esearch.fcgi?db=omim&term=down+syndrome"
+            + "&retmax=10&retstart=5"));
+    }
+
+    @Test
+    public void correctedQueryIsReturned() throws IOException
+    {
+        Assert.assertEquals("attention syndrome", this.client.getCorrectedQuery("omim", "atention sindrom"));
+        Assert.assertNull(this.client.getCorrectedQuery("omim", "correct"));
+    }
+
+    @Test
+    public void summariesAreParsedAndFixed() throws IOException
+    {
+        List<SummaryDocument> summaries = this.client.getSummaries("omim", Arrays.asList("2", "1", "2", "404"));
+
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertEquals("2", summaries.get(0).getId());
+        Map<String, Object> first = summaries.get(1).toMap();
+        Assert.assertEquals("1", first.get("id"));
+        Assert.assertEquals("Title number 1", first.get("Title"));
+        Assert.assertEquals(Arrays.asList("Doe J", "Roe R"), first.get("AuthorList"));
+        Assert.assertFalse(first.containsKey("Empty"));
+        Assert.assertEquals(1, this.requests.size());
+        Assert.assertTrue(this.requests.get(0).contains("id=2%2C1%2C404"));
+    }
+
+    @Test
+    public void responsesAreCached() throws IOException
+    {
+        this.client.search("omim", "down", 10, 0);
+        this.client.search("omim", "down", 10, 0);
+        this.client.getSummaries("omim", Arrays.asList("1", "2"));
+        // Summaries are cached individually, only the missing one is requested
+        List<SummaryDocument> summaries = this.client.getSummaries("omim", Arrays.asList("2", "3"));
+
+        Assert.assertEquals(Arrays.asList("2", "3"), Arrays.asList(summaries.get(0).getId(), summaries.get(1).getId()));
+        Assert.assertEquals(3, this.requests.size());
+        Assert.assertTrue(this.requests.get(2).contains("id=3&"));
+    }
+
+    @Test
+    public void concurrentSummaryRequestsAreBatched() throws Exception
+    {
+        this.summaryGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<SummaryDocument>>> results = new ArrayList<>();
+            results.add(executor.submit(summaries("1")));
+            // Wait for the first batch to be sent, the following requests are queued meanwhile
+            waitForRequests(1);
+            results.add(executor.submit(summaries("2", "3")));
+            results.add(executor.submit(summaries("3", "4")));
+            results.add(executor.submit(summaries("1", "5")));
+            Thread.sleep(200);
+            this.summaryGate.countDown();
+
+            Assert.assertEquals(1, results.get(0).get(5, TimeUnit.SECONDS).size());
+            Assert.assertEquals(2, results.get(1).get(5, TimeUnit.SECONDS).size());
+            Assert.assertEquals(2, results.get(2).get(5, TimeUnit.SECONDS).size());
+            Assert.assertEquals(2, results.get(3).get(5, TimeUnit.SECONDS).size());
+            // All the queued identifiers are sent together, each only once
+            Assert.assertEquals(2, this.requests.size());
+            String[] batch = this.requests.get(1).replaceAll(".*[?&]id=([^&]*).*", "$1").split("%2C");
+            Arrays.sort(batch);
+            Assert.assertArrayEquals(new String[] { "2", "3", "4", "5" }, batch);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void serverErrorsAreReported() throws IOException
+    {
+        this.status = 500;
+        this.client.search("omim", "down", 10, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void failedSummaryRequestsAreReported() throws IOException
+    {
+        this.status = 429;
+        this.client.getSummaries("omim", Collections.singletonList("1"));
+    }
+
+    @Test
+    public void errorsAreNotCached() throws IOException
+    {
+        this.status = 500;
+        try {
+            this.client.search("omim", "down", 10, 0);
+            Assert.fail();
+        } catch (IOException ex) {
+            // Expected
+        }
+        this.status = 200;
+        Assert.assertEquals(2, this.client.search("omim", "down", 10, 0).size());
+    }
+
+    private Callable<List<SummaryDocument>> summaries(String... ids)
+    {
+        return () -> this.client.getSummaries("pubmed", Arrays.asList(ids));
+    }
+
+    private void waitForRequests(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && this.requests.size() < count; ++i) {
+            Thread.sleep(20);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        String uri = exchange.getRequestURI().getRawPath() + '?' + exchange.getRequestURI().getRawQuery();
+        this.requests.add(uri);
+        String response;
+        if (uri.contains("esearch.fcgi")) {
+            response = "<eSearchResult><Count>2</Count><IdList><Id>190685</Id><Id>605298</Id></IdList>"
+                + "<TranslationStack><TermSet><Term>down</Term></TermSet></TranslationStack></eSearchResult>";
+        } else if (uri.contains("espell.fcgi")) {
+            response = "<eSpellResult><Query>x</Query><CorrectedQuery>"
+                + (uri.contains("atention") ? "attention syndrome" : "") + "</CorrectedQuery></eSpellResult>";
+        } else {
+            try {
+                this.summaryGate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            String ids = exchange.getRequestURI().getQuery().replaceAll(".*[?&]id=([^&]*).*", "$1");
+            StringBuilder xml = new StringBuilder(SUMMARY_START);
+            for (String id : ids.split(",")) {
+                if (!"404".equals(id)) {
+                    xml.append("<DocSum><Id>").append(id).append("</Id><Item Name=\"Title\" Type=\"String\">TITLE ")
+                        .append("NUMBER ").append(id).append("</Item><Item Name=\"AuthorList\" Type=\"List\">")
+                        .append("<Item Name=\"Author\" Type=\"String\">Doe J</Item>")
+                        .append("<Item Name=\"Author\" Type=\"String\">Roe R</Item></Item>")
+                        .append("<Item Name=\"Empty\" Type=\"String\"></Item></DocSum>\n");
+                }
+            }
+            response = xml.append("</eSummaryResult>").toString();
+        }
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(this.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RequestCoalescer}.
+ *
+ * @version $Id$
+ */
+public class RequestCoalescerTest
+{
+    private static final long TIMEOUT = 5000;
+
+    /** The batches sent, each prefixed with the name of the thread which sent it. */
+    private final List<String> batches = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void valuesAreFetchedInBatches() throws Exception
+    {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>(2, this::fetch);
+
+        Map<String, String> result = coalescer.get(Arrays.asList("a", "b", "c", "missing"), TIMEOUT);
+
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("value of c", result.get("c"));
+        Assert.assertEquals(2, this.batches.size());
+        Assert.assertTrue(coalescer.get(Collections.<String>emptyList(), TIMEOUT).isEmpty());
+    }
+
+    @Test
+    public void threadsStopSendingOnceTheirOwnValuesAreFetched() throws Exception
+    {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>(1, keys -> {
+            Map<String, String> result = fetch(keys);
+            if (keys.contains("slow")) {
+                awaitGate();
+            }
+            return result;
+        });
+
+        Future<String> first = this.executor.submit(() -> {
+            Thread.currentThread().setName("first");
+            return coalescer.get(Collections.singletonList("slow"), TIMEOUT).get("slow");
+        });
+        waitForBatches(1);
+        Future<Map<String, String>> second = this.executor.submit(() -> {
+            Thread.currentThread().setName("second");
+            return coalescer.get(Arrays.asList("slow", "b", "c"), TIMEOUT);
+        });
+        // Let the second thread queue its keys before the first batch ends
+        Thread.sleep(100);
+        this.gate.countDown();
+
+        Assert.assertEquals("value of slow", first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(3, second.get(TIMEOUT, TimeUnit.MILLISECONDS).size());
+        // The key already being fetched was not requested again, and the second thread sent its own batches
+        Assert.assertEquals(Arrays.asList("first:[slow]", "second:[b]", "second:[c]"), this.batches);
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void fetchFailuresArePropagated() throws Exception
+    {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>(2, keys -> {
+            throw new IllegalStateException("failed");
+        });
+        coalescer.get(Collections.singletonList("a"), TIMEOUT);
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitingForOtherThreadsTimesOut() throws Exception
+    {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<>(2, keys -> {
+            Map<String, String> result = fetch(keys);
+            awaitGate();
+            return result;
+        });
+        this.executor.submit(() -> coalescer.get(Collections.singletonList("a"), TIMEOUT));
+        waitForBatches(1);
+        try {
+            coalescer.get(Collections.singletonList("a"), 50);
+        } finally {
+            this.gate.countDown();
+        }
+    }
+
+    private Map<String, String> fetch(List<String> keys)
+    {
+        this.batches.add(Thread.currentThread().getName() + ':' + keys);
+        Map<String, String> result = new HashMap<>();
+        for (String key : keys) {
+            if (!"missing".equals(key)) {
+                result.put(key, "value of " + key);
+            }
+        }
+        return result;
+    }
+
+    private void awaitGate()
+    {
+        try {
+            this.gate.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForBatches(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.batches.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.ncbieutils.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TokenBucketRateLimiter}.
+ *
+ * @version $Id$
+ */
+public class TokenBucketRateLimiterTest
+{
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1000 * SECOND);
+
+    @Test
+    public void burstIsAllowedImmediately()
+    {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, 3, this.now::get);
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(-1, limiter.reserve(0));
+    }
+
+    @Test
+    public void laterRequestsWaitForTheirTurn()
+    {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 1, this.now::get);
+        Assert.assertEquals(0, limiter.reserve(SECOND));
+        Assert.assertEquals(SECOND / 2, limiter.reserve(SECOND));
+        Assert.assertEquals(SECOND, limiter.reserve(SECOND));
+        // Too long, nothing is reserved
+        Assert.assertEquals(-1, limiter.reserve(SECOND));
+    }
+
+    @Test
+    public void tokensAreRefilledOverTimeUpToTheBurstSize()
+    {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 2, this.now::get);
+        limiter.reserve(0);
+        limiter.reserve(0);
+        Assert.assertEquals(-1, limiter.reserve(0));
+
+        this.now.addAndGet(SECOND / 10);
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(-1, limiter.reserve(0));
+
+        this.now.addAndGet(60 * SECOND);
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(0, limiter.reserve(0));
+        Assert.assertEquals(-1, limiter.reserve(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateMustBePositive()
+    {
+        new TokenBucketRateLimiter(0, 1);
+    }
+}
@@ -24,6 +24,8 @@
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.ResourceBundle;
 
 /**
@@ -53,7 +55,7 @@ protected Object handleGetObject(String key)
     };
 
     /** Cache of already loaded translations. */
-    private Map<String, SoftReference<? extends ResourceBundle>> translations = new HashMap<>();
+    private Map<String, SoftReference<? extends ResourceBundle>> translations = new ConcurrentHashMap<>();
 
     /**
      * Gets the translation for a key, in a specific language, from a translatable resource bundle.
@@ -65,13 +67,42 @@ protected Object handleGetObject(String key)
      */
     public String getTranslation(String baseName, String key, Locale locale)
     {
+        ResourceBundle bundle = getTranslation(baseName, locale);
+        // Checking first is much cheaper than building and catching an exception for each untranslated key
+        if (!bundle.containsKey(key)) {
+            return null;
+        }
         try {
-            return getTranslation(baseName, locale).getString(key);
-        } catch (MissingResourceException ex) {
+            return bundle.getString(key);
+        } catch (MissingResourceException | ClassCastException ex) {
             return null;
         }
     }
 
+    /**
+     * Gets all the translations available in a specific language from a translatable resource bundle, including the
+     * ones inherited from a less specific language. This is meant for bulk processing, where looking up each key
+     * individually would be wasteful.
+     *
+     * @param baseName the base name of the translatable resource
+     * @param locale the language to translate in
+     * @return a map from translation keys to the translated texts, empty if the requested language isn't available
+     * @since 1.5M1
+     */
+    public Map<String, String> getTranslations(String baseName, Locale locale)
+    {
+        ResourceBundle bundle = getTranslation(baseName, locale);
+        Set<String> keys = bundle.keySet();
+        Map<String, String> result = new HashMap<>((int) Math.ceil(keys.size() / 0.75));
+        for (String key : keys) {
+            Object value = bundle.getObject(key);
+            if (value instanceof String) {
+                result.put(key, (String) value);
+            }
+        }
+        return result;
+    }
+
     /**
      * Checks if the translation file for the specified language is available.
      *
@@ -87,15 +118,18 @@ public boolean isTranslationAvailable(String baseName, Locale locale)
 
     private ResourceBundle getTranslation(String baseName, Locale locale)
     {
-        if (!this.translations.containsKey(baseName + '_' + locale.toString())) {
+        String cacheKey = baseName + '_' + locale;
+        SoftReference<? extends ResourceBundle> cached = this.translations.get(cacheKey);
+        // The soft reference may have been cleared by the garbage collector, in which case the bundle is reloaded
+        ResourceBundle result = cached != null ? cached.get() : null;
+        if (result == null) {
             try {
-                ResourceBundle result =
-                    ResourceBundle.getBundle(baseName, locale, XLIFFResourceBundleControl.INSTANCE);
-                this.translations.put(baseName + '_' + locale, new SoftReference<>(result));
+                result = ResourceBundle.getBundle(baseName, locale, XLIFFResourceBundleControl.INSTANCE);
             } catch (MissingResourceException ex) {
-                this.translations.put(baseName + '_' + locale, new SoftReference<>(NONEXISTENT_BUNDLE));
+                result = NONEXISTENT_BUNDLE;
             }
+            this.translations.put(cacheKey, new SoftReference<>(result));
         }
-        return this.translations.get(baseName + '_' + locale).get();
+        return result;
     }
 }
@@ -188,9 +188,14 @@ public void extendTerm(VocabularyInputTerm term, Vocabulary vocabulary)
     @Override
     public void indexingEnded(Vocabulary vocabulary)
     {
-        if (this.operationsInProgress.decrementAndGet() == 0) {
-            this.data = null;
-        }
+        releaseData();
+    }
+
+    @Override
+    public void indexingCancelled(Vocabulary vocabulary)
+    {
+        // Nothing was published from the loaded annotations, releasing them is all that's needed
+        releaseData();
     }
 
     @Override
@@ -268,4 +273,11 @@ protected String getRowItem(@Nonnull final CSVRecord row, final int colNumber)
      * @return a CSV parser that can read the annotation file
      */
     protected abstract CSVFormat setupCSVParser(Vocabulary vocabulary);
+
+    private void releaseData()
+    {
+        if (this.operationsInProgress.decrementAndGet() == 0) {
+            this.data = null;
+        }
+    }
 }
@@ -27,8 +27,10 @@
  * vocabularies, identified by the {@link #isVocabularySupported} method. Every time one of the supported vocabularies
  * is {@link org.phenotips.vocabulary.Vocabulary#reindex(String) reindexed}, first {@link #indexingStarted} is called,
  * so that the extension can prepare its needed resources, if any. Then, for each term parsed from its source the
- * {@link #extendTerm} method is called, and new fields can be added to it. Once all the terms have been indexed,
- * {@link #indexingEnded} is called, and any resources can be freed.
+ * {@link #extendTerm} method is called, and new fields can be added to it. Once all the terms have been indexed and
+ * the new index replaced the old one, {@link #indexingEnded} is called, and any resources can be freed. If the reindex
+ * fails or is cancelled instead, the new index is discarded and {@link #indexingCancelled} is called in place of
+ * {@link #indexingEnded}, so that extensions never act on a partially indexed vocabulary.
  *
  * @version $Id$
  * @since 1.3M1
@@ -67,12 +69,28 @@
 
     /**
      * Called when a vocabulary reindex is done, so that this extension can clean up its resources, if any. This method
-     * is called only for {@link #isVocabularySupported(Vocabulary) supported vocabularies}.
+     * is called only for {@link #isVocabularySupported(Vocabulary) supported vocabularies}, and only if all the terms
+     * were indexed successfully and the new index is already live.
      *
      * @param vocabulary the vocabulary that was indexed
      */
     void indexingEnded(Vocabulary vocabulary);
 
+    /**
+     * Called instead of {@link #indexingEnded} when a vocabulary reindex fails or is cancelled, after only part of the
+     * terms were {@link #extendTerm extended}. The new index is discarded and the previous one remains in use, so this
+     * extension should clean up its resources, if any, without acting on the incomplete data. This method is called
+     * only for {@link #isVocabularySupported(Vocabulary) supported vocabularies}. The default implementation does
+     * nothing.
+     *
+     * @param vocabulary the vocabulary whose reindex was abandoned
+     * @since 1.5M1
+     */
+    default void indexingCancelled(Vocabulary vocabulary)
+    {
+        // Nothing to clean up by default
+    }
+
     /**
      * Called for each query on the vocabulary, this method modifies the query terms by changing, adding or removing
      * fields.
@@ -0,0 +1,188 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Date;
+
+import org.json.JSONObject;
+
+/**
+ * The status of a background {@link Vocabulary#reindex(String) vocabulary reindex}, as started through the
+ * {@link VocabularyReindexManager}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable("New API introduced in 1.5")
+public interface VocabularyReindexJob
+{
+    /** The lifecycle of a reindex job. */
+    enum Status
+    {
+        /** Waiting for a free worker. */
+        QUEUED,
+        /** Currently reindexing. */
+        RUNNING,
+        /** The new index was successfully built and replaced the live index. */
+        SUCCEEDED,
+        /** The reindex failed, and the live index was left unchanged. */
+        FAILED,
+        /** The reindex was cancelled before finishing, and the live index was left unchanged. */
+        CANCELLED;
+
+        /**
+         * Whether this is a final status.
+         *
+         * @return {@code true} if the job has ended, {@code false} if it is still queued or running
+         */
+        public boolean isFinished()
+        {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    /** The steps of a running reindex. */
+    enum Phase
+    {
+        /** The job hasn't started yet. */
+        WAITING,
+        /** Fetching and parsing the vocabulary source. */
+        LOADING,
+        /** Building and storing the new index; starts when the first term is parsed. */
+        INDEXING,
+        /** Replacing the live index with the new one. */
+        ACTIVATING,
+        /** The job has ended. */
+        DONE
+    }
+
+    /**
+     * The unique identifier of this job.
+     *
+     * @return an opaque identifier
+     */
+    String getId();
+
+    /**
+     * The vocabulary being reindexed.
+     *
+     * @return the {@link Vocabulary#getIdentifier() vocabulary identifier}
+     */
+    String getVocabulary();
+
+    /**
+     * The location of the source being indexed.
+     *
+     * @return the requested URL, or {@code null} if the default source location of the vocabulary is used
+     */
+    String getSourceUrl();
+
+    /**
+     * The current status of the job.
+     *
+     * @return the job status
+     */
+    Status getStatus();
+
+    /**
+     * The current step of the reindex.
+     *
+     * @return the job phase
+     */
+    Phase getPhase();
+
+    /**
+     * The number of terms parsed from the source so far.
+     *
+     * @return a positive number, or {@code 0} if parsing hasn't started yet
+     */
+    long getParsedDocuments();
+
+    /**
+     * The number of terms stored in the new index so far.
+     *
+     * @return a positive number, or {@code 0} if indexing hasn't started yet
+     */
+    long getIndexedDocuments();
+
+    /**
+     * The expected total number of terms. Until the source has been parsed, this is the size of the live index.
+     *
+     * @return the expected number of terms, or {@code -1} if unknown
+     */
+    long getExpectedDocuments();
+
+    /**
+     * An estimate of the time needed to finish indexing, based on the indexing speed so far.
+     *
+     * @return the estimated remaining time in milliseconds, or {@code -1} if it cannot be estimated yet
+     */
+    long getEstimatedRemainingTime();
+
+    /**
+     * When was this job requested.
+     *
+     * @return the submission date
+     */
+    Date getSubmitTime();
+
+    /**
+     * When did the reindex start.
+     *
+     * @return the start date, or {@code null} if the job is still queued
+     */
+    Date getStartTime();
+
+    /**
+     * When did the job end.
+     *
+     * @return the end date, or {@code null} if the job hasn't ended yet
+     */
+    Date getEndTime();
+
+    /**
+     * The value returned by {@link Vocabulary#reindex(String)}.
+     *
+     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
+     *         specified URL is invalid, or {@code -1} if the job hasn't finished or ended without a result
+     */
+    int getResult();
+
+    /**
+     * A short description of why the job failed.
+     *
+     * @return the failure message, or {@code null} if the job hasn't failed
+     */
+    String getError();
+
+    /**
+     * Whether the job was asked to stop.
+     *
+     * @return {@code true} if cancellation was requested, even if the job hasn't stopped yet
+     */
+    boolean isCancellationRequested();
+
+    /**
+     * Serializes the job status as JSON.
+     *
+     * @return a JSON object with all the properties of this job, never {@code null}
+     */
+    JSONObject toJSON();
+}
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs {@link Vocabulary#reindex(String) vocabulary reindexing} as background jobs, so that the caller doesn't have to
+ * wait for the whole vocabulary to be indexed. A limited number of jobs run at the same time, the others wait in a
+ * queue. Vocabulary implementations report their progress and check for cancellation using the methods in the second
+ * part of this interface, which only have an effect when called from a thread running a reindex job.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable("New API introduced in 1.5")
+@Role
+public interface VocabularyReindexManager
+{
+    /**
+     * Schedules the reindexing of a vocabulary. If the vocabulary is already queued or being reindexed, then the
+     * existing job is returned instead of starting a new one, since two indexes cannot be built at the same time for
+     * the same vocabulary.
+     *
+     * @param vocabulary the vocabulary to reindex
+     * @param sourceUrl the URL to be indexed, or {@code null} to use the default source location of the vocabulary
+     * @return the job handling the reindex
+     */
+    VocabularyReindexJob reindex(Vocabulary vocabulary, String sourceUrl);
+
+    /**
+     * Retrieves a job, either active or recently finished.
+     *
+     * @param jobId the {@link VocabularyReindexJob#getId() job identifier}
+     * @return the requested job, or {@code null} if no such job is known
+     */
+    VocabularyReindexJob getJob(String jobId);
+
+    /**
+     * Lists the active and recently finished jobs.
+     *
+     * @return the known jobs, most recently submitted first, may be empty
+     */
+    List<VocabularyReindexJob> getJobs();
+
+    /**
+     * Cancels a job. A queued job will never start, while a running job stops at the next
+     * {@link #checkCancelled() check}, and the partially built index is discarded, leaving the live index unchanged.
+     *
+     * @param jobId the {@link VocabularyReindexJob#getId() job identifier}
+     * @return {@code true} if the job was active and cancellation was requested, {@code false} if there's no such job
+     *         or it has already ended
+     */
+    boolean cancel(String jobId);
+
+    /**
+     * Reports that the reindex running in the current thread moved to a new phase.
+     *
+     * @param phase the new phase
+     */
+    void startPhase(VocabularyReindexJob.Phase phase);
+
+    /**
+     * Reports the number of terms in the source being indexed by the current thread, once known.
+     *
+     * @param count the total number of terms
+     */
+    void setExpectedDocuments(long count);
+
+    /**
+     * Reports that the reindex running in the current thread parsed more terms.
+     *
+     * @param count the number of newly parsed terms
+     */
+    void documentsParsed(int count);
+
+    /**
+     * Reports that the reindex running in the current thread stored more terms in the new index.
+     *
+     * @param count the number of newly indexed terms
+     */
+    void documentsIndexed(int count);
+
+    /**
+     * Stops the reindex running in the current thread if its cancellation was requested.
+     *
+     * @throws CancellationException if the job was cancelled
+     */
+    void checkCancelled() throws CancellationException;
+}
@@ -0,0 +1,271 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.VocabularyReindexJob;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Mutable implementation of {@link VocabularyReindexJob}, updated by the {@link DefaultVocabularyReindexManager} and
+ * read concurrently by status requests.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class DefaultVocabularyReindexJob implements VocabularyReindexJob
+{
+    private final String id;
+
+    private final String vocabulary;
+
+    private final String sourceUrl;
+
+    private final Date submitTime = new Date();
+
+    private final AtomicLong parsed = new AtomicLong();
+
+    private final AtomicLong indexed = new AtomicLong();
+
+    private volatile long expected = -1;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile Phase phase = Phase.WAITING;
+
+    private volatile Date startTime;
+
+    private volatile Date endTime;
+
+    /** The value of {@link System#nanoTime()} when indexing started, used for estimating the remaining time. */
+    private volatile long indexingStart;
+
+    private volatile int result = -1;
+
+    private volatile String error;
+
+    private volatile boolean cancellationRequested;
+
+    private volatile Future<?> future;
+
+    DefaultVocabularyReindexJob(String id, String vocabulary, String sourceUrl)
+    {
+        this.id = id;
+        this.vocabulary = vocabulary;
+        this.sourceUrl = sourceUrl;
+    }
+
+    @Override
+    public String getId()
+    {
+        return this.id;
+    }
+
+    @Override
+    public String getVocabulary()
+    {
+        return this.vocabulary;
+    }
+
+    @Override
+    public String getSourceUrl()
+    {
+        return this.sourceUrl;
+    }
+
+    @Override
+    public Status getStatus()
+    {
+        return this.status;
+    }
+
+    @Override
+    public Phase getPhase()
+    {
+        return this.phase;
+    }
+
+    @Override
+    public long getParsedDocuments()
+    {
+        return this.parsed.get();
+    }
+
+    @Override
+    public long getIndexedDocuments()
+    {
+        return this.indexed.get();
+    }
+
+    @Override
+    public long getExpectedDocuments()
+    {
+        return this.expected;
+    }
+
+    @Override
+    public long getEstimatedRemainingTime()
+    {
+        long done = this.indexed.get();
+        long total = this.expected;
+        if (this.phase != Phase.INDEXING || done <= 0 || total <= 0) {
+            return this.status.isFinished() ? 0 : -1;
+        }
+        long elapsed = (System.nanoTime() - this.indexingStart) / 1000000L;
+        return Math.max(0, elapsed * (total - done) / done);
+    }
+
+    @Override
+    public Date getSubmitTime()
+    {
+        return this.submitTime;
+    }
+
+    @Override
+    public Date getStartTime()
+    {
+        return this.startTime;
+    }
+
+    @Override
+    public Date getEndTime()
+    {
+        return this.endTime;
+    }
+
+    @Override
+    public int getResult()
+    {
+        return this.result;
+    }
+
+    @Override
+    public String getError()
+    {
+        return this.error;
+    }
+
+    @Override
+    public boolean isCancellationRequested()
+    {
+        return this.cancellationRequested;
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        JSONObject json = new JSONObject()
+            .put("id", this.id)
+            .put("vocabulary", this.vocabulary)
+            .put("status", this.status.name().toLowerCase(Locale.ROOT))
+            .put("phase", this.phase.name().toLowerCase(Locale.ROOT))
+            .put("parsed", getParsedDocuments())
+            .put("indexed", getIndexedDocuments())
+            .put("expected", this.expected)
+            .put("eta", getEstimatedRemainingTime())
+            .put("submitted", this.submitTime.getTime())
+            .put("cancellationRequested", this.cancellationRequested);
+        json.putOpt("sourceUrl", this.sourceUrl);
+        json.putOpt("started", this.startTime == null ? null : this.startTime.getTime());
+        json.putOpt("ended", this.endTime == null ? null : this.endTime.getTime());
+        json.putOpt("error", this.error);
+        if (this.result >= 0) {
+            json.put("result", this.result);
+        }
+        return json;
+    }
+
+    void setFuture(Future<?> future)
+    {
+        this.future = future;
+    }
+
+    /**
+     * Requests the job to stop.
+     *
+     * @return {@code true} if the job hadn't started yet and will never run, {@code false} if it is running and will
+     *         stop at the next check
+     */
+    boolean requestCancellation()
+    {
+        this.cancellationRequested = true;
+        Future<?> scheduled = this.future;
+        if (scheduled != null && scheduled.cancel(false)) {
+            ended(Status.CANCELLED);
+            return true;
+        }
+        return false;
+    }
+
+    void started()
+    {
+        this.startTime = new Date();
+        this.status = Status.RUNNING;
+        this.phase = Phase.LOADING;
+    }
+
+    void setPhase(Phase phase)
+    {
+        if (phase == Phase.INDEXING && this.phase != Phase.INDEXING) {
+            this.indexingStart = System.nanoTime();
+        }
+        this.phase = phase;
+    }
+
+    void setExpected(long expected)
+    {
+        this.expected = expected;
+    }
+
+    void addParsed(int count)
+    {
+        if (this.phase == Phase.LOADING) {
+            setPhase(Phase.INDEXING);
+        }
+        this.parsed.addAndGet(count);
+    }
+
+    void addIndexed(int count)
+    {
+        this.indexed.addAndGet(count);
+    }
+
+    void finished(int reindexResult)
+    {
+        this.result = reindexResult;
+        ended(reindexResult == 0 ? Status.SUCCEEDED : Status.FAILED);
+    }
+
+    void failed(String message)
+    {
+        this.error = message;
+        ended(Status.FAILED);
+    }
+
+    void ended(Status finalStatus)
+    {
+        this.endTime = new Date();
+        this.phase = Phase.DONE;
+        this.status = finalStatus;
+    }
+}
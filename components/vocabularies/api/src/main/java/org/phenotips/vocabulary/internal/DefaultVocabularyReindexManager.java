@@ -0,0 +1,259 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexJob.Phase;
+import org.phenotips.vocabulary.VocabularyReindexJob.Status;
+import org.phenotips.vocabulary.VocabularyReindexManager;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link VocabularyReindexManager}. Jobs are run by a small pool of background workers,
+ * so that several large vocabularies being reindexed at the same time don't exhaust the resources of the server; the
+ * number of workers can be configured using the {@code phenotips.vocabularies.reindex.maxConcurrentJobs} property in
+ * {@code xwiki.properties}, and defaults to {@code 1}. Finished jobs are remembered until
+ * {@value #MAX_FINISHED_JOBS} more recent jobs finish.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Singleton
+public class DefaultVocabularyReindexManager implements VocabularyReindexManager, Initializable, Disposable
+{
+    /** The number of finished jobs to keep. */
+    static final int MAX_FINISHED_JOBS = 20;
+
+    private static final int DEFAULT_CONCURRENT_JOBS = 1;
+
+    /** The job running in the current thread, if any. */
+    private final ThreadLocal<DefaultVocabularyReindexJob> currentJob = new ThreadLocal<>();
+
+    /** All the known jobs, in the order they were submitted. */
+    private final Map<String, DefaultVocabularyReindexJob> jobs = new LinkedHashMap<>();
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    private ExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int threads = Math.max(1, this.configuration.getProperty("phenotips.vocabularies.reindex.maxConcurrentJobs",
+            DEFAULT_CONCURRENT_JOBS));
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "PhenoTips vocabulary reindex " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        // Running reindexes are abandoned, the replacement cores are discarded when the Solr cores are closed
+        this.executor.shutdownNow();
+    }
+
+    @Override
+    public synchronized VocabularyReindexJob reindex(final Vocabulary vocabulary, final String sourceUrl)
+    {
+        for (DefaultVocabularyReindexJob job : this.jobs.values()) {
+            if (!job.getStatus().isFinished() && StringUtils.equals(job.getVocabulary(), vocabulary.getIdentifier())) {
+                return job;
+            }
+        }
+        final DefaultVocabularyReindexJob job =
+            new DefaultVocabularyReindexJob(UUID.randomUUID().toString(), vocabulary.getIdentifier(), sourceUrl);
+        this.jobs.put(job.getId(), job);
+        pruneFinishedJobs();
+        try {
+            job.setFuture(this.executor.submit(() -> run(job, vocabulary)));
+        } catch (RuntimeException ex) {
+            // Rejected while shutting down
+            job.failed("The reindexing service is shutting down");
+        }
+        return job;
+    }
+
+    @Override
+    public synchronized VocabularyReindexJob getJob(String jobId)
+    {
+        return this.jobs.get(jobId);
+    }
+
+    @Override
+    public synchronized List<VocabularyReindexJob> getJobs()
+    {
+        List<VocabularyReindexJob> result = new ArrayList<>(this.jobs.values());
+        Collections.reverse(result);
+        return result;
+    }
+
+    @Override
+    public boolean cancel(String jobId)
+    {
+        DefaultVocabularyReindexJob job;
+        synchronized (this) {
+            job = this.jobs.get(jobId);
+        }
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        job.requestCancellation();
+        return true;
+    }
+
+    @Override
+    public void startPhase(Phase phase)
+    {
+        DefaultVocabularyReindexJob job = this.currentJob.get();
+        if (job != null) {
+            job.setPhase(phase);
+        }
+    }
+
+    @Override
+    public void setExpectedDocuments(long count)
+    {
+        DefaultVocabularyReindexJob job = this.currentJob.get();
+        if (job != null) {
+            job.setExpected(count);
+        }
+    }
+
+    @Override
+    public void documentsParsed(int count)
+    {
+        DefaultVocabularyReindexJob job = this.currentJob.get();
+        if (job != null) {
+            job.addParsed(count);
+        }
+    }
+
+    @Override
+    public void documentsIndexed(int count)
+    {
+        DefaultVocabularyReindexJob job = this.currentJob.get();
+        if (job != null) {
+            job.addIndexed(count);
+        }
+    }
+
+    @Override
+    public void checkCancelled() throws CancellationException
+    {
+        DefaultVocabularyReindexJob job = this.currentJob.get();
+        if (job != null && job.isCancellationRequested()) {
+            throw new CancellationException("Reindexing of [" + job.getVocabulary() + "] cancelled");
+        }
+    }
+
+    /**
+     * Runs in a worker thread: reindexes the vocabulary and records the outcome in the job.
+     *
+     * @param job the job to run
+     * @param vocabulary the vocabulary to reindex
+     */
+    private void run(DefaultVocabularyReindexJob job, Vocabulary vocabulary)
+    {
+        if (job.isCancellationRequested()) {
+            job.ended(Status.CANCELLED);
+            return;
+        }
+        this.currentJob.set(job);
+        try {
+            this.contextManager.initialize(new ExecutionContext());
+            job.started();
+            // The size of the live index is a good first estimate of the size of the new one
+            job.setExpected(vocabulary.size());
+            job.finished(vocabulary.reindex(job.getSourceUrl()));
+            this.logger.info("Reindexing of [{}] ended with status {}", job.getVocabulary(), job.getResult());
+        } catch (CancellationException ex) {
+            job.ended(Status.CANCELLED);
+            this.logger.info("Reindexing of [{}] cancelled", job.getVocabulary());
+        } catch (UnsupportedOperationException ex) {
+            job.failed("The vocabulary cannot be reindexed");
+        } catch (Exception ex) {
+            job.failed(ex.getMessage());
+            this.logger.warn("Failed to reindex [{}]: {}", job.getVocabulary(), ex.getMessage(), ex);
+        } finally {
+            this.currentJob.remove();
+            this.execution.removeContext();
+        }
+    }
+
+    /** Forgets the oldest finished jobs, keeping only the {@value #MAX_FINISHED_JOBS} most recent ones. */
+    private void pruneFinishedJobs()
+    {
+        int finished = 0;
+        for (DefaultVocabularyReindexJob job : this.jobs.values()) {
+            if (job.getStatus().isFinished()) {
+                ++finished;
+            }
+        }
+        Iterator<DefaultVocabularyReindexJob> it = this.jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+            if (it.next().getStatus().isFinished()) {
+                it.remove();
+                --finished;
+            }
+        }
+    }
+}
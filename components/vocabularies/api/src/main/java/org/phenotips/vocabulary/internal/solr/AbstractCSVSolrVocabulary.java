@@ -79,6 +79,7 @@ protected int index(String sourceUrl)
         if (data == null) {
             return 2;
         }
+        this.reindexManager.setExpectedDocuments(data.size());
         try {
             Collection<SolrInputDocument> termBatch = new HashSet<>();
             Iterator<SolrInputDocument> dataIterator = data.iterator();
@@ -107,6 +107,7 @@ protected int index(String sourceUrl)
         if (data == null || data.isEmpty()) {
             return 2;
         }
+        this.reindexManager.setExpectedDocuments(data.size());
         try {
             Collection<SolrInputDocument> termBatch = new HashSet<>();
             Iterator<Map.Entry<String, TermData>> dataIterator = data.entrySet().iterator();
@@ -17,10 +17,13 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.metrics.MetricsRegistry;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyExtension;
 import org.phenotips.vocabulary.VocabularyInputTerm;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexManager;
 import org.phenotips.vocabulary.VocabularySourceRelocationService;
 import org.phenotips.vocabulary.VocabularyTerm;
 
@@ -28,6 +31,7 @@
 import org.xwiki.component.phase.InitializationException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -68,6 +72,9 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
      */
     private static final VocabularyTerm EMPTY_MARKER = new SolrVocabularyTerm(null, null);
 
+    /** How many terms are requested at once, well below the default {@code maxBooleanClauses} limit of 1024. */
+    private static final int MAX_TERMS_PER_QUERY = 500;
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -83,6 +90,14 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
     @Inject
     protected VocabularySourceRelocationService relocationService;
 
+    /** Records query latencies and term cache hit rates. */
+    @Inject
+    protected MetricsRegistry metrics;
+
+    /** Receives progress reports while reindexing, and signals when a reindex must be abandoned. */
+    @Inject
+    protected VocabularyReindexManager reindexManager;
+
     // Dilemma:
     // In an ideal world there should be a getter methods for server and cache instances.
     // However the point of splitting up the server was to lessen the number of imports
@@ -96,6 +111,7 @@ public VocabularyTerm getTerm(String id)
             return null;
         }
         VocabularyTerm result = this.externalServicesAccess.getTermCache(this).get(id);
+        recordCacheAccess(result == null ? 0 : 1, result == null ? 1 : 0);
         if (result == null) {
             SolrQuery query = new SolrQuery(ID_FIELD_NAME + ':' + ClientUtils.escapeQueryChars(id));
             SolrDocumentList allResults = this.search(query);
@@ -113,8 +129,8 @@ public VocabularyTerm getTerm(String id)
     public Set<VocabularyTerm> getTerms(Collection<String> ids)
     {
         Map<String, VocabularyTerm> rawResult = new HashMap<>();
-        StringBuilder query = new StringBuilder("id:(");
         Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache(this);
+        List<String> misses = new ArrayList<>();
         for (String id : ids) {
             VocabularyTerm cachedTerm = cache.get(id);
             if (cachedTerm != null) {
@@ -122,15 +138,24 @@ public Set<VocabularyTerm> getTerms(Collection<String> ids)
                     rawResult.put(id, cachedTerm);
                 }
             } else {
+                misses.add(id);
+            }
+        }
+        recordCacheAccess(ids.size() - misses.size(), misses.size());
+
+        // Solr rejects queries with more than maxBooleanClauses clauses, and only returns the first 10 results unless
+        // asked for more, so the missing terms are requested in chunks, each with enough rows for all of its terms
+        for (int start = 0; start < misses.size(); start += MAX_TERMS_PER_QUERY) {
+            List<String> chunk = misses.subList(start, Math.min(start + MAX_TERMS_PER_QUERY, misses.size()));
+            StringBuilder query = new StringBuilder(ID_FIELD_NAME).append(":(");
+            for (String id : chunk) {
                 query.append(ClientUtils.escapeQueryChars(id));
                 query.append(' ');
             }
-        }
-        query.append(')');
-
-        // There's at least one more term not found in the cache
-        if (query.length() > 5) {
-            for (SolrDocument doc : this.search(new SolrQuery(query.toString()))) {
+            query.append(')');
+            SolrQuery solrQuery = new SolrQuery(query.toString());
+            solrQuery.setRows(chunk.size());
+            for (SolrDocument doc : this.search(solrQuery)) {
                 String id = (String) doc.getFieldValue(ID_FIELD_NAME);
                 VocabularyTerm term = cacheTerm(id, doc);
                 rawResult.put(term.getId(), term);
@@ -181,24 +206,35 @@ public int reindex(String sourceUrl)
         int retval = 1;
         try {
             this.externalServicesAccess.createReplacementCore(this);
+            boolean activated = false;
             try {
                 for (VocabularyExtension ext : this.extensions.get()) {
                     if (ext.isVocabularySupported(this)) {
                         ext.indexingStarted(this);
                     }
                 }
+                this.reindexManager.startPhase(VocabularyReindexJob.Phase.LOADING);
                 retval = this.index(sourceUrl);
+                if (retval == 0) {
+                    this.reindexManager.checkCancelled();
+                    this.reindexManager.startPhase(VocabularyReindexJob.Phase.ACTIVATING);
+                    this.externalServicesAccess.replaceCore(this);
+                    this.externalServicesAccess.getTermCache(this).removeAll();
+                    activated = true;
+                }
             } finally {
+                // Extensions only see the end of the indexing once the new data is live, abandoned runs are reported
+                // as cancelled so that nothing is built from a partial index
                 for (VocabularyExtension ext : this.extensions.get()) {
                     if (ext.isVocabularySupported(this)) {
-                        ext.indexingEnded(this);
+                        if (activated) {
+                            ext.indexingEnded(this);
+                        } else {
+                            ext.indexingCancelled(this);
+                        }
                     }
                 }
             }
-            if (retval == 0) {
-                this.externalServicesAccess.replaceCore(this);
-                this.externalServicesAccess.getTermCache(this).removeAll();
-            }
             return retval;
         } catch (InitializationException ex) {
             this.logger.warn("Failed to reindex. {}", ex.getMessage());
@@ -268,6 +304,7 @@ public List<VocabularyExtension> getExtensions()
      */
     protected SolrDocumentList search(SolrQuery query)
     {
+        final long start = System.nanoTime();
         try {
             query.setIncludeScore(true);
             this.logger.debug("Extending query [{}] for vocabulary [{}]", query, this.getIdentifier());
@@ -297,6 +334,8 @@ protected SolrDocumentList search(SolrQuery query)
             return results;
         } catch (Exception ex) {
             this.logger.error("Failed to search: {}", ex.getMessage(), ex);
+        } finally {
+            recordQuery("search", start);
         }
         return new SolrDocumentList();
     }
@@ -313,6 +352,7 @@ protected long count(String query)
         params.setStart(0);
         params.setRows(0);
         SolrDocumentList results;
+        final long start = System.nanoTime();
         try {
             this.logger.debug("Counting terms matching [{}] in [{}]", query, this.getIdentifier());
             results = this.externalServicesAccess.getSolrConnection(this).query(params).getResults();
@@ -320,6 +360,8 @@ protected long count(String query)
         } catch (Exception ex) {
             this.logger.error("Failed to count vocabulary terms: {}", ex.getMessage(), ex);
             return -1;
+        } finally {
+            recordQuery("count", start);
         }
     }
 
@@ -366,6 +408,7 @@ protected String generateLuceneQuery(Map<String, ?> fieldValues)
      */
     protected void extendTerm(VocabularyInputTerm term)
     {
+        this.reindexManager.documentsParsed(1);
         for (VocabularyExtension extension : this.extensions.get()) {
             if (extension.isVocabularySupported(this)) {
                 extension.extendTerm(term, this);
@@ -379,11 +422,57 @@ protected void extendTerm(VocabularyInputTerm term)
     protected void commitTerms(Collection<SolrInputDocument> batch)
         throws SolrServerException, IOException, OutOfMemoryError
     {
+        // Cancelled reindexes stop here, the partial index is discarded and the live one stays in use
+        this.reindexManager.checkCancelled();
         this.externalServicesAccess.getReplacementSolrConnection(this).add(batch);
         this.externalServicesAccess.getReplacementSolrConnection(this).commit();
+        this.reindexManager.documentsIndexed(batch.size());
+    }
+
+    /**
+     * Records the duration of a Solr query, both for this vocabulary and in the overall count of Solr queries.
+     *
+     * @param type the type of query, {@code search} or {@code count}
+     * @param start the value of {@link System#nanoTime()} when the query started
+     */
+    private void recordQuery(String type, long start)
+    {
+        if (this.metrics.isEnabled()) {
+            this.metrics.updateTime("vocabulary." + getIdentifier() + '.' + type, System.nanoTime() - start);
+            this.metrics.increment("solr.queries");
+        }
+    }
+
+    private void recordCacheAccess(int hits, int misses)
+    {
+        if (this.metrics.isEnabled()) {
+            this.metrics.increment("vocabulary." + getIdentifier() + ".cache.hits", hits);
+            this.metrics.increment("vocabulary." + getIdentifier() + ".cache.misses", misses);
+        }
+    }
+
+    /**
+     * Looks up a term in the term cache, without querying the index.
+     *
+     * @param id the identifier of the term to look up
+     * @return the cached term, or {@code null} if the term is not cached, or it is known not to exist
+     */
+    protected VocabularyTerm getCachedTerm(String id)
+    {
+        VocabularyTerm result = this.externalServicesAccess.getTermCache(this).get(id);
+        recordCacheAccess(result == null ? 0 : 1, result == null ? 1 : 0);
+        return (result == EMPTY_MARKER) ? null : result;
     }
 
-    private VocabularyTerm cacheTerm(String id, SolrDocument doc)
+    /**
+     * Returns the cached instance of a term, caching a new term wrapping the provided document if the term isn't
+     * already cached.
+     *
+     * @param id the identifier of the term
+     * @param doc the Solr document of the term, as returned by a query
+     * @return the cached term
+     */
+    protected VocabularyTerm cacheTerm(String id, SolrDocument doc)
     {
         Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache(this);
         VocabularyTerm term = cache.get(id);
@@ -24,6 +24,7 @@
 import org.xwiki.localization.LocalizationContext;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,6 +34,7 @@
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.IterableUtils;
@@ -98,6 +100,13 @@ public abstract class AbstractSolrVocabularyTerm implements VocabularyTerm
      */
     protected static final String PARENTS_KEY = "is_a";
 
+    /**
+     * For each locale already encountered, the field name suffixes to try, in order, when looking for a translated
+     * value. Locales are few and never change, so computing these once avoids rebuilding the same strings for every
+     * translated property of every term.
+     */
+    private static final Map<Locale, List<String>> LOCALE_SUFFIXES = new ConcurrentHashMap<>();
+
     /**
      * The owner vocabulary.
      *
@@ -167,11 +176,7 @@ public String getName()
     @Override
     public String getTranslatedName()
     {
-        Collection<?> translated = getTranslatedValues(NAME_KEY);
-        if (CollectionUtils.isEmpty(translated)) {
-            return null;
-        }
-        return (String) IterableUtils.get(translated, 0);
+        return getTranslatedName(getCurrentLocale());
     }
 
     @Override
@@ -183,37 +188,34 @@ public String getDescription()
     @Override
     public String getTranslatedDescription()
     {
-        Collection<?> translated = getTranslatedValues(DESCRIPTION_KEY);
-        if (CollectionUtils.isEmpty(translated)) {
-            return null;
-        }
-        return (String) IterableUtils.get(translated, 0);
+        return getTranslatedDescription(getCurrentLocale());
     }
 
     @Override
     public Collection<?> getTranslatedValues(String property)
     {
-        Locale currentLocale = getCurrentLocale();
-        if (StringUtils.isEmpty(currentLocale.getLanguage())) {
-            return getValues(property);
-        }
-        Collection<Object> result = getValues(property + '_' + currentLocale.toString());
-        // If the locale has language, country, and variant, try without the variant
-        if (CollectionUtils.isEmpty(result)
-            && StringUtils.isNoneEmpty(currentLocale.getVariant(), currentLocale.getCountry())) {
-            result = getValues(property + '_' + currentLocale.getLanguage() + '_' + currentLocale.getCountry());
-        }
-        // If the locale has language and country, try without the country
-        if (CollectionUtils.isEmpty(result)
-            && StringUtils.isNoneEmpty(currentLocale.getLanguage(), currentLocale.getCountry())) {
-            result = getValues(property + '_' + currentLocale.getLanguage());
-        }
-        // If the locale has no country, then the first call included the language only;
-        // at this point, it's certain that no translation is available, return the untranslated default
-        if (CollectionUtils.isEmpty(result)) {
-            result = getValues(property);
+        return getTranslatedValues(property, getCurrentLocale());
+    }
+
+    /**
+     * Get the values of a property in the specified locale. The locale is gradually made less specific, by dropping
+     * the variant and then the country, until a translation is found; if none is available, the untranslated values
+     * are returned.
+     *
+     * @param property the name of the property to retrieve
+     * @param locale the locale to look for, must not be {@code null}
+     * @return the translated values, or the default values if no translation is available
+     * @since 1.5M1
+     */
+    protected Collection<?> getTranslatedValues(String property, Locale locale)
+    {
+        for (String suffix : getLocaleSuffixes(locale)) {
+            Collection<Object> result = getValues(property + suffix);
+            if (CollectionUtils.isNotEmpty(result)) {
+                return result;
+            }
         }
-        return result;
+        return getValues(property);
     }
 
     @Override
@@ -315,15 +317,18 @@ public JSONObject toJSON()
         for (Map.Entry<String, ? extends Object> field : getEntrySet()) {
             addAsCorrectType(json, field.getKey(), field.getValue());
         }
-        json.put(TRANSLATED_NAME_KEY, getTranslatedName());
-        json.put(TRANSLATED_DESCRIPTION_KEY, getTranslatedDescription());
+        // The locale lookup goes through the component manager, resolve it only once for the term and its parents
+        Locale locale = getCurrentLocale();
+        json.put(TRANSLATED_NAME_KEY, getTranslatedName(locale));
+        json.put(TRANSLATED_DESCRIPTION_KEY, getTranslatedDescription(locale));
         if (this.parents != null && !this.parents.isEmpty()) {
             JSONArray parentsJson = new JSONArray();
             for (VocabularyTerm parent : this.parents) {
                 JSONObject parentJSON = new JSONObject();
                 parentJSON.put(ID_KEY, parent.getId());
                 parentJSON.put(NAME_KEY, parent.getName());
-                parentJSON.put(TRANSLATED_NAME_KEY, parent.getTranslatedName());
+                parentJSON.put(TRANSLATED_NAME_KEY, parent instanceof AbstractSolrVocabularyTerm
+                    ? ((AbstractSolrVocabularyTerm) parent).getTranslatedName(locale) : parent.getTranslatedName());
                 parentsJson.put(parentJSON);
             }
             json.put("parents", parentsJson);
@@ -350,6 +355,54 @@ protected Set<Map.Entry<String, Object>> getEntrySet()
         return result;
     }
 
+    private String getTranslatedName(Locale locale)
+    {
+        return getFirstTranslatedValue(NAME_KEY, locale);
+    }
+
+    private String getTranslatedDescription(Locale locale)
+    {
+        return getFirstTranslatedValue(DESCRIPTION_KEY, locale);
+    }
+
+    private String getFirstTranslatedValue(String property, Locale locale)
+    {
+        Collection<?> translated = getTranslatedValues(property, locale);
+        if (CollectionUtils.isEmpty(translated)) {
+            return null;
+        }
+        return (String) IterableUtils.get(translated, 0);
+    }
+
+    /**
+     * Lists the field name suffixes where translations for the specified locale may be stored, from the most specific
+     * to the least specific one.
+     *
+     * @param locale the target locale
+     * @return a list of suffixes, possibly empty if the locale has no language
+     */
+    private static List<String> getLocaleSuffixes(Locale locale)
+    {
+        List<String> result = LOCALE_SUFFIXES.get(locale);
+        if (result == null) {
+            result = new ArrayList<>(3);
+            if (StringUtils.isNotEmpty(locale.getLanguage())) {
+                result.add('_' + locale.toString());
+                // If the locale has language, country, and variant, try without the variant
+                if (StringUtils.isNoneEmpty(locale.getVariant(), locale.getCountry())) {
+                    result.add('_' + locale.getLanguage() + '_' + locale.getCountry());
+                }
+                // If the locale has language and country, try without the country
+                if (StringUtils.isNotEmpty(locale.getCountry())) {
+                    result.add('_' + locale.getLanguage());
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            LOCALE_SUFFIXES.put(locale, result);
+        }
+        return result;
+    }
+
     private void addAsCorrectType(JSONObject json, String name, Object toAdd)
     {
         if (toAdd instanceof Collection) {
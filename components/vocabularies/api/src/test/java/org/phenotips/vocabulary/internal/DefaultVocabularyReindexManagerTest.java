@@ -0,0 +1,248 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexJob.Phase;
+import org.phenotips.vocabulary.VocabularyReindexJob.Status;
+import org.phenotips.vocabulary.VocabularyReindexManager;
+
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyReindexManager} class.
+ */
+public class DefaultVocabularyReindexManagerTest
+{
+    private static final String HPO = "hpo";
+
+    private static final String OMIM = "omim";
+
+    private static final String URL = "https://example.org/hp.obo";
+
+    @Rule
+    public MockitoComponentMockingRule<VocabularyReindexManager> mocker =
+        new MockitoComponentMockingRule<>(DefaultVocabularyReindexManager.class);
+
+    private VocabularyReindexManager manager;
+
+    private Vocabulary hpo;
+
+    private Vocabulary omim;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.manager = this.mocker.getComponentUnderTest();
+        this.hpo = mock(Vocabulary.class);
+        when(this.hpo.getIdentifier()).thenReturn(HPO);
+        when(this.hpo.size()).thenReturn(100L);
+        this.omim = mock(Vocabulary.class);
+        when(this.omim.getIdentifier()).thenReturn(OMIM);
+    }
+
+    @After
+    public void tearDown()
+    {
+        ((Disposable) this.manager).dispose();
+    }
+
+    @Test
+    public void successfulReindexIsRecorded() throws Exception
+    {
+        when(this.hpo.reindex(URL)).thenReturn(0);
+
+        VocabularyReindexJob job = this.manager.reindex(this.hpo, URL);
+        Assert.assertNotNull(job.getId());
+        Assert.assertEquals(HPO, job.getVocabulary());
+        Assert.assertEquals(URL, job.getSourceUrl());
+        Assert.assertNotNull(job.getSubmitTime());
+        waitFor(job);
+
+        Assert.assertEquals(Status.SUCCEEDED, job.getStatus());
+        Assert.assertEquals(Phase.DONE, job.getPhase());
+        Assert.assertEquals(0, job.getResult());
+        Assert.assertEquals(100, job.getExpectedDocuments());
+        Assert.assertNotNull(job.getStartTime());
+        Assert.assertNotNull(job.getEndTime());
+        Assert.assertEquals(0, job.getEstimatedRemainingTime());
+        Assert.assertSame(job, this.manager.getJob(job.getId()));
+        Assert.assertEquals(1, this.manager.getJobs().size());
+
+        JSONObject json = job.toJSON();
+        Assert.assertEquals("succeeded", json.getString("status"));
+        Assert.assertEquals(0, json.getInt("result"));
+        Assert.assertEquals(URL, json.getString("sourceUrl"));
+    }
+
+    @Test
+    public void failedReindexIsRecorded() throws Exception
+    {
+        when(this.hpo.reindex(null)).thenReturn(2);
+
+        VocabularyReindexJob job = this.manager.reindex(this.hpo, null);
+        waitFor(job);
+
+        Assert.assertEquals(Status.FAILED, job.getStatus());
+        Assert.assertEquals(2, job.getResult());
+        Assert.assertFalse(job.toJSON().has("sourceUrl"));
+    }
+
+    @Test
+    public void unsupportedReindexIsRecorded() throws Exception
+    {
+        when(this.omim.reindex(null)).thenThrow(new UnsupportedOperationException());
+
+        VocabularyReindexJob job = this.manager.reindex(this.omim, null);
+        waitFor(job);
+
+        Assert.assertEquals(Status.FAILED, job.getStatus());
+        Assert.assertEquals(-1, job.getResult());
+        Assert.assertNotNull(job.getError());
+    }
+
+    @Test
+    public void progressIsReportedToTheRunningJob() throws Exception
+    {
+        final long[] seen = new long[4];
+        when(this.hpo.reindex(null)).thenAnswer(invocation -> {
+            VocabularyReindexJob running = this.manager.getJobs().get(0);
+            this.manager.startPhase(Phase.LOADING);
+            this.manager.setExpectedDocuments(10);
+            this.manager.documentsParsed(4);
+            seen[0] = running.getPhase() == Phase.INDEXING ? 1 : 0;
+            this.manager.documentsIndexed(3);
+            seen[1] = running.getParsedDocuments();
+            seen[2] = running.getIndexedDocuments();
+            seen[3] = running.getExpectedDocuments();
+            return 0;
+        });
+
+        waitFor(this.manager.reindex(this.hpo, null));
+
+        Assert.assertArrayEquals(new long[] { 1, 4, 3, 10 }, seen);
+    }
+
+    @Test
+    public void progressReportsOutsideJobsAreIgnored()
+    {
+        this.manager.startPhase(Phase.INDEXING);
+        this.manager.setExpectedDocuments(10);
+        this.manager.documentsParsed(1);
+        this.manager.documentsIndexed(1);
+        this.manager.checkCancelled();
+        Assert.assertTrue(this.manager.getJobs().isEmpty());
+    }
+
+    @Test
+    public void runningJobsCanBeCancelled() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(this.hpo.reindex(null)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            this.manager.checkCancelled();
+            return 0;
+        });
+
+        VocabularyReindexJob job = this.manager.reindex(this.hpo, null);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Status.RUNNING, job.getStatus());
+        Assert.assertTrue(this.manager.cancel(job.getId()));
+        Assert.assertTrue(job.isCancellationRequested());
+        release.countDown();
+        waitFor(job);
+
+        Assert.assertEquals(Status.CANCELLED, job.getStatus());
+        Assert.assertFalse(this.manager.cancel(job.getId()));
+    }
+
+    @Test
+    public void queuedJobsCanBeCancelledAndNeverRun() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(this.hpo.reindex(null)).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        VocabularyReindexJob first = this.manager.reindex(this.hpo, null);
+        VocabularyReindexJob second = this.manager.reindex(this.omim, null);
+        Assert.assertEquals(Status.QUEUED, second.getStatus());
+        Assert.assertTrue(this.manager.cancel(second.getId()));
+        Assert.assertEquals(Status.CANCELLED, second.getStatus());
+        release.countDown();
+        waitFor(first);
+
+        Assert.assertEquals(Status.SUCCEEDED, first.getStatus());
+        verify(this.omim, never()).reindex(null);
+        Assert.assertEquals(second, this.manager.getJobs().get(0));
+    }
+
+    @Test
+    public void activeJobsAreReusedForTheSameVocabulary() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(this.hpo.reindex(null)).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        VocabularyReindexJob first = this.manager.reindex(this.hpo, null);
+        Assert.assertSame(first, this.manager.reindex(this.hpo, URL));
+        release.countDown();
+        waitFor(first);
+
+        Assert.assertNotSame(first, this.manager.reindex(this.hpo, URL));
+    }
+
+    @Test
+    public void unknownJobsAreNotFound()
+    {
+        Assert.assertNull(this.manager.getJob("missing"));
+        Assert.assertFalse(this.manager.cancel("missing"));
+    }
+
+    private void waitFor(VocabularyReindexJob job) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(job.getStatus().isFinished());
+    }
+}
@@ -27,6 +27,9 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -106,6 +109,38 @@ public void testChEBIOntologyVersion() throws SolrServerException, IOException
         Assert.assertEquals("2014:01:01", this.vocabulary.getVersion());
     }
 
+    @Test
+    public void getTermsFetchesManyTermsInChunksWithEnoughRows() throws SolrServerException, IOException
+    {
+        // Behaves like Solr: at most maxBooleanClauses clauses per query, and 10 rows unless asked for more
+        when(this.server.query(any(SolrQuery.class))).then(invocation -> {
+            SolrQuery query = (SolrQuery) invocation.getArguments()[0];
+            String[] ids = query.getQuery().replaceAll("^id:\\(|\\)$", "").trim().split(" ");
+            if (ids.length > 1024) {
+                throw new SolrServerException("too many boolean clauses");
+            }
+            int rows = query.getRows() == null ? 10 : query.getRows();
+            SolrDocumentList results = new SolrDocumentList();
+            for (int i = 0; i < ids.length && i < rows; ++i) {
+                SolrDocument doc = new SolrDocument();
+                doc.addField("id", ids[i].replace("\\", ""));
+                results.add(doc);
+            }
+            QueryResponse response = mock(QueryResponse.class);
+            when(response.getResults()).thenReturn(results);
+            return response;
+        });
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1500; ++i) {
+            ids.add("CHEBI:" + i);
+        }
+
+        Set<VocabularyTerm> result = this.vocabulary.getTerms(ids);
+
+        Assert.assertEquals(1500, result.size());
+        Mockito.verify(this.server, Mockito.times(3)).query(any(SolrQuery.class));
+    }
+
     @Test
     public void testChEBIOntologyDefaultLocation()
     {
@@ -30,6 +30,8 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,12 +43,18 @@
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.common.params.SpellingParams;
 import org.joda.time.DateTime;
@@ -75,58 +83,76 @@ public class GeneNomenclature extends AbstractCSVSolrVocabulary
 
     private static final String ALTERNATIVE_ID_FIELD_NAME = "alt_id";
 
-    private static final Map<String, String> COMMON_SEARCH_OPTIONS;
+    /**
+     * How many results to request, for each symbol that couldn't be resolved from the dictionary; aliases may match
+     * more than one gene, and the best match is picked after the query.
+     */
+    private static final int ROWS_PER_UNRESOLVED_SYMBOL = 5;
+
+    /**
+     * How many boolean clauses to put in a lookup query, well below the {@code maxBooleanClauses} limit of Solr, since
+     * larger queries are rejected; each identifier adds one clause, and each unresolved symbol adds three.
+     */
+    private static final int MAX_CLAUSES_PER_QUERY = 500;
+
+    /** Unresolved symbols are matched against the symbol, the alternative identifiers, and the identifier. */
+    private static final int CLAUSES_PER_UNRESOLVED_SYMBOL = 3;
+
+    /**
+     * Stored fields that may hold the symbol used when looking up a gene: the identifier and approved symbol first,
+     * followed by the fields copied into {@code alt_id}.
+     */
+    private static final String[] LOOKUP_FIELDS = { ID_FIELD_NAME, SYMBOL_FIELD_NAME, "alias_symbol", "prev_symbol",
+        "entrez_id", "ensembl_gene_id", "refseq_accession", "ena" };
+
+    /** How many documents to fetch at once when loading the dictionary from the index. */
+    private static final int DICTIONARY_PAGE_SIZE = 10000;
 
-    private static final Map<String, String> DISMAX_SEARCH_OPTIONS;
+    /** How long to wait after failing to load the dictionary before trying again, in milliseconds. */
+    private static final long RETRY_DELAY = 60 * 1000L;
 
-    private static final Map<String, String> IDENTIFIER_SEARCH_OPTIONS;
+    private static final String ALL_GENES_QUERY = ID_FIELD_NAME + ":HGNC\\:*";
 
-    private static final Map<String, String> TEXT_SEARCH_OPTIONS;
+    private static final Map<String, String> SEARCH_OPTIONS;
 
-    private static final Map<String, String> SPELLCHECKED_TEXT_SEARCH_OPTIONS;
+    private static final Map<String, String> SPELLCHECKED_SEARCH_OPTIONS;
 
     static {
+        String spellcheck = "spellcheck";
+
         Map<String, String> options = new HashMap<>();
         options.put("lowercaseOperators", Boolean.toString(false));
         options.put("defType", "edismax");
-        COMMON_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
-
-        String spellcheck = "spellcheck";
-
-        options = new HashMap<>();
-        options.put(DisMaxParams.QF, "symbol^100 symbolStub^75 "
-            + "alt_id^60 alt_idStub^40 "
+        // Identifier matches are boosted well above name matches, so that they are listed first, followed by genes
+        // matching by name or description
+        options.put(DisMaxParams.QF, "symbol^1000 symbolStub^500 "
+            + "alt_id^400 alt_idStub^200 ensembl_gene_id^800 ensembl_gene_idStub^400 "
             + "name^10 nameSpell^18 nameStub^5 "
             + "synonym^6 synonymSpell^10 synonymStub^3 "
             + "text^1 textSpell^2 textStub^0.5");
         options.put(DisMaxParams.PF, "name^20 nameSpell^36 nameExact^100 namePrefix^30 "
             + "synonym^15 synonymSpell^25 synonymExact^70 synonymPrefix^20 "
             + "text^3 textSpell^5");
-        DISMAX_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
-
-        options = new HashMap<>();
-        options.putAll(COMMON_SEARCH_OPTIONS);
         options.put(spellcheck, Boolean.toString(false));
-        options.put(DisMaxParams.QF,
-            "symbol^50 symbolStub^25 alt_id^20 alt_idStub^10 ensembl_gene_id^40 ensembl_gene_idStub^20");
-        IDENTIFIER_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
+        SEARCH_OPTIONS = Collections.unmodifiableMap(options);
 
-        options = new HashMap<>();
-        options.putAll(COMMON_SEARCH_OPTIONS);
-        options.put(spellcheck, Boolean.toString(false));
-        options.putAll(DISMAX_SEARCH_OPTIONS);
-        TEXT_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
-
-        options = new HashMap<>();
-        options.putAll(COMMON_SEARCH_OPTIONS);
+        options = new HashMap<>(SEARCH_OPTIONS);
         options.put(spellcheck, Boolean.toString(true));
         options.put(SpellingParams.SPELLCHECK_COLLATE, Boolean.toString(true));
         options.put(SpellingParams.SPELLCHECK_COUNT, "100");
         options.put(SpellingParams.SPELLCHECK_MAX_COLLATION_TRIES, "3");
-        options.putAll(DISMAX_SEARCH_OPTIONS);
-        SPELLCHECKED_TEXT_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
+        SPELLCHECKED_SEARCH_OPTIONS = Collections.unmodifiableMap(options);
     }
 
+    /** Resolves symbols and aliases to HGNC identifiers; lazily loaded from the index, replaced when reindexing. */
+    private volatile GeneSymbolDictionary dictionary;
+
+    /** The dictionary built from the data being indexed, activated once the new index is in use. */
+    private volatile GeneSymbolDictionary pendingDictionary;
+
+    /** When loading the dictionary last failed, {@code 0} if it didn't. */
+    private volatile long failedAt;
+
     @Override
     public String getDefaultSourceLocation()
     {
@@ -185,23 +211,8 @@ public VocabularyTerm getTerm(String symbol)
         if (StringUtils.isBlank(symbol)) {
             return null;
         }
-        final String id = StringUtils.contains(symbol, SEPARATOR)
-            ? StringUtils.substringAfter(symbol, SEPARATOR)
-            : symbol;
-        return requestTerm(ClientUtils.escapeQueryChars(id));
-    }
-
-    /**
-     * Access an individual term from the vocabulary, identified by its gene symbol, alternative ID, or HGNC ID.
-     *
-     * @param id the term identifier that is one of the property names: {@code symbol}, {@code alt_id}, {@code id}
-     * @return the requested term, or {@code null} if the term doesn't exist in this vocabulary
-     */
-    private VocabularyTerm requestTerm(final String id)
-    {
-        final String queryStr = String.format("%2$s:%1$s^50 %3$s:%1$s %4$s:HGNC\\:%1$s", id, SYMBOL_FIELD_NAME,
-            ALTERNATIVE_ID_FIELD_NAME, ID_FIELD_NAME);
-        return requestTerm(queryStr, null);
+        Iterator<VocabularyTerm> result = getTerms(Collections.singletonList(symbol)).iterator();
+        return result.hasNext() ? result.next() : null;
     }
 
     private SolrQuery produceDynamicSolrParams(Map<String, String> staticOptions, String originalQuery, Integer rows,
@@ -227,19 +238,18 @@ public List<VocabularyTerm> search(String input, int maxResults, String sort, St
         if (StringUtils.isBlank(input)) {
             return Collections.emptyList();
         }
-        List<VocabularyTerm> result = searchIdentifiers(input, maxResults, sort, customFilter);
-        if (result == null || result.isEmpty()) {
-            result = searchText(input, maxResults, sort, customFilter);
-        }
-        if (result == null || result.isEmpty()) {
-            result = searchTextSpellchecked(input, maxResults, sort, customFilter);
+        List<VocabularyTerm> result = search(SEARCH_OPTIONS, input, maxResults, sort, customFilter);
+        if (result.isEmpty()) {
+            // Spellchecking is costly, and only worth it when the input doesn't match anything as typed
+            result = search(SPELLCHECKED_SEARCH_OPTIONS, input, maxResults, sort, customFilter);
         }
         return result;
     }
 
-    private List<VocabularyTerm> searchIdentifiers(String input, int maxResults, String sort, String customFilter)
+    private List<VocabularyTerm> search(Map<String, String> options, String input, int maxResults, String sort,
+        String customFilter)
     {
-        SolrQuery params = produceDynamicSolrParams(IDENTIFIER_SEARCH_OPTIONS, input, maxResults, sort, customFilter);
+        SolrQuery params = produceDynamicSolrParams(options, input, maxResults, sort, customFilter);
         List<VocabularyTerm> result = new LinkedList<>();
         for (SolrDocument doc : this.search(params)) {
             result.add(new SolrVocabularyTerm(doc, this));
@@ -247,33 +257,75 @@ private List<VocabularyTerm> searchIdentifiers(String input, int maxResults, Str
         return result;
     }
 
-    private List<VocabularyTerm> searchText(String input, int maxResults, String sort, String customFilter)
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Symbols, aliases and identifiers are first resolved to HGNC identifiers using an in-memory dictionary, and the
+     * terms that aren't already cached are fetched together with the symbols that couldn't be resolved, in as few
+     * queries as the limit on the number of boolean clauses allows.
+     * </p>
+     */
+    @Override
+    public Set<VocabularyTerm> getTerms(Collection<String> symbols)
     {
-        SolrQuery params = produceDynamicSolrParams(TEXT_SEARCH_OPTIONS, input, maxResults, sort, customFilter);
-        List<VocabularyTerm> result = new LinkedList<>();
-        for (SolrDocument doc : this.search(params)) {
-            result.add(new SolrVocabularyTerm(doc, this));
+        GeneSymbolDictionary knownSymbols = getDictionary();
+        Map<String, String> resolved = new LinkedHashMap<>();
+        Set<String> unresolved = new LinkedHashSet<>();
+        Map<String, VocabularyTerm> terms = new HashMap<>();
+        for (String symbol : symbols) {
+            if (StringUtils.isBlank(symbol) || resolved.containsKey(symbol)) {
+                continue;
+            }
+            String id = resolveSymbol(knownSymbols, symbol);
+            if (id == null) {
+                unresolved.add(stripPrefix(symbol));
+                continue;
+            }
+            resolved.put(symbol, id);
+            VocabularyTerm cached = getCachedTerm(id);
+            if (cached != null) {
+                terms.put(id, cached);
+            }
         }
-        return result;
-    }
 
-    private List<VocabularyTerm> searchTextSpellchecked(String input, int maxResults, String sort, String customFilter)
-    {
-        SolrQuery params =
-            produceDynamicSolrParams(SPELLCHECKED_TEXT_SEARCH_OPTIONS, input, maxResults, sort, customFilter);
-        List<VocabularyTerm> result = new LinkedList<>();
-        for (SolrDocument doc : this.search(params)) {
-            result.add(new SolrVocabularyTerm(doc, this));
+        Set<String> missingIds = new LinkedHashSet<>(resolved.values());
+        missingIds.removeAll(terms.keySet());
+        List<SolrDocument> fallback = new LinkedList<>();
+        Iterator<String> idsToFetch = missingIds.iterator();
+        Iterator<String> symbolsToFetch = unresolved.iterator();
+        while (idsToFetch.hasNext() || symbolsToFetch.hasNext()) {
+            List<String> ids = new LinkedList<>();
+            List<String> unresolvedSymbols = new LinkedList<>();
+            int clauses = 0;
+            while (idsToFetch.hasNext() && clauses < MAX_CLAUSES_PER_QUERY) {
+                ids.add(idsToFetch.next());
+                ++clauses;
+            }
+            while (symbolsToFetch.hasNext() && clauses + CLAUSES_PER_UNRESOLVED_SYMBOL <= MAX_CLAUSES_PER_QUERY) {
+                unresolvedSymbols.add(symbolsToFetch.next());
+                clauses += CLAUSES_PER_UNRESOLVED_SYMBOL;
+            }
+            SolrQuery query = new SolrQuery(buildLookupQuery(ids, unresolvedSymbols));
+            query.setRows(ids.size() + ROWS_PER_UNRESOLVED_SYMBOL * unresolvedSymbols.size());
+            SolrDocumentList results = this.search(query);
+            if (results != null) {
+                for (SolrDocument doc : results) {
+                    String id = (String) doc.getFieldValue(ID_FIELD_NAME);
+                    if (missingIds.contains(id)) {
+                        terms.put(id, cacheTerm(id, doc));
+                    }
+                    fallback.add(doc);
+                }
+            }
         }
-        return result;
-    }
 
-    @Override
-    public Set<VocabularyTerm> getTerms(Collection<String> symbols)
-    {
         Set<VocabularyTerm> result = new LinkedHashSet<>();
         for (String symbol : symbols) {
-            VocabularyTerm term = getTerm(symbol);
+            if (StringUtils.isBlank(symbol)) {
+                continue;
+            }
+            VocabularyTerm term = resolved.containsKey(symbol) ? terms.get(resolved.get(symbol))
+                : findBestMatch(stripPrefix(symbol), fallback);
             if (term != null) {
                 result.add(term);
             }
@@ -300,6 +352,7 @@ protected Collection<SolrInputDocument> load(URL url)
     {
         try {
             Collection<SolrInputDocument> solrDocuments = new HashSet<>();
+            GeneSymbolDictionary.Builder newDictionary = GeneSymbolDictionary.builder();
 
             Reader in = new InputStreamReader(url.openConnection().getInputStream(), Charset.forName("UTF-8"));
             for (CSVRecord row : CSVFormat.TDF.withHeader().parse(in)) {
@@ -312,8 +365,10 @@ protected Collection<SolrInputDocument> load(URL url)
                     }
                 }
                 solrDocuments.add(crtTerm);
+                newDictionary.add(crtTerm::getFieldValues);
             }
             addMetaInfo(solrDocuments);
+            this.pendingDictionary = newDictionary.build();
             return solrDocuments;
         } catch (IOException ex) {
             this.logger.warn("Failed to read/parse the HGNC source: {}", ex.getMessage());
@@ -321,6 +376,184 @@ protected Collection<SolrInputDocument> load(URL url)
         return null;
     }
 
+    @Override
+    public int reindex(String sourceUrl)
+    {
+        try {
+            int result = super.reindex(sourceUrl);
+            if (result == 0 && this.pendingDictionary != null) {
+                this.dictionary = this.pendingDictionary;
+                this.failedAt = 0;
+            }
+            return result;
+        } finally {
+            this.pendingDictionary = null;
+        }
+    }
+
+    /**
+     * Returns the symbol dictionary, loading it from the index the first time it is needed. If loading fails, an empty
+     * dictionary is used and loading is tried again after a while, so that a temporarily unavailable index doesn't
+     * disable the dictionary for good.
+     *
+     * @return the current dictionary, empty if the index cannot be read
+     */
+    private GeneSymbolDictionary getDictionary()
+    {
+        GeneSymbolDictionary result = this.dictionary;
+        if (result == null) {
+            if (System.currentTimeMillis() - this.failedAt < RETRY_DELAY) {
+                return GeneSymbolDictionary.EMPTY;
+            }
+            synchronized (this) {
+                result = this.dictionary;
+                if (result == null) {
+                    if (System.currentTimeMillis() - this.failedAt < RETRY_DELAY) {
+                        return GeneSymbolDictionary.EMPTY;
+                    }
+                    result = loadDictionary();
+                    if (result == null) {
+                        this.failedAt = System.currentTimeMillis();
+                        return GeneSymbolDictionary.EMPTY;
+                    }
+                    this.dictionary = result;
+                    this.failedAt = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the dictionary from the indexed genes, fetching them a page at a time.
+     *
+     * @return the loaded dictionary, or {@code null} if nothing is indexed yet or the index cannot be read
+     */
+    private GeneSymbolDictionary loadDictionary()
+    {
+        SolrQuery query = new SolrQuery(ALL_GENES_QUERY);
+        query.setFields(ArrayUtils.addAll(GeneSymbolDictionary.PRIMARY_FIELDS,
+            GeneSymbolDictionary.ALTERNATIVE_FIELDS));
+        query.setRows(DICTIONARY_PAGE_SIZE);
+        query.setSort(ID_FIELD_NAME, SolrQuery.ORDER.asc);
+        GeneSymbolDictionary.Builder builder = GeneSymbolDictionary.builder();
+        boolean found = false;
+        String cursor = CursorMarkParams.CURSOR_MARK_START;
+        try {
+            while (true) {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+                QueryResponse response = this.externalServicesAccess.getSolrConnection(this).query(query);
+                SolrDocumentList results = response.getResults();
+                if (results != null) {
+                    for (SolrDocument doc : results) {
+                        builder.add(doc::getFieldValues);
+                        found = true;
+                    }
+                }
+                String next = response.getNextCursorMark();
+                if (next == null || next.equals(cursor)) {
+                    break;
+                }
+                cursor = next;
+            }
+        } catch (SolrServerException | SolrException | IOException ex) {
+            this.logger.warn("Failed to load the HGNC symbols: {}", ex.getMessage());
+            return null;
+        }
+        // Nothing indexed yet; everything is looked up in the index directly until the dictionary can be loaded
+        return found ? builder.build() : null;
+    }
+
+    private String resolveSymbol(GeneSymbolDictionary knownSymbols, String symbol)
+    {
+        String result = knownSymbols.resolve(symbol);
+        if (result == null && StringUtils.contains(symbol, SEPARATOR)) {
+            result = knownSymbols.resolve(StringUtils.substringAfter(symbol, SEPARATOR));
+        }
+        return result;
+    }
+
+    private String stripPrefix(String symbol)
+    {
+        return StringUtils.contains(symbol, SEPARATOR) ? StringUtils.substringAfter(symbol, SEPARATOR).trim()
+            : symbol.trim();
+    }
+
+    /**
+     * Builds a query matching both known HGNC identifiers, and symbols that must be matched against all the
+     * identifier fields.
+     *
+     * @param ids HGNC identifiers, already resolved from the dictionary
+     * @param symbols symbols which couldn't be resolved, without the {@code HGNC:} prefix
+     * @return a Lucene query
+     */
+    private String buildLookupQuery(Collection<String> ids, Collection<String> symbols)
+    {
+        StringBuilder query = new StringBuilder();
+        if (!ids.isEmpty()) {
+            query.append(ID_FIELD_NAME).append(":(");
+            for (String id : ids) {
+                query.append(ClientUtils.escapeQueryChars(id)).append(' ');
+            }
+            // Known genes are ranked first, so that they aren't pushed out of the results by ambiguous symbols
+            query.append(")^100 ");
+        }
+        if (!symbols.isEmpty()) {
+            StringBuilder escapedSymbols = new StringBuilder();
+            StringBuilder prefixedSymbols = new StringBuilder();
+            for (String symbol : symbols) {
+                String escaped = ClientUtils.escapeQueryChars(symbol);
+                escapedSymbols.append(escaped).append(' ');
+                prefixedSymbols.append("HGNC\\:").append(escaped).append(' ');
+            }
+            query.append(String.format("%2$s:(%1$s)^50 %3$s:(%1$s) %4$s:(%5$s)", escapedSymbols,
+                SYMBOL_FIELD_NAME, ALTERNATIVE_ID_FIELD_NAME, ID_FIELD_NAME, prefixedSymbols));
+        }
+        return query.toString();
+    }
+
+    /**
+     * Picks the best gene matching a symbol from the documents returned by a lookup query: approved symbols and
+     * identifiers take precedence over aliases and other identifiers, then the highest scoring document wins.
+     *
+     * @param symbol the symbol to match, without the {@code HGNC:} prefix
+     * @param docs the candidate documents, in the order returned by the query
+     * @return the matching term, or {@code null} if none of the documents match the symbol
+     */
+    private VocabularyTerm findBestMatch(String symbol, List<SolrDocument> docs)
+    {
+        SolrDocument best = null;
+        for (SolrDocument doc : docs) {
+            int matchedField = findMatchingField(symbol, doc);
+            if (matchedField >= 0 && matchedField < GeneSymbolDictionary.PRIMARY_FIELDS.length) {
+                best = doc;
+                break;
+            } else if (matchedField >= 0 && best == null) {
+                best = doc;
+            }
+        }
+        return best == null ? null : cacheTerm((String) best.getFieldValue(ID_FIELD_NAME), best);
+    }
+
+    private int findMatchingField(String symbol, SolrDocument doc)
+    {
+        for (int i = 0; i < LOOKUP_FIELDS.length; ++i) {
+            Collection<Object> values = doc.getFieldValues(LOOKUP_FIELDS[i]);
+            if (values == null) {
+                continue;
+            }
+            for (Object value : values) {
+                String stringValue = String.valueOf(value);
+                if (StringUtils.equalsIgnoreCase(symbol, stringValue)
+                    || i == 0 && StringUtils.equalsIgnoreCase(symbol, StringUtils.substringAfter(stringValue,
+                        SEPARATOR))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
     private void addMetaInfo(Collection<SolrInputDocument> data)
     {
         SolrInputDocument metaTerm = new SolrInputDocument();
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Exact-match dictionary resolving gene symbols, previous symbols, aliases and gene identifiers to HGNC
+ * identifiers, used for looking up genes without querying the index. Matching is case insensitive, like the
+ * {@code symbol} fields in the Solr schema. Instances are immutable and can be shared between threads.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class GeneSymbolDictionary
+{
+    /** The fields holding the HGNC identifier and the approved symbol, which always take precedence. */
+    static final String[] PRIMARY_FIELDS = { "id", "symbol" };
+
+    /**
+     * Alternative identifiers, which may be shared between several genes; only those pointing to a single gene are
+     * kept. The other alternative identifiers indexed in {@code alt_id} are looked up in the index, since they are
+     * too numerous to be worth keeping in memory.
+     */
+    static final String[] ALTERNATIVE_FIELDS = { "alias_symbol", "prev_symbol", "entrez_id", "ensembl_gene_id" };
+
+    /** An empty dictionary, resolving nothing. */
+    static final GeneSymbolDictionary EMPTY = new GeneSymbolDictionary(new HashMap<>());
+
+    private final Map<String, String> identifiers;
+
+    private GeneSymbolDictionary(Map<String, String> identifiers)
+    {
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * Resolves a gene symbol or identifier to an HGNC identifier.
+     *
+     * @param key a gene symbol, alias, previous symbol, HGNC, Entrez or Ensembl identifier, in any case
+     * @return the HGNC identifier of the gene, e.g. {@code HGNC:1100}, or {@code null} if the key is unknown or
+     *         ambiguous
+     */
+    String resolve(String key)
+    {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        return this.identifiers.get(normalize(key));
+    }
+
+    /**
+     * The number of distinct keys known to this dictionary.
+     *
+     * @return a positive number, or {@code 0} for an empty dictionary
+     */
+    int size()
+    {
+        return this.identifiers.size();
+    }
+
+    static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private static String normalize(String key)
+    {
+        return key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Collects the symbols of each gene and builds an immutable dictionary.
+     */
+    static final class Builder
+    {
+        private final Map<String, String> primary = new HashMap<>();
+
+        private final Map<String, String> alternative = new HashMap<>();
+
+        private final Set<String> ambiguous = new HashSet<>();
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Adds the keys of one gene.
+         *
+         * @param fields accessor for the values of a field of the gene document, for example
+         *            {@code doc::getFieldValues}
+         * @return this builder, for chaining
+         */
+        Builder add(Function<String, Collection<Object>> fields)
+        {
+            Collection<Object> ids = fields.apply(PRIMARY_FIELDS[0]);
+            if (ids == null || ids.isEmpty()) {
+                return this;
+            }
+            String id = String.valueOf(ids.iterator().next());
+            for (String field : PRIMARY_FIELDS) {
+                addKeys(fields.apply(field), id, this.primary);
+            }
+            for (String field : ALTERNATIVE_FIELDS) {
+                addKeys(fields.apply(field), id, this.alternative);
+            }
+            return this;
+        }
+
+        GeneSymbolDictionary build()
+        {
+            Map<String, String> result = new HashMap<>(this.alternative);
+            result.keySet().removeAll(this.ambiguous);
+            result.putAll(this.primary);
+            return new GeneSymbolDictionary(result);
+        }
+
+        private void addKeys(Collection<Object> values, String id, Map<String, String> target)
+        {
+            if (values == null) {
+                return;
+            }
+            for (Object value : values) {
+                if (value == null || StringUtils.isBlank(value.toString())) {
+                    continue;
+                }
+                String key = normalize(value.toString());
+                String previous = target.put(key, id);
+                if (target == this.alternative && previous != null && !previous.equals(id)) {
+                    this.ambiguous.add(key);
+                }
+            }
+        }
+    }
+}
@@ -21,12 +21,21 @@
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
 
+import org.xwiki.cache.Cache;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
@@ -36,6 +45,8 @@
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.DisMaxParams;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -44,11 +55,7 @@
 import org.mockito.MockitoAnnotations;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class GeneNomenclatureTest
@@ -74,14 +81,22 @@
 
     private static final String TERM_NAME = "term1_name";
 
-    private static final String SEPARATOR = ":";
-
     private static final String ID_LABEL = "id";
 
     private static final String NAME_LABEL = "name";
 
     private static final int NUM_DOCS = 500000;
 
+    private static final String HGNC_PREFIX = "HGNC:";
+
+    private static final String BRCA1_ID = "1100";
+
+    private static final String BRCA1_HGNC_ID = HGNC_PREFIX + BRCA1_ID;
+
+    private static final String BRCA2_HGNC_ID = "HGNC:1101";
+
+    private static final String ALL_GENES_QUERY = "id:HGNC\\:*";
+
     @Rule
     public final MockitoComponentMockingRule<Vocabulary> mocker =
         new MockitoComponentMockingRule<>(GeneNomenclature.class);
@@ -101,9 +116,16 @@
     @Mock
     private VocabularyTerm term;
 
+    @Mock
+    private Cache<VocabularyTerm> cache;
+
     private GeneNomenclature component;
 
-    private GeneNomenclature componentSpy;
+    private SolrDocument brca1;
+
+    private SolrDocument brca2;
+
+    private List<SolrQuery> queries = new ArrayList<>();
 
     @Before
     public void setUp() throws ComponentLookupException, IOException, SolrServerException
@@ -111,11 +133,11 @@ public void setUp() throws ComponentLookupException, IOException, SolrServerExce
         MockitoAnnotations.initMocks(this);
 
         this.component = (GeneNomenclature) this.mocker.getComponentUnderTest();
-        this.componentSpy = spy(this.component);
 
         final SolrVocabularyResourceManager externalServicesAccess =
             this.mocker.getInstance(SolrVocabularyResourceManager.class);
         when(externalServicesAccess.getSolrConnection(this.component)).thenReturn(this.solrClient);
+        when(externalServicesAccess.getTermCache(this.component)).thenReturn(this.cache);
 
         when(this.solrClient.query(any(SolrQuery.class))).thenReturn(this.response);
         when(this.response.getResults()).thenReturn(this.termList);
@@ -123,7 +145,10 @@ public void setUp() throws ComponentLookupException, IOException, SolrServerExce
         when(this.termDoc.getFieldValues(ID_LABEL)).thenReturn(Collections.singletonList(TERM_ID));
         when(this.termDoc.getFieldValues(NAME_LABEL)).thenReturn(Collections.singletonList(TERM_NAME));
 
-        doReturn(this.term).when(this.componentSpy).requestTerm(anyString(), anyString());
+        this.brca1 = gene(BRCA1_HGNC_ID, "BRCA1");
+        this.brca1.addField("alias_symbol", "RNF53");
+        this.brca2 = gene(BRCA2_HGNC_ID, "BRCA2");
+        this.brca2.addField("prev_symbol", "FANCD1");
     }
 
     @Test
@@ -205,17 +230,219 @@ public void getTermReturnsNullIfNothingFound()
     }
 
     @Test
-    public void getTermRemovesHGNCPrefixFromProvidedIds()
+    public void getTermsResolvesSymbolsAliasesAndIdsFromTheDictionary() throws IOException, SolrServerException
+    {
+        mockIndex(Arrays.asList(this.brca1, this.brca2));
+
+        final Set<VocabularyTerm> result =
+            this.component.getTerms(Arrays.asList("BRCA1", "fancd1", HGNC_PREFIX + BRCA1_ID, "hgnc:1101"));
+
+        Assert.assertEquals(2, result.size());
+        final Iterator<VocabularyTerm> terms = result.iterator();
+        Assert.assertEquals(BRCA1_HGNC_ID, terms.next().getId());
+        Assert.assertEquals(BRCA2_HGNC_ID, terms.next().getId());
+        // One query for loading the dictionary, and a single query for fetching the terms
+        Assert.assertEquals(2, this.queries.size());
+        Assert.assertEquals("id:(HGNC\\:1100 HGNC\\:1101 )^100 ", this.queries.get(1).getQuery());
+    }
+
+    @Test
+    public void getTermsFetchesKnownAndUnknownSymbolsInOneQuery() throws IOException, SolrServerException
+    {
+        final SolrDocument other = gene("HGNC:3", "OTHER");
+        other.addField("ena", "ALIAS9");
+        mockIndex(Arrays.asList(this.brca1, other));
+
+        final Set<VocabularyTerm> result = this.component.getTerms(Arrays.asList("RNF53", "HGNC:ALIAS9"));
+
+        Assert.assertEquals(2, result.size());
+        final Iterator<VocabularyTerm> terms = result.iterator();
+        Assert.assertEquals(BRCA1_HGNC_ID, terms.next().getId());
+        Assert.assertEquals("HGNC:3", terms.next().getId());
+        Assert.assertEquals(2, this.queries.size());
+        Assert.assertEquals("id:(HGNC\\:1100 )^100 symbol:(ALIAS9 )^50 alt_id:(ALIAS9 ) id:(HGNC\\:ALIAS9 )",
+            this.queries.get(1).getQuery());
+    }
+
+    @Test
+    public void getTermsSplitsLargeLookupsIntoSeveralQueries() throws IOException, SolrServerException
+    {
+        final SolrDocumentList all = new SolrDocumentList();
+        final Map<String, SolrDocument> genes = new HashMap<>();
+        final List<String> symbols = new ArrayList<>();
+        for (int i = 0; i < 1900; ++i) {
+            final SolrDocument gene = gene(HGNC_PREFIX + (10000 + i), "GENE" + i);
+            genes.put(HGNC_PREFIX + (10000 + i), gene);
+            genes.put("GENE" + i, gene);
+            symbols.add("GENE" + i);
+            // The last genes were added after the dictionary was loaded, and must be looked up by symbol
+            if (i < 1500) {
+                all.add(gene);
+            }
+        }
+        all.setNumFound(all.size());
+        when(this.solrClient.query(any(SolrQuery.class))).then(invocation -> {
+            final SolrQuery query = (SolrQuery) invocation.getArguments()[0];
+            this.queries.add(query.getCopy());
+            final SolrDocumentList results = new SolrDocumentList();
+            if (ALL_GENES_QUERY.equals(query.getQuery())) {
+                results.addAll(all);
+            } else {
+                final String[] clauses = StringUtils.split(query.getQuery());
+                // Like Solr, reject queries with more than maxBooleanClauses clauses
+                if (clauses.length > 1024) {
+                    throw new SolrServerException("Too many boolean clauses");
+                }
+                final Set<SolrDocument> found = new LinkedHashSet<>();
+                for (final String clause : clauses) {
+                    final String value = clause.contains("(") ? StringUtils.substringAfter(clause, "(") : clause;
+                    final SolrDocument gene = genes.get(StringUtils.remove(value, '\\'));
+                    if (gene != null) {
+                        found.add(gene);
+                    }
+                }
+                // Like Solr, only return as many documents as requested
+                for (final SolrDocument gene : found) {
+                    if (results.size() < query.getRows()) {
+                        results.add(gene);
+                    }
+                }
+            }
+            results.setNumFound(results.size());
+            final QueryResponse result = mock(QueryResponse.class);
+            when(result.getResults()).thenReturn(results);
+            return result;
+        });
+
+        final Set<VocabularyTerm> result = this.component.getTerms(symbols);
+
+        Assert.assertEquals(1900, result.size());
+        Assert.assertEquals("HGNC:11899", new ArrayList<>(result).get(1899).getId());
+        // Dictionary loading, then 3 queries for the known genes and 3 for the unresolved symbols
+        Assert.assertEquals(7, this.queries.size());
+    }
+
+    @Test
+    public void getTermsUsesCachedTermsWithoutQuerying() throws IOException, SolrServerException
+    {
+        mockIndex(Collections.emptyList());
+        when(this.cache.get(BRCA1_HGNC_ID)).thenReturn(this.term);
+
+        final Set<VocabularyTerm> result = this.component.getTerms(Collections.singletonList("brca1"));
+
+        Assert.assertEquals(Collections.singleton(this.term), result);
+        Assert.assertEquals(1, this.queries.size());
+    }
+
+    @Test
+    public void getTermsPrefersApprovedSymbolsForUnresolvedSymbols() throws IOException, SolrServerException
     {
-        Assert.assertEquals(this.term, this.componentSpy.getTerm(TERM_PREFIX + SEPARATOR + TERM_ID));
-        verify(this.componentSpy, times(1)).requestTerm(QUERY_STRING, null);
+        final SolrDocument withAlias = gene("HGNC:4", "GENE4");
+        withAlias.addField("alias_symbol", "ABC");
+        final SolrDocument withSymbol = gene("HGNC:5", "ABC");
+        mockIndex(Arrays.asList(withAlias, withSymbol));
+
+        Assert.assertEquals("HGNC:5", this.component.getTerm("abc").getId());
+    }
+
+    @Test
+    public void getTermDoesNotResolveAmbiguousAliasesFromTheDictionary() throws IOException, SolrServerException
+    {
+        this.brca2.addField("alias_symbol", "RNF53");
+        mockIndex(Collections.singletonList(this.brca2));
+
+        Assert.assertEquals(BRCA2_HGNC_ID, this.component.getTerm("RNF53").getId());
+        Assert.assertEquals(2, this.queries.size());
+        Assert.assertTrue(this.queries.get(1).getQuery().startsWith("symbol:(RNF53 )^50"));
+    }
+
+    @Test
+    public void theDictionaryIsLoadedOnePageAtATime() throws IOException, SolrServerException
+    {
+        when(this.solrClient.query(any(SolrQuery.class))).then(invocation -> {
+            final SolrQuery query = (SolrQuery) invocation.getArguments()[0];
+            this.queries.add(query.getCopy());
+            final String cursor = query.get(CursorMarkParams.CURSOR_MARK_PARAM);
+            final SolrDocumentList results = new SolrDocumentList();
+            final QueryResponse result = mock(QueryResponse.class);
+            if (!ALL_GENES_QUERY.equals(query.getQuery())) {
+                when(result.getResults()).thenReturn(results);
+            } else if (CursorMarkParams.CURSOR_MARK_START.equals(cursor)) {
+                results.add(this.brca1);
+                when(result.getResults()).thenReturn(results);
+                when(result.getNextCursorMark()).thenReturn("page2");
+            } else {
+                results.add(this.brca2);
+                when(result.getResults()).thenReturn(results);
+                when(result.getNextCursorMark()).thenReturn("page2");
+            }
+            return result;
+        });
+        when(this.cache.get(BRCA2_HGNC_ID)).thenReturn(this.term);
+
+        Assert.assertSame(this.term, this.component.getTerm("fancd1"));
+        Assert.assertEquals(2, this.queries.size());
+        Assert.assertEquals(CursorMarkParams.CURSOR_MARK_START,
+            this.queries.get(0).get(CursorMarkParams.CURSOR_MARK_PARAM));
+        Assert.assertEquals("page2", this.queries.get(1).get(CursorMarkParams.CURSOR_MARK_PARAM));
+        Assert.assertTrue(this.queries.get(0).getRows() < NUM_DOCS);
+    }
+
+    @Test
+    public void failedDictionaryLoadsAreRetriedLater() throws IOException, SolrServerException
+    {
+        when(this.solrClient.query(any(SolrQuery.class))).then(invocation -> {
+            final SolrQuery query = (SolrQuery) invocation.getArguments()[0];
+            this.queries.add(query.getCopy());
+            throw new SolrServerException("Index unavailable");
+        });
+
+        Assert.assertNull(this.component.getTerm("BRCA1"));
+        Assert.assertNull(this.component.getTerm("BRCA2"));
+
+        // Only the first lookup tried to load the dictionary, the others went straight to the index
+        Assert.assertEquals(3, this.queries.size());
+        Assert.assertEquals(ALL_GENES_QUERY, this.queries.get(0).getQuery());
+        Assert.assertNotEquals(ALL_GENES_QUERY, this.queries.get(1).getQuery());
+        Assert.assertNotEquals(ALL_GENES_QUERY, this.queries.get(2).getQuery());
+
+        // Once the delay has passed, loading the dictionary is tried again
+        ReflectionUtils.setFieldValue(this.component, "failedAt", 1L);
+        mockIndex(Collections.emptyList());
+        when(this.cache.get(BRCA1_HGNC_ID)).thenReturn(this.term);
+        this.queries.clear();
+
+        Assert.assertSame(this.term, this.component.getTerm("BRCA1"));
+        Assert.assertEquals(1, this.queries.size());
+        Assert.assertEquals(ALL_GENES_QUERY, this.queries.get(0).getQuery());
     }
 
     @Test
-    public void getTermDoesNotChangeIdWhenItHasNoPrefix()
+    public void searchIssuesASingleQuery() throws IOException, SolrServerException
     {
-        Assert.assertEquals(this.term, this.componentSpy.getTerm(TERM_ID));
-        verify(this.componentSpy, times(1)).requestTerm(QUERY_STRING, null);
+        mockIndex(Arrays.asList(this.brca1, this.brca2));
+
+        final List<VocabularyTerm> result = this.component.search("BRCA", 10, null, null);
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(1, this.queries.size());
+        Assert.assertTrue(this.queries.get(0).get(DisMaxParams.QF).contains("symbol^1000"));
+        Assert.assertTrue(this.queries.get(0).get(DisMaxParams.QF).contains("name^10"));
+        Assert.assertFalse(this.queries.get(0).getBool("spellcheck"));
+    }
+
+    @Test
+    public void searchIsSpellcheckedOnlyWithoutResults() throws IOException, SolrServerException
+    {
+        mockIndex(Collections.emptyList());
+
+        final List<VocabularyTerm> result = this.component.search("BRAC", 10, null, null);
+
+        Assert.assertTrue(result.isEmpty());
+        Assert.assertEquals(2, this.queries.size());
+        Assert.assertFalse(this.queries.get(0).getBool("spellcheck"));
+        Assert.assertTrue(this.queries.get(1).getBool("spellcheck"));
+        Assert.assertEquals(this.queries.get(0).get(DisMaxParams.QF), this.queries.get(1).get(DisMaxParams.QF));
     }
 
     @Test
@@ -239,4 +466,31 @@ public void requestTermBehavesAsExpected()
         Assert.assertEquals(TERM_ID, result.getId());
         Assert.assertEquals(TERM_NAME, result.getName());
     }
+
+    private void mockIndex(final List<SolrDocument> lookupResults) throws IOException, SolrServerException
+    {
+        final SolrDocumentList all = new SolrDocumentList();
+        all.add(this.brca1);
+        all.add(this.brca2);
+        all.setNumFound(all.size());
+        final SolrDocumentList lookup = new SolrDocumentList();
+        lookup.addAll(lookupResults);
+        lookup.setNumFound(lookup.size());
+
+        when(this.solrClient.query(any(SolrQuery.class))).then(invocation -> {
+            final SolrQuery query = (SolrQuery) invocation.getArguments()[0];
+            this.queries.add(query.getCopy());
+            final QueryResponse result = mock(QueryResponse.class);
+            when(result.getResults()).thenReturn(ALL_GENES_QUERY.equals(query.getQuery()) ? all : lookup);
+            return result;
+        });
+    }
+
+    private SolrDocument gene(final String id, final String symbol)
+    {
+        final SolrDocument result = new SolrDocument();
+        result.addField(ID_LABEL, id);
+        result.addField("symbol", symbol);
+        return result;
+    }
 }
@@ -19,6 +19,7 @@
 
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyExtension;
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.cache.Cache;
@@ -48,7 +49,9 @@
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -98,6 +101,28 @@ public void testHumanPhenotypeOntologyReindex()
         Assert.assertTrue(this.ontologyServiceResult == 0);
     }
 
+    @Test
+    public void extensionsAreToldWhetherTheReindexSucceeded() throws Exception
+    {
+        VocabularyExtension extension = mock(VocabularyExtension.class);
+        when(extension.isVocabularySupported(this.vocabulary)).thenReturn(true);
+        this.mocker.registerComponent(VocabularyExtension.class, "test", extension);
+
+        Assert.assertEquals(0, this.vocabulary.reindex(this.getClass().getResource("/hpo-test.obo").toString()));
+        verify(extension).indexingStarted(this.vocabulary);
+        verify(extension).indexingEnded(this.vocabulary);
+        verify(extension, never()).indexingCancelled(this.vocabulary);
+
+        Mockito.reset(extension);
+        when(extension.isVocabularySupported(this.vocabulary)).thenReturn(true);
+        doThrow(new SolrServerException("Failed")).when(this.server)
+            .add(Matchers.anyCollectionOf(SolrInputDocument.class));
+        Assert.assertEquals(1, this.vocabulary.reindex(this.getClass().getResource("/hpo-test.obo").toString()));
+        verify(extension).indexingStarted(this.vocabulary);
+        verify(extension).indexingCancelled(this.vocabulary);
+        verify(extension, never()).indexingEnded(this.vocabulary);
+    }
+
     @Test
     public void testHumanPhenotypeOntologyVersion() throws SolrServerException, IOException
     {
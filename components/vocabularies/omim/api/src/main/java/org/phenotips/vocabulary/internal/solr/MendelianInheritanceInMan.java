@@ -22,38 +22,30 @@
 
 import org.xwiki.component.annotation.Component;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.ORDER;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.DisMaxParams;
 import org.apache.solr.common.params.SpellingParams;
-import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 
 /**
  * Provides access to the Online Mendelian Inheritance in Man (OMIM) vocabulary. The vocabulary prefix is {@code MIM}.
@@ -91,58 +83,6 @@ public class MendelianInheritanceInMan extends AbstractCSVSolrVocabulary
     private static final String GENEREVIEWS_MAPPING_URL =
         "ftp://ftp.ncbi.nih.gov/pub/GeneReviews/NBKid_shortname_OMIM.txt";
 
-    private static final String ENCODING = "UTF-8";
-
-    private static final String ID_FIELD = "id";
-
-    private static final String SYMBOL_FIELD = "symbol";
-
-    private static final String TYPE_FIELD = "type";
-
-    private static final String NAME_FIELD = "name";
-
-    private static final String SHORT_NAME_FIELD = "short_name";
-
-    private static final String SYNONYM_FIELD = "synonym";
-
-    private static final String INCLUDED_NAME_FIELD = "included_name";
-
-    private static final String GENE_FIELD = "GENE";
-
-    private static final String TITLE_SEPARATOR = ";";
-
-    private static final String LIST_SEPARATOR = ";;";
-
-    /** The map of symbols preceding a MIM number to their symbolic representations. */
-    private static final Map<String, String> SYMBOLS;
-
-    /** The map of symbols preceding a MIM number to their corresponding types. */
-    private static final Map<String, String[]> TYPES;
-
-    private Map<String, SolrInputDocument> data = new HashMap<>();
-
-    static {
-        Map<String, String> symbols = new HashMap<>();
-        Map<String, String[]> types = new HashMap<>();
-        symbols.put("NULL", "");
-        types.put("NULL", new String[] { "disorder" });
-
-        symbols.put("Asterisk", "*");
-        types.put("Asterisk", new String[] { "gene" });
-
-        symbols.put("Number Sign", "#");
-        types.put("Number Sign", new String[] { "disorder" });
-
-        symbols.put("Plus", "+");
-        types.put("Plus", new String[] { "gene", "disorder" });
-
-        symbols.put("Percent", "%");
-        types.put("Percent", new String[] { "disorder" });
-
-        SYMBOLS = Collections.unmodifiableMap(symbols);
-        TYPES = Collections.unmodifiableMap(types);
-    }
-
     @Inject
     @Named("hpo")
     private Vocabulary hpo;
@@ -156,7 +96,7 @@ public String getDefaultSourceLocation()
     @Override
     protected int getSolrDocsPerBatch()
     {
-        return 500000;
+        return 10000;
     }
 
     @Override
@@ -222,14 +162,68 @@ public String getCitation()
             + " Johns Hopkins University (Baltimore, MD)";
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The titles source is streamed and joined with the gene and GeneReviews mappings, and the finished documents are
+     * extended and sent to the index in batches, so that the whole vocabulary is never held in memory.
+     * </p>
+     */
+    @Override
+    protected int index(String sourceUrl)
+    {
+        OmimIndexBuilder builder;
+        try {
+            builder = createBuilder(new URL(StringUtils.defaultIfBlank(sourceUrl, getDefaultSourceLocation())));
+        } catch (MalformedURLException ex) {
+            return 2;
+        }
+        try {
+            boolean built = builder.build(getSolrDocsPerBatch(), batch -> {
+                for (SolrInputDocument doc : batch) {
+                    extendTerm(new SolrVocabularyInputTerm(doc, this));
+                }
+                commitTerms(batch);
+            });
+            return built ? 0 : 2;
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to index vocabulary: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Failed to communicate with the Solr server while indexing vocabulary: {}",
+                ex.getMessage());
+        } catch (OutOfMemoryError ex) {
+            this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        }
+        return 1;
+    }
+
     @Override
     protected Collection<SolrInputDocument> load(URL url)
     {
-        parseOmimData(url);
-        loadGenes();
-        loadGeneReviews();
-        loadVersion();
-        return this.data.values();
+        Collection<SolrInputDocument> result = new LinkedList<>();
+        try {
+            return createBuilder(url).build(-1, result::addAll) ? result : null;
+        } catch (SolrServerException | IOException ex) {
+            // Not thrown by the collecting consumer
+            return null;
+        }
+    }
+
+    private OmimIndexBuilder createBuilder(URL titlesSource)
+    {
+        return new OmimIndexBuilder(titlesSource, getAuxiliarySource(GENE_ANNOTATIONS_URL),
+            getAuxiliarySource(GENEREVIEWS_MAPPING_URL), this.logger);
+    }
+
+    private URL getAuxiliarySource(String defaultLocation)
+    {
+        String location = this.relocationService.getRelocation(defaultLocation);
+        try {
+            return new URL(StringUtils.defaultIfBlank(location, defaultLocation));
+        } catch (MalformedURLException ex) {
+            this.logger.error("Invalid OMIM auxiliary source [{}]: {}", location, ex.getMessage());
+            return null;
+        }
     }
 
     @Override
@@ -310,117 +304,4 @@ private SolrQuery addDynamicQueryParameters(String originalQuery, Integer rows,
         }
         return query;
     }
-
-    private void parseOmimData(URL sourceUrl)
-    {
-        try {
-            Reader in =
-                new InputStreamReader(sourceUrl.openConnection().getInputStream(),
-                    Charset.forName(ENCODING));
-            for (CSVRecord row : CSVFormat.TDF.withCommentMarker('#').parse(in)) {
-                // Ignore moved or removed entries
-                if ("Caret".equals(row.get(0))) {
-                    continue;
-                }
-
-                SolrInputDocument crtTerm = new SolrInputDocument();
-                // set id
-                addFieldValue(ID_FIELD, row.get(1), crtTerm);
-
-                // set symbol
-                addFieldValue(SYMBOL_FIELD, SYMBOLS.get(row.get(0)), crtTerm);
-                // set type (multivalued)
-                for (String type : TYPES.get(row.get(0))) {
-                    addFieldValue(TYPE_FIELD, type, crtTerm);
-                }
-                // set name
-                String name = StringUtils.substringBefore(row.get(2), TITLE_SEPARATOR).trim();
-                addFieldValue(NAME_FIELD, name, crtTerm);
-                // set short name
-                String shortNameString = StringUtils.substringAfter(row.get(2), TITLE_SEPARATOR).trim();
-                String[] shortNames = StringUtils.split(shortNameString, TITLE_SEPARATOR);
-                for (String shortName : shortNames) {
-                    addFieldValue(SHORT_NAME_FIELD, shortName.trim(), crtTerm);
-                }
-
-                // set synonyms
-                setListFieldValue(SYNONYM_FIELD, row.get(3), crtTerm);
-                // set included name
-                setListFieldValue(INCLUDED_NAME_FIELD, row.get(4), crtTerm);
-
-                this.data.put(String.valueOf(crtTerm.get(ID_FIELD).getFirstValue()), crtTerm);
-            }
-        } catch (IOException ex) {
-            this.logger.warn("Failed to read/parse the OMIM source: {}", ex.getMessage());
-        }
-    }
-
-    private void setListFieldValue(String targetField, String value, SolrInputDocument doc)
-    {
-        if (StringUtils.isNotBlank(value)) {
-            String[] items = StringUtils.split(value, LIST_SEPARATOR);
-            for (String item : items) {
-                addFieldValue(targetField, item.replaceAll(", INCLUDED$", "").trim(), doc);
-            }
-        }
-    }
-
-    private void addFieldValue(String targetField, String value, SolrInputDocument doc)
-    {
-        if (StringUtils.isNotBlank(value)) {
-            doc.addField(targetField, value);
-        }
-    }
-
-    private void loadGenes()
-    {
-        try (BufferedReader in =
-            new BufferedReader(
-                new InputStreamReader(new URL(this.relocationService.getRelocation(GENE_ANNOTATIONS_URL))
-                    .openConnection().getInputStream(), ENCODING))) {
-            for (CSVRecord row : CSVFormat.TDF.withCommentMarker('#').parse(in)) {
-                SolrInputDocument term = this.data.get(row.get(0).trim());
-                if (term != null) {
-                    String gs = row.get(3).trim();
-                    if (StringUtils.isNotBlank(gs)) {
-                        term.addField(GENE_FIELD, gs);
-                    }
-                    String eidLine = row.get(4).trim();
-                    if (StringUtils.isNotBlank(eidLine)) {
-                        String[] eids = StringUtils.split(eidLine, ",");
-                        for (String eid : eids) {
-                            term.addField(GENE_FIELD, eid.trim());
-                        }
-                    }
-                }
-            }
-        } catch (IOException ex) {
-            this.logger.error("Failed to load OMIM-Gene links: {}", ex.getMessage(), ex);
-        }
-    }
-
-    private void loadGeneReviews()
-    {
-        try (BufferedReader in =
-            new BufferedReader(
-                new InputStreamReader(new URL(this.relocationService.getRelocation(GENEREVIEWS_MAPPING_URL))
-                    .openConnection().getInputStream(), ENCODING))) {
-            for (CSVRecord row : CSVFormat.TDF.withHeader().parse(in)) {
-                SolrInputDocument term = this.data.get(row.get(2));
-                if (term != null) {
-                    term.setField("gene_reviews_link", "https://www.ncbi.nlm.nih.gov/books/" + row.get(0));
-                }
-            }
-        } catch (IOException ex) {
-            this.logger.error("Failed to load OMIM-GeneReviews links: {}", ex.getMessage(), ex);
-        }
-    }
-
-    private void loadVersion()
-    {
-        SolrInputDocument metaTerm = new SolrInputDocument();
-        metaTerm.addField(ID_FIELD, "HEADER_INFO");
-        metaTerm.addField("version", ISODateTimeFormat.dateTime().withZoneUTC().print(new DateTime()));
-        this.data.put("VERSION", metaTerm);
-    }
 }
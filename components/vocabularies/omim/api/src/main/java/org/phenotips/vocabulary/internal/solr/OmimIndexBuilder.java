@@ -0,0 +1,313 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+
+/**
+ * Builds the OMIM index documents by joining the OMIM titles with the gene and GeneReviews mappings. The titles, which
+ * hold the bulk of the data, are streamed: each entry is completed with its gene and GeneReviews links as soon as it is
+ * read, and handed over in batches of bounded size, so only one batch of documents is kept in memory at a time. The
+ * much smaller mapping sources are indexed by MIM number for the duration of the build. Nothing is kept once
+ * {@link #build} returns. All sources are read from URLs, which may point to local files.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+final class OmimIndexBuilder
+{
+    /** Receives batches of finished documents. */
+    @FunctionalInterface
+    interface BatchConsumer
+    {
+        /**
+         * Processes a batch of documents; the batch is not reused after this call.
+         *
+         * @param batch the finished documents
+         * @throws SolrServerException if sending the documents to the index fails
+         * @throws IOException if communicating with the index fails
+         */
+        void accept(List<SolrInputDocument> batch) throws SolrServerException, IOException;
+    }
+
+    private static final String ID_FIELD = "id";
+
+    private static final String SYMBOL_FIELD = "symbol";
+
+    private static final String TYPE_FIELD = "type";
+
+    private static final String NAME_FIELD = "name";
+
+    private static final String SHORT_NAME_FIELD = "short_name";
+
+    private static final String SYNONYM_FIELD = "synonym";
+
+    private static final String INCLUDED_NAME_FIELD = "included_name";
+
+    private static final String GENE_FIELD = "GENE";
+
+    private static final String GENE_REVIEWS_FIELD = "gene_reviews_link";
+
+    private static final String GENE_REVIEWS_BASE_URL = "https://www.ncbi.nlm.nih.gov/books/";
+
+    private static final String TITLE_SEPARATOR = ";";
+
+    private static final String LIST_SEPARATOR = ";;";
+
+    /** The map of symbols preceding a MIM number to their symbolic representations. */
+    private static final Map<String, String> SYMBOLS;
+
+    /** The map of symbols preceding a MIM number to their corresponding types. */
+    private static final Map<String, String[]> TYPES;
+
+    static {
+        Map<String, String> symbols = new HashMap<>();
+        Map<String, String[]> types = new HashMap<>();
+        symbols.put("NULL", "");
+        types.put("NULL", new String[] { "disorder" });
+
+        symbols.put("Asterisk", "*");
+        types.put("Asterisk", new String[] { "gene" });
+
+        symbols.put("Number Sign", "#");
+        types.put("Number Sign", new String[] { "disorder" });
+
+        symbols.put("Plus", "+");
+        types.put("Plus", new String[] { "gene", "disorder" });
+
+        symbols.put("Percent", "%");
+        types.put("Percent", new String[] { "disorder" });
+
+        SYMBOLS = Collections.unmodifiableMap(symbols);
+        TYPES = Collections.unmodifiableMap(types);
+    }
+
+    private final URL titlesSource;
+
+    private final URL genesSource;
+
+    private final URL geneReviewsSource;
+
+    private final Logger logger;
+
+    /**
+     * Simple constructor passing all the sources to join.
+     *
+     * @param titlesSource the {@code mimTitles.txt} source, mandatory
+     * @param genesSource the {@code mim2gene.txt} source, may be {@code null}, in which case genes are not linked
+     * @param geneReviewsSource the GeneReviews to OMIM mapping source, may be {@code null}, in which case GeneReviews
+     *            are not linked
+     * @param logger the logger to report problems to
+     */
+    OmimIndexBuilder(URL titlesSource, URL genesSource, URL geneReviewsSource, Logger logger)
+    {
+        this.titlesSource = titlesSource;
+        this.genesSource = genesSource;
+        this.geneReviewsSource = geneReviewsSource;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads all the sources and sends the resulting documents, in the order of the titles source, followed by a
+     * header document holding the index version.
+     *
+     * @param batchSize the maximum number of documents in a batch
+     * @param consumer receives the batches of documents
+     * @return {@code true} if the titles source was processed completely, {@code false} if it could not be read, in
+     *         which case the documents already sent should be discarded
+     * @throws SolrServerException if the consumer fails to index a batch
+     * @throws IOException if the consumer fails to communicate with the index
+     */
+    boolean build(int batchSize, BatchConsumer consumer) throws SolrServerException, IOException
+    {
+        Map<String, List<String>> genes = loadGenes();
+        Map<String, String> geneReviews = loadGeneReviews();
+        int limit = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+        List<SolrInputDocument> batch = new ArrayList<>(Math.min(limit, 1000));
+        CSVParser titles;
+        try {
+            titles = CSVFormat.TDF.withCommentMarker('#')
+                .parse(new InputStreamReader(this.titlesSource.openStream(), StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            this.logger.warn("Failed to read the OMIM source: {}", ex.getMessage());
+            return false;
+        }
+        try (CSVParser parser = titles) {
+            for (CSVRecord row : parser) {
+                SolrInputDocument term = parseTitle(row);
+                if (term == null) {
+                    continue;
+                }
+                String id = String.valueOf(term.getFieldValue(ID_FIELD));
+                for (String gene : genes.getOrDefault(id, Collections.emptyList())) {
+                    term.addField(GENE_FIELD, gene);
+                }
+                String geneReview = geneReviews.get(id);
+                if (geneReview != null) {
+                    term.setField(GENE_REVIEWS_FIELD, GENE_REVIEWS_BASE_URL + geneReview);
+                }
+                batch.add(term);
+                if (batch.size() >= limit) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(Math.min(limit, 1000));
+                }
+            }
+        } catch (IllegalStateException ex) {
+            // The CSV parser wraps read errors in IllegalStateException while iterating
+            this.logger.warn("Failed to read/parse the OMIM source: {}", ex.getMessage());
+            return false;
+        }
+        batch.add(createVersion());
+        consumer.accept(batch);
+        return true;
+    }
+
+    private SolrInputDocument parseTitle(CSVRecord row)
+    {
+        // Ignore moved or removed entries
+        if (row.size() < 3 || "Caret".equals(row.get(0)) || !TYPES.containsKey(row.get(0))) {
+            return null;
+        }
+
+        SolrInputDocument term = new SolrInputDocument();
+        addFieldValue(ID_FIELD, row.get(1), term);
+        if (term.getFieldValue(ID_FIELD) == null) {
+            return null;
+        }
+        addFieldValue(SYMBOL_FIELD, SYMBOLS.get(row.get(0)), term);
+        for (String type : TYPES.get(row.get(0))) {
+            addFieldValue(TYPE_FIELD, type, term);
+        }
+        String name = StringUtils.substringBefore(row.get(2), TITLE_SEPARATOR).trim();
+        addFieldValue(NAME_FIELD, name, term);
+        String shortNameString = StringUtils.substringAfter(row.get(2), TITLE_SEPARATOR).trim();
+        for (String shortName : StringUtils.split(shortNameString, TITLE_SEPARATOR)) {
+            addFieldValue(SHORT_NAME_FIELD, shortName.trim(), term);
+        }
+        setListFieldValue(SYNONYM_FIELD, getColumn(row, 3), term);
+        setListFieldValue(INCLUDED_NAME_FIELD, getColumn(row, 4), term);
+        return term;
+    }
+
+    /**
+     * Reads the gene symbols and identifiers associated with each MIM number.
+     *
+     * @return a map from MIM numbers to gene symbols and identifiers, empty if the source cannot be read
+     */
+    private Map<String, List<String>> loadGenes()
+    {
+        Map<String, List<String>> result = new HashMap<>();
+        if (this.genesSource == null) {
+            return result;
+        }
+        try (Reader in = new InputStreamReader(this.genesSource.openStream(), StandardCharsets.UTF_8);
+            CSVParser parser = CSVFormat.TDF.withCommentMarker('#').parse(in)) {
+            for (CSVRecord row : parser) {
+                List<String> geneIds = new LinkedList<>();
+                String symbol = getColumn(row, 3).trim();
+                if (StringUtils.isNotBlank(symbol)) {
+                    geneIds.add(symbol);
+                }
+                for (String id : StringUtils.split(getColumn(row, 4), ',')) {
+                    if (StringUtils.isNotBlank(id)) {
+                        geneIds.add(id.trim());
+                    }
+                }
+                if (!geneIds.isEmpty()) {
+                    result.computeIfAbsent(row.get(0).trim(), k -> new LinkedList<>()).addAll(geneIds);
+                }
+            }
+        } catch (IOException | IllegalStateException ex) {
+            this.logger.error("Failed to load OMIM-Gene links: {}", ex.getMessage(), ex);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the GeneReviews book identifiers associated with each MIM number.
+     *
+     * @return a map from MIM numbers to GeneReviews book identifiers, empty if the source cannot be read
+     */
+    private Map<String, String> loadGeneReviews()
+    {
+        Map<String, String> result = new HashMap<>();
+        if (this.geneReviewsSource == null) {
+            return result;
+        }
+        try (Reader in = new InputStreamReader(this.geneReviewsSource.openStream(), StandardCharsets.UTF_8);
+            CSVParser parser = CSVFormat.TDF.withHeader().parse(in)) {
+            for (CSVRecord row : parser) {
+                if (row.size() > 2) {
+                    result.put(row.get(2).trim(), row.get(0).trim());
+                }
+            }
+        } catch (IOException | IllegalStateException ex) {
+            this.logger.error("Failed to load OMIM-GeneReviews links: {}", ex.getMessage(), ex);
+        }
+        return result;
+    }
+
+    private SolrInputDocument createVersion()
+    {
+        SolrInputDocument metaTerm = new SolrInputDocument();
+        metaTerm.addField(ID_FIELD, "HEADER_INFO");
+        metaTerm.addField("version", ISODateTimeFormat.dateTime().withZoneUTC().print(new DateTime()));
+        return metaTerm;
+    }
+
+    private String getColumn(CSVRecord row, int column)
+    {
+        return row.size() > column ? row.get(column) : StringUtils.EMPTY;
+    }
+
+    private void setListFieldValue(String targetField, String value, SolrInputDocument doc)
+    {
+        if (StringUtils.isNotBlank(value)) {
+            for (String item : StringUtils.split(value, LIST_SEPARATOR)) {
+                addFieldValue(targetField, item.replaceAll(", INCLUDED$", "").trim(), doc);
+            }
+        }
+    }
+
+    private void addFieldValue(String targetField, String value, SolrInputDocument doc)
+    {
+        if (StringUtils.isNotBlank(value)) {
+            doc.addField(targetField, value);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularySourceRelocationService;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the OMIM implementation of the {@link Vocabulary}, {@link MendelianInheritanceInMan}.
+ */
+public class MendelianInheritanceInManTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<Vocabulary> mocker =
+        new MockitoComponentMockingRule<>(MendelianInheritanceInMan.class);
+
+    private Cache<VocabularyTerm> cache;
+
+    private SolrClient server;
+
+    private Vocabulary vocabulary;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        this.cache = mock(Cache.class);
+        this.vocabulary = this.mocker.getComponentUnderTest();
+        SolrVocabularyResourceManager externalServicesAccess =
+            this.mocker.getInstance(SolrVocabularyResourceManager.class);
+        when(externalServicesAccess.getTermCache(this.vocabulary)).thenReturn(this.cache);
+        this.server = mock(SolrClient.class);
+        when(externalServicesAccess.getReplacementSolrConnection(this.vocabulary)).thenReturn(this.server);
+        when(externalServicesAccess.getSolrConnection(this.vocabulary)).thenReturn(this.server);
+
+        VocabularySourceRelocationService relocation = this.mocker.getInstance(VocabularySourceRelocationService.class);
+        when(relocation.getRelocation("http://omim.org/static/omim/data/mim2gene.txt"))
+            .thenReturn(getClass().getResource("/omim/mim2gene.txt").toString());
+        when(relocation.getRelocation("ftp://ftp.ncbi.nih.gov/pub/GeneReviews/NBKid_shortname_OMIM.txt"))
+            .thenReturn(getClass().getResource("/omim/NBKid_shortname_OMIM.txt").toString());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void reindexIndexesJoinedDocumentsFromLocalSources() throws IOException, SolrServerException
+    {
+        Assert.assertEquals(0, this.vocabulary.reindex(getClass().getResource("/omim/mimTitles.txt").toString()));
+
+        ArgumentCaptor<Collection<SolrInputDocument>> batch = ArgumentCaptor.forClass((Class) Collection.class);
+        Mockito.verify(this.server).add(batch.capture());
+        Mockito.verify(this.server).commit();
+        Mockito.verify(this.cache).removeAll();
+        Collection<SolrInputDocument> docs = batch.getValue();
+        Assert.assertEquals(5, docs.size());
+        boolean found = false;
+        for (SolrInputDocument doc : docs) {
+            if ("100640".equals(doc.getFieldValue("id"))) {
+                found = true;
+                Assert.assertEquals("ALDH1A1", doc.getFieldValues("GENE").iterator().next());
+            }
+        }
+        Assert.assertTrue(found);
+    }
+
+    @Test
+    public void reindexWithMissingSourceFails() throws IOException, SolrServerException
+    {
+        Assert.assertEquals(2, this.vocabulary.reindex("file:/nonexistent/mimTitles.txt"));
+        Mockito.verify(this.server, Mockito.never()).add(Matchers.anyCollectionOf(SolrInputDocument.class));
+        Mockito.verify(this.cache, Mockito.never()).removeAll();
+    }
+
+    @Test
+    public void reindexWithInvalidURLFails()
+    {
+        Assert.assertEquals(2, this.vocabulary.reindex("invalid url"));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the {@link OmimIndexBuilder} class.
+ */
+public class OmimIndexBuilderTest
+{
+    private URL titles;
+
+    private URL genes;
+
+    private URL geneReviews;
+
+    private List<List<SolrInputDocument>> batches = new ArrayList<>();
+
+    @Before
+    public void setUp()
+    {
+        this.titles = getClass().getResource("/omim/mimTitles.txt");
+        this.genes = getClass().getResource("/omim/mim2gene.txt");
+        this.geneReviews = getClass().getResource("/omim/NBKid_shortname_OMIM.txt");
+    }
+
+    @Test
+    public void buildJoinsAllSources() throws Exception
+    {
+        Assert.assertTrue(new OmimIndexBuilder(this.titles, this.genes, this.geneReviews, mock(Logger.class))
+            .build(100, this.batches::add));
+
+        Assert.assertEquals(1, this.batches.size());
+        Map<String, SolrInputDocument> docs = index();
+        // Four entries, moved entries are skipped, and the version header
+        Assert.assertEquals(5, docs.size());
+        Assert.assertFalse(docs.containsKey("100500"));
+        Assert.assertNotNull(docs.get("HEADER_INFO").getFieldValue("version"));
+
+        SolrInputDocument aldh2 = docs.get("100650");
+        Assert.assertEquals("+", aldh2.getFieldValue("symbol"));
+        Assert.assertEquals(Arrays.asList("gene", "disorder"), new ArrayList<>(aldh2.getFieldValues("type")));
+        Assert.assertEquals("ALDEHYDE DEHYDROGENASE 2 FAMILY", aldh2.getFieldValue("name"));
+        Assert.assertEquals("ALDH2", aldh2.getFieldValue("short_name"));
+        Assert.assertEquals(Arrays.asList("ACUTE ALCOHOL SENSITIVITY", "ALCOHOL INTOLERANCE"),
+            new ArrayList<>(aldh2.getFieldValues("included_name")));
+        Assert.assertEquals(Arrays.asList("ALDH2", "ENSG00000111275"),
+            new ArrayList<>(aldh2.getFieldValues("GENE")));
+        Assert.assertNull(aldh2.getFieldValue("gene_reviews_link"));
+
+        SolrInputDocument aaa = docs.get("100070");
+        Assert.assertEquals(Arrays.asList("ANEURYSM, ABDOMINAL AORTIC", "ABDOMINAL AORTIC ANEURYSM"),
+            new ArrayList<>(aaa.getFieldValues("synonym")));
+        Assert.assertEquals("https://www.ncbi.nlm.nih.gov/books/NBK1361", aaa.getFieldValue("gene_reviews_link"));
+        Assert.assertNull(aaa.getFieldValue("GENE"));
+    }
+
+    @Test
+    public void buildSendsBoundedBatches() throws Exception
+    {
+        Assert.assertTrue(new OmimIndexBuilder(this.titles, this.genes, this.geneReviews, mock(Logger.class))
+            .build(2, this.batches::add));
+
+        Assert.assertEquals(3, this.batches.size());
+        Assert.assertEquals(2, this.batches.get(0).size());
+        Assert.assertEquals(2, this.batches.get(1).size());
+        // The last batch holds the remaining entry, and the version header
+        Assert.assertEquals(2, this.batches.get(2).size());
+        Assert.assertEquals("HEADER_INFO", this.batches.get(2).get(1).getFieldValue("id"));
+    }
+
+    @Test
+    public void buildWithoutAuxiliarySourcesIndexesTitles() throws Exception
+    {
+        final Logger logger = mock(Logger.class);
+        Assert.assertTrue(new OmimIndexBuilder(this.titles, null, new URL("file:/nonexistent/omim.txt"), logger)
+            .build(100, this.batches::add));
+
+        Map<String, SolrInputDocument> docs = index();
+        Assert.assertEquals(5, docs.size());
+        Assert.assertNull(docs.get("100650").getFieldValue("GENE"));
+        Assert.assertNull(docs.get("100070").getFieldValue("gene_reviews_link"));
+    }
+
+    @Test
+    public void buildFailsWhenTitlesCannotBeRead() throws Exception
+    {
+        Assert.assertFalse(new OmimIndexBuilder(new URL("file:/nonexistent/mimTitles.txt"), this.genes,
+            this.geneReviews, mock(Logger.class)).build(100, this.batches::add));
+        Assert.assertTrue(this.batches.isEmpty());
+    }
+
+    private Map<String, SolrInputDocument> index()
+    {
+        Map<String, SolrInputDocument> result = new HashMap<>();
+        for (List<SolrInputDocument> batch : this.batches) {
+            for (SolrInputDocument doc : batch) {
+                result.put(String.valueOf(doc.getFieldValue("id")), doc);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+import org.phenotips.rest.RequiredAccess;
+
+import org.xwiki.stability.Unstable;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * A resource for following and cancelling a background {@link org.phenotips.vocabulary.VocabularyReindexJob
+ * vocabulary reindex}, as started by {@link VocabularyResource#reindex(String, String)}.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Unstable("New API introduced in 1.5")
+@Path("/vocabularies/{vocabulary-id}/reindex/{job-id}")
+@ParentResource(VocabularyResource.class)
+@Relation("https://phenotips.org/rel/vocabularyReindexJob")
+public interface VocabularyReindexJobResource
+{
+    /**
+     * Retrieves the status of a reindex job: its current phase, the number of terms parsed and indexed so far, and the
+     * estimated remaining time. This request must come from an administrator.
+     *
+     * @param vocabularyId the vocabulary being reindexed
+     * @param jobId the job identifier, as returned when the reindex was requested
+     * @return a JSON representation of the job status, or an error if the job doesn't exist
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiredAccess("admin")
+    Response getJob(@PathParam("vocabulary-id") String vocabularyId, @PathParam("job-id") String jobId);
+
+    /**
+     * Cancels a reindex job. The partially built index is discarded and the vocabulary keeps using its current index.
+     * This request must come from an administrator.
+     *
+     * @param vocabularyId the vocabulary being reindexed
+     * @param jobId the job identifier, as returned when the reindex was requested
+     * @return a JSON representation of the job status, or an error if the job doesn't exist or has already ended
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiredAccess("admin")
+    Response cancelJob(@PathParam("vocabulary-id") String vocabularyId, @PathParam("job-id") String jobId);
+}
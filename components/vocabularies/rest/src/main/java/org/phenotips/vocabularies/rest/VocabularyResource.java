@@ -59,13 +59,17 @@
     /**
      * Reindex the whole vocabulary, fetching the source from the specified location, or from its
      * {@link Vocabulary#getDefaultSourceLocation() default source location}. This request must come from an
-     * administrator.
+     * administrator. Reindexing runs in the background: the response is sent right away, with the
+     * {@code 202 Accepted} status, the {@link VocabularyReindexJobResource location of the job} in the
+     * {@code Location} header, and the current job status as JSON in the body. If the vocabulary is already being
+     * reindexed, the existing job is returned.
      *
      * @param vocabularyId the vocabulary to be indexed; will return an error if the vocabulary cannot be resolved
      * @param sourceUrl the URL to be indexed, optional
-     * @return a {@link Response} indicating whether the indexing was successful
+     * @return a {@link Response} describing the scheduled reindex job, or an error if the request is invalid
      */
     @POST
+    @Produces(MediaType.APPLICATION_JSON)
     @RequiredAccess("admin")
     Response reindex(@PathParam("vocabulary-id") String vocabularyId, @QueryParam("url") String sourceUrl);
 }
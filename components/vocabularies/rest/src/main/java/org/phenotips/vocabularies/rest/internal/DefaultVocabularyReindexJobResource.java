@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.Constants;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabularies.rest.VocabularyReindexJobResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexManager;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
+import org.xwiki.users.UserManager;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Default implementation of {@link VocabularyReindexJobResource} using XWiki's support for REST resources.
+ *
+ * @version $Id$
+ * @since 1.5M1
+ */
+@Component
+@Named("org.phenotips.vocabularies.rest.internal.DefaultVocabularyReindexJobResource")
+@Singleton
+@Unstable
+public class DefaultVocabularyReindexJobResource extends XWikiResource implements VocabularyReindexJobResource
+{
+    @Inject
+    private VocabularyManager vm;
+
+    @Inject
+    private VocabularyReindexManager reindexManager;
+
+    @Inject
+    private AuthorizationService authorizationService;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    @Named("default")
+    private DocumentReferenceResolver<EntityReference> resolver;
+
+    @Override
+    public Response getJob(String vocabularyId, String jobId)
+    {
+        if (!userIsAdmin()) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        VocabularyReindexJob job = findJob(vocabularyId, jobId);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(job.toJSON(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @Override
+    public Response cancelJob(String vocabularyId, String jobId)
+    {
+        if (!userIsAdmin()) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        VocabularyReindexJob job = findJob(vocabularyId, jobId);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (!this.reindexManager.cancel(jobId)) {
+            // Already ended, nothing to cancel
+            return Response.status(Response.Status.CONFLICT).entity(job.toJSON())
+                .type(MediaType.APPLICATION_JSON_TYPE).build();
+        }
+        return Response.ok(job.toJSON(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Looks up a job, making sure that it belongs to the requested vocabulary.
+     *
+     * @param vocabularyId the vocabulary identifier or alias, as specified in the request
+     * @param jobId the job identifier
+     * @return the requested job, or {@code null} if the vocabulary or the job don't exist, or they don't match
+     */
+    private VocabularyReindexJob findJob(String vocabularyId, String jobId)
+    {
+        Vocabulary vocabulary = this.vm.getVocabulary(vocabularyId);
+        VocabularyReindexJob job = this.reindexManager.getJob(jobId);
+        if (vocabulary == null || job == null || !StringUtils.equals(vocabulary.getIdentifier(), job.getVocabulary())) {
+            return null;
+        }
+        return job;
+    }
+
+    private boolean userIsAdmin()
+    {
+        return this.authorizationService.hasAccess(this.users.getCurrentUser(), Right.ADMIN,
+            this.resolver.resolve(Constants.XWIKI_SPACE_REFERENCE));
+    }
+}
@@ -23,9 +23,12 @@
 import org.phenotips.vocabularies.rest.CategoryResource;
 import org.phenotips.vocabularies.rest.CategoryTermSuggestionsResource;
 import org.phenotips.vocabularies.rest.DomainObjectFactory;
+import org.phenotips.vocabularies.rest.VocabularyReindexJobResource;
 import org.phenotips.vocabularies.rest.VocabularyResource;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexManager;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -49,9 +52,9 @@
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 
 import org.apache.commons.validator.routines.UrlValidator;
-import org.json.JSONObject;
 
 /**
  * Default implementation of {@link VocabularyResource} using XWiki's support for REST resources.
@@ -65,11 +68,12 @@
 @Unstable
 public class DefaultVocabularyResource extends XWikiResource implements VocabularyResource
 {
-    private static final String VERSION = "version";
-
     @Inject
     private VocabularyManager vm;
 
+    @Inject
+    private VocabularyReindexManager reindexManager;
+
     @Inject
     private DomainObjectFactory objectFactory;
 
@@ -154,22 +158,14 @@ public Response reindex(String vocabularyId, String url)
             return Response.status(Response.Status.NOT_FOUND).build();
         }
 
-        Response result;
-        try {
-            int reindexStatus = vocabulary.reindex(url);
-
-            if (reindexStatus == 0) {
-                final JSONObject responseMeta = new JSONObject().put(VERSION, vocabulary.getVersion());
-                result = Response.ok(responseMeta, MediaType.APPLICATION_JSON_TYPE).build();
-            } else if (reindexStatus == 1) {
-                result = Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
-            } else {
-                result = Response.status(Response.Status.BAD_REQUEST).build();
-            }
-        } catch (UnsupportedOperationException e) {
-            result = Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
-        }
-        return result;
+        // Reindexing takes minutes for the larger vocabularies, don't make the client wait for it
+        VocabularyReindexJob job = this.reindexManager.reindex(vocabulary, url);
+        return Response.status(Response.Status.ACCEPTED)
+            .location(UriBuilder.fromUri(this.uriInfo.getBaseUri()).path(VocabularyReindexJobResource.class)
+                .build(vocabularyId, job.getId()))
+            .entity(job.toJSON())
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .build();
     }
 
     private boolean userIsAdmin()
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.vocabularies.rest.VocabularyReindexJobResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexManager;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import javax.ws.rs.core.Response;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyReindexJobResource} class.
+ */
+public class DefaultVocabularyReindexJobResourceTest
+{
+    private static final String HPO_ID = "hpo";
+
+    private static final String JOB_ID = "a9b8c7";
+
+    @Rule
+    public MockitoComponentMockingRule<VocabularyReindexJobResource> mocker =
+        new MockitoComponentMockingRule<>(DefaultVocabularyReindexJobResource.class);
+
+    @Mock
+    private User user;
+
+    @Mock
+    private Vocabulary hpoVocab;
+
+    @Mock
+    private VocabularyReindexJob job;
+
+    private JSONObject jobJSON = new JSONObject().put("id", JOB_ID);
+
+    private VocabularyManager vm;
+
+    private VocabularyReindexManager reindexManager;
+
+    private AuthorizationService authorizationService;
+
+    private VocabularyReindexJobResource component;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+
+        final Execution execution = mock(Execution.class);
+        final ExecutionContext executionContext = mock(ExecutionContext.class);
+        final ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        when(execution.getContext()).thenReturn(executionContext);
+        when(executionContext.getProperty("xwikicontext")).thenReturn(mock(XWikiContext.class));
+
+        this.component = this.mocker.getComponentUnderTest();
+
+        this.vm = this.mocker.getInstance(VocabularyManager.class);
+        when(this.vm.getVocabulary(HPO_ID)).thenReturn(this.hpoVocab);
+        when(this.hpoVocab.getIdentifier()).thenReturn(HPO_ID);
+
+        this.reindexManager = this.mocker.getInstance(VocabularyReindexManager.class);
+        when(this.reindexManager.getJob(JOB_ID)).thenReturn(this.job);
+        when(this.job.getVocabulary()).thenReturn(HPO_ID);
+        when(this.job.toJSON()).thenReturn(this.jobJSON);
+
+        final UserManager users = this.mocker.getInstance(UserManager.class);
+        when(users.getCurrentUser()).thenReturn(this.user);
+
+        this.authorizationService = this.mocker.getInstance(AuthorizationService.class);
+        when(this.authorizationService.hasAccess(eq(this.user), eq(Right.ADMIN), any(EntityReference.class)))
+            .thenReturn(true);
+    }
+
+    @Test
+    public void getJobReturnsJobStatus()
+    {
+        final Response response = this.component.getJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertSame(this.jobJSON, response.getEntity());
+    }
+
+    @Test
+    public void getJobUserNotAdmin()
+    {
+        when(this.authorizationService.hasAccess(eq(this.user), eq(Right.ADMIN), any(EntityReference.class)))
+            .thenReturn(false);
+        final Response response = this.component.getJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+        verify(this.reindexManager, never()).getJob(anyString());
+    }
+
+    @Test
+    public void getJobUnknownJob()
+    {
+        final Response response = this.component.getJob(HPO_ID, "unknown");
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void getJobUnknownVocabulary()
+    {
+        final Response response = this.component.getJob("omim", JOB_ID);
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void getJobForAnotherVocabulary()
+    {
+        when(this.job.getVocabulary()).thenReturn("omim");
+        final Response response = this.component.getJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void cancelJobCancelsActiveJob()
+    {
+        when(this.reindexManager.cancel(JOB_ID)).thenReturn(true);
+        final Response response = this.component.cancelJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertSame(this.jobJSON, response.getEntity());
+        verify(this.reindexManager).cancel(JOB_ID);
+    }
+
+    @Test
+    public void cancelJobAlreadyFinished()
+    {
+        when(this.reindexManager.cancel(JOB_ID)).thenReturn(false);
+        final Response response = this.component.cancelJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+        Assert.assertSame(this.jobJSON, response.getEntity());
+    }
+
+    @Test
+    public void cancelJobUnknownJob()
+    {
+        final Response response = this.component.cancelJob(HPO_ID, "unknown");
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        verify(this.reindexManager, never()).cancel(anyString());
+    }
+
+    @Test
+    public void cancelJobUserNotAdmin()
+    {
+        when(this.authorizationService.hasAccess(eq(this.user), eq(Right.ADMIN), any(EntityReference.class)))
+            .thenReturn(false);
+        final Response response = this.component.cancelJob(HPO_ID, JOB_ID);
+        Assert.assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+        verify(this.reindexManager, never()).cancel(anyString());
+    }
+}
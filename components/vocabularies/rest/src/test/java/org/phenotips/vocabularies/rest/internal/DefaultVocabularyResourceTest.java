@@ -23,9 +23,12 @@
 import org.phenotips.vocabularies.rest.VocabularyResource;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyReindexJob;
+import org.phenotips.vocabulary.VocabularyReindexManager;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.EntityReference;
@@ -34,6 +37,8 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.net.URI;
+
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
@@ -51,6 +56,8 @@
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -58,12 +65,12 @@
  */
 public class DefaultVocabularyResourceTest
 {
-    private static final String VERSION = "version";
-
     private static final String HPO_ID = "hpo";
 
     private static final String HPO_VERSION = "version_1";
 
+    private static final String JOB_ID = "a9b8c7";
+
     @Rule
     public MockitoComponentMockingRule<VocabularyResource> mocker =
         new MockitoComponentMockingRule<>(DefaultVocabularyResource.class);
@@ -84,6 +91,10 @@
 
     private AuthorizationService authorizationService;
 
+    private VocabularyReindexManager reindexManager;
+
+    private JSONObject jobJSON = new JSONObject().put("id", JOB_ID);
+
     private VocabularyResource component;
 
     @Before
@@ -109,9 +120,16 @@ public void setUp() throws ComponentLookupException
         when(autolinker.withActionableResources(any(Class.class))).thenReturn(autolinker);
 
         when(this.vm.getVocabulary(HPO_ID)).thenReturn(this.hpoVocab);
-        when(this.hpoVocab.reindex(null)).thenReturn(0);
         when(this.hpoVocab.getVersion()).thenReturn(HPO_VERSION);
 
+        ReflectionUtils.setFieldValue(this.component, "uriInfo", this.uriInfo);
+        when(this.uriInfo.getBaseUri()).thenReturn(URI.create("http://localhost/rest/"));
+        final VocabularyReindexJob job = mock(VocabularyReindexJob.class);
+        when(job.getId()).thenReturn(JOB_ID);
+        when(job.toJSON()).thenReturn(this.jobJSON);
+        this.reindexManager = this.mocker.getInstance(VocabularyReindexManager.class);
+        when(this.reindexManager.reindex(eq(this.hpoVocab), any())).thenReturn(job);
+
         final DomainObjectFactory objectFactory = this.mocker.getInstance(DomainObjectFactory.class);
         when(objectFactory.createLinkedVocabularyRepresentation(eq(this.hpoVocab), any(), any()))
             .thenReturn(this.hpoRestVocab);
@@ -170,38 +188,20 @@ public void reindexNonexistentVocabulary()
     }
 
     @Test
-    public void reindexStatusIsOne()
-    {
-        when(this.hpoVocab.reindex(null)).thenReturn(1);
-        final Response response = this.component.reindex(HPO_ID, null);
-        Assert.assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), response.getStatus());
-    }
-
-    @Test
-    public void reindexStatusIsTwo()
-    {
-        when(this.hpoVocab.reindex(null)).thenReturn(2);
-        final Response response = this.component.reindex(HPO_ID, null);
-        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
-    }
-
-    @Test
-    public void reindexIsNotSupported()
-    {
-        when(this.hpoVocab.reindex(null)).thenThrow(new UnsupportedOperationException());
-        final Response response = this.component.reindex(HPO_ID, null);
-        Assert.assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
-    }
-
-    @Test
-    public void reindexIsSuccessful()
+    public void reindexSchedulesJob()
     {
         final Response responseDefault = this.component.reindex(HPO_ID, null);
-        Assert.assertEquals(Response.Status.OK.getStatusCode(), responseDefault.getStatus());
-        Assert.assertTrue(new JSONObject().put(VERSION, HPO_VERSION).similar(responseDefault.getEntity()));
+        Assert.assertEquals(Response.Status.ACCEPTED.getStatusCode(), responseDefault.getStatus());
+        Assert.assertSame(this.jobJSON, responseDefault.getEntity());
+        Assert.assertEquals(URI.create("http://localhost/rest/vocabularies/hpo/reindex/" + JOB_ID),
+            responseDefault.getLocation());
+        verify(this.reindexManager).reindex(this.hpoVocab, null);
 
         final Response responseJAR = this.component.reindex(HPO_ID, "jar:abc");
-        Assert.assertEquals(Response.Status.OK.getStatusCode(), responseJAR.getStatus());
-        Assert.assertTrue(new JSONObject().put(VERSION, HPO_VERSION).similar(responseJAR.getEntity()));
+        Assert.assertEquals(Response.Status.ACCEPTED.getStatusCode(), responseJAR.getStatus());
+        verify(this.reindexManager).reindex(this.hpoVocab, "jar:abc");
+
+        // The actual indexing happens in the background
+        verify(this.hpoVocab, never()).reindex(any());
     }
 }
@@ -25,13 +25,12 @@
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.localization.LocalizationContext;
 
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -47,16 +46,15 @@
  * https://github.com/Human-Phenotype-Ontology/HPO-translations</a>. By default, when indexing it adds translated fields
  * in the {@link #getTargetLocale() target language} for {@code name}, {@code def} and {@code synonym}, and when
  * querying it includes these translated fields in the query, if {@link #isCurrentLocaleTargeted() the current language
- * is supported}.
+ * is supported}. The translations of the target vocabulary are bulk-loaded into memory once per indexing run, and
+ * released when it ends; terms extended outside of an indexing run only look up their own translations. The localized
+ * field names and query clauses are computed only once.
  *
  * @version $Id$
  * @since 1.3
  */
 public abstract class AbstractXliffTranslatedVocabularyExtension implements VocabularyExtension
 {
-    /** The format of the translated property names. */
-    private static final String TRANSLATED_FIELD_FORMAT = "%s_%s";
-
     /** The name of the property used for storing the name of a term. */
     private static final String NAME_KEY = "name";
 
@@ -91,6 +89,15 @@ public abstract class AbstractXliffTranslatedVocabularyExtension implements Voca
     @Inject
     protected Logger logger;
 
+    /** The translations loaded for the current indexing run, {@code null} outside of indexing. */
+    private volatile TranslationTable translations;
+
+    /** The localized field names and query clauses, computed on first use. */
+    private volatile LocalizedFields fields;
+
+    /** Cache of already checked locales, since the same few locales are checked for every query. */
+    private final Map<Locale, Boolean> supportedLocales = new ConcurrentHashMap<>();
+
     @Override
     public boolean isVocabularySupported(Vocabulary vocabulary)
     {
@@ -100,34 +107,48 @@ public boolean isVocabularySupported(Vocabulary vocabulary)
     @Override
     public void indexingStarted(Vocabulary vocabulary)
     {
-        // Nothing to do
+        this.translations = loadTranslations(vocabulary.getIdentifier());
     }
 
     @Override
     public void extendTerm(VocabularyInputTerm term, Vocabulary vocabulary)
     {
-        Locale targetLocale = getTargetLocale();
-        String label = this.translator.getTranslation(vocabulary.getIdentifier(),
-            term.getId().replace(':', '_') + KEY_MAP.get(NAME_KEY), targetLocale);
-        String definition = this.translator.getTranslation(vocabulary.getIdentifier(),
-            term.getId().replace(':', '_') + KEY_MAP.get(DESCRIPTION_KEY), targetLocale);
-        String synonyms = this.translator.getTranslation(vocabulary.getIdentifier(),
-            term.getId().replace(':', '_') + KEY_MAP.get(SYNONYM_KEY), targetLocale);
-        if (StringUtils.isNotBlank(label)) {
-            term.set(String.format(TRANSLATED_FIELD_FORMAT, NAME_KEY, targetLocale), label);
-        }
-        if (StringUtils.isNotBlank(definition)) {
-            term.set(String.format(TRANSLATED_FIELD_FORMAT, DESCRIPTION_KEY, targetLocale), definition);
+        String termKey = term.getId().replace(':', '_');
+        TranslationTable table = this.translations;
+        TranslatedTerm translated;
+        if (table != null && table.baseName.equals(vocabulary.getIdentifier())) {
+            translated = table.terms.get(termKey);
+        } else {
+            // Not called as part of a full indexing run, only this term's translations are needed
+            translated = loadTranslation(vocabulary.getIdentifier(), termKey);
         }
-        if (StringUtils.isNotBlank(synonyms)) {
-            term.set(String.format(TRANSLATED_FIELD_FORMAT, SYNONYM_KEY, targetLocale), splitMultiValuedText(synonyms));
+        if (translated == null) {
+            return;
+        }
+        LocalizedFields localizedFields = getLocalizedFields();
+        if (StringUtils.isNotBlank(translated.label)) {
+            term.set(localizedFields.name, translated.label);
+        }
+        if (StringUtils.isNotBlank(translated.definition)) {
+            term.set(localizedFields.description, translated.definition);
+        }
+        if (translated.synonyms != null) {
+            term.set(localizedFields.synonym, translated.synonyms);
         }
     }
 
     @Override
     public void indexingEnded(Vocabulary vocabulary)
     {
-        // Nothing to do
+        // The translations are only needed while indexing, release the memory
+        this.translations = null;
+    }
+
+    @Override
+    public void indexingCancelled(Vocabulary vocabulary)
+    {
+        // The reindex was abandoned, the translations are no longer needed either
+        this.translations = null;
     }
 
     @Override
@@ -136,30 +157,14 @@ public void extendQuery(SolrQuery query, Vocabulary vocabulary)
         if (!isCurrentLocaleTargeted()) {
             return;
         }
-        Locale targetLocale = getTargetLocale();
-        if (StringUtils.isNotBlank(query.get(DisMaxParams.PF))) {
-            try (Formatter f = new Formatter()) {
-                f.out().append(query.get(DisMaxParams.PF));
-                f.format(" name_%1$s^60 synonym_%1$s^45 def_%1$s^12 ", targetLocale);
-                query.set(DisMaxParams.PF, f.toString());
-            } catch (IOException ex) {
-                // Shouldn't happen
-                this.logger.warn(
-                    "Unexpected exception while formatting SolrQuery PF for vocabulary [{}] and locale [{}]: {}",
-                    vocabulary.getIdentifier(), targetLocale, ex.getMessage());
-            }
+        LocalizedFields localizedFields = getLocalizedFields();
+        String pf = query.get(DisMaxParams.PF);
+        if (StringUtils.isNotBlank(pf)) {
+            query.set(DisMaxParams.PF, pf + localizedFields.phraseFieldsClause);
         }
-        if (StringUtils.isNotBlank(query.get(DisMaxParams.QF))) {
-            try (Formatter f = new Formatter()) {
-                f.out().append(query.get(DisMaxParams.QF));
-                f.format(" name_%1$s^30 synonym_%1$s^21 def_%1$s^6 ", targetLocale);
-                query.set(DisMaxParams.QF, f.toString());
-            } catch (IOException ex) {
-                // Shouldn't happen
-                this.logger.warn(
-                    "Unexpected exception while formatting SolrQuery QF for vocabulary [{}] and locale [{}]: {}",
-                    vocabulary.getIdentifier(), targetLocale, ex.getMessage());
-            }
+        String qf = query.get(DisMaxParams.QF);
+        if (StringUtils.isNotBlank(qf)) {
+            query.set(DisMaxParams.QF, qf + localizedFields.queryFieldsClause);
         }
     }
 
@@ -198,7 +203,15 @@ protected boolean isCurrentLocaleTargeted()
      */
     protected boolean isLocaleSupported(Locale locale)
     {
-        return locale != null && locale.toLanguageTag().startsWith(getTargetLocale().toLanguageTag());
+        if (locale == null) {
+            return false;
+        }
+        Boolean result = this.supportedLocales.get(locale);
+        if (result == null) {
+            result = locale.toLanguageTag().startsWith(getTargetLocale().toLanguageTag());
+            this.supportedLocales.put(locale, result);
+        }
+        return result;
     }
 
     /**
@@ -226,4 +239,125 @@ protected List<String> splitMultiValuedText(String text)
      * @return a valid locale
      */
     protected abstract Locale getTargetLocale();
+
+    /**
+     * Reads all the translations of a vocabulary in the {@link #getTargetLocale() target locale} at once, grouping them
+     * by term.
+     *
+     * @param baseName the base name of the translation bundle, usually the vocabulary identifier
+     * @return the loaded translations, possibly empty if no translation is available
+     */
+    private TranslationTable loadTranslations(String baseName)
+    {
+        Map<String, String> keys = this.translator.getTranslations(baseName, getTargetLocale());
+        Map<String, TranslatedTerm> terms = new HashMap<>((int) Math.ceil(keys.size() / 3 / 0.75));
+        String labelSuffix = KEY_MAP.get(NAME_KEY);
+        String definitionSuffix = KEY_MAP.get(DESCRIPTION_KEY);
+        String synonymsSuffix = KEY_MAP.get(SYNONYM_KEY);
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith(labelSuffix)) {
+                getTranslatedTerm(terms, key, labelSuffix).label = entry.getValue();
+            } else if (key.endsWith(definitionSuffix)) {
+                getTranslatedTerm(terms, key, definitionSuffix).definition = entry.getValue();
+            } else if (key.endsWith(synonymsSuffix) && StringUtils.isNotBlank(entry.getValue())) {
+                getTranslatedTerm(terms, key, synonymsSuffix).synonyms = splitMultiValuedText(entry.getValue());
+            }
+        }
+        this.logger.debug("Loaded [{}] translations for [{}] in [{}]", terms.size(), baseName, getTargetLocale());
+        return new TranslationTable(baseName, terms);
+    }
+
+    /**
+     * Reads the translations of a single term in the {@link #getTargetLocale() target locale}.
+     *
+     * @param baseName the base name of the translation bundle, usually the vocabulary identifier
+     * @param termKey the term identifier, with {@code :} replaced by {@code _}
+     * @return the translated term, with {@code null} for the missing translations
+     */
+    private TranslatedTerm loadTranslation(String baseName, String termKey)
+    {
+        Locale targetLocale = getTargetLocale();
+        TranslatedTerm result = new TranslatedTerm();
+        result.label = this.translator.getTranslation(baseName, termKey + KEY_MAP.get(NAME_KEY), targetLocale);
+        result.definition =
+            this.translator.getTranslation(baseName, termKey + KEY_MAP.get(DESCRIPTION_KEY), targetLocale);
+        String synonyms = this.translator.getTranslation(baseName, termKey + KEY_MAP.get(SYNONYM_KEY), targetLocale);
+        if (StringUtils.isNotBlank(synonyms)) {
+            result.synonyms = splitMultiValuedText(synonyms);
+        }
+        return result;
+    }
+
+    private TranslatedTerm getTranslatedTerm(Map<String, TranslatedTerm> terms, String key, String suffix)
+    {
+        String termKey = key.substring(0, key.length() - suffix.length());
+        TranslatedTerm result = terms.get(termKey);
+        if (result == null) {
+            result = new TranslatedTerm();
+            terms.put(termKey, result);
+        }
+        return result;
+    }
+
+    private LocalizedFields getLocalizedFields()
+    {
+        LocalizedFields result = this.fields;
+        if (result == null) {
+            result = new LocalizedFields(getTargetLocale());
+            this.fields = result;
+        }
+        return result;
+    }
+
+    /** All the translations loaded from a translation bundle, grouped by term. */
+    private static final class TranslationTable
+    {
+        /** The base name of the bundle the translations were loaded from. */
+        private final String baseName;
+
+        /** Translated terms, where the keys are term identifiers with {@code :} replaced by {@code _}. */
+        private final Map<String, TranslatedTerm> terms;
+
+        TranslationTable(String baseName, Map<String, TranslatedTerm> terms)
+        {
+            this.baseName = baseName;
+            this.terms = terms;
+        }
+    }
+
+    /** The translated properties of a term, any of which may be missing. */
+    private static final class TranslatedTerm
+    {
+        private String label;
+
+        private String definition;
+
+        private List<String> synonyms;
+    }
+
+    /** The names of the translated fields, and the query clauses using them. */
+    private static final class LocalizedFields
+    {
+        private final String name;
+
+        private final String description;
+
+        private final String synonym;
+
+        /** Appended to the phrase fields of a query. */
+        private final String phraseFieldsClause;
+
+        /** Appended to the query fields of a query. */
+        private final String queryFieldsClause;
+
+        LocalizedFields(Locale locale)
+        {
+            this.name = NAME_KEY + '_' + locale;
+            this.description = DESCRIPTION_KEY + '_' + locale;
+            this.synonym = SYNONYM_KEY + '_' + locale;
+            this.phraseFieldsClause = ' ' + this.name + "^60 " + this.synonym + "^45 " + this.description + "^12 ";
+            this.queryFieldsClause = ' ' + this.name + "^30 " + this.synonym + "^21 " + this.description + "^6 ";
+        }
+    }
 }
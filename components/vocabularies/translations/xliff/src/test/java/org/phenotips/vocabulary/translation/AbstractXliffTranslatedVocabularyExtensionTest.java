@@ -24,6 +24,7 @@
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.localization.LocalizationContext;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -118,6 +119,43 @@ public void missingTranslationsDontAffectBehavior()
         assertNull(term.get("synonym_es"));
     }
 
+    @Test
+    public void translationsAreLoadedOutsideOfIndexing()
+    {
+        this.extension.indexingEnded(this.vocabularyInstance);
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("id", "HP:0000002");
+        VocabularyInputTerm term = new SolrVocabularyInputTerm(doc, this.vocabularyInstance);
+        this.extension.extendTerm(term, this.vocabularyInstance);
+        assertEquals("Anormalidad de la estatura", term.get("name_es"));
+        // The source text is not used when the target is missing
+        assertNull(term.get("def_es"));
+        assertNull(term.get("synonym_es"));
+        // The whole bundle is not kept in memory outside of indexing
+        assertNull(ReflectionUtils.getFieldValue(this.extension, "translations"));
+    }
+
+    @Test
+    public void queryIsExtendedConsistentlyWhenRepeated() throws ComponentLookupException
+    {
+        LocalizationContext ctx = this.mocker.getInstance(LocalizationContext.class);
+        when(ctx.getCurrentLocale()).thenReturn(Locale.forLanguageTag("es-US"));
+        for (int i = 0; i < 2; ++i) {
+            SolrQuery query = new SolrQuery();
+            query.set(DisMaxParams.PF, "name^20");
+            query.set(DisMaxParams.QF, "name^10");
+            this.extension.extendQuery(query, this.vocabularyInstance);
+            Assert.assertEquals("name^20 name_es^60 synonym_es^45 def_es^12 ", query.get(DisMaxParams.PF));
+            Assert.assertEquals("name^10 name_es^30 synonym_es^21 def_es^6 ", query.get(DisMaxParams.QF));
+        }
+
+        when(ctx.getCurrentLocale()).thenReturn(null);
+        SolrQuery query = new SolrQuery();
+        query.set(DisMaxParams.PF, "name^20");
+        this.extension.extendQuery(query, this.vocabularyInstance);
+        Assert.assertEquals("name^20", query.get(DisMaxParams.PF));
+    }
+
     @Test
     public void queryIsExtendedWithLocalizedFields() throws ComponentLookupException
     {